@@ -6,11 +6,19 @@
  */
 package org.xins.client;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.CodeSource;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xins.client.async.CallFuture;
+import org.xins.client.async.CallFutures;
 
 import org.xins.common.MandatoryArgumentChecker;
 
@@ -74,6 +82,12 @@ public abstract class AbstractCAPI {
     */
    private APISpec _apiSpecification;
 
+   /**
+    * The <code>call<em>FunctionName</em></code> methods used for
+    * asynchronous calls, by request class. Never <code>null</code>.
+    */
+   private final Map<Class<?>,Method> _callMethods = new ConcurrentHashMap<Class<?>,Method>();
+
    /**
     * Creates a new <code>AbstractCAPI</code> object, using the specified
     * <code>XINSServiceCaller</code>.
@@ -456,6 +470,75 @@ public abstract class AbstractCAPI {
       return _caller.call(request.xinsCallRequest());
    }
 
+   /**
+    * Executes the specified call request asynchronously. The call is
+    * executed by the shared executor, see
+    * {@link CallFutures#getExecutor()}, using the
+    * <code>call<em>FunctionName</em></code> method of this CAPI.
+    *
+    * <p>If the call fails, then the <code>get</code> methods of the returned
+    * future throw an {@link java.util.concurrent.ExecutionException} with
+    * the exception thrown by the <code>call<em>FunctionName</em></code>
+    * method as the cause. The result can be cast to the result class of the
+    * function.
+    *
+    * @param request
+    *    the call request to execute, cannot be <code>null</code>.
+    *
+    * @return
+    *    the future for the result of the call, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>request == null</code>.
+    *
+    * @since XINS 3.0
+    */
+   public final CallFuture<AbstractCAPICallResult> callAsync(final AbstractCAPICallRequest request)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("request", request);
+
+      return CallFutures.submit(new Callable<AbstractCAPICallResult>() {
+         public AbstractCAPICallResult call() throws Exception {
+            try {
+               return (AbstractCAPICallResult) getCallMethod(request).invoke(AbstractCAPI.this, request);
+            } catch (InvocationTargetException exception) {
+               Throwable cause = exception.getCause();
+               if (cause instanceof Error) {
+                  throw (Error) cause;
+               }
+               throw (Exception) cause;
+            }
+         }
+      });
+   }
+
+   /**
+    * Returns the <code>call<em>FunctionName</em></code> method of this CAPI
+    * for the specified request.
+    *
+    * @param request
+    *    the call request, cannot be <code>null</code>.
+    *
+    * @return
+    *    the method, never <code>null</code>.
+    *
+    * @throws NoSuchMethodException
+    *    if this CAPI has no method for the function of the request.
+    */
+   private Method getCallMethod(AbstractCAPICallRequest request)
+   throws NoSuchMethodException {
+      Class<?> requestClass = request.getClass();
+      Method method = _callMethods.get(requestClass);
+      if (method == null) {
+         String methodName = "call" + request.functionName();
+         method = getClass().getMethod(methodName, requestClass);
+         _callMethods.put(requestClass, method);
+      }
+      return method;
+   }
+
    /**
     * Creates an <code>AbstractCAPIErrorCodeException</code> for the specified
     * error code. If the specified error code is not recognized, then
@@ -250,10 +250,11 @@ class FileServiceCaller extends ServiceCaller {
       // Retrieve the data returned from the call
       HTTPCallResultData data;
       try {
-         String result = response.getResult();
          byte[] resultData = null;
-         if (result != null) {
-            resultData = result.getBytes(response.getCharacterEncoding());
+         if (response.isBinary()) {
+            resultData = response.getBytes();
+         } else if (response.getResult() != null) {
+            resultData = response.getResult().getBytes(response.getCharacterEncoding());
          }
          data = new HTTPCallResultDataHandler(response.getStatus(), resultData);
       } catch (UnsupportedEncodingException ueex) {
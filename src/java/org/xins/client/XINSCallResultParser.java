@@ -6,10 +6,8 @@
  */
 package org.xins.client;
 
-import java.io.ByteArrayInputStream;
 import java.util.Iterator;
 import org.xins.common.MandatoryArgumentChecker;
-import org.xins.common.Utils;
 import org.xins.common.collections.BasicPropertyReader;
 import org.xins.common.collections.PropertyReader;
 import org.xins.common.text.ParseException;
@@ -79,13 +77,8 @@ public class XINSCallResultParser {
       // Check preconditions
       MandatoryArgumentChecker.check("xml", xml);
 
-      ByteArrayInputStream stream = null;
       try {
-
-         // Convert the byte array to an input stream
-         stream = new ByteArrayInputStream(xml);
-
-         Element resultElement = _parser.parse(stream);
+         Element resultElement = _parser.parse(xml, 0, xml.length);
 
          return new XINSCallResultDataImpl(resultElement);
 
@@ -107,16 +100,6 @@ public class XINSCallResultParser {
 
          // Throw exception with message, and register cause exception
          throw new ParseException(message, exception, detail);
-
-      // Always dispose the ByteArrayInputStream
-      } finally {
-         if (stream != null) {
-            try {
-               stream.close();
-            } catch (Throwable exception) {
-               Utils.logProgrammingError(exception);
-            }
-         }
       }
    }
 
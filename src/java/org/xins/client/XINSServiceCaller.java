@@ -7,6 +7,12 @@
 package org.xins.client;
 
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.xins.client.async.CallFuture;
+import org.xins.client.async.CallFutures;
+
 import org.xins.common.FormattedParameters;
 
 import org.xins.common.MandatoryArgumentChecker;
@@ -302,11 +308,32 @@ public class XINSServiceCaller extends ServiceCaller {
                throw new RuntimeException("Unsupported protocol \"" + protocol + "\" in descriptor.");
             }
 
+            caller.setExecutor(getExecutor());
             _serviceCallers.put(target, caller);
          }
       }
    }
 
+   /**
+    * Sets the executor that runs the call attempts of this service caller.
+    * The executor is also used by the underlying service callers.
+    *
+    * @param executor
+    *    the executor, or <code>null</code> if the default executor should be
+    *    used, see {@link ServiceCaller#setDefaultExecutor(ExecutorService)}.
+    *
+    * @since XINS 3.0
+    */
+   @Override
+   public void setExecutor(ExecutorService executor) {
+      super.setExecutor(executor);
+      if (_serviceCallers != null) {
+         for (ServiceCaller caller : _serviceCallers.values()) {
+            caller.setExecutor(executor);
+         }
+      }
+   }
+
    /**
     * Sets the associated <code>CAPI</code> instance.
     *
@@ -511,6 +538,65 @@ public class XINSServiceCaller extends ServiceCaller {
       return call(request, null);
    }
 
+   /**
+    * Executes the specified XINS call request asynchronously. The call is
+    * executed by the shared executor, see
+    * {@link CallFutures#getExecutor()}.
+    *
+    * <p>If the call fails, then the <code>get</code> methods of the returned
+    * future throw an {@link java.util.concurrent.ExecutionException} with
+    * the {@link org.xins.common.service.CallException} as the cause.
+    *
+    * @param request
+    *    the call request, not <code>null</code>.
+    *
+    * @param callConfig
+    *    the call configuration, or <code>null</code> if the one specified in
+    *    the request should be used, or -if the request does not specify any
+    *    either- the one specified for this service caller.
+    *
+    * @return
+    *    the future for the result of the call, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>request == null</code>.
+    *
+    * @since XINS 3.0
+    */
+   public CallFuture<XINSCallResult> callAsync(final XINSCallRequest request,
+                                               final XINSCallConfig  callConfig)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("request", request);
+
+      return CallFutures.submit(new Callable<XINSCallResult>() {
+         public XINSCallResult call() throws CallException {
+            return XINSServiceCaller.this.call(request, callConfig);
+         }
+      });
+   }
+
+   /**
+    * Executes the specified XINS call request asynchronously, using the
+    * call configuration of the request or this service caller.
+    *
+    * @param request
+    *    the call request, not <code>null</code>.
+    *
+    * @return
+    *    the future for the result of the call, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>request == null</code>.
+    *
+    * @since XINS 3.0
+    */
+   public CallFuture<XINSCallResult> callAsync(XINSCallRequest request)
+   throws IllegalArgumentException {
+      return callAsync(request, null);
+   }
+
    /**
     * Executes the specified request on the given target. If the call
     * succeeds, then a {@link XINSCallResult} object is returned, otherwise a
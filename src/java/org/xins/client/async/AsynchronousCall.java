@@ -54,6 +54,11 @@ public class AsynchronousCall {
     * Calls a function asynchronously. This function does not return anything as
     * the result and exception will be received by the registered {@link CallListener}.
     *
+    * <p>The call is executed and the listeners are notified by a thread of
+    * the shared executor, see {@link CallFutures#getExecutor()}. To get a
+    * future for the result instead, use
+    * {@link AbstractCAPI#callAsync(AbstractCAPICallRequest)}.
+    *
     * @param capi
     *    the CAPI to use to call the function.
     *
@@ -62,7 +67,7 @@ public class AsynchronousCall {
     */
    public void call(AbstractCAPI capi, AbstractCAPICallRequest request) {
       CallNotifyThread thread = new CallNotifyThread(capi, request, _listeners);
-      thread.start();
+      CallFutures.getExecutor().execute(thread);
    }
 
    /**
@@ -96,7 +101,7 @@ public class AsynchronousCall {
 
          // Notify the listeners registered at the moment of the call and not
          // when the result is received.
-         _listeners = Collections.unmodifiableList(listeners);
+         _listeners = Collections.unmodifiableList(new ArrayList<CallListener>(listeners));
       }
 
       public void run() {
@@ -19,6 +19,11 @@ import org.xins.common.service.CallException;
  * If you want to wait for the result at a certain point in your program,
  * invoke the {@link #join()} method.
  *
+ * <p>Since XINS 3.0, a future for the result of the call can be obtained
+ * using
+ * {@link AbstractCAPI#callAsync(AbstractCAPICallRequest)} instead. Such
+ * calls share the threads of an executor and can be cancelled.
+ *
  * @version $Revision: 1.13 $ $Date: 2007/09/18 08:45:07 $
  * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
  *
@@ -0,0 +1,146 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.client.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.xins.common.service.CallCancellation;
+
+/**
+ * Pending result of a call that is executed asynchronously. Instances are
+ * returned by
+ * {@link org.xins.client.AbstractCAPI#callAsync(org.xins.client.AbstractCAPICallRequest)}
+ * and
+ * {@link org.xins.client.XINSServiceCaller#callAsync(org.xins.client.XINSCallRequest)}.
+ *
+ * <p>If the call fails, then {@link #get()} throws an
+ * {@link java.util.concurrent.ExecutionException} with the
+ * {@link org.xins.common.service.CallException} as the cause. See
+ * {@link CallFutures} for methods that wait for several calls at once.
+ *
+ * <p>Cancelling the call using <code>cancel(true)</code> aborts the
+ * underlying HTTP method, if the call is executing. A cancelled call does
+ * not fail-over to other targets.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class CallFuture<V> extends FutureTask<V> {
+
+   /**
+    * The cancellation attached to the thread that executes the call. Never
+    * <code>null</code>.
+    */
+   private final CallCancellation _cancellation;
+
+   /**
+    * The queues to add this future to once it is done, or <code>null</code>
+    * if there are none. Guarded by <code>this</code>.
+    */
+   private List<BlockingQueue<CallFuture<?>>> _doneQueues;
+
+   /**
+    * Flag that indicates whether this future is done. Guarded by
+    * <code>this</code>.
+    */
+   private boolean _done;
+
+   /**
+    * Constructs a new <code>CallFuture</code> that will execute the
+    * specified call once it is run.
+    *
+    * @param call
+    *    the call to execute, cannot be <code>null</code>.
+    *
+    * @throws NullPointerException
+    *    if <code>call == null</code>.
+    */
+   public CallFuture(Callable<V> call) throws NullPointerException {
+      super(call);
+      _cancellation = new CallCancellation();
+   }
+
+   /**
+    * Executes the call, with the cancellation of this future attached to
+    * the current thread.
+    */
+   @Override
+   public void run() {
+      _cancellation.attach();
+      try {
+         super.run();
+      } finally {
+         _cancellation.detach();
+      }
+   }
+
+   /**
+    * Attempts to cancel the call. If <code>mayInterruptIfRunning</code> is
+    * <code>true</code> and the call is executing, then the executing thread
+    * is interrupted and the underlying HTTP method is aborted.
+    *
+    * @param mayInterruptIfRunning
+    *    <code>true</code> if the call should be stopped if it is executing,
+    *    <code>false</code> if an executing call should be allowed to
+    *    complete.
+    *
+    * @return
+    *    <code>false</code> if the call could not be cancelled, typically
+    *    because it completed already, <code>true</code> otherwise.
+    */
+   @Override
+   public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled && mayInterruptIfRunning) {
+         _cancellation.cancel();
+      }
+      return cancelled;
+   }
+
+   /**
+    * Adds this future to the registered queues, now that it is done.
+    */
+   @Override
+   protected void done() {
+      List<BlockingQueue<CallFuture<?>>> queues;
+      synchronized (this) {
+         _done = true;
+         queues = _doneQueues;
+         _doneQueues = null;
+      }
+      if (queues != null) {
+         for (BlockingQueue<CallFuture<?>> queue : queues) {
+            queue.offer(this);
+         }
+      }
+   }
+
+   /**
+    * Adds this future to the specified queue once it is done. If it is done
+    * already, then it is added right away.
+    *
+    * @param queue
+    *    the queue, cannot be <code>null</code>.
+    */
+   void addWhenDone(BlockingQueue<CallFuture<?>> queue) {
+      synchronized (this) {
+         if (! _done) {
+            if (_doneQueues == null) {
+               _doneQueues = new ArrayList<BlockingQueue<CallFuture<?>>>(1);
+            }
+            _doneQueues.add(queue);
+            return;
+         }
+      }
+      queue.offer(this);
+   }
+}
@@ -0,0 +1,424 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.client.async;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.TimeOutController;
+import org.xins.common.Utils;
+import org.xins.common.service.CallException;
+
+/**
+ * Utility functions for executing calls asynchronously and for waiting for
+ * the results of several calls.
+ *
+ * <p>Asynchronous calls are executed by a shared executor. By default this
+ * is a pool of daemon threads; the number of threads is determined by the
+ * system property <code>org.xins.client.async.threads</code> and defaults
+ * to 64. Another executor can be set using
+ * {@link #setExecutor(ExecutorService)}.
+ *
+ * <p>Since the threads of the default executor are daemon threads, they do
+ * not keep the JVM running. When the JVM shuts down, a shutdown hook waits
+ * up to 30 seconds for the calls that were submitted to complete, including
+ * the notification of the listeners. Applications that stop without
+ * stopping the JVM, such as web applications that are undeployed, should
+ * call {@link #shutdown()}.
+ *
+ * <p>Example of a fan-out to two APIs:
+ *
+ * <blockquote><pre>List&lt;CallFuture&lt;AbstractCAPICallResult&gt;&gt; futures = new ArrayList&lt;CallFuture&lt;AbstractCAPICallResult&gt;&gt;();
+ *futures.add(petStoreCAPI.callAsync(getPetRequest));
+ *futures.add(customerCAPI.callAsync(getCustomerRequest));
+ *List&lt;AbstractCAPICallResult&gt; results = CallFutures.getAll(futures);</pre></blockquote>
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class CallFutures {
+
+   /**
+    * Name of the system property that specifies the number of threads of
+    * the default executor.
+    */
+   private static final String THREADS_PROPERTY = "org.xins.client.async.threads";
+
+   /**
+    * The default number of threads of the default executor.
+    */
+   private static final int DEFAULT_THREADS = 64;
+
+   /**
+    * The executor set using {@link #setExecutor(ExecutorService)}, or
+    * <code>null</code> if the default executor is used.
+    */
+   private static volatile ExecutorService EXECUTOR;
+
+   /**
+    * The maximum time to wait for the submitted calls to complete when
+    * shutting down, in milliseconds.
+    */
+   private static final long SHUTDOWN_TIME_OUT = 30000L;
+
+   /**
+    * The default executor, created lazily. Guarded by the
+    * <code>CallFutures</code> class.
+    */
+   private static ExecutorService DEFAULT_EXECUTOR;
+
+   /**
+    * The shutdown hook that waits for the calls of the default executor, or
+    * <code>null</code> if there is no default executor. Guarded by the
+    * <code>CallFutures</code> class.
+    */
+   private static Thread SHUTDOWN_HOOK;
+
+   /**
+    * Constructs a new <code>CallFutures</code> object.
+    */
+   private CallFutures() {
+      // empty
+   }
+
+   /**
+    * Sets the executor that executes asynchronous calls.
+    *
+    * <p>Note that this executor should not be the same as the one that
+    * executes the call attempts (see
+    * {@link org.xins.common.service.ServiceCaller#setDefaultExecutor(ExecutorService)}),
+    * since an asynchronous call may wait for a call attempt.
+    *
+    * @param executor
+    *    the executor, or <code>null</code> if the default executor should be
+    *    used.
+    */
+   public static void setExecutor(ExecutorService executor) {
+      EXECUTOR = executor;
+   }
+
+   /**
+    * Returns the executor that executes asynchronous calls.
+    *
+    * @return
+    *    the executor, never <code>null</code>.
+    */
+   public static ExecutorService getExecutor() {
+      ExecutorService executor = EXECUTOR;
+      return (executor != null) ? executor : getDefaultExecutor();
+   }
+
+   /**
+    * Returns the default executor, creating it if necessary.
+    *
+    * @return
+    *    the default executor, never <code>null</code>.
+    */
+   private static synchronized ExecutorService getDefaultExecutor() {
+      if (DEFAULT_EXECUTOR == null) {
+         int threads = DEFAULT_THREADS;
+         try {
+            String property = System.getProperty(THREADS_PROPERTY);
+            if (property != null && property.trim().length() > 0) {
+               threads = Integer.parseInt(property.trim());
+            }
+         } catch (SecurityException exception) {
+            Utils.logIgnoredException(exception);
+         } catch (NumberFormatException exception) {
+            Utils.logIgnoredException(exception);
+         }
+         if (threads < 1) {
+            threads = DEFAULT_THREADS;
+         }
+         final ExecutorService executor = TimeOutController.createExecutor("XINS asynchronous call", threads);
+         SHUTDOWN_HOOK = new Thread("XINS asynchronous call shutdown") {
+            public void run() {
+               awaitTermination(executor);
+            }
+         };
+         try {
+            Runtime.getRuntime().addShutdownHook(SHUTDOWN_HOOK);
+         } catch (SecurityException exception) {
+            Utils.logIgnoredException(exception);
+         }
+         DEFAULT_EXECUTOR = executor;
+      }
+      return DEFAULT_EXECUTOR;
+   }
+
+   /**
+    * Stops the default executor, waiting up to 30 seconds for the calls that
+    * were submitted to complete. Calls submitted after this method returns
+    * are executed by a new default executor.
+    *
+    * <p>This method should be called by applications that stop without
+    * stopping the JVM. It has no effect on an executor set using
+    * {@link #setExecutor(ExecutorService)}.
+    */
+   public static void shutdown() {
+      ExecutorService executor;
+      synchronized (CallFutures.class) {
+         executor = DEFAULT_EXECUTOR;
+         if (executor == null) {
+            return;
+         }
+         try {
+            Runtime.getRuntime().removeShutdownHook(SHUTDOWN_HOOK);
+         } catch (IllegalStateException exception) {
+
+            // The JVM is shutting down, the hook already waits
+            Utils.logIgnoredException(exception);
+         } catch (SecurityException exception) {
+            Utils.logIgnoredException(exception);
+         }
+         DEFAULT_EXECUTOR = null;
+         SHUTDOWN_HOOK    = null;
+      }
+      awaitTermination(executor);
+   }
+
+   /**
+    * Shuts down the specified executor and waits for the submitted calls to
+    * complete, at most {@link #SHUTDOWN_TIME_OUT} milliseconds.
+    *
+    * @param executor
+    *    the executor, cannot be <code>null</code>.
+    */
+   private static void awaitTermination(ExecutorService executor) {
+      executor.shutdown();
+      try {
+         executor.awaitTermination(SHUTDOWN_TIME_OUT, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException exception) {
+         Utils.logIgnoredException(exception);
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Executes the specified call asynchronously, using the shared executor.
+    *
+    * @param call
+    *    the call to execute, cannot be <code>null</code>.
+    *
+    * @return
+    *    the future for the result of the call, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>call == null</code>.
+    *
+    * @throws java.util.concurrent.RejectedExecutionException
+    *    if the executor does not accept the call, for example because it
+    *    was shut down.
+    */
+   public static <V> CallFuture<V> submit(Callable<V> call)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("call", call);
+
+      CallFuture<V> future = new CallFuture<V>(call);
+      getExecutor().execute(future);
+      return future;
+   }
+
+   /**
+    * Waits for all specified calls to complete and returns their results.
+    * As soon as one of the calls fails, the other calls are cancelled and
+    * the exception of the failed call is thrown.
+    *
+    * @param futures
+    *    the futures of the calls, cannot be <code>null</code>.
+    *
+    * @return
+    *    the results of the calls, in the same order as the futures, never
+    *    <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>futures == null</code>.
+    *
+    * @throws CallException
+    *    if one of the calls failed.
+    *
+    * @throws CancellationException
+    *    if one of the calls was cancelled.
+    *
+    * @throws InterruptedException
+    *    if the current thread was interrupted while waiting; the calls are
+    *    cancelled.
+    */
+   public static <V> List<V> getAll(List<? extends CallFuture<? extends V>> futures)
+   throws IllegalArgumentException,
+          CallException,
+          CancellationException,
+          InterruptedException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("futures", futures);
+
+      // Wait for the calls in the order they complete, so a failure is
+      // noticed as soon as possible
+      BlockingQueue<CallFuture<?>> done = new LinkedBlockingQueue<CallFuture<?>>();
+      for (CallFuture<? extends V> future : futures) {
+         future.addWhenDone(done);
+      }
+      boolean completed = false;
+      try {
+         for (int i = 0; i < futures.size(); i++) {
+            get(done.take());
+         }
+         completed = true;
+      } finally {
+         if (! completed) {
+            cancelAll(futures);
+         }
+      }
+
+      // All calls completed successfully
+      List<V> results = new ArrayList<V>(futures.size());
+      for (CallFuture<? extends V> future : futures) {
+         results.add(get(future));
+      }
+      return results;
+   }
+
+   /**
+    * Waits for the first of the specified calls to complete successfully and
+    * returns its result. The other calls are then cancelled. If all calls
+    * fail, then the exception of the call that failed last is thrown.
+    *
+    * <p>This can be used to call several equivalent services and use the
+    * fastest response.
+    *
+    * @param futures
+    *    the futures of the calls, cannot be <code>null</code> and cannot be
+    *    empty.
+    *
+    * @return
+    *    the result of the first successful call.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>futures == null || futures.isEmpty()</code>.
+    *
+    * @throws CallException
+    *    if all calls failed.
+    *
+    * @throws CancellationException
+    *    if all calls failed and the last one was cancelled.
+    *
+    * @throws InterruptedException
+    *    if the current thread was interrupted while waiting; the calls are
+    *    cancelled.
+    */
+   public static <V> V getFirstSuccess(List<? extends CallFuture<? extends V>> futures)
+   throws IllegalArgumentException,
+          CallException,
+          CancellationException,
+          InterruptedException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("futures", futures);
+      if (futures.isEmpty()) {
+         throw new IllegalArgumentException("futures.isEmpty()");
+      }
+
+      BlockingQueue<CallFuture<?>> done = new LinkedBlockingQueue<CallFuture<?>>();
+      for (CallFuture<? extends V> future : futures) {
+         future.addWhenDone(done);
+      }
+      try {
+         for (int i = 1; ; i++) {
+            CallFuture<?> future = done.take();
+            try {
+               @SuppressWarnings("unchecked")
+               V result = (V) get(future);
+               return result;
+
+            // Rethrow the failure if it is the last call
+            } catch (CallException exception) {
+               if (i == futures.size()) {
+                  throw exception;
+               }
+            } catch (CancellationException exception) {
+               if (i == futures.size()) {
+                  throw exception;
+               }
+            }
+         }
+
+      // Cancel the calls that are still executing
+      } finally {
+         cancelAll(futures);
+      }
+   }
+
+   /**
+    * Cancels all specified calls that did not complete yet. Calls that are
+    * executing are stopped, see {@link CallFuture#cancel(boolean)}.
+    *
+    * @param futures
+    *    the futures of the calls, cannot be <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>futures == null</code>.
+    */
+   public static void cancelAll(Collection<? extends Future<?>> futures)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("futures", futures);
+
+      for (Future<?> future : futures) {
+         future.cancel(true);
+      }
+   }
+
+   /**
+    * Returns the result of a completed call.
+    *
+    * @param future
+    *    the future of the completed call, cannot be <code>null</code>.
+    *
+    * @return
+    *    the result of the call.
+    *
+    * @throws CallException
+    *    if the call failed.
+    *
+    * @throws CancellationException
+    *    if the call was cancelled.
+    *
+    * @throws InterruptedException
+    *    if the current thread was interrupted.
+    */
+   private static <V> V get(Future<V> future)
+   throws CallException, CancellationException, InterruptedException {
+      try {
+         return future.get();
+      } catch (ExecutionException exception) {
+         Throwable cause = exception.getCause();
+         if (cause instanceof CallException) {
+            throw (CallException) cause;
+         } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         } else if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw Utils.logProgrammingError(cause);
+      }
+   }
+}
@@ -13,6 +13,8 @@ import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -20,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xins.common.collections.PropertyReader;
 import org.xins.common.collections.PropertyReaderConverter;
@@ -36,6 +39,11 @@ import org.xins.common.xml.Element;
  * This class contains some utility methods that fills an object with values
  * from another object.
  *
+ * <p>The get and set methods of the classes, the way the properties are
+ * copied from one class to another and the methods used to convert the
+ * values are determined once and then cached, so that repeated calls only
+ * invoke the methods.
+ *
  * @version $Revision: 1.44 $ $Date: 2007/09/18 08:45:10 $
  * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
  *
@@ -46,7 +54,53 @@ public class BeanUtils {
    /**
     * Constant used to identified some methods.
     */
-   private static final Class[] STRING_CLASS = {String.class};
+   private static final Class<?>[] STRING_CLASS = {String.class};
+
+   /**
+    * Placeholder for a conversion method that does not exist, as
+    * {@link ClassCache} does not accept <code>null</code> values.
+    */
+   private static final Object NO_METHOD = new Object();
+
+   /**
+    * The primitive types, indexed by their wrapper class.
+    */
+   private static final Map<Class<?>,Class<?>> PRIMITIVE_TYPES = new HashMap<Class<?>,Class<?>>();
+
+   /**
+    * The cached information about the classes, including the copy plans
+    * used by {@link #populate(Object,Object,Properties)}. Never
+    * <code>null</code>.
+    *
+    * <p>The caches do not keep the classes from being garbage collected, so
+    * that the class loader of a web application can be discarded when it is
+    * redeployed.
+    */
+   private static final ClassCache<ClassInfo> CLASS_INFO = new ClassCache<ClassInfo>();
+
+   /**
+    * The cached methods that convert a <code>String</code> to an object of
+    * a class, either a {@link Method} or {@link #NO_METHOD}, indexed by the
+    * class. Never <code>null</code>.
+    */
+   private static final ClassCache<Object> STRING_CONVERTERS = new ClassCache<Object>();
+
+   /**
+    * The cached <code>getItemByValue</code> methods of the enumeration
+    * types, indexed by the class of the enumeration items. Never
+    * <code>null</code>.
+    */
+   private static final ClassCache<Method> ENUM_CONVERTERS = new ClassCache<Method>();
+
+   static {
+      PRIMITIVE_TYPES.put(Boolean.class, Boolean.TYPE);
+      PRIMITIVE_TYPES.put(Byte.class,    Byte.TYPE);
+      PRIMITIVE_TYPES.put(Short.class,   Short.TYPE);
+      PRIMITIVE_TYPES.put(Integer.class, Integer.TYPE);
+      PRIMITIVE_TYPES.put(Long.class,    Long.TYPE);
+      PRIMITIVE_TYPES.put(Float.class,   Float.TYPE);
+      PRIMITIVE_TYPES.put(Double.class,  Double.TYPE);
+   }
 
    /**
     * Get the values returned by the get methods of the source object and
@@ -102,61 +156,111 @@ public class BeanUtils {
       // Check preconditions
       MandatoryArgumentChecker.check("source", source, "destination", destination);
       
-      // Go through all get methods of the source object
-      Method[] sourceMethods = source.getClass().getMethods();
-      for (int i = 0; i < sourceMethods.length; i++) {
-         String getMethodName = sourceMethods[i].getName();
-         Class getMethodReturnType = sourceMethods[i].getReturnType();
-         if ((getMethodName.startsWith("get") && getMethodName.length() > 3 && !getMethodName.equals("getClass")) ||
-               (getMethodName.startsWith("is") && getMethodName.length() > 2 &&
-                  (getMethodReturnType == Boolean.class || getMethodReturnType == Boolean.TYPE)) ||
-               (getMethodName.startsWith("has") && getMethodName.length() > 3 &&
-                  (getMethodReturnType == Boolean.class || getMethodReturnType == Boolean.TYPE))) {
+      // Copy the value of each get method to the matching set method
+      ClassInfo destInfo = getClassInfo(destination.getClass());
+      PropertyCopy[] plan = getCopyPlan(source.getClass(), destInfo, propertiesMapping);
+      for (int i = 0; i < plan.length; i++) {
+         PropertyCopy copy = plan[i];
 
-            // Determine the name of the set method
-            String destProperty = null;
-            if (getMethodName.startsWith("is")) {
-               destProperty = getMethodName.substring(2);
-            } else {
-               destProperty = getMethodName.substring(3);
-            }
-            if (propertiesMapping != null && propertiesMapping.getProperty(destProperty) != null) {
-               destProperty = propertiesMapping.getProperty(destProperty);
-            }
-            String setMethodName = "set" + destProperty;
-
-            // Invoke the set method with the value returned by the get method
-            try {
-               Object value = sourceMethods[i].invoke(source);
-               if (value != null) {
-                  Object setValue = convertObject(value, destination, destProperty);
-                  if (setValue != null) {
-                     invokeMethod(destination, setMethodName, setValue);
-                  }
+         // Invoke the set method with the value returned by the get method
+         try {
+            Object value = copy._getMethod.invoke(source);
+            if (value != null) {
+               Object setValue = convertObject(value, copy._conversionMethods);
+               if (setValue != null) {
+                  invokeMethod(destination, destInfo, copy._setMethodName, setValue);
                }
-            } catch (Exception nsmex) {
-
-               // Ignore this property
-               Utils.logIgnoredException(nsmex);
             }
+         } catch (Exception nsmex) {
+
+            // Ignore this property
+            Utils.logIgnoredException(nsmex);
          }
       }
 
       // If the source object has a data section, fill the destination with it
-      try {
-         Method dataElementMethod = source.getClass().getMethod("dataElement");
-         Object dataElement = dataElementMethod.invoke(source);
-         if ("org.xins.client.DataElement".equals(dataElement.getClass().getName())) {
-            Method toXMLElementMethod = dataElement.getClass().getMethod("toXMLElement");
-            Element element = (Element) toXMLElementMethod.invoke(dataElement);
-            xmlToObject(element, destination);
+      Method dataElementMethod = getClassInfo(source.getClass())._dataElementMethod;
+      if (dataElementMethod != null) {
+         try {
+            Object dataElement = dataElementMethod.invoke(source);
+            if ("org.xins.client.DataElement".equals(dataElement.getClass().getName())) {
+               Method toXMLElementMethod = getClassInfo(dataElement.getClass())._toXMLElementMethod;
+               Element element = (Element) toXMLElementMethod.invoke(dataElement);
+               xmlToObject(element, destination);
+            }
+         } catch (Exception e) {
+            // Probably no data section
          }
-      } catch (Exception e) {
-         // Probably no method found
       }
       return destination;
    }
 
+   /**
+    * Gets the cached information about a class, creating it if needed.
+    *
+    * @param type
+    *    the class, cannot be <code>null</code>.
+    *
+    * @return
+    *    the information about the class, never <code>null</code>.
+    */
+   private static ClassInfo getClassInfo(Class<?> type) {
+      ClassInfo info = CLASS_INFO.get(type);
+      if (info == null) {
+         info = new ClassInfo(type);
+         CLASS_INFO.put(type, info);
+      }
+      return info;
+   }
+
+   /**
+    * Gets the cached plan to copy the properties from an object of the
+    * source class to an object of the destination class, creating it if
+    * needed.
+    *
+    * @param sourceClass
+    *    the class of the source object, cannot be <code>null</code>.
+    * @param destInfo
+    *    the information about the class of the destination object, cannot be <code>null</code>.
+    * @param propertiesMapping
+    *    the mapping between properties which does not have the same name, can be <code>null</code>.
+    *
+    * @return
+    *    the properties to copy, never <code>null</code>.
+    */
+   private static PropertyCopy[] getCopyPlan(Class<?> sourceClass, ClassInfo destInfo, Properties propertiesMapping) {
+
+      // Take a snapshot of the mapping, as the Properties object may change
+      Map<String,String> mapping = null;
+      if (propertiesMapping != null && ! propertiesMapping.isEmpty()) {
+         mapping = new HashMap<String,String>();
+         Enumeration<?> names = propertiesMapping.propertyNames();
+         while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            mapping.put(name, propertiesMapping.getProperty(name));
+         }
+      }
+
+      PlanKey key = new PlanKey(sourceClass, mapping);
+      PropertyCopy[] plan = destInfo._copyPlans.get(key);
+      if (plan == null) {
+         Getter[] getters = getClassInfo(sourceClass)._getters;
+         plan = new PropertyCopy[getters.length];
+         for (int i = 0; i < getters.length; i++) {
+
+            // Determine the name of the set method
+            String destProperty = getters[i]._property;
+            if (mapping != null && mapping.get(destProperty) != null) {
+               destProperty = mapping.get(destProperty);
+            }
+            Method[] conversionMethods = destInfo.getMethods("set" + TextUtils.firstCharUpper(destProperty));
+            plan[i] = new PropertyCopy(getters[i]._method, "set" + destProperty, conversionMethods);
+         }
+         destInfo._copyPlans.put(key, plan);
+      }
+      return plan;
+   }
+
    /**
     * Converts the source object to an object of another class.
     *
@@ -181,9 +285,13 @@ public class BeanUtils {
             
          // Convert a String or an EnumItem to another EnumItem
          if (EnumItem.class.isAssignableFrom(destClass)) {
-            String enumTypeClassName = destClass.getName().substring(0, destClass.getName().length() - 5);
-            Object          enumType = Class.forName(enumTypeClassName).getDeclaredField("SINGLETON").get(null);
-            Method  conversionMethod = enumType.getClass().getMethod("getItemByValue", STRING_CLASS);
+            Method  conversionMethod = ENUM_CONVERTERS.get(destClass);
+            if (conversionMethod == null) {
+               String enumTypeClassName = destClass.getName().substring(0, destClass.getName().length() - 5);
+               Object          enumType = Class.forName(enumTypeClassName).getDeclaredField("SINGLETON").get(null);
+               conversionMethod = enumType.getClass().getMethod("getItemByValue", STRING_CLASS);
+               ENUM_CONVERTERS.put(destClass, conversionMethod);
+            }
             Object[]   convertParams = {origValue.toString()};
             Object      convertedObj = conversionMethod.invoke(null, convertParams);
             return convertedObj;
@@ -216,23 +324,23 @@ public class BeanUtils {
 
          // Convert a ListItem to a collection
          } else if (origValue instanceof ItemList && Collection.class.isAssignableFrom(destClass)) {
-            Class collectionClass = destClass;
+            Class<?> collectionClass = destClass;
             if (destClass.isAssignableFrom(AbstractList.class) || destClass == List.class || destClass == Collection.class) {
                collectionClass = ArrayList.class;
             } else if (destClass.isAssignableFrom(AbstractSet.class) || destClass == Set.class) {
                collectionClass = HashSet.class;
             }
-            Collection destValue = (Collection) collectionClass.newInstance();
-            Collection values = ((ItemList) origValue).get();
+            Collection<Object> destValue = (Collection<Object>) collectionClass.newInstance();
+            Collection<?> values = ((ItemList) origValue).get();
             destValue.addAll(values);
             return destValue;
 
          // Convert a Date or Calendar to a Date.Value or a Timestamp.Value
          } else if ((origValue instanceof java.util.Date | origValue instanceof Calendar) &&
                (destClass == Date.Value.class || destClass == Timestamp.Value.class)) {
-            Class[] idemClass = {origValue.getClass()};
+            Class<?>[] idemClass = {origValue.getClass()};
             Object[] valueArgs = {origValue};
-            Constructor dateConstructor = destClass.getConstructor(idemClass);
+            Constructor<?> dateConstructor = destClass.getConstructor(idemClass);
             return dateConstructor.newInstance(valueArgs);
 
          // Convert a Date.Value to a Date
@@ -245,36 +353,13 @@ public class BeanUtils {
 
          // Convert a String to whatever is asked
          } else if (origValue instanceof String) {
-            Method conversionMethod = null;
-            if (destClass.isPrimitive()) {
-               if (destClass == Byte.TYPE) {
-                  destClass = Byte.class;
-               } else if (destClass == Short.TYPE) {
-                  destClass = Short.class;
-               } else if (destClass == Integer.TYPE) {
-                  destClass = Integer.class;
-               } else if (destClass == Long.TYPE) {
-                  destClass = Long.class;
-               } else if (destClass == Float.TYPE) {
-                  destClass = Float.class;
-               } else if (destClass == Double.TYPE) {
-                  destClass = Double.class;
-               }
-            }
-            try {
-               conversionMethod = destClass.getMethod("valueOf", STRING_CLASS);
-            } catch (NoSuchMethodException nsmex) {
-               //Ignore
-            }
+            Object conversionMethod = STRING_CONVERTERS.get(destClass);
             if (conversionMethod == null) {
-               try {
-                  conversionMethod = destClass.getMethod("fromStringForOptional", STRING_CLASS);
-               } catch (NoSuchMethodException nsmex) {
-                  //Ignore
-               }
+               conversionMethod = getStringConverter(destClass);
+               STRING_CONVERTERS.put(destClass, conversionMethod);
             }
-            if (conversionMethod != null) {
-               return conversionMethod.invoke(null, origValue.toString());
+            if (conversionMethod != NO_METHOD) {
+               return ((Method) conversionMethod).invoke(null, origValue.toString());
             }
 
          // Convert a Number to the primitive type
@@ -288,6 +373,50 @@ public class BeanUtils {
       return null;
    }
 
+   /**
+    * Finds the method that converts a <code>String</code> to an object of
+    * the specified class.
+    *
+    * @param destClass
+    *    the class to convert to, cannot be <code>null</code>.
+    *
+    * @return
+    *    the static <code>valueOf</code> or
+    *    <code>fromStringForOptional</code> method, or {@link #NO_METHOD} if
+    *    there is none, never <code>null</code>.
+    */
+   private static Object getStringConverter(Class<?> destClass) {
+      Method conversionMethod = null;
+      if (destClass.isPrimitive()) {
+         if (destClass == Byte.TYPE) {
+            destClass = Byte.class;
+         } else if (destClass == Short.TYPE) {
+            destClass = Short.class;
+         } else if (destClass == Integer.TYPE) {
+            destClass = Integer.class;
+         } else if (destClass == Long.TYPE) {
+            destClass = Long.class;
+         } else if (destClass == Float.TYPE) {
+            destClass = Float.class;
+         } else if (destClass == Double.TYPE) {
+            destClass = Double.class;
+         }
+      }
+      try {
+         conversionMethod = destClass.getMethod("valueOf", STRING_CLASS);
+      } catch (NoSuchMethodException nsmex) {
+         //Ignore
+      }
+      if (conversionMethod == null) {
+         try {
+            conversionMethod = destClass.getMethod("fromStringForOptional", STRING_CLASS);
+         } catch (NoSuchMethodException nsmex) {
+            //Ignore
+         }
+      }
+      return (conversionMethod == null) ? NO_METHOD : conversionMethod;
+   }
+
    /**
     * Converts the value of an object to another object in case that the
     * set method doesn't accept the same obejct as the get method.
@@ -307,24 +436,36 @@ public class BeanUtils {
     */
    private static Object convertObject(Object origValue, Object destination, String property) throws Exception {
       String setMethodName = "set" + TextUtils.firstCharUpper(property);
+      return convertObject(origValue, getClassInfo(destination.getClass()).getMethods(setMethodName));
+   }
+
+   /**
+    * Converts the value of an object to the type of one of the specified
+    * set methods.
+    *
+    * @param origValue
+    *    the original value of the object to be converted, if needed. Cannot be <code>null</code>.
+    * @param setMethods
+    *    the set methods of the destination property, cannot be <code>null</code>.
+    *
+    * @return
+    *    the converted object, or <code>null</code> if it cannot be converted.
+    */
+   private static Object convertObject(Object origValue, Method[] setMethods) {
 
       // First test if the method with the same class as source exists
-      try {
-         Class[] idemClass = {origValue.getClass()};
-         destination.getClass().getMethod(setMethodName, idemClass);
-         return origValue;
-      } catch (NoSuchMethodException nsmex) {
-         // Ignore, try to find the other methods
+      Class<?> origClass = origValue.getClass();
+      for (int i = 0; i < setMethods.length; i++) {
+         if (setMethods[i].getParameterTypes()[0] == origClass) {
+            return origValue;
+         }
       }
 
-      Method[] destMethods = destination.getClass().getMethods();
-      for (int i = 0; i < destMethods.length; i++) {
-         if (destMethods[i].getName().equals(setMethodName)) {
-            Class destClass = destMethods[i].getParameterTypes()[0];
-            Object converted = convert(origValue, destClass);
-            if (converted != null) {
-               return converted;
-            }
+      for (int i = 0; i < setMethods.length; i++) {
+         Class<?> destClass = setMethods[i].getParameterTypes()[0];
+         Object converted = convert(origValue, destClass);
+         if (converted != null) {
+            return converted;
          }
       }
 
@@ -352,7 +493,7 @@ public class BeanUtils {
     * @since XINS 2.0
     */
    public static Object xmlToObject(Element element, Object result,
-         Map elementMapping, Map attributeMapping) {
+         Map<?,?> elementMapping, Map<?,?> attributeMapping) {
       return xmlToObject(element, result, elementMapping, attributeMapping, true);
    }
 
@@ -392,7 +533,7 @@ public class BeanUtils {
     *    the result object filled with the values of the element object, never <code>null</code>.
     */
    private static Object xmlToObject(Element element, Object result,
-         Map elementMapping, Map attributeMapping, boolean topLevel) {
+         Map<?,?> elementMapping, Map<?,?> attributeMapping, boolean topLevel) {
 
       // Short-circuit if arg is null
       if (element == null) {
@@ -400,9 +541,9 @@ public class BeanUtils {
       }
       String elementName = element.getLocalName();
       if (topLevel && elementName.equals("data")) {
-         Iterator itChildren = element.getChildElements().iterator();
+         Iterator<Element> itChildren = element.getChildElements().iterator();
          while (itChildren.hasNext()) {
-            Element nextChild = (Element) itChildren.next();
+            Element nextChild = itChildren.next();
             xmlToObject(nextChild, result, elementMapping, attributeMapping, true);
          }
       } else {
@@ -411,7 +552,7 @@ public class BeanUtils {
             if (elementMapping != null && elementMapping.containsKey(elementName)) {
                hungarianName = TextUtils.firstCharUpper((String) elementMapping.get(elementName));
             }
-            Class[] argsClasses = {getElementClass(hungarianName, result)};
+            Class<?>[] argsClasses = {getElementClass(hungarianName, result)};
             Method addMethod = result.getClass().getMethod("add" + hungarianName, argsClasses);
             Object childElement = elementToObject(element, result, elementMapping, attributeMapping);
             if (childElement != null) {
@@ -440,13 +581,13 @@ public class BeanUtils {
     * @throws ClassNotFoundException
     *    if the class cannot be found.
     */
-   private static Class getElementClass(String hungarianName, Object result) throws ClassNotFoundException {
+   private static Class<?> getElementClass(String hungarianName, Object result) throws ClassNotFoundException {
       String elementClassName = result.getClass().getName();
       if (elementClassName.indexOf("$") != -1) {
          elementClassName = elementClassName.substring(0, elementClassName.indexOf("$"));
       }
       elementClassName += "$" + hungarianName;
-      Class elementClass = Class.forName(elementClassName);
+      Class<?> elementClass = Class.forName(elementClassName);
       return elementClass;
    }
 
@@ -467,7 +608,7 @@ public class BeanUtils {
     * @return
     *    the result object filled with the values of the element object, never <code>null</code>.
     */
-   private static Object elementToObject(Element element, Object result, Map elementMapping, Map attributeMapping) {
+   private static Object elementToObject(Element element, Object result, Map<?,?> elementMapping, Map<?,?> attributeMapping) {
       String elementName = element.getLocalName();
       String hungarianName = TextUtils.firstCharUpper(elementName);
       if (elementMapping != null && elementMapping.containsKey(elementName)) {
@@ -483,14 +624,14 @@ public class BeanUtils {
       }
 
       // Copy the attributes
-      Iterator itAttr = element.getAttributeMap().entrySet().iterator();
+      Iterator<Map.Entry<Element.QualifiedName,String>> itAttr = element.getAttributeMap().entrySet().iterator();
       while (itAttr.hasNext()) {
-         Map.Entry attr = (Map.Entry) itAttr.next();
-         String name = ((Element.QualifiedName) attr.getKey()).getLocalName();
+         Map.Entry<Element.QualifiedName,String> attr = itAttr.next();
+         String name = attr.getKey().getLocalName();
          if (attributeMapping != null && attributeMapping.containsKey(name)) {
             name = (String) attributeMapping.get(name);
          }
-         String value = (String) attr.getValue();
+         String value = attr.getValue();
          try {
             Object setArg = convertObject(value, newElement, name);
             invokeMethod(newElement, "set" + TextUtils.firstCharUpper(name), setArg);
@@ -512,9 +653,9 @@ public class BeanUtils {
       }
 
       // Copy the children
-      Iterator itChildren = element.getChildElements().iterator();
+      Iterator<Element> itChildren = element.getChildElements().iterator();
       while (itChildren.hasNext()) {
-         Element child = (Element) itChildren.next();
+         Element child = itChildren.next();
          xmlToObject(child, newElement, elementMapping, attributeMapping, false);
       }
 
@@ -545,32 +686,15 @@ public class BeanUtils {
 
       // Go through all get methods of the source object
       LinkedHashMap<String, Object> valuesMap = new LinkedHashMap<String, Object>();
-      Method[] sourceMethods = source.getClass().getMethods();
-      for (int i = 0; i < sourceMethods.length; i++) {
-         String getMethodName = sourceMethods[i].getName();
-         Class getMethodReturnType = sourceMethods[i].getReturnType();
-         if ((getMethodName.startsWith("get") && getMethodName.length() > 3 && !getMethodName.equals("getClass")) ||
-               (getMethodName.startsWith("is") && getMethodName.length() > 2 &&
-                  (getMethodReturnType == Boolean.class || getMethodReturnType == Boolean.TYPE)) ||
-               (getMethodName.startsWith("has") && getMethodName.length() > 3 &&
-                  (getMethodReturnType == Boolean.class || getMethodReturnType == Boolean.TYPE))) {
-
-            // Determine the name of the property
-            String propertyName = null;
-            if (getMethodName.startsWith("is")) {
-               propertyName = getMethodName.substring(2);
-            } else {
-               propertyName = getMethodName.substring(3);
-            }
-            propertyName = TextUtils.firstCharLower(propertyName);
-            try {
-               Object propertyValue = sourceMethods[i].invoke(source);
-               if (propertyValue != null) {
-                  valuesMap.put(propertyName, propertyValue);
-               }
-            } catch (Exception ex) {
-               Utils.logIgnoredException(ex);
+      Getter[] getters = getClassInfo(source.getClass())._getters;
+      for (int i = 0; i < getters.length; i++) {
+         try {
+            Object propertyValue = getters[i]._method.invoke(source);
+            if (propertyValue != null) {
+               valuesMap.put(getters[i]._parameterName, propertyValue);
             }
+         } catch (Exception ex) {
+            Utils.logIgnoredException(ex);
          }
       }
       return valuesMap;
@@ -597,10 +721,10 @@ public class BeanUtils {
    public static Map<String, String> getParametersAsString(Object source) throws IllegalArgumentException {
       LinkedHashMap<String, String> stringMap = new LinkedHashMap<String, String>();
       Map<String, Object> originalMap = getParameters(source);
-      Iterator itParams = originalMap.entrySet().iterator();
+      Iterator<Map.Entry<String, Object>> itParams = originalMap.entrySet().iterator();
       while (itParams.hasNext()) {
-         Map.Entry nextParam = (Map.Entry) itParams.next();
-         String paramName = (String) nextParam.getKey();
+         Map.Entry<String, Object> nextParam = itParams.next();
+         String paramName = nextParam.getKey();
          Object paramValue = nextParam.getValue();
          String stringValue = String.valueOf(paramValue);
          stringMap.put(paramName, stringValue);
@@ -629,10 +753,10 @@ public class BeanUtils {
    public static Map<String, Object> getParametersAsObject(Object source) throws IllegalArgumentException {
       LinkedHashMap<String, Object> objectMap = new LinkedHashMap<String, Object>();
       Map<String, Object> originalMap = getParameters(source);
-      Iterator itParams = originalMap.entrySet().iterator();
+      Iterator<Map.Entry<String, Object>> itParams = originalMap.entrySet().iterator();
       while (itParams.hasNext()) {
-         Map.Entry nextParam = (Map.Entry) itParams.next();
-         String paramName = (String) nextParam.getKey();
+         Map.Entry<String, Object> nextParam = itParams.next();
+         String paramName = nextParam.getKey();
          Object paramValue = nextParam.getValue();
 
          // Convertion of the XINS types.
@@ -678,14 +802,14 @@ public class BeanUtils {
     *
     * @since XINS 2.0
     */
-   public static Object setParameters(Map properties, Object destination) throws IllegalArgumentException {
+   public static Object setParameters(Map<?,?> properties, Object destination) throws IllegalArgumentException {
 
       MandatoryArgumentChecker.check("properties", properties, "destination", destination);
 
       // Go through all properties and find the set method
-      Iterator itProperties = properties.entrySet().iterator();
+      Iterator<? extends Map.Entry<?,?>> itProperties = properties.entrySet().iterator();
       while (itProperties.hasNext()) {
-         Map.Entry nextProp = (Map.Entry) itProperties.next();
+         Map.Entry<?,?> nextProp = itProperties.next();
          try {
             String propertyName = (String) nextProp.getKey();
             Object propertyValue = nextProp.getValue();
@@ -715,24 +839,307 @@ public class BeanUtils {
     *    if the call to the method failed for any reason.
     */
    private static void invokeMethod(Object destination, String methodName, Object argument) throws Exception {
-      Class<? extends Object> argumentClass = argument.getClass();
-      Class[] argsClasses = { argumentClass };
-      if (argument instanceof Boolean) {
-         try {
-            destination.getClass().getMethod(methodName, argsClasses);
-         } catch (NoSuchMethodException nsmex) {
-            argumentClass = Boolean.TYPE;
+      invokeMethod(destination, getClassInfo(destination.getClass()), methodName, argument);
+   }
+
+   /**
+    * Invokes the given method with the given argument. If there is no method
+    * for the class of a <code>Boolean</code> or <code>Number</code>
+    * argument, the method for the primitive type is invoked.
+    *
+    * @param destination
+    *    the object upon which the method should be invoked, cannnot be <code>null</code>.
+    *
+    * @param destInfo
+    *    the information about the class of the destination object, cannot be <code>null</code>.
+    *
+    * @param methodName
+    *    the name of the method to invoke, cannot be <code>null</code>.
+    *
+    * @param argument
+    *    the argument for the method, cannot be <code>null</code>.
+    *
+    * @throws Exception
+    *    if the call to the method failed for any reason.
+    */
+   private static void invokeMethod(Object destination, ClassInfo destInfo, String methodName, Object argument) throws Exception {
+      Class<?> argumentClass = argument.getClass();
+      Method setMethod = destInfo.getMethod(methodName, argumentClass);
+      if (setMethod == null && (argument instanceof Boolean || argument instanceof Number)) {
+         setMethod = destInfo.getMethod(methodName, PRIMITIVE_TYPES.get(argumentClass));
+      }
+      if (setMethod == null) {
+         throw new NoSuchMethodException(destInfo._type.getName() + '.' + methodName + '(' + argumentClass.getName() + ')');
+      }
+      setMethod.invoke(destination, argument);
+   }
+
+   /**
+    * Information about a class, determined once using reflection.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class ClassInfo {
+
+      /**
+       * The class. Never <code>null</code>.
+       */
+      private final Class<?> _type;
+
+      /**
+       * The get methods of the class. Never <code>null</code>.
+       */
+      private final Getter[] _getters;
+
+      /**
+       * The public methods of the class that have one parameter, indexed by
+       * name. Never <code>null</code>.
+       */
+      private final Map<String,Method[]> _methods;
+
+      /**
+       * The <code>dataElement()</code> method of the class, or
+       * <code>null</code> if there is none.
+       */
+      private final Method _dataElementMethod;
+
+      /**
+       * The <code>toXMLElement()</code> method of the class, or
+       * <code>null</code> if there is none.
+       */
+      private final Method _toXMLElementMethod;
+
+      /**
+       * The cached plans to copy the properties of other objects to an
+       * object of this class. Never <code>null</code>.
+       */
+      private final Map<PlanKey,PropertyCopy[]> _copyPlans = new ConcurrentHashMap<PlanKey,PropertyCopy[]>();
+
+      /**
+       * Constructs a new <code>ClassInfo</code> object.
+       *
+       * @param type
+       *    the class, cannot be <code>null</code>.
+       */
+      ClassInfo(Class<?> type) {
+         _type = type;
+
+         List<Getter> getters = new ArrayList<Getter>();
+         Map<String,List<Method>> methods = new HashMap<String,List<Method>>();
+         Method dataElementMethod  = null;
+         Method toXMLElementMethod = null;
+         Method[] allMethods = type.getMethods();
+         for (int i = 0; i < allMethods.length; i++) {
+            Method method = allMethods[i];
+            String name = method.getName();
+            int paramCount = method.getParameterTypes().length;
+            Class<?> returnType = method.getReturnType();
+            boolean booleanType = returnType == Boolean.class || returnType == Boolean.TYPE;
+            if ((name.startsWith("get") && name.length() > 3 && !name.equals("getClass")) ||
+                  (name.startsWith("is") && name.length() > 2 && booleanType) ||
+                  (name.startsWith("has") && name.length() > 3 && booleanType)) {
+               getters.add(new Getter(method, name.startsWith("is") ? name.substring(2) : name.substring(3)));
+            }
+            if (paramCount == 1) {
+               List<Method> sameName = methods.get(name);
+               if (sameName == null) {
+                  sameName = new ArrayList<Method>();
+                  methods.put(name, sameName);
+               }
+               sameName.add(method);
+            } else if (paramCount == 0 && name.equals("dataElement")) {
+               dataElementMethod = method;
+            } else if (paramCount == 0 && name.equals("toXMLElement")) {
+               toXMLElementMethod = method;
+            }
          }
-      } else if (argument instanceof Number) {
-         try {
-            destination.getClass().getMethod(methodName, argsClasses);
-         } catch (NoSuchMethodException nsmex) {
-            argumentClass = (Class<? extends Object>) argumentClass.getDeclaredField("TYPE").get(argument);
+
+         _getters = getters.toArray(new Getter[getters.size()]);
+         _methods = new HashMap<String,Method[]>();
+         for (Map.Entry<String,List<Method>> entry : methods.entrySet()) {
+            List<Method> sameName = entry.getValue();
+            _methods.put(entry.getKey(), sameName.toArray(new Method[sameName.size()]));
          }
+         _dataElementMethod  = dataElementMethod;
+         _toXMLElementMethod = toXMLElementMethod;
+      }
+
+      /**
+       * Gets the public methods with the specified name that have one
+       * parameter.
+       *
+       * @param name
+       *    the name of the methods, cannot be <code>null</code>.
+       *
+       * @return
+       *    the methods, never <code>null</code>.
+       */
+      Method[] getMethods(String name) {
+         Method[] methods = _methods.get(name);
+         return (methods == null) ? new Method[0] : methods;
+      }
+
+      /**
+       * Gets the public method with the specified name and parameter type.
+       *
+       * @param name
+       *    the name of the method, cannot be <code>null</code>.
+       *
+       * @param parameterType
+       *    the type of the parameter, can be <code>null</code>.
+       *
+       * @return
+       *    the method, or <code>null</code> if there is none.
+       */
+      Method getMethod(String name, Class<?> parameterType) {
+         Method[] methods = _methods.get(name);
+         if (methods != null) {
+            for (int i = 0; i < methods.length; i++) {
+               if (methods[i].getParameterTypes()[0] == parameterType) {
+                  return methods[i];
+               }
+            }
+         }
+         return null;
+      }
+   }
+
+   /**
+    * A get method of a class.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class Getter {
+
+      /**
+       * The get method. Never <code>null</code>.
+       */
+      private final Method _method;
+
+      /**
+       * The name of the property, without the <code>get</code>,
+       * <code>is</code> or <code>has</code> prefix. Never <code>null</code>.
+       */
+      private final String _property;
+
+      /**
+       * The name of the property starting with a lowercase, as returned by
+       * {@link BeanUtils#getParameters(Object)}. Never <code>null</code>.
+       */
+      private final String _parameterName;
+
+      /**
+       * Constructs a new <code>Getter</code> object.
+       *
+       * @param method
+       *    the get method, cannot be <code>null</code>.
+       *
+       * @param property
+       *    the name of the property, cannot be <code>null</code>.
+       */
+      Getter(Method method, String property) {
+         _method        = method;
+         _property      = property;
+         _parameterName = TextUtils.firstCharLower(property);
+      }
+   }
+
+   /**
+    * The copy of a single property from a source object to a destination
+    * object, as part of a copy plan.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class PropertyCopy {
+
+      /**
+       * The get method of the source object. Never <code>null</code>.
+       */
+      private final Method _getMethod;
+
+      /**
+       * The name of the set method of the destination object. Never
+       * <code>null</code>.
+       */
+      private final String _setMethodName;
+
+      /**
+       * The set methods of the destination object used to determine to which
+       * type the value should be converted. Never <code>null</code>.
+       */
+      private final Method[] _conversionMethods;
+
+      /**
+       * Constructs a new <code>PropertyCopy</code> object.
+       *
+       * @param getMethod
+       *    the get method of the source object, cannot be <code>null</code>.
+       *
+       * @param setMethodName
+       *    the name of the set method of the destination object, cannot be <code>null</code>.
+       *
+       * @param conversionMethods
+       *    the set methods that determine the conversion, cannot be <code>null</code>.
+       */
+      PropertyCopy(Method getMethod, String setMethodName, Method[] conversionMethods) {
+         _getMethod         = getMethod;
+         _setMethodName     = setMethodName;
+         _conversionMethods = conversionMethods;
+      }
+   }
+
+   /**
+    * Key of a cached copy plan of a destination class: the source class and
+    * the mapping between the properties.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class PlanKey {
+
+      /**
+       * The class of the source object. Never <code>null</code>.
+       */
+      private final Class<?> _sourceClass;
+
+      /**
+       * The mapping between the properties, or <code>null</code> if none.
+       */
+      private final Map<String,String> _mapping;
+
+      /**
+       * Constructs a new <code>PlanKey</code> object.
+       *
+       * @param sourceClass
+       *    the class of the source object, cannot be <code>null</code>.
+       *
+       * @param mapping
+       *    the mapping between the properties, or <code>null</code> if none.
+       */
+      PlanKey(Class<?> sourceClass, Map<String,String> mapping) {
+         _sourceClass = sourceClass;
+         _mapping     = mapping;
+      }
+
+      public boolean equals(Object obj) {
+         if (! (obj instanceof PlanKey)) {
+            return false;
+         }
+         PlanKey other = (PlanKey) obj;
+         return _sourceClass == other._sourceClass
+               && (_mapping == null ? other._mapping == null : _mapping.equals(other._mapping));
+      }
+
+      public int hashCode() {
+         return 31 * _sourceClass.hashCode()
+               + (_mapping == null ? 0 : _mapping.hashCode());
       }
-      Class[] argsClasses2 = { argumentClass };
-      Object[] args = { argument };
-      Method setMethod = destination.getClass().getMethod(methodName, argsClasses2);
-      setMethod.invoke(destination, args);
    }
 }
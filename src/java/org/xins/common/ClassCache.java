@@ -0,0 +1,133 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of values computed for a class, that does not keep the class or its
+ * class loader from being garbage collected. The classes are referenced
+ * weakly and the values softly, as the values typically refer to the class,
+ * for example through {@link java.lang.reflect.Method} objects. When a web
+ * application is redeployed, the entries for its classes are removed once
+ * its class loader is collected.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class ClassCache<V> {
+
+   /**
+    * The cached values, indexed by class. Never <code>null</code>.
+    */
+   private final ConcurrentHashMap<ClassKey,SoftReference<V>> _entries = new ConcurrentHashMap<ClassKey,SoftReference<V>>();
+
+   /**
+    * The queue of the keys of which the class has been collected. Never
+    * <code>null</code>.
+    */
+   private final ReferenceQueue<Class<?>> _collected = new ReferenceQueue<Class<?>>();
+
+   /**
+    * Constructs a new empty <code>ClassCache</code>.
+    */
+   ClassCache() {
+      // empty
+   }
+
+   /**
+    * Gets the cached value for the specified class.
+    *
+    * @param type
+    *    the class, cannot be <code>null</code>.
+    *
+    * @return
+    *    the value, or <code>null</code> if there is none or if it has been
+    *    garbage collected.
+    */
+   V get(Class<?> type) {
+      removeCollected();
+      SoftReference<V> reference = _entries.get(new ClassKey(type, null));
+      return (reference == null) ? null : reference.get();
+   }
+
+   /**
+    * Caches the value for the specified class.
+    *
+    * @param type
+    *    the class, cannot be <code>null</code>.
+    *
+    * @param value
+    *    the value, cannot be <code>null</code>.
+    */
+   void put(Class<?> type, V value) {
+      removeCollected();
+      _entries.put(new ClassKey(type, _collected), new SoftReference<V>(value));
+   }
+
+   /**
+    * Removes the entries of the classes that have been garbage collected.
+    */
+   private void removeCollected() {
+      Reference<? extends Class<?>> key;
+      while ((key = _collected.poll()) != null) {
+         _entries.remove(key);
+      }
+   }
+
+   /**
+    * Weak reference to a class, used as the key of a cache entry. Two keys
+    * are equal if they refer to the same class.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class ClassKey extends WeakReference<Class<?>> {
+
+      /**
+       * The identity hash code of the class.
+       */
+      private final int _hashCode;
+
+      /**
+       * Constructs a new <code>ClassKey</code>.
+       *
+       * @param type
+       *    the class, cannot be <code>null</code>.
+       *
+       * @param queue
+       *    the queue to register the key with, or <code>null</code> if the
+       *    key is only used for a lookup.
+       */
+      ClassKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+         super(type, queue);
+         _hashCode = System.identityHashCode(type);
+      }
+
+      public boolean equals(Object obj) {
+         if (obj == this) {
+            return true;
+         } else if (! (obj instanceof ClassKey)) {
+            return false;
+         }
+         Class<?> type = get();
+         return type != null && type == ((ClassKey) obj).get();
+      }
+
+      public int hashCode() {
+         return _hashCode;
+      }
+   }
+}
@@ -0,0 +1,222 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values, such as call durations, with
+ * logarithmic buckets.
+ *
+ * <p>Values below 16 each have their own bucket. Above that, every power of
+ * two is split in 16 buckets of equal width, so the value reported for a
+ * percentile is at most 6.25% higher than the actual value. Values of
+ * 2<sup>36</sup> and above are all counted in the last bucket.
+ *
+ * <p>Recording a value does not allocate any objects and does not lock.
+ * The buckets are spread over a few stripes, selected by thread ID, so that
+ * threads recording the same value rarely update the same memory location.
+ *
+ * <p>Disclaimer: This class should only be used by XINS self.
+ * This class can be removed from XINS at any time.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class LatencyHistogram {
+
+   /**
+    * The number of bits of a value that determine the bucket within a power
+    * of two.
+    */
+   private static final int SUB_BITS = 4;
+
+   /**
+    * The number of buckets per power of two.
+    */
+   private static final int SUB_COUNT = 1 << SUB_BITS;
+
+   /**
+    * The highest power of two that has its own buckets.
+    */
+   private static final int MAX_EXPONENT = 35;
+
+   /**
+    * The number of buckets.
+    */
+   static final int BUCKETS = SUB_COUNT + (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT;
+
+   /**
+    * The number of stripes, a power of 2.
+    */
+   private static final int STRIPES = Math.min(StripedCounter.STRIPES, 4);
+
+   /**
+    * Determines the bucket for the specified value.
+    *
+    * @param value
+    *    the value, must be &gt;= 0.
+    *
+    * @return
+    *    the index of the bucket.
+    */
+   static int bucket(long value) {
+      if (value < SUB_COUNT) {
+         return (int) value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      if (exponent > MAX_EXPONENT) {
+         return BUCKETS - 1;
+      }
+      int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_COUNT;
+      return SUB_COUNT + (exponent - SUB_BITS) * SUB_COUNT + sub;
+   }
+
+   /**
+    * Determines the highest value that is counted in the specified bucket.
+    *
+    * @param bucket
+    *    the index of the bucket.
+    *
+    * @return
+    *    the highest value in the bucket.
+    */
+   static long highestValue(int bucket) {
+      if (bucket < SUB_COUNT) {
+         return bucket;
+      }
+      int exponent = (bucket - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+      int sub      = (bucket - SUB_COUNT) % SUB_COUNT;
+      return ((long) (SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1L;
+   }
+
+   /**
+    * The counts, per stripe and per bucket. Never <code>null</code>.
+    */
+   private final AtomicLongArray _counts;
+
+   /**
+    * Constructs a new, empty <code>LatencyHistogram</code>.
+    */
+   public LatencyHistogram() {
+      _counts = new AtomicLongArray(STRIPES * BUCKETS);
+   }
+
+   /**
+    * Records a value.
+    *
+    * @param value
+    *    the value to record; negative values are recorded as 0.
+    */
+   public void record(long value) {
+      int bucket = bucket(value < 0L ? 0L : value);
+      _counts.incrementAndGet(StripedCounter.stripe(STRIPES) * BUCKETS + bucket);
+   }
+
+   /**
+    * Returns the number of values recorded in each bucket.
+    *
+    * @return
+    *    the counts per bucket, never <code>null</code>.
+    */
+   private long[] snapshot() {
+      long[] counts = new long[BUCKETS];
+      for (int stripe = 0; stripe < STRIPES; stripe++) {
+         int offset = stripe * BUCKETS;
+         for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += _counts.get(offset + i);
+         }
+      }
+      return counts;
+   }
+
+   /**
+    * Returns the number of recorded values.
+    *
+    * @return
+    *    the number of recorded values, always &gt;= 0.
+    */
+   public long getCount() {
+      long count = 0L;
+      for (int i = 0; i < _counts.length(); i++) {
+         count += _counts.get(i);
+      }
+      return count;
+   }
+
+   /**
+    * Returns the values at the specified percentiles. The value at a
+    * percentile <em>p</em> is the lowest value for which at least
+    * <em>p</em>% of the recorded values are lower or equal, rounded up to
+    * the highest value of its bucket.
+    *
+    * @param percentiles
+    *    the percentiles, each between 0.0 and 100.0, cannot be
+    *    <code>null</code>.
+    *
+    * @return
+    *    the values at the percentiles, in the same order; each value is
+    *    <code>-1L</code> if no values have been recorded. Never
+    *    <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>percentiles == null</code> or if one of the percentiles is
+    *    not between 0.0 and 100.0.
+    */
+   public long[] getValuesAtPercentiles(double... percentiles)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("percentiles", percentiles);
+      for (int i = 0; i < percentiles.length; i++) {
+         if (! (percentiles[i] >= 0.0 && percentiles[i] <= 100.0)) {
+            throw new IllegalArgumentException("percentiles[" + i + "] (" + percentiles[i] + ") is not between 0.0 and 100.0");
+         }
+      }
+
+      long[] counts = snapshot();
+      long total = 0L;
+      for (int i = 0; i < BUCKETS; i++) {
+         total += counts[i];
+      }
+
+      long[] values = new long[percentiles.length];
+      for (int i = 0; i < percentiles.length; i++) {
+         if (total == 0L) {
+            values[i] = -1L;
+            continue;
+         }
+         long rank = (long) Math.ceil(percentiles[i] / 100.0 * total);
+         if (rank < 1L) {
+            rank = 1L;
+         }
+         long cumulative = 0L;
+         int bucket = 0;
+         for (; bucket < BUCKETS - 1; bucket++) {
+            cumulative += counts[bucket];
+            if (cumulative >= rank) {
+               break;
+            }
+         }
+         values[i] = highestValue(bucket);
+      }
+      return values;
+   }
+
+   /**
+    * Removes all recorded values. Values recorded at the same time may or
+    * may not be lost.
+    */
+   public void reset() {
+      for (int i = 0; i < _counts.length(); i++) {
+         _counts.set(i, 0L);
+      }
+   }
+}
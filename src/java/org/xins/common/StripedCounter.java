@@ -0,0 +1,132 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that can be updated by many threads at the same time with little
+ * contention. The value is spread over a number of cells; each thread
+ * updates the cell selected by its thread ID and the cells are only added
+ * up when the value is read.
+ *
+ * <p>Reading the value while other threads update it, returns a value that
+ * is not necessarily a snapshot of one particular moment.
+ *
+ * <p>Disclaimer: This class should only be used by XINS self.
+ * This class can be removed from XINS at any time.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class StripedCounter {
+
+   /**
+    * The number of cells, a power of 2.
+    */
+   static final int STRIPES;
+
+   /**
+    * The distance between two cells, in <code>long</code>s, so that each
+    * cell is on a separate cache line.
+    */
+   private static final int PADDING = 8;
+
+   static {
+      int processors = Runtime.getRuntime().availableProcessors();
+      int stripes = 1;
+      while (stripes < processors * 2 && stripes < 64) {
+         stripes <<= 1;
+      }
+      STRIPES = stripes;
+   }
+
+   /**
+    * Returns the index of the stripe to use for the current thread.
+    *
+    * @param stripes
+    *    the number of stripes, must be a power of 2.
+    *
+    * @return
+    *    the index of the stripe, between 0 (inclusive) and
+    *    <code>stripes</code> (exclusive).
+    */
+   static int stripe(int stripes) {
+      long id = Thread.currentThread().getId();
+      int h = (int) (id ^ (id >>> 32));
+      h ^= h >>> 16;
+      h *= 0x45D9F3B;
+      h ^= h >>> 16;
+      return h & (stripes - 1);
+   }
+
+   /**
+    * The cells. Never <code>null</code>.
+    */
+   private final AtomicLongArray _cells;
+
+   /**
+    * Constructs a new <code>StripedCounter</code> with value 0.
+    */
+   public StripedCounter() {
+      _cells = new AtomicLongArray(STRIPES * PADDING);
+   }
+
+   /**
+    * Adds the specified value to this counter.
+    *
+    * @param value
+    *    the value to add, can be negative.
+    */
+   public void add(long value) {
+      _cells.addAndGet(stripe(STRIPES) * PADDING, value);
+   }
+
+   /**
+    * Adds one to this counter.
+    */
+   public void increment() {
+      add(1L);
+   }
+
+   /**
+    * Returns the value of this counter.
+    *
+    * @return
+    *    the sum of all cells.
+    */
+   public long get() {
+      long sum = 0L;
+      for (int i = 0; i < STRIPES; i++) {
+         sum += _cells.get(i * PADDING);
+      }
+      return sum;
+   }
+
+   /**
+    * Resets this counter to 0. Updates that happen at the same time may or
+    * may not be lost.
+    */
+   public void reset() {
+      for (int i = 0; i < STRIPES; i++) {
+         _cells.set(i * PADDING, 0L);
+      }
+   }
+
+   /**
+    * Returns the value of this counter as a string.
+    *
+    * @return
+    *    the value, never <code>null</code>.
+    */
+   public String toString() {
+      return String.valueOf(get());
+   }
+}
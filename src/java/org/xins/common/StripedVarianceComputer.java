@@ -0,0 +1,196 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Continuous computation of mean and variance in a set of positive long
+ * numbers, that can be updated by many threads at the same time without
+ * locking. Each thread adds its values to the stripe selected by its thread
+ * ID, the same way as {@link StripedCounter}. A stripe holds an immutable
+ * partial result that is replaced with a compare-and-set, so adding a value
+ * never blocks; the partial results are only combined when they are read.
+ *
+ * <p>The mean and the variance are computed with Welford's online algorithm
+ * and the partial results are combined with the parallel algorithm of Chan
+ * et al. Unlike the sum of the squares, this does not lose precision for
+ * large values and the variance can never become negative.
+ *
+ * <p>Reading the mean or the variance while other threads add values,
+ * returns a value that is not necessarily a snapshot of one particular
+ * moment.
+ *
+ * <p>Disclaimer: This class should only be used by XINS self.
+ * This class can be removed from XINS at any time.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class StripedVarianceComputer {
+
+   /**
+    * The partial result without any values.
+    */
+   private static final Partial EMPTY = new Partial(0L, 0.0, 0.0);
+
+   /**
+    * The partial results, one per stripe. Never <code>null</code>.
+    */
+   private final AtomicReferenceArray<Partial> _stripes;
+
+   /**
+    * Constructs a new <code>StripedVarianceComputer</code> object.
+    */
+   public StripedVarianceComputer() {
+      _stripes = new AtomicReferenceArray<Partial>(StripedCounter.STRIPES);
+      for (int i = 0; i < _stripes.length(); i++) {
+         _stripes.set(i, EMPTY);
+      }
+   }
+
+   /**
+    * Adds another value.
+    *
+    * @param value
+    *    the value to add, must be &gt;= 0L.
+    */
+   public void add(long value) {
+      int stripe = StripedCounter.stripe(_stripes.length());
+      Partial current;
+      do {
+         current = _stripes.get(stripe);
+      } while (! _stripes.compareAndSet(stripe, current, current.add(value)));
+   }
+
+   /**
+    * Combines the partial results of all stripes.
+    *
+    * @return
+    *    an array with the count, the mean and the sum of the squared
+    *    differences from the mean, in that order, never <code>null</code>.
+    */
+   private double[] combine() {
+      double count = 0.0;
+      double mean  = 0.0;
+      double m2    = 0.0;
+      for (int i = 0; i < _stripes.length(); i++) {
+         Partial stripe = _stripes.get(i);
+         double n = (double) stripe._count;
+         if (n == 0.0) {
+            continue;
+         }
+         double total = count + n;
+         double delta = stripe._mean - mean;
+         mean  += delta * n / total;
+         m2    += stripe._m2 + delta * delta * count * n / total;
+         count  = total;
+      }
+      return new double[] { count, count == 0.0 ? Double.NaN : mean, m2 };
+   }
+
+   /**
+    * Retrieves the total number of times a value was added.
+    *
+    * @return
+    *    the count.
+    */
+   public long getCount() {
+      return (long) combine()[0];
+   }
+
+   /**
+    * Retrieves the mean.
+    *
+    * @return
+    *    the average, initially {@link Double#NaN}.
+    */
+   public double getMean() {
+      return combine()[1];
+   }
+
+   /**
+    * Retrieves the variance.
+    *
+    * @return
+    *    the deviation, initially 0.0.
+    */
+   public double getVariance() {
+      double[] result = combine();
+      return result[0] < 2.0 ? 0.0 : result[2] / (result[0] - 1.0);
+   }
+
+   /**
+    * Removes all values added so far. Values that are added at the same
+    * time may or may not be lost.
+    */
+   public void reset() {
+      for (int i = 0; i < _stripes.length(); i++) {
+         _stripes.set(i, EMPTY);
+      }
+   }
+
+   /**
+    * Immutable partial result of one stripe.
+    */
+   private static final class Partial {
+
+      /**
+       * The number of values.
+       */
+      final long _count;
+
+      /**
+       * The mean of the values.
+       */
+      final double _mean;
+
+      /**
+       * The sum of the squared differences from the mean.
+       */
+      final double _m2;
+
+      /**
+       * Constructs a new <code>Partial</code>.
+       *
+       * @param count
+       *    the number of values.
+       *
+       * @param mean
+       *    the mean of the values.
+       *
+       * @param m2
+       *    the sum of the squared differences from the mean.
+       */
+      Partial(long count, double mean, double m2) {
+         _count = count;
+         _mean  = mean;
+         _m2    = m2;
+      }
+
+      /**
+       * Computes the partial result with one more value, using Welford's
+       * algorithm.
+       *
+       * @param value
+       *    the value to add.
+       *
+       * @return
+       *    the new partial result, never <code>null</code>.
+       */
+      Partial add(long value) {
+         long   count = _count + 1L;
+         double x     = (double) value;
+         double delta = x - _mean;
+         double mean  = _mean + delta / count;
+         return new Partial(count, mean, _m2 + delta * (x - mean));
+      }
+   }
+}
@@ -6,9 +6,26 @@
  */
 package org.xins.common;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Utility class for executing a task with a certain time-out period.
  *
+ * <p>A task is either executed on a new thread (see
+ * {@link #execute(Runnable,int)}) or on a thread provided by an
+ * {@link ExecutorService} (see
+ * {@link #execute(Runnable,int,ExecutorService)}). The latter avoids the
+ * creation of a thread per task.
+ *
  * @version $Revision: 1.25 $ $Date: 2007/03/16 09:54:58 $
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
  *
@@ -23,6 +40,49 @@ public final class TimeOutController {
       // empty
    }
 
+   /**
+    * Creates a bounded executor that can be passed to
+    * {@link #execute(Runnable,int,ExecutorService)}. The threads of the
+    * executor are daemon threads. Tasks that are submitted while all threads
+    * are busy are queued; the time spent in the queue counts towards the
+    * time-out of the task.
+    *
+    * @param name
+    *    the name prefix for the threads, cannot be <code>null</code>.
+    *
+    * @param maxThreads
+    *    the maximum number of threads, must be &gt; 0.
+    *
+    * @return
+    *    a new executor, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>name == null || maxThreads &lt;= 0</code>.
+    *
+    * @since XINS 3.0
+    */
+   public static ExecutorService createExecutor(final String name, int maxThreads)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("name", name);
+      if (maxThreads <= 0) {
+         throw new IllegalArgumentException("maxThreads (" + maxThreads + ") <= 0");
+      }
+
+      ThreadFactory threadFactory = new ThreadFactory() {
+         private final AtomicInteger _threadCount = new AtomicInteger();
+         public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, name + " #" + _threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      };
+
+      return new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), threadFactory);
+   }
+
    /**
     * Runs the specified task with a specific time-out. If the task does
     * not finish within the specified time-out period, then the thread
@@ -75,8 +135,8 @@ public final class TimeOutController {
       if (task instanceof Thread) {
          thread = (Thread) task;
       } else {
-         // XXX: To improve performance and manageability, we could use a
-         //      thread pool like the one that is available in J2SE 5.0.
+         // NOTE: To avoid creating a thread per task, use
+         //       execute(Runnable,int,ExecutorService) instead.
          thread = new Thread(task);
       }
 
@@ -99,4 +159,99 @@ public final class TimeOutController {
          throw new TimeOutException();
       }
    }
+
+   /**
+    * Runs the specified task with a specific time-out, using the specified
+    * executor. If the task does not finish within the specified time-out
+    * period, then the task is cancelled, which interrupts the thread
+    * executing it, and a {@link TimeOutException} is thrown.
+    *
+    * <p>If <code>executor</code> is <code>null</code> or if it rejects the
+    * task, for example because it was shut down, then the task is run on a
+    * new thread, see {@link #execute(Runnable,int)}.
+    *
+    * @param task
+    *    the task to run, cannot be <code>null</code>.
+    *
+    * @param timeOut
+    *    the timeOut in milliseconds, must be &gt; 0.
+    *
+    * @param executor
+    *    the executor that runs the task, or <code>null</code> if the task
+    *    should be run on a new thread.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>task == null || timeOut &lt;= 0</code>.
+    *
+    * @throws IllegalThreadStateException
+    *    if the task is run on a new thread and it is a {@link Thread} that is
+    *    already started.
+    *
+    * @throws SecurityException
+    *    if the task did not finish within the total time-out period, but
+    *    the interruption of the thread was disallowed (see
+    *    {@link Thread#interrupt()}); consequently, the thread may still be
+    *    running.
+    *
+    * @throws TimeOutException
+    *    if the task did not finish within the total time-out period and was
+    *    cancelled.
+    *
+    * @since XINS 3.0
+    */
+   public static void execute(Runnable task, int timeOut, ExecutorService executor)
+   throws IllegalArgumentException,
+          IllegalThreadStateException,
+          SecurityException,
+          TimeOutException {
+
+      // Without an executor, use a thread
+      if (executor == null) {
+         execute(task, timeOut);
+         return;
+      }
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("task", task);
+      if (timeOut <= 0) {
+         throw new IllegalArgumentException("timeOut (" + timeOut + ") <= 0");
+      }
+
+      // Submit the task, fall back to a new thread if it is rejected
+      Future<?> future;
+      try {
+         future = executor.submit(task);
+      } catch (RejectedExecutionException exception) {
+         Utils.logIgnoredException(exception);
+         execute(task, timeOut);
+         return;
+      }
+
+      // Wait for the task to finish, within limits
+      try {
+         future.get(timeOut, TimeUnit.MILLISECONDS);
+
+      // If the task is still running at this point, it should stop
+      } catch (TimeoutException exception) {
+         future.cancel(true);
+         throw new TimeOutException();
+
+      // The waiting thread was interrupted, stop the task as well
+      } catch (InterruptedException exception) {
+         future.cancel(true);
+         Thread.currentThread().interrupt();
+         throw new TimeOutException();
+
+      // The task threw an exception, like it would on a thread, let the
+      // uncaught exception handling deal with it
+      } catch (ExecutionException exception) {
+         Throwable cause = exception.getCause();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         } else if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw Utils.logProgrammingError(cause);
+      }
+   }
 }
@@ -9,8 +9,9 @@ package org.xins.common.collections.expiry;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.xins.common.Log;
 import org.xins.common.MandatoryArgumentChecker;
@@ -29,6 +30,14 @@ import org.xins.common.text.TextUtils;
  * multiple times, it will receive the events multiple times as well. And it
  * will have to be removed multiple times as well.
  *
+ * <p>The entries are divided over a number of segments, based on the hash
+ * code of the key. Each segment has a concurrent map with its entries and a
+ * wheel of slots that determines at which tick an entry is checked for
+ * expiry. Looking up an entry does not lock; extending its lifetime only
+ * updates its expiry time, the entry is moved to a later slot when its
+ * current slot comes up. Storing an entry and expiring entries lock only
+ * the segment of the entry.
+ *
  * <p>This class is thread-safe.
  *
  * @version $Revision: 1.61 $ $Date: 2007/09/18 11:21:11 $
@@ -45,10 +54,9 @@ public final class ExpiryFolder {
    private static final String CLASSNAME = ExpiryFolder.class.getName();
 
    /**
-    * The initial size for the queue of threads waiting to obtain read or
-    * write access to a resource.
+    * The number of segments, a power of 2.
     */
-   private static final int INITIAL_QUEUE_SIZE = 89;
+   private static final int SEGMENT_COUNT = 16;
 
    /**
     * The number of instances of this class.
@@ -60,11 +68,6 @@ public final class ExpiryFolder {
     */
    private static final Object INSTANCE_COUNT_LOCK = new Object();
 
-   /**
-    * Lock object.
-    */
-   private final Object _lock;
-
    /**
     * The instance number of this instance.
     */
@@ -78,13 +81,18 @@ public final class ExpiryFolder {
    /**
     * The strategy used. This field cannot be <code>null</code>.
     */
-   private ExpiryStrategy _strategy;
+   private final ExpiryStrategy _strategy;
+
+   /**
+    * The time-out of the strategy, in milliseconds.
+    */
+   private final long _timeOut;
 
    /**
     * Flag that indicates whether the associated strategy has already stopped.
     * If it has, then this folder becomes invalid.
     */
-   private boolean _strategyStopped;
+   private volatile boolean _strategyStopped;
 
    /**
     * String representation. Cannot be <code>null</code>.
@@ -92,36 +100,14 @@ public final class ExpiryFolder {
    private final String _asString;
 
    /**
-    * The most recently accessed entries. This field cannot be
-    * <code>null</code>. The entries in this map will expire after
-    * {@link ExpiryStrategy#getTimeOut()} milliseconds, plus at maximum
-    * {@link ExpiryStrategy#getPrecision()} milliseconds.
-    */
-   private HashMap<Object, Entry> _recentlyAccessed;
-
-   /**
-    * Number of active slots. Always equals
-    * {@link #_slots}<code>.length</code>.
-    */
-   private final int _slotCount;
-
-   /**
-    * The index of the last slot. This is always
-    * {@link #_slotCount}<code> - 1</code>.
-    */
-   private final int _lastSlot;
-
-   /**
-    * Slots to contain the maps with entries that are not the most recently
-    * accessed. The further back in the array, the sooner the entries will
-    * expire.
+    * The segments. Never <code>null</code>.
     */
-   private HashMap<Object,Entry>[] _slots;
+   private final Segment[] _segments;
 
    /**
     * The set of listeners. May be empty, but never is <code>null</code>.
     */
-   private ArrayList<ExpiryListener> _listeners;
+   private final CopyOnWriteArrayList<ExpiryListener> _listeners;
 
    /**
     * Constructs a new <code>ExpiryFolder</code> with the specified name and
@@ -153,27 +139,22 @@ public final class ExpiryFolder {
          _instanceNum = INSTANCE_COUNT++;
       }
 
-      String constructorDetail = "#" + _instanceNum + " [name=" + TextUtils.quote(name)
-            + "; strategy=" + TextUtils.quote(strategy.toString()) + ']';
-
       // Check arguments
       MandatoryArgumentChecker.check("name", name, "strategy", strategy);
 
+      String constructorDetail = "#" + _instanceNum + " [name=" + TextUtils.quote(name)
+            + "; strategy=" + TextUtils.quote(strategy.toString()) + ']';
+
       // Initialize fields
-      _lock             = new Object();
       _name             = name;
       _strategy         = strategy;
+      _timeOut          = strategy.getTimeOut();
       _strategyStopped  = false;
       _asString         = CLASSNAME + ' ' + constructorDetail;
-      _recentlyAccessed = new HashMap<Object, Entry>(INITIAL_QUEUE_SIZE);
-      _slotCount        = strategy.getSlotCount();
-      _slots            = new HashMap[_slotCount];
-      _lastSlot         = _slotCount - 1;
-      _listeners        = new ArrayList<ExpiryListener>(5);
-
-      // Initialize all slots to a new HashMap
-      for (int i = 0; i < _slotCount; i++) {
-         _slots[i] = new HashMap<Object, Entry>(INITIAL_QUEUE_SIZE);
+      _listeners        = new CopyOnWriteArrayList<ExpiryListener>();
+      _segments         = new Segment[SEGMENT_COUNT];
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+         _segments[i] = new Segment(strategy.getSlotCount(), strategy.getPrecision());
       }
 
       // Notify the strategy that we listen to it. If the strategy has already
@@ -204,13 +185,50 @@ public final class ExpiryFolder {
     * it was stopped.
     */
    void strategyStopped() {
-      synchronized (_lock) {
-         _strategyStopped = true;
-         _strategy         = null;
-         _recentlyAccessed = null;
-         _slots            = null;
-         _listeners        = null;
+      _strategyStopped = true;
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+         _segments[i].clear();
+      }
+      _listeners.clear();
+   }
+
+   /**
+    * Returns the segment for the specified key.
+    *
+    * @param key
+    *    the key, cannot be <code>null</code>.
+    *
+    * @return
+    *    the segment, never <code>null</code>.
+    */
+   private Segment segmentFor(final Object key) {
+
+      // Spread the bits, so that keys with poor hash codes are divided over
+      // the segments as well
+      int h = key.hashCode();
+      h ^= (h >>> 20) ^ (h >>> 12);
+      h ^= (h >>> 7) ^ (h >>> 4);
+      return _segments[h & (SEGMENT_COUNT - 1)];
+   }
+
+   /**
+    * Returns the non-expired entries in this folder.
+    *
+    * @return
+    *    the references of the non-expired entries, indexed by key, never
+    *    <code>null</code>.
+    */
+   private Map<Object, Object> snapshot() {
+      long now = System.currentTimeMillis();
+      HashMap<Object, Object> map = new HashMap<Object, Object>();
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+         for (Entry entry : _segments[i]._entries.values()) {
+            if (! entry.isExpired(now)) {
+               map.put(entry._key, entry._reference);
+            }
+         }
       }
+      return map;
    }
 
    /**
@@ -231,33 +249,14 @@ public final class ExpiryFolder {
 
       if (obj instanceof ExpiryFolder) {
          ExpiryFolder that = (ExpiryFolder) obj;
-
-         // Avoid a potential deadlock by always locking on the instance with
-         // the lowest instance number first
-         Object firstLock  = (_instanceNum < that._instanceNum) ? _lock : that._lock;
-         Object secondLock = (_instanceNum < that._instanceNum) ? that._lock : _lock;
-         synchronized (firstLock) {
-            synchronized (secondLock) {
-               if (_strategy.equals(that._strategy)) {
-                  if (_name.equals(that._name)) {
-                     if (_recentlyAccessed.equals(that._recentlyAccessed)) {
-                        equal = true;
-                        for (int i = 0; i < _slotCount && equal; i++) {
-                           if (! _slots[i].equals(that._slots[i])) {
-                              equal = false;
-                           }
-                        }
-                     }
-                  }
-               }
-            }
-         }
+         equal = _strategy.equals(that._strategy)
+              && _name.equals(that._name)
+              && snapshot().equals(that.snapshot());
       }
 
       return equal;
    }
 
-
    /**
     * Returns a hash code value for the object.
     *
@@ -307,71 +306,11 @@ public final class ExpiryFolder {
       // Check state
       assertStrategyNotStopped();
 
-      HashMap<Object, Entry> toBeExpired;
+      // Expire the entries, one segment at a time
+      long now = System.currentTimeMillis();
       HashMap<Object, Object> refMap = null;
-      synchronized (_lock) {
-
-         // Shift the slots
-         toBeExpired = _slots[_lastSlot];
-         for (int i = _lastSlot; i > 0; i--) {
-            _slots[i] = _slots[i - 1];
-         }
-         _slots[0] = _recentlyAccessed;
-
-         // Removed the entries expired in the last slot
-         if (!_slots[_lastSlot].isEmpty()) {
-            Iterator iterator = _slots[_lastSlot].entrySet().iterator();
-            while (iterator.hasNext()) {
-
-               // Get the next Map.Entry from the iterator
-               Map.Entry me = (Map.Entry) iterator.next();
-
-               // Determine key and entry object
-               Object key   = me.getKey();
-               Entry  entry = (Entry) me.getValue();
-               if (entry.isExpired()) {
-                  iterator.remove();
-                  if (refMap == null) {
-                     refMap = new HashMap<Object, Object>();
-                  }
-                  refMap.put(key, entry.getReference());
-               }
-            }
-         }
-
-         // Copy all references from the wrapping Entry objects
-         if (!toBeExpired.isEmpty()) {
-            Iterator iterator = toBeExpired.entrySet().iterator();
-            while (iterator.hasNext()) {
-
-               // Get the next Map.Entry from the iterator
-               Map.Entry me = (Map.Entry) iterator.next();
-
-               // Get the key and the entry
-               Object key   = me.getKey();
-               Entry  entry = (Entry) me.getValue();
-
-               if (entry.isExpired()) {
-
-                  // Create a map for the object references, if necessary
-                  if (refMap == null) {
-                     refMap = new HashMap<Object, Object>();
-                  }
-
-                  // Store the entry that needs expiring in the refMap
-                  refMap.put(key, entry.getReference());
-               } else {
-                  String detail = "Entry marked for expiry should "
-                        + "have expired. Key as string is \""
-                        + entry.getReference().toString() + "\".";
-                  Utils.logProgrammingError(detail);
-               }
-            }
-         }
-
-         // Recycle the old HashMap
-         toBeExpired.clear();
-         _recentlyAccessed = toBeExpired;
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+         refMap = _segments[i].tick(now, refMap);
       }
 
       // Determine how may objects are to be sent to the listeners
@@ -383,24 +322,16 @@ public final class ExpiryFolder {
       Log.log_1400(_instanceNum, _name, refMapSize);
 
       // If set of objects for listeners is empty, then short-circuit
-      if (refMapSize < 1 || _listeners.size() < 1) {
+      if (refMapSize < 1 || _listeners.isEmpty()) {
          return;
       }
 
       // XXX: Should we do this in separate thread(s) ?
 
-      // Get a copy of the list of listeners
-      synchronized (_listeners) {
-
-         // If appropriate, notify the listeners
-         if (refMap != null && refMap.size() > 0) {
-            Map<Object, Object> unmodifiableExpired = Collections.unmodifiableMap(refMap);
-            int listenerCount = _listeners.size();
-            for (int i = 0; i < listenerCount; i++) {
-               ExpiryListener listener = _listeners.get(i);
-               listener.expired(this, unmodifiableExpired);
-            }
-         }
+      // Notify the listeners
+      Map<Object, Object> unmodifiableExpired = Collections.unmodifiableMap(refMap);
+      for (ExpiryListener listener : _listeners) {
+         listener.expired(this, unmodifiableExpired);
       }
    }
 
@@ -425,9 +356,7 @@ public final class ExpiryFolder {
       // Check arguments
       MandatoryArgumentChecker.check("listener", listener);
 
-      synchronized (_listeners) {
-         _listeners.add(listener);
-      }
+      _listeners.add(listener);
    }
 
    /**
@@ -453,47 +382,7 @@ public final class ExpiryFolder {
       // Check arguments
       MandatoryArgumentChecker.check("listener", listener);
 
-      synchronized (_listeners) {
-         _listeners.remove(listener);
-      }
-   }
-
-   /**
-    * Determines the number of non-expired entries in the specified
-    * <code>HashMap</code>. If any entries are expired, they will be removed.
-    *
-    * @param map
-    *    the map in which the non-expired entries are counted.
-    *
-    * @return
-    *    the size of the specified map, always &gt;= 0.
-    *
-    * @throws IllegalStateException
-    *    if the associated {@link ExpiryStrategy} has stopped already.
-    */
-   private int sizeOf(final Map<Object, Entry> map) throws IllegalStateException {
-
-      // Check state
-      assertStrategyNotStopped();
-
-      int size = 0;
-
-      synchronized (_lock) {
-         Iterator iterator = map.entrySet().iterator();
-         while (iterator.hasNext()) {
-
-            // Get the next Map.Entry from the iterator
-            Map.Entry me = (Map.Entry) iterator.next();
-
-            // Get the entry
-            Entry  entry = (Entry) me.getValue();
-            if (!entry.isExpired()) {
-               size++;
-            }
-         }
-      }
-
-      return size;
+      _listeners.remove(listener);
    }
 
    /**
@@ -511,23 +400,23 @@ public final class ExpiryFolder {
       // Check state
       assertStrategyNotStopped();
 
-      synchronized (_lock) {
-
-         int size = sizeOf(_recentlyAccessed);
-         for (int i = 0; i < _slotCount; i++) {
-            size += sizeOf(_slots[i]);
+      long now = System.currentTimeMillis();
+      int size = 0;
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+         for (Entry entry : _segments[i]._entries.values()) {
+            if (! entry.isExpired(now)) {
+               size++;
+            }
          }
-
-         return size;
       }
+      return size;
    }
 
    /**
     * Gets the value associated with a key and extends the lifetime of the
     * matching entry, if there was a match.
     *
-    * <p>The more recently the specified entry was accessed, the faster the
-    * lookup.
+    * <p>This method does not lock.
     *
     * @param key
     *    the key to lookup, cannot be <code>null</code>.
@@ -552,60 +441,28 @@ public final class ExpiryFolder {
       // Check arguments
       MandatoryArgumentChecker.check("key", key);
 
-      // Search in the recently accessed map first
-      Entry entry;
-      synchronized (_lock) {
-         entry = _recentlyAccessed.get(key);
-
-         // Entry found in recently accessed
-         if (entry != null) {
-
-            // Entry is already expired
-            if (entry.isExpired()) {
-               return null;
-
-            // Entry is not expired, touch it and return the reference
-            } else {
-               entry.touch();
-               return entry.getReference();
-            }
-
-         // Not found in recently accessed, look in slots
-         } else {
-
-            // Go through all slots
-            for (int i = 0; i < _slotCount; i++) {
-               entry = (Entry) _slots[i].remove(key);
-
-               if (entry != null) {
-
-                  // Entry is already expired, update the map and size and
-                  // return null
-                  if (entry.isExpired()) {
-                     return null;
-
-                  // Entry is not expired, touch it, store in the recently
-                  // accessed and return the reference
-                  } else {
-                     entry.touch();
-                     _recentlyAccessed.put(key, entry);
-                     return entry.getReference();
-                  }
-               }
-            }
+      Entry entry = segmentFor(key)._entries.get(key);
+      if (entry == null) {
+         return null;
+      }
 
-            // Nothing found in any of the slots
-            return null;
-         }
+      // Entry is already expired, it will be removed at the next tick that
+      // checks it
+      long now = System.currentTimeMillis();
+      if (entry.isExpired(now)) {
+         return null;
       }
+
+      // Entry is not expired, touch it and return the reference
+      entry.touch(now + _timeOut);
+      return entry._reference;
    }
 
    /**
     * Finds the value associated with a key. The lifetime of the matching
     * entry is not extended.
     *
-    * <p>The more recently the specified entry was accessed, the faster the
-    * lookup.
+    * <p>This method does not lock.
     *
     * @param key
     *    the key to lookup, cannot be <code>null</code>.
@@ -630,29 +487,11 @@ public final class ExpiryFolder {
       // Check arguments
       MandatoryArgumentChecker.check("key", key);
 
-      Object value;
-
-      // Search in the recently accessed map first
-      synchronized (_lock) {
-         value = _recentlyAccessed.get(key);
-
-         // If not found, then look in the slots
-         if (value == null) {
-            for (int i = 0; i < _slotCount && value == null; i++) {
-               value = _slots[i].get(key);
-            }
-         }
-      }
-
-      if (value == null) {
-         return null;
-      }
-
-      Entry entry = (Entry) value;
-      if (entry.isExpired()) {
+      Entry entry = segmentFor(key)._entries.get(key);
+      if (entry == null || entry.isExpired(System.currentTimeMillis())) {
          return null;
       } else {
-         return entry.getReference();
+         return entry._reference;
       }
    }
 
@@ -680,11 +519,8 @@ public final class ExpiryFolder {
       // Check arguments
       MandatoryArgumentChecker.check("key", key, "value", value);
 
-      // Store the association in the set of recently accessed entries
-      synchronized (_lock) {
-         Entry entry = new Entry(value);
-         _recentlyAccessed.put(key, entry);
-      }
+      Entry entry = new Entry(key, value, System.currentTimeMillis() + _timeOut);
+      segmentFor(key).put(entry);
    }
 
    /**
@@ -713,38 +549,20 @@ public final class ExpiryFolder {
       // Check arguments
       MandatoryArgumentChecker.check("key", key);
 
-      Object value;
-
-      // Remove the key in the set of recently accessed entries
-      synchronized (_recentlyAccessed) {
-         value = _recentlyAccessed.remove(key);
-      }
-
-      // If not found, then look in the slots
-      if (value == null) {
-         synchronized (_slots) {
-            for (int i = 0; i < _slotCount && value == null; i++) {
-               value = _slots[i].remove(key);
-            }
-         }
-      }
-
-      if (value == null) {
-         return null;
-      }
-
-      Entry entry = (Entry) value;
-      if (entry.isExpired()) {
+      // The entry stays in its slot until the slot comes up; it is skipped
+      // then, since it is no longer in the map
+      Entry entry = segmentFor(key)._entries.remove(key);
+      if (entry == null || entry.isExpired(System.currentTimeMillis())) {
          return null;
       } else {
-         return entry.getReference();
+         return entry._reference;
       }
    }
 
    /**
     * Copies the entries of this <code>ExpiryFolder</code> into another one.
-    * This method does not perform a deep copy, so if a key is added or
-    * removed, both folders will be modified.
+    * The entries in the other folder are replaced and keep the expiry time
+    * they have in this folder. The values themselves are not copied.
     *
     * @param newFolder
     *    the new folder where the entries should be copied into,
@@ -774,20 +592,18 @@ public final class ExpiryFolder {
          throw new IllegalArgumentException(detail);
       }
 
-      // Avoid a potential deadlock by always locking on the instance with the
-      // lowest instance number first
-      Object firstLock  = (_instanceNum < newFolder._instanceNum) ? _lock : newFolder._lock;
-      Object secondLock = (_instanceNum < newFolder._instanceNum) ? newFolder._lock : _lock;
-      synchronized (firstLock) {
-         synchronized (secondLock) {
-
-            // Copy the recentlyAccessed
-            newFolder._recentlyAccessed = new HashMap<Object, Entry>(_recentlyAccessed);
-
-            // Copy the slots
-            for (int i = 0; i < _slotCount && i < newFolder._slotCount; i++) {
-               newFolder._slots[i] = new HashMap<Object, Entry>(_slots[i]);
-            }
+      // Check state
+      assertStrategyNotStopped();
+      newFolder.assertStrategyNotStopped();
+
+      // Both folders have the same number of segments, so an entry ends up
+      // in the segment with the same index
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+         Segment source = _segments[i];
+         Segment target = newFolder._segments[i];
+         target.clear();
+         for (Entry entry : source._entries.values()) {
+            target.put(new Entry(entry._key, entry._reference, entry._expiryTime));
          }
       }
    }
@@ -822,100 +638,219 @@ public final class ExpiryFolder {
    }
 
    /**
-    * Entry in an expiry folder. Combination of the referenced object and a
-    * timestamp. The timestamp indicates when the object should be expired.
+    * Segment of an expiry folder. Contains the entries for a part of the
+    * keys and a wheel of slots that determines when each entry is checked.
     *
-    * @version $Revision: 1.61 $ $Date: 2007/09/18 11:21:11 $
-    * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
+    * <p>The map of entries is the authority: an entry that is in a slot
+    * but no longer in the map has been removed or replaced and is dropped
+    * when its slot comes up. The slots are guarded by the lock on the
+    * segment, the map is not.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
     */
-   private class Entry {
+   private static final class Segment {
+
       /**
-       * Constructs a new <code>Entry</code>.
-       *
-       * @param reference
-       *    reference to the object, should not be <code>null</code> (although
-       *    it is not checked).
+       * The entries, indexed by key. Never <code>null</code>.
        */
-      private Entry(final Object reference) {
-         _reference = reference;
-         touch();
-      }
+      private final ConcurrentHashMap<Object, Entry> _entries;
 
       /**
-       * Reference to the object. Should not be <code>null</code>.
+       * The slots, each with the entries to check at a certain tick. A slot
+       * is <code>null</code> if it is empty. Guarded by the lock on this
+       * segment.
        */
-      private final Object _reference;
+      private final ArrayList<Entry>[] _slots;
 
       /**
-       * The time at which this entry should expire.
+       * The tick interval, in milliseconds.
+       */
+      private final long _precision;
+
+      /**
+       * The index of the slot to check at the next tick. Guarded by the lock
+       * on this segment.
        */
-      private long _expiryTime;
+      private int _next;
 
       /**
-       * Returns a hash code value for the object.
+       * Constructs a new <code>Segment</code>.
        *
-       * @return
-       *    a hash code value for this object.
+       * @param slotCount
+       *    the number of slots of the strategy, must be &gt;= 1.
        *
-       * @see Object#hashCode()
-       * @see #equals(Object)
+       * @param precision
+       *    the tick interval of the strategy, in milliseconds.
        */
-      public int hashCode() {
-         return _reference.hashCode();
+      @SuppressWarnings("unchecked")
+      private Segment(int slotCount, long precision) {
+         _entries   = new ConcurrentHashMap<Object, Entry>(16, 0.75f, 4);
+         _slots     = new ArrayList[slotCount];
+         _precision = precision;
       }
 
       /**
-       * Checks whether this object is considered equal to the argument.
+       * Adds an entry to the slot that is checked the specified number of
+       * ticks from now.
        *
-       * @param obj
-       *    the object to compare with.
+       * @param entry
+       *    the entry, cannot be <code>null</code>.
        *
-       * @return
-       *    <code>true</code> if this object is considered equal to
-       *    <code>obj</code>, or <code>false</code> otherwise.
+       * @param ticks
+       *    the number of ticks, between 1 and the slot count.
+       */
+      private void schedule(Entry entry, int ticks) {
+         int index = (_next + ticks - 1) % _slots.length;
+         ArrayList<Entry> slot = _slots[index];
+         if (slot == null) {
+            slot = new ArrayList<Entry>();
+            _slots[index] = slot;
+         }
+         slot.add(entry);
+      }
+
+      /**
+       * Stores an entry, replacing any entry with the same key.
        *
-       * @see Object#equals(Object)
+       * @param entry
+       *    the entry, cannot be <code>null</code>.
+       */
+      private synchronized void put(Entry entry) {
+         _entries.put(entry._key, entry);
+         schedule(entry, _slots.length);
+      }
+
+      /**
+       * Removes all entries.
        */
-      public boolean equals(final Object obj) {
+      private synchronized void clear() {
+         _entries.clear();
+         for (int i = 0; i < _slots.length; i++) {
+            _slots[i] = null;
+         }
+      }
 
-         boolean equal;
+      /**
+       * Checks the entries in the current slot. Expired entries are removed,
+       * the others are moved to the slot that comes up at or after their
+       * expiry time.
+       *
+       * @param now
+       *    the current time, in milliseconds since the Epoch.
+       *
+       * @param refMap
+       *    the map to add the expired entries to, or <code>null</code>.
+       *
+       * @return
+       *    the map with the expired entries, can be <code>null</code> if it
+       *    was <code>null</code> and no entries expired.
+       */
+      private synchronized HashMap<Object, Object> tick(long now, HashMap<Object, Object> refMap) {
 
-         if (obj instanceof Entry) {
-            Entry that = (Entry) obj;
-            equal = _reference.equals(that._reference);
-         } else {
-            equal = false;
+         ArrayList<Entry> slot = _slots[_next];
+         _slots[_next] = null;
+         _next = (_next + 1) % _slots.length;
+         if (slot == null) {
+            return refMap;
          }
 
-         return equal;
+         for (int i = 0; i < slot.size(); i++) {
+            Entry entry = slot.get(i);
+
+            // Skip entries that were removed or replaced
+            if (_entries.get(entry._key) != entry) {
+               continue;
+            }
+
+            long expiryTime = entry._expiryTime;
+            if (now >= expiryTime) {
+               if (_entries.remove(entry._key, entry)) {
+                  if (refMap == null) {
+                     refMap = new HashMap<Object, Object>();
+                  }
+                  refMap.put(entry._key, entry._reference);
+               }
+            } else {
+
+               // The entry was touched, move it to the first slot that comes
+               // up at or after its expiry time
+               long ticks = (expiryTime - now + _precision - 1L) / _precision;
+               schedule(entry, (int) Math.max(1L, Math.min(ticks, _slots.length)));
+            }
+         }
+         return refMap;
       }
+   }
+
+   /**
+    * Entry in an expiry folder. Combination of the key, the referenced
+    * object and a timestamp. The timestamp indicates when the object should
+    * be expired.
+    *
+    * @version $Revision: 1.61 $ $Date: 2007/09/18 11:21:11 $
+    * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
+    */
+   private static final class Entry {
 
       /**
-       * Retrieves the reference to the object.
+       * Constructs a new <code>Entry</code>.
        *
-       * @return
-       *    the reference to the object, should not be <code>null</code>.
+       * @param key
+       *    the key, should not be <code>null</code> (although it is not
+       *    checked).
+       *
+       * @param reference
+       *    reference to the object, should not be <code>null</code> (although
+       *    it is not checked).
+       *
+       * @param expiryTime
+       *    the time at which this entry should expire.
        */
-      public Object getReference() {
-         return _reference;
+      private Entry(final Object key, final Object reference, final long expiryTime) {
+         _key        = key;
+         _reference  = reference;
+         _expiryTime = expiryTime;
       }
 
+      /**
+       * The key. Should not be <code>null</code>.
+       */
+      private final Object _key;
+
+      /**
+       * Reference to the object. Should not be <code>null</code>.
+       */
+      private final Object _reference;
+
+      /**
+       * The time at which this entry should expire.
+       */
+      private volatile long _expiryTime;
+
       /**
        * Checks if this entry is expired.
        *
+       * @param now
+       *    the current time, in milliseconds since the Epoch.
+       *
        * @return
        *    <code>true</code> if this entry is expired, <code>false</code>
        *    otherwise.
        */
-      public boolean isExpired() {
-         return System.currentTimeMillis() >= _expiryTime;
+      private boolean isExpired(final long now) {
+         return now >= _expiryTime;
       }
 
       /**
-       * Touches this entry, resetting the expiry time.
+       * Touches this entry, setting the expiry time.
+       *
+       * @param expiryTime
+       *    the new expiry time.
        */
-      public void touch() {
-         _expiryTime = System.currentTimeMillis() + _strategy.getTimeOut();
+      private void touch(final long expiryTime) {
+         _expiryTime = expiryTime;
       }
    }
 }
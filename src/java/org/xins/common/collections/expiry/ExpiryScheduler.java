@@ -0,0 +1,242 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common.collections.expiry;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+import org.xins.common.Log;
+import org.xins.common.Utils;
+
+/**
+ * Scheduler that generates the ticks for all expiry strategies, from a
+ * single thread.
+ *
+ * <p>The next tick of each strategy is kept in a queue ordered by time. The
+ * thread sleeps until the first tick is due and then performs all ticks that
+ * are due, in one go. When a tick is late, for example because a listener
+ * took long, then the missed ticks are performed immediately afterwards.
+ *
+ * <p>The thread is started when the first strategy is scheduled and stops
+ * when the last strategy is cancelled. As long as it runs, it prevents the
+ * JVM from exiting, just like the thread per strategy did before.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class ExpiryScheduler {
+
+   /**
+    * The name of the scheduler thread.
+    */
+   private static final String THREAD_NAME = "XINS expiry scheduler";
+
+   /**
+    * Lock object for the fields of this class.
+    */
+   private static final Object LOCK = new Object();
+
+   /**
+    * The scheduled ticks, the first one due first. Never <code>null</code>.
+    */
+   private static final PriorityQueue<Task> QUEUE = new PriorityQueue<Task>();
+
+   /**
+    * The scheduler thread, or <code>null</code> if it is not running.
+    */
+   private static Thread THREAD;
+
+   /**
+    * The number of tasks created, used to order tasks that are due at the
+    * same time.
+    */
+   private static long TASK_COUNT;
+
+   /**
+    * Constructs a new <code>ExpiryScheduler</code>. This constructor is
+    * private since this class cannot be instantiated.
+    */
+   private ExpiryScheduler() {
+      // empty
+   }
+
+   /**
+    * Schedules the ticks for the specified strategy. The first tick is due
+    * one precision interval from now.
+    *
+    * @param strategy
+    *    the strategy, cannot be <code>null</code>.
+    *
+    * @return
+    *    the task to pass to {@link #cancel(Task)} when the strategy stops,
+    *    never <code>null</code>.
+    */
+   static Task schedule(ExpiryStrategy strategy) {
+      synchronized (LOCK) {
+         Task task = new Task(strategy, TASK_COUNT++);
+         QUEUE.add(task);
+
+         if (THREAD == null) {
+            THREAD = new Thread(new Runnable() {
+               public void run() {
+                  runScheduler();
+               }
+            }, THREAD_NAME);
+            THREAD.setDaemon(false);
+            THREAD.start();
+         } else {
+            LOCK.notifyAll();
+         }
+         return task;
+      }
+   }
+
+   /**
+    * Cancels the ticks for a strategy. If the tick of the strategy is being
+    * performed right now, then that tick is completed, but no further ticks
+    * are performed.
+    *
+    * @param task
+    *    the task returned by {@link #schedule(ExpiryStrategy)}, cannot be
+    *    <code>null</code>.
+    */
+   static void cancel(Task task) {
+      synchronized (LOCK) {
+         task._cancelled = true;
+         QUEUE.remove(task);
+         LOCK.notifyAll();
+      }
+   }
+
+   /**
+    * Runs the scheduler, until there are no more strategies.
+    */
+   private static void runScheduler() {
+
+      ArrayList<Task> due = new ArrayList<Task>();
+      while (true) {
+
+         // Wait until one or more ticks are due and take them from the queue
+         synchronized (LOCK) {
+            while (due.isEmpty()) {
+               Task first = QUEUE.peek();
+               if (first == null) {
+                  THREAD = null;
+                  return;
+               }
+
+               long now   = System.currentTimeMillis();
+               long sleep = first._next - now;
+               if (sleep > 0L) {
+                  int instanceNum = first._strategy.getInstanceNum();
+                  Log.log_1404(instanceNum, sleep);
+                  try {
+                     LOCK.wait(sleep);
+                     Log.log_1406(instanceNum, System.currentTimeMillis() - now);
+                  } catch (InterruptedException exception) {
+                     Log.log_1405(instanceNum, System.currentTimeMillis() - now);
+                  }
+               } else {
+                  while (! QUEUE.isEmpty() && QUEUE.peek()._next <= now) {
+                     due.add(QUEUE.poll());
+                  }
+               }
+            }
+         }
+
+         // Perform the ticks, without holding the lock
+         for (int i = 0; i < due.size(); i++) {
+            Task task = due.get(i);
+            Log.log_1407(task._strategy.getInstanceNum());
+            try {
+               task._strategy.doTick();
+            } catch (Throwable exception) {
+               Utils.logIgnoredException(exception);
+            }
+         }
+
+         // Schedule the next ticks
+         synchronized (LOCK) {
+            for (int i = 0; i < due.size(); i++) {
+               Task task = due.get(i);
+               if (! task._cancelled) {
+                  task._next += task._precision;
+                  QUEUE.add(task);
+               }
+            }
+         }
+         due.clear();
+      }
+   }
+
+   /**
+    * The ticks of one expiry strategy.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   static final class Task implements Comparable<Task> {
+
+      /**
+       * The strategy. Never <code>null</code>.
+       */
+      private final ExpiryStrategy _strategy;
+
+      /**
+       * The interval between ticks, in milliseconds.
+       */
+      private final long _precision;
+
+      /**
+       * The sequence number of this task, to order tasks that are due at the
+       * same time.
+       */
+      private final long _sequence;
+
+      /**
+       * The time the next tick is due, in milliseconds since the Epoch.
+       * Guarded by {@link #LOCK}.
+       */
+      private long _next;
+
+      /**
+       * Flag that indicates whether this task was cancelled. Guarded by
+       * {@link #LOCK}.
+       */
+      private boolean _cancelled;
+
+      /**
+       * Constructs a new <code>Task</code>.
+       *
+       * @param strategy
+       *    the strategy, cannot be <code>null</code>.
+       *
+       * @param sequence
+       *    the sequence number.
+       */
+      private Task(ExpiryStrategy strategy, long sequence) {
+         _strategy  = strategy;
+         _precision = strategy.getPrecision();
+         _sequence  = sequence;
+         _next      = System.currentTimeMillis() + _precision;
+      }
+
+      public int compareTo(Task that) {
+         if (_next != that._next) {
+            return _next < that._next ? -1 : 1;
+         } else if (_sequence != that._sequence) {
+            return _sequence < that._sequence ? -1 : 1;
+         } else {
+            return 0;
+         }
+      }
+   }
+}
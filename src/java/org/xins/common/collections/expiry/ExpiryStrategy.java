@@ -16,10 +16,11 @@ import org.xins.common.Utils;
 /**
  * Expiry strategy. A strategy maintains a time-out and a time-out precision.
  *
- * <p>When an <code>ExpiryStrategy</code> is constructed, then an associated
- * thread is immediately constructed and started. This thread <em>must</em>
- * be stopped manually by calling {@link #stop()} as soon as the strategy is
- * no longer used.
+ * <p>When an <code>ExpiryStrategy</code> is constructed, then its ticks are
+ * immediately scheduled. All strategies share a single scheduler thread,
+ * which runs as long as there is at least one strategy that has not been
+ * stopped. A strategy <em>must</em> be stopped manually by calling
+ * {@link #stop()} as soon as it is no longer used.
  *
  * @version $Revision: 1.44 $ $Date: 2007/09/11 11:51:51 $
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
@@ -76,9 +77,9 @@ public final class ExpiryStrategy {
    private final ArrayList<WeakReference<ExpiryFolder>> _folders;
 
    /**
-    * The timer thread. Not <code>null</code>.
+    * The scheduled ticks. Not <code>null</code>.
     */
-   private final TimerThread _timerThread;
+   private final ExpiryScheduler.Task _task;
 
    /**
     * Hash code for this object. The hash code is a constant.
@@ -89,7 +90,7 @@ public final class ExpiryStrategy {
     * Flag that indicates if the time thread should stop or not. Initially
     * <code>false</code>, ofcourse.
     */
-   private boolean _stop;
+   private volatile boolean _stop;
 
    /**
     * Constructs a new <code>ExpiryStrategy</code> and starts the
@@ -154,12 +155,9 @@ public final class ExpiryStrategy {
       // Constructed an ExpiryStrategy instance
       Log.log_1409(_instanceNum, _timeOut, _precision);
 
-      // Create and start the timer thread. If no other threads are active,
-      // then neither should this timer thread, so do not mark as a daemon
-      // thread.
-      _timerThread = new TimerThread();
-      _timerThread.setDaemon(false);
-      _timerThread.start();
+      // Schedule the ticks on the shared scheduler thread
+      _task = ExpiryScheduler.schedule(this);
+      Log.log_1402(_instanceNum);
    }
 
    /**
@@ -205,6 +203,18 @@ public final class ExpiryStrategy {
        return _hashCode;
    }
 
+   /**
+    * Returns the unique instance number.
+    *
+    * @return
+    *    the unique instance number, which is <code>0</code> for the first
+    *    <code>ExpiryStrategy</code> instance, <code>1</code> for the second,
+    *    etc.
+    */
+   int getInstanceNum() {
+      return _instanceNum;
+   }
+
    /**
     * Returns the time-out.
     *
@@ -263,8 +273,8 @@ public final class ExpiryStrategy {
    }
 
    /**
-    * Stops the thread that generates ticks that are passed to the registered
-    * expiry folders.
+    * Stops generating ticks that are passed to the registered expiry
+    * folders.
     *
     * @throws IllegalStateException
     *    if this strategy was already stopped.
@@ -280,24 +290,27 @@ public final class ExpiryStrategy {
       // Set the stop flag
       _stop = true;
 
-      // Notify the timer thread
-      _timerThread.interrupt();
+      // Cancel the scheduled ticks
+      ExpiryScheduler.cancel(_task);
+      Log.log_1403(_instanceNum);
 
       // Notify all the associated ExpiryFolder instances that we are stopping
-      for (int i = 0; i < _folders.size(); i++) {
-         WeakReference<ExpiryFolder> ref = _folders.get(i);
-         ExpiryFolder             folder = ref.get();
-         if (folder != null) {
-            folder.strategyStopped();
+      synchronized (_folders) {
+         for (int i = 0; i < _folders.size(); i++) {
+            WeakReference<ExpiryFolder> ref = _folders.get(i);
+            ExpiryFolder             folder = ref.get();
+            if (folder != null) {
+               folder.strategyStopped();
+            }
          }
       }
    }
 
    /**
     * Callback method indicating the next tick has taken place. This method is
-    * called from (and on) the timer thread.
+    * called from (and on) the scheduler thread.
     */
-   private void doTick() {
+   void doTick() {
 
       // Do nothing if this strategy was already stopped
       if (_stop) {
@@ -334,88 +347,4 @@ public final class ExpiryStrategy {
    public String toString() {
       return _asString;
    }
-
-   /**
-    * Timer thread for an expiry strategy. It calls back the expiry strategy
-    * at each so-called 'tick'. The interval between ticks is the precision of
-    * the strategy.
-    *
-    * @version $Revision: 1.44 $ $Date: 2007/09/11 11:51:51 $
-    * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
-    *
-    * @since XINS 1.0.0
-    */
-   private final class TimerThread extends Thread {
-
-      /**
-       * Constructs a new <code>TimerThread</code>.
-       */
-      public TimerThread() {
-         super(ExpiryStrategy.this.toString() + " timer thread");
-      }
-
-      /**
-       * Runs this thread. The thread keeps running until the expiry strategy
-       * is stopped.
-       */
-      public void run() {
-
-         Log.log_1402(_instanceNum);
-
-         long now  = System.currentTimeMillis();
-         long next = now + _precision;
-
-         while (! _stop) {
-            boolean interrupted;
-            long sleep = next - now;
-            if (sleep > 0) {
-               Log.log_1404(_instanceNum, sleep);
-               try {
-                  Thread.sleep(sleep);
-                  interrupted = false;
-
-               // Sleep was interrupted
-               } catch (InterruptedException exception) {
-                  interrupted = true;
-               }
-
-               // Determine how much time we spent since we started sleeping
-               long after = System.currentTimeMillis();
-               long slept = after - now;
-               now        = after;
-
-               // Perform logging
-               if (interrupted) {
-                  Log.log_1405(_instanceNum, slept);
-               } else {
-                  Log.log_1406(_instanceNum, slept);
-               }
-            }
-
-            // If we should stop, then exit the loop
-            if (_stop) {
-               break;
-            }
-
-            while (next <= now) {
-               Log.log_1407(_instanceNum);
-               doTick();
-               now = System.currentTimeMillis();
-               next += _precision;
-            }
-         }
-
-         Log.log_1403(_instanceNum);
-      }
-
-      /**
-       * Returns a textual representation of this timer thread object.
-       *
-       * @return
-       *    a textual representation of this object, never <code>null</code>.
-       */
-      public String toString() {
-         return getName();
-      }
-   }
 }
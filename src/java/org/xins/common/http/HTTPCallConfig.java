@@ -15,6 +15,12 @@ import org.xins.common.text.TextUtils;
  * <em>User-Agent</em> string can be configured. By default the HTTP method is
  * <em>POST</em> and the no <em>User-Agent</em> string is set.
  *
+ * <p>Also the pooling of connections can be configured. By default
+ * connections are kept alive and reused, with at most
+ * {@link HTTPConnectionPool#DEFAULT_MAX_CONNECTIONS_PER_TARGET} connections
+ * per target and an idle time-out of
+ * {@link HTTPConnectionPool#DEFAULT_IDLE_TIME_OUT} milliseconds.
+ *
  * <p>This class is not thread safe.</p>
  *
  * @version $Revision: 1.22 $ $Date: 2007/03/15 17:08:27 $
@@ -34,6 +40,22 @@ public final class HTTPCallConfig extends CallConfig {
     */
    private String _userAgent;
 
+   /**
+    * Flag that indicates whether connections should be pooled and reused.
+    */
+   private boolean _connectionPooling;
+
+   /**
+    * The maximum number of pooled connections per target. Always positive.
+    */
+   private int _maxConnectionsPerTarget;
+
+   /**
+    * The time after which an idle pooled connection is closed, in
+    * milliseconds. Always positive.
+    */
+   private int _idleTimeOut;
+
    /**
     * Constructs a new <code>HTTPCallConfig</code> object.
     */
@@ -41,6 +63,11 @@ public final class HTTPCallConfig extends CallConfig {
 
       // Default to the POST method
       _method = HTTPMethod.POST;
+
+      // Default to keep-alive connections
+      _connectionPooling       = true;
+      _maxConnectionsPerTarget = HTTPConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_TARGET;
+      _idleTimeOut             = HTTPConnectionPool.DEFAULT_IDLE_TIME_OUT;
    }
 
    /**
@@ -99,6 +126,102 @@ public final class HTTPCallConfig extends CallConfig {
       return _userAgent;
    }
 
+   /**
+    * Configures whether connections should be pooled and reused for
+    * subsequent calls to the same target.
+    *
+    * @param pooling
+    *    <code>true</code> if connections should be kept alive and reused,
+    *    <code>false</code> if a new connection should be used for each call.
+    *
+    * @since XINS 3.0
+    */
+   public void setConnectionPooling(boolean pooling) {
+      _connectionPooling = pooling;
+   }
+
+   /**
+    * Determines whether connections are pooled and reused for subsequent
+    * calls to the same target.
+    *
+    * @return
+    *    <code>true</code> if connections are kept alive and reused,
+    *    <code>false</code> if a new connection is used for each call.
+    *
+    * @since XINS 3.0
+    */
+   public boolean isConnectionPooling() {
+      return _connectionPooling;
+   }
+
+   /**
+    * Sets the maximum number of pooled connections per target.
+    *
+    * @param max
+    *    the maximum number of connections per target, must be positive.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>max &lt; 1</code>.
+    *
+    * @since XINS 3.0
+    */
+   public void setMaxConnectionsPerTarget(int max)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      if (max < 1) {
+         throw new IllegalArgumentException("max (" + max + ") < 1");
+      }
+
+      _maxConnectionsPerTarget = max;
+   }
+
+   /**
+    * Returns the maximum number of pooled connections per target.
+    *
+    * @return
+    *    the maximum number of connections per target, always positive.
+    *
+    * @since XINS 3.0
+    */
+   public int getMaxConnectionsPerTarget() {
+      return _maxConnectionsPerTarget;
+   }
+
+   /**
+    * Sets the time after which an idle pooled connection is closed.
+    *
+    * @param idleTimeOut
+    *    the idle time-out in milliseconds, must be positive.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>idleTimeOut &lt; 1</code>.
+    *
+    * @since XINS 3.0
+    */
+   public void setIdleTimeOut(int idleTimeOut)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      if (idleTimeOut < 1) {
+         throw new IllegalArgumentException("idleTimeOut (" + idleTimeOut + ") < 1");
+      }
+
+      _idleTimeOut = idleTimeOut;
+   }
+
+   /**
+    * Returns the time after which an idle pooled connection is closed.
+    *
+    * @return
+    *    the idle time-out in milliseconds, always positive.
+    *
+    * @since XINS 3.0
+    */
+   public int getIdleTimeOut() {
+      return _idleTimeOut;
+   }
+
    /**
     * Describes this configuration.
     *
@@ -110,7 +233,9 @@ public final class HTTPCallConfig extends CallConfig {
    public String describe() {
 
       String description = "HTTP call config [failOverAllowed=" + isFailOverAllowed() + "; method=" +
-            TextUtils.quote(_method.toString()) + "; userAgent=" + TextUtils.quote(_userAgent) + "]";
+            TextUtils.quote(_method.toString()) + "; userAgent=" + TextUtils.quote(_userAgent) +
+            "; connectionPooling=" + _connectionPooling + "; maxConnectionsPerTarget=" + _maxConnectionsPerTarget +
+            "; idleTimeOut=" + _idleTimeOut + "]";
 
       return description;
    }
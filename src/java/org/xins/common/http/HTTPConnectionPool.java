@@ -0,0 +1,571 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common.http;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.service.TargetDescriptor;
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ToXML;
+
+/**
+ * Pool of keep-alive HTTP connections towards a single target service.
+ *
+ * <p>There is at most one pool per {@link TargetDescriptor}, maximum number
+ * of connections and idle time-out. Pools are shared by all
+ * {@link HTTPServiceCaller} instances in the same class loader, so that
+ * connections established by one call can be reused by the next call to the
+ * same target, avoiding a TCP (and possibly SSL) handshake per call.
+ *
+ * <p>The maximum number of connections and the idle time-out are taken from
+ * the {@link HTTPCallConfig} that is used for the call, calls with a
+ * different configuration use a different pool. The connection time-out and
+ * the socket time-out are taken from the {@link TargetDescriptor}.
+ *
+ * <p>Connections that have been idle for longer than the idle time-out are
+ * closed by a single shared daemon thread. Pools that have no connections
+ * left and that have not been used during the idle time-out are removed.
+ *
+ * <p>An API registers itself as a user of the pools with {@link #addUser()}
+ * when it is initialized and unregisters with {@link #removeUser()} when it
+ * is deinitialized. The pools are closed when the last user unregisters, so
+ * that an API does not close the connections used by the other APIs in the
+ * same class loader.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class HTTPConnectionPool implements ToXML {
+
+   /**
+    * The default maximum number of connections per target.
+    */
+   public static final int DEFAULT_MAX_CONNECTIONS_PER_TARGET = 20;
+
+   /**
+    * The default idle time-out for pooled connections, in milliseconds.
+    */
+   public static final int DEFAULT_IDLE_TIME_OUT = 60000;
+
+   /**
+    * The interval between two runs of the idle connection eviction, in
+    * milliseconds.
+    */
+   private static final long EVICTION_INTERVAL = 5000L;
+
+   /**
+    * Flag set in the state of a pool once it is closed. The other bits of
+    * the state hold the number of connections in use.
+    */
+   private static final int CLOSED = Integer.MIN_VALUE;
+
+   /**
+    * All pools, by target and configuration. Never <code>null</code>.
+    */
+   private static final ConcurrentMap<PoolKey, HTTPConnectionPool> POOLS = new ConcurrentHashMap<PoolKey, HTTPConnectionPool>();
+
+   /**
+    * The timer that closes idle connections. Lazily initialized by
+    * {@link #startEviction()} and stopped by {@link #closeAll()}. Guarded by
+    * the class.
+    */
+   private static Timer EVICTION_TIMER;
+
+   /**
+    * The number of registered users of the pools. Guarded by the class.
+    */
+   private static int USER_COUNT;
+
+   /**
+    * Returns an open connection pool for the specified target and call
+    * configuration and registers that a connection from it is about to be
+    * used. If there is no such pool yet, or if the pool has been closed in
+    * the meantime, then a new one is created.
+    *
+    * <p>Each call to this method must be followed by a call to
+    * {@link #released()} on the returned pool.
+    *
+    * @param target
+    *    the target for which to get the pool, cannot be <code>null</code>.
+    *
+    * @param callConfig
+    *    the call configuration, cannot be <code>null</code>.
+    *
+    * @return
+    *    the connection pool for the target, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>target == null || callConfig == null</code>.
+    */
+   static HTTPConnectionPool acquire(TargetDescriptor target, HTTPCallConfig callConfig)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("target", target, "callConfig", callConfig);
+
+      PoolKey key = new PoolKey(target, callConfig.getMaxConnectionsPerTarget(), callConfig.getIdleTimeOut());
+      while (true) {
+         HTTPConnectionPool pool = POOLS.get(key);
+         if (pool == null) {
+            HTTPConnectionPool newPool = new HTTPConnectionPool(key);
+            pool = POOLS.putIfAbsent(key, newPool);
+            if (pool == null) {
+               pool = newPool;
+               startEviction();
+            } else {
+               newPool.close();
+            }
+         }
+
+         // The pool may have been closed since it was looked up
+         if (pool.tryAcquire()) {
+            return pool;
+         }
+         POOLS.remove(key, pool);
+      }
+   }
+
+   /**
+    * Registers a user of the connection pools. Each call to this method
+    * must be followed by a call to {@link #removeUser()}.
+    *
+    * <p>This method is called when an API is initialized.
+    */
+   public static synchronized void addUser() {
+      USER_COUNT++;
+   }
+
+   /**
+    * Unregisters a user of the connection pools. When the last user is
+    * unregistered, all connection pools are closed, see
+    * {@link #closeAll()}.
+    *
+    * <p>This method is called when an API is deinitialized.
+    */
+   public static synchronized void removeUser() {
+      if (USER_COUNT > 0) {
+         USER_COUNT--;
+         if (USER_COUNT == 0) {
+            closeAll();
+         }
+      }
+   }
+
+   /**
+    * Returns the number of registered users of the connection pools.
+    *
+    * @return
+    *    the number of users, see {@link #addUser()}, always &gt;= 0.
+    */
+   public static synchronized int getUserCount() {
+      return USER_COUNT;
+   }
+
+   /**
+    * Returns all currently existing connection pools.
+    *
+    * @return
+    *    an unmodifiable snapshot of all connection pools, never
+    *    <code>null</code>.
+    */
+   public static Collection<HTTPConnectionPool> getPools() {
+      return Collections.unmodifiableList(new ArrayList<HTTPConnectionPool>(POOLS.values()));
+   }
+
+   /**
+    * Returns the statistics of all connection pools as an XML element. The
+    * returned element is named <code>connectionPools</code> and contains one
+    * <code>connectionPool</code> child element per pool.
+    *
+    * @return
+    *    the statistics of all pools, never <code>null</code>.
+    */
+   public static Element getStatistics() {
+      Element element = new Element("connectionPools");
+      for (HTTPConnectionPool pool : POOLS.values()) {
+         element.add(pool.toXML());
+      }
+      return element;
+   }
+
+   /**
+    * Closes all connection pools and stops closing idle connections. The
+    * connections used by calls that are in progress are closed when these
+    * calls end, new calls will create new pools.
+    *
+    * <p>This method is called when the last user of the pools is
+    * unregistered, see {@link #removeUser()}.
+    */
+   public static synchronized void closeAll() {
+      for (PoolKey key : POOLS.keySet()) {
+         HTTPConnectionPool pool = POOLS.remove(key);
+         if (pool != null) {
+            pool.close();
+         }
+      }
+      if (EVICTION_TIMER != null) {
+         EVICTION_TIMER.cancel();
+         EVICTION_TIMER = null;
+      }
+   }
+
+   /**
+    * Makes sure the idle connection eviction is scheduled.
+    */
+   private static synchronized void startEviction() {
+      if (EVICTION_TIMER == null) {
+         EVICTION_TIMER = new Timer("XINS HTTP idle connection eviction", true);
+         EVICTION_TIMER.schedule(new TimerTask() {
+            public void run() {
+               long now = System.currentTimeMillis();
+               for (Map.Entry<PoolKey, HTTPConnectionPool> entry : POOLS.entrySet()) {
+                  HTTPConnectionPool pool = entry.getValue();
+                  pool.closeIdleConnections();
+
+                  // Remove the pools of targets that are no longer called
+                  if (pool.isUnused(now) && POOLS.remove(entry.getKey(), pool)) {
+                     pool.close();
+                  }
+               }
+            }
+         }, EVICTION_INTERVAL, EVICTION_INTERVAL);
+      }
+   }
+
+   /**
+    * Constructs a new <code>HTTPConnectionPool</code> for the specified
+    * target and configuration.
+    *
+    * @param key
+    *    the target and configuration, cannot be <code>null</code>.
+    */
+   private HTTPConnectionPool(PoolKey key) {
+
+      TargetDescriptor target = key._target;
+      _target         = target;
+      _maxConnections = key._maxConnections;
+      _idleTimeOut    = key._idleTimeOut;
+
+      _manager = new MultiThreadedHttpConnectionManager();
+      HttpConnectionManagerParams params = _manager.getParams();
+      params.setConnectionTimeout(target.getConnectionTimeOut());
+      params.setSoTimeout(target.getSocketTimeOut());
+      params.setStaleCheckingEnabled(true);
+      params.setDefaultMaxConnectionsPerHost(_maxConnections);
+      params.setMaxTotalConnections(_maxConnections);
+
+      _httpClient = new HttpClient(_manager);
+      HTTPServiceCaller.configureProxy(_httpClient);
+
+      // Do not wait longer for a free connection than for a new one
+      _httpClient.getParams().setConnectionManagerTimeout(target.getConnectionTimeOut());
+      _httpClient.getParams().setSoTimeout(target.getSocketTimeOut());
+
+      _callCount  = new AtomicLong();
+      _state      = new AtomicInteger();
+      _peakInUse  = new AtomicInteger();
+      _shutDown   = new AtomicBoolean();
+      _lastUsed   = System.currentTimeMillis();
+   }
+
+   /**
+    * The target this pool connects to. Never <code>null</code>.
+    */
+   private final TargetDescriptor _target;
+
+   /**
+    * The underlying connection manager. Never <code>null</code>.
+    */
+   private final MultiThreadedHttpConnectionManager _manager;
+
+   /**
+    * The HTTP client that uses the connection manager. Never
+    * <code>null</code>.
+    */
+   private final HttpClient _httpClient;
+
+   /**
+    * The maximum number of connections to the target.
+    */
+   private final int _maxConnections;
+
+   /**
+    * The time after which an idle connection is closed, in milliseconds.
+    */
+   private final int _idleTimeOut;
+
+   /**
+    * The number of calls executed using this pool.
+    */
+   private final AtomicLong _callCount;
+
+   /**
+    * The number of connections currently in use, combined with the
+    * {@link #CLOSED} flag once this pool has been closed. Checking whether
+    * the pool is closed and registering a connection in use are done in one
+    * atomic step, so that a pool is never shut down while a connection is
+    * about to be used.
+    */
+   private final AtomicInteger _state;
+
+   /**
+    * The highest number of connections that were in use at the same time.
+    */
+   private final AtomicInteger _peakInUse;
+
+   /**
+    * Indicates whether the connection manager has been shut down.
+    */
+   private final AtomicBoolean _shutDown;
+
+   /**
+    * The time at which a connection from this pool was last released, or
+    * at which the pool was created.
+    */
+   private volatile long _lastUsed;
+
+   /**
+    * Returns the target of this pool.
+    *
+    * @return
+    *    the target, never <code>null</code>.
+    */
+   public TargetDescriptor getTarget() {
+      return _target;
+   }
+
+   /**
+    * Returns the HTTP client that uses the connections in this pool.
+    *
+    * @return
+    *    the HTTP client, never <code>null</code>.
+    */
+   HttpClient getHttpClient() {
+      return _httpClient;
+   }
+
+   /**
+    * Registers that a connection from this pool is about to be used, unless
+    * this pool has been closed.
+    *
+    * @return
+    *    <code>true</code> if the connection may be used,
+    *    <code>false</code> if this pool has been closed.
+    */
+   private boolean tryAcquire() {
+      int state;
+      do {
+         state = _state.get();
+         if ((state & CLOSED) != 0) {
+            return false;
+         }
+      } while (! _state.compareAndSet(state, state + 1));
+
+      _callCount.incrementAndGet();
+      int inUse = state + 1;
+      int peak = _peakInUse.get();
+      while (inUse > peak && ! _peakInUse.compareAndSet(peak, inUse)) {
+         peak = _peakInUse.get();
+      }
+      return true;
+   }
+
+   /**
+    * Registers that a connection from this pool is no longer used.
+    */
+   void released() {
+      _lastUsed = System.currentTimeMillis();
+      if (_state.decrementAndGet() == CLOSED) {
+         shutDown();
+      }
+   }
+
+   /**
+    * Returns the maximum number of connections towards the target.
+    *
+    * @return
+    *    the maximum number of connections.
+    */
+   public int getMaxConnections() {
+      return _maxConnections;
+   }
+
+   /**
+    * Returns the number of calls that were executed using this pool.
+    *
+    * @return
+    *    the number of calls.
+    */
+   public long getCallCount() {
+      return _callCount.get();
+   }
+
+   /**
+    * Returns the number of connections that are currently in use.
+    *
+    * @return
+    *    the number of connections in use.
+    */
+   public int getInUseCount() {
+      return _state.get() & ~CLOSED;
+   }
+
+   /**
+    * Returns the highest number of connections that were in use at the same
+    * time.
+    *
+    * @return
+    *    the peak number of connections in use.
+    */
+   public int getPeakInUseCount() {
+      return _peakInUse.get();
+   }
+
+   /**
+    * Returns the number of open connections, either in use or idle.
+    *
+    * @return
+    *    the number of open connections.
+    */
+   public int getOpenCount() {
+      return _manager.getConnectionsInPool();
+   }
+
+   /**
+    * Closes the connections that have been idle for longer than the idle
+    * time-out.
+    */
+   private void closeIdleConnections() {
+      _manager.closeIdleConnections(_idleTimeOut);
+   }
+
+   /**
+    * Determines whether this pool has no open connections and has not been
+    * used during the idle time-out.
+    *
+    * @param now
+    *    the current time in milliseconds.
+    *
+    * @return
+    *    <code>true</code> if this pool is unused, <code>false</code>
+    *    otherwise.
+    */
+   private boolean isUnused(long now) {
+      return _state.get() == 0 && getOpenCount() == 0
+          && now - _lastUsed > _idleTimeOut;
+   }
+
+   /**
+    * Closes this pool. The connections are closed as soon as no connection
+    * is in use anymore.
+    */
+   private void close() {
+      int state;
+      do {
+         state = _state.get();
+         if ((state & CLOSED) != 0) {
+            return;
+         }
+      } while (! _state.compareAndSet(state, state | CLOSED));
+      if (state == 0) {
+         shutDown();
+      }
+   }
+
+   /**
+    * Closes all connections in this pool, once.
+    */
+   private void shutDown() {
+      if (_shutDown.compareAndSet(false, true)) {
+         _manager.shutdown();
+      }
+   }
+
+   public Element toXML() {
+      Element element = new Element("connectionPool");
+      element.setAttribute("url",            _target.getURL());
+      element.setAttribute("maxConnections", String.valueOf(_maxConnections));
+      element.setAttribute("idleTimeOut",    String.valueOf(_idleTimeOut));
+      element.setAttribute("open",           String.valueOf(getOpenCount()));
+      element.setAttribute("inUse",          String.valueOf(getInUseCount()));
+      element.setAttribute("peakInUse",      String.valueOf(getPeakInUseCount()));
+      element.setAttribute("calls",          String.valueOf(getCallCount()));
+      return element;
+   }
+
+   /**
+    * Key of a connection pool: the target, the maximum number of connections
+    * and the idle time-out.
+    */
+   private static final class PoolKey {
+
+      /**
+       * Constructs a new <code>PoolKey</code>.
+       *
+       * @param target
+       *    the target, cannot be <code>null</code>.
+       *
+       * @param maxConnections
+       *    the maximum number of connections to the target.
+       *
+       * @param idleTimeOut
+       *    the idle time-out in milliseconds.
+       */
+      PoolKey(TargetDescriptor target, int maxConnections, int idleTimeOut) {
+         _target         = target;
+         _maxConnections = maxConnections;
+         _idleTimeOut    = idleTimeOut;
+      }
+
+      /**
+       * The target. Never <code>null</code>.
+       */
+      final TargetDescriptor _target;
+
+      /**
+       * The maximum number of connections to the target.
+       */
+      final int _maxConnections;
+
+      /**
+       * The idle time-out in milliseconds.
+       */
+      final int _idleTimeOut;
+
+      public int hashCode() {
+         return (_target.hashCode() * 31 + _maxConnections) * 31 + _idleTimeOut;
+      }
+
+      public boolean equals(Object obj) {
+         if (! (obj instanceof PoolKey)) {
+            return false;
+         }
+         PoolKey that = (PoolKey) obj;
+         return _target.equals(that._target)
+             && _maxConnections == that._maxConnections
+             && _idleTimeOut    == that._idleTimeOut;
+      }
+   }
+}
@@ -8,6 +8,7 @@ package org.xins.common.http;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
@@ -213,19 +214,16 @@ public class HTTPServiceCaller extends ServiceCaller {
    }
 
    /**
-    * Returns the {@link HttpClient} to use to contact the given target.
+    * Configures the proxy on the specified {@link HttpClient}, based on the
+    * system properties <code>proxySet</code>, <code>proxyHost</code> and
+    * <code>proxyPort</code> or <code>http.proxyHost</code> and
+    * <code>http.proxyPort</code>.
     *
-    * @param target
-    *    the target of the service.
-    *
-    * @return
-    *    the HttpClient shared instance.
+    * @param httpClient
+    *    the HTTP client to configure, cannot be <code>null</code>.
     */
-   private static HttpClient getHttpClient(TargetDescriptor target) {
+   static void configureProxy(HttpClient httpClient) {
 
-      HttpClient httpClient= new HttpClient();
-
-      // Add support for proxies
       int proxyPort = 80;
       if ("true".equals(System.getProperty("proxySet")) && System.getProperty("proxyHost") != null) {
          String proxyHost = System.getProperty("proxyHost");
@@ -240,14 +238,32 @@ public class HTTPServiceCaller extends ServiceCaller {
          }
          httpClient.getHostConfiguration().setProxy(proxyHost, proxyPort);
       }
+   }
+
+   /**
+    * Returns a new, unpooled {@link HttpClient} to use to contact the given
+    * target. This is only used if connection pooling is disabled in the
+    * {@link HTTPCallConfig}.
+    *
+    * @param target
+    *    the target of the service.
+    *
+    * @return
+    *    a new HttpClient instance.
+    */
+   private static HttpClient getHttpClient(TargetDescriptor target) {
+
+      HttpClient httpClient= new HttpClient();
+
+      // Add support for proxies
+      configureProxy(httpClient);
 
       int connectionTimeOut = target.getConnectionTimeOut();
       int socketTimeOut     = target.getSocketTimeOut();
 
       // Configure connection time-out and socket time-out
-      // TODO: Switch from the (deprecated) HttpClient 2.x methods to HttpClient 3.0
-      httpClient.setHttpConnectionFactoryTimeout(connectionTimeOut);
-      httpClient.setTimeout(socketTimeOut);
+      httpClient.getHttpConnectionManager().getParams().setConnectionTimeout(connectionTimeOut);
+      httpClient.getParams().setSoTimeout(socketTimeOut);
 
       return httpClient;
    }
@@ -618,8 +634,10 @@ public class HTTPServiceCaller extends ServiceCaller {
       try {
          controlTimeOut(executor, target);
 
-      // Total time-out exceeded
+      // Total time-out exceeded, or the waiting thread was interrupted;
+      // abort the HTTP method, otherwise it keeps blocking on the connection
       } catch (TimeOutException exception) {
+         executor.cancel();
          duration = System.currentTimeMillis() - start;
          Log.log_1106(url, params, duration, totalTimeOut);
          executor.dispose();
@@ -796,8 +814,19 @@ public class HTTPServiceCaller extends ServiceCaller {
          super(request, callConfig, target);
       }
 
-      // TODO: Document
-      private HttpMethodBase _method;
+      /**
+       * The HTTP method being executed. The value of this field is
+       * <code>null</code> if the call was not executed yet or if it is
+       * cleaned up already. Volatile, since the method may be aborted from
+       * another thread, see {@link #cancelImpl()}.
+       */
+      private volatile HttpMethodBase _method;
+
+      /**
+       * The connection pool used for the call, or <code>null</code> if
+       * connection pooling is disabled or the call was not executed yet.
+       */
+      private HTTPConnectionPool _pool;
 
       /**
        * The result from the call. The value of this field is
@@ -829,8 +858,14 @@ public class HTTPServiceCaller extends ServiceCaller {
                            TargetDescriptor target)
       throws Throwable {
 
-         // Get the HttpClient object
-         HttpClient client = getHttpClient(target);
+         // Get the HttpClient object, either a shared one or a new one
+         HttpClient client;
+         if (callConfig.isConnectionPooling()) {
+            _pool  = HTTPConnectionPool.acquire(target, callConfig);
+            client = _pool.getHttpClient();
+         } else {
+            client = getHttpClient(target);
+         }
 
          // Determine URL and time-outs
          String url = target.getURL();
@@ -844,8 +879,24 @@ public class HTTPServiceCaller extends ServiceCaller {
             _method.setRequestHeader("User-Agent", userAgent);
          }
 
+         // Do not start the call if it was cancelled already; if it is
+         // cancelled from now on, the method is aborted
+         if (isCancelled()) {
+            throw new InterruptedIOException("Call cancelled.");
+         }
+
          // Execute call
-         int statusCode = client.executeMethod(_method);
+         int statusCode;
+         try {
+            statusCode = client.executeMethod(_method);
+
+         // HttpClient refuses to execute a method that was aborted
+         } catch (IllegalStateException exception) {
+            if (isCancelled()) {
+               throw new InterruptedIOException("Call cancelled.");
+            }
+            throw exception;
+         }
 
          // Get response body
          InputStream in = _method.getResponseBodyAsStream();
@@ -887,6 +938,22 @@ public class HTTPServiceCaller extends ServiceCaller {
 
             _method = null;
          }
+         if (_pool != null) {
+            _pool.released();
+            _pool = null;
+         }
+      }
+
+      /**
+       * Aborts the HTTP method, if it is executing. This makes the thread
+       * executing the call stop with an <code>IOException</code>.
+       */
+      @Override
+      protected void cancelImpl() {
+         HttpMethodBase method = _method;
+         if (method != null) {
+            method.abort();
+         }
       }
 
       @Override
@@ -0,0 +1,124 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common.io;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single thread that checks the files of all running
+ * {@link FileWatcher} instances. The thread is created when the first file
+ * watcher starts and stops when the last one ends.
+ *
+ * <p>Because there is only one thread, the listeners of the file watchers
+ * are never called concurrently.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class FileWatchDispatcher {
+
+   /**
+    * The name of the thread.
+    */
+   private static final String THREAD_NAME = "XINS file watcher";
+
+   /**
+    * The executor that runs the checks, or <code>null</code> if no file
+    * watcher is running. Guarded by the class.
+    */
+   private static ScheduledExecutorService EXECUTOR;
+
+   /**
+    * The number of running file watchers. Guarded by the class.
+    */
+   private static int WATCHER_COUNT;
+
+   /**
+    * Constructs a new <code>FileWatchDispatcher</code> object.
+    */
+   private FileWatchDispatcher() {
+      // empty
+   }
+
+   /**
+    * Registers a running file watcher, creating the thread if needed.
+    */
+   static synchronized void register() {
+      if (EXECUTOR == null) {
+         ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+               Thread thread = new Thread(task, THREAD_NAME);
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+         executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+         EXECUTOR = executor;
+      }
+      WATCHER_COUNT++;
+   }
+
+   /**
+    * Unregisters a file watcher that ended, stopping the thread if it was
+    * the last one.
+    */
+   static synchronized void unregister() {
+      WATCHER_COUNT--;
+      if (WATCHER_COUNT <= 0 && EXECUTOR != null) {
+         EXECUTOR.shutdown();
+         EXECUTOR      = null;
+         WATCHER_COUNT = 0;
+      }
+   }
+
+   /**
+    * Runs a task once, after the specified delay.
+    *
+    * @param task
+    *    the task to run, cannot be <code>null</code>.
+    *
+    * @param delay
+    *    the delay in milliseconds.
+    *
+    * @return
+    *    the scheduled task, or <code>null</code> if no file watcher is
+    *    running.
+    */
+   static synchronized ScheduledFuture<?> schedule(Runnable task, long delay) {
+      if (EXECUTOR == null) {
+         return null;
+      }
+      return EXECUTOR.schedule(task, delay, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Runs a task repeatedly, with the specified delay between the end of a
+    * run and the start of the next one.
+    *
+    * @param task
+    *    the task to run, cannot be <code>null</code>.
+    *
+    * @param delay
+    *    the delay before the first run and between the runs, in
+    *    milliseconds, must be &gt; 0.
+    *
+    * @return
+    *    the scheduled task, or <code>null</code> if no file watcher is
+    *    running.
+    */
+   static synchronized ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+      if (EXECUTOR == null) {
+         return null;
+      }
+      return EXECUTOR.scheduleWithFixedDelay(task, delay, delay, TimeUnit.MILLISECONDS);
+   }
+}
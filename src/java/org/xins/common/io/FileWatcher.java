@@ -8,6 +8,7 @@ package org.xins.common.io;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.concurrent.ScheduledFuture;
 
 import org.xins.common.Log;
 import org.xins.common.MandatoryArgumentChecker;
@@ -23,8 +24,20 @@ import org.xins.common.Utils;
  * where the interval <em>n</em> can be configured
  * (see {@link #setInterval(int)} and {@link #getInterval()}).
  *
- * <p>Initially this thread will be a daemon thread. This can be changed by
- * calling {@link #setDaemon(boolean)}.
+ * <p>Although this class extends {@link Thread} for compatibility, no thread
+ * is started for each file watcher: {@link #start()} registers the file
+ * watcher with a single daemon thread that checks the files of all running
+ * file watchers. An immediate check can be requested using
+ * {@link #requestCheck()}.
+ *
+ * <p>A modification found by a periodic check is only reported once the
+ * modification date has not changed for half a second, so that the listener
+ * does not read a file that is still being written. A modification found by
+ * a requested check is reported immediately.
+ *
+ * <p>The listeners of all file watchers are called on the shared thread, one
+ * at a time. A listener should therefore return quickly, a slow listener
+ * delays the checks of all other file watchers.
  *
  * @version $Revision: 1.48 $ $Date: 2007/09/18 11:21:09 $
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
@@ -59,6 +72,18 @@ public class FileWatcher extends Thread {
     */
    private static final int SHOULD_STOP = 3;
 
+   /**
+    * The time the modification date of the files must remain unchanged
+    * before a modification is reported, in milliseconds.
+    */
+   private static final long SETTLE_TIME = 500L;
+
+   /**
+    * Value of <code>_pendingLastModified</code> that indicates that no
+    * modification is pending.
+    */
+   private static final long NO_PENDING_MODIFICATION = Long.MIN_VALUE;
+
    /**
     * Fully-qualified name of this class.
     */
@@ -135,6 +160,25 @@ public class FileWatcher extends Thread {
     */
    private final InitialCheckPolicy _initialCheckPolicy;
 
+   /**
+    * The periodic check scheduled with the shared file watch thread, or
+    * <code>null</code> if this file watcher is not running.
+    */
+   private ScheduledFuture<?> _task;
+
+   /**
+    * The modification date of a change that has not been reported yet
+    * because the files may still be changing, or
+    * {@link #NO_PENDING_MODIFICATION} if there is none.
+    */
+   private long _pendingLastModified = NO_PENDING_MODIFICATION;
+
+   /**
+    * The time at which <code>_pendingLastModified</code> was first seen, as
+    * returned by {@link System#nanoTime()}.
+    */
+   private long _pendingSince;
+
    /**
     * Creates a new <code>FileWatcher</code> for the specified file.
     *
@@ -451,79 +495,92 @@ public class FileWatcher extends Thread {
    }
 
    /**
-    * Runs this thread. This method should not be called directly, call
-    * {@link #start()} instead. That method will call this method.
+    * Starts watching the files. The files are checked by the shared file
+    * watch thread at the configured interval.
     *
     * @throws IllegalStateException
-    *    if <code>{@link Thread#currentThread()} != this</code>, if the thread
-    *    is already running or should stop, or if the interval was not set
-    *    yet.
+    *    if this file watcher is already running or should stop, or if the
+    *    interval was not set yet.
     */
-   public void run() throws IllegalStateException {
-
-      int interval;
-      int state;
-
-      synchronized (this) {
-         interval = _interval;
-         state    = _state;
-      }
+   public synchronized void start() throws IllegalStateException {
 
       // Check preconditions
-      if (Thread.currentThread() != this) {
-         throw new IllegalStateException("Thread.currentThread() != this");
-      } else if (state == RUNNING) {
+      if (_state == RUNNING) {
          throw new IllegalStateException("Thread already running.");
-      } else if (state == SHOULD_STOP) {
+      } else if (_state == SHOULD_STOP) {
          throw new IllegalStateException("Thread should stop running.");
-      } else if (interval < 1) {
+      } else if (_interval < 1) {
          throw new IllegalStateException("Interval has not been set yet.");
       }
 
-      Log.log_1200(_instanceID, _filePaths, interval);
+      Log.log_1200(_instanceID, _filePaths, _interval);
 
       // Move to the RUNNING state
-      synchronized (this) {
-         _state = RUNNING;
-      }
+      _state = RUNNING;
+      FileWatchDispatcher.register();
 
       // Check if the file can be read from,
       // if that was not done during construction
       if (_initialCheckPolicy == InitialCheckPolicy.AT_THREAD_START) {
-         firstCheck();
+         FileWatchDispatcher.schedule(new Runnable() {
+            public void run() {
+               firstCheck();
+            }
+         }, 0L);
       }
 
-      // Loop while we should keep running
-      boolean shouldStop = false;
-      while (! shouldStop) {
-
-         synchronized (this) {
-            try {
+      _task = FileWatchDispatcher.scheduleWithFixedDelay(this, _interval * 1000L);
+   }
 
-               // Wait for the designated amount of time
-               wait(((long) interval) * 1000L);
+   /**
+    * Checks the files once. This method is called by the shared file watch
+    * thread and should not be called directly.
+    */
+   public void run() {
+      runCheck(true);
+   }
 
-            } catch (InterruptedException exception) {
-               // The thread has been notified
-            }
+   /**
+    * Checks the files once, if this file watcher is running.
+    *
+    * @param settle
+    *    <code>true</code> if a modification should only be reported once
+    *    the files have not changed for a short while, <code>false</code> if
+    *    it should be reported immediately.
+    */
+   private void runCheck(boolean settle) {
 
-            // Should we stop?
-            shouldStop = (_state != RUNNING);
+      // Should we stop?
+      synchronized (this) {
+         if (_state != RUNNING) {
+            return;
          }
+      }
 
-         // If we do not have to stop yet, check if the file changed
-         if (! shouldStop) {
-            check();
+      check(settle);
 
-            // Update the check counter
-            synchronized (_checkCountLock) {
-               _checkCount++;
-            }
-         }
+      // Update the check counter
+      synchronized (_checkCountLock) {
+         _checkCount++;
       }
+   }
 
-      // Thread stopped
-      Log.log_1203(_instanceID, _filePaths);
+   /**
+    * Requests the files to be checked as soon as possible, instead of at the
+    * end of the current interval. A modification is reported immediately,
+    * without waiting for the files to stop changing. If this file watcher is
+    * not running, then this method does nothing.
+    *
+    * @since XINS 3.0
+    */
+   public synchronized void requestCheck() {
+      if (_state == RUNNING) {
+         FileWatchDispatcher.schedule(new Runnable() {
+            public void run() {
+               runCheck(false);
+            }
+         }, 0L);
+      }
    }
 
    /**
@@ -560,19 +617,23 @@ public class FileWatcher extends Thread {
       if (newInterval != _interval) {
          Log.log_1201(_instanceID, _filePaths, _interval, newInterval);
          _interval = newInterval;
+
+         // Reschedule the periodic check
+         if (_task != null) {
+            _task.cancel(false);
+            _task = FileWatchDispatcher.scheduleWithFixedDelay(this, newInterval * 1000L);
+         }
       }
 
       // Update the thread name
       configureThreadName();
-
-      // TODO: Interrupt the thread (see #HERE#)
    }
 
    /**
-    * Stops this thread.
+    * Stops watching the files.
     *
     * @throws IllegalStateException
-    *    if the thread is currently not running or already stopping.
+    *    if this file watcher is currently not running or already stopping.
     */
    public synchronized void end() throws IllegalStateException {
 
@@ -585,9 +646,15 @@ public class FileWatcher extends Thread {
 
       Log.log_1202(_instanceID, _filePaths);
 
-      // Change the state and interrupt the thread
+      // Change the state and stop the periodic check
       _state = SHOULD_STOP;
-      this.interrupt();
+      if (_task != null) {
+         _task.cancel(false);
+         _task = null;
+      }
+      FileWatchDispatcher.unregister();
+
+      Log.log_1203(_instanceID, _filePaths);
    }
 
    /**
@@ -602,6 +669,11 @@ public class FileWatcher extends Thread {
     *        and the method returns;
     *    <li>otherwise if the file is not readable (it may not exist), then
     *        {@link Listener#fileNotFound()} is called and the method returns;
+    *    <li>otherwise if this file watcher is running and the modification
+    *        date changed since the last check, then the change is not
+    *        reported until the modification date has remained the same for
+    *        half a second; a new check is scheduled for when that time has
+    *        passed and the method returns;
     *    <li>otherwise if the file is readable, but previously was not,
     *        then {@link Listener#fileFound()} is called and the method
     *        returns;
@@ -614,7 +686,19 @@ public class FileWatcher extends Thread {
     *
     * @since XINS 1.2.0
     */
-   public synchronized void check() {
+   public void check() {
+      check(true);
+   }
+
+   /**
+    * Checks if the file changed.
+    *
+    * @param settle
+    *    <code>true</code> if a modification should only be reported once
+    *    the files have not changed for a short while, <code>false</code> if
+    *    it should be reported immediately.
+    */
+   private synchronized void check(boolean settle) {
 
       // Variable to store the file modification timestamp in. The value -1
       // indicates the file does not exist.
@@ -642,6 +726,26 @@ public class FileWatcher extends Thread {
          return;
       }
 
+      // Wait until the files have not changed for a short while, so that a
+      // file that is still being written is not reported
+      if (settle && lastModified != -1L && lastModified != _lastModified && _state == RUNNING) {
+         long now = System.nanoTime();
+         if (lastModified != _pendingLastModified) {
+            _pendingLastModified = lastModified;
+            _pendingSince        = now;
+            FileWatchDispatcher.schedule(this, SETTLE_TIME);
+            return;
+         }
+
+         // Check again when the remaining time has passed
+         long elapsed = (now - _pendingSince) / 1000000L;
+         if (elapsed < SETTLE_TIME) {
+            FileWatchDispatcher.schedule(this, SETTLE_TIME - elapsed);
+            return;
+         }
+      }
+      _pendingLastModified = NO_PENDING_MODIFICATION;
+
       // A least one file can not be found
       if (lastModified == -1L) {
 
@@ -749,6 +853,9 @@ public class FileWatcher extends Thread {
     * <p>Note that exceptions thrown by these callback methods will be ignored
     * by the <code>FileWatcher</code>.
     *
+    * <p>The callback methods are called on the thread shared by all file
+    * watchers, so they should not block for a long time.
+    *
     * @version $Revision: 1.48 $ $Date: 2007/09/18 11:21:09 $
     * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
     *
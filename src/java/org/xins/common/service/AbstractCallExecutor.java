@@ -6,33 +6,31 @@
  */
 package org.xins.common.service;
 
-import java.util.HashMap;
-import java.util.Map;
+import org.apache.log4j.NDC;
 
 import org.xins.common.Log;
 import org.xins.common.MandatoryArgumentChecker;
-import org.xins.common.logging.LoggingThread;
 
 /**
  * Abstract base class for call executors, used from within service caller
  * implementations.
  *
+ * <p>A call executor is a {@link Runnable} task. It is either run on a new
+ * thread or on a thread of an {@link java.util.concurrent.ExecutorService},
+ * see {@link ServiceCaller#setExecutor(java.util.concurrent.ExecutorService)}.
+ * The Log4J logging context (see class {@link NDC}) of the thread that
+ * constructs the call executor is passed to the thread that runs it.
+ *
+ * <p>If a {@link CallCancellation} is attached to the thread that constructs
+ * the call executor, then the call executor is registered with it, so that
+ * the call can be cancelled from another thread, see {@link #cancel()}.
+ *
  * @version $Revision$ $Date$
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
  *
  * @since XINS 3.0
  */
-public abstract class AbstractCallExecutor extends LoggingThread {
-
-   /**
-    * The counters for objects, per implementation class. The key in the map
-    * is the implementation {@link Class}, the value is an {@link Integer}
-    * that represents the current number of objects.
-    *
-    * <p>The value may be <code>null</code> if there are no current objects of
-    * the class.
-    */
-   private static final Map<Class,Integer> INSTANCE_COUNTERS = new HashMap<Class,Integer>();
+public abstract class AbstractCallExecutor implements Runnable {
 
    /**
     * Constructs a new <code>AbstractCallExecutor</code> for the specified
@@ -68,18 +66,14 @@ public abstract class AbstractCallExecutor extends LoggingThread {
       _callConfig = callConfig;
       _target     = target;
 
-      // Determine the unique ID of this instance
-      int instanceID;
-      Class<? extends AbstractCallExecutor> thisClass = getClass();
-      synchronized (INSTANCE_COUNTERS) {
-         Integer  i = INSTANCE_COUNTERS.get(thisClass);
-         instanceID = (i == null) ? 0 : i.intValue();
-         INSTANCE_COUNTERS.put(thisClass, new Integer(instanceID + 1));
-      }
+      // Get the current logging context, if any
+      _loggingContext = NDC.peek();
 
-      // Set the name of this thread
-      String name = thisClass.getName() + " #" + instanceID;
-      setName(name);
+      // Register with the current cancellation, if any
+      _cancellation = CallCancellation.current();
+      if (_cancellation != null) {
+         _cancellation.register(this);
+      }
    }
 
    /**
@@ -110,7 +104,48 @@ public abstract class AbstractCallExecutor extends LoggingThread {
    private Throwable _exception;
 
    /**
-    * Runs this thread. This method will invoke
+    * The logging context of the thread that constructed this object, or
+    * <code>null</code> if there is none.
+    */
+   private final String _loggingContext;
+
+   /**
+    * The cancellation this call executor is registered with, or
+    * <code>null</code> if there is none.
+    */
+   private final CallCancellation _cancellation;
+
+   /**
+    * Flag that indicates whether this call executor was cancelled.
+    */
+   private volatile boolean _cancelled;
+
+   /**
+    * Runs this task. The logging context of the constructing thread is set
+    * and then {@link #runImpl()} is invoked.
+    */
+   public final void run() {
+
+      // Set the Log4J logging context, if appropriate
+      if (_loggingContext != null) {
+         NDC.push(_loggingContext);
+      }
+
+      // Delegate to the implementation method
+      try {
+         runImpl();
+
+      // Unset the Log4J logging context
+      } finally {
+         if (_loggingContext != null) {
+            NDC.pop();
+         }
+         NDC.remove();
+      }
+   }
+
+   /**
+    * Runs this task (implementation method). This method will invoke
     * {@link #execute(CallRequest,CallConfig,TargetDescriptor)}. If that
     * method throws an exception, then that exception is stored in this
     * object, along with some more information.
@@ -120,8 +155,7 @@ public abstract class AbstractCallExecutor extends LoggingThread {
     * <p>At the very end, {@link #cleanupImpl()} is called, even if an
     * exception was thrown.
     */
-   @Override
-   protected final void runImpl() {
+   private void runImpl() {
 
       synchronized (this) {
          _state = State.EXECUTING_CALL;
@@ -143,6 +177,9 @@ public abstract class AbstractCallExecutor extends LoggingThread {
          synchronized (this) {
             _state = State.CALL_COMPLETED;
          }
+         if (_cancellation != null) {
+            _cancellation.unregister(this);
+         }
       }
    }
 
@@ -262,8 +299,8 @@ public abstract class AbstractCallExecutor extends LoggingThread {
     *
     * <p>This method delegates to {@link #cleanupImpl()}.
     *
-    * <p>To cleanup after all the information is analyzed and the thread can
-    * be garbage collected, use {@link #dispose()} instead.
+    * <p>To cleanup after all the information is analyzed and the task can
+    * be disposed, use {@link #dispose()} instead.
     */
    protected final void cleanup() throws IllegalStateException {
 
@@ -284,8 +321,8 @@ public abstract class AbstractCallExecutor extends LoggingThread {
     * Cleans up, right after the call was completed (implementation method).
     * This is executed before the results of the call are analyzed.
     *
-    * <p>To cleanup after all the information is analyzed and the thread can
-    * be garbage collected, use {@link #dispose()} instead.
+    * <p>To cleanup after all the information is analyzed and the task can
+    * be disposed, use {@link #dispose()} instead.
     *
     * <p>The implementation of this method in class
     * {@link AbstractCallExecutor} is empty.
@@ -295,11 +332,64 @@ public abstract class AbstractCallExecutor extends LoggingThread {
    }
 
    /**
-    * Cleans up when this thread is completely done with
+    * Cancels the call (wrapper method). If the call is not completed yet,
+    * then {@link #cancelImpl()} is invoked. This method may be called from
+    * any thread and never throws any exceptions.
+    *
+    * @since XINS 3.0
+    */
+   public final void cancel() {
+
+      synchronized (this) {
+         if (_cancelled || (_state != State.INITIAL && _state != State.EXECUTING_CALL)) {
+            return;
+         }
+         _cancelled = true;
+      }
+
+      try {
+         cancelImpl();
+      } catch (Throwable exception) {
+         Log.log_1052(exception, AbstractCallExecutor.class.getName(), "cancel()", getClass().getName(), "cancelImpl()", null);
+      }
+   }
+
+   /**
+    * Cancels the call (implementation method). This method is called from
+    * {@link #cancel()}, on the cancelling thread, while the call may be
+    * executing on another thread. Implementations should make a blocking
+    * call return as soon as possible, for example by aborting the
+    * underlying connection.
+    *
+    * <p>The implementation of this method in class
+    * {@link AbstractCallExecutor} is empty.
+    *
+    * @since XINS 3.0
+    */
+   protected void cancelImpl() {
+      // empty
+   }
+
+   /**
+    * Checks whether this call executor was cancelled, see {@link #cancel()}.
+    *
+    * @return
+    *    <code>true</code> if this call executor was cancelled,
+    *    <code>false</code> otherwise.
+    *
+    * @since XINS 3.0
+    */
+   public final boolean isCancelled() {
+      return _cancelled;
+   }
+
+   /**
+    * Cleans up when this task is completely done with
     * (wrapper method). This method delegates to
     * {@link #disposeImpl()}.
     *
-    * <p>This method never throws any exceptions.
+    * <p>This method should be called by the service caller once the result
+    * of the call is processed. This method never throws any exceptions.
     */
    public final void dispose() {
 
@@ -325,7 +415,7 @@ public abstract class AbstractCallExecutor extends LoggingThread {
    }
 
    /**
-    * Cleans up when this thread is completely done with
+    * Cleans up when this task is completely done with
     * (implementation method).
     *
     * <p>Any exceptions this method throws are logged and then dropped.
@@ -337,18 +427,6 @@ public abstract class AbstractCallExecutor extends LoggingThread {
       // empty
    }
 
-   /**
-    * Finalizes this object. This method calls {@link #dispose()} and then
-    * calls <code>super.finalize()</code>.
-    *
-    * @throws Throwable
-    *    in case of an error.
-    */
-   protected final void finalize() throws Throwable {
-      dispose();
-      super.finalize();
-   }
-
    /**
     * The state of a call executor.
     *
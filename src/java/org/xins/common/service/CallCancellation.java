@@ -0,0 +1,136 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handle that allows a call to be cancelled from another thread.
+ *
+ * <p>A cancellation is attached to the thread that performs the call, using
+ * {@link #attach()}. All call executors (see {@link AbstractCallExecutor})
+ * that are constructed on that thread while the cancellation is attached,
+ * are registered with it. When {@link #cancel()} is called, the registered
+ * call executors that are still executing are cancelled, which for HTTP
+ * calls aborts the underlying HTTP method.
+ *
+ * <p>Example:
+ *
+ * <blockquote><pre>cancellation.attach();
+ *try {
+ *   result = caller.call(request);
+ *} finally {
+ *   cancellation.detach();
+ *}</pre></blockquote>
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class CallCancellation {
+
+   /**
+    * The cancellation attached to the current thread, if any.
+    */
+   private static final ThreadLocal<CallCancellation> CURRENT = new ThreadLocal<CallCancellation>();
+
+   /**
+    * The call executors registered with this cancellation and not completed
+    * yet. Guarded by <code>this</code>.
+    */
+   private final List<AbstractCallExecutor> _executors = new ArrayList<AbstractCallExecutor>(2);
+
+   /**
+    * Flag that indicates whether this cancellation was cancelled.
+    */
+   private volatile boolean _cancelled;
+
+   /**
+    * Attaches this cancellation to the current thread. Any cancellation
+    * attached before is replaced.
+    */
+   public void attach() {
+      CURRENT.set(this);
+   }
+
+   /**
+    * Detaches the cancellation from the current thread.
+    */
+   public void detach() {
+      CURRENT.remove();
+   }
+
+   /**
+    * Cancels the calls performed while this cancellation is attached. Calls
+    * that are started after this method is called are cancelled right away.
+    * Calling this method more than once has no additional effect.
+    */
+   public void cancel() {
+      AbstractCallExecutor[] executors;
+      synchronized (this) {
+         if (_cancelled) {
+            return;
+         }
+         _cancelled = true;
+         executors = _executors.toArray(new AbstractCallExecutor[_executors.size()]);
+         _executors.clear();
+      }
+      for (AbstractCallExecutor executor : executors) {
+         executor.cancel();
+      }
+   }
+
+   /**
+    * Checks whether this cancellation was cancelled.
+    *
+    * @return
+    *    <code>true</code> if {@link #cancel()} was called,
+    *    <code>false</code> otherwise.
+    */
+   public boolean isCancelled() {
+      return _cancelled;
+   }
+
+   /**
+    * Returns the cancellation attached to the current thread.
+    *
+    * @return
+    *    the cancellation attached to the current thread, or
+    *    <code>null</code> if there is none.
+    */
+   static CallCancellation current() {
+      return CURRENT.get();
+   }
+
+   /**
+    * Registers a call executor with this cancellation. If this cancellation
+    * was cancelled already, then the call executor is cancelled right away.
+    *
+    * @param executor
+    *    the call executor, cannot be <code>null</code>.
+    */
+   void register(AbstractCallExecutor executor) {
+      synchronized (this) {
+         if (! _cancelled) {
+            _executors.add(executor);
+            return;
+         }
+      }
+      executor.cancel();
+   }
+
+   /**
+    * Unregisters a call executor that completed.
+    *
+    * @param executor
+    *    the call executor, cannot be <code>null</code>.
+    */
+   synchronized void unregister(AbstractCallExecutor executor) {
+      _executors.remove(executor);
+   }
+}
@@ -41,6 +41,12 @@ public abstract class CallRequest implements Serializable {
     */
    private CallConfig _callConfig;
 
+   /**
+    * The routing key of this request, if any. Can be -and initially is-
+    * <code>null</code>.
+    */
+   private String _routingKey;
+
    /**
     * Constructs a new <code>CallRequest</code>. This constructor is only
     * available to subclasses, since this class is <code>abstract</code>.
@@ -99,4 +105,33 @@ public abstract class CallRequest implements Serializable {
    protected final void setCallConfig(CallConfig config) {
       _callConfig = config;
    }
+
+   /**
+    * Retrieves the routing key of this request, if any.
+    *
+    * @return
+    *    the routing key, or <code>null</code> if none is set.
+    *
+    * @since XINS 3.0
+    */
+   public final String getRoutingKey() {
+      return _routingKey;
+   }
+
+   /**
+    * Sets the routing key of this request. Calls with the same routing key
+    * are sent to the same target by a group of type
+    * {@link GroupDescriptor#CONSISTENT_HASH_TYPE consistent-hash}, as long
+    * as that target is available. Other descriptors ignore the key. A
+    * typical routing key is a user or session identifier, so that a cache
+    * in the target is used well.
+    *
+    * @param key
+    *    the routing key, or <code>null</code> if none should be set.
+    *
+    * @since XINS 3.0
+    */
+   public final void setRoutingKey(String key) {
+      _routingKey = key;
+   }
 }
@@ -83,6 +83,28 @@ implements Serializable {
     */
    public abstract Collection<TargetDescriptor> targets();
 
+   /**
+    * Returns all leaves, the target descriptors, in the order in which they
+    * should be tried for a call with the specified routing key. The routing
+    * key is used by groups that select the target based on the request, see
+    * {@link GroupDescriptor#CONSISTENT_HASH_TYPE}.
+    *
+    * <p>The implementation of this method in class {@link Descriptor}
+    * ignores the key and returns {@link #targets()}.
+    *
+    * @param key
+    *    the routing key of the call, or <code>null</code> if there is none.
+    *
+    * @return
+    *    all the leaves, the {@link TargetDescriptor} instances,
+    *    never <code>null</code>.
+    *
+    * @since XINS 3.0
+    */
+   public Collection<TargetDescriptor> targets(String key) {
+      return targets();
+   }
+
    /**
     * Counts the total number of target descriptors in/under this descriptor.
     *
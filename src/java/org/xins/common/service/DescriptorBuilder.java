@@ -66,6 +66,16 @@ import org.xins.common.collections.PropertyReaderUtils;
  * <br>ldap.host1b=service, ldap://host1b/, 8000
  * <br>ldap.host2a=service, ldap://host2a/, 8000</code></blockquote>
  *
+ * <p>Since XINS 3.0, the group types <code>least-outstanding</code>,
+ * <code>latency-weighted</code> and <code>consistent-hash</code> are also
+ * supported, see {@link GroupDescriptor}. The following example sends each
+ * call to the back-end with the fewest calls in progress:
+ *
+ * <blockquote><code>search=group, least-outstanding, s1, s2, s3
+ * <br>search.s1=service, http://search1/, 5000
+ * <br>search.s2=service, http://search2/, 5000
+ * <br>search.s3=service, http://search3/, 5000</code></blockquote>
+ *
  * @version $Revision: 1.28 $ $Date: 2007/03/16 09:54:59 $
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
  *
@@ -8,14 +8,15 @@ package org.xins.common.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.xins.common.MandatoryArgumentChecker;
 import org.xins.common.Utils;
@@ -24,6 +25,32 @@ import org.xins.common.Utils;
  * Descriptor for a group of services. Each <code>GroupDescriptor</code> has
  * at least 2 members.
  *
+ * <p>The type of the group determines the order in which the targets are
+ * tried:
+ *
+ * <ul>
+ *    <li><em>random</em>: in random order;
+ *    <li><em>ordered</em>: in a fixed order;
+ *    <li><em>least-outstanding</em>: the targets with the fewest calls in
+ *        progress first;
+ *    <li><em>latency-weighted</em>: the best of 2 randomly chosen targets
+ *        first, then the other targets, where the best target is the one
+ *        with the lowest average call duration multiplied by the number of
+ *        calls in progress;
+ *    <li><em>consistent-hash</em>: based on the routing key of the call
+ *        (see {@link CallRequest#setRoutingKey(String)}), so that calls with
+ *        the same key go to the same target, while a change in the group
+ *        only moves the keys of the changed targets; calls without a routing
+ *        key are distributed randomly.
+ * </ul>
+ *
+ * <p>The adaptive types (<em>least-outstanding</em> and
+ * <em>latency-weighted</em>) use the live statistics that the
+ * {@link ServiceCaller} collects for each target, so that traffic moves
+ * away from slow or failing targets automatically. All types except
+ * <em>ordered</em> consider all targets in the group, including the targets
+ * of nested groups, as equal candidates.
+ *
  * @version $Revision: 1.31 $ $Date: 2007/03/16 09:54:59 $
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
  *
@@ -41,6 +68,27 @@ public final class GroupDescriptor extends Descriptor {
     */
    public static final String ORDERED_TYPE_ID = "ordered";
 
+   /**
+    * The identifier of the <em>least-outstanding</em> group type.
+    *
+    * @since XINS 3.0
+    */
+   public static final String LEAST_OUTSTANDING_TYPE_ID = "least-outstanding";
+
+   /**
+    * The identifier of the <em>latency-weighted</em> group type.
+    *
+    * @since XINS 3.0
+    */
+   public static final String LATENCY_WEIGHTED_TYPE_ID = "latency-weighted";
+
+   /**
+    * The identifier of the <em>consistent-hash</em> group type.
+    *
+    * @since XINS 3.0
+    */
+   public static final String CONSISTENT_HASH_TYPE_ID = "consistent-hash";
+
    /**
     * The <em>random</em> group type.
     */
@@ -52,9 +100,38 @@ public final class GroupDescriptor extends Descriptor {
    public static final Type ORDERED_TYPE = new Type(ORDERED_TYPE_ID);
 
    /**
-    * Pseudo-random number generator.
+    * The <em>least-outstanding</em> group type.
+    *
+    * @since XINS 3.0
+    */
+   public static final Type LEAST_OUTSTANDING_TYPE = new Type(LEAST_OUTSTANDING_TYPE_ID);
+
+   /**
+    * The <em>latency-weighted</em> group type.
+    *
+    * @since XINS 3.0
+    */
+   public static final Type LATENCY_WEIGHTED_TYPE = new Type(LATENCY_WEIGHTED_TYPE_ID);
+
+   /**
+    * The <em>consistent-hash</em> group type.
+    *
+    * @since XINS 3.0
+    */
+   public static final Type CONSISTENT_HASH_TYPE = new Type(CONSISTENT_HASH_TYPE_ID);
+
+   /**
+    * The number of points on the hash ring per target, for the
+    * <em>consistent-hash</em> group type.
+    */
+   private static final int POINTS_PER_TARGET = 160;
+
+   /**
+    * Counter from which the pseudo-random numbers are derived. Concurrent
+    * calls do not contend on a lock, and unlike a generator per thread, no
+    * objects are left behind on the threads of the servlet container.
     */
-   private static final Random RANDOM = new Random();
+   private static final AtomicLong SEED_SOURCE = new AtomicLong(System.nanoTime());
 
    /**
     * Constructs a new <code>GroupDescriptor</code>. The members to be
@@ -100,6 +177,15 @@ public final class GroupDescriptor extends Descriptor {
 
       // Recursively add all TargetDescriptor instances to the Map
       _targetsByCRC = initTargetsByCRC(members);
+      _targets      = _targetsByCRC.values().toArray(new TargetDescriptor[_targetsByCRC.size()]);
+
+      // Build the hash ring, if needed
+      if (CONSISTENT_HASH_TYPE.equals(type)) {
+         initRing();
+      } else {
+         _ringHashes  = null;
+         _ringTargets = null;
+      }
    }
 
    /**
@@ -142,6 +228,12 @@ public final class GroupDescriptor extends Descriptor {
          return RANDOM_TYPE;
       } else if (ORDERED_TYPE_ID.equals(identifier)) {
          return ORDERED_TYPE;
+      } else if (LEAST_OUTSTANDING_TYPE_ID.equals(identifier)) {
+         return LEAST_OUTSTANDING_TYPE;
+      } else if (LATENCY_WEIGHTED_TYPE_ID.equals(identifier)) {
+         return LATENCY_WEIGHTED_TYPE;
+      } else if (CONSISTENT_HASH_TYPE_ID.equals(identifier)) {
+         return CONSISTENT_HASH_TYPE;
       } else {
          return null;
       }
@@ -176,6 +268,58 @@ public final class GroupDescriptor extends Descriptor {
       return map;
    }
 
+   /**
+    * Builds the hash ring for the <em>consistent-hash</em> group type. Each
+    * target is placed on the ring at {@link #POINTS_PER_TARGET} points
+    * derived from its URL, so the position of a target does not depend on
+    * the other targets in the group.
+    */
+   private void initRing() {
+      TreeMap<Integer,TargetDescriptor> ring = new TreeMap<Integer,TargetDescriptor>();
+      for (TargetDescriptor target : _targets) {
+         for (int i = 0; i < POINTS_PER_TARGET; i++) {
+            int hash = hash(target.getURL() + '#' + i);
+
+            // On a collision, keep the target with the lowest URL, so that
+            // the ring does not depend on the order of the targets
+            TargetDescriptor existing = ring.get(hash);
+            if (existing == null || existing.getURL().compareTo(target.getURL()) > 0) {
+               ring.put(hash, target);
+            }
+         }
+      }
+
+      _ringHashes  = new int[ring.size()];
+      _ringTargets = new TargetDescriptor[ring.size()];
+      int i = 0;
+      for (Map.Entry<Integer,TargetDescriptor> entry : ring.entrySet()) {
+         _ringHashes[i]  = entry.getKey();
+         _ringTargets[i] = entry.getValue();
+         i++;
+      }
+   }
+
+   /**
+    * Computes the position of a string on the hash ring.
+    *
+    * @param s
+    *    the string, cannot be <code>null</code>.
+    *
+    * @return
+    *    the position on the ring.
+    */
+   private static int hash(String s) {
+
+      // Spread the bits of the hash code (MurmurHash3 finalizer)
+      int h = s.hashCode();
+      h ^= h >>> 16;
+      h *= 0x85ebca6b;
+      h ^= h >>> 13;
+      h *= 0xc2b2ae35;
+      h ^= h >>> 16;
+      return h;
+   }
+
    /**
     * The type of this group. Cannot be <code>null</code>.
     */
@@ -196,6 +340,26 @@ public final class GroupDescriptor extends Descriptor {
     */
    private final Map<Integer,TargetDescriptor> _targetsByCRC;
 
+   /**
+    * All contained <code>TargetDescriptor</code> instances, in the order of
+    * {@link #_targetsByCRC}. Cannot be <code>null</code>.
+    */
+   private final TargetDescriptor[] _targets;
+
+   /**
+    * The positions on the hash ring, in ascending order, or
+    * <code>null</code> if the type of this group is not
+    * {@link #CONSISTENT_HASH_TYPE}.
+    */
+   private int[] _ringHashes;
+
+   /**
+    * The targets at the positions in {@link #_ringHashes}, or
+    * <code>null</code> if the type of this group is not
+    * {@link #CONSISTENT_HASH_TYPE}.
+    */
+   private TargetDescriptor[] _ringTargets;
+
    /**
     * Checks if this descriptor denotes a group of descriptors.
     *
@@ -209,18 +373,194 @@ public final class GroupDescriptor extends Descriptor {
 
    @Override
    public Collection<TargetDescriptor> targets() {
+      return targets(null);
+   }
 
-      // Create a copy of the set of TargetDescriptors
-      List<TargetDescriptor> list = new ArrayList<TargetDescriptor>(_targetsByCRC.values());
+   /**
+    * Returns all leaves, the target descriptors, in the order in which they
+    * should be tried for a call with the specified routing key. The order
+    * depends on the type of this group. The key is only used by the
+    * <em>consistent-hash</em> type.
+    *
+    * @param key
+    *    the routing key of the call, or <code>null</code> if there is none.
+    *
+    * @return
+    *    all the leaves, the {@link TargetDescriptor} instances, as a new
+    *    list, never <code>null</code>.
+    *
+    * @since XINS 3.0
+    */
+   @Override
+   public Collection<TargetDescriptor> targets(String key) {
+
+      if (ORDERED_TYPE.equals(_type)) {
+         return new ArrayList<TargetDescriptor>(Arrays.asList(_targets));
+      } else if (LEAST_OUTSTANDING_TYPE.equals(_type)) {
+         return leastOutstanding();
+      } else if (LATENCY_WEIGHTED_TYPE.equals(_type)) {
+         return latencyWeighted();
+      } else if (CONSISTENT_HASH_TYPE.equals(_type) && key != null) {
+         return consistentHash(key);
+      }
 
-      // Shuffle the list if appropriate
-      if (RANDOM_TYPE.equals(_type)) {
-         Collections.shuffle(list);
+      // Random
+      TargetDescriptor[] targets = _targets.clone();
+      shuffle(targets, 0);
+      return new ArrayList<TargetDescriptor>(Arrays.asList(targets));
+   }
+
+   /**
+    * Orders the targets by the number of calls in progress, for the
+    * <em>least-outstanding</em> group type. Targets with the same number of
+    * calls in progress are in random order.
+    *
+    * @return
+    *    the ordered targets, never <code>null</code>.
+    */
+   private List<TargetDescriptor> leastOutstanding() {
+      TargetDescriptor[] targets = _targets.clone();
+      shuffle(targets, 0);
+
+      // Take a snapshot, since the numbers change while sorting
+      double[] scores = new double[targets.length];
+      for (int i = 0; i < targets.length; i++) {
+         scores[i] = targets[i].getStatistics().getOutstandingCalls();
+      }
+      sort(targets, scores, 0);
+      return Arrays.asList(targets);
+   }
+
+   /**
+    * Orders the targets by their expected cost, for the
+    * <em>latency-weighted</em> group type. The first target is the best of 2
+    * randomly chosen targets (the <em>power of two choices</em>), which
+    * spreads the load better than always choosing the best target. The
+    * other targets follow by increasing cost, for fail-over.
+    *
+    * @return
+    *    the ordered targets, never <code>null</code>.
+    */
+   private List<TargetDescriptor> latencyWeighted() {
+      TargetDescriptor[] targets = _targets.clone();
+      if (targets.length < 2) {
+         return Arrays.asList(targets);
+      }
+
+      // Choose 2 different targets and put the best one first
+      int first  = nextInt(targets.length);
+      int second = nextInt(targets.length - 1);
+      if (second >= first) {
+         second++;
+      }
+      if (targets[second].getStatistics().getCost() < targets[first].getStatistics().getCost()) {
+         first = second;
+      }
+      TargetDescriptor best = targets[first];
+      targets[first] = targets[0];
+      targets[0]     = best;
+
+      // Order the other targets by cost
+      shuffle(targets, 1);
+      double[] scores = new double[targets.length];
+      for (int i = 1; i < targets.length; i++) {
+         scores[i] = targets[i].getStatistics().getCost();
+      }
+      sort(targets, scores, 1);
+      return Arrays.asList(targets);
+   }
+
+   /**
+    * Orders the targets by walking the hash ring from the position of the
+    * routing key, for the <em>consistent-hash</em> group type.
+    *
+    * @param key
+    *    the routing key, cannot be <code>null</code>.
+    *
+    * @return
+    *    the ordered targets, never <code>null</code>.
+    */
+   private List<TargetDescriptor> consistentHash(String key) {
+      int start = Arrays.binarySearch(_ringHashes, hash(key));
+      if (start < 0) {
+         start = -start - 1;
       }
 
+      List<TargetDescriptor> list = new ArrayList<TargetDescriptor>(_targets.length);
+      for (int i = 0; i < _ringHashes.length && list.size() < _targets.length; i++) {
+         TargetDescriptor target = _ringTargets[(start + i) % _ringHashes.length];
+         if (! list.contains(target)) {
+            list.add(target);
+         }
+      }
       return list;
    }
 
+   /**
+    * Shuffles the targets from the specified index.
+    *
+    * @param targets
+    *    the targets, cannot be <code>null</code>.
+    *
+    * @param from
+    *    the index of the first target to shuffle.
+    */
+   private static void shuffle(TargetDescriptor[] targets, int from) {
+      for (int i = targets.length - 1; i > from; i--) {
+         int j = from + nextInt(i - from + 1);
+         TargetDescriptor target = targets[i];
+         targets[i] = targets[j];
+         targets[j] = target;
+      }
+   }
+
+   /**
+    * Returns the next pseudo-random number. The value of a shared counter is
+    * incremented and its bits are mixed.
+    *
+    * @param bound
+    *    the upper bound (exclusive), must be &gt; 0.
+    *
+    * @return
+    *    the pseudo-random number, between 0 (inclusive) and
+    *    <code>bound</code> (exclusive).
+    */
+   private static int nextInt(int bound) {
+      long seed = SEED_SOURCE.addAndGet(0x9E3779B97F4A7C15L);
+      seed = (seed ^ (seed >>> 33)) * 0xFF51AFD7ED558CCDL;
+      seed = (seed ^ (seed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+      seed ^= seed >>> 33;
+      return (int) (((seed >>> 32) * bound) >>> 32);
+   }
+
+   /**
+    * Sorts the targets from the specified index by ascending score. The sort
+    * is stable. Since groups are small, an insertion sort is used.
+    *
+    * @param targets
+    *    the targets, cannot be <code>null</code>.
+    *
+    * @param scores
+    *    the score of each target, cannot be <code>null</code>.
+    *
+    * @param from
+    *    the index of the first target to sort.
+    */
+   private static void sort(TargetDescriptor[] targets, double[] scores, int from) {
+      for (int i = from + 1; i < targets.length; i++) {
+         TargetDescriptor target = targets[i];
+         double score = scores[i];
+         int j = i - 1;
+         while (j >= from && scores[j] > score) {
+            targets[j + 1] = targets[j];
+            scores[j + 1]  = scores[j];
+            j--;
+         }
+         targets[j + 1] = target;
+         scores[j + 1]  = score;
+      }
+   }
+
    /**
     * Counts the total number of target descriptors in/under this descriptor.
     *
@@ -7,6 +7,7 @@
 package org.xins.common.service;
 
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 import org.xins.common.Log;
 import org.xins.common.MandatoryArgumentChecker;
@@ -106,6 +107,21 @@ import org.xins.common.Utils;
  * back-ends from the <em>BackupSite</em> group until the call has succeeded
  * or until all back-ends were tried.
  *
+ * <a name="section-executors"></a>
+ * <h2>Executors</h2>
+ *
+ * <p>To enforce the total time-out, each call attempt is executed on a
+ * separate thread. By default a new thread is created for each call
+ * attempt. To reuse threads instead, an {@link ExecutorService} can be set,
+ * either for a single service caller (see
+ * {@link #setExecutor(ExecutorService)}) or for all service callers (see
+ * {@link #setDefaultExecutor(ExecutorService)}). A bounded executor can be
+ * created using {@link TimeOutController#createExecutor(String,int)}.
+ * Alternatively, setting the system property
+ * <code>org.xins.common.service.executorThreads</code> to a positive number
+ * makes all service callers use a shared bounded executor with that number
+ * of threads.
+ *
  * <a name="section-callconfig"></a>
  * <h2>Call configuration</h2>
  *
@@ -191,11 +207,87 @@ import org.xins.common.Utils;
  */
 public abstract class ServiceCaller {
 
+   /**
+    * Name of the system property that specifies the number of threads of
+    * the executor shared by all service callers.
+    */
+   private static final String EXECUTOR_THREADS_PROPERTY = "org.xins.common.service.executorThreads";
+
+   /**
+    * The executor used by service callers that have no executor set, or
+    * <code>null</code> if a new thread should be created per call attempt.
+    */
+   private static volatile ExecutorService DEFAULT_EXECUTOR = createDefaultExecutor();
+
+   /**
+    * Creates the default executor, based on the system property
+    * {@value #EXECUTOR_THREADS_PROPERTY}.
+    *
+    * @return
+    *    the default executor, or <code>null</code> if the system property is
+    *    not set or not a positive number.
+    */
+   private static ExecutorService createDefaultExecutor() {
+      String threads;
+      try {
+         threads = System.getProperty(EXECUTOR_THREADS_PROPERTY);
+      } catch (SecurityException exception) {
+         Utils.logIgnoredException(exception);
+         return null;
+      }
+      if (threads == null || threads.trim().length() < 1) {
+         return null;
+      }
+      try {
+         int maxThreads = Integer.parseInt(threads.trim());
+         if (maxThreads > 0) {
+            return TimeOutController.createExecutor("XINS service caller", maxThreads);
+         }
+      } catch (NumberFormatException exception) {
+         Utils.logIgnoredException(exception);
+      }
+      return null;
+   }
+
+   /**
+    * Sets the executor that runs call attempts of all service callers that
+    * have no executor set.
+    *
+    * @param executor
+    *    the executor, or <code>null</code> if a new thread should be created
+    *    per call attempt.
+    *
+    * @since XINS 3.0
+    */
+   public static void setDefaultExecutor(ExecutorService executor) {
+      DEFAULT_EXECUTOR = executor;
+   }
+
+   /**
+    * Returns the executor that runs call attempts of all service callers
+    * that have no executor set.
+    *
+    * @return
+    *    the executor, or <code>null</code> if a new thread is created per
+    *    call attempt.
+    *
+    * @since XINS 3.0
+    */
+   public static ExecutorService getDefaultExecutor() {
+      return DEFAULT_EXECUTOR;
+   }
+
    /**
     * The descriptor for this service. Can be <code>null</code>.
     */
    private Descriptor _descriptor;
 
+   /**
+    * The executor that runs call attempts for this service caller. Can be
+    * <code>null</code>, in which case the default executor is used.
+    */
+   private ExecutorService _executor;
+
    /**
     * The fall-back call config object for this service caller.
     * Cannot be <code>null</code>.
@@ -421,6 +513,33 @@ public abstract class ServiceCaller {
       return _callConfig;
    }
 
+   /**
+    * Sets the executor that runs the call attempts of this service caller.
+    *
+    * @param executor
+    *    the executor, or <code>null</code> if the default executor should be
+    *    used, see {@link #setDefaultExecutor(ExecutorService)}.
+    *
+    * @since XINS 3.0
+    */
+   public void setExecutor(ExecutorService executor) {
+      _executor = executor;
+   }
+
+   /**
+    * Returns the executor that runs the call attempts of this service
+    * caller.
+    *
+    * @return
+    *    the executor set for this service caller, or <code>null</code> if the
+    *    default executor is used.
+    *
+    * @since XINS 3.0
+    */
+   public final ExecutorService getExecutor() {
+      return _executor;
+   }
+
    /**
     * Returns a default <code>CallConfig</code> object. This method is called
     * by the <code>ServiceCaller</code> constructor if no
@@ -517,8 +636,8 @@ public abstract class ServiceCaller {
       // performance- and memory-optimized for the successful case
       CallExceptionList exceptions = null;
 
-      // Iterate over all targets
-      Iterator<TargetDescriptor> iterator = descriptor.targets().iterator();
+      // Iterate over all targets, in the order determined by the descriptor
+      Iterator<TargetDescriptor> iterator = descriptor.targets(request.getRoutingKey()).iterator();
 
       // There should be at least one target
       if (! iterator.hasNext()) {
@@ -536,8 +655,15 @@ public abstract class ServiceCaller {
          // Call using this target
          Object result = null;
          boolean succeeded = false;
+         boolean responded = true;
          long start = System.currentTimeMillis();
 
+         // Keep the live statistics of the target up to date, they are used
+         // by the adaptive group types to select a target
+         TargetStatistics statistics = target.getStatistics();
+         statistics.callStarted();
+         long startNanos = System.nanoTime();
+
          Log.log_1309(url);
          try {
 
@@ -582,8 +708,17 @@ public abstract class ServiceCaller {
             exceptions.add(currentException);
 
             // Determine whether fail-over is allowed and whether we have
-            // another target to fail-over to
-            boolean failOver = shouldFailOver(request, callConfig, exceptions);
+            // another target to fail-over to; a cancelled call does not
+            // fail-over. A call that can be cancelled is interrupted before
+            // it is marked as cancelled, so the interrupt counts as well
+            CallCancellation cancellation = CallCancellation.current();
+            boolean cancelled = cancellation != null
+                             && (cancellation.isCancelled() || Thread.currentThread().isInterrupted());
+            boolean failOver = !cancelled && shouldFailOver(request, callConfig, exceptions);
+
+            // Only a target that did not respond is charged the time-out, a
+            // target that returned an error responded normally
+            responded = cancelled || ! isTargetFailure(currentException);
             boolean haveNext = iterator.hasNext();
 
             // No more targets and no fail-over
@@ -606,6 +741,8 @@ public abstract class ServiceCaller {
                Log.log_1307();
                shouldContinue = true;
             }
+         } finally {
+            statistics.callEnded(System.nanoTime() - startNanos, responded, target.getTotalTimeOut());
          }
 
          // The call succeeded
@@ -623,6 +760,24 @@ public abstract class ServiceCaller {
       throw exceptions.get(0);
    }
 
+   /**
+    * Determines whether a failed call indicates that the target could not be
+    * reached or did not respond in time, as opposed to a target that
+    * returned an error.
+    *
+    * @param exception
+    *    the exception thrown by the call, cannot be <code>null</code>.
+    *
+    * @return
+    *    <code>true</code> if the target did not respond.
+    */
+   private static boolean isTargetFailure(CallException exception) {
+      return exception instanceof ConnectionCallException
+          || exception instanceof SocketTimeOutCallException
+          || exception instanceof TotalTimeOutCallException
+          || exception instanceof IOCallException;
+   }
+
    /**
     * Calls the specified target using the specified subject. This method must
     * be implemented by subclasses. It is called as soon as a target is
@@ -712,9 +867,11 @@ public abstract class ServiceCaller {
     * does not complete within a time-out period.
     *
     * <p>If the specified descriptor defines a total time-out, then the task
-    * <code>task</code> is executed on a separate thread. If the task does
-    * then not finish within the total time-out period, then the thread
-    * executing it is interrupted using the {@link Thread#interrupt()}
+    * <code>task</code> is executed on a separate thread, provided by the
+    * executor of this service caller, by the default executor or, if there
+    * is neither or if the executor rejects the task, a new thread. If the
+    * task does then not finish within the total time-out period, then the
+    * thread executing it is interrupted using the {@link Thread#interrupt()}
     * method and a {@link TimeOutException} is thrown.
     *
     * <p>If the specified descriptor does not define a total time-out, then
@@ -763,7 +920,8 @@ public abstract class ServiceCaller {
 
       // Otherwise a time-out controller will be used
       } else {
-         TimeOutController.execute(task, totalTimeOut);
+         ExecutorService executor = (_executor != null) ? _executor : DEFAULT_EXECUTOR;
+         TimeOutController.execute(task, totalTimeOut, executor);
       }
    }
 
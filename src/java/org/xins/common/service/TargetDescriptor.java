@@ -206,6 +206,12 @@ public final class TargetDescriptor extends Descriptor {
     */
    private final int _crc;
 
+   /**
+    * The live statistics of the calls to this target. Lazily initialized by
+    * {@link #getStatistics()}, since they are not serialized.
+    */
+   private transient volatile TargetStatistics _statistics;
+
    /**
     * Constructs a new <code>TargetDescriptor</code> for the specified URL.
     *
@@ -433,6 +439,26 @@ public final class TargetDescriptor extends Descriptor {
       return _crc;
    }
 
+   /**
+    * Returns the live statistics of the calls to this target.
+    *
+    * @return
+    *    the statistics, never <code>null</code>.
+    */
+   TargetStatistics getStatistics() {
+      TargetStatistics statistics = _statistics;
+      if (statistics == null) {
+         synchronized (this) {
+            statistics = _statistics;
+            if (statistics == null) {
+               statistics  = new TargetStatistics();
+               _statistics = statistics;
+            }
+         }
+      }
+      return statistics;
+   }
+
    @Override
    public Collection<TargetDescriptor> targets() {
       return Collections.singleton(this);
@@ -0,0 +1,160 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live statistics of the calls to a single target. These statistics are
+ * collected by {@link ServiceCaller} and used by the adaptive group types of
+ * {@link GroupDescriptor} to select the target to call.
+ *
+ * <p>The latency is an exponentially weighted moving average of the call
+ * durations. A call to which the target did not respond, because the
+ * connection failed or timed out, counts as a call that lasted as long as the
+ * total time-out of the target. A call that returned an error counts with
+ * its measured duration. The average decays while no calls are made, so
+ * that a target that was slow or failing is tried again after a while.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class TargetStatistics {
+
+   /**
+    * The weight of a new duration in the moving average.
+    */
+   private static final double WEIGHT = 0.3;
+
+   /**
+    * The time after which the moving average has decayed to half its value
+    * if no calls are made, in nanoseconds.
+    */
+   private static final double HALF_LIFE = 10000000000.0;
+
+   /**
+    * The duration that a failed call counts for if the target has no total
+    * time-out, in milliseconds.
+    */
+   private static final long FAILURE_DURATION = 5000L;
+
+   /**
+    * The number of calls to the target that are in progress. Never
+    * <code>null</code>.
+    */
+   private final AtomicInteger _outstanding;
+
+   /**
+    * The moving average of the call durations at the time of the last
+    * update, in milliseconds. Guarded by <code>this</code>.
+    */
+   private double _latency;
+
+   /**
+    * The time of the last update of the moving average, as returned by
+    * {@link System#nanoTime()}. Guarded by <code>this</code>.
+    */
+   private long _updated;
+
+   /**
+    * Constructs a new <code>TargetStatistics</code> object.
+    */
+   TargetStatistics() {
+      _outstanding = new AtomicInteger();
+      _updated     = System.nanoTime();
+   }
+
+   /**
+    * Records the start of a call.
+    */
+   void callStarted() {
+      _outstanding.incrementAndGet();
+   }
+
+   /**
+    * Records the end of a call.
+    *
+    * @param duration
+    *    the duration of the call, in nanoseconds.
+    *
+    * @param responded
+    *    <code>true</code> if the target responded, even with an error,
+    *    <code>false</code> if the connection failed or timed out.
+    *
+    * @param timeOut
+    *    the total time-out of the target, in milliseconds, or 0 if there is
+    *    none.
+    */
+   void callEnded(long duration, boolean responded, int timeOut) {
+      _outstanding.decrementAndGet();
+
+      double millis = duration / 1000000.0;
+      if (! responded) {
+         millis = Math.max(millis, timeOut > 0 ? timeOut : FAILURE_DURATION);
+      }
+
+      synchronized (this) {
+         long now = System.nanoTime();
+         double latency = decay(_latency, now - _updated);
+         _latency = latency + WEIGHT * (millis - latency);
+         _updated = now;
+      }
+   }
+
+   /**
+    * Returns the number of calls to the target that are in progress.
+    *
+    * @return
+    *    the number of calls in progress, normally &gt;= 0.
+    */
+   int getOutstandingCalls() {
+      return _outstanding.get();
+   }
+
+   /**
+    * Returns the moving average of the call durations.
+    *
+    * @return
+    *    the average duration, in milliseconds, always &gt;= 0.
+    */
+   synchronized double getLatency() {
+      return decay(_latency, System.nanoTime() - _updated);
+   }
+
+   /**
+    * Returns the expected cost of a new call to the target: the average
+    * duration, weighted by the number of calls in progress.
+    *
+    * @return
+    *    the cost, always &gt; 0; the lower, the better.
+    */
+   double getCost() {
+      return (getLatency() + 1.0) * (Math.max(getOutstandingCalls(), 0) + 1);
+   }
+
+   /**
+    * Decays a moving average.
+    *
+    * @param latency
+    *    the moving average.
+    *
+    * @param elapsed
+    *    the time since the last update, in nanoseconds.
+    *
+    * @return
+    *    the decayed moving average.
+    */
+   private static double decay(double latency, long elapsed) {
+      if (elapsed <= 0L || latency == 0.0) {
+         return latency;
+      }
+      return latency * Math.pow(0.5, elapsed / HALF_LIFE);
+   }
+}
@@ -0,0 +1,539 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common.servlet.container;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.HttpStatus;
+
+import org.xins.common.Library;
+import org.xins.common.Log;
+import org.xins.common.Utils;
+import org.xins.common.text.ParseException;
+
+/**
+ * Non-blocking HTTP connector of the servlet container.
+ *
+ * <p>One selector thread accepts the connections and reads and writes all
+ * sockets. When a complete request has been received, it is passed to a
+ * bounded pool of worker threads, which query the servlet and produce the
+ * response as bytes. The selector thread then writes the response.
+ *
+ * <p>Connections are kept open between requests (HTTP/1.1 keep-alive) until
+ * the client asks to close them or they are idle for
+ * {@link #IDLE_TIMEOUT} milliseconds. Requests that are sent before the
+ * response to the previous one (pipelining) are handled in order, one at a
+ * time per connection.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class HTTPConnector implements Runnable {
+
+   /**
+    * The maximum number of worker threads.
+    */
+   static final int WORKER_COUNT = 32;
+
+   /**
+    * The maximum number of requests waiting for a worker thread. Requests
+    * beyond this limit get a <em>503 Service Unavailable</em> response.
+    */
+   static final int QUEUE_SIZE = 1000;
+
+   /**
+    * The time after which an idle connection is closed, in milliseconds.
+    */
+   static final long IDLE_TIMEOUT = 30000L;
+
+   /**
+    * The initial size of the input buffer of a connection.
+    */
+   private static final int INPUT_BUFFER_SIZE = 8192;
+
+   /**
+    * The channel that accepts the connections. Never <code>null</code>.
+    */
+   private final ServerSocketChannel _serverChannel;
+
+   /**
+    * The selector for all channels. Never <code>null</code>.
+    */
+   private final Selector _selector;
+
+   /**
+    * The handler that produces the responses. Never <code>null</code>.
+    */
+   private final HTTPQueryHandler _queryHandler;
+
+   /**
+    * The worker threads. Never <code>null</code>.
+    */
+   private final ThreadPoolExecutor _workers;
+
+   /**
+    * The connections of which the response is ready, to be written by the
+    * selector thread. Never <code>null</code>.
+    */
+   private final ConcurrentLinkedQueue<Connection> _completed;
+
+   /**
+    * The selector thread. Never <code>null</code>.
+    */
+   private final Thread _thread;
+
+   /**
+    * Flag indicating if the connector should continue or stop.
+    */
+   private volatile boolean _running;
+
+   /**
+    * Creates a new <code>HTTPConnector</code> and binds it to the specified
+    * port. The connector does not accept connections until it is started.
+    *
+    * @param port
+    *    the port to listen on.
+    *
+    * @param servlets
+    *    the mapping between the path and the servlets, cannot be
+    *    <code>null</code>.
+    *
+    * @param daemon
+    *    <code>true</code> if the threads should be daemon threads,
+    *    <code>false</code> otherwise.
+    *
+    * @throws IOException
+    *    if the port cannot be opened.
+    */
+   HTTPConnector(int port, Map<String,LocalServletHandler> servlets, final boolean daemon)
+   throws IOException {
+
+      _queryHandler = new HTTPQueryHandler(servlets);
+      _completed    = new ConcurrentLinkedQueue<Connection>();
+
+      _selector      = Selector.open();
+      _serverChannel = ServerSocketChannel.open();
+      try {
+         _serverChannel.socket().bind(new InetSocketAddress(port), 50);
+         _serverChannel.configureBlocking(false);
+         _serverChannel.register(_selector, SelectionKey.OP_ACCEPT);
+      } catch (IOException exception) {
+         _serverChannel.close();
+         _selector.close();
+         throw exception;
+      }
+
+      final AtomicInteger threadCount = new AtomicInteger();
+      ThreadFactory threadFactory = new ThreadFactory() {
+         public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "XINS Query handler #" + threadCount.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+         }
+      };
+      _workers = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), threadFactory);
+
+      _thread = new Thread(this, "XINS " + Library.getVersion() + " Servlet container.");
+      _thread.setDaemon(daemon);
+   }
+
+   /**
+    * Starts accepting connections.
+    */
+   void start() {
+      _running = true;
+      _thread.start();
+   }
+
+   /**
+    * Returns the port the connector is accepting connections on.
+    *
+    * @return
+    *    the port, e.g. <code>8080</code>.
+    */
+   int getPort() {
+      return _serverChannel.socket().getLocalPort();
+   }
+
+   /**
+    * Stops the connector and closes all connections. Requests being handled
+    * are completed, but their responses are not sent.
+    */
+   void close() {
+      _running = false;
+      _selector.wakeup();
+      _workers.shutdown();
+
+      // Wait for the selector thread to close the port
+      if (_thread.isAlive()) {
+         try {
+            _thread.join(5000L);
+         } catch (InterruptedException exception) {
+            Utils.logIgnoredException(exception);
+         }
+      } else {
+         closeAll();
+      }
+   }
+
+   /**
+    * Closes the server channel, the selector and all connections.
+    */
+   private void closeAll() {
+      try {
+         for (SelectionKey key : _selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+               ((Connection) key.attachment()).close();
+            }
+         }
+      } catch (ClosedSelectorException exception) {
+         // already closed
+      }
+      try {
+         _serverChannel.close();
+         _selector.close();
+      } catch (IOException ioe) {
+         Log.log_1502(ioe);
+      }
+   }
+
+   /**
+    * Runs the selector loop, until the connector is closed.
+    */
+   public void run() {
+      Log.log_1500(getPort());
+      long nextIdleCheck = System.currentTimeMillis() + IDLE_TIMEOUT;
+      try {
+         while (_running) {
+            _selector.select(1000L);
+
+            // Write the responses that are ready
+            Connection completed;
+            while ((completed = _completed.poll()) != null) {
+               completed.writeResponse();
+            }
+
+            // Handle the channels that are ready
+            Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+               SelectionKey key = keys.next();
+               keys.remove();
+               if (! key.isValid()) {
+                  continue;
+               }
+               if (key.isAcceptable()) {
+                  accept();
+               } else {
+                  Connection connection = (Connection) key.attachment();
+                  if (key.isReadable()) {
+                     connection.read();
+                  }
+                  if (key.isValid() && key.isWritable()) {
+                     connection.write();
+                  }
+               }
+            }
+
+            // Close the idle connections
+            long now = System.currentTimeMillis();
+            if (now >= nextIdleCheck) {
+               for (SelectionKey key : _selector.keys()) {
+                  if (key.attachment() instanceof Connection) {
+                     ((Connection) key.attachment()).closeIfIdle(now);
+                  }
+               }
+               nextIdleCheck = now + 1000L;
+            }
+         }
+      } catch (IOException ioe) {
+         Log.log_1501(ioe);
+      } finally {
+         closeAll();
+      }
+   }
+
+   /**
+    * Accepts a new connection.
+    */
+   private void accept() {
+      SocketChannel channel = null;
+      try {
+         channel = _serverChannel.accept();
+         if (channel != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection._key = channel.register(_selector, SelectionKey.OP_READ, connection);
+         }
+      } catch (IOException exception) {
+         Utils.logIgnoredException(exception);
+         if (channel != null) {
+            try {
+               channel.close();
+            } catch (IOException ioe) {
+               // ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Connection with a client. All methods, except {@link #run()} and
+    * {@link #complete(ByteBuffer)}, are called by the selector thread only.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private final class Connection implements Runnable {
+
+      /**
+       * The channel. Never <code>null</code>.
+       */
+      private final SocketChannel _channel;
+
+      /**
+       * The selection key of the channel.
+       */
+      private SelectionKey _key;
+
+      /**
+       * The bytes received and not handled yet, in write mode. Never
+       * <code>null</code>.
+       */
+      private ByteBuffer _in;
+
+      /**
+       * The request being handled by a worker thread, or <code>null</code>.
+       */
+      private HTTPRequest _request;
+
+      /**
+       * Whether the connection is kept open after the current response.
+       */
+      private boolean _keepAlive;
+
+      /**
+       * The response produced by the worker thread, handed over to the
+       * selector thread.
+       */
+      private volatile ByteBuffer _response;
+
+      /**
+       * The response being written, or <code>null</code>.
+       */
+      private ByteBuffer _out;
+
+      /**
+       * The time of the last activity on this connection.
+       */
+      private long _lastActivity;
+
+      /**
+       * Creates a new <code>Connection</code>.
+       *
+       * @param channel
+       *    the channel, cannot be <code>null</code>.
+       */
+      private Connection(SocketChannel channel) {
+         _channel      = channel;
+         _in           = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+         _lastActivity = System.currentTimeMillis();
+      }
+
+      /**
+       * Reads the available bytes and handles the next request, if it is
+       * complete.
+       */
+      private void read() {
+         int count;
+         try {
+            if (! _in.hasRemaining()) {
+               ByteBuffer larger = ByteBuffer.allocate(_in.capacity() * 2);
+               _in.flip();
+               larger.put(_in);
+               _in = larger;
+            }
+            count = _channel.read(_in);
+         } catch (IOException exception) {
+            count = -1;
+         }
+
+         if (count < 0) {
+            close();
+         } else {
+            _lastActivity = System.currentTimeMillis();
+            nextRequest();
+         }
+      }
+
+      /**
+       * Handles the next request, if it was received completely. Otherwise
+       * waits for more bytes.
+       */
+      private void nextRequest() {
+         HTTPRequest request;
+         _in.flip();
+         try {
+            request = HTTPRequest.read(_in);
+            _in.compact();
+         } catch (ParseException exception) {
+            _in.clear();
+            respond(HTTPQueryHandler.error(HttpStatus.SC_BAD_REQUEST, false), false);
+            return;
+         }
+
+         // Wait for more bytes
+         if (request == null) {
+            _key.interestOps(SelectionKey.OP_READ);
+            return;
+         }
+
+         // Stop reading while the request is handled
+         _key.interestOps(0);
+         _request   = request;
+         _keepAlive = request.isKeepAlive();
+         try {
+            _workers.execute(this);
+         } catch (RejectedExecutionException exception) {
+            _request = null;
+            respond(HTTPQueryHandler.error(HttpStatus.SC_SERVICE_UNAVAILABLE, false), false);
+         }
+      }
+
+      /**
+       * Handles the request, in a worker thread.
+       */
+      public void run() {
+         ByteBuffer response;
+         try {
+            response = _queryHandler.httpQuery(_request, _keepAlive);
+         } catch (Throwable exception) {
+
+            // If anything goes wrong still continue accepting clients
+            Utils.logIgnoredException(exception);
+            _keepAlive = false;
+            response = HTTPQueryHandler.error(HttpStatus.SC_INTERNAL_SERVER_ERROR, false);
+         }
+         complete(response);
+      }
+
+      /**
+       * Hands the response over to the selector thread.
+       *
+       * @param response
+       *    the response, cannot be <code>null</code>.
+       */
+      private void complete(ByteBuffer response) {
+         _response = response;
+         _completed.add(this);
+         _selector.wakeup();
+      }
+
+      /**
+       * Starts writing the response produced by the worker thread.
+       */
+      private void writeResponse() {
+
+         // Clear the fields first, writing the response may already hand
+         // the next pipelined request to a worker thread
+         ByteBuffer response = _response;
+         _response = null;
+         _request  = null;
+         respond(response, _keepAlive);
+      }
+
+      /**
+       * Starts writing a response.
+       *
+       * @param response
+       *    the response, cannot be <code>null</code>.
+       *
+       * @param keepAlive
+       *    <code>true</code> if the connection is kept open after the
+       *    response, <code>false</code> if it is closed.
+       */
+      private void respond(ByteBuffer response, boolean keepAlive) {
+         if (! _key.isValid()) {
+            return;
+         }
+         _keepAlive = keepAlive;
+         _out       = response;
+         write();
+      }
+
+      /**
+       * Writes as much as possible of the response. When the response is
+       * written completely, then either the connection is closed or the
+       * next request is handled.
+       */
+      private void write() {
+         try {
+            _channel.write(_out);
+         } catch (IOException exception) {
+            close();
+            return;
+         }
+         _lastActivity = System.currentTimeMillis();
+
+         if (_out.hasRemaining()) {
+            _key.interestOps(SelectionKey.OP_WRITE);
+         } else {
+            _out = null;
+            if (_keepAlive) {
+               nextRequest();
+            } else {
+               close();
+            }
+         }
+      }
+
+      /**
+       * Closes this connection if it is idle for too long.
+       *
+       * @param now
+       *    the current time.
+       */
+      private void closeIfIdle(long now) {
+         if (_request == null && _out == null && now - _lastActivity > IDLE_TIMEOUT) {
+            close();
+         }
+      }
+
+      /**
+       * Closes this connection.
+       */
+      private void close() {
+         if (_key != null) {
+            _key.cancel();
+         }
+         try {
+            _channel.close();
+         } catch (IOException exception) {
+            // ignore
+         }
+      }
+   }
+}
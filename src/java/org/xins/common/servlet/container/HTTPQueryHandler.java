@@ -6,34 +6,31 @@
  */
 package org.xins.common.servlet.container;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.net.FileNameMap;
-import java.net.Socket;
 import java.net.URLConnection;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.apache.commons.httpclient.HttpStatus;
 
 import org.xins.common.MandatoryArgumentChecker;
-import org.xins.common.Utils;
 import org.xins.common.collections.PropertyReader;
-import org.xins.common.text.ParseException;
 
 /**
- * HTTP query received to be handled by the servlet.
+ * HTTP query received to be handled by the servlet. The response is
+ * produced as bytes, ready to be written to the connection.
+ *
+ * <p>This class is thread-safe, one instance handles the queries of all
+ * connections.
  *
  * @version $Revision: 1.4 $ $Date: 2007/09/18 08:45:08 $
  * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
  */
-class HTTPQueryHandler extends Thread {
+class HTTPQueryHandler {
 
    /**
     * The encoding of the request.
@@ -45,182 +42,60 @@ class HTTPQueryHandler extends Thread {
     */
    private static final FileNameMap MIME_TYPES_MAP = URLConnection.getFileNameMap();
 
-   /**
-    * The line separator used by the HTTP protocol.
-    */
-   private static final String CRLF = "\r\n";
-
-   /**
-    * The instance number for this created query.
-    */
-   private static int _instanceNumber = 0;
-
-   /**
-    * The socket of the HTTP query.
-    */
-   private final Socket _client;
-
    /**
     * Mapping between the path and the servlet.
     */
-   private final Map _servlets;
+   private final Map<String,LocalServletHandler> _servlets;
 
    /**
-    * Creates a new HTTPQueryHandler to handle the HTTP query sent by the client.
-    *
-    * @param client
-    *    the connection with the client, cannot be <code>null</code>.
+    * Creates a new <code>HTTPQueryHandler</code> to handle the HTTP queries
+    * sent by the clients.
     *
     * @param servlets
     *    the mapping between the path and the servlets, cannot be <code>null</code>.
     *
     * @throws IllegalArgumentException
-    *    if <code>client == null || servlets == null</code>.
+    *    if <code>servlets == null</code>.
     */
-   public HTTPQueryHandler(Socket client, Map servlets) throws IllegalArgumentException {
+   HTTPQueryHandler(Map<String,LocalServletHandler> servlets) throws IllegalArgumentException {
 
       // Check argument
-      MandatoryArgumentChecker.check("client", client, "servlets", servlets);
+      MandatoryArgumentChecker.check("servlets", servlets);
 
-      _client = client;
       _servlets = servlets;
-      synchronized (servlets) {
-         _instanceNumber++;
-      }
-      setName("XINS Query handler #" + _instanceNumber);
-   }
-
-   public void run() {
-      try {
-         serviceClient(_client);
-      } catch (Exception ex) {
-
-         // If anything goes wrong still continue accepting clients
-         Utils.logIgnoredException(ex);
-      } finally {
-         try {
-            _client.close();
-         } catch (Throwable exception) {
-            // ignore
-         }
-      }
    }
 
    /**
-    * This method is invoked when a client connects to the server.
-    *
-    * @param client
-    *    the connection with the client, cannot be <code>null</code>.
-    *
-    * @throws IllegalArgumentException
-    *    if <code>client == null</code>.
-    *
-    * @throws IOException
-    *    if the query is not handled correctly.
-    */
-   public void serviceClient(Socket client)
-   throws IllegalArgumentException, IOException {
-
-      // Check argument
-      MandatoryArgumentChecker.check("client", client);
-
-      InputStream  inbound  = client.getInputStream();
-      OutputStream outbound = client.getOutputStream();
-
-      // Delegate to httpQuery in a way it does not have to bother with
-      // closing the streams
-      try {
-         httpQuery(inbound, outbound);
-
-      // Clean up for httpQuery, if necessary
-      } finally{
-         if (inbound != null) {
-            try {
-               inbound.close();
-            } catch (Throwable exception) {
-               Utils.logIgnoredException(exception);
-            }
-         }
-         if (outbound != null) {
-            try {
-               outbound.close();
-            } catch (Throwable exception) {
-               Utils.logIgnoredException(exception);
-            }
-         }
-      }
-   }
-
-   /**
-    * This method parses the data sent from the client to get the input
-    * parameters and format the result as a compatible HTTP result.
+    * Handles a request and produces the complete HTTP response.
     * This method will used the servlet associated with the passed virtual
     * path. If no servlet is associated with the virtual path, the servlet with
     * the virtual path "/" is used as default. If there is no servlet then with
     * the virtual path "/" is found then HTTP 404 is returned.
     *
-    * @param in
-    *    the input byte stream that contains the request sent by the client.
+    * @param request
+    *    the request sent by the client, cannot be <code>null</code>.
     *
-    * @param out
-    *    the output byte stream that must be fed the response towards the
-    *    client.
+    * @param keepAlive
+    *    <code>true</code> if the connection is kept open after the response,
+    *    <code>false</code> if it is closed.
+    *
+    * @return
+    *    the bytes of the response, never <code>null</code>.
     *
     * @throws IOException
     *    if the query is not handled correctly.
     *
-    * @since XINS 1.5.0.
+    * @since XINS 3.0
     */
-   public void httpQuery(InputStream  in, OutputStream out)
+   ByteBuffer httpQuery(HTTPRequest request, boolean keepAlive)
    throws IOException {
 
-      // Read the input
-      // XXX: Buffer size determines maximum request size
-      char[] buffer = new char[16384];
-      BufferedReader inReader = new BufferedReader(new InputStreamReader(in, REQUEST_ENCODING));
-      int lengthRead = inReader.read(buffer);
-      if (lengthRead < 0) {
-         sendBadRequest(out);
-         return;
-      }
-      String request = new String(buffer, 0, lengthRead);
-      //byte[] requestBytes = IOReader.readFullyAsBytes(in);
-      //String request = new String(requestBytes, 0, requestBytes.length, REQUEST_ENCODING);
-
-      // Read the first line
-      int eolIndex = request.indexOf(CRLF);
-      if (eolIndex < 0) {
-         sendBadRequest(out);
-         return;
-      }
-
-      // The first line must end with "HTTP/1.0" or "HTTP/1.1"
-      String line = request.substring(0, eolIndex);
-      request = request.substring(eolIndex + 2);
-      if (! (line.endsWith(" HTTP/1.1") || line.endsWith(" HTTP/1.0"))) {
-         sendBadRequest(out);
-         return;
-      }
-
-      // Cut off the last part
-      line = line.substring(0, line.length() - 9);
-
-      // Find the space
-      int spaceIndex = line.indexOf(' ');
-      if (spaceIndex < 1) {
-         sendBadRequest(out);
-         return;
-      }
-
-      // Determine the method
-      String method = line.substring(0, spaceIndex);
+      String method = request.getMethod();
+      boolean head = "HEAD".equals(method);
 
       // Determine the query string
-      String url = line.substring(spaceIndex + 1);
-      if ("".equals(url)) {
-         sendBadRequest(out);
-         return;
-      } else if ("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)) {
+      String url = request.getURL();
+      if ("GET".equals(method) || head || "OPTIONS".equals(method)) {
          url = url.replace(',', '&');
       }
 
@@ -229,107 +104,95 @@ class HTTPQueryHandler extends Thread {
          url += "index.html";
       }
 
-      // Read the headers
-      HashMap<String,String> inHeaders = new HashMap<String,String>();
-      boolean done = false;
-      while (! done) {
-         int nextEOL = request.indexOf(CRLF);
-         if (nextEOL <= 0) {
-            done = true;
-         } else {
-            try {
-               parseHeader(inHeaders, request.substring(0, nextEOL));
-            } catch (ParseException exception) {
-               sendBadRequest(out);
-               return;
-            }
-            request = request.substring(nextEOL + 2);
-         }
+      // Handle the case that a web page is requested
+      boolean getMethod = method.equals("GET") || head;
+      if (getMethod && url.indexOf('?') == -1 && !url.endsWith("/") && !"*".equals(url)) {
+         return readWebPage(url, head, keepAlive);
       }
 
       // Determine the body contents
-      String body = "".equals(request)
-                  ? ""
-                  : request.substring(2);
-
-
-      // Response encoding defaults to request encoding
-      String responseEncoding = REQUEST_ENCODING;
+      String body = new String(request.getBody(), REQUEST_ENCODING);
 
-      // Handle the case that a web page is requested
-      boolean getMethod = method.equals("GET") || method.equals("HEAD");
-      String httpResult;
-      if (getMethod && url.indexOf('?') == -1 && !url.endsWith("/") && !"*".equals(url)) {
-         httpResult = readWebPage(url);
+      // Determine the content type
+      String inContentType = request.getHeader("Content-Type");
 
-      // No web page requested
-      } else {
+      // If www-form encoded, then append the body to the query string
+      if ((inContentType == null || inContentType.startsWith("application/x-www-form-urlencoded")) &&
+            body.length() > 0) {
+         // XXX: What if the URL already contains a question mark?
+         url += '?' + body;
+         body = null;
+      }
 
-         // Determine the content type
-         String inContentType = getHeader(inHeaders, "Content-Type");
+      // Locate the path of the URL
+      String virtualPath = url;
+      if (virtualPath.indexOf('?') != -1) {
+         virtualPath = virtualPath.substring(0, url.indexOf('?'));
+      }
+      if (virtualPath.endsWith("/") && virtualPath.length() > 1) {
+         virtualPath = virtualPath.substring(0, virtualPath.length() - 1);
+      }
 
-         // If www-form encoded, then append the body to the query string
-         if ((inContentType == null || inContentType.startsWith("application/x-www-form-urlencoded")) &&
-               body.length() > 0) {
-            // XXX: What if the URL already contains a question mark?
-            url += '?' + body;
-            body = null;
-         }
+      // Get the Servlet according to the path
+      LocalServletHandler servlet = findServlet(virtualPath);
 
-         // Locate the path of the URL
-         String virtualPath = url;
-         if (virtualPath.indexOf('?') != -1) {
-            virtualPath = virtualPath.substring(0, url.indexOf('?'));
-         }
-         if (virtualPath.endsWith("/") && virtualPath.length() > 1) {
-            virtualPath = virtualPath.substring(0, virtualPath.length() - 1);
-         }
+      // If no servlet is found return 404
+      if (servlet == null) {
+         return error(HttpStatus.SC_NOT_FOUND, keepAlive);
+      }
 
-         // Get the Servlet according to the path
-         LocalServletHandler servlet = findServlet(virtualPath);
+      // Query the Servlet
+      XINSServletResponse response = servlet.query(method, url, body, request.getHeaders());
 
-         // If no servlet is found return 404
-         if (servlet == null) {
-            sendError(out, "404 Not Found");
-            return;
-         } else {
-
-            // Query the Servlet
-            XINSServletResponse response = servlet.query(method, url, body, inHeaders);
-
-            // Create the HTTP answer
-            StringBuffer sbHttpResult = new StringBuffer();
-            sbHttpResult.append("HTTP/1.1 " + response.getStatus() + " " +
-                  HttpStatus.getStatusText(response.getStatus()) + CRLF);
-            PropertyReader outHeaders = response.getHeaders();
-            for (String nextHeader : outHeaders.names()) {
-               String headerValue = outHeaders.get(nextHeader);
-               if (headerValue != null) {
-                  sbHttpResult.append(nextHeader + ": " + headerValue + "\r\n");
-               }
-            }
+      // Determine the body of the response
+      byte[] content = null;
+      if (response.isBinary()) {
+         content = response.getBytes();
+      } else if (response.getResult() != null) {
+         content = response.getResult().getBytes(response.getCharacterEncoding());
+      }
+      int length = response.getContentLength();
+      if (length < 0 || content != null && content.length > 0) {
+         length = (content == null) ? 0 : content.length;
+      }
 
-            String result = response.getResult();
-            if (result != null) {
-               responseEncoding = response.getCharacterEncoding();
-               int length = response.getContentLength();
-               if (length < 0) {
-                  length = result.getBytes(responseEncoding).length;
-               }
-               sbHttpResult.append("Content-Length: " + length + "\r\n");
-               sbHttpResult.append("Connection: close\r\n");
-               sbHttpResult.append("\r\n");
-               sbHttpResult.append(result);
-            }
-            httpResult = sbHttpResult.toString();
+      // Create the HTTP answer
+      ResponseBuffer out = new ResponseBuffer(256 + length);
+      out.statusLine(response.getStatus());
+      PropertyReader outHeaders = response.getHeaders();
+      for (String nextHeader : outHeaders.names()) {
+         String headerValue = outHeaders.get(nextHeader);
+         if (headerValue != null && !"Content-Length".equalsIgnoreCase(nextHeader)
+               && !"Connection".equalsIgnoreCase(nextHeader)) {
+            out.header(nextHeader, headerValue);
          }
       }
-
-      byte[] bytes = httpResult.getBytes(responseEncoding);
-      out.write(bytes, 0, bytes.length);
-      out.flush();
+      out.end(length, keepAlive);
+      if (content != null && ! head) {
+         out.write(content, 0, content.length);
+      }
+      return out.toByteBuffer();
    }
 
+   /**
+    * Creates a response without content, typically for an error.
+    *
+    * @param status
+    *    the HTTP status code, e.g. <code>400</code>.
+    *
+    * @param keepAlive
+    *    <code>true</code> if the connection is kept open after the response,
+    *    <code>false</code> if it is closed.
+    *
+    * @return
+    *    the bytes of the response, never <code>null</code>.
+    */
+   static ByteBuffer error(int status, boolean keepAlive) {
+      ResponseBuffer out = new ResponseBuffer(128);
+      out.statusLine(status);
+      out.end(0, keepAlive);
+      return out.toByteBuffer();
+   }
 
    /**
     * Finds the servlet that should handle a request at the specified virtual
@@ -362,7 +225,7 @@ class HTTPQueryHandler extends Thread {
       do {
 
          // Find a servlet at this path
-         servlet = (LocalServletHandler) _servlets.get(path);
+         servlet = _servlets.get(path);
 
          // If not found, then strip off the last part of the path
          // E.g. "/objects/boats/Cherry"  becomes "/objects/boats/"
@@ -388,132 +251,158 @@ class HTTPQueryHandler extends Thread {
    }
 
    /**
-    * Sends an HTTP error back to the client.
+    * Reads the content of a web page.
     *
-    * @param out
-    *    the output stream to contact the client.
+    * @param url
+    *    the location of the content, cannot be <code>null</code>.
     *
-    * @param status
-    *    the HTTP error code status.
+    * @param head
+    *    <code>true</code> if only the headers should be returned.
     *
-    * @throws IOException
-    *    if the error cannot be sent.
-    */
-   private void sendError(OutputStream out, String status)
-   throws IOException {
-      String httpResult = "HTTP/1.1 " + status + CRLF + CRLF;
-      byte[] bytes = httpResult.getBytes(REQUEST_ENCODING);
-      out.write(bytes, 0, bytes.length);
-      out.flush();
-   }
-
-   /**
-    * Sends an HTTP bad request back to the client.
+    * @param keepAlive
+    *    <code>true</code> if the connection is kept open after the response,
+    *    <code>false</code> if it is closed.
     *
-    * @param out
-    *    the output stream to contact the client.
+    * @return
+    *    the bytes of the response, never <code>null</code>.
     *
     * @throws IOException
-    *    if the error cannot be sent.
+    *    if an error occcurs when reading the URL.
     */
-   private void sendBadRequest(OutputStream out)
-   throws IOException {
-      sendError(out, "400 Bad Request");
+   private ByteBuffer readWebPage(String url, boolean head, boolean keepAlive) throws IOException {
+      InputStream urlInputStream = getClass().getResourceAsStream(url);
+      if (urlInputStream == null) {
+         return error(HttpStatus.SC_NOT_FOUND, keepAlive);
+      }
+
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      try {
+         byte[] buf = new byte[8192];
+         int len;
+         while ((len = urlInputStream.read(buf)) > 0) {
+            content.write(buf, 0, len);
+         }
+      } finally {
+         urlInputStream.close();
+      }
+
+      ResponseBuffer out = new ResponseBuffer(256 + content.size());
+      out.statusLine(HttpStatus.SC_OK);
+      String fileName = url.substring(url.lastIndexOf('/') + 1);
+      String contentType = MIME_TYPES_MAP.getContentTypeFor(fileName);
+      if (contentType == null) {
+         contentType = "application/octet-stream";
+      }
+      out.header("Content-Type", contentType);
+      out.end(content.size(), keepAlive);
+      if (! head) {
+         content.writeTo(out);
+      }
+      return out.toByteBuffer();
    }
 
    /**
-    * Parses an HTTP header.
-    *
-    * @param headers
-    *    the headers already collected.
+    * Buffer for the bytes of an HTTP response. The status line and the
+    * headers are encoded as ISO-8859-1.
     *
-    * @param header
-    *    the line of the header to be parsed.
+    * @version $Revision$ $Date$
     *
-    * @throws ParseException
-    *    if the header is incorrect
+    * @since XINS 3.0
     */
-   private static void parseHeader(HashMap<String,String> headers, String header)
-   throws ParseException{
-
-      int index = header.indexOf(':');
-      if (index < 1) {
-         throw new ParseException();
+   private static final class ResponseBuffer extends ByteArrayOutputStream {
+
+      /**
+       * Constructs a new <code>ResponseBuffer</code>.
+       *
+       * @param size
+       *    the initial size of the buffer.
+       */
+      private ResponseBuffer(int size) {
+         super(size);
       }
 
-      // Get key and value
-      String key   = header.substring(0, index);
-      String value = header.substring(index + 1);
-
-      // Always convert the key to upper case
-      key = key.toUpperCase();
+      /**
+       * Writes a string, encoded as ISO-8859-1.
+       *
+       * @param s
+       *    the string to write, cannot be <code>null</code>.
+       */
+      private void latin1(String s) {
+         int length = s.length();
+         ensureCapacity(count + length);
+         for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            buf[count++] = (byte) (c < 0x100 ? c : '?');
+         }
+      }
 
-      // Always trim the value
-      value = value.trim();
+      /**
+       * Makes sure the buffer can hold at least the specified number of
+       * bytes.
+       *
+       * @param capacity
+       *    the minimum capacity.
+       */
+      private void ensureCapacity(int capacity) {
+         if (capacity > buf.length) {
+            byte[] newBuf = new byte[Math.max(capacity, buf.length * 2)];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+         }
+      }
 
-      // XXX: Only one header supported
-      if (headers.get(key) != null) {
-         throw new ParseException("Duplicate header \"" + key + "\".");
+      /**
+       * Writes the status line.
+       *
+       * @param status
+       *    the HTTP status code.
+       */
+      private void statusLine(int status) {
+         String text = HttpStatus.getStatusText(status);
+         latin1("HTTP/1.1 " + status + ' ' + (text == null ? "" : text) + "\r\n");
       }
 
-      // Store the key-value combo
-      headers.put(key, value);
-   }
+      /**
+       * Writes a header.
+       *
+       * @param name
+       *    the name of the header, cannot be <code>null</code>.
+       *
+       * @param value
+       *    the value of the header, cannot be <code>null</code>.
+       */
+      private void header(String name, String value) {
+         latin1(name);
+         latin1(": ");
+         latin1(value);
+         latin1("\r\n");
+      }
 
-   /**
-    * Gets a HTTP header from the request.
-    *
-    * @param headers
-    *    the list of the headers.
-    *
-    * @param key
-    *    the name of the header.
-    *
-    * @return
-    *    the header value for the specified key or <code>null</code> if the
-    *    key is not in the haeders.
-    */
-   String getHeader(HashMap<String,String> headers, String key) {
-      return (String) headers.get(key.toUpperCase());
-   }
+      /**
+       * Writes the <code>Content-Length</code> and <code>Connection</code>
+       * headers and the empty line that ends the headers.
+       *
+       * @param contentLength
+       *    the length of the content.
+       *
+       * @param keepAlive
+       *    <code>true</code> if the connection is kept open after the
+       *    response, <code>false</code> if it is closed.
+       */
+      private void end(int contentLength, boolean keepAlive) {
+         header("Content-Length", String.valueOf(contentLength));
+         header("Connection", keepAlive ? "keep-alive" : "close");
+         latin1("\r\n");
+      }
 
-   /**
-    * Reads the content of a web page.
-    *
-    * @param url
-    *    the location of the content, cannot be <code>null</code>.
-    *
-    * @return
-    *    the HTTP response to return, never <code>null</code>.
-    *
-    * @throws IOException
-    *    if an error occcurs when reading the URL.
-    */
-   private String readWebPage(String url) throws IOException {
-      String httpResult;
-      if (getClass().getResource(url) != null) {
-         InputStream urlInputStream = getClass().getResourceAsStream(url);
-         ByteArrayOutputStream contentOutputStream = new ByteArrayOutputStream();
-         byte[] buf = new byte[8192];
-         int len;
-         while ((len = urlInputStream.read(buf)) > 0) {
-            contentOutputStream.write(buf, 0, len);
-         }
-         contentOutputStream.close();
-         urlInputStream.close();
-         String content = contentOutputStream.toString("ISO-8859-1");
-
-         httpResult = "HTTP/1.1 200 OK\r\n";
-         String fileName = url.substring(url.lastIndexOf('/') + 1);
-         httpResult += "Content-Type: " + MIME_TYPES_MAP.getContentTypeFor(fileName) + "\r\n";
-         int length = content.getBytes("ISO-8859-1").length;
-         httpResult += "Content-Length: " + length + "\r\n";
-         httpResult += "Connection: close\r\n";
-         httpResult += "\r\n";
-         httpResult += content;
-      } else {
-         httpResult = "HTTP/1.1 404 Not Found\r\n";
+      /**
+       * Returns the bytes written, without copying them.
+       *
+       * @return
+       *    the bytes written, never <code>null</code>.
+       */
+      private ByteBuffer toByteBuffer() {
+         return ByteBuffer.wrap(buf, 0, count);
       }
-      return httpResult;
    }
 }
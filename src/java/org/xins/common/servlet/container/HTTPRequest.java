@@ -0,0 +1,456 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common.servlet.container;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import org.xins.common.text.ParseException;
+
+/**
+ * HTTP request read by the servlet container. The request line and the
+ * headers are decoded as ISO-8859-1, the body is kept as bytes.
+ *
+ * <p>Requests are parsed from the bytes received on a connection with
+ * {@link #read(ByteBuffer)}, which returns <code>null</code> as long as the
+ * request is incomplete. The body is read according to the
+ * <code>Content-Length</code> header or, if the request uses the
+ * <code>chunked</code> transfer coding, decoded from its chunks.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class HTTPRequest {
+
+   /**
+    * The maximum size of the request line and the headers, in bytes.
+    */
+   static final int MAX_HEADER_SIZE = 65536;
+
+   /**
+    * The maximum size of the body, in bytes.
+    */
+   static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+   /**
+    * Empty body.
+    */
+   private static final byte[] NO_BODY = new byte[0];
+
+   /**
+    * The request method, e.g. <code>"GET"</code>. Never <code>null</code>.
+    */
+   private final String _method;
+
+   /**
+    * The requested URL, including the query string. Never <code>null</code>.
+    */
+   private final String _url;
+
+   /**
+    * The HTTP version, either <code>"HTTP/1.0"</code> or
+    * <code>"HTTP/1.1"</code>.
+    */
+   private final String _version;
+
+   /**
+    * The headers, with the names in upper case. Never <code>null</code>.
+    */
+   private final HashMap<String,String> _headers;
+
+   /**
+    * The body. Never <code>null</code>.
+    */
+   private byte[] _body;
+
+   /**
+    * Constructs a new <code>HTTPRequest</code>.
+    *
+    * @param method
+    *    the request method, cannot be <code>null</code>.
+    *
+    * @param url
+    *    the requested URL, cannot be <code>null</code>.
+    *
+    * @param version
+    *    the HTTP version, cannot be <code>null</code>.
+    */
+   private HTTPRequest(String method, String url, String version) {
+      _method  = method;
+      _url     = url;
+      _version = version;
+      _headers = new HashMap<String,String>();
+      _body    = NO_BODY;
+   }
+
+   /**
+    * Reads the next complete request from the specified bytes. If the
+    * request is complete, then the position of the buffer is set to the end
+    * of the request, otherwise it is left unchanged.
+    *
+    * @param in
+    *    the bytes received, from the position to the limit, cannot be
+    *    <code>null</code>.
+    *
+    * @return
+    *    the request, or <code>null</code> if the bytes do not contain a
+    *    complete request yet.
+    *
+    * @throws ParseException
+    *    if the request is incorrect or too large.
+    */
+   static HTTPRequest read(ByteBuffer in) throws ParseException {
+
+      int start = in.position();
+      int limit = in.limit();
+
+      // Empty lines before the request line are ignored
+      while (start + 1 < limit && in.get(start) == '\r' && in.get(start + 1) == '\n') {
+         start += 2;
+      }
+
+      // Find the end of the request line and the headers
+      int headerEnd = indexOf(in, start, limit, true);
+      if (headerEnd < 0) {
+         if (limit - start > MAX_HEADER_SIZE) {
+            throw new ParseException("Request headers exceed " + MAX_HEADER_SIZE + " bytes.");
+         }
+         return null;
+      }
+
+      // Parse the request line, which must end with "HTTP/1.0" or "HTTP/1.1"
+      int lineEnd = indexOf(in, start, headerEnd + 2, false);
+      String line = ascii(in, start, lineEnd);
+      if (! (line.endsWith(" HTTP/1.1") || line.endsWith(" HTTP/1.0"))) {
+         throw new ParseException("Incorrect request line.");
+      }
+      String version = line.substring(line.length() - 8);
+      line = line.substring(0, line.length() - 9);
+      int spaceIndex = line.indexOf(' ');
+      if (spaceIndex < 1 || spaceIndex == line.length() - 1) {
+         throw new ParseException("Incorrect request line.");
+      }
+      HTTPRequest request = new HTTPRequest(line.substring(0, spaceIndex), line.substring(spaceIndex + 1), version);
+
+      // Parse the headers
+      int lineStart = lineEnd + 2;
+      String lastKey = null;
+      while (lineStart < headerEnd + 2) {
+         lineEnd = indexOf(in, lineStart, headerEnd + 2, false);
+         String header = ascii(in, lineStart, lineEnd);
+         if (lastKey != null && (header.charAt(0) == ' ' || header.charAt(0) == '\t')) {
+            request._headers.put(lastKey, request._headers.get(lastKey) + ' ' + header.trim());
+         } else {
+            lastKey = request.parseHeader(header);
+         }
+         lineStart = lineEnd + 2;
+      }
+
+      // Read the body
+      int bodyStart = headerEnd + 4;
+      int end;
+      String transferEncoding = request.getHeader("Transfer-Encoding");
+      String contentLength    = request.getHeader("Content-Length");
+      if (transferEncoding != null && transferEncoding.toLowerCase().indexOf("chunked") >= 0) {
+         end = request.readChunks(in, bodyStart, limit);
+      } else if (contentLength != null) {
+         int length;
+         try {
+            length = Integer.parseInt(contentLength);
+         } catch (NumberFormatException exception) {
+            throw new ParseException("Incorrect Content-Length \"" + contentLength + "\".");
+         }
+         if (length < 0 || length > MAX_BODY_SIZE) {
+            throw new ParseException("Incorrect Content-Length \"" + contentLength + "\".");
+         }
+         if (limit - bodyStart < length) {
+            end = -1;
+         } else {
+            request._body = new byte[length];
+            in.position(bodyStart);
+            in.get(request._body);
+            end = bodyStart + length;
+         }
+      } else {
+         end = bodyStart;
+      }
+
+      if (end < 0) {
+         return null;
+      }
+      in.position(end);
+      return request;
+   }
+
+   /**
+    * Reads a body in the chunked transfer coding.
+    *
+    * @param in
+    *    the bytes received, cannot be <code>null</code>.
+    *
+    * @param start
+    *    the index of the first chunk.
+    *
+    * @param limit
+    *    the index after the last byte received.
+    *
+    * @return
+    *    the index after the body, or <code>-1</code> if the body is not
+    *    complete yet.
+    *
+    * @throws ParseException
+    *    if the chunks are incorrect or too large.
+    */
+   private int readChunks(ByteBuffer in, int start, int limit)
+   throws ParseException {
+
+      // First determine the total size, so the body is copied only once
+      int size = 0;
+      int index = start;
+      while (true) {
+         int lineEnd = indexOf(in, index, limit, false);
+         if (lineEnd < 0) {
+            return -1;
+         }
+         int chunkSize = parseChunkSize(ascii(in, index, lineEnd));
+         index = lineEnd + 2;
+         if (chunkSize == 0) {
+            break;
+         }
+         size += chunkSize;
+         if (size > MAX_BODY_SIZE) {
+            throw new ParseException("Request body exceeds " + MAX_BODY_SIZE + " bytes.");
+         }
+         if (limit - index < chunkSize + 2) {
+            return -1;
+         }
+         index += chunkSize;
+         if (in.get(index) != '\r' || in.get(index + 1) != '\n') {
+            throw new ParseException("Incorrect chunk.");
+         }
+         index += 2;
+      }
+
+      // Skip the trailer headers, up to and including the empty line
+      while (true) {
+         int lineEnd = indexOf(in, index, limit, false);
+         if (lineEnd < 0) {
+            return -1;
+         }
+         boolean empty = (lineEnd == index);
+         index = lineEnd + 2;
+         if (empty) {
+            break;
+         }
+      }
+      int end = index;
+
+      // Copy the chunk data
+      _body = new byte[size];
+      int offset = 0;
+      index = start;
+      while (offset < size) {
+         int lineEnd = indexOf(in, index, limit, false);
+         int chunkSize = parseChunkSize(ascii(in, index, lineEnd));
+         in.position(lineEnd + 2);
+         in.get(_body, offset, chunkSize);
+         offset += chunkSize;
+         index = lineEnd + 2 + chunkSize + 2;
+      }
+      return end;
+   }
+
+   /**
+    * Parses the size of a chunk.
+    *
+    * @param line
+    *    the line that starts the chunk, cannot be <code>null</code>.
+    *
+    * @return
+    *    the size of the chunk.
+    *
+    * @throws ParseException
+    *    if the size is incorrect.
+    */
+   private static int parseChunkSize(String line) throws ParseException {
+      int semicolon = line.indexOf(';');
+      if (semicolon >= 0) {
+         line = line.substring(0, semicolon);
+      }
+      try {
+         int size = Integer.parseInt(line.trim(), 16);
+         if (size < 0 || size > MAX_BODY_SIZE) {
+            throw new ParseException("Incorrect chunk size \"" + line + "\".");
+         }
+         return size;
+      } catch (NumberFormatException exception) {
+         throw new ParseException("Incorrect chunk size \"" + line + "\".");
+      }
+   }
+
+   /**
+    * Finds the next end of line or the next empty line.
+    *
+    * @param in
+    *    the bytes to search, cannot be <code>null</code>.
+    *
+    * @param start
+    *    the index to start searching at.
+    *
+    * @param limit
+    *    the index to stop searching at.
+    *
+    * @param emptyLine
+    *    <code>true</code> to search for <code>CR LF CR LF</code>,
+    *    <code>false</code> to search for <code>CR LF</code>.
+    *
+    * @return
+    *    the index of the first <code>CR</code>, or <code>-1</code> if not
+    *    found.
+    */
+   private static int indexOf(ByteBuffer in, int start, int limit, boolean emptyLine) {
+      int length = emptyLine ? 4 : 2;
+      for (int i = start; i + length <= limit; i++) {
+         if (in.get(i) == '\r' && in.get(i + 1) == '\n') {
+            if (! emptyLine || (in.get(i + 2) == '\r' && in.get(i + 3) == '\n')) {
+               return i;
+            }
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Decodes bytes as ISO-8859-1.
+    *
+    * @param in
+    *    the bytes, cannot be <code>null</code>.
+    *
+    * @param start
+    *    the index of the first byte.
+    *
+    * @param end
+    *    the index after the last byte.
+    *
+    * @return
+    *    the decoded string, never <code>null</code>.
+    */
+   private static String ascii(ByteBuffer in, int start, int end) {
+      char[] chars = new char[end - start];
+      for (int i = 0; i < chars.length; i++) {
+         chars[i] = (char) (in.get(start + i) & 0xFF);
+      }
+      return new String(chars);
+   }
+
+   /**
+    * Parses an HTTP header and stores it.
+    *
+    * @param header
+    *    the line of the header to be parsed, cannot be <code>null</code>.
+    *
+    * @return
+    *    the name of the header, in upper case, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if the header is incorrect.
+    */
+   private String parseHeader(String header) throws ParseException {
+
+      int index = header.indexOf(':');
+      if (index < 1) {
+         throw new ParseException("Incorrect header \"" + header + "\".");
+      }
+
+      // Always convert the key to upper case and trim the value
+      String key   = header.substring(0, index).toUpperCase();
+      String value = header.substring(index + 1).trim();
+
+      // XXX: Only one header supported
+      if (_headers.get(key) != null) {
+         throw new ParseException("Duplicate header \"" + key + "\".");
+      }
+
+      _headers.put(key, value);
+      return key;
+   }
+
+   /**
+    * Returns the request method.
+    *
+    * @return
+    *    the method, e.g. <code>"GET"</code>, never <code>null</code>.
+    */
+   String getMethod() {
+      return _method;
+   }
+
+   /**
+    * Returns the requested URL.
+    *
+    * @return
+    *    the URL, including the query string, never <code>null</code>.
+    */
+   String getURL() {
+      return _url;
+   }
+
+   /**
+    * Returns the headers.
+    *
+    * @return
+    *    the headers, with the names in upper case, never <code>null</code>.
+    */
+   HashMap<String,String> getHeaders() {
+      return _headers;
+   }
+
+   /**
+    * Returns the value of a header.
+    *
+    * @param name
+    *    the name of the header, case-insensitive, cannot be
+    *    <code>null</code>.
+    *
+    * @return
+    *    the value of the header, or <code>null</code> if the request does not
+    *    contain the header.
+    */
+   String getHeader(String name) {
+      return _headers.get(name.toUpperCase());
+   }
+
+   /**
+    * Returns the body.
+    *
+    * @return
+    *    the body, never <code>null</code>.
+    */
+   byte[] getBody() {
+      return _body;
+   }
+
+   /**
+    * Determines whether the connection should be kept open after the
+    * response. For HTTP/1.1 this is the default, for HTTP/1.0 the client
+    * has to ask for it.
+    *
+    * @return
+    *    <code>true</code> if the connection should be kept open,
+    *    <code>false</code> if it should be closed.
+    */
+   boolean isKeepAlive() {
+      String connection = getHeader("Connection");
+      connection = (connection == null) ? "" : connection.toLowerCase();
+      if ("HTTP/1.1".equals(_version)) {
+         return connection.indexOf("close") < 0;
+      } else {
+         return connection.indexOf("keep-alive") >= 0;
+      }
+   }
+}
@@ -8,14 +8,11 @@ package org.xins.common.servlet.container;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletException;
 
@@ -23,12 +20,12 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.PropertyConfigurator;
 import org.apache.log4j.helpers.NullEnumeration;
 
-import org.xins.common.Library;
-import org.xins.common.Log;
-
 /**
  * HTTP server used to invoke the XINS servlet.
  *
+ * <p>The server uses non-blocking I/O, keeps connections open between
+ * requests and handles the requests with a bounded pool of threads.
+ *
  * @version $Revision: 1.70 $ $Date: 2007/09/18 08:45:08 $
  * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
@@ -41,24 +38,14 @@ public class HTTPServletHandler {
    public static final int DEFAULT_PORT_NUMBER = 8080;
 
    /**
-    * The web server.
-    */
-   private ServerSocket _serverSocket;
-
-   /**
-    * The thread that waits for connections from the client.
+    * The connector that accepts the connections and handles the requests.
     */
-   private SocketAcceptor _acceptor;
-
-   /**
-    * Flag indicating if the server should wait for other connections or stop.
-    */
-   private boolean _running;
+   private HTTPConnector _connector;
 
    /**
     * Mapping between the path and the servlet.
     */
-   private Map<String,LocalServletHandler> _servlets = new HashMap<String,LocalServletHandler>();
+   private Map<String,LocalServletHandler> _servlets = new ConcurrentHashMap<String,LocalServletHandler>();
 
    /**
     * Creates a new HTTPSevletHandler with no Servlet. Use the addServlet
@@ -268,12 +255,8 @@ public class HTTPServletHandler {
     *    if the web server cannot be started.
     */
    public void startServer(int port, boolean daemon) throws IOException {
-      // Create the server socket
-      _serverSocket = new ServerSocket(port, 5);
-      _running = true;
-
-      _acceptor = new SocketAcceptor(daemon);
-      _acceptor.start();
+      _connector = new HTTPConnector(port, _servlets, daemon);
+      _connector.start();
    }
 
    /**
@@ -289,12 +272,7 @@ public class HTTPServletHandler {
     * @since XINS 1.5.0
     */
    public int getPort() throws IllegalStateException {
-      int port;
-      try {
-         port = _serverSocket.getLocalPort();
-      } catch (NullPointerException exception) {
-         port = -1;
-      }
+      int port = (_connector == null) ? -1 : _connector.getPort();
 
       if (port < 0) {
          throw new IllegalStateException("Unable to determine port.");
@@ -307,53 +285,11 @@ public class HTTPServletHandler {
     * Disposes the servlet and stops the web server.
     */
    public void close() {
-      _running = false;
       Iterator itServlets = _servlets.values().iterator();
       while (itServlets.hasNext()) {
          LocalServletHandler servlet = (LocalServletHandler) itServlets.next();
          servlet.close();
       }
-      try {
-         _serverSocket.close();
-      } catch (IOException ioe) {
-         Log.log_1502(ioe);
-      }
-   }
-
-   /**
-    * Thread waiting for connection from the client.
-    */
-   private class SocketAcceptor extends Thread {
-
-      /**
-       * Create the thread.
-       *
-       * @param daemon
-       *    <code>true</code> if the server should be a daemon thread,$
-       *    <code>false</code> otherwise.
-       */
-      public SocketAcceptor(boolean daemon) {
-         setDaemon(daemon);
-         setName("XINS " + Library.getVersion() + " Servlet container.");
-      }
-
-      /**
-       * Executes the thread.
-       */
-      public void run() {
-         Log.log_1500(_serverSocket.getLocalPort());
-         try {
-            while (_running) {
-               // Wait for a connection
-               Socket clientSocket = _serverSocket.accept();
-               HTTPQueryHandler queryHandler = new HTTPQueryHandler(clientSocket, _servlets);
-               queryHandler.start();
-            }
-         } catch (SocketException ie) {
-            // fall through
-         } catch (IOException ioe) {
-            Log.log_1501(ioe);
-         }
-      }
+      _connector.close();
    }
 }
@@ -182,7 +182,7 @@ public class LocalServletHandler {
          Log.log_1505(ex);
          throw new IOException(ex.getMessage());
       }
-      Log.log_1506(response.getResult(), response.getStatus());
+      Log.log_1506(response.getContentType(), response.getResultLength(), response.getStatus());
       return response;
    }
 
@@ -6,13 +6,16 @@
  */
 package org.xins.common.servlet.container;
 
+import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.util.Locale;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
 import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.Utils;
 import org.xins.common.collections.BasicPropertyReader;
 import org.xins.common.collections.PropertyReader;
 
@@ -58,9 +61,9 @@ public class XINSServletResponse implements HttpServletResponse {
    private OutputStream _outputStream;
 
    /**
-    * The byte array where the output stream writes the binary data to.
+    * The buffer where the output stream writes the binary data to.
     */
-   private byte[] _binaryData;
+   private ByteArrayOutputStream _binaryData;
 
    /**
     * The headers.
@@ -221,6 +224,9 @@ public class XINSServletResponse implements HttpServletResponse {
       if (_writer != null) {
          throw new IllegalStateException("getWriter() was already called.");
       }
+      if (_binaryData == null) {
+         _binaryData = new ByteArrayOutputStream(1024);
+      }
       _outputStream = new OutputStream();
       return _outputStream;
    }
@@ -248,17 +254,44 @@ public class XINSServletResponse implements HttpServletResponse {
    /**
     * Gets the returned message from the servlet.
     *
+    * <p>If {@link #getOutputStream()} was used to produce the output, then
+    * the bytes are decoded using the character encoding of the response,
+    * see {@link #getCharacterEncoding()}. Use {@link #getBytes()} to get
+    * binary output unchanged.
+    *
     * @return
     *    the returned message,
-    *    or <code>null</code> if either no message is returned or if
-    *    {@link #getOutputStream()} was used to produce (possibly binary) 
-    *    output.
+    *    or <code>null</code> if no message is returned.
     */
    public String getResult() {
-      if (_writer == null) {
-         return null;
+      if (_writer != null) {
+         return _writer.toString();
+      } else if (_binaryData != null) {
+         try {
+            return _binaryData.toString(_encoding);
+         } catch (UnsupportedEncodingException exception) {
+            throw Utils.logProgrammingError(exception);
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Gets the length of the returned message, without converting it to a
+    * string or copying it.
+    *
+    * @return
+    *    the number of characters written to {@link #getWriter()}, the number
+    *    of bytes written to {@link #getOutputStream()}, or 0 if no message
+    *    is returned.
+    */
+   int getResultLength() {
+      if (_writer != null) {
+         return _writer.getBuffer().length();
+      } else if (_binaryData != null) {
+         return _binaryData.size();
       }
-      return _writer.toString();
+      return 0;
    }
 
    /**
@@ -283,7 +316,7 @@ public class XINSServletResponse implements HttpServletResponse {
     * @since XINS 2.1
     */
    public byte[] getBytes() {
-      return _binaryData;
+      return _binaryData == null ? null : _binaryData.toByteArray();
    }
 
    /**
@@ -347,15 +380,7 @@ public class XINSServletResponse implements HttpServletResponse {
       //----------------------------------------------------------------------
 
       public void write(int b) {
-         if (_binaryData == null) {
-            _binaryData = new byte[1];
-            _binaryData[0] = (byte) b;
-         } else {
-            byte[] tmp = new byte[_binaryData.length + 1];
-            System.arraycopy(_binaryData, 0, tmp, 0, _binaryData.length);
-            tmp[_binaryData.length] = (byte) b;
-            _binaryData = tmp;
-         }
+         _binaryData.write(b);
       }
 
       public void write(byte[] b) {
@@ -363,15 +388,7 @@ public class XINSServletResponse implements HttpServletResponse {
       }
 
       public void write(byte[] b, int off, int len) {
-         if (_binaryData == null) {
-            _binaryData = new byte[len];
-            System.arraycopy(b, off, _binaryData, 0, len);
-         } else {
-            byte[] tmp = new byte[_binaryData.length + len];
-            System.arraycopy(_binaryData, 0,   tmp, 0,                  _binaryData.length);
-            System.arraycopy(b,           off, tmp, _binaryData.length, len);
-            _binaryData = tmp;
-         }
+         _binaryData.write(b, off, len);
       }
 
       public void flush() {
@@ -414,15 +431,7 @@ public class XINSServletResponse implements HttpServletResponse {
             throw new RuntimeException(); // TODO
          }
 
-         if (_binaryData == null) {
-            _binaryData = bytes;
-         } else {
-            byte[] tmp = new byte[_binaryData.length + bytes.length];
-            System.arraycopy(_binaryData, 0, tmp, 0, _binaryData.length);
-            System.arraycopy(bytes,       0, tmp, _binaryData.length, bytes.length);
-            // TODO: Make sure it should not be _binaryData.length + 1
-            _binaryData = tmp;
-         }
+         _binaryData.write(bytes, 0, bytes.length);
       }
 
       public void println() {
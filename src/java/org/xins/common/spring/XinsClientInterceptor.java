@@ -23,7 +23,10 @@ package org.xins.common.spring;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.aopalliance.intercept.MethodInterceptor;
@@ -50,6 +53,13 @@ import org.xins.common.service.TargetDescriptor;
  * Interceptor for accessing a specific XINS API.
  * This class requires the Spring library.
  *
+ * <p>The methods of the service interface are mapped to the methods of the
+ * CAPI with the same name and parameter types. This mapping is determined
+ * once, by {@link #prepare()}, and the CAPI methods are made accessible, so
+ * that no access check is done for each call. The service interface does
+ * not need to be implemented by the CAPI class; the CAPI class is specified
+ * using {@link #setCapiClass(Class)}.
+ *
  * @version $Revision: 1.3 $ $Date: 2007/09/18 11:21:08 $
  * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
  *
@@ -77,6 +87,19 @@ public class XinsClientInterceptor extends UrlBasedRemoteAccessor implements Met
     */
    private String serviceName;
 
+   /**
+    * The class of the CAPI, or <code>null</code> if the service interface is
+    * the CAPI class.
+    */
+   private Class<?> capiClass;
+
+   /**
+    * The CAPI methods to invoke, indexed by the method of the service
+    * interface. This map is created by {@link #prepare()} and is not
+    * modified afterwards.
+    */
+   private volatile Map<Method,Method> dispatchTable;
+
    public void afterPropertiesSet() {
       super.afterPropertiesSet();
       prepare();
@@ -85,6 +108,7 @@ public class XinsClientInterceptor extends UrlBasedRemoteAccessor implements Met
    public void prepare() {
       try {
          capi = createCapi();
+         dispatchTable = createDispatchTable(getServiceInterface(), capi.getClass());
       } catch (MalformedURLException murlex) {
          throw new RemoteLookupFailureException("Service URL [" + getServiceUrl() + "] is invalid", murlex);
       } catch (Exception ex) {
@@ -107,6 +131,18 @@ public class XinsClientInterceptor extends UrlBasedRemoteAccessor implements Met
       this.descriptorProperties = descriptorProperties;
    }
 
+   /**
+    * Sets the class of the CAPI used to call the API. If this method is not
+    * called, the service interface is used as CAPI class.
+    *
+    * @param capiClass
+    *    the class of the CAPI, a subclass of {@link AbstractCAPI} with a
+    *    public constructor that takes a {@link Descriptor}.
+    */
+   public void setCapiClass(Class<?> capiClass) {
+      this.capiClass = capiClass;
+   }
+
    /**
     * Sets the time-out for the call of the API.
     * This method requires that you also call {@link #setServiceUrl}.
@@ -175,7 +211,8 @@ public class XinsClientInterceptor extends UrlBasedRemoteAccessor implements Met
    public AbstractCAPI createCapi() throws Exception {
       Descriptor descriptor = createDescriptor();
       // Creates the CAPI (Client API) based on the class provided to the service interface.
-      Constructor constCAPI = getServiceInterface().getConstructor(new Class[] {Descriptor.class});
+      Class<?> capiType = (capiClass != null) ? capiClass : getServiceInterface();
+      Constructor<?> constCAPI = capiType.getConstructor(new Class<?>[] {Descriptor.class});
       AbstractCAPI capi = (AbstractCAPI) constCAPI.newInstance(new Object[]{descriptor});
       return capi;
    }
@@ -194,14 +231,52 @@ public class XinsClientInterceptor extends UrlBasedRemoteAccessor implements Met
       return caller;
    }
 
+   /**
+    * Creates the table that maps the methods of the service interface to the
+    * methods of the CAPI. The CAPI methods are made accessible, so that no
+    * access check is performed when they are invoked.
+    *
+    * @param serviceInterface
+    *    the service interface, or <code>null</code> if none is set.
+    *
+    * @param capiType
+    *    the class of the CAPI, cannot be <code>null</code>.
+    *
+    * @return
+    *    the methods of the CAPI, indexed by the method of the service
+    *    interface, never <code>null</code>.
+    */
+   private static Map<Method,Method> createDispatchTable(Class<?> serviceInterface, Class<?> capiType) {
+      Map<Method,Method> table = new HashMap<Method,Method>();
+      Method[] methods = (serviceInterface != null) ? serviceInterface.getMethods() : capiType.getMethods();
+      for (int i = 0; i < methods.length; i++) {
+         Method method = methods[i];
+         try {
+            Method target = capiType.getMethod(method.getName(), method.getParameterTypes());
+            target.setAccessible(true);
+            table.put(method, target);
+         } catch (NoSuchMethodException exception) {
+            // The method cannot be invoked on the CAPI
+         } catch (SecurityException exception) {
+            // The method will be looked up and checked for each call
+         }
+      }
+      return table;
+   }
+
    public Object invoke(MethodInvocation invocation) throws Throwable {
-      if (this.capi == null) {
+      Map<Method,Method> table = this.dispatchTable;
+      if (this.capi == null || table == null) {
          throw new IllegalStateException("XinsClientInterceptor is not properly initialized - " +
                "invoke 'prepare' before attempting any operations");
       }
 
+      Method method = table.get(invocation.getMethod());
+      if (method == null) {
+         method = invocation.getMethod();
+      }
       try {
-         return invocation.getMethod().invoke(this.capi, invocation.getArguments());
+         return method.invoke(this.capi, invocation.getArguments());
       } catch (InvocationTargetException ex) {
          if (ex.getTargetException() instanceof XINSCallException) {
             XINSCallException callEx = (XINSCallException) ex.getTargetException();
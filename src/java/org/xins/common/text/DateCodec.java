@@ -0,0 +1,707 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.common.text;
+
+import org.xins.common.MandatoryArgumentChecker;
+
+/**
+ * Codec for the textual date and timestamp formats used by XINS, SOAP and
+ * XML-RPC. See {@link Format} for the supported formats.
+ *
+ * <p>A date or timestamp is represented as a <em>fields</em> value: a
+ * <code>long</code> in which the year, month, day, hour, minute and second
+ * are packed. Such a value is created by {@link #pack(int,int,int,int,int,int)}
+ * or by the <code>parse</code> methods and its parts are returned by
+ * {@link #getYear(long)} and the like. Because of this representation,
+ * parsing and formatting do not create any objects and do not depend on a
+ * time zone: a date and time is converted from one format to another as is.
+ *
+ * <p>Unlike {@link java.text.SimpleDateFormat}, this class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class DateCodec {
+
+   /**
+    * The largest year that can be packed in a fields value, as it has 4
+    * digits in the formats.
+    */
+   public static final int MAX_YEAR = 9999;
+   /**
+    * The index of the year field.
+    */
+   private static final int YEAR = 0;
+
+   /**
+    * The index of the month field.
+    */
+   private static final int MONTH = 1;
+
+   /**
+    * The index of the day field.
+    */
+   private static final int DAY = 2;
+
+   /**
+    * The index of the hour field.
+    */
+   private static final int HOUR = 3;
+
+   /**
+    * The index of the minute field.
+    */
+   private static final int MINUTE = 4;
+
+   /**
+    * The index of the second field.
+    */
+   private static final int SECOND = 5;
+
+   /**
+    * The pattern characters of the fields, by index.
+    */
+   private static final String FIELD_CHARS = "YMDhms";
+
+   /**
+    * The names of the fields, by index.
+    */
+   private static final String[] FIELD_NAMES = { "year", "month", "day", "hour", "minute", "second" };
+
+   /**
+    * The position of each field in a fields value, by index.
+    */
+   private static final int[] SHIFTS = { 26, 22, 17, 12, 6, 0 };
+
+   /**
+    * The mask of each field in a fields value, by index.
+    */
+   private static final int[] MASKS = { 0x3FFF, 0xF, 0x1F, 0x1F, 0x3F, 0x3F };
+
+   /**
+    * The minimum value of each field, by index.
+    */
+   private static final int[] MINIMUMS = { 0, 1, 1, 0, 0, 0 };
+
+   /**
+    * The maximum value of each field, by index.
+    */
+   private static final int[] MAXIMUMS = { MAX_YEAR, 12, 31, 23, 59, 59 };
+
+   /**
+    * The tens digit of the numbers 0 to 99.
+    */
+   private static final char[] TENS = new char[100];
+
+   /**
+    * The ones digit of the numbers 0 to 99.
+    */
+   private static final char[] ONES = new char[100];
+
+   /**
+    * Class initializer. Fills the {@link #TENS} and {@link #ONES} tables.
+    */
+   static {
+      for (int i = 0; i < 100; i++) {
+         TENS[i] = (char) ('0' + i / 10);
+         ONES[i] = (char) ('0' + i % 10);
+      }
+   }
+
+   /**
+    * Constructs a new <code>DateCodec</code>. This constructor is private
+    * since no instances of this class should be created.
+    */
+   private DateCodec() {
+      // empty
+   }
+
+   /**
+    * Packs a date and time in a fields value.
+    *
+    * @param year
+    *    the year, between 0 and {@link #MAX_YEAR}.
+    *
+    * @param month
+    *    the month of the year, between 1 and 12.
+    *
+    * @param day
+    *    the day of the month, between 1 and 31.
+    *
+    * @param hour
+    *    the hour of the day, between 0 and 23.
+    *
+    * @param minute
+    *    the minute of the hour, between 0 and 59.
+    *
+    * @param second
+    *    the second of the minute, between 0 and 59.
+    *
+    * @return
+    *    the fields value.
+    *
+    * @throws IllegalArgumentException
+    *    if one of the values is out of range.
+    */
+   public static long pack(int year, int month, int day, int hour, int minute, int second)
+   throws IllegalArgumentException {
+      return pack(YEAR,   year)
+           | pack(MONTH,  month)
+           | pack(DAY,    day)
+           | pack(HOUR,   hour)
+           | pack(MINUTE, minute)
+           | pack(SECOND, second);
+   }
+
+   /**
+    * Checks the value of a field and returns it at its position in a fields
+    * value.
+    *
+    * @param field
+    *    the index of the field.
+    *
+    * @param value
+    *    the value of the field.
+    *
+    * @return
+    *    the value at its position in a fields value.
+    *
+    * @throws IllegalArgumentException
+    *    if the value is out of range.
+    */
+   private static long pack(int field, int value)
+   throws IllegalArgumentException {
+      if (value < MINIMUMS[field] || value > MAXIMUMS[field]) {
+         throw new IllegalArgumentException(FIELD_NAMES[field] + " (" + value
+                                            + ") is not between " + MINIMUMS[field]
+                                            + " and " + MAXIMUMS[field] + '.');
+      }
+      return (long) value << SHIFTS[field];
+   }
+
+   /**
+    * Returns the year of a fields value.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @return
+    *    the year.
+    */
+   public static int getYear(long fields) {
+      return get(fields, YEAR);
+   }
+
+   /**
+    * Returns the month of the year of a fields value.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @return
+    *    the month, 1 for January.
+    */
+   public static int getMonth(long fields) {
+      return get(fields, MONTH);
+   }
+
+   /**
+    * Returns the day of the month of a fields value.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @return
+    *    the day of the month, 1 for the first day.
+    */
+   public static int getDay(long fields) {
+      return get(fields, DAY);
+   }
+
+   /**
+    * Returns the hour of the day of a fields value.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @return
+    *    the hour of the day.
+    */
+   public static int getHour(long fields) {
+      return get(fields, HOUR);
+   }
+
+   /**
+    * Returns the minute of the hour of a fields value.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @return
+    *    the minute of the hour.
+    */
+   public static int getMinute(long fields) {
+      return get(fields, MINUTE);
+   }
+
+   /**
+    * Returns the second of the minute of a fields value.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @return
+    *    the second of the minute.
+    */
+   public static int getSecond(long fields) {
+      return get(fields, SECOND);
+   }
+
+   /**
+    * Returns a field of a fields value.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @param field
+    *    the index of the field.
+    *
+    * @return
+    *    the value of the field.
+    */
+   private static int get(long fields, int field) {
+      return (int) (fields >>> SHIFTS[field]) & MASKS[field];
+   }
+
+   /**
+    * Parses a date or timestamp in the specified format. Fields that are not
+    * part of the format, such as the time for a date format, are 0.
+    *
+    * @param format
+    *    the format, cannot be <code>null</code>.
+    *
+    * @param s
+    *    the text to parse, cannot be <code>null</code>.
+    *
+    * @return
+    *    the fields value.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>format == null || s == null</code>.
+    *
+    * @throws ParseException
+    *    if <code>s</code> is not a valid value in the specified format.
+    */
+   public static long parse(Format format, CharSequence s)
+   throws IllegalArgumentException, ParseException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("format", format, "s", s);
+      if (s.length() != format._length) {
+         throw new ParseException("Length of \"" + s + "\" (" + s.length() + ") is not " + format._length + '.');
+      }
+
+      // Check the separators
+      char[] pattern = format._pattern;
+      for (int i = 0; i < pattern.length; i++) {
+         if (pattern[i] != 0 && s.charAt(i) != pattern[i]) {
+            throw new ParseException("Expected '" + pattern[i] + "' at position " + i + " in \"" + s + "\".");
+         }
+      }
+
+      // Parse the fields
+      long fields = 0L;
+      for (int field = YEAR; field <= SECOND; field++) {
+         int pos = format._positions[field];
+         if (pos >= 0) {
+            int value = 0;
+            for (int end = pos + format._widths[field]; pos < end; pos++) {
+               int digit = s.charAt(pos) - '0';
+               if (digit < 0 || digit > 9) {
+                  throw new ParseException("Expected a digit at position " + pos + " in \"" + s + "\".");
+               }
+               value = value * 10 + digit;
+            }
+            fields |= check(field, value, s);
+         }
+      }
+      return fields;
+   }
+
+   /**
+    * Parses a date or timestamp in the specified format from US-ASCII
+    * bytes. Fields that are not part of the format, such as the time for a
+    * date format, are 0.
+    *
+    * @param format
+    *    the format, cannot be <code>null</code>.
+    *
+    * @param bytes
+    *    the bytes to parse, cannot be <code>null</code>.
+    *
+    * @param offset
+    *    the position of the first byte to parse.
+    *
+    * @return
+    *    the fields value.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>format == null || bytes == null</code>.
+    *
+    * @throws IndexOutOfBoundsException
+    *    if there are not enough bytes after <code>offset</code>.
+    *
+    * @throws ParseException
+    *    if the bytes are not a valid value in the specified format.
+    */
+   public static long parse(Format format, byte[] bytes, int offset)
+   throws IllegalArgumentException, IndexOutOfBoundsException, ParseException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("format", format, "bytes", bytes);
+      if (offset < 0 || offset + format._length > bytes.length) {
+         throw new IndexOutOfBoundsException("offset (" + offset + ") + " + format._length + " > bytes.length (" + bytes.length + ')');
+      }
+
+      // Check the separators
+      char[] pattern = format._pattern;
+      for (int i = 0; i < pattern.length; i++) {
+         if (pattern[i] != 0 && bytes[offset + i] != pattern[i]) {
+            throw new ParseException("Expected '" + pattern[i] + "' at position " + i + '.');
+         }
+      }
+
+      // Parse the fields
+      long fields = 0L;
+      for (int field = YEAR; field <= SECOND; field++) {
+         int pos = format._positions[field];
+         if (pos >= 0) {
+            int value = 0;
+            for (int end = pos + format._widths[field]; pos < end; pos++) {
+               int digit = bytes[offset + pos] - '0';
+               if (digit < 0 || digit > 9) {
+                  throw new ParseException("Expected a digit at position " + pos + '.');
+               }
+               value = value * 10 + digit;
+            }
+            fields |= check(field, value, null);
+         }
+      }
+      return fields;
+   }
+
+   /**
+    * Checks that the value of a field is in range.
+    *
+    * @param field
+    *    the index of the field.
+    *
+    * @param value
+    *    the parsed value.
+    *
+    * @param s
+    *    the text that was parsed, or <code>null</code> if unknown.
+    *
+    * @return
+    *    the value at its position in a fields value.
+    *
+    * @throws ParseException
+    *    if the value is out of range.
+    */
+   private static long check(int field, int value, CharSequence s)
+   throws ParseException {
+      if (value < MINIMUMS[field] || value > MAXIMUMS[field]) {
+         throw new ParseException("Parsed " + FIELD_NAMES[field] + " (" + value + ")"
+                                  + (s == null ? "" : " in \"" + s + '"')
+                                  + " is not between " + MINIMUMS[field]
+                                  + " and " + MAXIMUMS[field] + '.');
+      }
+      return (long) value << SHIFTS[field];
+   }
+
+   /**
+    * Formats a fields value in the specified format into a character buffer.
+    * Fields that are not part of the format are ignored.
+    *
+    * @param format
+    *    the format, cannot be <code>null</code>.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @param buffer
+    *    the buffer to format into, cannot be <code>null</code>.
+    *
+    * @param offset
+    *    the position in the buffer to start at.
+    *
+    * @return
+    *    the position in the buffer after the formatted value.
+    *
+    * @throws NullPointerException
+    *    if <code>format == null || buffer == null</code>.
+    *
+    * @throws IndexOutOfBoundsException
+    *    if the buffer is too small.
+    */
+   public static int format(Format format, long fields, char[] buffer, int offset)
+   throws NullPointerException, IndexOutOfBoundsException {
+      char[] pattern = format._pattern;
+      System.arraycopy(pattern, 0, buffer, offset, pattern.length);
+      for (int field = YEAR; field <= SECOND; field++) {
+         int pos = format._positions[field];
+         if (pos >= 0) {
+            int value = get(fields, field);
+            pos += offset;
+            if (field == YEAR) {
+               buffer[pos++] = TENS[value / 100];
+               buffer[pos++] = ONES[value / 100];
+               value %= 100;
+            }
+            buffer[pos++] = TENS[value];
+            buffer[pos]   = ONES[value];
+         }
+      }
+      return offset + pattern.length;
+   }
+
+   /**
+    * Formats a fields value in the specified format into a byte buffer, as
+    * US-ASCII. Fields that are not part of the format are ignored.
+    *
+    * @param format
+    *    the format, cannot be <code>null</code>.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @param buffer
+    *    the buffer to format into, cannot be <code>null</code>.
+    *
+    * @param offset
+    *    the position in the buffer to start at.
+    *
+    * @return
+    *    the position in the buffer after the formatted value.
+    *
+    * @throws NullPointerException
+    *    if <code>format == null || buffer == null</code>.
+    *
+    * @throws IndexOutOfBoundsException
+    *    if the buffer is too small.
+    */
+   public static int format(Format format, long fields, byte[] buffer, int offset)
+   throws NullPointerException, IndexOutOfBoundsException {
+      char[] pattern = format._pattern;
+      for (int i = 0; i < pattern.length; i++) {
+         buffer[offset + i] = (byte) pattern[i];
+      }
+      for (int field = YEAR; field <= SECOND; field++) {
+         int pos = format._positions[field];
+         if (pos >= 0) {
+            int value = get(fields, field);
+            pos += offset;
+            if (field == YEAR) {
+               buffer[pos++] = (byte) TENS[value / 100];
+               buffer[pos++] = (byte) ONES[value / 100];
+               value %= 100;
+            }
+            buffer[pos++] = (byte) TENS[value];
+            buffer[pos]   = (byte) ONES[value];
+         }
+      }
+      return offset + pattern.length;
+   }
+
+   /**
+    * Formats a fields value in the specified format.
+    *
+    * @param format
+    *    the format, cannot be <code>null</code>.
+    *
+    * @param fields
+    *    the fields value.
+    *
+    * @return
+    *    the formatted value, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>format == null</code>.
+    */
+   public static String format(Format format, long fields)
+   throws IllegalArgumentException {
+      MandatoryArgumentChecker.check("format", format);
+      char[] buffer = new char[format._length];
+      format(format, fields, buffer, 0);
+      return new String(buffer);
+   }
+
+   /**
+    * Converts a date or timestamp from one format to another. When a date
+    * is converted to a timestamp format, the time is midnight.
+    *
+    * @param s
+    *    the value to convert, cannot be <code>null</code>.
+    *
+    * @param from
+    *    the format of <code>s</code>, cannot be <code>null</code>.
+    *
+    * @param to
+    *    the format to convert to, cannot be <code>null</code>.
+    *
+    * @return
+    *    the converted value, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>s == null || from == null || to == null</code>.
+    *
+    * @throws ParseException
+    *    if <code>s</code> is not a valid value in the format
+    *    <code>from</code>.
+    */
+   public static String convert(String s, Format from, Format to)
+   throws IllegalArgumentException, ParseException {
+      MandatoryArgumentChecker.check("to", to);
+      return format(to, parse(from, s));
+   }
+
+   /**
+    * Converts a date or timestamp at the start of a string from one format
+    * to another. Characters after the value, such as fractional seconds or
+    * a time zone designator, are ignored.
+    *
+    * @param s
+    *    the value to convert, cannot be <code>null</code>.
+    *
+    * @param from
+    *    the format of the start of <code>s</code>, cannot be
+    *    <code>null</code>.
+    *
+    * @param to
+    *    the format to convert to, cannot be <code>null</code>.
+    *
+    * @return
+    *    the converted value, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>s == null || from == null || to == null</code>.
+    *
+    * @throws ParseException
+    *    if <code>s</code> does not start with a valid value in the format
+    *    <code>from</code>.
+    */
+   public static String convertPrefix(String s, Format from, Format to)
+   throws IllegalArgumentException, ParseException {
+      MandatoryArgumentChecker.check("s", s, "from", from, "to", to);
+      if (s.length() > from._length) {
+         s = s.substring(0, from._length);
+      }
+      return format(to, parse(from, s));
+   }
+
+   /**
+    * Date or timestamp format supported by <code>DateCodec</code>.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   public enum Format {
+
+      /**
+       * The XINS date format <em>YYYYMMDD</em>, used by the type
+       * <em>_date</em>.
+       */
+      XINS_DATE("YYYYMMDD"),
+
+      /**
+       * The XINS timestamp format <em>YYYYMMDDhhmmss</em>, used by the type
+       * <em>_timestamp</em>.
+       */
+      XINS_TIMESTAMP("YYYYMMDDhhmmss"),
+
+      /**
+       * The ISO 8601 date format <em>YYYY-MM-DD</em>, used by the XML
+       * Schema type <em>date</em> in SOAP.
+       */
+      ISO_DATE("YYYY-MM-DD"),
+
+      /**
+       * The ISO 8601 timestamp format <em>YYYY-MM-DDThh:mm:ss</em>, used by
+       * the XML Schema type <em>dateTime</em> in SOAP.
+       */
+      ISO_TIMESTAMP("YYYY-MM-DDThh:mm:ss"),
+
+      /**
+       * The XML-RPC timestamp format <em>YYYYMMDDThh:mm:ss</em>, used by
+       * the XML-RPC type <em>dateTime.iso8601</em>.
+       */
+      XML_RPC_TIMESTAMP("YYYYMMDDThh:mm:ss");
+
+      /**
+       * The length of a formatted value.
+       */
+      private final int _length;
+
+      /**
+       * The separator characters at their positions, with the character
+       * <code>'\0'</code> at the positions of the digits. Never
+       * <code>null</code>.
+       */
+      private final char[] _pattern;
+
+      /**
+       * The position of each field, by index, or -1 if the field is not part
+       * of this format. Never <code>null</code>.
+       */
+      private final int[] _positions;
+
+      /**
+       * The number of digits of each field, by index. Never
+       * <code>null</code>.
+       */
+      private final int[] _widths;
+
+      /**
+       * Constructs a new <code>Format</code>.
+       *
+       * @param pattern
+       *    the pattern, where the characters <code>YMDhms</code> stand for
+       *    a digit of the year, month, day, hour, minute and second; other
+       *    characters are separators. Cannot be <code>null</code>.
+       */
+      Format(String pattern) {
+         _length    = pattern.length();
+         _pattern   = new char[_length];
+         _positions = new int[] { -1, -1, -1, -1, -1, -1 };
+         _widths    = new int[6];
+         for (int i = 0; i < _length; i++) {
+            char c = pattern.charAt(i);
+            int field = FIELD_CHARS.indexOf(c);
+            if (field < 0) {
+               _pattern[i] = c;
+            } else {
+               if (_positions[field] < 0) {
+                  _positions[field] = i;
+               }
+               _widths[field]++;
+            }
+         }
+      }
+
+      /**
+       * Returns the length of a value in this format.
+       *
+       * @return
+       *    the number of characters of a formatted value.
+       */
+      public int getLength() {
+         return _length;
+      }
+   }
+}
@@ -6,8 +6,9 @@
  */
 package org.xins.common.types.standard;
 
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import org.xins.common.text.DateCodec;
+import org.xins.common.text.ParseException;
 import org.xins.common.types.Type;
 import org.xins.common.types.TypeValueException;
 import org.xins.common.MandatoryArgumentChecker;
@@ -53,11 +54,6 @@ public class Date extends Type {
     */
    public static final Date SINGLETON = new Date();
 
-   /**
-    * Formatter that converts a date to a string.
-    */
-   private static final SimpleDateFormat FORMATTER = new SimpleDateFormat("yyyyMMdd");
-
    /**
     * Constructs a new <code>Date</code> instance.
     * This constructor is private, the field {@link #SINGLETON} should be
@@ -148,7 +144,7 @@ public class Date extends Type {
     * Converts the specified combination of a year, month and day to a string.
     *
     * @param year
-    *    the year, must be &gt;=0 and &lt;= 9999.
+    *    the year, must be &gt;= 0.
     *
     * @param month
     *    the month of the year, must be &gt;= 1 and &lt;= 12.
@@ -162,32 +158,11 @@ public class Date extends Type {
     */
    private static String toString(int year, int month, int day) {
 
-      // Use a buffer to create the string
-      StringBuffer buffer = new StringBuffer(8);
-
-      // Append the year
-      if (year < 10) {
-         buffer.append("000");
-      } else if (year < 100) {
-         buffer.append("00");
-      } else if (year < 1000) {
-         buffer.append('0');
-      }
-      buffer.append(year);
-
-      // Append the month
-      if (month < 10) {
-         buffer.append('0');
-      }
-      buffer.append(month);
-
-      // Append the day
-      if (day < 10) {
-         buffer.append('0');
+      // Years with more than 4 digits are written in full
+      if (year > DateCodec.MAX_YEAR) {
+         return year + DateCodec.format(DateCodec.Format.XINS_DATE, DateCodec.pack(0, month, day, 0, 0, 0)).substring(4);
       }
-      buffer.append(day);
-
-      return buffer.toString();
+      return DateCodec.format(DateCodec.Format.XINS_DATE, DateCodec.pack(year, month, day, 0, 0, 0));
    }
 
    @Override
@@ -198,27 +173,11 @@ public class Date extends Type {
          throw new TypeValueException(this, value, "String length (" + value.length() + ") is not 8.");
       }
 
-      // Convert all 3 components of the string to integers
-      int y, m, d;
+      // Parse and check all 3 components of the string
       try {
-         y = Integer.parseInt(value.substring(0, 4));
-         m = Integer.parseInt(value.substring(4, 6));
-         d = Integer.parseInt(value.substring(6, 8));
-      } catch (NumberFormatException cause) {
-         throw new TypeValueException(this, value, "Parsing error for int.", cause);
-      }
-
-      // Check that the values are in the correct range
-      if (y < 0) {
-         throw new TypeValueException(this, value, "Parsed year ("  + y + ") is less than 0.");
-      } else if (m < 1) {
-         throw new TypeValueException(this, value, "Parsed month (" + m + ") is less than 1.");
-      } else if (m > 12) {
-         throw new TypeValueException(this, value, "Parsed month (" + m + ") is greater than 12.");
-      } else if (d < 1) {
-         throw new TypeValueException(this, value, "Parsed day ("   + d + ") is less than 1.");
-      } else if (d > 31) {
-         throw new TypeValueException(this, value, "Parsed day ("   + d + ") is greater than 31.");
+         DateCodec.parse(DateCodec.Format.XINS_DATE, value);
+      } catch (ParseException cause) {
+         throw new TypeValueException(this, value, cause.getMessage(), cause);
       }
    }
 
@@ -227,12 +186,16 @@ public class Date extends Type {
    throws TypeValueException {
 
       // Convert all 3 components of the string to integers
-      int y = Integer.parseInt(string.substring(0, 4));
-      int m = Integer.parseInt(string.substring(4, 6));
-      int d = Integer.parseInt(string.substring(6, 8));
+      long fields;
+      try {
+         fields = DateCodec.parse(DateCodec.Format.XINS_DATE, string);
+      } catch (ParseException cause) {
+         throw new TypeValueException(this, string, cause.getMessage(), cause);
+      }
 
-      // Check that the values are in the correct range
-      return new Value(y, m, d);
+      return new Value(DateCodec.getYear(fields),
+                       DateCodec.getMonth(fields),
+                       DateCodec.getDay(fields));
    }
 
    @Override
@@ -441,9 +404,7 @@ public class Date extends Type {
        *    <code>null</code>.
        */
       public String toString() {
-         synchronized (FORMATTER) {
-            return FORMATTER.format(_calendar.getTime());
-         }
+         return Date.toString(this);
       }
    }
 }
@@ -6,12 +6,11 @@
  */
 package org.xins.common.types.standard;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-
 import java.util.Calendar;
 
 import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.text.DateCodec;
+import org.xins.common.text.ParseException;
 import org.xins.common.types.Type;
 import org.xins.common.types.TypeValueException;
 
@@ -62,12 +61,6 @@ public class Timestamp extends Type {
     */
    public static final Timestamp SINGLETON = new Timestamp();
 
-   /**
-    * Formatter that converts a date to a string.
-    */
-   private static final SimpleDateFormat FORMATTER =
-      new SimpleDateFormat("yyyyMMddHHmmss");
-
 
    /**
     * Constructs a new <code>Timestamp</code> instance.
@@ -164,7 +157,7 @@ public class Timestamp extends Type {
     * minute and second to a string.
     *
     * @param year
-    *    the year, must be &gt;=1970 and &lt;= 2999.
+    *    the year, must be &gt;= 0.
     *
     * @param month
     *    the month of the year, must be &gt;= 1 and &lt;= 12.
@@ -192,43 +185,13 @@ public class Timestamp extends Type {
                                   int minute,
                                   int second) {
 
-      // Use a buffer to create the string
-      StringBuffer buffer = new StringBuffer(14);
-
-      // Append the year
-      buffer.append(year);
-
-      // Append the month
-      if (month < 10) {
-         buffer.append('0');
-      }
-      buffer.append(month);
-
-      // Append the day
-      if (day < 10) {
-         buffer.append('0');
-      }
-      buffer.append(day);
-
-      // Append the hour
-      if (hour < 10) {
-         buffer.append('0');
-      }
-      buffer.append(hour);
-
-      // Append the minute
-      if (minute < 10) {
-         buffer.append('0');
-      }
-      buffer.append(minute);
-
-      // Append the second
-      if (second < 10) {
-         buffer.append('0');
+      // Years with more than 4 digits are written in full
+      if (year > DateCodec.MAX_YEAR) {
+         return year + DateCodec.format(DateCodec.Format.XINS_TIMESTAMP,
+                                        DateCodec.pack(0, month, day, hour, minute, second)).substring(4);
       }
-      buffer.append(second);
-
-      return buffer.toString();
+      return DateCodec.format(DateCodec.Format.XINS_TIMESTAMP,
+                              DateCodec.pack(year, month, day, hour, minute, second));
    }
 
    @Override
@@ -239,38 +202,11 @@ public class Timestamp extends Type {
          throw new TypeValueException(this, value, "String length (" + value.length() + ") is not 14.");
       }
 
-      // Convert all 3 components of the string to integers
-      int y, m, d, h, mi, s;
+      // Parse and check all 6 components of the string
       try {
-         y  = Integer.parseInt(value.substring( 0,  4));
-         m  = Integer.parseInt(value.substring( 4,  6));
-         d  = Integer.parseInt(value.substring( 6,  8));
-         h  = Integer.parseInt(value.substring( 8, 10));
-         mi = Integer.parseInt(value.substring(10, 12));
-         s  = Integer.parseInt(value.substring(12, 14));
-      } catch (NumberFormatException cause) {
-         throw new TypeValueException(this, value, "Parsing error for int.", cause);
-      }
-
-      // Check that the values are in the correct range
-      if (y < 0) {
-         throw new TypeValueException(this, value, "Parsed year ("    + y  + ") is less than 0.");
-      } else if (m < 1) {
-         throw new TypeValueException(this, value, "Parsed month ("   + m  + ") is less than 1.");
-      } else if (m > 12) {
-         throw new TypeValueException(this, value, "Parsed month ("   + m  + ") is greater than 12.");
-      } else if (d < 1) {
-         throw new TypeValueException(this, value, "Parsed day ("     + d  + ") is less than 1.");
-      } else if (d > 31) {
-         throw new TypeValueException(this, value, "Parsed day ("     + d  + ") is greater than 31.");
-      } else if (mi < 0) {
-         throw new TypeValueException(this, value, "Parsed minutes (" + mi + ") is less than 0.");
-      } else if (mi > 59) {
-         throw new TypeValueException(this, value, "Parsed minutes (" + mi + ") is greater than 59.");
-      } else if (s < 0) {
-         throw new TypeValueException(this, value, "Parsed seconds (" + s  + ") is less than 0.");
-      } else if (s > 59) {
-         throw new TypeValueException(this, value, "Parsed seconds (" + s  + ") is greater than 59.");
+         DateCodec.parse(DateCodec.Format.XINS_TIMESTAMP, value);
+      } catch (ParseException cause) {
+         throw new TypeValueException(this, value, cause.getMessage(), cause);
       }
    }
 
@@ -278,15 +214,19 @@ public class Timestamp extends Type {
    protected final Object fromStringImpl(String string)
    throws TypeValueException {
 
-      SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
-      java.util.Date date;
+      long fields;
       try {
-         date = format.parse(string);
-      } catch (ParseException exception) {
-         throw new TypeValueException(this, string); // XXX: Add detail?
+         fields = DateCodec.parse(DateCodec.Format.XINS_TIMESTAMP, string);
+      } catch (ParseException cause) {
+         throw new TypeValueException(this, string, cause.getMessage(), cause);
       }
 
-      return new Value(date);
+      return new Value(DateCodec.getYear(fields),
+                       DateCodec.getMonth(fields),
+                       DateCodec.getDay(fields),
+                       DateCodec.getHour(fields),
+                       DateCodec.getMinute(fields),
+                       DateCodec.getSecond(fields));
    }
 
    @Override
@@ -354,6 +294,7 @@ public class Timestamp extends Type {
          // Construct the Calendar
          _calendar = Calendar.getInstance();
          _calendar.set(year, month - 1, day, hour, minute, second);
+         _calendar.set(Calendar.MILLISECOND, 0);
       }
 
       /**
@@ -545,9 +486,7 @@ public class Timestamp extends Type {
        *    <code>null</code>.
        */
       public String toString() {
-         synchronized (FORMATTER) {
-            return FORMATTER.format(_calendar.getTime());
-         }
+         return Timestamp.toString(this);
       }
    }
 }
@@ -13,11 +13,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
 import org.xins.common.MandatoryArgumentChecker;
@@ -32,6 +36,10 @@ import org.xins.common.text.TextUtils;
  * <p>Note: This parser is
  * <a href="http://www.w3.org/TR/REC-xml-names/">XML Namespaces</a>-aware.
  *
+ * <p>The underlying SAX readers and event handlers are shared by all
+ * instances and reused for all parsing, so instances of this class are
+ * cheap and can be shared between threads.
+ *
  * @version $Revision: 1.43 $ $Date: 2007/12/17 14:22:42 $
  *
  * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
@@ -58,6 +66,28 @@ public class ElementParser {
     */
    private static final State FINISHED = new State("FINISHED");
 
+   /**
+    * The maximum number of namespace prefixes remembered by each handler.
+    */
+   private static final int MAX_CACHED_PREFIXES = 256;
+
+   /**
+    * The maximum number of SAX event handlers that are kept for reuse.
+    */
+   private static final int MAX_IDLE_HANDLERS = 32;
+
+   /**
+    * The SAX event handlers that are not in use, with their XML readers.
+    * They are not kept per thread, since they would then stay behind on the
+    * threads of the servlet container when the application is undeployed.
+    */
+   private static final ConcurrentLinkedQueue<Handler> IDLE_HANDLERS = new ConcurrentLinkedQueue<Handler>();
+
+   /**
+    * The number of handlers in {@link #IDLE_HANDLERS}.
+    */
+   private static final AtomicInteger IDLE_HANDLER_COUNT = new AtomicInteger();
+
    /**
     * Constructs a new <code>ElementParser</code>.
     */
@@ -131,6 +161,52 @@ public class ElementParser {
       return parse(new InputSource(in));
    }
 
+   /**
+    * Parses part of a byte array to create an XML <code>Element</code>
+    * object. The bytes are read directly from the array, without copying
+    * them.
+    *
+    * @param bytes
+    *    the byte array that contains the XML to be parsed, not
+    *    <code>null</code>.
+    *
+    * @param offset
+    *    the index of the first byte of the XML in the array.
+    *
+    * @param length
+    *    the number of bytes of the XML.
+    *
+    * @return
+    *    the parsed result, not <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>bytes == null
+    *          || offset &lt; 0
+    *          || length &lt; 0
+    *          || offset + length &gt; bytes.length</code>.
+    *
+    * @throws ParseException
+    *    if the bytes are not considered to be valid XML.
+    *
+    * @since XINS 3.0
+    */
+   public Element parse(byte[] bytes, int offset, int length)
+   throws IllegalArgumentException,
+          ParseException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("bytes", bytes);
+      if (offset < 0 || length < 0 || offset > bytes.length - length) {
+         throw new IllegalArgumentException("offset (" + offset + ") and length (" + length + ") do not fit in an array of " + bytes.length + " bytes.");
+      }
+
+      try {
+         return parse(new InputSource(new ByteArrayInputStream(bytes, offset, length)));
+      } catch (IOException ioe) {
+         throw Utils.logProgrammingError(ioe);
+      }
+   }
+
    /**
     * Parses content of a character stream to create an XML
     * <code>Element</code> object.
@@ -240,14 +316,18 @@ public class ElementParser {
     */
    private Element parse(InputSource source) throws IOException, ParseException {
 
-      // TODO: Consider using an XMLReader instead of a SAXParser
-
-      // Initialize our SAX event handler
-      Handler handler = new Handler();
+      // Take an idle SAX event handler, if there is any
+      Handler handler = IDLE_HANDLERS.poll();
+      if (handler == null) {
+         handler = new Handler();
+      } else {
+         IDLE_HANDLER_COUNT.decrementAndGet();
+      }
 
       try {
          // Let SAX parse the XML, using our handler
-         SAXParserProvider.get().parse(source, handler);
+         handler._reader.parse(source);
+         return handler.getElement();
 
       } catch (SAXException exception) {
 
@@ -264,15 +344,21 @@ public class ElementParser {
 
          // Throw exception with message, and register cause exception
          throw new ParseException(message, exception, exMessage);
-      }
-
-      Element element = handler.getElement();
 
-      return element;
+      // Release the parsed elements and keep the handler for reuse
+      } finally {
+         handler.reset();
+         if (IDLE_HANDLER_COUNT.incrementAndGet() <= MAX_IDLE_HANDLERS) {
+            IDLE_HANDLERS.offer(handler);
+         } else {
+            IDLE_HANDLER_COUNT.decrementAndGet();
+         }
+      }
    }
 
    /**
-    * SAX event handler that will parse XML.
+    * SAX event handler that will parse XML. Each handler has its own XML
+    * reader and is reset before it is reused.
     *
     * @version $Revision: 1.43 $ $Date: 2007/12/17 14:22:42 $
     * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
@@ -291,10 +377,22 @@ public class ElementParser {
       private Element _element;
 
       /**
-       * The stack of child elements within the data section. The top element
-       * is always <code>&lt;data/&gt;</code>.
+       * The stack of elements that are being parsed. The last element is the
+       * innermost one.
        */
-      private Stack<Element> _dataElementStack;
+      private final ArrayList<Element> _dataElementStack;
+
+      /**
+       * The XML reader that sends its events to this handler. Never
+       * <code>null</code>.
+       */
+      private final XMLReader _reader;
+
+      /**
+       * The namespace prefixes of the qualified names seen so far, by
+       * qualified name. Never <code>null</code>.
+       */
+      private final HashMap<String,String> _prefixes;
 
       /**
        * The level for the element pointer within the XML document. Initially
@@ -311,7 +409,57 @@ public class ElementParser {
 
          _state            = PARSING;
          _level            = -1;
-         _dataElementStack = new Stack<Element>();
+         _dataElementStack = new ArrayList<Element>();
+         _prefixes         = new HashMap<String,String>();
+
+         try {
+            _reader = SAXParserProvider.create().getXMLReader();
+         } catch (SAXException exception) {
+            throw Utils.logProgrammingError(exception);
+         }
+         _reader.setContentHandler(this);
+         _reader.setErrorHandler(this);
+         _reader.setEntityResolver(this);
+         _reader.setDTDHandler(this);
+      }
+
+      /**
+       * Resets this handler, so that it can be used for the next parse.
+       */
+      private void reset() {
+         _state   = PARSING;
+         _level   = -1;
+         _element = null;
+         _dataElementStack.clear();
+      }
+
+      /**
+       * Determines the namespace prefix in a qualified name. Since the same
+       * names are used over and over, the prefixes are remembered.
+       *
+       * @param qName
+       *    the qualified name, can be <code>null</code>.
+       *
+       * @return
+       *    the prefix, or <code>null</code> if there is none.
+       */
+      private String prefix(String qName) {
+         if (qName == null) {
+            return null;
+         }
+         int colon = qName.indexOf(':');
+         if (colon == -1) {
+            return null;
+         }
+         String prefix = _prefixes.get(qName);
+         if (prefix == null) {
+            if (_prefixes.size() >= MAX_CACHED_PREFIXES) {
+               _prefixes.clear();
+            }
+            prefix = qName.substring(0, colon);
+            _prefixes.put(qName, prefix);
+         }
+         return prefix;
       }
 
       /**
@@ -366,32 +514,21 @@ public class ElementParser {
 
          } else {
 
-            // Find the namespace prefix
-            String prefix = null;
-
-            if (qName != null && qName.indexOf(':') != -1) {
-               prefix = qName.substring(0, qName.indexOf(':'));
-            }
-
             // Construct a Element
-            Element element = new Element(prefix, namespaceURI, localName);
+            Element element = new Element(prefix(qName), namespaceURI, localName);
 
             // Add all attributes
             for (int i = 0; i < atts.getLength(); i++) {
                String attrNamespaceURI = atts.getURI(i);
                String attrLocalName    = atts.getLocalName(i);
                String attrValue        = atts.getValue(i);
-               String attrQName        = atts.getQName(i);
-               String attrPrefix = null;
-               if (attrQName != null && attrQName.indexOf(':') != -1) {
-                  attrPrefix = attrQName.substring(0, attrQName.indexOf(':'));
-               }
+               String attrPrefix       = prefix(atts.getQName(i));
 
                element.setAttribute(attrPrefix, attrNamespaceURI, attrLocalName, attrValue);
             }
 
             // Push the element on the stack
-            _dataElementStack.push(element);
+            _dataElementStack.add(element);
 
             // Reset the state from ERROR back to PARSING
             _state = PARSING;
@@ -435,11 +572,12 @@ public class ElementParser {
          } else {
 
             // Get the Element for which we process the end tag
-            Element child = _dataElementStack.pop();
+            int size = _dataElementStack.size();
+            Element child = _dataElementStack.remove(size - 1);
 
             // Add the child to the parent
-            if (_dataElementStack.size() > 0) {
-               Element parent = _dataElementStack.peek();
+            if (size > 1) {
+               Element parent = _dataElementStack.get(size - 2);
                parent.add(child);
 
                // Reset the state back from ERROR to PARSING
@@ -481,7 +619,7 @@ public class ElementParser {
          _state = ERROR;
 
          // Get the Element within which we found a text snippet
-         Element child = _dataElementStack.peek();
+         Element child = _dataElementStack.get(_dataElementStack.size() - 1);
 
          // Add the text snippet
          child.add(new String(ch, start, length));
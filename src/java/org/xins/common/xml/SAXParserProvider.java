@@ -79,12 +79,13 @@ public class SAXParserProvider {
    }
 
    /**
-    * Creates a new <code>SAXParser</code> instance.
+    * Creates a new <code>SAXParser</code> instance. The returned parser is
+    * not cached.
     *
     * @return
     *    a new {@link SAXParser} instance, never <code>null</code>.
     */
-   private static SAXParser create() {
+   static SAXParser create() {
 
       SAXParser parser;
 
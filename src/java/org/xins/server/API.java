@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.xins.common.FormattedParameters;
 import org.xins.common.MandatoryArgumentChecker;
@@ -24,6 +25,7 @@ import org.xins.common.collections.BasicPropertyReader;
 import org.xins.common.collections.InvalidPropertyValueException;
 import org.xins.common.collections.MissingRequiredPropertyException;
 import org.xins.common.collections.PropertyReader;
+import org.xins.common.http.HTTPConnectionPool;
 import org.xins.common.manageable.BootstrapException;
 import org.xins.common.manageable.DeinitializationException;
 import org.xins.common.manageable.InitializationException;
@@ -61,6 +63,13 @@ public abstract class API extends Manageable {
     */
    private static final String ACL_PROPERTY = "org.xins.server.acl";
 
+   /**
+    * The runtime (initialization) property that defines the maximum number
+    * of cached access decisions per access rule list. Use 0 to disable the
+    * cache.
+    */
+   private static final String ACL_CACHE_SIZE_PROPERTY = "org.xins.server.acl.cacheSize";
+
    /**
     * The name of the bootstrap property that specifies the version of the API.
     */
@@ -200,21 +209,33 @@ public abstract class API extends Manageable {
    private String _localIPAddress;
 
    /**
-    * Mapping from function name to the call ID for all meta-functions. This
-    * field is never <code>null</code>.
+    * The next call ID for each meta-function, indexed by the ordinal of the
+    * {@link MetaFunction}. This field is never <code>null</code>.
     */
-   private final HashMap<String, Counter> _metaFunctionCallIDs;
+   private final AtomicInteger[] _metaFunctionCallIDs;
 
    /**
     * Flag indicating that the API is down for maintenance.
     */
-   private boolean _apiDisabled;
+   private volatile boolean _apiDisabled;
 
    /**
     * Transaction logger. This field is set during initialization.
     */
    TransactionLogger _txLogger;
 
+   /**
+    * Checker of the links to other services, used by the _CheckLinks
+    * meta-function. This field is set during initialization.
+    */
+   private CheckLinks _linkChecker;
+
+   /**
+    * Indicates whether this API is registered as a user of the HTTP
+    * connection pools, see {@link HTTPConnectionPool#addUser()}.
+    */
+   private boolean _connectionPoolUser;
+
    /**
     * Constructs a new <code>API</code> object.
     *
@@ -249,22 +270,11 @@ public abstract class API extends Manageable {
       _localIPAddress      = IPAddressUtils.getLocalHostIPAddress();
       _apiDisabled         = false;
 
-      // Initialize mapping from meta-function to call ID
-      _metaFunctionCallIDs = new HashMap<String, Counter>(89);
-      _metaFunctionCallIDs.put("_NoOp",             new Counter());
-      _metaFunctionCallIDs.put("_GetFunctionList",  new Counter());
-      _metaFunctionCallIDs.put("_GetStatistics",    new Counter());
-      _metaFunctionCallIDs.put("_GetVersion",       new Counter());
-      _metaFunctionCallIDs.put("_CheckLinks",       new Counter());
-      _metaFunctionCallIDs.put("_GetSettings",      new Counter());
-      _metaFunctionCallIDs.put("_DisableFunction",  new Counter());
-      _metaFunctionCallIDs.put("_EnableFunction",   new Counter());
-      _metaFunctionCallIDs.put("_ResetStatistics",  new Counter());
-      _metaFunctionCallIDs.put("_ReloadProperties", new Counter());
-      _metaFunctionCallIDs.put("_WSDL",             new Counter());
-      _metaFunctionCallIDs.put("_SMD",              new Counter());
-      _metaFunctionCallIDs.put("_DisableAPI",       new Counter());
-      _metaFunctionCallIDs.put("_EnableAPI",        new Counter());
+      // Initialize the call IDs of the meta-functions
+      _metaFunctionCallIDs = new AtomicInteger[MetaFunction.values().length];
+      for (int i = 0; i < _metaFunctionCallIDs.length; i++) {
+         _metaFunctionCallIDs[i] = new AtomicInteger();
+      }
    }
 
    /**
@@ -618,6 +628,14 @@ public abstract class API extends Manageable {
 
       Log.log_3405(_name);
 
+      // Keep the pooled connections to other services open while this API
+      // is initialized. When the runtime properties are reloaded, the pools
+      // of the targets that are no longer called are removed once idle.
+      if (! _connectionPoolUser) {
+         HTTPConnectionPool.addUser();
+         _connectionPoolUser = true;
+      }
+
       // Store runtime settings
       _runtimeSettings = runtimeSettings;
 
@@ -658,17 +676,37 @@ public abstract class API extends Manageable {
       //--------------------------
       // Initialize ACL subsystem
 
+      // Determine the size of the access decision cache
+      propName  = ACL_CACHE_SIZE_PROPERTY;
+      propValue = runtimeSettings.get(propName);
+      int cacheSize = AccessRuleCache.DEFAULT_MAX_SIZE;
+      if (! isEmpty(propValue)) {
+         try {
+            cacheSize = Integer.parseInt(propValue.trim());
+         } catch (NumberFormatException e) {
+            String detail = "Invalid cache size. Must be a non-negative integer"
+                          + " number (32-bit signed).";
+            throw new InvalidPropertyValueException(propName, propValue,
+                                                    detail);
+         }
+
+         if (cacheSize < 0) {
+            throw new InvalidPropertyValueException(propName, propValue,
+               "Negative cache size not allowed. Use 0 to disable the cache.");
+         }
+      }
+
       // First with the API specific access rule list
       if (_apiAccessRuleList != null) {
          _apiAccessRuleList.dispose();
       }
-      _apiAccessRuleList = createAccessRuleList(runtimeSettings, ACL_PROPERTY + '.' + _name, interval);
+      _apiAccessRuleList = createAccessRuleList(runtimeSettings, ACL_PROPERTY + '.' + _name, interval, cacheSize);
 
       // Then read the generic access rule list
       if (_accessRuleList != null) {
          _accessRuleList.dispose();
       }
-      _accessRuleList = createAccessRuleList(runtimeSettings, ACL_PROPERTY, interval);
+      _accessRuleList = createAccessRuleList(runtimeSettings, ACL_PROPERTY, interval, cacheSize);
 
       // Initialize the RuntimeProperties object.
       getProperties().init(runtimeSettings);
@@ -752,9 +790,20 @@ public abstract class API extends Manageable {
          }
       }
 
-      // Initialize the transaction logger
+      // Initialize the transaction logger. The previous one first logs its
+      // queued transactions and releases its resources, such as files that
+      // the new one may open again
+      if (_txLogger != null) {
+         _txLogger.dispose();
+      }
       _txLogger = createTransactionLogger(runtimeSettings);
 
+      // Initialize the link checker, possibly checking in the background
+      if (_linkChecker != null) {
+         _linkChecker.dispose();
+      }
+      _linkChecker = new CheckLinks(getProperties(), runtimeSettings);
+
       Log.log_3406(_name);
    }
 
@@ -772,6 +821,9 @@ public abstract class API extends Manageable {
     * @throws IllegalArgumentException
     *    if <code>settings == null</code>.
     *
+    * @throws MissingRequiredPropertyException
+    *    if a setting required by the transaction logger is missing.
+    *
     * @throws InvalidPropertyValueException
     *    if one of the settings has an invalid value.
     *
@@ -781,6 +833,7 @@ public abstract class API extends Manageable {
     */
    private TransactionLogger createTransactionLogger(PropertyReader settings)
    throws IllegalArgumentException,
+          MissingRequiredPropertyException,
           InvalidPropertyValueException,
           InitializationException {
 
@@ -830,6 +883,9 @@ public abstract class API extends Manageable {
          }
       }
 
+      // Configure the transaction logger, possibly for asynchronous logging
+      txLogger.configure(settings);
+
       return txLogger;
    };
 
@@ -846,6 +902,10 @@ public abstract class API extends Manageable {
     *    the interval in seconds to chack if the ACL file has changed and
     *    should be reloaded.
     *
+    * @param cacheSize
+    *    the maximum number of cached access decisions, 0 to disable the
+    *    cache.
+    *
     * @return
     *    the access rule list created from the property value, never <code>null</code>.
     *
@@ -853,7 +913,7 @@ public abstract class API extends Manageable {
     *    if the value for the property is invalid.
     */
    private AccessRuleList createAccessRuleList(PropertyReader runtimeSettings,
-         String aclProperty, int interval)
+         String aclProperty, int interval, int cacheSize)
    throws InvalidPropertyValueException {
       String acl = runtimeSettings.get(aclProperty);
 
@@ -870,7 +930,7 @@ public abstract class API extends Manageable {
          // Parse the new ACL
          try {
             AccessRuleList accessRuleList =
-               AccessRuleList.parseAccessRuleList(acl, interval);
+               AccessRuleList.parseAccessRuleList(acl, interval, cacheSize);
             int ruleCount = accessRuleList.getRuleCount();
             Log.log_3427(ruleCount);
             return accessRuleList;
@@ -949,6 +1009,24 @@ public abstract class API extends Manageable {
       }
       _manageableObjects.clear();
 
+      // Log the transactions that are still queued
+      if (_txLogger != null) {
+         _txLogger.dispose();
+      }
+
+      // Stop checking links
+      if (_linkChecker != null) {
+         _linkChecker.dispose();
+         _linkChecker = null;
+      }
+
+      // Close the pooled connections to other services, unless other APIs
+      // still use them
+      if (_connectionPoolUser) {
+         HTTPConnectionPool.removeUser();
+         _connectionPoolUser = false;
+      }
+
       // Deinitialize functions
       count = _functionList.size();
       for (int i = 0; i < count; i++) {
@@ -1157,20 +1235,16 @@ public abstract class API extends Manageable {
       FunctionResult result;
       if (functionName.length() > 0 && functionName.charAt(0) == '_') {
 
-         // Determine the call ID
-         int callID;
-         synchronized (_metaFunctionCallIDs) {
-            Counter counter = _metaFunctionCallIDs.get(functionName);
-            if (counter == null) {
-               throw new NoSuchFunctionException(functionName);
-            } else {
-               callID = counter.next();
-            }
+         // Determine the meta-function and the call ID
+         MetaFunction metaFunction = MetaFunction.forName(functionName);
+         if (metaFunction == null) {
+            throw new NoSuchFunctionException(functionName);
          }
+         int callID = _metaFunctionCallIDs[metaFunction.ordinal()].getAndIncrement();
 
          // Call the meta-function
          try {
-            result = callMetaFunction(functionName, functionRequest);
+            result = callMetaFunction(metaFunction, functionRequest);
          } catch (Throwable exception) {
             result = handleFunctionException(start, functionRequest, ip, callID, exception);
          }
@@ -1199,109 +1273,114 @@ public abstract class API extends Manageable {
    /**
     * Handles a call to a meta-function.
     *
-    * @param functionName
-    *    the name of the meta-function, cannot be <code>null</code> and must
-    *    start with the underscore character <code>'_'</code>.
+    * @param metaFunction
+    *    the meta-function, cannot be <code>null</code>.
     *
     * @param functionRequest
     *    the function request, never <code>null</code>.
     *
     * @return
     *    the result of the function call, never <code>null</code>.
-    *
-    * @throws NoSuchFunctionException
-    *    if there is no meta-function by the specified name.
     */
-   private FunctionResult callMetaFunction(String          functionName,
-                                           FunctionRequest functionRequest)
-   throws NoSuchFunctionException {
+   private FunctionResult callMetaFunction(MetaFunction    metaFunction,
+                                           FunctionRequest functionRequest) {
 
       FunctionResult result;
+      switch (metaFunction) {
 
-      // No Operation
-      if ("_NoOp".equals(functionName)) {
-         result = SUCCESSFUL_RESULT;
-
-      // Retrieve function list
-      } else if ("_GetFunctionList".equals(functionName)) {
-         result = doGetFunctionList();
-
-      // Get function call quantity and performance statistics
-      } else if ("_GetStatistics".equals(functionName)) {
-
-         // Determine value of 'detailed' argument
-         String detailedArg = functionRequest.getParameters().get("detailed");
-         boolean detailed = !"false".equals(detailedArg);
-
-         // Determine the name of the specific function, if any
-         String targetFunction = functionRequest.getParameters().get("targetFunction");
-
-         // Get the statistics
-         result = doGetStatistics(detailed, targetFunction);
-
-         // Determine value of 'reset' argument
-         String resetArg = functionRequest.getParameters().get("reset");
-         boolean reset = "true".equals(resetArg);
-         if (reset) {
-            doResetStatistics();
-         }
-
-      // Get version information
-      } else if ("_GetVersion".equals(functionName)) {
-         result = doGetVersion();
-
-      // Check links to underlying systems
-      } else if ("_CheckLinks".equals(functionName)) {
-         result = doCheckLinks();
+         // No Operation
+         case NO_OP:
+            result = SUCCESSFUL_RESULT;
+            break;
 
-      // Retrieve configuration settings
-      } else if ("_GetSettings".equals(functionName)) {
-         result = doGetSettings();
+         // Retrieve function list
+         case GET_FUNCTION_LIST:
+            result = doGetFunctionList();
+            break;
 
-      // Disable a function
-      } else if ("_DisableFunction".equals(functionName)) {
-         String disabledFunction = functionRequest.getParameters().get("functionName");
-         result = doDisableFunction(disabledFunction);
+         // Get function call quantity and performance statistics
+         case GET_STATISTICS:
 
-      // Enable a function
-      } else if ("_EnableFunction".equals(functionName)) {
-         String enabledFunction = functionRequest.getParameters().get("functionName");
-         result = doEnableFunction(enabledFunction);
+            // Determine value of 'detailed' argument
+            String detailedArg = functionRequest.getParameters().get("detailed");
+            boolean detailed = !"false".equals(detailedArg);
 
-      // Reset the statistics
-      } else if ("_ResetStatistics".equals(functionName)) {
-         result = doResetStatistics();
+            // Determine the name of the specific function, if any
+            String targetFunction = functionRequest.getParameters().get("targetFunction");
 
-      // Reload the runtime properties
-      } else if ("_ReloadProperties".equals(functionName)) {
-         _engine.reloadPropertiesIfChanged();
-         result = SUCCESSFUL_RESULT;
+            // Get the statistics
+            result = doGetStatistics(detailed, targetFunction);
 
-      // Retrieve eggs
-      } else if ("_IWantTheEasterEggs".equals(functionName)) {
-         result = SUCCESSFUL_RESULT;
+            // Determine value of 'reset' argument
+            String resetArg = functionRequest.getParameters().get("reset");
+            boolean reset = "true".equals(resetArg);
+            if (reset) {
+               doResetStatistics();
+            }
+            break;
+
+         // Get version information
+         case GET_VERSION:
+            result = doGetVersion();
+            break;
+
+         // Check links to underlying systems
+         case CHECK_LINKS:
+            result = doCheckLinks();
+            break;
+
+         // Retrieve configuration settings
+         case GET_SETTINGS:
+            result = doGetSettings();
+            break;
+
+         // Disable a function
+         case DISABLE_FUNCTION:
+            String disabledFunction = functionRequest.getParameters().get("functionName");
+            result = doDisableFunction(disabledFunction);
+            break;
+
+         // Enable a function
+         case ENABLE_FUNCTION:
+            String enabledFunction = functionRequest.getParameters().get("functionName");
+            result = doEnableFunction(enabledFunction);
+            break;
+
+         // Reset the statistics
+         case RESET_STATISTICS:
+            result = doResetStatistics();
+            break;
+
+         // Reload the runtime properties
+         case RELOAD_PROPERTIES:
+            _engine.reloadPropertiesIfChanged();
+            result = SUCCESSFUL_RESULT;
+            break;
 
-      // Return the WSDL description of the API
-      } else if ("_WSDL".equals(functionName)) {
-         result = SUCCESSFUL_RESULT;
+         // Return the WSDL description of the API
+         case WSDL:
+            result = SUCCESSFUL_RESULT;
+            break;
 
-      // Return the SMD (Simple Method Description) description of the API
-      } else if ("_SMD".equals(functionName)) {
-         result = SUCCESSFUL_RESULT;
+         // Return the SMD (Simple Method Description) description of the API
+         case SMD:
+            result = SUCCESSFUL_RESULT;
+            break;
 
-      // Disable the API
-      } else if ("_DisableAPI".equals(functionName)) {
-         _apiDisabled = true;
-         result = SUCCESSFUL_RESULT;
+         // Disable the API
+         case DISABLE_API:
+            _apiDisabled = true;
+            result = SUCCESSFUL_RESULT;
+            break;
 
-      // Enable the API
-      } else if ("_EnableAPI".equals(functionName)) {
-         _apiDisabled = false;
-         result = SUCCESSFUL_RESULT;
+         // Enable the API
+         case ENABLE_API:
+            _apiDisabled = false;
+            result = SUCCESSFUL_RESULT;
+            break;
 
-      // Meta-function does not exist
-      } else {
-         throw new NoSuchFunctionException(functionName);
+         default:
+            throw Utils.logProgrammingError("Unknown meta-function " + metaFunction + '.');
       }
 
       return result;
@@ -1469,6 +1548,23 @@ public abstract class API extends Manageable {
          result.add(functionElem);
       }
 
+      // Statistics of the access decision cache, if there are any rules
+      if (_apiAccessRuleList.getRuleCount() > 0 || _accessRuleList.getRuleCount() > 0) {
+         result.add(AccessRuleCache.getStatistics(_apiAccessRuleList.getCache(), _accessRuleList.getCache()));
+      }
+
+      // Statistics of the determination of the calling conventions
+      CallingConventionManager conventionManager = getConventionManager();
+      if (conventionManager != null) {
+         result.add(conventionManager.getStatistics());
+      }
+
+      // Statistics of the pooled connections to other services, if any
+      Element connectionPools = HTTPConnectionPool.getStatistics();
+      if (connectionPools.getChildCount() > 0) {
+         result.add(connectionPools);
+      }
+
       return result;
    }
 
@@ -1501,7 +1597,7 @@ public abstract class API extends Manageable {
     *    the call result, never <code>null</code>.
     */
    private final FunctionResult doCheckLinks() {
-      return CheckLinks.checkLinks(getProperties().descriptors());
+      return _linkChecker.checkLinks(getProperties().descriptors());
    }
 
    /**
@@ -1645,9 +1741,30 @@ public abstract class API extends Manageable {
          Function function = _functionList.get(i);
          function.getStatistics().resetStatistics();
       }
+
+      // Access decision cache statistics
+      _apiAccessRuleList.getCache().resetStatistics();
+      _accessRuleList.getCache().resetStatistics();
+
+      // Calling convention determination statistics
+      CallingConventionManager conventionManager = getConventionManager();
+      if (conventionManager != null) {
+         conventionManager.resetStatistics();
+      }
       return SUCCESSFUL_RESULT;
    }
 
+   /**
+    * Returns the manager of the calling conventions of the engine.
+    *
+    * @return
+    *    the {@link CallingConventionManager}, or <code>null</code> if this
+    *    API is not associated with a bootstrapped engine.
+    */
+   private CallingConventionManager getConventionManager() {
+      return (_engine == null) ? null : _engine.getConventionManager();
+   }
+
    /**
     * Indicates whether the API is down for maintenance or not.
     *
@@ -1659,35 +1776,67 @@ public abstract class API extends Manageable {
    }
 
    /**
-    * Thread-safe <code>int</code> counter.
+    * The meta-functions, by name.
     *
-    * @version $Revision: 1.374 $ $Date: 2010/05/01 13:24:37 $
-    * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
     */
-   private static final class Counter {
+   private enum MetaFunction {
+      NO_OP("_NoOp"),
+      GET_FUNCTION_LIST("_GetFunctionList"),
+      GET_STATISTICS("_GetStatistics"),
+      GET_VERSION("_GetVersion"),
+      CHECK_LINKS("_CheckLinks"),
+      GET_SETTINGS("_GetSettings"),
+      DISABLE_FUNCTION("_DisableFunction"),
+      ENABLE_FUNCTION("_EnableFunction"),
+      RESET_STATISTICS("_ResetStatistics"),
+      RELOAD_PROPERTIES("_ReloadProperties"),
+      WSDL("_WSDL"),
+      SMD("_SMD"),
+      DISABLE_API("_DisableAPI"),
+      ENABLE_API("_EnableAPI");
+
+      /**
+       * The meta-functions by name. This map is never modified after the
+       * class is initialized, so it can be read concurrently.
+       */
+      private static final Map<String, MetaFunction> BY_NAME = new HashMap<String, MetaFunction>(32);
+
+      static {
+         for (MetaFunction metaFunction : values()) {
+            BY_NAME.put(metaFunction._functionName, metaFunction);
+         }
+      }
 
       /**
-       * The wrapped <code>int</code> number. Initially <code>0</code>.
+       * The name of the meta-function. Never <code>null</code>.
        */
-      private int _value;
+      private final String _functionName;
 
       /**
-       * Constructs a new <code>Counter</code> that initially returns the
-       * value <code>0</code>.
+       * Constructs a new <code>MetaFunction</code>.
+       *
+       * @param functionName
+       *    the name of the meta-function, cannot be <code>null</code>.
        */
-      private Counter() {
-         // empty
+      private MetaFunction(String functionName) {
+         _functionName = functionName;
       }
 
       /**
-       * Retrieves the next value. The first time <code>0</code> is returned,
-       * the second time <code>1</code>, etc.
+       * Gets the meta-function with the specified name.
+       *
+       * @param functionName
+       *    the name of the function, cannot be <code>null</code>.
        *
        * @return
-       *    the next sequence number.
+       *    the meta-function, or <code>null</code> if there is no
+       *    meta-function with the specified name.
        */
-      private synchronized int next() {
-         return _value++;
+      static MetaFunction forName(String functionName) {
+         return BY_NAME.get(functionName);
       }
    }
 }
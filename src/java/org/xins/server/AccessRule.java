@@ -7,8 +7,6 @@
 package org.xins.server;
 
 import java.util.StringTokenizer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.xins.common.MandatoryArgumentChecker;
 import org.xins.common.Utils;
@@ -69,12 +67,12 @@ public final class AccessRule implements AccessRuleContainer {
    /**
     * The function name pattern. Cannot be <code>null</code>.
     */
-   private final Pattern _functionNameRegex;
+   private final NamePattern _functionNamePattern;
 
    /**
     * The calling convention name pattern. Cannot be <code>null</code>.
     */
-   private final Pattern _conventionNameRegex;
+   private final NamePattern _conventionNamePattern;
 
    /**
     * String representation of this object. Cannot be <code>null</code>.
@@ -101,38 +99,39 @@ public final class AccessRule implements AccessRuleContainer {
     *    textual presentation of this access rule, cannot be
     *    <code>null</code>.
     *
-    * @param functionNameRegex
-    *    regular expression used for matching (or not) a function name; cannot
-    *    be <code>null</code>.
+    * @param functionNamePattern
+    *    pattern used for matching (or not) a function name; cannot be
+    *    <code>null</code>.
     *
-    * @param conventionNameRegex
-    *    regular expression used for matching (or not) a calling convention name; cannot be <code>null</code>.
+    * @param conventionNamePattern
+    *    pattern used for matching (or not) a calling convention name; cannot
+    *    be <code>null</code>.
     *
     * @throws IllegalArgumentException
-    *    if <code>ipFilter          == null
-    *          || functionNameRegex == null
-    *          || conventionNameRegex == null
-    *          || asString          == null</code>.
+    *    if <code>ipFilter              == null
+    *          || functionNamePattern   == null
+    *          || conventionNamePattern == null
+    *          || asString              == null</code>.
     */
-   private AccessRule(boolean      allow,
-                      IPFilter     ipFilter,
-                      Pattern functionNameRegex,
-                      Pattern conventionNameRegex,
-                      String       asString)
+   private AccessRule(boolean     allow,
+                      IPFilter    ipFilter,
+                      NamePattern functionNamePattern,
+                      NamePattern conventionNamePattern,
+                      String      asString)
    throws IllegalArgumentException {
 
       // Check preconditions
-      MandatoryArgumentChecker.check("ipFilter",          ipFilter,
-                                     "functionNameRegex", functionNameRegex,
-                                     "conventionNameRegex", conventionNameRegex,
-                                     "asString",          asString);
+      MandatoryArgumentChecker.check("ipFilter",              ipFilter,
+                                     "functionNamePattern",   functionNamePattern,
+                                     "conventionNamePattern", conventionNamePattern,
+                                     "asString",              asString);
 
       // Store the data
-      _allow             = allow;
-      _ipFilter          = ipFilter;
-      _functionNameRegex = functionNameRegex;
-      _conventionNameRegex = conventionNameRegex;
-      _asString          = asString;
+      _allow                 = allow;
+      _ipFilter              = ipFilter;
+      _functionNamePattern   = functionNamePattern;
+      _conventionNamePattern = conventionNamePattern;
+      _asString              = asString;
    }
 
    /**
@@ -179,16 +178,15 @@ public final class AccessRule implements AccessRuleContainer {
       IPFilter filter  = IPFilter.parseIPFilter(sFilter);
 
       // Determine the function the access is to be checked for
-      SimplePatternParser   parser = new SimplePatternParser();
-      String functionPatternString = nextToken(descriptor, tokenizer);
-      Pattern      functionPattern = parser.parse(functionPatternString);
+      String  functionPatternString = nextToken(descriptor, tokenizer);
+      NamePattern functionPattern   = new NamePattern(functionPatternString);
 
       // Determine the function the access is to be checked for
       String conventionPatternString = "*";
       if (tokenizer.hasMoreTokens()) {
          conventionPatternString = tokenizer.nextToken();
       }
-      Pattern conventionPattern = parser.parse(conventionPatternString);
+      NamePattern conventionPattern = new NamePattern(conventionPatternString);
 
       // Construct a description
       String asString = sAllow + ' ' + filter.toString() + ' ' + functionPatternString + ' ' + conventionPatternString;
@@ -345,19 +343,33 @@ public final class AccessRule implements AccessRuleContainer {
       // Check arguments
       MandatoryArgumentChecker.check("ip", ip, "functionName", functionName);
 
-      // First check if the IP filter matches
-      if (_ipFilter.match(ip)) {
-
-         // Then check if the function name matches
-         if (_functionNameRegex.matcher(functionName).find() &&
-               (conventionName == null || _conventionNameRegex.matcher(conventionName).find())) {
-            return _allow ? Boolean.TRUE : Boolean.FALSE;
-         }
+      // First check if the IP filter matches, then the names
+      if (_ipFilter.match(ip) && matchNames(functionName, conventionName)) {
+         return _allow ? Boolean.TRUE : Boolean.FALSE;
       }
 
       return null;
    }
 
+   /**
+    * Determines if the specified function and calling convention names
+    * match this rule. The IP address is not checked.
+    *
+    * @param functionName
+    *    the name of the function, cannot be <code>null</code>.
+    *
+    * @param conventionName
+    *    the name of the calling convention, can be <code>null</code>, in
+    *    which case any calling convention matches.
+    *
+    * @return
+    *    <code>true</code> if both names match, <code>false</code> otherwise.
+    */
+   boolean matchNames(String functionName, String conventionName) {
+      return _functionNamePattern.matches(functionName)
+          && (conventionName == null || _conventionNamePattern.matches(conventionName));
+   }
+
    /**
     * Disposes this access rule. All claimed resources are freed as much as
     * possible.
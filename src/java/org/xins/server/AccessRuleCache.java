@@ -0,0 +1,397 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xins.common.xml.Element;
+
+/**
+ * Bounded cache of access decisions, keyed by IP address, function name and
+ * calling convention name.
+ *
+ * <p>The cached decisions are stored in a <em>generation</em>. Invalidating
+ * the cache atomically replaces the current generation by an empty one.
+ * A decision is always stored in the generation that was current before the
+ * rules were evaluated, so a decision based on rules that were replaced in
+ * the meantime ends up in a discarded generation and is never returned.
+ *
+ * <p>When the number of decisions in the current generation reaches the
+ * maximum size, the cache is invalidated, so the memory used is bounded
+ * without any bookkeeping on lookups.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class AccessRuleCache {
+
+   /**
+    * The default maximum number of cached decisions.
+    */
+   static final int DEFAULT_MAX_SIZE = 10000;
+
+   /**
+    * The decision for a request that matches none of the rules.
+    */
+   static final Decision NO_MATCH = new Decision(-1, null);
+
+   /**
+    * The maximum number of cached decisions. If 0, then nothing is cached.
+    */
+   private final int _maxSize;
+
+   /**
+    * The current generation. Never <code>null</code>.
+    */
+   private volatile Generation _generation;
+
+   /**
+    * The number of lookups that found a cached decision.
+    */
+   private final AtomicLong _hits;
+
+   /**
+    * The number of lookups that did not find a cached decision.
+    */
+   private final AtomicLong _misses;
+
+   /**
+    * The number of times the cache has been invalidated.
+    */
+   private final AtomicLong _invalidations;
+
+   /**
+    * Constructs a new <code>AccessRuleCache</code>.
+    *
+    * @param maxSize
+    *    the maximum number of cached decisions, 0 to disable caching.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>maxSize &lt; 0</code>.
+    */
+   AccessRuleCache(int maxSize) throws IllegalArgumentException {
+      if (maxSize < 0) {
+         throw new IllegalArgumentException("maxSize (" + maxSize + ") < 0");
+      }
+      _maxSize       = maxSize;
+      _generation    = new Generation();
+      _hits          = new AtomicLong();
+      _misses        = new AtomicLong();
+      _invalidations = new AtomicLong();
+   }
+
+   /**
+    * Returns the current generation. The caller should look up the decision
+    * in the returned generation and, if not found, store the decision it
+    * evaluated in the same generation.
+    *
+    * @return
+    *    the current generation, or <code>null</code> if caching is disabled.
+    */
+   Generation getGeneration() {
+      return _maxSize == 0 ? null : _generation;
+   }
+
+   /**
+    * Discards all cached decisions.
+    */
+   void invalidate() {
+      _generation = new Generation();
+      _invalidations.incrementAndGet();
+   }
+
+   /**
+    * Resets the hit, miss and invalidation counters. The cached decisions
+    * are kept.
+    */
+   void resetStatistics() {
+      _hits.set(0L);
+      _misses.set(0L);
+      _invalidations.set(0L);
+   }
+
+   /**
+    * Returns the maximum number of cached decisions.
+    *
+    * @return
+    *    the maximum size, 0 if caching is disabled.
+    */
+   int getMaxSize() {
+      return _maxSize;
+   }
+
+   /**
+    * Returns the number of cached decisions.
+    *
+    * @return
+    *    the number of decisions in the current generation.
+    */
+   int getSize() {
+      return _generation._size.get();
+   }
+
+   /**
+    * Returns the number of lookups that found a cached decision.
+    *
+    * @return
+    *    the number of cache hits.
+    */
+   long getHits() {
+      return _hits.get();
+   }
+
+   /**
+    * Returns the number of lookups that did not find a cached decision.
+    *
+    * @return
+    *    the number of cache misses.
+    */
+   long getMisses() {
+      return _misses.get();
+   }
+
+   /**
+    * Returns the number of times the cache was invalidated, either because
+    * the rules were reloaded or because the cache was full.
+    *
+    * @return
+    *    the number of invalidations.
+    */
+   long getInvalidations() {
+      return _invalidations.get();
+   }
+
+   /**
+    * Returns the statistics of the specified caches, added up, as an XML
+    * element named <code>accessRuleCache</code>.
+    *
+    * @param caches
+    *    the caches, cannot be <code>null</code>.
+    *
+    * @return
+    *    the statistics, never <code>null</code>.
+    */
+   static Element getStatistics(AccessRuleCache... caches) {
+      long hits = 0L;
+      long misses = 0L;
+      long invalidations = 0L;
+      int size = 0;
+      int maxSize = 0;
+      for (AccessRuleCache cache : caches) {
+         hits          += cache.getHits();
+         misses        += cache.getMisses();
+         invalidations += cache.getInvalidations();
+         size          += cache.getSize();
+         maxSize       += cache.getMaxSize();
+      }
+      Element element = new Element("accessRuleCache");
+      element.setAttribute("hits",          String.valueOf(hits));
+      element.setAttribute("misses",        String.valueOf(misses));
+      element.setAttribute("invalidations", String.valueOf(invalidations));
+      element.setAttribute("size",          String.valueOf(size));
+      element.setAttribute("maxSize",       String.valueOf(maxSize));
+      return element;
+   }
+
+   /**
+    * Set of cached decisions, discarded as a whole.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   final class Generation {
+
+      /**
+       * The decisions. Never <code>null</code>.
+       */
+      private final ConcurrentHashMap<Key, Decision> _decisions;
+
+      /**
+       * The number of decisions.
+       */
+      private final AtomicInteger _size;
+
+      /**
+       * Constructs a new, empty <code>Generation</code>.
+       */
+      Generation() {
+         _decisions = new ConcurrentHashMap<Key, Decision>();
+         _size      = new AtomicInteger();
+      }
+
+      /**
+       * Looks up a cached decision.
+       *
+       * @param key
+       *    the key of the request, cannot be <code>null</code>.
+       *
+       * @return
+       *    the cached decision, or <code>null</code> if there is none.
+       */
+      Decision get(Key key) {
+         Decision decision = _decisions.get(key);
+         if (decision == null) {
+            _misses.incrementAndGet();
+         } else {
+            _hits.incrementAndGet();
+         }
+         return decision;
+      }
+
+      /**
+       * Stores a decision. If the generation is full, then the cache is
+       * invalidated.
+       *
+       * @param key
+       *    the key of the request, cannot be <code>null</code>.
+       *
+       * @param decision
+       *    the decision, cannot be <code>null</code>.
+       */
+      void put(Key key, Decision decision) {
+         if (_decisions.putIfAbsent(key, decision) == null
+               && _size.incrementAndGet() > _maxSize
+               && _generation == this) {
+            invalidate();
+         }
+      }
+   }
+
+   /**
+    * Key of a cached decision.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   static final class Key {
+
+      /**
+       * The IP address. Never <code>null</code>.
+       */
+      private final String _ip;
+
+      /**
+       * The function name. Never <code>null</code>.
+       */
+      private final String _functionName;
+
+      /**
+       * The calling convention name. Can be <code>null</code>.
+       */
+      private final String _conventionName;
+
+      /**
+       * The precomputed hash code.
+       */
+      private final int _hashCode;
+
+      /**
+       * Constructs a new <code>Key</code>.
+       *
+       * @param ip
+       *    the IP address, cannot be <code>null</code>.
+       *
+       * @param functionName
+       *    the function name, cannot be <code>null</code>.
+       *
+       * @param conventionName
+       *    the calling convention name, can be <code>null</code>.
+       */
+      Key(String ip, String functionName, String conventionName) {
+         _ip             = ip;
+         _functionName   = functionName;
+         _conventionName = conventionName;
+
+         int hashCode = ip.hashCode();
+         hashCode = hashCode * 31 + functionName.hashCode();
+         hashCode = hashCode * 31 + (conventionName == null ? 0 : conventionName.hashCode());
+         _hashCode = hashCode;
+      }
+
+      public int hashCode() {
+         return _hashCode;
+      }
+
+      public boolean equals(Object obj) {
+         if (obj == this) {
+            return true;
+         } else if (! (obj instanceof Key)) {
+            return false;
+         }
+         Key that = (Key) obj;
+         return _hashCode == that._hashCode
+             && _ip.equals(that._ip)
+             && _functionName.equals(that._functionName)
+             && (_conventionName == null ? that._conventionName == null : _conventionName.equals(that._conventionName));
+      }
+   }
+
+   /**
+    * Cached access decision.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   static final class Decision {
+
+      /**
+       * The index of the matching rule, or <code>-1</code> if no rule
+       * matched.
+       */
+      private final int _ruleIndex;
+
+      /**
+       * The decision: {@link Boolean#TRUE}, {@link Boolean#FALSE} or
+       * <code>null</code> if no rule matched.
+       */
+      private final Boolean _allowed;
+
+      /**
+       * Constructs a new <code>Decision</code>.
+       *
+       * @param ruleIndex
+       *    the index of the matching rule, or <code>-1</code>.
+       *
+       * @param allowed
+       *    the decision, or <code>null</code> if no rule matched.
+       */
+      Decision(int ruleIndex, Boolean allowed) {
+         _ruleIndex = ruleIndex;
+         _allowed   = allowed;
+      }
+
+      /**
+       * Returns the index of the matching rule.
+       *
+       * @return
+       *    the index of the matching rule, or <code>-1</code> if no rule
+       *    matched.
+       */
+      int getRuleIndex() {
+         return _ruleIndex;
+      }
+
+      /**
+       * Returns the decision.
+       *
+       * @return
+       *    {@link Boolean#TRUE}, {@link Boolean#FALSE} or <code>null</code>
+       *    if no rule matched.
+       */
+      Boolean isAllowed() {
+         return _allowed;
+      }
+   }
+}
@@ -68,6 +68,19 @@ public class AccessRuleFile implements AccessRuleContainer {
     */
    private AccessRuleContainer[] _rules;
 
+   /**
+    * The compiled rules, used for matching. Replaced as a whole when the
+    * file is reloaded. Is <code>null</code> only after this object has been
+    * disposed.
+    */
+   private volatile AccessRuleIndex _index;
+
+   /**
+    * The cache of access decisions that depend on the rules in this file.
+    * Can be <code>null</code>.
+    */
+   private volatile AccessRuleCache _cache;
+
    /**
     * String representation of this object. Cannot be <code>null</code>.
     */
@@ -235,14 +248,51 @@ public class AccessRuleFile implements AccessRuleContainer {
       MandatoryArgumentChecker.check("ip",           ip,
                                      "functionName", functionName);
 
-      // Find a matching rule and see if the call is allowed
-      int count = _rules == null ? 0 : _rules.length;
-      Boolean allowed = null;
-      for (int i = 0; i < count && allowed == null; i++) {
-         allowed = _rules[i].isAllowed(ip, functionName, conventionName);
+      // Short-circuit if there are no rules, otherwise parse the IP address
+      AccessRuleIndex index = _index;
+      if (index == null || index.getRules().length == 0) {
+         return null;
+      }
+      return index.isAllowed(IPAddress.parse(ip), functionName, conventionName);
+   }
+
+   /**
+    * Determines if the specified parsed IP address is allowed to access the
+    * specified function. Called by the {@link AccessRuleIndex} of the
+    * enclosing list or file, so that the IP address is parsed only once.
+    *
+    * @param ip
+    *    the parsed IP address, cannot be <code>null</code>.
+    *
+    * @param functionName
+    *    the name of the function, cannot be <code>null</code>.
+    *
+    * @param conventionName
+    *    the name of the calling convention to match, can be <code>null</code>.
+    *
+    * @return
+    *    {@link Boolean#TRUE} if the specified IP address is allowed to access
+    *    the specified function, {@link Boolean#FALSE} if it is disallowed
+    *    access or <code>null</code> if there is no match.
+    *
+    * @throws IllegalStateException
+    *    if this object is disposed.
+    *
+    * @throws ParseException
+    *    if a custom container fails to parse the IP address.
+    */
+   Boolean isAllowed(IPAddress ip, String functionName, String conventionName)
+   throws IllegalStateException, ParseException {
+
+      // Check state
+      if (_disposed) {
+         String detail = "This AccessRuleFile is disposed.";
+         Utils.logProgrammingError(detail);
+         throw new IllegalStateException(detail);
       }
 
-      return allowed;
+      AccessRuleIndex index = _index;
+      return index == null ? null : index.isAllowed(ip, functionName, conventionName);
    }
 
    /**
@@ -278,6 +328,7 @@ public class AccessRuleFile implements AccessRuleContainer {
          }
       }
       _rules = null;
+      _index = null;
 
       // Stop the file watcher
       if (_fileWatcher != null) {
@@ -424,7 +475,10 @@ public class AccessRuleFile implements AccessRuleContainer {
       }
 
       // Copy to the instance field
-      _rules = rules.toArray(new AccessRuleContainer[rules.size()]);
+      AccessRuleContainer[] newRules = rules.toArray(new AccessRuleContainer[rules.size()]);
+      propagateCache(newRules, _cache);
+      _rules = newRules;
+      _index = new AccessRuleIndex(newRules);
    }
 
    /**
@@ -432,12 +486,8 @@ public class AccessRuleFile implements AccessRuleContainer {
     */
    private void reinit() {
 
-      // Dispose the current rules
-      int count = _rules == null ? 0 : _rules.length;
-      for (int i = 0; i < count; i++) {
-         _rules[i].dispose();
-      }
-      _rules = null;
+      // Keep using the current rules until the new ones are applied
+      AccessRuleContainer[] oldRules = _rules;
 
       // Parse the file and apply the rules
       try {
@@ -447,8 +497,56 @@ public class AccessRuleFile implements AccessRuleContainer {
       } catch (Throwable exception) {
          Utils.logIgnoredException(exception);
          _rules = new AccessRuleContainer[0];
+         _index = new AccessRuleIndex(_rules);
          // TODO: The framework re-initialization should fail
       }
+
+      // Discard the decisions that were based on the old rules
+      AccessRuleCache cache = _cache;
+      if (cache != null) {
+         cache.invalidate();
+      }
+
+      // Dispose the old rules
+      int count = oldRules == null ? 0 : oldRules.length;
+      for (int i = 0; i < count; i++) {
+         try {
+            oldRules[i].dispose();
+         } catch (Throwable exception) {
+            Utils.logIgnoredException(exception);
+         }
+      }
+   }
+
+   /**
+    * Sets the cache of access decisions that depend on the rules in this
+    * file. The cache is invalidated whenever this file or a file it refers
+    * to is reloaded.
+    *
+    * @param cache
+    *    the cache, can be <code>null</code>.
+    */
+   void setCache(AccessRuleCache cache) {
+      _cache = cache;
+      propagateCache(_rules, cache);
+   }
+
+   /**
+    * Sets the cache on all files referenced by the specified rules.
+    *
+    * @param rules
+    *    the rules, can be <code>null</code>.
+    *
+    * @param cache
+    *    the cache, can be <code>null</code>.
+    */
+   private static void propagateCache(AccessRuleContainer[] rules, AccessRuleCache cache) {
+      int count = rules == null ? 0 : rules.length;
+      for (int i = 0; i < count; i++) {
+         if (rules[i] instanceof AccessRuleFile) {
+            ((AccessRuleFile) rules[i]).setCache(cache);
+         }
+      }
    }
 
    public String toString() {
@@ -0,0 +1,387 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import org.xins.common.text.ParseException;
+
+/**
+ * Compiled form of a list of access rule containers.
+ *
+ * <p>Each run of consecutive {@link AccessRule} objects is compiled into two
+ * binary prefix tries, one for IPv4 and one for IPv6. A rule is stored in the
+ * node at the depth of its mask, following the bits of its base IP address.
+ * Finding the first matching rule in a run only visits the nodes on the path
+ * of the IP address, so its cost depends on the prefix length, not on the
+ * number of rules. Other containers, such as {@link AccessRuleFile}
+ * objects, are evaluated in sequence, as before.
+ *
+ * <p>Instances of this class are immutable and thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class AccessRuleIndex {
+
+   /**
+    * Empty array of rule indexes.
+    */
+   private static final int[] NO_RULES = new int[0];
+
+   /**
+    * The rules. Never <code>null</code>.
+    */
+   private final AccessRuleContainer[] _rules;
+
+   /**
+    * The run each rule belongs to, per rule. The element is
+    * <code>null</code> if the rule is not an {@link AccessRule}.
+    */
+   private final Run[] _runs;
+
+   /**
+    * Constructs a new <code>AccessRuleIndex</code> for the specified rules.
+    * The passed array is assumed to be owned by the constructor.
+    *
+    * @param rules
+    *    the rules, cannot be <code>null</code> and cannot contain
+    *    <code>null</code> elements.
+    *
+    * @throws NullPointerException
+    *    if <code>rules == null</code>.
+    */
+   AccessRuleIndex(AccessRuleContainer[] rules)
+   throws NullPointerException {
+
+      int count = rules.length;
+      _rules = rules;
+      _runs  = new Run[count];
+
+      int i = 0;
+      while (i < count) {
+         if (! (rules[i] instanceof AccessRule)) {
+            i++;
+            continue;
+         }
+
+         int start = i;
+         while (i < count && rules[i] instanceof AccessRule) {
+            i++;
+         }
+         Run run = new Run(rules, start, i);
+         for (int j = start; j < i; j++) {
+            _runs[j] = run;
+         }
+      }
+   }
+
+   /**
+    * Returns the rules in this index.
+    *
+    * @return
+    *    the rules, never <code>null</code>. The returned array should not be
+    *    modified.
+    */
+   AccessRuleContainer[] getRules() {
+      return _rules;
+   }
+
+   /**
+    * Finds the index of the next rule that either is an {@link AccessRule}
+    * that matches the specified request, or is another kind of container
+    * that needs to be evaluated by the caller.
+    *
+    * @param ip
+    *    the parsed IP address, cannot be <code>null</code>.
+    *
+    * @param functionName
+    *    the name of the function, cannot be <code>null</code>.
+    *
+    * @param conventionName
+    *    the name of the calling convention, can be <code>null</code>.
+    *
+    * @param from
+    *    the index of the first rule to consider.
+    *
+    * @return
+    *    the index of the rule, or <code>-1</code> if there is none.
+    */
+   int next(IPAddress ip, String functionName, String conventionName, int from) {
+      int count = _rules.length;
+      int i = from;
+      while (i < count) {
+         Run run = _runs[i];
+         if (run == null) {
+            return i;
+         }
+         int match = run.match(ip, functionName, conventionName, i);
+         if (match >= 0) {
+            return match;
+         }
+         i = run._end;
+      }
+      return -1;
+   }
+
+   /**
+    * Determines if the specified IP address is allowed to access the
+    * specified function, using the first matching rule.
+    *
+    * @param ip
+    *    the parsed IP address, cannot be <code>null</code>.
+    *
+    * @param functionName
+    *    the name of the function, cannot be <code>null</code>.
+    *
+    * @param conventionName
+    *    the name of the calling convention, can be <code>null</code>.
+    *
+    * @return
+    *    {@link Boolean#TRUE} if access is allowed, {@link Boolean#FALSE} if
+    *    access is denied or <code>null</code> if no rule matches.
+    *
+    * @throws ParseException
+    *    if a custom container fails to parse the IP address.
+    */
+   Boolean isAllowed(IPAddress ip, String functionName, String conventionName)
+   throws ParseException {
+      int i = 0;
+      while ((i = next(ip, functionName, conventionName, i)) >= 0) {
+         Boolean allowed = evaluate(i, ip, functionName, conventionName);
+         if (allowed != null) {
+            return allowed;
+         }
+         i++;
+      }
+      return null;
+   }
+
+   /**
+    * Evaluates the rule at the specified index, as returned by
+    * {@link #next(IPAddress,String,String,int)}.
+    *
+    * @param index
+    *    the index of the rule.
+    *
+    * @param ip
+    *    the parsed IP address, cannot be <code>null</code>.
+    *
+    * @param functionName
+    *    the name of the function, cannot be <code>null</code>.
+    *
+    * @param conventionName
+    *    the name of the calling convention, can be <code>null</code>.
+    *
+    * @return
+    *    {@link Boolean#TRUE} if access is allowed, {@link Boolean#FALSE} if
+    *    access is denied or <code>null</code> if the rule does not match.
+    *
+    * @throws ParseException
+    *    if a custom container fails to parse the IP address.
+    */
+   Boolean evaluate(int index, IPAddress ip, String functionName, String conventionName)
+   throws ParseException {
+      AccessRuleContainer rule = _rules[index];
+      if (rule instanceof AccessRule) {
+         return ((AccessRule) rule).isAllowRule() ? Boolean.TRUE : Boolean.FALSE;
+      } else if (rule instanceof AccessRuleFile) {
+         return ((AccessRuleFile) rule).isAllowed(ip, functionName, conventionName);
+      } else {
+         return rule.isAllowed(ip.toString(), functionName, conventionName);
+      }
+   }
+
+   /**
+    * Run of consecutive {@link AccessRule} objects, compiled into prefix
+    * tries.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class Run {
+
+      /**
+       * The rules in this run. The rule at index <em>i</em> in the complete
+       * list is stored at <em>i</em> - {@link #_start}.
+       */
+      private final AccessRule[] _rules;
+
+      /**
+       * The index of the first rule in this run.
+       */
+      private final int _start;
+
+      /**
+       * The index after the last rule in this run.
+       */
+      private final int _end;
+
+      /**
+       * The root of the trie for IPv4 rules. Never <code>null</code>.
+       */
+      private final Node _ipv4Root;
+
+      /**
+       * The root of the trie for IPv6 rules. Never <code>null</code>.
+       */
+      private final Node _ipv6Root;
+
+      /**
+       * Constructs a new <code>Run</code>.
+       *
+       * @param rules
+       *    all rules, cannot be <code>null</code>.
+       *
+       * @param start
+       *    the index of the first rule in this run.
+       *
+       * @param end
+       *    the index after the last rule in this run.
+       */
+      Run(AccessRuleContainer[] rules, int start, int end) {
+         _rules    = new AccessRule[end - start];
+         _start    = start;
+         _end      = end;
+         _ipv4Root = new Node();
+         _ipv6Root = new Node();
+
+         for (int i = start; i < end; i++) {
+            AccessRule rule = (AccessRule) rules[i];
+            _rules[i - start] = rule;
+
+            IPFilter  filter = rule.getIPFilter();
+            IPAddress base   = filter.getBaseIPAddress();
+            Node      node   = base.isIPv6() ? _ipv6Root : _ipv4Root;
+            int       mask   = filter.getMask();
+            for (int depth = 0; depth < mask; depth++) {
+               node = node.child(base.bit(depth), true);
+            }
+            node.add(i);
+         }
+      }
+
+      /**
+       * Finds the first rule in this run that matches the specified request.
+       * No objects are allocated.
+       *
+       * @param ip
+       *    the parsed IP address, cannot be <code>null</code>.
+       *
+       * @param functionName
+       *    the name of the function, cannot be <code>null</code>.
+       *
+       * @param conventionName
+       *    the name of the calling convention, can be <code>null</code>.
+       *
+       * @param from
+       *    the index of the first rule to consider.
+       *
+       * @return
+       *    the index of the first matching rule, or <code>-1</code> if there
+       *    is none.
+       */
+      int match(IPAddress ip, String functionName, String conventionName, int from) {
+         Node node = ip.isIPv6() ? _ipv6Root : _ipv4Root;
+         int  bits = ip.getBitCount();
+         int  best = _end;
+         for (int depth = 0; node != null; depth++) {
+
+            // The rule indexes in a node are in ascending order
+            int[] candidates = node._rules;
+            for (int j = 0; j < node._count; j++) {
+               int candidate = candidates[j];
+               if (candidate >= best) {
+                  break;
+               } else if (candidate >= from && _rules[candidate - _start].matchNames(functionName, conventionName)) {
+                  best = candidate;
+                  break;
+               }
+            }
+            if (depth == bits || best == from) {
+               break;
+            }
+            node = node.child(ip.bit(depth), false);
+         }
+         return best == _end ? -1 : best;
+      }
+   }
+
+   /**
+    * Node in a prefix trie.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class Node {
+
+      /**
+       * The child for a 0 bit, or <code>null</code>.
+       */
+      private Node _zero;
+
+      /**
+       * The child for a 1 bit, or <code>null</code>.
+       */
+      private Node _one;
+
+      /**
+       * The indexes of the rules whose prefix ends in this node, in
+       * ascending order.
+       */
+      private int[] _rules = NO_RULES;
+
+      /**
+       * The number of elements used in <code>_rules</code>.
+       */
+      private int _count;
+
+      /**
+       * Returns the child node for the specified bit.
+       *
+       * @param bit
+       *    the bit value, 0 or 1.
+       *
+       * @param create
+       *    flag that indicates whether the child should be created if it
+       *    does not exist yet.
+       *
+       * @return
+       *    the child node, or <code>null</code> if it does not exist and
+       *    <code>create</code> is <code>false</code>.
+       */
+      Node child(int bit, boolean create) {
+         Node child = bit == 0 ? _zero : _one;
+         if (child == null && create) {
+            child = new Node();
+            if (bit == 0) {
+               _zero = child;
+            } else {
+               _one = child;
+            }
+         }
+         return child;
+      }
+
+      /**
+       * Adds a rule index to this node. Indexes must be added in ascending
+       * order.
+       *
+       * @param index
+       *    the index of the rule.
+       */
+      void add(int index) {
+         if (_count == _rules.length) {
+            int[] rules = new int[_count == 0 ? 1 : _count * 2];
+            System.arraycopy(_rules, 0, rules, 0, _count);
+            _rules = rules;
+         }
+         _rules[_count++] = index;
+      }
+   }
+}
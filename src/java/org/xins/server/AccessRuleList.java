@@ -54,13 +54,23 @@ public final class AccessRuleList implements AccessRuleContainer {
    /**
     * An empty access rule list. This field is never <code>null</code>.
     */
-   static final AccessRuleList EMPTY = new AccessRuleList(new AccessRuleContainer[0]);
+   static final AccessRuleList EMPTY = new AccessRuleList(new AccessRuleContainer[0], 0);
 
    /**
     * The list of rules. Cannot be <code>null</code>.
     */
    private AccessRuleContainer[] _rules;
 
+   /**
+    * The compiled rules, used for matching. Cannot be <code>null</code>.
+    */
+   private final AccessRuleIndex _index;
+
+   /**
+    * The cache of access decisions. Cannot be <code>null</code>.
+    */
+   private final AccessRuleCache _cache;
+
    /**
     * The string representation of this instance. Cannot be <code>null</code>.
     */
@@ -81,10 +91,14 @@ public final class AccessRuleList implements AccessRuleContainer {
     *    duplicate or <code>null</code> elements; if one of these latter 2
     *    constraints are violated, the behaviour is undefined.
     *
+    * @param cacheSize
+    *    the maximum number of cached access decisions, 0 to disable the
+    *    cache, must be &gt;= 0.
+    *
     * @throws NullPointerException
     *    if <code>rules == null</code>.
     */
-   private AccessRuleList(AccessRuleContainer[] rules)
+   private AccessRuleList(AccessRuleContainer[] rules, int cacheSize)
    throws NullPointerException {
 
       // Count number of rules (may throw NPE)
@@ -108,8 +122,17 @@ public final class AccessRuleList implements AccessRuleContainer {
       }
       _asString = buffer.toString();
 
-      // Store the rules
+      // Store and compile the rules
       _rules = rules;
+      _index = new AccessRuleIndex(rules);
+
+      // Let the referenced files invalidate the cache when they are reloaded
+      _cache = new AccessRuleCache(cacheSize);
+      for (int i = 0; i < ruleCount; i++) {
+         if (rules[i] instanceof AccessRuleFile) {
+            ((AccessRuleFile) rules[i]).setCache(_cache);
+         }
+      }
    }
 
    /**
@@ -142,6 +165,46 @@ public final class AccessRuleList implements AccessRuleContainer {
    public static final AccessRuleList parseAccessRuleList(String descriptor,
                                                           int    interval)
    throws IllegalArgumentException, ParseException {
+      return parseAccessRuleList(descriptor, interval, AccessRuleCache.DEFAULT_MAX_SIZE);
+   }
+
+   /**
+    * Parses the specified character string to construct a new
+    * <code>AccessRuleList</code> object, with the specified watch interval
+    * for referenced files and the specified maximum number of cached access
+    * decisions.
+    *
+    * <p>Access decisions are cached per combination of IP address, function
+    * name and calling convention name. The cache is cleared whenever a
+    * referenced file is reloaded.
+    *
+    * @param descriptor
+    *    the access rule list descriptor, the character string to parse,
+    *    cannot be <code>null</code>.
+    *
+    * @param interval
+    *    the interval used to check the ACL files for modification, in
+    *    seconds, must be &gt;= 0.
+    *
+    * @param cacheSize
+    *    the maximum number of cached access decisions, 0 to disable the
+    *    cache, must be &gt;= 0.
+    *
+    * @return
+    *    an {@link AccessRuleList} instance, never <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>descriptor == null || interval &lt; 0 || cacheSize &lt; 0</code>.
+    *
+    * @throws ParseException
+    *    if there was a parsing error.
+    *
+    * @since XINS 3.0
+    */
+   public static final AccessRuleList parseAccessRuleList(String descriptor,
+                                                          int    interval,
+                                                          int    cacheSize)
+   throws IllegalArgumentException, ParseException {
 
       // Check preconditions
       MandatoryArgumentChecker.check("descriptor", descriptor);
@@ -149,6 +212,10 @@ public final class AccessRuleList implements AccessRuleContainer {
          throw new IllegalArgumentException("interval ("
                                           + interval
                                           + ") < 0");
+      } else if (cacheSize < 0) {
+         throw new IllegalArgumentException("cacheSize ("
+                                          + cacheSize
+                                          + ") < 0");
       }
 
       // First trim whitespace from the descriptor
@@ -180,7 +247,7 @@ public final class AccessRuleList implements AccessRuleContainer {
          }
       }
 
-      return new AccessRuleList(rules);
+      return new AccessRuleList(rules, cacheSize);
    }
 
    /**
@@ -203,6 +270,11 @@ public final class AccessRuleList implements AccessRuleContainer {
     * {@link AccessRule#isAllowRule()}). If there is no matching rule, then
     * <code>null</code> is returned.
     *
+    * <p>The decision is cached, see
+    * {@link #parseAccessRuleList(String,int,int)}. If it is not cached yet,
+    * then the IP address is parsed once and consecutive access rules are
+    * matched using a prefix trie, see {@link AccessRuleIndex}.
+    *
     * @param ip
     *    the IP address, cannot be <code>null</code>.
     *
@@ -241,30 +313,90 @@ public final class AccessRuleList implements AccessRuleContainer {
       // Check preconditions
       MandatoryArgumentChecker.check("ip", ip, "functionName", functionName);
 
-      int ruleCount = _rules.length;
-      for (int i = 0; i < ruleCount; i++) {
-         AccessRuleContainer rule = _rules[i];
+      // Short-circuit if there are no rules
+      if (_rules.length == 0) {
+         return null;
+      }
 
-         String ruleString = rule.toString();
+      // Look for a cached decision first
+      AccessRuleCache.Generation generation = _cache.getGeneration();
+      AccessRuleCache.Key        key        = null;
+      AccessRuleCache.Decision   decision   = null;
+      if (generation != null) {
+         key      = new AccessRuleCache.Key(ip, functionName, conventionName);
+         decision = generation.get(key);
+      }
 
-         Boolean allowed = rule.isAllowed(ip, functionName, conventionName);
-         if (allowed != null) {
+      // Evaluate the rules and cache the decision
+      if (decision == null) {
+         decision = evaluate(ip, functionName, conventionName);
+         if (generation != null) {
+            generation.put(key, decision);
+         }
+      }
 
-            // Choose between 'allow' and 'deny'
-            boolean allow = allowed.booleanValue();
+      Boolean allowed = decision.isAllowed();
+      if (allowed != null) {
 
-            // Log this match
-            // XXX: Should this logging really be done in this class?
-            if (allow) {
-               Log.log_3550(ip, functionName, conventionName, i, ruleString);
-            } else {
-               Log.log_3551(ip, functionName, conventionName, i, ruleString);
-            }
+         // Choose between 'allow' and 'deny'
+         boolean allow = allowed.booleanValue();
 
-            return allowed;
+         // Log this match
+         // XXX: Should this logging really be done in this class?
+         int    i          = decision.getRuleIndex();
+         String ruleString = _rules[i].toString();
+         if (allow) {
+            Log.log_3550(ip, functionName, conventionName, i, ruleString);
+         } else {
+            Log.log_3551(ip, functionName, conventionName, i, ruleString);
          }
       }
-      return null;
+      return allowed;
+   }
+
+   /**
+    * Finds the first rule that matches the specified request.
+    *
+    * @param ip
+    *    the IP address, cannot be <code>null</code>.
+    *
+    * @param functionName
+    *    the name of the function, cannot be <code>null</code>.
+    *
+    * @param conventionName
+    *    the name of the calling convention to match, can be <code>null</code>.
+    *
+    * @return
+    *    the decision, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if the specified IP address is malformed.
+    */
+   private AccessRuleCache.Decision evaluate(String ip, String functionName, String conventionName)
+   throws ParseException {
+
+      // Parse the IP address only once for all rules
+      IPAddress address = IPAddress.parse(ip);
+
+      int i = 0;
+      while ((i = _index.next(address, functionName, conventionName, i)) >= 0) {
+         Boolean allowed = _index.evaluate(i, address, functionName, conventionName);
+         if (allowed != null) {
+            return new AccessRuleCache.Decision(i, allowed);
+         }
+         i++;
+      }
+      return AccessRuleCache.NO_MATCH;
+   }
+
+   /**
+    * Returns the cache of access decisions.
+    *
+    * @return
+    *    the cache, never <code>null</code>.
+    */
+   AccessRuleCache getCache() {
+      return _cache;
    }
 
    /**
@@ -0,0 +1,500 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.common.collections.PropertyReader;
+import org.xins.common.text.ParseException;
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ElementParser;
+
+/**
+ * Reader for logs written by {@link BinaryTransactionLogWriter}.
+ *
+ * <p>A log that ends with an incomplete entry, for example because the
+ * writing process was stopped, is read up to the last complete entry.
+ * Entries of an unknown type are skipped.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class BinaryTransactionLogReader {
+
+   /**
+    * The stream to read from. Never <code>null</code>.
+    */
+   private final InputStream _in;
+
+   /**
+    * The defined strings, by number. Never <code>null</code>.
+    */
+   private final Map<Integer,String> _dictionary;
+
+   /**
+    * The content of the entry that is being read. Never <code>null</code>.
+    */
+   private byte[] _buffer;
+
+   /**
+    * The length of the content of the entry that is being read.
+    */
+   private int _length;
+
+   /**
+    * The position in the content of the entry that is being read.
+    */
+   private int _pos;
+
+   /**
+    * Constructs a new <code>BinaryTransactionLogReader</code> that reads
+    * from the specified stream. The start of the log is read immediately.
+    *
+    * @param in
+    *    the stream to read from, cannot be <code>null</code>. It is
+    *    recommended to use a buffered stream.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>in == null</code>.
+    *
+    * @throws IOException
+    *    if the start of the log could not be read or if the stream does not
+    *    contain a binary transaction log.
+    */
+   public BinaryTransactionLogReader(InputStream in)
+   throws IllegalArgumentException, IOException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("in", in);
+
+      _in         = in;
+      _dictionary = new HashMap<Integer,String>();
+      _buffer     = new byte[512];
+
+      // Check the start of the log
+      byte[] magic = BinaryTransactionLogWriter.MAGIC;
+      for (int i = 0; i < magic.length; i++) {
+         if (_in.read() != magic[i]) {
+            throw new IOException("Not a binary transaction log.");
+         }
+      }
+      int version = _in.read();
+      if (version != BinaryTransactionLogWriter.VERSION) {
+         throw new IOException("Unsupported binary transaction log version " + version + '.');
+      }
+   }
+
+   /**
+    * Reads the next transaction.
+    *
+    * @return
+    *    the next transaction, or <code>null</code> if there are no more
+    *    transactions.
+    *
+    * @throws IOException
+    *    if the log could not be read or if it is corrupt.
+    */
+   public Transaction next() throws IOException {
+      while (true) {
+         int type = _in.read();
+         if (type < 0) {
+            return null;
+         }
+         try {
+            long length = readNumber();
+            if (length > Integer.MAX_VALUE) {
+               throw new IOException("Corrupt binary transaction log: entry of " + length + " bytes.");
+            }
+            readContent((int) length);
+         } catch (EOFException exception) {
+            return null;
+         }
+         if (type == BinaryTransactionLogWriter.STRING_ENTRY) {
+            int number = (int) getNumber();
+            _dictionary.put(number, new String(_buffer, _pos, _length - _pos, "UTF-8"));
+         } else if (type == BinaryTransactionLogWriter.TRANSACTION_ENTRY) {
+            return getTransaction();
+         }
+      }
+   }
+
+   /**
+    * Closes the underlying stream.
+    *
+    * @throws IOException
+    *    if the stream could not be closed.
+    */
+   public void close() throws IOException {
+      _in.close();
+   }
+
+   /**
+    * Decodes the transaction in the content of the entry.
+    *
+    * @return
+    *    the transaction, never <code>null</code>.
+    *
+    * @throws IOException
+    *    if the content is corrupt.
+    */
+   private Transaction getTransaction() throws IOException {
+      Transaction transaction = new Transaction();
+      transaction._functionName  = getDefined();
+      transaction._resultCode    = getDefined();
+      transaction._ip            = getDefined();
+      transaction._start         = getNumber();
+      transaction._duration      = getNumber();
+      transaction._contextID     = getString();
+      transaction._requestParams = getParameters();
+      transaction._requestData   = getString();
+      transaction._resultParams  = getParameters();
+      transaction._resultData    = getString();
+      return transaction;
+   }
+
+   /**
+    * Decodes parameters from the content of the entry.
+    *
+    * @return
+    *    the parameters, never <code>null</code>.
+    *
+    * @throws IOException
+    *    if the content is corrupt.
+    */
+   private PropertyReader getParameters() throws IOException {
+      BasicPropertyReader params = new BasicPropertyReader();
+      long count = getNumber();
+      for (long i = 0; i < count; i++) {
+         String name = getDefined();
+         params.set(name, getString());
+      }
+      return params;
+   }
+
+   /**
+    * Decodes a string that is either defined or written in full from the
+    * content of the entry.
+    *
+    * @return
+    *    the string, never <code>null</code>.
+    *
+    * @throws IOException
+    *    if the content is corrupt.
+    */
+   private String getDefined() throws IOException {
+      long number = getNumber();
+      String s = (number == 0L) ? getString() : _dictionary.get((int) number);
+      if (s == null) {
+         throw new IOException("Corrupt binary transaction log: undefined string " + number + '.');
+      }
+      return s;
+   }
+
+   /**
+    * Decodes a string from the content of the entry.
+    *
+    * @return
+    *    the string, or <code>null</code>.
+    *
+    * @throws IOException
+    *    if the content is corrupt.
+    */
+   private String getString() throws IOException {
+      long length = getNumber() - 1L;
+      if (length < 0L) {
+         return null;
+      } else if (length > _length - _pos) {
+         throw new IOException("Corrupt binary transaction log: string exceeds entry.");
+      }
+      String s = new String(_buffer, _pos, (int) length, "UTF-8");
+      _pos += (int) length;
+      return s;
+   }
+
+   /**
+    * Decodes a number from the content of the entry.
+    *
+    * @return
+    *    the number, never negative.
+    *
+    * @throws IOException
+    *    if the content is corrupt.
+    */
+   private long getNumber() throws IOException {
+      long n = 0L;
+      for (int shift = 0; shift < 64; shift += 7) {
+         if (_pos >= _length) {
+            throw new IOException("Corrupt binary transaction log: number exceeds entry.");
+         }
+         int b = _buffer[_pos++];
+         n |= (long) (b & 0x7F) << shift;
+         if ((b & 0x80) == 0) {
+            return n;
+         }
+      }
+      throw new IOException("Corrupt binary transaction log: number too large.");
+   }
+
+   /**
+    * Reads a number directly from the stream.
+    *
+    * @return
+    *    the number, never negative.
+    *
+    * @throws EOFException
+    *    if the stream ends before the number.
+    *
+    * @throws IOException
+    *    if the number could not be read.
+    */
+   private long readNumber() throws EOFException, IOException {
+      long n = 0L;
+      for (int shift = 0; shift < 64; shift += 7) {
+         int b = _in.read();
+         if (b < 0) {
+            throw new EOFException();
+         }
+         n |= (long) (b & 0x7F) << shift;
+         if ((b & 0x80) == 0) {
+            return n;
+         }
+      }
+      throw new IOException("Corrupt binary transaction log: number too large.");
+   }
+
+   /**
+    * Reads the content of an entry into the buffer.
+    *
+    * @param length
+    *    the length of the content.
+    *
+    * @throws EOFException
+    *    if the stream ends before the end of the content.
+    *
+    * @throws IOException
+    *    if the content could not be read.
+    */
+   private void readContent(int length) throws EOFException, IOException {
+      if (length > _buffer.length) {
+         _buffer = new byte[Math.max(_buffer.length * 2, length)];
+      }
+      int read = 0;
+      while (read < length) {
+         int count = _in.read(_buffer, read, length - read);
+         if (count < 0) {
+            throw new EOFException();
+         }
+         read += count;
+      }
+      _length = length;
+      _pos    = 0;
+   }
+
+   /**
+    * Transaction read from a binary transaction log.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   public static final class Transaction {
+
+      /**
+       * The name of the function. Never <code>null</code>.
+       */
+      private String _functionName;
+
+      /**
+       * The result code. Never <code>null</code>.
+       */
+      private String _resultCode;
+
+      /**
+       * The IP address of the caller. Never <code>null</code>.
+       */
+      private String _ip;
+
+      /**
+       * The start of the call, in milliseconds since the Epoch.
+       */
+      private long _start;
+
+      /**
+       * The duration of the call, in milliseconds.
+       */
+      private long _duration;
+
+      /**
+       * The diagnostic context identifier, or <code>null</code>.
+       */
+      private String _contextID;
+
+      /**
+       * The request parameters. Never <code>null</code>.
+       */
+      private PropertyReader _requestParams;
+
+      /**
+       * The request data section as XML, or <code>null</code>.
+       */
+      private String _requestData;
+
+      /**
+       * The result parameters. Never <code>null</code>.
+       */
+      private PropertyReader _resultParams;
+
+      /**
+       * The result data section as XML, or <code>null</code>.
+       */
+      private String _resultData;
+
+      /**
+       * Constructs a new <code>Transaction</code>.
+       */
+      Transaction() {
+         // empty
+      }
+
+      /**
+       * Returns the name of the function that was called.
+       *
+       * @return
+       *    the function name, never <code>null</code>.
+       */
+      public String getFunctionName() {
+         return _functionName;
+      }
+
+      /**
+       * Returns the result code of the call.
+       *
+       * @return
+       *    the result code, <code>"0"</code> for a successful call, never
+       *    <code>null</code>.
+       */
+      public String getResultCode() {
+         return _resultCode;
+      }
+
+      /**
+       * Returns the IP address of the caller.
+       *
+       * @return
+       *    the IP address, never <code>null</code>.
+       */
+      public String getIP() {
+         return _ip;
+      }
+
+      /**
+       * Returns the start of the call.
+       *
+       * @return
+       *    the start of the call, in milliseconds since the Epoch.
+       */
+      public long getStart() {
+         return _start;
+      }
+
+      /**
+       * Returns the duration of the call.
+       *
+       * @return
+       *    the duration of the call, in milliseconds.
+       */
+      public long getDuration() {
+         return _duration;
+      }
+
+      /**
+       * Returns the diagnostic context identifier of the call.
+       *
+       * @return
+       *    the diagnostic context identifier, or <code>null</code> if there
+       *    was none.
+       */
+      public String getContextID() {
+         return _contextID;
+      }
+
+      /**
+       * Returns the request parameters.
+       *
+       * @return
+       *    the request parameters, never <code>null</code>.
+       */
+      public PropertyReader getRequestParameters() {
+         return _requestParams;
+      }
+
+      /**
+       * Returns the request data section, as XML.
+       *
+       * @return
+       *    the request data section, or <code>null</code> if there was none.
+       */
+      public String getRequestData() {
+         return _requestData;
+      }
+
+      /**
+       * Returns the request data section, as an element.
+       *
+       * @return
+       *    the request data section, or <code>null</code> if there was none.
+       *
+       * @throws ParseException
+       *    if the data section could not be parsed.
+       */
+      public Element getRequestDataElement() throws ParseException {
+         return (_requestData == null) ? null : new ElementParser().parse(_requestData);
+      }
+
+      /**
+       * Returns the result parameters.
+       *
+       * @return
+       *    the result parameters, never <code>null</code>.
+       */
+      public PropertyReader getResultParameters() {
+         return _resultParams;
+      }
+
+      /**
+       * Returns the result data section, as XML.
+       *
+       * @return
+       *    the result data section, or <code>null</code> if there was none.
+       */
+      public String getResultData() {
+         return _resultData;
+      }
+
+      /**
+       * Returns the result data section, as an element.
+       *
+       * @return
+       *    the result data section, or <code>null</code> if there was none.
+       *
+       * @throws ParseException
+       *    if the data section could not be parsed.
+       */
+      public Element getResultDataElement() throws ParseException {
+         return (_resultData == null) ? null : new ElementParser().parse(_resultData);
+      }
+   }
+}
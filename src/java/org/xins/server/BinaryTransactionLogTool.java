@@ -0,0 +1,406 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xins.common.FormattedParameters;
+import org.xins.common.LatencyHistogram;
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.common.http.HTTPCallRequest;
+import org.xins.common.http.HTTPCallResult;
+import org.xins.common.http.HTTPMethod;
+import org.xins.common.http.HTTPServiceCaller;
+import org.xins.common.service.TargetDescriptor;
+import org.xins.common.text.DateConverter;
+import org.xins.common.text.ParseException;
+import org.xins.common.text.TextUtils;
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ElementParser;
+
+/**
+ * Command-line tool for binary transaction logs, as written by
+ * {@link BinaryTransactionLogger}. Usage:
+ *
+ * <blockquote><pre>java org.xins.server.BinaryTransactionLogTool text <em>file</em>
+ *java org.xins.server.BinaryTransactionLogTool stats <em>file</em>
+ *java org.xins.server.BinaryTransactionLogTool replay <em>file</em> <em>url</em> [<em>threads</em>]</pre></blockquote>
+ *
+ * <ul>
+ *    <li><code>text</code> prints each transaction in the same format as
+ *        the transaction log message 3540, preceded by the diagnostic
+ *        context identifier;
+ *    <li><code>stats</code> prints the number of calls, the number of
+ *        unsuccessful calls and the latency percentiles per function;
+ *    <li><code>replay</code> calls the API at the specified URL with the
+ *        recorded requests, using the XINS standard calling convention and
+ *        the specified number of threads (default 1), and prints the
+ *        statistics of the replayed calls; calls that fail, that return an
+ *        HTTP status code other than 2xx or that return an error code are
+ *        counted as errors, like unsuccessful calls are counted by
+ *        <code>stats</code>.
+ * </ul>
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class BinaryTransactionLogTool {
+
+   /**
+    * The percentiles printed by the statistics.
+    */
+   private static final double[] PERCENTILES = { 50.0, 90.0, 99.0 };
+
+   /**
+    * Constructs a new <code>BinaryTransactionLogTool</code> object.
+    */
+   private BinaryTransactionLogTool() {
+      // empty
+   }
+
+   /**
+    * Starts the tool.
+    *
+    * @param args
+    *    the command-line arguments, see the class documentation.
+    */
+   public static void main(String[] args) {
+      String command = (args.length < 2) ? "" : args[0];
+      try {
+         if (command.equals("text") && args.length == 2) {
+            text(args[1], System.out);
+         } else if (command.equals("stats") && args.length == 2) {
+            stats(args[1], System.out);
+         } else if (command.equals("replay") && (args.length == 3 || args.length == 4)) {
+            int threads = (args.length == 4) ? Integer.parseInt(args[3]) : 1;
+            replay(args[1], args[2], threads, System.out);
+         } else {
+            System.err.println("Usage: java " + BinaryTransactionLogTool.class.getName() + " text <file>");
+            System.err.println("       java " + BinaryTransactionLogTool.class.getName() + " stats <file>");
+            System.err.println("       java " + BinaryTransactionLogTool.class.getName() + " replay <file> <url> [<threads>]");
+            System.exit(1);
+         }
+      } catch (Exception exception) {
+         exception.printStackTrace();
+         System.exit(2);
+      }
+   }
+
+   /**
+    * Opens a binary transaction log file.
+    *
+    * @param path
+    *    the path of the file, cannot be <code>null</code>.
+    *
+    * @return
+    *    the reader for the file, never <code>null</code>.
+    *
+    * @throws IOException
+    *    if the file could not be opened.
+    */
+   private static BinaryTransactionLogReader open(String path) throws IOException {
+      return new BinaryTransactionLogReader(new BufferedInputStream(new FileInputStream(path), 65536));
+   }
+
+   /**
+    * Prints the transactions as text.
+    *
+    * @param path
+    *    the path of the binary transaction log, cannot be <code>null</code>.
+    *
+    * @param out
+    *    the stream to print to, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    if the log could not be read.
+    *
+    * @throws ParseException
+    *    if a data section could not be parsed.
+    */
+   static void text(String path, PrintStream out)
+   throws IOException, ParseException {
+      DateConverter dateConverter = new DateConverter(true);
+      BinaryTransactionLogReader reader = open(path);
+      try {
+         BinaryTransactionLogReader.Transaction transaction;
+         while ((transaction = reader.next()) != null) {
+            String contextID = transaction.getContextID();
+            Object inParams  = new FormattedParameters(transaction.getRequestParameters(), transaction.getRequestDataElement());
+            Object outParams = new FormattedParameters(transaction.getResultParameters(),  transaction.getResultDataElement());
+            out.println((contextID == null || contextID.length() < 1 ? "-" : contextID)
+                        + ' ' + dateConverter.format(transaction.getStart())
+                        + ' ' + transaction.getIP()
+                        + ' ' + transaction.getFunctionName()
+                        + ' ' + transaction.getDuration()
+                        + ' ' + transaction.getResultCode()
+                        + ' ' + inParams
+                        + ' ' + outParams);
+         }
+      } finally {
+         reader.close();
+      }
+   }
+
+   /**
+    * Prints the statistics per function.
+    *
+    * @param path
+    *    the path of the binary transaction log, cannot be <code>null</code>.
+    *
+    * @param out
+    *    the stream to print to, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    if the log could not be read.
+    */
+   static void stats(String path, PrintStream out) throws IOException {
+      Map<String,Statistics> statistics = new TreeMap<String,Statistics>();
+      BinaryTransactionLogReader reader = open(path);
+      try {
+         BinaryTransactionLogReader.Transaction transaction;
+         while ((transaction = reader.next()) != null) {
+            boolean success = "0".equals(transaction.getResultCode());
+            getStatistics(statistics, transaction.getFunctionName()).record(transaction.getDuration(), success);
+         }
+      } finally {
+         reader.close();
+      }
+      print(statistics, out);
+   }
+
+   /**
+    * Calls an API with the recorded requests and prints the statistics of
+    * the calls.
+    *
+    * @param path
+    *    the path of the binary transaction log, cannot be <code>null</code>.
+    *
+    * @param url
+    *    the URL of the API, cannot be <code>null</code>.
+    *
+    * @param threadCount
+    *    the number of threads that call the API, must be &gt; 0.
+    *
+    * @param out
+    *    the stream to print to, cannot be <code>null</code>.
+    *
+    * @throws Exception
+    *    if the log could not be read or if the replay failed.
+    */
+   static void replay(String path, String url, int threadCount, PrintStream out)
+   throws Exception {
+
+      final HTTPServiceCaller caller = new HTTPServiceCaller(new TargetDescriptor(url));
+      final BinaryTransactionLogReader reader = open(path);
+      final Map<String,Statistics> statistics = new TreeMap<String,Statistics>();
+      final Exception[] failure = new Exception[1];
+      Thread[] threads = new Thread[threadCount];
+      long start = System.currentTimeMillis();
+      try {
+         for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread("XINS transaction replay " + i) {
+               public void run() {
+                  try {
+                     while (true) {
+                        BinaryTransactionLogReader.Transaction transaction;
+                        Statistics stats;
+                        synchronized (reader) {
+                           transaction = reader.next();
+                           if (transaction == null) {
+                              return;
+                           }
+                        }
+                        synchronized (statistics) {
+                           stats = getStatistics(statistics, transaction.getFunctionName());
+                        }
+                        long callStart = System.currentTimeMillis();
+                        boolean success;
+                        try {
+                           success = isSuccessful(caller.call(createRequest(transaction)));
+                        } catch (Exception exception) {
+                           success = false;
+                        }
+                        stats.record(System.currentTimeMillis() - callStart, success);
+                     }
+                  } catch (Exception exception) {
+                     failure[0] = exception;
+                  }
+               }
+            };
+            threads[i].start();
+         }
+         for (int i = 0; i < threadCount; i++) {
+            threads[i].join();
+         }
+      } finally {
+         reader.close();
+      }
+      if (failure[0] != null) {
+         throw failure[0];
+      }
+
+      long duration = System.currentTimeMillis() - start;
+      print(statistics, out);
+      out.println("Replayed in " + duration + " ms with " + threadCount + " thread(s).");
+   }
+
+   /**
+    * Creates the HTTP request for a recorded transaction, using the XINS
+    * standard calling convention.
+    *
+    * @param transaction
+    *    the recorded transaction, cannot be <code>null</code>.
+    *
+    * @return
+    *    the HTTP request, never <code>null</code>.
+    */
+   private static HTTPCallRequest createRequest(BinaryTransactionLogReader.Transaction transaction) {
+      BasicPropertyReader params = new BasicPropertyReader(transaction.getRequestParameters());
+      params.set("_convention", "_xins-std");
+      params.set("_function", transaction.getFunctionName());
+      String contextID = transaction.getContextID();
+      if (contextID != null && contextID.length() > 0) {
+         params.set("_context", contextID);
+      }
+      String data = transaction.getRequestData();
+      if (data != null) {
+         params.set("_data", data);
+      }
+      return new HTTPCallRequest(HTTPMethod.POST, params);
+   }
+
+   /**
+    * Checks if a replayed call was successful. With the XINS standard
+    * calling convention, a call that returns an error code has HTTP status
+    * 200, so the result is parsed to check for an error code.
+    *
+    * @param result
+    *    the result of the HTTP call, cannot be <code>null</code>.
+    *
+    * @return
+    *    <code>true</code> if the HTTP status code is 2xx and the result has
+    *    no error code, <code>false</code> otherwise.
+    *
+    * @throws ParseException
+    *    if the result is not a valid XINS result.
+    */
+   private static boolean isSuccessful(HTTPCallResult result) throws ParseException {
+      int status = result.getStatusCode();
+      if (status < 200 || status > 299) {
+         return false;
+      }
+      byte[] data = result.getData();
+      Element element = new ElementParser().parse(data, 0, data.length);
+      return TextUtils.isEmpty(element.getAttribute("errorcode"));
+   }
+
+   /**
+    * Returns the statistics for a function, creating them if needed.
+    *
+    * @param statistics
+    *    the statistics per function, cannot be <code>null</code>.
+    *
+    * @param functionName
+    *    the name of the function, cannot be <code>null</code>.
+    *
+    * @return
+    *    the statistics for the function, never <code>null</code>.
+    */
+   private static Statistics getStatistics(Map<String,Statistics> statistics, String functionName) {
+      Statistics stats = statistics.get(functionName);
+      if (stats == null) {
+         stats = new Statistics();
+         statistics.put(functionName, stats);
+      }
+      return stats;
+   }
+
+   /**
+    * Prints the statistics per function.
+    *
+    * @param statistics
+    *    the statistics per function, cannot be <code>null</code>.
+    *
+    * @param out
+    *    the stream to print to, cannot be <code>null</code>.
+    */
+   private static void print(Map<String,Statistics> statistics, PrintStream out) {
+      out.println("function calls errors average(ms) p50(ms) p90(ms) p99(ms) max(ms)");
+      for (Map.Entry<String,Statistics> entry : statistics.entrySet()) {
+         Statistics stats = entry.getValue();
+         long count = stats._histogram.getCount();
+         long[] values = stats._histogram.getValuesAtPercentiles(PERCENTILES);
+         out.println(entry.getKey()
+                     + ' ' + count
+                     + ' ' + stats._errors.get()
+                     + ' ' + (count == 0L ? 0L : stats._total.get() / count)
+                     + ' ' + values[0]
+                     + ' ' + values[1]
+                     + ' ' + values[2]
+                     + ' ' + stats._max.get());
+      }
+   }
+
+   /**
+    * Statistics of the calls to a single function. This class is
+    * thread-safe.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class Statistics {
+
+      /**
+       * The durations of the calls. Never <code>null</code>.
+       */
+      private final LatencyHistogram _histogram = new LatencyHistogram();
+
+      /**
+       * The number of unsuccessful calls. Never <code>null</code>.
+       */
+      private final AtomicLong _errors = new AtomicLong();
+
+      /**
+       * The total duration of the calls. Never <code>null</code>.
+       */
+      private final AtomicLong _total = new AtomicLong();
+
+      /**
+       * The longest duration of a call. Never <code>null</code>.
+       */
+      private final AtomicLong _max = new AtomicLong();
+
+      /**
+       * Records a call.
+       *
+       * @param duration
+       *    the duration of the call, in milliseconds.
+       *
+       * @param success
+       *    <code>true</code> if the call was successful.
+       */
+      void record(long duration, boolean success) {
+         _histogram.record(duration);
+         _total.addAndGet(duration);
+         if (! success) {
+            _errors.incrementAndGet();
+         }
+         long max = _max.get();
+         while (duration > max && ! _max.compareAndSet(max, duration)) {
+            max = _max.get();
+         }
+      }
+   }
+}
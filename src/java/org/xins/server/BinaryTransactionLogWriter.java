@@ -0,0 +1,397 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.collections.PropertyReader;
+import org.xins.common.xml.Element;
+
+/**
+ * Writer for the compact binary transaction log format. The log can be read
+ * back using {@link BinaryTransactionLogReader}.
+ *
+ * <p>The log starts with the 4 bytes <code>XTXL</code> followed by a
+ * version byte. Then follow entries, each consisting of a type byte, the
+ * length of the content and the content. Numbers are written as unsigned
+ * variable-length integers (7 bits per byte, least significant first).
+ * There are two types of entries:
+ *
+ * <ul>
+ *    <li>a string definition, that assigns a number to a string, such as a
+ *        function name, a result code, an IP address or a parameter name;
+ *        the content is the number followed by the UTF-8 bytes of the
+ *        string;
+ *    <li>a transaction; strings that are repeated often are written as
+ *        the number of their definition, other strings as 0 followed by the
+ *        length and the UTF-8 bytes.
+ * </ul>
+ *
+ * <p>A definition always precedes the first transaction that uses it. When
+ * a log file is appended to, numbers are defined again, so a log must be
+ * read from the start.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class BinaryTransactionLogWriter {
+
+   /**
+    * The bytes at the start of a binary transaction log.
+    */
+   static final byte[] MAGIC = { 'X', 'T', 'X', 'L' };
+
+   /**
+    * The version of the format.
+    */
+   static final int VERSION = 1;
+
+   /**
+    * The type of an entry that defines a string.
+    */
+   static final int STRING_ENTRY = 1;
+
+   /**
+    * The type of an entry that contains a transaction.
+    */
+   static final int TRANSACTION_ENTRY = 2;
+
+   /**
+    * The maximum number of strings that are defined. Strings that do not
+    * fit in the dictionary anymore are written in full.
+    */
+   private static final int MAX_DICTIONARY_SIZE = 4096;
+
+   /**
+    * The stream to write to. Never <code>null</code>.
+    */
+   private final OutputStream _out;
+
+   /**
+    * The numbers of the defined strings. Never <code>null</code>.
+    */
+   private final Map<String,Integer> _dictionary;
+
+   /**
+    * The content of the entry that is being written. Never
+    * <code>null</code>.
+    */
+   private byte[] _buffer;
+
+   /**
+    * The length of the content of the entry that is being written.
+    */
+   private int _length;
+
+   /**
+    * Constructs a new <code>BinaryTransactionLogWriter</code> that writes
+    * to the specified stream. If <code>appending</code> is
+    * <code>false</code>, then the start of the log is written first.
+    *
+    * @param out
+    *    the stream to write to, cannot be <code>null</code>. It is
+    *    recommended to use a buffered stream.
+    *
+    * @param appending
+    *    <code>true</code> if the stream appends to an existing binary
+    *    transaction log, <code>false</code> if the log is new.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>out == null</code>.
+    *
+    * @throws IOException
+    *    if the start of the log could not be written.
+    */
+   public BinaryTransactionLogWriter(OutputStream out, boolean appending)
+   throws IllegalArgumentException, IOException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("out", out);
+
+      _out        = out;
+      _dictionary = new HashMap<String,Integer>();
+      _buffer     = new byte[512];
+      if (! appending) {
+         _out.write(MAGIC);
+         _out.write(VERSION);
+      }
+   }
+
+   /**
+    * Writes a transaction.
+    *
+    * @param functionName
+    *    the name of the function that was invoked, cannot be
+    *    <code>null</code>.
+    *
+    * @param requestParams
+    *    the incoming request parameters, or <code>null</code> if none.
+    *
+    * @param requestDataElement
+    *    the input data section, or <code>null</code> if none.
+    *
+    * @param resultCode
+    *    the result code, cannot be <code>null</code>; <code>"0"</code> for
+    *    a successful call.
+    *
+    * @param resultParams
+    *    the outgoing result parameters, or <code>null</code> if none.
+    *
+    * @param resultDataElement
+    *    the output data section, or <code>null</code> if none.
+    *
+    * @param ip
+    *    the IP address of the caller, cannot be <code>null</code>.
+    *
+    * @param start
+    *    the time of the incoming call, in milliseconds since January 1, 1970.
+    *
+    * @param duration
+    *    the duration of the call in milliseconds.
+    *
+    * @param contextID
+    *    the diagnostic context identifier of the call, or <code>null</code>
+    *    if there is none.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>functionName == null || resultCode == null || ip == null
+    *    || start &lt; 0 || duration &lt; 0</code>.
+    *
+    * @throws IOException
+    *    if the transaction could not be written.
+    */
+   public void write(String         functionName,
+                     PropertyReader requestParams,
+                     Element        requestDataElement,
+                     String         resultCode,
+                     PropertyReader resultParams,
+                     Element        resultDataElement,
+                     String         ip,
+                     long           start,
+                     long           duration,
+                     String         contextID)
+   throws IllegalArgumentException, IOException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("functionName", functionName,
+                                     "resultCode",   resultCode,
+                                     "ip",           ip);
+      if (start < 0L || duration < 0L) {
+         throw new IllegalArgumentException("start (" + start + ") < 0L || duration (" + duration + ") < 0L");
+      }
+
+      // Definitions of new strings are written while the transaction is
+      // being encoded, so they precede the transaction
+      _length = 0;
+      putDefined(functionName);
+      putDefined(resultCode);
+      putDefined(ip);
+      putNumber(start);
+      putNumber(duration);
+      putString(contextID);
+      putParameters(requestParams);
+      putString(requestDataElement == null ? null : requestDataElement.toString());
+      putParameters(resultParams);
+      putString(resultDataElement == null ? null : resultDataElement.toString());
+      writeEntry(TRANSACTION_ENTRY);
+   }
+
+   /**
+    * Flushes the underlying stream.
+    *
+    * @throws IOException
+    *    if the stream could not be flushed.
+    */
+   public void flush() throws IOException {
+      _out.flush();
+   }
+
+   /**
+    * Closes the underlying stream.
+    *
+    * @throws IOException
+    *    if the stream could not be closed.
+    */
+   public void close() throws IOException {
+      _out.close();
+   }
+
+   /**
+    * Adds parameters to the content of the entry. The number of parameters
+    * is followed by the name and value of each parameter.
+    *
+    * @param params
+    *    the parameters, or <code>null</code> if none.
+    *
+    * @throws IOException
+    *    if a definition could not be written.
+    */
+   private void putParameters(PropertyReader params) throws IOException {
+      if (params == null) {
+         putNumber(0L);
+         return;
+      }
+      int count = 0;
+      for (String name : params.names()) {
+         if (params.get(name) != null) {
+            count++;
+         }
+      }
+      putNumber(count);
+      for (String name : params.names()) {
+         String value = params.get(name);
+         if (value != null) {
+            putDefined(name);
+            putString(value);
+         }
+      }
+   }
+
+   /**
+    * Adds a string that is likely to be repeated to the content of the
+    * entry. If the string is not defined yet and the dictionary is not full,
+    * then it is defined first.
+    *
+    * @param s
+    *    the string, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    if the definition could not be written.
+    */
+   private void putDefined(String s) throws IOException {
+      Integer number = _dictionary.get(s);
+      if (number == null && _dictionary.size() < MAX_DICTIONARY_SIZE) {
+         number = _dictionary.size() + 1;
+         _dictionary.put(s, number);
+
+         // Write the definition, keeping the content of the transaction
+         byte[] bytes = s.getBytes("UTF-8");
+         byte[] header = new byte[5];
+         int headerLength = encodeNumber(number, header, 0);
+         _out.write(STRING_ENTRY);
+         writeNumber(headerLength + bytes.length);
+         _out.write(header, 0, headerLength);
+         _out.write(bytes);
+      }
+      if (number == null) {
+         putNumber(0L);
+         putString(s);
+      } else {
+         putNumber(number);
+      }
+   }
+
+   /**
+    * Adds a string to the content of the entry. The length of the UTF-8
+    * bytes plus one is followed by the bytes; <code>null</code> is written
+    * as 0.
+    *
+    * @param s
+    *    the string, or <code>null</code>.
+    *
+    * @throws IOException
+    *    if the string could not be encoded.
+    */
+   private void putString(String s) throws IOException {
+      if (s == null) {
+         putNumber(0L);
+      } else {
+         byte[] bytes = s.getBytes("UTF-8");
+         putNumber(bytes.length + 1);
+         ensureCapacity(bytes.length);
+         System.arraycopy(bytes, 0, _buffer, _length, bytes.length);
+         _length += bytes.length;
+      }
+   }
+
+   /**
+    * Adds a non-negative number to the content of the entry.
+    *
+    * @param n
+    *    the number, must be &gt;= 0.
+    */
+   private void putNumber(long n) {
+      ensureCapacity(10);
+      _length = encodeNumber(n, _buffer, _length);
+   }
+
+   /**
+    * Makes sure the specified number of bytes can be added to the content
+    * of the entry.
+    *
+    * @param extra
+    *    the number of bytes to add.
+    */
+   private void ensureCapacity(int extra) {
+      if (_length + extra > _buffer.length) {
+         byte[] buffer = new byte[Math.max(_buffer.length * 2, _length + extra)];
+         System.arraycopy(_buffer, 0, buffer, 0, _length);
+         _buffer = buffer;
+      }
+   }
+
+   /**
+    * Writes an entry with the current content.
+    *
+    * @param type
+    *    the type of the entry.
+    *
+    * @throws IOException
+    *    if the entry could not be written.
+    */
+   private void writeEntry(int type) throws IOException {
+      _out.write(type);
+      writeNumber(_length);
+      _out.write(_buffer, 0, _length);
+   }
+
+   /**
+    * Writes a non-negative number directly to the stream.
+    *
+    * @param n
+    *    the number, must be &gt;= 0.
+    *
+    * @throws IOException
+    *    if the number could not be written.
+    */
+   private void writeNumber(long n) throws IOException {
+      byte[] bytes = new byte[10];
+      int length = encodeNumber(n, bytes, 0);
+      _out.write(bytes, 0, length);
+   }
+
+   /**
+    * Encodes a non-negative number as an unsigned variable-length integer.
+    *
+    * @param n
+    *    the number, must be &gt;= 0.
+    *
+    * @param bytes
+    *    the buffer to encode in, cannot be <code>null</code>.
+    *
+    * @param offset
+    *    the offset in the buffer.
+    *
+    * @return
+    *    the offset after the encoded number.
+    */
+   private static int encodeNumber(long n, byte[] bytes, int offset) {
+      while ((n & ~0x7FL) != 0L) {
+         bytes[offset++] = (byte) ((n & 0x7F) | 0x80);
+         n >>>= 7;
+      }
+      bytes[offset++] = (byte) n;
+      return offset;
+   }
+}
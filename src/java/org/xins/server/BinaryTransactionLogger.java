@@ -0,0 +1,230 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.log4j.NDC;
+
+import org.xins.common.Utils;
+import org.xins.common.collections.InvalidPropertyValueException;
+import org.xins.common.collections.MissingRequiredPropertyException;
+import org.xins.common.collections.PropertyReader;
+import org.xins.common.manageable.InitializationException;
+import org.xins.common.text.TextUtils;
+import org.xins.common.xml.Element;
+
+/**
+ * Transaction logger that writes the transactions to a file in a compact
+ * binary format, see {@link BinaryTransactionLogWriter}. The file can be
+ * converted to text, analyzed and replayed using
+ * {@link BinaryTransactionLogTool}.
+ *
+ * <p>To use this logger, set the bootstrap property
+ * <code>org.xins.api.transactionlogger</code> to
+ * <code>org.xins.server.BinaryTransactionLogger</code> and the runtime
+ * property <code>org.xins.server.transactionlogger.binary.file</code> to
+ * the file to write to. If the file exists, the transactions are appended
+ * to it. It is recommended to combine this logger with asynchronous
+ * logging, see {@link TransactionLogger}.
+ *
+ * <p>If the file cannot be written, then the transactions are logged as
+ * text, like done by {@link TransactionLogger}.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public class BinaryTransactionLogger extends TransactionLogger {
+
+   /**
+    * The name of the runtime property that specifies the file to write the
+    * transactions to.
+    */
+   static final String FILE_PROPERTY = "org.xins.server.transactionlogger.binary.file";
+
+   /**
+    * The size of the buffer for the file, in bytes.
+    */
+   private static final int BUFFER_SIZE = 65536;
+
+   /**
+    * The path of the file. Never <code>null</code> once this logger is
+    * configured.
+    */
+   private String _path;
+
+   /**
+    * The writer for the file, or <code>null</code> if the file is not open.
+    * Guarded by <code>this</code>.
+    */
+   private BinaryTransactionLogWriter _writer;
+
+   /**
+    * Constructs a new <code>BinaryTransactionLogger</code> object.
+    */
+   public BinaryTransactionLogger() {
+      // empty
+   }
+
+   /**
+    * Opens the file to write the transactions to.
+    *
+    * @param settings
+    *    the runtime properties, never <code>null</code>.
+    *
+    * @throws MissingRequiredPropertyException
+    *    if the file is not specified.
+    *
+    * @throws InvalidPropertyValueException
+    *    if the file cannot be opened.
+    *
+    * @throws InitializationException
+    *    never.
+    */
+   protected void configureImpl(PropertyReader settings)
+   throws MissingRequiredPropertyException,
+          InvalidPropertyValueException,
+          InitializationException {
+
+      String path = settings.get(FILE_PROPERTY);
+      if (TextUtils.isEmpty(path)) {
+         throw new MissingRequiredPropertyException(FILE_PROPERTY);
+      }
+
+      File file = new File(path);
+      try {
+         boolean appending = file.length() > 0L;
+         FileOutputStream out = new FileOutputStream(file, true);
+         synchronized (this) {
+            _path   = path;
+            _writer = new BinaryTransactionLogWriter(new BufferedOutputStream(out, BUFFER_SIZE), appending);
+            _writer.flush();
+         }
+      } catch (IOException exception) {
+         String detail = "Unable to open the file (due to an exception of class "
+                       + exception.getClass().getName()
+                       + ").";
+         throw new InvalidPropertyValueException(FILE_PROPERTY, path, detail, exception);
+      }
+      Log.log_3543(path);
+   }
+
+   /**
+    * Writes a single transaction to the file.
+    *
+    * @param functionName
+    *    the name of the function that was invoked,
+    *    cannot be <code>null</code>.
+    *
+    * @param requestParams
+    *    the incoming request parameters, or <code>null</code> if none.
+    *
+    * @param requestDataElement
+    *    the input data section, or <code>null</code> if none.
+    *
+    * @param resultCode
+    *    the result error code, cannot be <code>null</code>.
+    *
+    * @param resultParams
+    *    the outgoing result parameters, or <code>null</code> if none.
+    *
+    * @param resultDataElement
+    *    the output data section, or <code>null</code> if none.
+    *
+    * @param ip
+    *    the IP address of the caller, cannot be <code>null</code>.
+    *
+    * @param start
+    *    the time of the incoming call, in milliseconds since January 1, 1970.
+    *
+    * @param duration
+    *    the duration of the call in milliseconds.
+    */
+   protected void logTransaction(String         functionName,
+                                 PropertyReader requestParams,
+                                 Element        requestDataElement,
+                                 String         resultCode,
+                                 PropertyReader resultParams,
+                                 Element        resultDataElement,
+                                 String         ip,
+                                 long           start,
+                                 long           duration) {
+      synchronized (this) {
+         if (_writer != null) {
+            try {
+               _writer.write(functionName, requestParams, requestDataElement,
+                             resultCode, resultParams, resultDataElement,
+                             ip, start, duration, NDC.peek());
+               return;
+            } catch (IOException exception) {
+               Log.log_3544(exception, _path);
+               closeWriter();
+            }
+         }
+      }
+
+      // Fallback to text
+      super.logTransaction(functionName, requestParams, requestDataElement,
+                           resultCode, resultParams, resultDataElement,
+                           ip, start, duration);
+   }
+
+   /**
+    * Indicates that the file is buffered and needs to be flushed.
+    *
+    * @return
+    *    <code>true</code>.
+    */
+   protected boolean needsFlush() {
+      return true;
+   }
+
+   /**
+    * Flushes the file.
+    */
+   protected synchronized void flush() {
+      if (_writer != null) {
+         try {
+            _writer.flush();
+         } catch (IOException exception) {
+            Log.log_3544(exception, _path);
+            closeWriter();
+         }
+      }
+   }
+
+   /**
+    * Closes the file.
+    */
+   protected synchronized void disposeImpl() {
+      if (_writer != null) {
+         try {
+            _writer.flush();
+         } catch (IOException exception) {
+            Log.log_3544(exception, _path);
+         }
+         closeWriter();
+      }
+   }
+
+   /**
+    * Closes the writer, ignoring any exception. Transactions are logged as
+    * text afterwards. The caller should synchronize on <code>this</code>.
+    */
+   private void closeWriter() {
+      try {
+         _writer.close();
+      } catch (IOException exception) {
+         Utils.logIgnoredException(exception);
+      }
+      _writer = null;
+   }
+}
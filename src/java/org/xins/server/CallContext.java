@@ -6,6 +6,8 @@
  */
 package org.xins.server;
 
+import java.util.Map;
+
 import org.xins.common.MandatoryArgumentChecker;
 import org.xins.common.collections.PropertyReader;
 import org.xins.common.xml.Element;
@@ -31,6 +33,11 @@ public final class CallContext {
     */
    private final Element _dataElement;
 
+   /**
+    * The files uploaded with the request, indexed by field name.
+    */
+   private final Map<String,UploadedFile> _uploadedFiles;
+
    /**
     * The call result builder. Cannot be <code>null</code>.
     */
@@ -89,6 +96,7 @@ public final class CallContext {
       // Initialize fields
       _parameters   = functionRequest.getParameters();
       _dataElement  = functionRequest.getDataElement();
+      _uploadedFiles = functionRequest.getUploadedFiles();
       _start        = start;
       _callID       = callID;
       _remoteIP     = remoteIP;
@@ -164,6 +172,32 @@ public final class CallContext {
       return _dataElement;
    }
 
+   /**
+    * Returns a file uploaded with the request. Uploaded files are only
+    * available for RFC 1867 multipart requests and only if the runtime
+    * property <code>org.xins.server.upload.streaming</code> is set to
+    * <code>true</code>; otherwise the content of the file is available as
+    * a hexadecimal parameter value.
+    *
+    * <p>The content of the file can only be read while the call is handled.
+    *
+    * @param name
+    *    the name of the form field, cannot be <code>null</code>.
+    *
+    * @return
+    *    the uploaded file, or <code>null</code> if there is none.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>name == null</code>.
+    *
+    * @since XINS 3.0
+    */
+   public UploadedFile getUploadedFile(String name)
+   throws IllegalArgumentException {
+      MandatoryArgumentChecker.check("name", name);
+      return _uploadedFiles.get(name);
+   }
+
    /**
     * Returns the assigned call ID. This ID is unique within the context of
     * the pertaining function. If no call ID is assigned, then <code>-1</code>
@@ -7,11 +7,15 @@
 package org.xins.server;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.Utils;
 import org.xins.common.collections.PropertyReader;
 import org.xins.common.spec.FunctionSpec;
 import org.xins.common.spec.ParameterSpec;
@@ -26,7 +30,10 @@ import org.znerd.xmlenc.XMLOutputter;
  * Converter that can be used by calling conventions to generate responses
  * which are compatible with the XINS standard calling convention.
  *
- * <p>The result output is always in the UTF-8 encoding.
+ * <p>The result output is always in the UTF-8 encoding. The output can be
+ * written to a character stream or, more efficiently, directly as UTF-8
+ * bytes to a byte stream. The length of the output in bytes can be
+ * determined without generating the output in memory.
  *
  * @version $Revision: 1.51 $ $Date: 2007/09/18 08:45:07 $
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
@@ -63,6 +70,31 @@ public final class CallResultOutputter {
     */
    private static final char[] DOCUMENT_SUFFIX = "</result>".toCharArray();
 
+   /**
+    * The UTF-8 bytes of {@link #DOCUMENT_PREFACE}.
+    */
+   private static final byte[] DOCUMENT_PREFACE_BYTES = UTF8OutputBuffer.ascii(new String(DOCUMENT_PREFACE));
+
+   /**
+    * The UTF-8 bytes of {@link #ERRORCODE_IS}.
+    */
+   private static final byte[] ERRORCODE_IS_BYTES = UTF8OutputBuffer.ascii(new String(ERRORCODE_IS));
+
+   /**
+    * The UTF-8 bytes of {@link #PARAM_PREFACE}.
+    */
+   private static final byte[] PARAM_PREFACE_BYTES = UTF8OutputBuffer.ascii(new String(PARAM_PREFACE));
+
+   /**
+    * The UTF-8 bytes of {@link #PARAM_SUFFIX}.
+    */
+   private static final byte[] PARAM_SUFFIX_BYTES = UTF8OutputBuffer.ascii(new String(PARAM_SUFFIX));
+
+   /**
+    * The UTF-8 bytes of {@link #DOCUMENT_SUFFIX}.
+    */
+   private static final byte[] DOCUMENT_SUFFIX_BYTES = UTF8OutputBuffer.ascii(new String(DOCUMENT_SUFFIX));
+
    /**
     * An <code>XMLEncoder</code> for the UTF-8 encoding. Initialized by the
     * class initialized and then never <code>null</code>.
@@ -169,22 +201,8 @@ public final class CallResultOutputter {
                   out.write('"');
                   out.write('>');
 
-                  // Determine if this is an XML-type parameter
-                  boolean xmlParameter = false;
-                  if (function != null) {
-                     try {
-                        ParameterSpec paramSpec = function.getOutputParameter(n);
-                        if (paramSpec != null) {
-                           Type type    = paramSpec.getType();
-                           xmlParameter = (type instanceof org.xins.common.types.standard.XML);
-                        }
-                     } catch (Throwable t) {
-                        // fall through
-                     }
-                  }
-
                   // Output the last part, with the parameter value
-                  if (xmlParameter) {
+                  if (isXMLParameter(function, n)) {
                      out.write(v);
                   } else {
                      XML_ENCODER.text(out, v, true);
@@ -206,4 +224,307 @@ public final class CallResultOutputter {
       // End the root element <result>
       out.write(DOCUMENT_SUFFIX);
    }
+
+   /**
+    * Generates XML for the specified call result, for the specified function.
+    * The XML is sent to the specified byte stream, encoded as UTF-8.
+    *
+    * <p>The output is identical to the output of
+    * {@link #output(Writer,FunctionResult,FunctionSpec)}, encoded as UTF-8,
+    * but it is encoded directly into a buffer that is reused by the current
+    * thread, so large results are written with constant memory.
+    *
+    * @param out
+    *    the output stream to send the XML to, cannot be <code>null</code>.
+    *
+    * @param result
+    *    the call result to convert to XML, cannot be <code>null</code>.
+    *
+    * @param function
+    *    the function for which the output is generated,
+    *    or <code>null</code> if unknown.
+    *
+    * @return
+    *    the number of bytes written, always &gt; 0.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>out    == null
+    *          || result == null</code>.
+    *
+    * @throws IOException
+    *    if there was an I/O error while writing to the output stream.
+    *
+    * @since XINS 3.0
+    */
+   public static long output(OutputStream   out,
+                             FunctionResult result,
+                             FunctionSpec   function)
+   throws IllegalArgumentException, IOException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("out", out, "result", result);
+
+      UTF8OutputBuffer buffer = UTF8OutputBuffer.get(out);
+      try {
+         output(buffer, result, function);
+         return buffer.finish();
+      } finally {
+         buffer.release();
+      }
+   }
+
+   /**
+    * Determines the number of bytes that
+    * {@link #output(OutputStream,FunctionResult,FunctionSpec)} would write
+    * for the specified call result. The output is not kept in memory.
+    *
+    * @param result
+    *    the call result, cannot be <code>null</code>.
+    *
+    * @param function
+    *    the function for which the output is generated,
+    *    or <code>null</code> if unknown.
+    *
+    * @return
+    *    the length of the output, in bytes, always &gt; 0.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>result == null</code>.
+    *
+    * @since XINS 3.0
+    */
+   public static long getLength(FunctionResult result, FunctionSpec function)
+   throws IllegalArgumentException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("result", result);
+
+      UTF8OutputBuffer buffer = UTF8OutputBuffer.get(null);
+      try {
+         output(buffer, result, function);
+         return buffer.finish();
+
+      // No I/O is done when only counting
+      } catch (IOException exception) {
+         throw Utils.logProgrammingError(exception);
+      } finally {
+         buffer.release();
+      }
+   }
+
+   /**
+    * Generates XML for the specified call result into the specified buffer.
+    *
+    * @param out
+    *    the buffer, cannot be <code>null</code>.
+    *
+    * @param result
+    *    the call result to convert to XML, cannot be <code>null</code>.
+    *
+    * @param function
+    *    the function for which the output is generated,
+    *    or <code>null</code> if unknown.
+    *
+    * @throws IOException
+    *    if there was an I/O error while writing to the output stream.
+    */
+   private static void output(UTF8OutputBuffer out,
+                              FunctionResult   result,
+                              FunctionSpec     function)
+   throws IOException {
+
+      // Output the declaration
+      out.write(DOCUMENT_PREFACE_BYTES);
+
+      // Output the start of the <result> element
+      String code = result.getErrorCode();
+      if (code == null) {
+         out.write('>');
+      } else {
+         out.write(ERRORCODE_IS_BYTES);
+         out.writeRaw(code);
+         out.write('"');
+         out.write('>');
+      }
+
+      // Write the output parameters, if any
+      PropertyReader params = result.getParameters();
+      if (params != null) {
+         for (String n : params.names()) {
+            if (n != null && n.length() > 0) {
+               String v = params.get(n);
+               if (v != null && v.length() > 0) {
+                  out.write(PARAM_PREFACE_BYTES);
+                  out.writeText(n, false);
+                  out.write('"');
+                  out.write('>');
+                  if (isXMLParameter(function, n)) {
+                     out.writeRaw(v);
+                  } else {
+                     out.writeText(v, false);
+                  }
+                  out.write(PARAM_SUFFIX_BYTES);
+               }
+            }
+         }
+      }
+
+      // Write the data element, if any
+      Element dataElement = result.getDataElement();
+      if (dataElement != null) {
+         output(out, dataElement);
+      }
+
+      // End the root element <result>
+      out.write(DOCUMENT_SUFFIX_BYTES);
+   }
+
+   /**
+    * Writes an element into the specified buffer, in the same way as
+    * {@link ElementSerializer#output(XMLOutputter,Element)}.
+    *
+    * @param out
+    *    the buffer, cannot be <code>null</code>.
+    *
+    * @param element
+    *    the element to write, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    if there was an I/O error while writing to the output stream.
+    */
+   private static void output(UTF8OutputBuffer out, Element element)
+   throws IOException {
+
+      String namespacePrefix = element.getNamespacePrefix();
+      String namespaceURI    = element.getNamespaceURI();
+      String localName       = element.getLocalName();
+      Map<String,String> namespaces = null;
+
+      // Write the start tag, with or without namespace prefix
+      String tagName = (namespacePrefix != null) ? namespacePrefix + ':' + localName : localName;
+      out.write('<');
+      out.writeRaw(tagName);
+
+      // Associate the namespace with the prefix in the result XML
+      if (namespaceURI != null) {
+         namespaces = new HashMap<String,String>();
+         if (namespacePrefix == null) {
+            attribute(out, "xmlns", namespaceURI);
+            namespaces.put("", namespaceURI);
+         } else {
+            attribute(out, "xmlns:" + namespacePrefix, namespaceURI);
+            namespaces.put(namespacePrefix, namespaceURI);
+         }
+      }
+
+      // Loop through all attributes
+      if (element.getAttributeCount() > 0) {
+         for (Map.Entry<Element.QualifiedName,String> entry : element.getAttributeMap().entrySet()) {
+            Element.QualifiedName qn   = entry.getKey();
+            String attrNamespaceURI    = qn.getNamespaceURI();
+            String attrLocalName       = qn.getLocalName();
+            String attrNamespacePrefix = qn.getNamespacePrefix();
+            String attrValue           = entry.getValue();
+
+            // Do not write the attribute if no value or it is the namespace URI.
+            if (attrValue != null &&
+                  (!"xmlns".equals(attrNamespacePrefix) || !attrLocalName.equals(namespacePrefix))) {
+
+               if (attrNamespacePrefix != null) {
+                  attribute(out, attrNamespacePrefix + ':' + attrLocalName, attrValue);
+               } else {
+                  attribute(out, attrLocalName, attrValue);
+               }
+
+               // Write the attribute namespace
+               if (attrNamespaceURI != null) {
+                  if (namespaces == null) {
+                     namespaces = new HashMap<String,String>();
+                  }
+                  if (attrNamespacePrefix == null && !namespaces.containsKey("")) {
+                     attribute(out, "xmlns", attrNamespaceURI);
+                     namespaces.put("", namespaceURI);
+                  } else if (!namespaces.containsKey(attrNamespacePrefix)) {
+                     attribute(out, "xmlns:" + attrNamespacePrefix, attrNamespaceURI);
+                     namespaces.put(attrNamespacePrefix, namespaceURI);
+                  }
+               }
+            }
+         }
+      }
+
+      // Process all contained elements and text snippets
+      List<Object> content = (element.getChildCount() > 0) ? element.getChildren() : null;
+      if (content == null || content.isEmpty()) {
+         out.write('/');
+         out.write('>');
+      } else {
+         out.write('>');
+         for (int i = 0; i < content.size(); i++) {
+            Object o = content.get(i);
+            if (o instanceof Element) {
+               output(out, (Element) o);
+            } else {
+               out.writeText((String) o, false);
+            }
+         }
+         out.write('<');
+         out.write('/');
+         out.writeRaw(tagName);
+         out.write('>');
+      }
+   }
+
+   /**
+    * Writes an attribute into the specified buffer.
+    *
+    * @param out
+    *    the buffer, cannot be <code>null</code>.
+    *
+    * @param name
+    *    the name of the attribute, cannot be <code>null</code>.
+    *
+    * @param value
+    *    the value of the attribute, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    if there was an I/O error while writing to the output stream.
+    */
+   private static void attribute(UTF8OutputBuffer out, String name, String value)
+   throws IOException {
+      out.write(' ');
+      out.writeRaw(name);
+      out.write('=');
+      out.write('"');
+      out.writeText(value, true);
+      out.write('"');
+   }
+
+   /**
+    * Determines whether the specified output parameter is of type XML.
+    *
+    * @param function
+    *    the function, or <code>null</code> if unknown.
+    *
+    * @param name
+    *    the name of the output parameter, cannot be <code>null</code>.
+    *
+    * @return
+    *    <code>true</code> if the parameter is known to be of type XML,
+    *    <code>false</code> otherwise.
+    */
+   private static boolean isXMLParameter(FunctionSpec function, String name) {
+      if (function != null) {
+         try {
+            ParameterSpec paramSpec = function.getOutputParameter(name);
+            if (paramSpec != null) {
+               Type type = paramSpec.getType();
+               return type instanceof org.xins.common.types.standard.XML;
+            }
+         } catch (Throwable t) {
+            // fall through
+         }
+      }
+      return false;
+   }
 }
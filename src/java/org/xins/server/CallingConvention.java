@@ -195,6 +195,26 @@ abstract class CallingConvention extends Manageable {
       return getSupportedMethods();
    }
 
+   /**
+    * Returns the content type a request must have for this calling
+    * convention to possibly match it. This is used by the
+    * {@link CallingConventionManager} to skip calling conventions that
+    * cannot match a request, without calling
+    * {@link #matches(HttpServletRequest)}.
+    *
+    * <p>The comparison ignores case and any parameters, such as the
+    * character set. The default implementation returns <code>null</code>.
+    *
+    * @return
+    *    the required content type, or <code>null</code> if requests with
+    *    any content type may match.
+    *
+    * @since XINS 3.0
+    */
+   String getRequiredContentType() {
+      return null;
+   }
+
    /**
     * Checks if the specified request can be handled by this calling
     * convention. Assuming this <code>CallingConvention</code> instance is
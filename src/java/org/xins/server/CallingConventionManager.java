@@ -9,15 +9,17 @@ package org.xins.server;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.xins.common.LatencyHistogram;
+import org.xins.common.StripedCounter;
 import org.xins.common.Utils;
 import org.xins.common.collections.InvalidPropertyValueException;
 import org.xins.common.collections.MissingRequiredPropertyException;
@@ -26,10 +28,17 @@ import org.xins.common.manageable.BootstrapException;
 import org.xins.common.manageable.InitializationException;
 import org.xins.common.manageable.Manageable;
 import org.xins.common.text.TextUtils;
+import org.xins.common.xml.Element;
 
 /**
  * Manages the <code>CallingConvention</code> instances for the API.
  *
+ * <p>For requests that do not specify a calling convention explicitly, the
+ * calling conventions that can possibly match are looked up in a routing
+ * table, by HTTP method and content type. Only these calling conventions are
+ * asked whether they match the request. The routing table is filled on
+ * demand and cleared when the calling conventions are (re)initialized.
+ *
  * @version $Revision: 1.86 $ $Date: 2007/12/17 13:35:57 $
  * @author <a href="mailto:mees.witteman@orange-ftgroup.com">Mees Witteman</a>
  * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
@@ -134,6 +143,35 @@ class CallingConventionManager extends Manageable {
     */
    private static final Object CREATION_FAILED = new Object();
 
+   /**
+    * The prefix of the names of the calling convention classes that come
+    * with XINS.
+    */
+   private static final String BUILT_IN_PACKAGE = "org.xins.server.";
+
+   /**
+    * The maximum number of routes kept in the routing table. Routes for
+    * other requests are determined each time, this prevents clients from
+    * filling the table with arbitrary HTTP methods.
+    */
+   private static final int MAX_ROUTES = 32;
+
+   /**
+    * The value of a statistic that is not available.
+    */
+   private static final String NOT_AVAILABLE = "N/A";
+
+   /**
+    * The percentiles of the detection time returned in the statistics.
+    */
+   private static final double[] PERCENTILES = { 50.0, 90.0, 99.0 };
+
+   /**
+    * The names of the attributes for the percentiles in
+    * {@link #PERCENTILES}.
+    */
+   private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99" };
+
    /**
     * The API. Never <code>null</code>.
     */
@@ -158,7 +196,57 @@ class CallingConventionManager extends Manageable {
     * {@link #CREATION_FAILED} if the calling convention object could not be
     * constructed.
     */
-   private final HashMap<String, Object> _conventions;
+   private final ConcurrentHashMap<String, Object> _conventions;
+
+   /**
+    * The routing table for requests that do not specify a calling
+    * convention. The key is the HTTP method, followed by
+    * <code>" xml"</code> if the content type is <em>text/xml</em>. Never
+    * <code>null</code>.
+    */
+   private final ConcurrentHashMap<String, Route> _routes;
+
+   /**
+    * The number of requests that specified the calling convention
+    * explicitly. Never <code>null</code>.
+    */
+   private final StripedCounter _explicitCount;
+
+   /**
+    * The number of requests for which the calling convention was detected.
+    * Never <code>null</code>.
+    */
+   private final StripedCounter _detectedCount;
+
+   /**
+    * The number of requests for which no calling convention could be
+    * determined. Never <code>null</code>.
+    */
+   private final StripedCounter _failedCount;
+
+   /**
+    * The number of times a calling convention was asked whether it matches
+    * a request. Never <code>null</code>.
+    */
+   private final StripedCounter _matchCount;
+
+   /**
+    * The number of detections that found the route in the routing table.
+    * Never <code>null</code>.
+    */
+   private final StripedCounter _routeHitCount;
+
+   /**
+    * The number of detections that had to create the route. Never
+    * <code>null</code>.
+    */
+   private final StripedCounter _routeMissCount;
+
+   /**
+    * The time spent determining the calling convention per request, in
+    * microseconds. Never <code>null</code>.
+    */
+   private final LatencyHistogram _durations;
 
    /**
     * Creates a <code>CallingConventionManager</code> for the specified API.
@@ -176,8 +264,16 @@ class CallingConventionManager extends Manageable {
       _conventionNames.addAll(CONVENTIONS);
 
       // Create a map to store the conventions in
-      _conventions = new HashMap<String, Object>(12);
-
+      _conventions = new ConcurrentHashMap<String, Object>(12);
+
+      _routes        = new ConcurrentHashMap<String, Route>();
+      _explicitCount = new StripedCounter();
+      _detectedCount = new StripedCounter();
+      _failedCount   = new StripedCounter();
+      _matchCount    = new StripedCounter();
+      _routeHitCount  = new StripedCounter();
+      _routeMissCount = new StripedCounter();
+      _durations     = new LatencyHistogram();
    }
 
    /**
@@ -495,6 +591,9 @@ class CallingConventionManager extends Manageable {
           InvalidPropertyValueException,
           InitializationException {
 
+      // The usable calling conventions may change
+      _routes.clear();
+
       // Loop through all CallingConvention instances
       Iterator iterator = _conventions.entrySet().iterator();
       while (iterator.hasNext()) {
@@ -584,23 +683,40 @@ class CallingConventionManager extends Manageable {
    CallingConvention getCallingConvention(HttpServletRequest request)
    throws InvalidRequestException {
 
-      // Get the value of the input parameter that determines the convention
-      String ccName    = request.getParameter(CALLING_CONVENTION_PARAMETER);
+      long start = System.nanoTime();
+      CallingConvention cc = null;
+      try {
 
-      // If a calling convention is specified then use that one
-      if (! TextUtils.isEmpty(ccName)) {
-         CallingConvention cc = getCallingConvention(ccName);
-         if (! Arrays.asList(cc.getSupportedMethods(request)).contains(request.getMethod()) && !"OPTIONS".equals(request.getMethod())) {
-            String detail = "Calling convention \"" + ccName +
-                  "\" does not support the \"" + request.getMethod() + "\" for this request.";
-            Log.log_3507(ccName, detail);
-            throw new InvalidRequestException(detail);
+         // Get the value of the input parameter that determines the convention
+         String ccName    = request.getParameter(CALLING_CONVENTION_PARAMETER);
+
+         // If a calling convention is specified then use that one
+         if (! TextUtils.isEmpty(ccName)) {
+            _explicitCount.increment();
+            CallingConvention explicitCC = getCallingConvention(ccName);
+            if (! Arrays.asList(explicitCC.getSupportedMethods(request)).contains(request.getMethod()) && !"OPTIONS".equals(request.getMethod())) {
+               String detail = "Calling convention \"" + ccName +
+                     "\" does not support the \"" + request.getMethod() + "\" for this request.";
+               Log.log_3507(ccName, detail);
+               throw new InvalidRequestException(detail);
+            }
+            cc = explicitCC;
+
+         // Otherwise try to detect which one is appropriate
+         } else {
+            _detectedCount.increment();
+            cc = detectCallingConvention(request);
          }
          return cc;
 
-      // Otherwise try to detect which one is appropriate
-      } else {
-         return detectCallingConvention(request);
+      // Record the time spent, also if no calling convention was found
+      } finally {
+         long duration = (System.nanoTime() - start) / 1000L;
+         _durations.record(duration);
+         if (cc == null) {
+            _failedCount.increment();
+         }
+         Log.log_3518(cc == null ? null : cc.getConventionName(), duration);
       }
    }
 
@@ -631,20 +747,7 @@ class CallingConventionManager extends Manageable {
             Log.log_3507(name, detail);
             throw new InvalidRequestException(detail);
       } else if (o == null) {
-
-         // Create the asked calling convention and initiaze it
-         CallingConvention cc = create(_api.getBootstrapProperties(), name);
-
-         // If created, store the object and attempt bootstrapping
-         if (cc != null) {
-            o = cc;
-            _conventions.put(name, cc);
-            bootstrap(name, cc, _api.getBootstrapProperties());
-            init(name, cc, _api.getRuntimeProperties());
-         } else {
-            o = CREATION_FAILED;
-            _conventions.put(name, o);
-         }
+         o = createOnDemand(name);
       }
 
       // Creation failed
@@ -672,6 +775,41 @@ class CallingConventionManager extends Manageable {
       }
    }
 
+   /**
+    * Creates, bootstraps and initializes the calling convention with the
+    * given name, unless another thread already did so. The calling
+    * convention is only stored once it is initialized, so other threads
+    * never get a calling convention that is still being set up.
+    *
+    * @param name
+    *    the name of the calling convention, cannot be <code>null</code>.
+    *
+    * @return
+    *    the calling convention, or {@link #CREATION_FAILED} if it could not
+    *    be created, never <code>null</code>.
+    */
+   private Object createOnDemand(String name) {
+      synchronized (_conventions) {
+         Object o = _conventions.get(name);
+         if (o == null) {
+
+            // Create the asked calling convention and initiaze it
+            CallingConvention cc = create(_api.getBootstrapProperties(), name);
+
+            // If created, attempt bootstrapping and initialization
+            if (cc != null) {
+               bootstrap(name, cc, _api.getBootstrapProperties());
+               init(name, cc, _api.getRuntimeProperties());
+               o = cc;
+            } else {
+               o = CREATION_FAILED;
+            }
+            _conventions.put(name, o);
+         }
+         return o;
+      }
+   }
+
    /**
     * Gets the calling convention for the given name, or <code>null</code> if
     * the calling convention is not found or not usable.
@@ -736,16 +874,19 @@ class CallingConventionManager extends Manageable {
       // Log: Request does not specify any calling convention
       Log.log_3508();
 
+      // Only consider the calling conventions that can possibly match
+      Route route = getRoute(request);
+
       // See if the default calling convention matches
-      CallingConvention defCC = getCallingConvention2(_defaultConventionName);
-      if (defCC != null && defCC.matchesRequest(request)) {
+      CallingConvention defCC = route._defaultCC;
+      if (defCC != null && matches(defCC, request)) {
          Log.log_3509(defCC.getClass().getName());
          return defCC;
       }
 
       // If not, see if XSLT-specific properties are set /and/ _xins-xslt matches
-      CallingConvention xslCC = getCallingConvention2("_xins-xslt");
-      if (xslCC != null && xslCC != defCC && xslCC.matchesRequest(request)) {
+      CallingConvention xslCC = route._xsltCC;
+      if (xslCC != null && matches(xslCC, request)) {
 
          // Determine if one of the two XSLT-specific parameters is set
          String p1 = request.getParameter(XSLTCallingConvention.TEMPLATE_PARAMETER);
@@ -760,8 +901,8 @@ class CallingConventionManager extends Manageable {
       }
 
       // If not, see if _xins-std matches
-      CallingConvention stdCC = getCallingConvention2("_xins-std");
-      if (stdCC != null && stdCC != defCC && stdCC.matchesRequest(request)) {
+      CallingConvention stdCC = route._standardCC;
+      if (stdCC != null && matches(stdCC, request)) {
          Log.log_3509(StandardCallingConvention.class.getName());
          return stdCC;
       }
@@ -769,29 +910,11 @@ class CallingConventionManager extends Manageable {
       // Local variable to hold the first matching calling convention
       CallingConvention matching = null;
 
-      // Determine which calling conventions match
-      Iterator<String> itConventionNames = _conventionNames.iterator();
-      while (itConventionNames.hasNext()) {
-         String name = itConventionNames.next();
-         Object value = getCallingConvention2(name);
-
-         // if the value is null, that's maybe an initialization problem
-         if (value == null) {
-            value = _conventions.get(name);
-         }
-
-         // Skip all values that are not CallingConvention instances
-         // Skip also the default and the standard calling conventions, we
-         // already established that they cannot handle the request
-         if (value == CREATION_FAILED || value == defCC || value == stdCC) {
-            continue;
-         }
-
-         // Convert the value to a CallingConvention
-         CallingConvention cc = (CallingConvention) value;
+      // Determine which of the other calling conventions match
+      for (CallingConvention cc : route._otherCCs) {
 
          // Determine whether this one can handle it
-         if (cc.matchesRequest(request)) {
+         if (matches(cc, request)) {
 
             // First match
             if (matching == null) {
@@ -825,6 +948,160 @@ class CallingConventionManager extends Manageable {
       }
    }
 
+   /**
+    * Checks if the specified calling convention matches the request and
+    * counts the check.
+    *
+    * @param cc
+    *    the calling convention, cannot be <code>null</code>.
+    *
+    * @param request
+    *    the incoming request, cannot be <code>null</code>.
+    *
+    * @return
+    *    the result of {@link CallingConvention#matchesRequest(HttpServletRequest)}.
+    */
+   private boolean matches(CallingConvention cc, HttpServletRequest request) {
+      _matchCount.increment();
+      return cc.matchesRequest(request);
+   }
+
+   /**
+    * Gets the route for a request that does not specify a calling
+    * convention. The route is looked up in the routing table and added to
+    * it if it is not there yet.
+    *
+    * @param request
+    *    the incoming request, cannot be <code>null</code>.
+    *
+    * @return
+    *    the route, never <code>null</code>.
+    */
+   private Route getRoute(HttpServletRequest request) {
+      String  method = request.getMethod();
+      boolean xml    = isXMLContentType(request.getContentType());
+      String  key    = xml ? method + " xml" : method;
+
+      Route route = _routes.get(key);
+      if (route != null) {
+         _routeHitCount.increment();
+      } else {
+         _routeMissCount.increment();
+         route = createRoute(method, xml);
+         if (_routes.size() < MAX_ROUTES) {
+            _routes.put(key, route);
+         }
+      }
+      return route;
+   }
+
+   /**
+    * Creates the route for requests with the specified HTTP method and
+    * content type. The calling conventions in the route are in the same
+    * order as they are tried by
+    * {@link #detectCallingConvention(HttpServletRequest)}, leaving out the
+    * ones that are not usable and the built-in ones that do not support the
+    * HTTP method or that require a different content type.
+    *
+    * @param method
+    *    the HTTP method, cannot be <code>null</code>.
+    *
+    * @param xml
+    *    <code>true</code> if the content type is <em>text/xml</em>,
+    *    <code>false</code> otherwise.
+    *
+    * @return
+    *    the route, never <code>null</code>.
+    */
+   private Route createRoute(String method, boolean xml) {
+
+      CallingConvention defCC = getCallingConvention2(_defaultConventionName);
+      CallingConvention xslCC = getCallingConvention2("_xins-xslt");
+      CallingConvention stdCC = getCallingConvention2("_xins-std");
+
+      Route route = new Route();
+      route._defaultCC  = canMatch(defCC, method, xml) ? defCC : null;
+      route._xsltCC     = (xslCC != defCC && canMatch(xslCC, method, xml)) ? xslCC : null;
+      route._standardCC = (stdCC != defCC && canMatch(stdCC, method, xml)) ? stdCC : null;
+
+      // Skip the default and the standard calling conventions, they are
+      // tried first
+      List<CallingConvention> others = new ArrayList<CallingConvention>();
+      for (String name : _conventionNames) {
+         CallingConvention cc = getCallingConvention2(name);
+         if (cc != defCC && cc != stdCC && canMatch(cc, method, xml)) {
+            others.add(cc);
+         }
+      }
+      route._otherCCs = others.toArray(new CallingConvention[others.size()]);
+      return route;
+   }
+
+   /**
+    * Checks if the specified calling convention can possibly match requests
+    * with the specified HTTP method and content type.
+    *
+    * <p>The supported HTTP methods and the required content type (see
+    * {@link CallingConvention#getRequiredContentType()}) are only taken into
+    * account for the calling conventions that come with XINS. A subclass
+    * may override {@link CallingConvention#matches(HttpServletRequest)} and
+    * {@link CallingConvention#getSupportedMethods(HttpServletRequest)}, so
+    * it can only be excluded per request, by
+    * {@link CallingConvention#matchesRequest(HttpServletRequest)}.
+    *
+    * @param cc
+    *    the calling convention, can be <code>null</code>.
+    *
+    * @param method
+    *    the HTTP method, cannot be <code>null</code>.
+    *
+    * @param xml
+    *    <code>true</code> if the content type is <em>text/xml</em>,
+    *    <code>false</code> otherwise.
+    *
+    * @return
+    *    <code>true</code> if the calling convention is usable and may match
+    *    the requests, <code>false</code> if it cannot match them.
+    */
+   private static boolean canMatch(CallingConvention cc, String method, boolean xml) {
+      if (cc == null || ! cc.isUsable()) {
+         return false;
+      }
+
+      String  className = cc.getClass().getName();
+      boolean builtIn   = className.startsWith(BUILT_IN_PACKAGE) && className.indexOf('.', BUILT_IN_PACKAGE.length()) < 0;
+      if (! builtIn) {
+         return true;
+      }
+
+      // OPTIONS requests are accepted by all calling conventions, other
+      // methods must be supported; the built-in calling conventions support
+      // the same methods for all requests
+      if (! "OPTIONS".equals(method) && ! Arrays.asList(cc.getSupportedMethods()).contains(method)) {
+         return false;
+      }
+      return xml || cc.getRequiredContentType() == null;
+   }
+
+   /**
+    * Checks if the specified content type is <em>text/xml</em>, ignoring
+    * case and parameters, as required by
+    * {@link CallingConvention#parseXMLRequest(HttpServletRequest,boolean)}.
+    *
+    * @param contentType
+    *    the content type of the request, can be <code>null</code>.
+    *
+    * @return
+    *    <code>true</code> if the content type is <em>text/xml</em>.
+    */
+   private static boolean isXMLContentType(String contentType) {
+      if (contentType == null) {
+         return false;
+      }
+      String contentTypeLC = contentType.trim().toLowerCase();
+      return "text/xml".equals(contentTypeLC) || contentTypeLC.startsWith("text/xml;");
+   }
+
    /**
     * Returns the set of HTTP methods supported for function invocations. This
     * is the union of the methods supported by the individual calling
@@ -866,4 +1143,78 @@ class CallingConventionManager extends Manageable {
 
       return supportedMethods;
    }
+
+   /**
+    * Returns the statistics of the determination of the calling convention
+    * for the incoming requests. The durations are in microseconds.
+    *
+    * @return
+    *    the <code>conventionDetection</code> element, never
+    *    <code>null</code>.
+    */
+   Element getStatistics() {
+      Element element = new Element("conventionDetection");
+      long count = _durations.getCount();
+      element.setAttribute("explicit", String.valueOf(_explicitCount.get()));
+      element.setAttribute("detected", String.valueOf(_detectedCount.get()));
+      element.setAttribute("failed",   String.valueOf(_failedCount.get()));
+      element.setAttribute("matches",  String.valueOf(_matchCount.get()));
+      element.setAttribute("routes",   String.valueOf(_routes.size()));
+      element.setAttribute("routeHits",   String.valueOf(_routeHitCount.get()));
+      element.setAttribute("routeMisses", String.valueOf(_routeMissCount.get()));
+      long[] percentiles = _durations.getValuesAtPercentiles(PERCENTILES);
+      for (int i = 0; i < PERCENTILES.length; i++) {
+         String value = (count == 0L || percentiles[i] < 0L) ? NOT_AVAILABLE : String.valueOf(percentiles[i]);
+         element.setAttribute(PERCENTILE_NAMES[i], value);
+      }
+      return element;
+   }
+
+   /**
+    * Resets the statistics of the determination of the calling convention.
+    */
+   void resetStatistics() {
+      _explicitCount.reset();
+      _detectedCount.reset();
+      _failedCount.reset();
+      _matchCount.reset();
+      _routeHitCount.reset();
+      _routeMissCount.reset();
+      _durations.reset();
+   }
+
+   /**
+    * The calling conventions to try for requests that do not specify a
+    * calling convention, with a certain HTTP method and content type.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class Route {
+
+      /**
+       * The default calling convention, or <code>null</code> if it cannot
+       * match.
+       */
+      CallingConvention _defaultCC;
+
+      /**
+       * The XSLT calling convention, or <code>null</code> if it is the
+       * default calling convention or if it cannot match.
+       */
+      CallingConvention _xsltCC;
+
+      /**
+       * The XINS standard calling convention, or <code>null</code> if it is
+       * the default calling convention or if it cannot match.
+       */
+      CallingConvention _standardCC;
+
+      /**
+       * The other calling conventions that can match, in the order of
+       * their names. Never <code>null</code>.
+       */
+      CallingConvention[] _otherCCs;
+   }
 }
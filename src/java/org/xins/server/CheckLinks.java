@@ -11,18 +11,31 @@ import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.HttpRecoverableException;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.commons.httpclient.methods.OptionsMethod;
 
 import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.TimeOutController;
 import org.xins.common.Utils;
+import org.xins.common.collections.InvalidPropertyValueException;
+import org.xins.common.collections.PropertyReader;
+import org.xins.common.collections.PropertyReaderUtils;
 import org.xins.common.service.Descriptor;
 import org.xins.common.service.TargetDescriptor;
 import org.xins.common.xml.Element;
@@ -35,10 +48,30 @@ import org.xins.common.xml.Element;
  * total links failures. The returned {@link FunctionResult} contains
  * information about total links checked, failures and details.
  *
+ * <p>The links are checked in parallel by a bounded number of threads,
+ * using pooled HTTP connections. The following runtime properties are
+ * supported:
+ *
+ * <ul>
+ *    <li><code>org.xins.server.checklinks.threads</code>: the maximum
+ *        number of links that are checked at the same time, default is 16;
+ *    <li><code>org.xins.server.checklinks.cache</code>: the number of
+ *        seconds the result of a check is reused by the next calls, default
+ *        is 0, meaning every call checks all links;
+ *    <li><code>org.xins.server.checklinks.interval</code>: the number of
+ *        seconds between two checks of all links in the background, default
+ *        is 0, meaning no background checks. If set, calls return the result
+ *        of the latest background check.
+ * </ul>
+ *
+ * <p>Checks that are in progress are shared by concurrent calls if results
+ * are cached or checked in the background.
+ *
  * The following example uses a {@link CheckLinks} object to get the
  * {@link FunctionResult}.
  *
- * <blockquote><pre>FunctionResult result = CheckLinks.checkLinks(descriptorList);
+ * <blockquote><pre>CheckLinks checkLinks = new CheckLinks(runtimeProperties, settings);
+ * FunctionResult result = checkLinks.checkLinks(descriptorList);
  * result.getParameters();</pre></blockquote>
  *
  * @version $Revision: 1.37 $ $Date: 2007/05/22 11:13:26 $
@@ -46,6 +79,41 @@ import org.xins.common.xml.Element;
  */
 class CheckLinks {
 
+   /**
+    * The name of the runtime property that specifies the maximum number of
+    * links that are checked at the same time.
+    */
+   static final String THREADS_PROPERTY = "org.xins.server.checklinks.threads";
+
+   /**
+    * The name of the runtime property that specifies the number of seconds
+    * the result of a check is reused.
+    */
+   static final String CACHE_PROPERTY = "org.xins.server.checklinks.cache";
+
+   /**
+    * The name of the runtime property that specifies the number of seconds
+    * between two checks in the background.
+    */
+   static final String INTERVAL_PROPERTY = "org.xins.server.checklinks.interval";
+
+   /**
+    * The default maximum number of links that are checked at the same time.
+    */
+   private static final int DEFAULT_THREADS = 16;
+
+   /**
+    * The time after which an idle pooled connection is closed, in
+    * milliseconds.
+    */
+   private static final long IDLE_TIME_OUT = 60000L;
+
+   /**
+    * The maximum time to wait for the checks in progress before the
+    * connections are closed on disposal, in milliseconds.
+    */
+   private static final long SHUTDOWN_TIME_OUT = 30000L;
+
    /**
     * The failure message to be added in the <code>FunctionResult</code> when
     * the exception is <code>UnknownHostException</code>.
@@ -91,17 +159,107 @@ class CheckLinks {
    /**
     * HTTP retry handler that does not allow any retries.
     */
-   private static DefaultHttpMethodRetryHandler NO_RETRIES = new DefaultHttpMethodRetryHandler(0, false);
+   private static final DefaultHttpMethodRetryHandler NO_RETRIES = new DefaultHttpMethodRetryHandler(0, false);
+
+   /**
+    * The runtime properties that define the links to check in the
+    * background. Never <code>null</code>.
+    */
+   private final RuntimeProperties _properties;
+
+   /**
+    * The maximum number of links that are checked at the same time.
+    */
+   private final int _threadCount;
+
+   /**
+    * The time the result of a check is reused, in milliseconds, or
+    * <code>0L</code> if results are not reused.
+    */
+   private final long _cacheDuration;
+
+   /**
+    * The time between two checks in the background, in milliseconds, or
+    * <code>0L</code> if there are no background checks.
+    */
+   private final long _interval;
+
+   /**
+    * The executor that checks the links. Never <code>null</code>.
+    */
+   private final ExecutorService _executor;
+
+   /**
+    * The HTTP clients with pooled connections, by connection time-out.
+    * Never <code>null</code>.
+    */
+   private final ConcurrentHashMap<Integer, HttpClient> _clients;
+
+   /**
+    * The latest check per target, that may still be in progress. Never
+    * <code>null</code>.
+    */
+   private final ConcurrentHashMap<TargetDescriptor, URLChecker> _checks;
+
+   /**
+    * The timer that checks the links in the background, or
+    * <code>null</code> if there are no background checks.
+    */
+   private final Timer _timer;
+
+   /**
+    * Constructs a new <code>CheckLinks</code> object, configured using the
+    * specified runtime properties. If background checks are configured, the
+    * first one is started immediately.
+    *
+    * @param properties
+    *    the runtime properties of the API, that define the links to check
+    *    in the background, cannot be <code>null</code>.
+    *
+    * @param settings
+    *    the runtime settings, cannot be <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>properties == null || settings == null</code>.
+    *
+    * @throws InvalidPropertyValueException
+    *    if one of the runtime properties has an invalid value.
+    */
+   CheckLinks(RuntimeProperties properties, PropertyReader settings)
+   throws IllegalArgumentException, InvalidPropertyValueException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("properties", properties, "settings", settings);
+
+      _properties    = properties;
+      _threadCount   = PropertyReaderUtils.getIntProperty(settings, THREADS_PROPERTY, 1, Integer.MAX_VALUE, DEFAULT_THREADS);
+      _cacheDuration = 1000L * PropertyReaderUtils.getIntProperty(settings, CACHE_PROPERTY, 0, Integer.MAX_VALUE, 0);
+      _interval      = 1000L * PropertyReaderUtils.getIntProperty(settings, INTERVAL_PROPERTY, 0, Integer.MAX_VALUE, 0);
+      _executor      = TimeOutController.createExecutor("XINS link checker", _threadCount);
+      _clients       = new ConcurrentHashMap<Integer, HttpClient>();
+      _checks        = new ConcurrentHashMap<TargetDescriptor, URLChecker>();
+
+      if (_interval > 0L) {
+         _timer = new Timer("XINS background link checker", true);
+         _timer.schedule(new TimerTask() {
+            public void run() {
+               checkInBackground();
+            }
+         }, 0L, _interval);
+      } else {
+         _timer = null;
+      }
+   }
 
    /**
     * Checks all the links in <code>TargetDescriptor</code>s inside the
     * <code>Descriptor</code> list and builds a <code>FunctionResult</code>.
     * First gets all the {@link TargetDescriptor}s from the
-    * {@link Descriptor}s list then creates {@link URLChecker} threads with
-    * {@link TargetDescriptor}s and runs them. When all the threads have
-    * finished execution, the {@link FunctionResult} is built and returned.
-    * The returned {@link FunctionResult} contains all the links which were
-    * checked with their results.
+    * {@link Descriptor}s list then checks them using {@link URLChecker}s.
+    * When all the checks have finished or timed out, the
+    * {@link FunctionResult} is built and returned. The returned
+    * {@link FunctionResult} contains all the links which were checked with
+    * their results.
     *
     * @param descriptors
     *    the list of {@link Descriptor}s defined in the runtime properties,
@@ -114,40 +272,204 @@ class CheckLinks {
     * @throws IllegalArgumentException
     *    if <code>descriptors == null</code>.
     */
-   static FunctionResult checkLinks(List<Descriptor> descriptors)
+   FunctionResult checkLinks(List<Descriptor> descriptors)
    throws IllegalArgumentException {
 
       // Check preconditions
       MandatoryArgumentChecker.check("descriptors", descriptors);
 
-      List<URLChecker> threads = new ArrayList<URLChecker>();
-      if (descriptors.size() > 0) {
+      // Get all the targets from the descriptor list
+      List<TargetDescriptor> targetDescriptors = getTargetDescriptors(descriptors);
+
+      // Start or reuse a check for each target
+      List<URLChecker> checkers = new ArrayList<URLChecker>(targetDescriptors.size());
+      for (TargetDescriptor target : targetDescriptors) {
+         checkers.add(getChecker(target));
+      }
+
+      // Wait till all the checks finish or time out
+      waitTillDone(checkers, getBiggestTimeout(targetDescriptors));
 
-         // Get all the targets from the descriptor list
-         List<TargetDescriptor> targetDescriptors = getTargetDescriptors(descriptors);
+      // Build the result
+      FunctionResult builder = new FunctionResult();
+      int errorCount = addCheckElements(builder, checkers);
+      builder.param("linkCount", String.valueOf(checkers.size()));
+      builder.param("errorCount", String.valueOf(errorCount));
 
-         // Create the thread for each target and run them
-         threads = createAndRunUrlCheckers(targetDescriptors);
+      return builder;
+   }
 
-         // Get the biggest time-out from all the targets
-         int timeout = getBiggestTimeout(targetDescriptors);
+   /**
+    * Stops the background checks and releases the threads and connections.
+    * Calls that wait for checks in progress report them as timed out.
+    */
+   void dispose() {
+      if (_timer != null) {
+         _timer.cancel();
+      }
+      _executor.shutdownNow();
+      _checks.clear();
+
+      // The connections are closed once the checks in progress have
+      // finished, or after a while if a check has no time-out; closing the
+      // connections then makes the remaining checks fail
+      Thread closer = new Thread("XINS link checker shutdown") {
+         public void run() {
+            try {
+               if (! _executor.awaitTermination(SHUTDOWN_TIME_OUT, TimeUnit.MILLISECONDS)) {
+                  _executor.shutdownNow();
+               }
+            } catch (InterruptedException exception) {
+               Utils.logIgnoredException(exception);
+            }
+            for (HttpClient client : _clients.values()) {
+               HttpConnectionManager manager = client.getHttpConnectionManager();
+               if (manager instanceof MultiThreadedHttpConnectionManager) {
+                  ((MultiThreadedHttpConnectionManager) manager).shutdown();
+               }
+            }
+         }
+      };
+      closer.setDaemon(true);
+      closer.start();
+   }
 
-         // Wait till all the threads finish their execution or timedout.
-         waitTillThreadsRunning(threads, timeout);
+   /**
+    * Checks all links and stores the results, so that they are returned by
+    * {@link #checkLinks(List)}. Called periodically by the timer.
+    */
+   private void checkInBackground() {
+      try {
+         List<TargetDescriptor> targetDescriptors = getTargetDescriptors(_properties.descriptors());
+         List<URLChecker> checkers = new ArrayList<URLChecker>(targetDescriptors.size());
+         for (TargetDescriptor target : targetDescriptors) {
+            checkers.add(startChecker(target));
+         }
+         waitTillDone(checkers, getBiggestTimeout(targetDescriptors));
+
+         // Checks that did not finish in time are stored as time-outs, so
+         // that a hanging target does not keep its previous result
+         for (URLChecker checker : checkers) {
+            if (! checker.hasRun()) {
+               Log.log_3505(checker._url);
+               checker = new URLChecker(checker._targetDescriptor, checker._client);
+               checker.timedOut();
+            }
+            _checks.put(checker._targetDescriptor, checker);
+         }
+      } catch (Throwable exception) {
+         Utils.logIgnoredException(exception);
+      }
+   }
 
-         // Confirm all threads have finished their execution.
-         confirmThreadsStopped(threads);
+   /**
+    * Returns a check for the specified target. A previous check is reused
+    * if it is still in progress or if its result is recent enough, otherwise
+    * a new check is started.
+    *
+    * @param target
+    *    the target to check, cannot be <code>null</code>.
+    *
+    * @return
+    *    the check, never <code>null</code>.
+    */
+   private URLChecker getChecker(TargetDescriptor target) {
+
+      // Results are not reused at all
+      if (_cacheDuration <= 0L && _interval <= 0L) {
+         return startChecker(target);
       }
 
-      // Start building the result
-      FunctionResult builder = new FunctionResult();
-      int errorCount = (descriptors.size() > 0)
-                          ? addCheckElements(builder, threads)
-                          : 0;
-      builder.param("linkCount", String.valueOf(threads.size()));
-      builder.param("errorCount", String.valueOf(errorCount));
+      URLChecker checker = _checks.get(target);
+      if (checker != null && isReusable(checker)) {
+         return checker;
+      }
 
-      return builder;
+      // Start a new check, unless another thread just did
+      synchronized (_checks) {
+         checker = _checks.get(target);
+         if (checker == null || ! isReusable(checker)) {
+            checker = startChecker(target);
+            _checks.put(target, checker);
+         }
+      }
+      return checker;
+   }
+
+   /**
+    * Determines if the result of the specified check can be returned
+    * without checking the link again.
+    *
+    * @param checker
+    *    the check, cannot be <code>null</code>.
+    *
+    * @return
+    *    <code>true</code> if the check is in progress, if it is kept up to
+    *    date in the background or if it finished less than the cache
+    *    duration ago.
+    */
+   private boolean isReusable(URLChecker checker) {
+      if (! checker.hasRun() || _interval > 0L) {
+         return true;
+      }
+      return System.currentTimeMillis() - checker._finished <= _cacheDuration;
+   }
+
+   /**
+    * Starts a new check for the specified target.
+    *
+    * @param target
+    *    the target to check, cannot be <code>null</code>.
+    *
+    * @return
+    *    the started check, never <code>null</code>.
+    */
+   private URLChecker startChecker(TargetDescriptor target) {
+      URLChecker checker = new URLChecker(target, getHttpClient(target.getConnectionTimeOut()));
+      try {
+         _executor.execute(checker);
+
+      // After disposal, the check will time out
+      } catch (RejectedExecutionException exception) {
+         Utils.logIgnoredException(exception);
+      }
+      return checker;
+   }
+
+   /**
+    * Returns the HTTP client with pooled connections for the specified
+    * connection time-out. The connection time-out can only be set for all
+    * connections of a connection manager, so there is one client per
+    * distinct connection time-out.
+    *
+    * @param connectionTimeOut
+    *    the connection time-out in milliseconds.
+    *
+    * @return
+    *    the HTTP client, never <code>null</code>.
+    */
+   private HttpClient getHttpClient(int connectionTimeOut) {
+      Integer key = connectionTimeOut;
+      HttpClient client = _clients.get(key);
+      if (client == null) {
+         MultiThreadedHttpConnectionManager manager = new MultiThreadedHttpConnectionManager();
+         HttpConnectionManagerParams params = manager.getParams();
+         params.setConnectionTimeout(connectionTimeOut);
+         params.setStaleCheckingEnabled(true);
+
+         // Each checking thread uses at most one connection at a time
+         params.setDefaultMaxConnectionsPerHost(_threadCount);
+         params.setMaxTotalConnections(_threadCount);
+
+         HttpClient newClient = new HttpClient(manager);
+         client = _clients.putIfAbsent(key, newClient);
+         if (client == null) {
+            client = newClient;
+         } else {
+            manager.shutdown();
+         }
+      }
+      return client;
    }
 
    /**
@@ -181,55 +503,11 @@ class CheckLinks {
       return targetDescriptors;
    }
 
-   /**
-    * Creates and runs a thread for each <code>TargetDescriptor</code> in the
-    * given list. Each {@link TargetDescriptor} in the list contains a URL. A
-    * {@link URLChecker} thread is created for each {@link TargetDescriptor},
-    * which tries to connect to the URL provided in the
-    * {@link TargetDescriptor}. Each thread is then added to a list which is
-    * returned.
-    *
-    * @param targetDescriptors
-    *    the list of {@link TargetDescriptor}s which needs to be checked,
-    *    cannot be <code>null</code>.
-    *
-    * @return
-    *    the constructed {@link URLChecker}s list, never <code>null</code>.
-    *
-    * @throws IllegalArgumentException
-    *    if <code>targetDescriptors == null</code>.
-    */
-   private static List<URLChecker> createAndRunUrlCheckers(List<TargetDescriptor> targetDescriptors)
-   throws IllegalArgumentException {
-
-      // Check preconditions
-      MandatoryArgumentChecker.check("targetDescriptors", targetDescriptors);
-
-      // Iterate over all target descriptors
-      List<URLChecker>     threads = new ArrayList<URLChecker>();
-      Iterator<TargetDescriptor> targets = targetDescriptors.iterator();
-      while (targets.hasNext()) {
-         TargetDescriptor target = targets.next();
-
-         // Create a thread for the target descriptor
-         URLChecker urlThread = new URLChecker(target);
-
-         // Start the thread with target descriptor
-         urlThread.start();
-
-         // Store the thread just started in a list
-         threads.add(urlThread);
-      }
-
-      return threads;
-   }
-
    /**
     * Returns the biggest time-out of all the URLs defined in
     * <code>TargetDescriptor</code>s list. Each {@link TargetDescriptor} in
     * the list has total time-out. The biggest of all of them is returned.
-    * This time-out is then used to setup the time-outs of the
-    * {@link URLChecker} threads.
+    * This time-out is then used to wait for the {@link URLChecker}s.
     *
     * @param targetDescriptors
     *    the list of {@link TargetDescriptor}s, cannot be <code>null</code>.
@@ -247,12 +525,10 @@ class CheckLinks {
       // Check preconditions
       MandatoryArgumentChecker.check("targetDescriptors", targetDescriptors);
 
-      Iterator<TargetDescriptor> targets        = targetDescriptors.iterator();
-      int      biggestTimeout = -1;
+      int biggestTimeout = -1;
 
       // Iterate over all target descriptors
-      while (targets.hasNext()) {
-         TargetDescriptor target = targets.next();
+      for (TargetDescriptor target : targetDescriptors) {
 
          // Try to get the biggest time out of all the target descriptors
          if (biggestTimeout < target.getTotalTimeOut()) {
@@ -264,52 +540,39 @@ class CheckLinks {
    }
 
    /**
-    * Sets up the time-out for each thread and waits till each thread finishes
-    * execution. The time-out is the biggest time-out of all the URLs in
-    * {@link TargetDescriptor}s. Timeout for every next thread also considers
-    * the time which is already spent and that time is subtracted from the
-    * time-out for the current thread.
+    * Waits till each check finishes. Since at most {@link #_threadCount}
+    * links are checked at the same time, the checks are given the biggest
+    * time-out for each group of that many checks. Checks that have not
+    * finished by then are reported as connection time-outs, see
+    * {@link #addCheckElements(FunctionResult,List)}.
     *
-    * @param threads
-    *    the list of {@link URLChecker} threads, cannot be <code>null</code>.
+    * @param checkers
+    *    the list of {@link URLChecker}s, cannot be <code>null</code>.
     *
     * @param timeout
-    *    the time-out for {@link URLChecker} threads.
+    *    the biggest time-out of the targets, or a value &lt;= 0 to wait
+    *    without time-out.
     *
     * @throws IllegalArgumentException
-    *    if <code>threads == null</code>.
+    *    if <code>checkers == null</code>.
     */
-   private static void waitTillThreadsRunning(List<URLChecker> threads, int timeout)
+   private void waitTillDone(List<URLChecker> checkers, int timeout)
    throws IllegalArgumentException {
 
       // Check preconditions
-      MandatoryArgumentChecker.check("threads", threads);
-
-      Iterator<URLChecker> threadIterator = threads.iterator();
-      long threadTimeout      = timeout;
+      MandatoryArgumentChecker.check("checkers", checkers);
 
-      // Storing the time approximately when the first thread was started
-      long startTime = System.currentTimeMillis();
+      int  rounds   = (checkers.size() + _threadCount - 1) / _threadCount;
+      long deadline = System.currentTimeMillis() + (long) timeout * rounds;
       try {
-
-         // Iterate over all the threads
-         while (threadIterator.hasNext()) {
-            URLChecker urlThread = threadIterator.next();
-            urlThread.join(threadTimeout);
-
-            // If the previous thread was setup with a certain time-out
-            // the next thread should be setup with a time-out subtracted
-            // by the time which is already passed.
-            long endTime    = System.currentTimeMillis();
-            long timePassed = endTime - startTime;
-            threadTimeout   = timeout - timePassed;
-
-            // If the time-out becomes negative, it means that the total
-            // time-out interval has passed now we do not need to setup
-            // time-out for threads and they all should have finished
-            // execution by now.
-            if (threadTimeout <= 0) {
-               return;
+         for (URLChecker checker : checkers) {
+            if (timeout <= 0) {
+               checker.waitTillDone(0L);
+            } else {
+               long remaining = deadline - System.currentTimeMillis();
+               if (remaining <= 0L || ! checker.waitTillDone(remaining)) {
+                  break;
+               }
             }
          }
       } catch (InterruptedException exception) {
@@ -318,125 +581,69 @@ class CheckLinks {
          // the current thread. This should never happen so it should log
          // a programming error and throw a ProgrammingException.
          throw Utils.logProgrammingError(exception);
-      }
-   }
-
-   /**
-    * Confimrs that each <code>URLChecker</code> has finished its execution.
-    * If some threads are still running, inforce a connection time-out and let
-    * it run and ignore.
-    *
-    * @param threads
-    *    the list of {@link URLChecker} threads, cannot be <code>null</code>.
-    *
-    * @throws IllegalArgumentException
-    *    if <code>threads == null</code>.
-    */
-   private static void confirmThreadsStopped(List<URLChecker> threads)
-   throws IllegalArgumentException {
-
-      // Check preconditions
-      MandatoryArgumentChecker.check("threads", threads);
-
-      Iterator<URLChecker> threadIterator = threads.iterator();
+      } finally {
 
-      // Iterate over all the threads
-      while (threadIterator.hasNext()) {
-         URLChecker urlThread = threadIterator.next();
-
-         // Check if thread is still alive.
-         if (urlThread.isAlive()) {
-
-            // Enforce a time-out for the thread and log it.
-            urlThread.enforceTimeout();
-            Log.log_3505(urlThread.getURL());
+         // Close the connections that have not been used for a while
+         for (HttpClient client : _clients.values()) {
+            client.getHttpConnectionManager().closeIdleConnections(IDLE_TIME_OUT);
          }
       }
    }
 
    /**
     * Builds the <code>FunctionResult</code> for all the URLs checked. It
-    * iterates over the list of all {@link URLChecker} threads and gets the
-    * information like the total time each thread took to execute and the
-    * result of the execution. The information is added in an
-    * {@link Element} which then is added to the passed
-    * {@link FunctionResult}.
+    * iterates over the list of all {@link URLChecker}s and gets the
+    * information like the total time each check took and the result of the
+    * check. The information is added in an {@link Element} which then is
+    * added to the passed {@link FunctionResult}. A check that has not
+    * finished yet is reported as a connection time-out.
     *
     * @param builder
     *    the {@link FunctionResult} where the result is added, cannot be
     *    <code>null</code>.
     *
-    * @param threads
-    *    the list of {@link URLChecker} threads, cannot be <code>null</code>.
+    * @param checkers
+    *    the list of {@link URLChecker}s, cannot be <code>null</code>.
     *
     * @return
     *    the total number of URLs without success.
     *
     * @throws IllegalArgumentException
-    *    if <code>builder == null || threads == null</code>.
+    *    if <code>builder == null || checkers == null</code>.
     */
-   private static int addCheckElements(FunctionResult builder, List<URLChecker> threads)
+   private static int addCheckElements(FunctionResult builder, List<URLChecker> checkers)
    throws IllegalArgumentException {
 
       // Check preconditions
-      MandatoryArgumentChecker.check("builder", builder, "threads", threads);
+      MandatoryArgumentChecker.check("builder", builder, "checkers", checkers);
 
-      Iterator<URLChecker> threadIterator = threads.iterator();
-      int      errorCount     = 0;
+      int errorCount = 0;
 
-      // Iterate over the threads of target descriptors and create the
+      // Iterate over the checks of target descriptors and create the
       // check element.
-      while (threadIterator.hasNext()) {
-         URLChecker urlThread = threadIterator.next();
+      for (URLChecker checker : checkers) {
          Element eb = new Element("check");
-         eb.setAttribute("url",      urlThread.getURL());
-         eb.setAttribute("duration", Long.toString(urlThread.getDuration()));
-         eb.setAttribute("result",   getResult(urlThread));
-         builder.add(eb);
+         eb.setAttribute("url", checker._url);
+         if (checker.hasRun()) {
+            eb.setAttribute("duration", Long.toString(checker.getDuration()));
+            eb.setAttribute("result",   checker.getResult());
+            if (! checker.getSuccess()) {
+               errorCount++;
+            }
 
-         if (!urlThread.getSuccess()) {
-            errorCount ++;
+         // The check did not finish in time
+         } else {
+            Log.log_3505(checker._url);
+            eb.setAttribute("duration", Long.toString(checker._targetDescriptor.getConnectionTimeOut()));
+            eb.setAttribute("result",   CONNECTION_TIMEOUT);
+            errorCount++;
          }
+         builder.add(eb);
       }
 
       return errorCount;
    }
 
-   /**
-    * Returns the value for the result parameter which is added in the
-    * <code>FunctionBuilder</code>. The value of the result depends on the
-    * success or failure of the passed {@link URLChecker} thread. If the
-    * {@link URLChecker} thread gives a success, the status code of the
-    * {@link URLChecker} thread is used to create the value for result
-    * parameter, otherwise the exception in the {@link URLChecker} thread
-    * determines the value for the result parameter.
-    *
-    * @param urlThread
-    *    the {@link URLChecker} thread for which the result value is to
-    *    detemined, cannot be <code>null</code>.
-    *
-    * @return
-    *    the result message, never <code>null</code>.
-    *
-    * @throws IllegalArgumentException
-    *    if <code>urlThread == null || urlThread.hasRun() == false</code>.
-    */
-   private static String getResult(URLChecker urlThread)
-   throws IllegalArgumentException {
-
-      // Check preconditions
-      MandatoryArgumentChecker.check("urlThread", urlThread);
-      if (! urlThread.hasRun()) {
-         throw new IllegalArgumentException("urlThread().hasRun() == false");
-      }
-
-      if (urlThread.getSuccess()) {
-         return SUCCESS;
-      } else {
-         return getResult(urlThread.getException(), urlThread.getURL());
-      }
-   }
-
    /**
     * Returns the value for the result parameter which is added in the
     * <code>FunctionBuilder</code> when the <code>URLChecker</code> thread
@@ -519,40 +726,21 @@ class CheckLinks {
       return result;
    }
 
-   /**
-    * Creates a new <code>CheckLinks</code> object.
-    */
-   private CheckLinks() {
-      // empty
-   }
-
    /**
     * Tries to connect to a URL provided in the
-    * <code>TargetDescriptor</code>. Runs as a separate thread. The URL is
-    * connected by sending a request associated with an HTTP
+    * <code>TargetDescriptor</code>. Runs in a thread of the executor. The
+    * URL is connected by sending a request associated with an HTTP
     * <code>OPTIONS</code> method. Also calculates the total time to
     * connect to the provided URL.
     *
-    * <p>The following example uses a {@link CheckLinks} object to get the
-    * {@link FunctionResult}.
-    *
-    * <blockquote><pre>TargetDescriptor target = new TargetDescriptor();
-    * target.setURL("www.hotmail.com");
-    *
-    * URLChecker urlThread = new URLChecker(target);
-    * urlThread.start();
-    *
-    * String URL = urlThread.getURL();
-    * int duration = urlThread.getDuration();
-    * boolean success = urlThread.getSuccess();
-    * if (!success) {
-    *    exception = urlThread.getException();
-    * }</pre></blockquote>
+    * <p>The result of a check may be read by several threads, after
+    * {@link #hasRun()} returned <code>true</code> or
+    * {@link #waitTillDone(long)} returned <code>true</code>.
     *
     * @version $Revision: 1.37 $ $Date: 2007/05/22 11:13:26 $
     * @author <a href="mailto:tauseef.rehman@orange-ftgroup.com">Tauseef Rehman</a>
     */
-   private static final class URLChecker extends Thread {
+   private static final class URLChecker implements Runnable {
 
       /**
        * The target descriptor for which the URL needs to be checked. Never
@@ -565,6 +753,17 @@ class CheckLinks {
        */
       private final String _url;
 
+      /**
+       * The HTTP client to use. Never <code>null</code>.
+       */
+      private final HttpClient _client;
+
+      /**
+       * Latch that is released when the check has finished. Never
+       * <code>null</code>.
+       */
+      private final CountDownLatch _done;
+
       /**
        * The exception thrown when accessing the URL. Can be
        * <code>null</code> if the <code>URLChecker</code> has not run yet, or
@@ -579,11 +778,22 @@ class CheckLinks {
        */
       private boolean _success;
 
+      /**
+       * The result message of the URL check, or <code>null</code> if the
+       * <code>URLChecker</code> has not run yet.
+       */
+      private String _result;
+
       /**
        * The time taken to check the URL. Initially <code>-1</code>.
        */
       private long _duration;
 
+      /**
+       * The time the check finished, in milliseconds since the Epoch.
+       */
+      private long _finished;
+
       /**
        * The status code returned when the URL was called. Initially
        * <code>-1</code>, when the <code>URLChecker</code> was not run yet.
@@ -598,18 +808,23 @@ class CheckLinks {
        *    the {@link TargetDescriptor}, whose URL needs to be checked,
        *    cannot be <code>null</code>.
        *
+       * @param client
+       *    the HTTP client to use, cannot be <code>null</code>.
+       *
        * @throws IllegalArgumentException
-       *    if <code>targetDescriptor == null</code>.
+       *    if <code>targetDescriptor == null || client == null</code>.
        */
-      public URLChecker(TargetDescriptor targetDescriptor)
+      URLChecker(TargetDescriptor targetDescriptor, HttpClient client)
       throws IllegalArgumentException {
 
          // Check preconditions
-         MandatoryArgumentChecker.check("targetDescriptor", targetDescriptor);
+         MandatoryArgumentChecker.check("targetDescriptor", targetDescriptor, "client", client);
 
          // Initialize fields
          _targetDescriptor = targetDescriptor;
          _url              = targetDescriptor.getURL();
+         _client           = client;
+         _done             = new CountDownLatch(1);
          _duration         = -1;
          _statusCode       = -1;
 
@@ -620,7 +835,7 @@ class CheckLinks {
       }
 
       /**
-       * Runs this thread. It tries to connect to the URL provided in the
+       * Runs this check. It tries to connect to the URL provided in the
        * {@link TargetDescriptor}. The URL is connected by sending a request
        * associated with an HTTP <code>OPTIONS</code> method. It also
        * calculates the total time to connect to the provided URL and saves
@@ -637,7 +852,7 @@ class CheckLinks {
                + _url + "has already run.");
          }
 
-         // Logging the start of this thread.
+         // Logging the start of this check.
          Log.log_3503(_url,
             _targetDescriptor.getTotalTimeOut(),
             _targetDescriptor.getConnectionTimeOut(),
@@ -648,13 +863,6 @@ class CheckLinks {
 
          HttpMethodBase optionsMethod = null;
          try {
-            HttpClient client = new HttpClient();
-
-            // Set the socket time-out for the URL.
-            client.setTimeout(_targetDescriptor.getSocketTimeOut());
-
-            // Set the connection time-out for the URL.
-            client.setHttpConnectionFactoryTimeout(_targetDescriptor.getConnectionTimeOut());
 
             // Create a new OptionsMethod with the URL, this will represent
             // a request for information about the communication options
@@ -666,26 +874,56 @@ class CheckLinks {
             optionsMethod = new OptionsMethod(_url);
             optionsMethod.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, NO_RETRIES);
 
+            // Set the socket time-out for the URL. The connection time-out
+            // is set on the connections of the client.
+            optionsMethod.getParams().setSoTimeout(_targetDescriptor.getSocketTimeOut());
+
             // Execute the OptionsMethod.
-            _statusCode = client.executeMethod(optionsMethod);
+            _statusCode = _client.executeMethod(optionsMethod);
 
             // Successfully executed, so set the success as true.
             _success = true;
+            _result  = SUCCESS;
          } catch (Throwable exception) {
 
             // Save the exception and set the success as false as the
             // execution was failed.
             _exception = exception;
-            _success = false;
+            _success   = false;
+            _result    = CheckLinks.getResult(exception, _url);
          } finally {
             releaseConnection(optionsMethod);
          }
 
          // Calculate the total time taken to check the URL.
-         _duration = System.currentTimeMillis() - startTime;
+         _finished = System.currentTimeMillis();
+         _duration = _finished - startTime;
 
-         // Logging the stopping of this thread.
+         // Logging the end of this check.
          Log.log_3504(_url, _duration);
+
+         _done.countDown();
+      }
+
+      /**
+       * Marks this check as a connection time-out without running it.
+       *
+       * @throws IllegalStateException
+       *    if this <code>URLChecker</code> has already run.
+       */
+      void timedOut() throws IllegalStateException {
+
+         // Check preconditions
+         if (hasRun()) {
+            throw new IllegalStateException("This URLChecker for URL: "
+               + _url + "has already run.");
+         }
+
+         _success  = false;
+         _result   = CONNECTION_TIMEOUT;
+         _duration = _targetDescriptor.getConnectionTimeOut();
+         _finished = System.currentTimeMillis();
+         _done.countDown();
       }
 
       /**
@@ -722,7 +960,29 @@ class CheckLinks {
        *    or <code>false</code> otherwise.
        */
       boolean hasRun() {
-         return (_duration >= 0);
+         return _done.getCount() == 0L;
+      }
+
+      /**
+       * Waits until this <code>URLChecker</code> has run.
+       *
+       * @param timeout
+       *    the maximum time to wait in milliseconds, or <code>0L</code> to
+       *    wait without time-out.
+       *
+       * @return
+       *    <code>true</code> if this <code>URLChecker</code> has run,
+       *    <code>false</code> if the time-out elapsed.
+       *
+       * @throws InterruptedException
+       *    if the current thread was interrupted while waiting.
+       */
+      boolean waitTillDone(long timeout) throws InterruptedException {
+         if (timeout <= 0L) {
+            _done.await();
+            return true;
+         }
+         return _done.await(timeout, TimeUnit.MILLISECONDS);
       }
 
       /**
@@ -745,8 +1005,7 @@ class CheckLinks {
        * Returns the total time it took to connect to the URL.
        *
        * @return
-       *    the total duration in milliseconds, or <code>-1</code> if this
-       *    thread has not run.
+       *    the total duration in milliseconds.
        *
        * @throws IllegalStateException
        *    if this <code>URLChecker</code> has not run yet.
@@ -760,7 +1019,7 @@ class CheckLinks {
        * Returns the flag indicating if the URL was connected successfully.
        *
        * @return
-       *    the success flag, Is <code>true</code> if this thread has run and
+       *    the success flag, Is <code>true</code> if this check has run and
        *    was successful. If either of these conditions is not met,
        *    then <code>false</code>.
        *
@@ -773,32 +1032,35 @@ class CheckLinks {
       }
 
       /**
-       * Returns the status code of the method execution.
+       * Returns the value for the result parameter which is added in the
+       * <code>FunctionBuilder</code>. If the check was successful, this is
+       * <code>"Success"</code>, otherwise the exception determines the
+       * value, see {@link CheckLinks#getResult(Throwable,String)}.
        *
        * @return
-       *    the status code returned when the URL was called. <code>-1</code>,
-       *    when this thread has not run.
+       *    the result message, never <code>null</code>.
        *
        * @throws IllegalStateException
        *    if this <code>URLChecker</code> has not run yet.
        */
-      public int getStatusCode() throws IllegalStateException {
+      public String getResult() throws IllegalStateException {
          assertHasRun();
-         return _statusCode;
+         return _result;
       }
 
       /**
-       * Returns the URL which was connected.
+       * Returns the status code of the method execution.
        *
        * @return
-       *    the URL, never <code>null</code>.
+       *    the status code returned when the URL was called. <code>-1</code>,
+       *    when the call failed.
        *
        * @throws IllegalStateException
        *    if this <code>URLChecker</code> has not run yet.
        */
-      public String getURL() throws IllegalStateException {
+      public int getStatusCode() throws IllegalStateException {
          assertHasRun();
-         return _url;
+         return _statusCode;
       }
 
       /**
@@ -814,28 +1076,5 @@ class CheckLinks {
          assertHasRun();
          return _exception;
       }
-
-      /**
-       * Enforces a time-out on the <code>URLChecker</code> thread. Actualy
-       * the thread is allowed to run and ignored. So set the duration as the
-       * initial connection time-out value and create a new
-       * {@link ConnectException}.
-       */
-      public void enforceTimeout() {
-         if (! hasRun()) {
-
-            // Set the duration as was defined for connection time-out
-            _duration = _targetDescriptor.getConnectionTimeOut();
-
-            // Create a new ConnectException.
-            _exception = new ConnectException("Connect timed out");
-
-            // XXX: Currently it is observed that mostly the URLs which are
-            // expected to throw a ConnectTimeoutException keeps on running
-            // but we need to take care of the situation when because of some
-            // other reason the thread is still active.
-         }
-      }
-
    }
 }
@@ -677,15 +677,14 @@ final class ConfigManager {
 
    /**
     * Re-initializes the configuration file listener if there is no file
-    * watcher; otherwise interrupts the file watcher.
+    * watcher; otherwise requests the file watcher to check the files
+    * immediately.
     */
    void reloadPropertiesIfChanged() {
       if (_configFileWatcher == null) {
          _configFileListener.reinit();
       } else {
-         synchronized (_configFileWatcher) {
-            _configFileWatcher.notifyAll();
-         }
+         _configFileWatcher.requestCheck();
       }
    }
 
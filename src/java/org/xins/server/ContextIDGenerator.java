@@ -6,7 +6,9 @@
  */
 package org.xins.server;
 
-import java.util.Random;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.xins.common.MandatoryArgumentChecker;
 import org.xins.common.collections.PropertyReader;
@@ -15,7 +17,6 @@ import org.xins.common.collections.MissingRequiredPropertyException;
 import org.xins.common.manageable.Manageable;
 import org.xins.common.manageable.InitializationException;
 import org.xins.common.net.IPAddressUtils;
-import org.xins.common.text.DateConverter;
 import org.xins.common.text.TextUtils;
 
 /**
@@ -40,10 +41,18 @@ import org.xins.common.text.TextUtils;
  *        <code>"2f4e6"</code>.
  * </ul>
  *
+ * <p>Generating identifiers does not lock: the formatted date is cached up
+ * to the minute in an immutable object and the pseudo-random numbers are
+ * derived from an atomic counter. No state is kept per thread, so no
+ * objects are left behind on the threads of the servlet container.
+ *
+ * <p>Disclaimer: This class should only be used by XINS self.
+ * This class can be removed from XINS at any time.
+ *
  * @version $Revision: 1.28 $ $Date: 2007/04/25 14:13:18 $
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
  */
-final class ContextIDGenerator extends Manageable {
+public final class ContextIDGenerator extends Manageable {
 
    /**
     * The hexadecimal digits.
@@ -53,6 +62,16 @@ final class ContextIDGenerator extends Manageable {
       '8', '9', 'a', 'b', 'c', 'd', 'e', 'f',
    };
 
+   /**
+    * The number of milliseconds in a minute.
+    */
+   private static final long MINUTE = 60000L;
+
+   /**
+    * Counter from which the pseudo-random numbers are derived.
+    */
+   private static final AtomicLong SEED_SOURCE = new AtomicLong(System.nanoTime());
+
    /**
     * The name of the runtime property that hostname for the server
     * running the API.
@@ -81,15 +100,10 @@ final class ContextIDGenerator extends Manageable {
    private int _prefixLength;
 
    /**
-    * A date converter. Never <code>null</code>. Needs to be locked before
-    * usage.
+    * The minute in which the last context identifier was generated, or
+    * <code>null</code> if none was generated yet.
     */
-   private final DateConverter _dateConverter;
-
-   /**
-    * A pseudo-random number generator. Never <code>null</code>
-    */
-   private final Random _random;
+   private volatile Minute _minute;
 
    /**
     * Constructs a new <code>ContextIDGenerator</code>.
@@ -100,7 +114,7 @@ final class ContextIDGenerator extends Manageable {
     * @throws IllegalArgumentException
     *    if <code>apiName == null</code>.
     */
-   ContextIDGenerator(String apiName)
+   public ContextIDGenerator(String apiName)
    throws IllegalArgumentException {
 
       // Check preconditions
@@ -109,12 +123,6 @@ final class ContextIDGenerator extends Manageable {
       // Store API name and determine host name
       _apiName  = apiName;
       _hostname = IPAddressUtils.getLocalHost();
-
-      // Create a DateConverter that will not prepend the century
-      _dateConverter = new DateConverter(false);
-
-      // Initialize a pseudo-random number generator
-      _random = new Random();
    }
 
    /**
@@ -163,7 +171,7 @@ final class ContextIDGenerator extends Manageable {
     *    if this object is currently not usable, i.e. in the
     *    {@link #USABLE} state.
     */
-   String generate() throws IllegalStateException {
+   public String generate() throws IllegalStateException {
 
       // Check preconditions
       assertUsable();
@@ -176,15 +184,28 @@ final class ContextIDGenerator extends Manageable {
       // Copy the template into the buffer
       System.arraycopy(_prefixBuffer, 0, buffer, 0, prefixLength);
 
-      // Determine the current time and append the timestamp
+      // Determine the current time, the date up to the minute is cached
       long date = System.currentTimeMillis();
-      synchronized (_dateConverter) {
-         _dateConverter.format(date, buffer, prefixLength);
+      Minute minute = _minute;
+      if (minute == null || date < minute._start || date - minute._start >= MINUTE) {
+         minute = new Minute(date);
+         _minute = minute;
       }
 
+      // Append the timestamp
+      System.arraycopy(minute._chars, 0, buffer, prefixLength, 11);
+      int millis  = (int) (date - minute._start);
+      int seconds = millis / 1000;
+      millis %= 1000;
+      int pos = prefixLength + 11;
+      buffer[pos++] = (char) ('0' + seconds / 10);
+      buffer[pos++] = (char) ('0' + seconds % 10);
+      buffer[pos++] = (char) ('0' + millis / 100);
+      buffer[pos++] = (char) ('0' + millis / 10 % 10);
+      buffer[pos++] = (char) ('0' + millis % 10);
+
       // Append 5 pseudo-random hex digits
-      int random = _random.nextInt() & 0x0fffffff;
-      int pos = prefixLength + 16;
+      int random = nextRandom();
       buffer[pos++] = ':';
       buffer[pos++] = HEX_DIGITS[ random        & 15];
       buffer[pos++] = HEX_DIGITS[(random >>  4) & 15];
@@ -195,4 +216,55 @@ final class ContextIDGenerator extends Manageable {
       // Log and return the context ID
       return new String(buffer);
    }
+
+   /**
+    * Returns the next pseudo-random number. The value of a shared counter is
+    * incremented and its bits are mixed, which does not need any state per
+    * thread.
+    *
+    * @return
+    *    the next pseudo-random number.
+    */
+   private static int nextRandom() {
+      long seed = SEED_SOURCE.addAndGet(0x9E3779B97F4A7C15L);
+      seed = (seed ^ (seed >>> 33)) * 0xFF51AFD7ED558CCDL;
+      seed = (seed ^ (seed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+      seed ^= seed >>> 33;
+      return (int) (seed >>> 32);
+   }
+
+   /**
+    * A minute with its formatted date and time. Instances of this class are
+    * immutable.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class Minute {
+
+      /**
+       * The start of the minute, as a number of milliseconds since the
+       * Epoch.
+       */
+      private final long _start;
+
+      /**
+       * The start of the minute in the format <code>yyMMdd-HHmm</code>.
+       * Never <code>null</code>.
+       */
+      private final char[] _chars;
+
+      /**
+       * Constructs a new <code>Minute</code> for the minute that contains
+       * the specified date.
+       *
+       * @param date
+       *    the date, as a number of milliseconds since the Epoch.
+       */
+      Minute(long date) {
+         _start = date - date % MINUTE;
+         _chars = new SimpleDateFormat("yyMMdd-HHmm").format(new Date(_start)).toCharArray();
+      }
+   }
 }
@@ -24,6 +24,8 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.log4j.NDC;
 import org.apache.oro.text.regex.MalformedPatternException;
 import org.apache.oro.text.regex.Pattern;
@@ -37,6 +39,7 @@ import org.xins.common.Utils;
 import org.xins.common.collections.InvalidPropertyValueException;
 import org.xins.common.collections.MissingRequiredPropertyException;
 import org.xins.common.collections.PropertyReader;
+import org.xins.common.collections.PropertyReaderUtils;
 import org.xins.common.io.IOReader;
 import org.xins.common.manageable.InitializationException;
 import org.xins.common.spec.APISpec;
@@ -67,6 +70,41 @@ final class Engine {
     */
    private static final String JMX_PROPERTY = "org.xins.server.jmx";
 
+   /**
+    * Property that indicates whether files uploaded with multipart requests
+    * are passed to the functions as {@link UploadedFile} objects instead of
+    * hexadecimal parameter values.
+    */
+   static final String UPLOAD_STREAMING_PROPERTY = "org.xins.server.upload.streaming";
+
+   /**
+    * Property that specifies the size above which uploaded files are stored
+    * on disk instead of in memory, in bytes.
+    */
+   static final String UPLOAD_THRESHOLD_PROPERTY = "org.xins.server.upload.threshold";
+
+   /**
+    * Property that specifies the maximum size of a multipart request, in
+    * bytes.
+    */
+   static final String UPLOAD_MAX_SIZE_PROPERTY = "org.xins.server.upload.maxsize";
+
+   /**
+    * Property that specifies the directory where large uploaded files are
+    * stored.
+    */
+   static final String UPLOAD_DIRECTORY_PROPERTY = "org.xins.server.upload.directory";
+
+   /**
+    * The default size above which uploaded files are stored on disk.
+    */
+   private static final int DEFAULT_UPLOAD_THRESHOLD = 64 * 1024;
+
+   /**
+    * The default maximum size of a multipart request.
+    */
+   private static final int DEFAULT_UPLOAD_MAX_SIZE = 10 * 1024 * 1024;
+
    /**
     * The state machine for this engine. Never <code>null</code>.
     */
@@ -122,6 +160,18 @@ final class Engine {
     */
    private String _smd;
 
+   /**
+    * The handler for multipart requests. This field is <code>null</code>
+    * until the API is initialized.
+    */
+   private volatile ServletFileUpload _upload;
+
+   /**
+    * Flag that indicates whether uploaded files are passed to the functions
+    * as {@link UploadedFile} objects.
+    */
+   private volatile boolean _streamingUploads;
+
    /**
     * Constructs a new <code>Engine</code> object.
     *
@@ -189,6 +239,17 @@ final class Engine {
       }
    }
 
+   /**
+    * Retrieves the manager of the calling conventions.
+    *
+    * @return
+    *    the {@link CallingConventionManager}, or <code>null</code> if this
+    *    engine is not bootstrapped yet.
+    */
+   CallingConventionManager getConventionManager() {
+      return _conventionManager;
+   }
+
    /**
     * Retrieves the container <code>ConfigManager</code>.
     *
@@ -345,6 +406,9 @@ final class Engine {
          // Initialize the diagnostic context ID generator
          _contextIDGenerator.init(properties);
 
+         // Determine how multipart requests are handled
+         initUpload(properties);
+
          // Initialize the API
          _api.init(properties);
 
@@ -440,6 +504,38 @@ final class Engine {
       return pattern;
    }
 
+   /**
+    * Determines how multipart requests are handled.
+    *
+    * @param properties
+    *    the runtime properties to retrieve information from, cannot be
+    *    <code>null</code>.
+    *
+    * @throws InvalidPropertyValueException
+    *    if the value of one of the upload properties is considered invalid.
+    */
+   private void initUpload(PropertyReader properties)
+   throws InvalidPropertyValueException {
+
+      boolean streaming = PropertyReaderUtils.getBooleanProperty(properties, UPLOAD_STREAMING_PROPERTY, false);
+      int     threshold = PropertyReaderUtils.getIntProperty(properties, UPLOAD_THRESHOLD_PROPERTY, 0, Integer.MAX_VALUE, DEFAULT_UPLOAD_THRESHOLD);
+      int     maxSize   = PropertyReaderUtils.getIntProperty(properties, UPLOAD_MAX_SIZE_PROPERTY, 1, Integer.MAX_VALUE, DEFAULT_UPLOAD_MAX_SIZE);
+
+      String directoryName = properties.get(UPLOAD_DIRECTORY_PROPERTY);
+      File   directory     = null;
+      if (! TextUtils.isEmpty(directoryName)) {
+         directory = new File(directoryName);
+         if (! directory.isDirectory()) {
+            throw new InvalidPropertyValueException(UPLOAD_DIRECTORY_PROPERTY, directoryName, "Not a directory.");
+         }
+      }
+
+      ServletFileUpload upload = new ServletFileUpload(new DiskFileItemFactory(threshold, directory));
+      upload.setSizeMax(maxSize);
+      _streamingUploads = streaming;
+      _upload           = upload;
+   }
+
    /**
     * Handles a request to this servlet (wrapper method). If any of the
     * arguments is <code>null</code>, then the behaviour of this method is
@@ -462,6 +558,22 @@ final class Engine {
          request.setCharacterEncoding("UTF-8");
       }
 
+      // Parse multipart requests, large uploaded files are stored on disk
+      MultipartServletRequestWrapper multipart = null;
+      ServletFileUpload upload = _upload;
+      if (upload != null && ServletFileUpload.isMultipartContent(request)) {
+         try {
+            multipart = new MultipartServletRequestWrapper(request, upload, _streamingUploads);
+         } catch (IOException exception) {
+            int statusCode = MultipartServletRequestWrapper.isSizeLimitExceeded(exception)
+                           ? HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE
+                           : HttpServletResponse.SC_BAD_REQUEST;
+            handleUnprocessableRequest(request, response, statusCode, exception.getMessage(), exception);
+            return;
+         }
+         request = multipart;
+      }
+
       // Associate the current diagnostic context identifier with this thread
       // This method will call NDC.push(contextID) if appropriate
       pushContextID(request);
@@ -475,10 +587,13 @@ final class Engine {
          Log.log_3003(exception);
 
          // Finally always disassociate the diagnostic context identifier from
-         // this thread
+         // this thread and delete the uploaded files
       } finally {
          NDC.pop();
          NDC.remove();
+         if (multipart != null) {
+            multipart.cleanUp();
+         }
       }
    }
 
@@ -550,9 +665,13 @@ final class Engine {
    private boolean isValidContextID(String contextID) {
 
       // If a filter is specified, validate that the ID matches it
-      if (_contextIDPattern != null) {
+      Pattern pattern = _contextIDPattern;
+      if (pattern != null) {
+
+         // A Perl5Matcher is not thread-safe; it is not kept per thread
+         // either, since that would hold on to the class loader of the API
          Perl5Matcher matcher = new Perl5Matcher();
-         return matcher.matches(contextID, _contextIDPattern);
+         return matcher.matches(contextID, pattern);
 
          // No filter is specified, everything is allowed
       } else {
@@ -860,6 +979,11 @@ final class Engine {
          return;
       }
 
+      // Pass the uploaded files to the function
+      if (httpRequest instanceof MultipartServletRequestWrapper) {
+         xinsRequest.setUploadedFiles(((MultipartServletRequestWrapper) httpRequest).getUploadedFiles());
+      }
+
       // Do not handle the call if the API is disabled
       if (_api.isDisabled() && !"_EnableAPI".equals(xinsRequest.getFunctionName())) {
          httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
@@ -959,7 +1083,7 @@ final class Engine {
          methods = (String[]) supportedMethods.toArray(new String[supportedMethods.size()]);
       }
       String methodsList = "OPTIONS";
-      for (int i = 0; i < methods.length; i++) {
+      for (int i = 0; i < methods.length; i++) {
 
          methodsList += ", " + methods[i];
       }
@@ -1012,7 +1136,8 @@ final class Engine {
 
    /**
     * Re-initializes the configuration file listener if there is no file
-    * watcher; otherwise interrupts the file watcher.
+    * watcher; otherwise requests the file watcher to check the files
+    * immediately.
     */
    void reloadPropertiesIfChanged() {
       _configManager.reloadPropertiesIfChanged();
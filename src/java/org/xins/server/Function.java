@@ -6,6 +6,8 @@
  */
 package org.xins.server;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.xins.common.FormattedParameters;
 import org.xins.common.MandatoryArgumentChecker;
 import org.xins.common.manageable.Manageable;
@@ -51,18 +53,13 @@ public abstract class Function extends Manageable {
    /**
     * Flag that indicates if this function is currently accessible.
     */
-   private boolean _enabled;
-
-   /**
-    * Lock object for <code>_callCount</code>.
-    * This field is never <code>null</code>.
-    */
-   private final Object _callCountLock;
+   private volatile boolean _enabled;
 
    /**
     * The total number of calls executed up until now.
+    * This field is never <code>null</code>.
     */
-   private int _callCount;
+   private final AtomicInteger _callCount;
 
    /**
     * Statistics object linked to this function.
@@ -95,7 +92,7 @@ public abstract class Function extends Manageable {
                                      "version", version);
 
       // Initialize fields
-      _callCountLock = new Object();
+      _callCount     = new AtomicInteger();
       _statistics    = new FunctionStatistics();
       _api           = api;
       _name          = name;
@@ -182,11 +179,7 @@ public abstract class Function extends Manageable {
     *    the assigned call ID, &gt;= 0.
     */
    final int assignCallID() {
-      int callID;
-      synchronized (_callCountLock) {
-         callID = _callCount++;
-      }
-      return callID;
+      return _callCount.getAndIncrement();
    }
 
    /**
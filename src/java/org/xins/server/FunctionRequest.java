@@ -6,6 +6,9 @@
  */
 package org.xins.server;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.xins.common.MandatoryArgumentChecker;
 import org.xins.common.collections.PropertyReader;
 import org.xins.common.collections.PropertyReaderUtils;
@@ -47,6 +50,12 @@ public class FunctionRequest {
     */
    private final boolean _skipFunctionCall;
 
+   /**
+    * The files uploaded with the request, indexed by field name. Never
+    * <code>null</code>.
+    */
+   private Map<String,UploadedFile> _uploadedFiles = Collections.emptyMap();
+
    /**
     * Creates a new <code>FunctionRequest</code> with just a function name.
     *
@@ -195,4 +204,41 @@ public class FunctionRequest {
    public boolean shouldSkipFunctionCall() {
       return _skipFunctionCall;
    }
+
+   /**
+    * Gets a file uploaded with the request. Uploaded files are only
+    * available for multipart requests if streaming uploads are enabled.
+    *
+    * @param name
+    *    the name of the form field, cannot be <code>null</code>.
+    *
+    * @return
+    *    the uploaded file, or <code>null</code> if there is none.
+    *
+    * @since XINS 3.0
+    */
+   public UploadedFile getUploadedFile(String name) {
+      return _uploadedFiles.get(name);
+   }
+
+   /**
+    * Gets the files uploaded with the request.
+    *
+    * @return
+    *    the uploaded files, indexed by field name, never <code>null</code>.
+    */
+   Map<String,UploadedFile> getUploadedFiles() {
+      return _uploadedFiles;
+   }
+
+   /**
+    * Sets the files uploaded with the request.
+    *
+    * @param uploadedFiles
+    *    the uploaded files, indexed by field name, cannot be
+    *    <code>null</code>.
+    */
+   void setUploadedFiles(Map<String,UploadedFile> uploadedFiles) {
+      _uploadedFiles = uploadedFiles;
+   }
 }
@@ -0,0 +1,373 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+
+import org.xins.common.collections.PropertyReader;
+import org.xins.common.xml.Element;
+
+/**
+ * SAX reader that generates the events for the XML of a function result, as
+ * generated by {@link CallResultOutputter}, without serializing and parsing
+ * it. The input source passed to the <code>parse</code> methods is ignored.
+ *
+ * <p>This reader can be used as the source of an XSLT transformation:
+ *
+ * <blockquote><pre>new SAXSource(new FunctionResultXMLReader(result), new InputSource())</pre></blockquote>
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class FunctionResultXMLReader implements XMLReader {
+
+   /**
+    * The name of the SAX feature that indicates whether namespace URIs and
+    * local names are reported.
+    */
+   private static final String NAMESPACES_FEATURE = "http://xml.org/sax/features/namespaces";
+
+   /**
+    * The name of the SAX feature that indicates whether namespace
+    * declarations are reported as attributes.
+    */
+   private static final String NAMESPACE_PREFIXES_FEATURE = "http://xml.org/sax/features/namespace-prefixes";
+
+   /**
+    * The name of the SAX property for the lexical handler. The property is
+    * accepted, but no lexical events are generated.
+    */
+   private static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+
+   /**
+    * Empty attributes.
+    */
+   private static final AttributesImpl NO_ATTRIBUTES = new AttributesImpl();
+
+   /**
+    * The result to generate the events for. Never <code>null</code>.
+    */
+   private final FunctionResult _result;
+
+   /**
+    * Whether namespace declarations are reported as attributes.
+    */
+   private boolean _namespacePrefixes;
+
+   /**
+    * The content handler, can be <code>null</code>.
+    */
+   private ContentHandler _contentHandler;
+
+   /**
+    * The DTD handler, can be <code>null</code>.
+    */
+   private DTDHandler _dtdHandler;
+
+   /**
+    * The entity resolver, can be <code>null</code>.
+    */
+   private EntityResolver _entityResolver;
+
+   /**
+    * The error handler, can be <code>null</code>.
+    */
+   private ErrorHandler _errorHandler;
+
+   /**
+    * The lexical handler, can be <code>null</code>.
+    */
+   private Object _lexicalHandler;
+
+   /**
+    * Constructs a new <code>FunctionResultXMLReader</code>.
+    *
+    * @param result
+    *    the result to generate the SAX events for, cannot be
+    *    <code>null</code>.
+    */
+   FunctionResultXMLReader(FunctionResult result) {
+      _result = result;
+   }
+
+   public boolean getFeature(String name) throws SAXNotRecognizedException {
+      if (NAMESPACES_FEATURE.equals(name)) {
+         return true;
+      } else if (NAMESPACE_PREFIXES_FEATURE.equals(name)) {
+         return _namespacePrefixes;
+      }
+      throw new SAXNotRecognizedException(name);
+   }
+
+   public void setFeature(String name, boolean value) throws SAXNotRecognizedException {
+      if (NAMESPACE_PREFIXES_FEATURE.equals(name)) {
+         _namespacePrefixes = value;
+      } else if (! NAMESPACES_FEATURE.equals(name) || ! value) {
+         throw new SAXNotRecognizedException(name);
+      }
+   }
+
+   public Object getProperty(String name) throws SAXNotRecognizedException {
+      if (LEXICAL_HANDLER_PROPERTY.equals(name)) {
+         return _lexicalHandler;
+      }
+      throw new SAXNotRecognizedException(name);
+   }
+
+   public void setProperty(String name, Object value) throws SAXNotRecognizedException {
+      if (LEXICAL_HANDLER_PROPERTY.equals(name)) {
+         _lexicalHandler = value;
+      } else {
+         throw new SAXNotRecognizedException(name);
+      }
+   }
+
+   public void setEntityResolver(EntityResolver resolver) {
+      _entityResolver = resolver;
+   }
+
+   public EntityResolver getEntityResolver() {
+      return _entityResolver;
+   }
+
+   public void setDTDHandler(DTDHandler handler) {
+      _dtdHandler = handler;
+   }
+
+   public DTDHandler getDTDHandler() {
+      return _dtdHandler;
+   }
+
+   public void setContentHandler(ContentHandler handler) {
+      _contentHandler = handler;
+   }
+
+   public ContentHandler getContentHandler() {
+      return _contentHandler;
+   }
+
+   public void setErrorHandler(ErrorHandler handler) {
+      _errorHandler = handler;
+   }
+
+   public ErrorHandler getErrorHandler() {
+      return _errorHandler;
+   }
+
+   public void parse(String systemId) throws SAXException {
+      parse();
+   }
+
+   public void parse(InputSource input) throws SAXException {
+      parse();
+   }
+
+   /**
+    * Generates the SAX events for the function result.
+    *
+    * @throws SAXException
+    *    if the content handler throws an exception.
+    */
+   private void parse() throws SAXException {
+      ContentHandler handler = _contentHandler;
+      if (handler == null) {
+         return;
+      }
+
+      handler.startDocument();
+
+      // The <result> element, with the error code, if any
+      AttributesImpl resultAttributes = NO_ATTRIBUTES;
+      String code = _result.getErrorCode();
+      if (code != null) {
+         resultAttributes = new AttributesImpl();
+         resultAttributes.addAttribute("", "errorcode", "errorcode", "CDATA", code);
+      }
+      handler.startElement("", "result", "result", resultAttributes);
+
+      // The output parameters, if any
+      PropertyReader params = _result.getParameters();
+      if (params != null) {
+         AttributesImpl paramAttributes = new AttributesImpl();
+         paramAttributes.addAttribute("", "name", "name", "CDATA", "");
+         for (String name : params.names()) {
+            if (name != null && name.length() > 0) {
+               String value = params.get(name);
+               if (value != null && value.length() > 0) {
+                  paramAttributes.setValue(0, name);
+                  handler.startElement("", "param", "param", paramAttributes);
+                  characters(handler, value);
+                  handler.endElement("", "param", "param");
+               }
+            }
+         }
+      }
+
+      // The data section, if any
+      Element dataElement = _result.getDataElement();
+      if (dataElement != null) {
+         element(handler, dataElement);
+      }
+
+      handler.endElement("", "result", "result");
+      handler.endDocument();
+   }
+
+   /**
+    * Generates the SAX events for an element.
+    *
+    * @param handler
+    *    the content handler, cannot be <code>null</code>.
+    *
+    * @param element
+    *    the element, cannot be <code>null</code>.
+    *
+    * @throws SAXException
+    *    if the content handler throws an exception.
+    */
+   private void element(ContentHandler handler, Element element)
+   throws SAXException {
+
+      String prefix       = element.getNamespacePrefix();
+      String namespaceURI = element.getNamespaceURI();
+      String localName    = element.getLocalName();
+      String qName        = (prefix == null) ? localName : prefix + ':' + localName;
+
+      // Collect the namespace declarations and the attributes
+      List<String> declared = null;
+      AttributesImpl attributes = NO_ATTRIBUTES;
+      if (namespaceURI != null) {
+         declared = declare(null, prefix == null ? "" : prefix, namespaceURI);
+      }
+      if (element.getAttributeCount() > 0) {
+         attributes = new AttributesImpl();
+         for (Map.Entry<Element.QualifiedName,String> entry : element.getAttributeMap().entrySet()) {
+            Element.QualifiedName qn = entry.getKey();
+            String attrPrefix = qn.getNamespacePrefix();
+            String attrURI    = qn.getNamespaceURI();
+            String attrLocal  = qn.getLocalName();
+            String value      = entry.getValue();
+
+            if (value == null) {
+               continue;
+            }
+
+            // Namespace declarations are not attributes in SAX
+            if ("xmlns".equals(attrPrefix)) {
+               declared = declare(declared, attrLocal, value);
+            } else if (attrPrefix == null && "xmlns".equals(attrLocal)) {
+               declared = declare(declared, "", value);
+            } else if (attrURI != null && attrPrefix != null) {
+               declared = declare(declared, attrPrefix, attrURI);
+               attributes.addAttribute(attrURI, attrLocal, attrPrefix + ':' + attrLocal, "CDATA", value);
+            } else {
+               attributes.addAttribute(attrURI == null ? "" : attrURI, attrLocal, attrLocal, "CDATA", value);
+            }
+         }
+      }
+
+      // Report the namespace declarations, also as attributes if requested
+      if (declared != null) {
+         if (_namespacePrefixes) {
+            if (attributes == NO_ATTRIBUTES) {
+               attributes = new AttributesImpl();
+            }
+            for (int i = 0; i < declared.size(); i += 2) {
+               String declaredPrefix = declared.get(i);
+               String attrQName = (declaredPrefix.length() == 0) ? "xmlns" : "xmlns:" + declaredPrefix;
+               attributes.addAttribute("", "", attrQName, "CDATA", declared.get(i + 1));
+            }
+         }
+         for (int i = 0; i < declared.size(); i += 2) {
+            handler.startPrefixMapping(declared.get(i), declared.get(i + 1));
+         }
+      }
+
+      String uri = (namespaceURI == null) ? "" : namespaceURI;
+      handler.startElement(uri, localName, qName, attributes);
+
+      // The contained elements and text snippets
+      if (element.getChildCount() > 0) {
+         for (Object child : element.getChildren()) {
+            if (child instanceof Element) {
+               element(handler, (Element) child);
+            } else {
+               characters(handler, (String) child);
+            }
+         }
+      }
+
+      handler.endElement(uri, localName, qName);
+      if (declared != null) {
+         for (int i = 0; i < declared.size(); i += 2) {
+            handler.endPrefixMapping(declared.get(i));
+         }
+      }
+   }
+
+   /**
+    * Adds a namespace declaration, unless the prefix is declared already.
+    *
+    * @param declared
+    *    the prefixes and namespace URIs declared so far, alternately, or
+    *    <code>null</code> if there are none.
+    *
+    * @param prefix
+    *    the prefix, empty for the default namespace, cannot be
+    *    <code>null</code>.
+    *
+    * @param namespaceURI
+    *    the namespace URI, cannot be <code>null</code>.
+    *
+    * @return
+    *    the declared prefixes and namespace URIs, never <code>null</code>.
+    */
+   private static List<String> declare(List<String> declared, String prefix, String namespaceURI) {
+      if (declared == null) {
+         declared = new ArrayList<String>(2);
+      }
+      for (int i = 0; i < declared.size(); i += 2) {
+         if (declared.get(i).equals(prefix)) {
+            return declared;
+         }
+      }
+      declared.add(prefix);
+      declared.add(namespaceURI);
+      return declared;
+   }
+
+   /**
+    * Reports character data.
+    *
+    * @param handler
+    *    the content handler, cannot be <code>null</code>.
+    *
+    * @param text
+    *    the text, cannot be <code>null</code>.
+    *
+    * @throws SAXException
+    *    if the content handler throws an exception.
+    */
+   private static void characters(ContentHandler handler, String text)
+   throws SAXException {
+      char[] chars = text.toCharArray();
+      handler.characters(chars, 0, chars.length);
+   }
+}
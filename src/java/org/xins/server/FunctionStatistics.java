@@ -6,19 +6,26 @@
  */
 package org.xins.server;
 
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.TimeZone;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.NDC;
 
-import org.xins.common.VarianceComputer;
+import org.xins.common.LatencyHistogram;
+import org.xins.common.StripedVarianceComputer;
 import org.xins.common.text.DateConverter;
 import org.xins.common.xml.Element;
 
 /**
  * Statistics of a function.
  *
+ * <p>Recording a call hardly contends: the mean and the variance are
+ * computed over several stripes and the durations are recorded in a
+ * {@link LatencyHistogram}, from which the 50th, 90th, 99th and 99.9th
+ * percentiles are computed.
+ *
  * <p>The implementation of this class is thread-safe.
  *
  * @version $Revision: 1.23 $ $Date: 2008/07/04 10:22:51 $
@@ -39,13 +46,24 @@ class FunctionStatistics {
     */
    private static final TimeZone TIME_ZONE = TimeZone.getDefault();
 
+   /**
+    * The percentiles returned for each statistic.
+    */
+   private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+   /**
+    * The names of the attributes for the percentiles in
+    * {@link #PERCENTILES}.
+    */
+   private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
    /**
     * Constructs a new <code>FunctionStatistics</code> instance.
     */
    FunctionStatistics() {
       _successful          = new Statistic();
       _unsuccessful        = new Statistic();
-      _errorCodeStatistics = new TreeMap<String,Statistic>();
+      _errorCodeStatistics = new ConcurrentHashMap<String,Statistic>();
    }
 
    /**
@@ -59,11 +77,11 @@ class FunctionStatistics {
    private final Statistic _unsuccessful;
 
    /**
-    * Statistics over the unsuccessful calls sorted by error code.
+    * Statistics over the unsuccessful calls per error code.
     * The key of the map is the error code and the Statistic object
     * corresponding to the error code. Never <code>null</code>.
     */
-   private final TreeMap<String,Statistic> _errorCodeStatistics;
+   private final ConcurrentHashMap<String,Statistic> _errorCodeStatistics;
 
    /**
     * Callback method that may be called after a call to this function. This
@@ -88,28 +106,32 @@ class FunctionStatistics {
     *    the duration is computed as the difference in between
     *    the start time and the time that this method has been invoked.
     */
-   final synchronized long recordCall(long    start,
-                                      boolean success,
-                                      String  errorCode) {
+   final long recordCall(long    start,
+                         boolean success,
+                         String  errorCode) {
 
       long duration = System.currentTimeMillis() - start;
+      Sample sample = new Sample(start, duration, NDC.peek());
 
       // Call succeeded
       if (success) {
 
-         _successful.recordCall(start, duration);
+         _successful.recordCall(sample);
 
       // Call failed
       } else {
 
-         _unsuccessful.recordCall(start, duration);
+         _unsuccessful.recordCall(sample);
 
          Statistic errorCodeStat = _errorCodeStatistics.get(errorCode);
          if (errorCodeStat == null) {
-            errorCodeStat = new Statistic();
-            _errorCodeStatistics.put(errorCode, errorCodeStat);
+            Statistic newStat = new Statistic();
+            errorCodeStat = _errorCodeStatistics.putIfAbsent(errorCode, newStat);
+            if (errorCodeStat == null) {
+               errorCodeStat = newStat;
+            }
          }
-         errorCodeStat.recordCall(start, duration);
+         errorCodeStat.recordCall(sample);
       }
       return duration;
    }
@@ -117,7 +139,7 @@ class FunctionStatistics {
    /**
     * Resets the statistics for this function.
     */
-   final synchronized void resetStatistics() {
+   final void resetStatistics() {
       _successful.reset();
       _unsuccessful.reset();
       _errorCodeStatistics.clear();
@@ -129,7 +151,7 @@ class FunctionStatistics {
     * @return
     *    the successful element, cannot be <code>null</code>
     */
-   public synchronized Element getSuccessfulElement() {
+   public Element getSuccessfulElement() {
       return _successful.getElement(true, null);
    }
 
@@ -139,139 +161,141 @@ class FunctionStatistics {
     *
     * @param detailed
     *    If <code>true</code>, the unsuccessful results will be returned
-    *    per error code. Otherwise only one unsuccessful containing all
-    *    unsuccessful result will be returned.
+    *    per error code, sorted by error code. Otherwise only one unsuccessful
+    *    containing all unsuccessful result will be returned.
     *
     * @return
     *    the successful element, cannot be empty.
     */
-   public synchronized Element[] getUnsuccessfulElement(boolean detailed) {
-      if (!detailed || _errorCodeStatistics.size() == 0) {
+   public Element[] getUnsuccessfulElement(boolean detailed) {
+      String[] errorCodes = _errorCodeStatistics.keySet().toArray(new String[0]);
+      if (!detailed || errorCodes.length == 0) {
          Element[] result = new Element[1];
          result[0] = _unsuccessful.getElement(false, null);
          return result;
       } else {
-         Element[] result = new Element[_errorCodeStatistics.size()];
-         int i = 0;
-         Iterator itErrorCodeStats = _errorCodeStatistics.keySet().iterator();
-         while (itErrorCodeStats.hasNext()) {
-            String nextErrorCode = (String) itErrorCodeStats.next();
-            Statistic nextStat = (Statistic) _errorCodeStatistics.get(nextErrorCode);
-            result[i] = nextStat.getElement(false, nextErrorCode);
-            i++;
+         Arrays.sort(errorCodes);
+         Element[] result = new Element[errorCodes.length];
+         for (int i = 0; i < errorCodes.length; i++) {
+            Statistic nextStat = _errorCodeStatistics.get(errorCodes[i]);
+            if (nextStat == null) {
+               nextStat = new Statistic();
+            }
+            result[i] = nextStat.getElement(false, errorCodes[i]);
          }
          return result;
       }
    }
 
    /**
-    * Group of statistics data.
+    * A recorded call.
     *
-    * <p>The implementation of this class is thread-safe.
+    * @version $Revision$ $Date$
     *
-    * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
-    * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
+    * @since XINS 3.0
     */
-   private static final class Statistic {
-
-	  /**
-	   * The variance computer.
-	   */
-	  private VarianceComputer _varianceComputer = new VarianceComputer();
+   private static final class Sample {
 
       /**
-       * The start time of the most recent call. Initially <code>0L</code>.
+       * The start time of the call, in milliseconds since the UNIX Epoch.
        */
-      private long _lastStart;
+      private final long _start;
 
       /**
-       * The transaction ID of the most recent call.
-       * Initially null.
+       * The duration of the call, in milliseconds.
        */
-      private String _lastTx;
+      private final long _duration;
 
       /**
-       * The duration of the most recent call. Initially <code>0L</code>.
+       * The transaction ID of the call, can be <code>null</code>.
        */
-      private long _lastDuration;
+      private final String _tx;
 
       /**
-       * The total duration of all calls up until now. Initially
-       * <code>0L</code>.
+       * Constructs a new <code>Sample</code>.
+       *
+       * @param start
+       *    the start time of the call, in milliseconds since the UNIX Epoch.
+       *
+       * @param duration
+       *    the duration of the call, in milliseconds.
+       *
+       * @param tx
+       *    the transaction ID of the call, can be <code>null</code>.
        */
-      private long _duration;
+      Sample(long start, long duration, String tx) {
+         _start    = start;
+         _duration = duration;
+         _tx       = tx;
+      }
+   }
 
-      /**
-       * The minimum time a call took. Initially set to
-       * {@link Long#MAX_VALUE}.
-       */
-      private long _min = Long.MAX_VALUE;
+   /**
+    * Group of statistics data.
+    *
+    * <p>The implementation of this class is thread-safe. Recording a call
+    * does not lock; it only uses compare-and-set operations.
+    *
+    * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
+    * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
+    */
+   private static final class Statistic {
 
       /**
-       * The start time of the call that took the shortest. Initially
-       * <code>0L</code>.
+       * The durations of the calls. Also holds the number of calls.
        */
-      private long _minStart;
+      private final LatencyHistogram _histogram = new LatencyHistogram();
 
       /**
-       * The transaction ID of the call that took the shortest.
-       * Initially null.
+       * The mean and the variance of the durations of the calls.
        */
-      private String _minTx;
+      private final StripedVarianceComputer _variance = new StripedVarianceComputer();
 
       /**
-       * The duration of the call that took the longest. Initially
-       * <code>0L</code>.
+       * The most recent call, or <code>null</code> if there is none.
        */
-      private long _max;
+      private volatile Sample _last;
 
       /**
-       * The start time of the call that took the longest. Initially
-       * <code>0L</code>.
+       * The call that took the shortest. Contains <code>null</code> if there
+       * is none.
        */
-      private long _maxStart;
+      private final AtomicReference<Sample> _min = new AtomicReference<Sample>();
 
       /**
-       * The transaction ID of the call that took the longest.
-       * Initially null.
+       * The call that took the longest. Contains <code>null</code> if there
+       * is none.
        */
-      private String _maxTx;
+      private final AtomicReference<Sample> _max = new AtomicReference<Sample>();
 
       /**
        * Constructs a new <code>Statistic</code> object.
        */
       private Statistic() {
-         _min = Long.MAX_VALUE;
+         // empty
       }
 
       /**
        * Records a call.
        *
-       * @param start
-       *    the start time, in milliseconds since the UNIX Epoch, not
-       *    <code>null</code>.
-       *
-       * @param duration
-       *    duration of the call, in milliseconds since the
-       *    <a href="http://en.wikipedia.org/wiki/Unix_Epoch">UNIX Epoch</a>.
+       * @param sample
+       *    the call to record, cannot be <code>null</code>.
        */
-      public synchronized void recordCall(long start, long duration) {
-         _lastStart    = start;
-         _lastDuration = duration;
-         _lastTx       = getTx();
-
-         _varianceComputer.add(duration);
-         _duration += duration;
-         _min      = _min > duration ? duration : _min;
-         _max      = _max < duration ? duration : _max;
-         _minStart = (_min == duration) ? start : _minStart;
-         _maxStart = (_max == duration) ? start : _maxStart;
-         _minTx    = (_min == duration) ? _lastTx : _minTx;
-         _maxTx    = (_max == duration) ? _lastTx : _maxTx;
-      }
-
-      private final String getTx() {
-         return NDC.peek();
+      public void recordCall(Sample sample) {
+         long duration = sample._duration;
+         _variance.add(duration);
+         _histogram.record(duration);
+         _last = sample;
+
+         // Only contends when a new minimum or maximum is found
+         Sample min = _min.get();
+         while ((min == null || duration < min._duration) && ! _min.compareAndSet(min, sample)) {
+            min = _min.get();
+         }
+         Sample max = _max.get();
+         while ((max == null || duration > max._duration) && ! _max.compareAndSet(max, sample)) {
+            max = _max.get();
+         }
       }
 
       /**
@@ -286,34 +310,49 @@ class FunctionStatistics {
        * @return
        *    the statistics as an XML {@link Element}, cannot be <code>null</code>.
        */
-      public synchronized Element getElement(boolean successful, String errorCode) {
+      public Element getElement(boolean successful, String errorCode) {
 
          String average;
+         String variance;
          String min;
          String minStart;
+         String minTx;
          String max;
          String maxStart;
+         String maxTx;
          String lastStart;
          String lastDuration;
-         int       calls = _varianceComputer.getCount();
-         double     mean = _varianceComputer.getMean();
-         String variance = String.valueOf(_varianceComputer.getVariance());
-         if (calls == 0) {
+         String lastTx;
+         long[] percentiles = _histogram.getValuesAtPercentiles(PERCENTILES);
+         long calls = _histogram.getCount();
+         Sample minSample  = _min.get();
+         Sample maxSample  = _max.get();
+         Sample lastSample = _last;
+         if (calls == 0L || minSample == null || maxSample == null || lastSample == null) {
+            calls        = 0L;
             average      = NOT_AVAILABLE;
+            variance     = String.valueOf(0.0);
             min          = NOT_AVAILABLE;
             minStart     = NOT_AVAILABLE;
+            minTx        = null;
             max          = NOT_AVAILABLE;
             maxStart     = NOT_AVAILABLE;
+            maxTx        = null;
             lastStart    = NOT_AVAILABLE;
             lastDuration = NOT_AVAILABLE;
+            lastTx       = null;
          } else {
-            average      = String.valueOf(mean);
-            min          = String.valueOf(_min);
-            minStart     = DateConverter.toDateString(TIME_ZONE, _minStart);
-            max          = String.valueOf(_max);
-            maxStart     = DateConverter.toDateString(TIME_ZONE, _maxStart);
-            lastStart    = DateConverter.toDateString(TIME_ZONE, _lastStart);
-            lastDuration = String.valueOf(_lastDuration);
+            average      = String.valueOf(_variance.getMean());
+            variance     = String.valueOf(_variance.getVariance());
+            min          = String.valueOf(minSample._duration);
+            minStart     = DateConverter.toDateString(TIME_ZONE, minSample._start);
+            minTx        = minSample._tx;
+            max          = String.valueOf(maxSample._duration);
+            maxStart     = DateConverter.toDateString(TIME_ZONE, maxSample._start);
+            maxTx        = maxSample._tx;
+            lastStart    = DateConverter.toDateString(TIME_ZONE, lastSample._start);
+            lastDuration = String.valueOf(lastSample._duration);
+            lastTx       = lastSample._tx;
          }
          Element element = new Element(successful ? "successful" : "unsuccessful");
          element.setAttribute("count",    String.valueOf(calls));
@@ -325,35 +364,45 @@ class FunctionStatistics {
          Element minElem = new Element("min");
          minElem.setAttribute("start",    minStart);
          minElem.setAttribute("duration", min);
-         minElem.setAttribute("tx",       _minTx);
+         minElem.setAttribute("tx",       minTx);
          element.add(minElem);
 
          Element maxElem = new Element("max");
          maxElem.setAttribute("start",    maxStart);
          maxElem.setAttribute("duration", max);
-         maxElem.setAttribute("tx",       _maxTx);
+         maxElem.setAttribute("tx",       maxTx);
          element.add(maxElem);
 
          Element lastElem = new Element("last");
          lastElem.setAttribute("start",    lastStart);
          lastElem.setAttribute("duration", lastDuration);
-         lastElem.setAttribute("tx",       _lastTx);
+         lastElem.setAttribute("tx",       lastTx);
          element.add(lastElem);
+
+         // The percentiles never exceed the maximum duration
+         Element percentilesElem = new Element("percentiles");
+         for (int i = 0; i < PERCENTILES.length; i++) {
+            String value;
+            if (calls == 0L || percentiles[i] < 0L) {
+               value = NOT_AVAILABLE;
+            } else {
+               value = String.valueOf(Math.min(percentiles[i], maxSample._duration));
+            }
+            percentilesElem.setAttribute(PERCENTILE_NAMES[i], value);
+         }
+         element.add(percentilesElem);
          return element;
       }
 
       /**
        * Resets this statistic.
        */
-      public synchronized void reset() {
-         _varianceComputer = new VarianceComputer();
-         _lastStart    = 0L;
-         _lastDuration = 0L;
-         _duration     = 0L;
-         _min          = Long.MAX_VALUE;
-         _minStart     = 0L;
-         _max          = 0L;
-         _maxStart     = 0L;
+      public void reset() {
+         _histogram.reset();
+         _variance.reset();
+         _last = null;
+         _min.set(null);
+         _max.set(null);
       }
    }
 }
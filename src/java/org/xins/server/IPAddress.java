@@ -0,0 +1,342 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import org.xins.common.text.ParseException;
+
+/**
+ * IP address, parsed to primitive words. An IPv4 address is stored in the
+ * lower 32 bits of the low word, an IPv6 address uses both the high and the
+ * low word.
+ *
+ * <p>Parsing is done by hand, without regular expressions and without
+ * {@link java.net.InetAddress}, so that an IP address can be parsed once
+ * per request and then be matched against any number of filters without
+ * further allocations.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class IPAddress {
+
+   /**
+    * The original IP address string. Never <code>null</code>.
+    */
+   private final String _ipString;
+
+   /**
+    * <code>true</code> if this is an IPv6 address.
+    */
+   private final boolean _ipv6;
+
+   /**
+    * The 64 most significant bits of an IPv6 address, always 0 for an IPv4
+    * address.
+    */
+   private final long _high;
+
+   /**
+    * The 64 least significant bits of an IPv6 address or the 32 bits of an
+    * IPv4 address.
+    */
+   private final long _low;
+
+   /**
+    * Constructs a new <code>IPAddress</code>.
+    *
+    * @param ipString
+    *    the original IP address string, should not be <code>null</code>.
+    *
+    * @param ipv6
+    *    <code>true</code> for an IPv6 address.
+    *
+    * @param high
+    *    the high word.
+    *
+    * @param low
+    *    the low word.
+    */
+   IPAddress(String ipString, boolean ipv6, long high, long low) {
+      _ipString = ipString;
+      _ipv6     = ipv6;
+      _high     = high;
+      _low      = low;
+   }
+
+   /**
+    * Parses the specified IP address. IPv4 addresses must be in dotted
+    * decimal notation, without leading zeroes. IPv6 addresses may use the
+    * <code>::</code> notation, may end with an IPv4 address and may have a
+    * <code>%</code> scope suffix, which is ignored.
+    *
+    * @param ipString
+    *    the IP address to parse, cannot be <code>null</code>.
+    *
+    * @return
+    *    the parsed IP address, never <code>null</code>.
+    *
+    * @throws NullPointerException
+    *    if <code>ipString == null</code>.
+    *
+    * @throws ParseException
+    *    if <code>ipString</code> is not a valid IPv4 or IPv6 address.
+    */
+   static IPAddress parse(String ipString)
+   throws NullPointerException, ParseException {
+
+      int length = ipString.length();
+
+      // IPv4
+      if (ipString.indexOf(':') < 0) {
+         long value = parseIPv4(ipString, 0, length);
+         if (value < 0L) {
+            throw invalid(ipString);
+         }
+         return new IPAddress(ipString, false, 0L, value);
+      }
+
+      // Ignore the scope of an IPv6 address
+      int end = ipString.indexOf('%');
+      if (end < 0) {
+         end = length;
+      } else if (end == length - 1) {
+         throw invalid(ipString);
+      }
+
+      // Parse the 16-bit groups, remembering where "::" was found
+      int[] groups     = new int[8];
+      int   count      = 0;
+      int   compressAt = -1;
+      int   pos        = 0;
+      if (end >= 2 && ipString.charAt(0) == ':' && ipString.charAt(1) == ':') {
+         compressAt = 0;
+         pos        = 2;
+      }
+      while (pos < end) {
+         int groupStart = pos;
+         int value      = 0;
+         int digit;
+         while (pos < end && (digit = hexDigit(ipString.charAt(pos))) >= 0) {
+            value = (value << 4) | digit;
+            pos++;
+         }
+
+         // Embedded IPv4 address, must be last
+         if (pos < end && ipString.charAt(pos) == '.') {
+            long ipv4 = parseIPv4(ipString, groupStart, end);
+            if (ipv4 < 0L || count > 6) {
+               throw invalid(ipString);
+            }
+            groups[count++] = (int) (ipv4 >>> 16);
+            groups[count++] = (int) (ipv4 & 0xFFFFL);
+            break;
+         }
+
+         int digits = pos - groupStart;
+         if (digits < 1 || digits > 4 || count == 8) {
+            throw invalid(ipString);
+         }
+         groups[count++] = value;
+
+         if (pos < end) {
+            if (ipString.charAt(pos) != ':') {
+               throw invalid(ipString);
+            }
+            pos++;
+            if (pos < end && ipString.charAt(pos) == ':') {
+               if (compressAt >= 0) {
+                  throw invalid(ipString);
+               }
+               compressAt = count;
+               pos++;
+            } else if (pos == end) {
+               throw invalid(ipString);
+            }
+         }
+      }
+      if (compressAt < 0 ? count != 8 : count > 7) {
+         throw invalid(ipString);
+      }
+
+      // Build the words, filling the "::" gap with zeroes
+      int  gap  = 8 - count;
+      long high = 0L;
+      long low  = 0L;
+      for (int i = 0; i < 8; i++) {
+         int group;
+         if (compressAt < 0 || i < compressAt) {
+            group = groups[i];
+         } else if (i < compressAt + gap) {
+            group = 0;
+         } else {
+            group = groups[i - gap];
+         }
+         if (i < 4) {
+            high = (high << 16) | group;
+         } else {
+            low = (low << 16) | group;
+         }
+      }
+      return new IPAddress(ipString, true, high, low);
+   }
+
+   /**
+    * Parses an IPv4 address in dotted decimal notation.
+    *
+    * @param s
+    *    the string containing the address, cannot be <code>null</code>.
+    *
+    * @param start
+    *    the index of the first character of the address.
+    *
+    * @param end
+    *    the index after the last character of the address.
+    *
+    * @return
+    *    the address as an unsigned 32-bit value, or <code>-1L</code> if the
+    *    characters do not form a valid IPv4 address.
+    */
+   private static long parseIPv4(String s, int start, int end) {
+      long value = 0L;
+      int  parts = 0;
+      int  pos   = start;
+      while (true) {
+         int partStart = pos;
+         int part      = 0;
+         while (pos < end && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+            part = part * 10 + (s.charAt(pos) - '0');
+            pos++;
+            if (pos - partStart > 3) {
+               return -1L;
+            }
+         }
+         int digits = pos - partStart;
+         if (digits == 0 || part > 255 || (digits > 1 && s.charAt(partStart) == '0')) {
+            return -1L;
+         }
+         value = (value << 8) | part;
+         parts++;
+         if (pos == end) {
+            break;
+         } else if (parts == 4 || s.charAt(pos) != '.') {
+            return -1L;
+         }
+         pos++;
+      }
+      return parts == 4 ? value : -1L;
+   }
+
+   /**
+    * Converts a hexadecimal digit to its value.
+    *
+    * @param c
+    *    the character to convert.
+    *
+    * @return
+    *    the value of the digit, or <code>-1</code> if <code>c</code> is not
+    *    a hexadecimal digit.
+    */
+   private static int hexDigit(char c) {
+      if (c >= '0' && c <= '9') {
+         return c - '0';
+      } else if (c >= 'a' && c <= 'f') {
+         return c - 'a' + 10;
+      } else if (c >= 'A' && c <= 'F') {
+         return c - 'A' + 10;
+      } else {
+         return -1;
+      }
+   }
+
+   /**
+    * Creates the exception for an invalid IP address.
+    *
+    * @param ipString
+    *    the invalid IP address.
+    *
+    * @return
+    *    the exception, never <code>null</code>.
+    */
+   private static ParseException invalid(String ipString) {
+      return new ParseException("The string \"" + ipString + "\" is not a valid IP address.");
+   }
+
+   /**
+    * Checks whether this is an IPv6 address.
+    *
+    * @return
+    *    <code>true</code> for an IPv6 address, <code>false</code> for an IPv4
+    *    address.
+    */
+   boolean isIPv6() {
+      return _ipv6;
+   }
+
+   /**
+    * Returns the number of bits in this address.
+    *
+    * @return
+    *    128 for an IPv6 address, 32 for an IPv4 address.
+    */
+   int getBitCount() {
+      return _ipv6 ? 128 : 32;
+   }
+
+   /**
+    * Returns the high word.
+    *
+    * @return
+    *    the 64 most significant bits of an IPv6 address, 0 for an IPv4
+    *    address.
+    */
+   long getHigh() {
+      return _high;
+   }
+
+   /**
+    * Returns the low word.
+    *
+    * @return
+    *    the 64 least significant bits of an IPv6 address, or the 32 bits of
+    *    an IPv4 address.
+    */
+   long getLow() {
+      return _low;
+   }
+
+   /**
+    * Returns the bit at the specified position, counting from the most
+    * significant bit.
+    *
+    * @param index
+    *    the index of the bit, 0 is the most significant bit, must be lower
+    *    than {@link #getBitCount()}.
+    *
+    * @return
+    *    the bit value, either 0 or 1.
+    */
+   int bit(int index) {
+      if (! _ipv6) {
+         return (int) (_low >>> (31 - index)) & 1;
+      } else if (index < 64) {
+         return (int) (_high >>> (63 - index)) & 1;
+      } else {
+         return (int) (_low >>> (127 - index)) & 1;
+      }
+   }
+
+   /**
+    * Returns the IP address as it was passed to {@link #parse(String)}.
+    *
+    * @return
+    *    the original IP address string, never <code>null</code>.
+    */
+   public String toString() {
+      return _ipString;
+   }
+}
@@ -6,10 +6,6 @@
  */
 package org.xins.server;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.BitSet;
-
 import org.xins.common.MandatoryArgumentChecker;
 import org.xins.common.text.ParseException;
 
@@ -26,6 +22,10 @@ import org.xins.common.text.ParseException;
  * <p>IPv4 filters will only accept IPv4 addresses and IPv6 filters will only
  * accept IPv6 addresses.
  *
+ * <p>The base IP address and the mask are converted to primitive words when
+ * the filter is parsed, so that matching an IP address only takes a few
+ * bitwise operations.
+ *
  * <h3>Example code</h3>
  *
  * <p>An <code>IPFilter</code> object is
@@ -54,22 +54,6 @@ import org.xins.common.text.ParseException;
  */
 public final class IPFilter {
 
-   /**
-    * The IPv4 pattern.
-    */
-   private static final String IP_4_PATTERN = "((25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)(\\.(25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)){3})";
-
-   /**
-    * The IPv6 pattern.
-    */
-   private static final String IP_6_PATTERN = "((([0-9A-Fa-f]{1,4}:){7}([0-9A-Fa-f]{1,4}|:))|(([0-9A-Fa-f]{1,4}:){6}(:[0-9A-Fa-f]{1,4}|" + IP_4_PATTERN +
-      "|:))|(([0-9A-Fa-f]{1,4}:){5}(((:[0-9A-Fa-f]{1,4}){1,2})|:" + IP_4_PATTERN +
-      "|:))|(([0-9A-Fa-f]{1,4}:){4}(((:[0-9A-Fa-f]{1,4}){1,3})|((:[0-9A-Fa-f]{1,4})?:" + IP_4_PATTERN +
-      ")|:))|(([0-9A-Fa-f]{1,4}:){3}(((:[0-9A-Fa-f]{1,4}){1,4})|((:[0-9A-Fa-f]{1,4}){0,2}:" + IP_4_PATTERN +
-      ")|:))|(([0-9A-Fa-f]{1,4}:){2}(((:[0-9A-Fa-f]{1,4}){1,5})|((:[0-9A-Fa-f]{1,4}){0,3}:" + IP_4_PATTERN +
-      ")|:))|(([0-9A-Fa-f]{1,4}:){1}(((:[0-9A-Fa-f]{1,4}){1,6})|((:[0-9A-Fa-f]{1,4}){0,4}:" + IP_4_PATTERN +
-      ")|:))|(:(((:[0-9A-Fa-f]{1,4}){1,7})|((:[0-9A-Fa-f]{1,4}){0,5}:" + IP_4_PATTERN + ")|:)))(%.+)?";
-
    /**
     * The character that delimits the IP address and the mask of the provided
     * filter.
@@ -87,9 +71,10 @@ public final class IPFilter {
    private final String _baseIPString;
 
    /**
-    * The base IP address.
+    * The base IP address, with all bits outside the mask cleared. Never
+    * <code>null</code>.
     */
-   private final BitSet _baseIP;
+   private final IPAddress _baseIP;
 
    /**
     * The mask of this filter. Can only have a value between 0 and 128.
@@ -101,6 +86,16 @@ public final class IPFilter {
     */
    private final boolean _isIPv6Filter;
 
+   /**
+    * The bits of the high word that must match.
+    */
+   private final long _highMask;
+
+   /**
+    * The bits of the low word that must match.
+    */
+   private final long _lowMask;
+
    /**
     * Creates an <code>IPFilter</code> object for the specified filter
     * expression. The expression consists of a base IP address and a bit
@@ -112,18 +107,28 @@ public final class IPFilter {
     *    should not be <code>null</code>.
     *
     * @param baseIP
-    *    the base IP address, as a {@link BitSet},
-    *    should not be <code>null</code>.
+    *    the parsed base IP address, should not be <code>null</code>.
     *
     * @param mask
-    *    the mask, between 0 and 128 (inclusive).
+    *    the mask, between 0 and 32 (inclusive) for an IPv4 address or
+    *    between 0 and 128 (inclusive) for an IPv6 address.
     */
-   private IPFilter(String ipString, BitSet baseIP, int mask) {
+   private IPFilter(String ipString, IPAddress baseIP, int mask) {
       _expression   = ipString + IP_MASK_DELIMETER + mask;
       _baseIPString = ipString;
-      _baseIP       = baseIP;
       _mask         = mask;
-      _isIPv6Filter = ipString.indexOf(':') != -1;
+      _isIPv6Filter = baseIP.isIPv6();
+
+      // Compute the masks for the high and the low word
+      if (! _isIPv6Filter) {
+         _highMask = 0L;
+         _lowMask  = mask == 0 ? 0L : (0xFFFFFFFFL << (32 - mask)) & 0xFFFFFFFFL;
+      } else {
+         _highMask = mask == 0 ? 0L : (mask >= 64 ? -1L : -1L << (64 - mask));
+         _lowMask  = mask <= 64 ? 0L : -1L << (128 - mask);
+      }
+
+      _baseIP = new IPAddress(ipString, _isIPv6Filter, baseIP.getHigh() & _highMask, baseIP.getLow() & _lowMask);
    }
 
    /**
@@ -181,7 +186,10 @@ public final class IPFilter {
          }
       }
 
-      BitSet ipBase = ipStringToBitSet(ipString);
+      IPAddress ipBase = IPAddress.parse(ipString);
+      if (! ipBase.isIPv6() && mask > 32) {
+         throw new ParseException("The mask \"" + mask + "\" is not a number between 0 and 32.");
+      }
 
       // Create and return an IPFilter object
       return new IPFilter(ipString, ipBase, mask);
@@ -285,58 +293,37 @@ public final class IPFilter {
       // Check preconditions
       MandatoryArgumentChecker.check("ipString", ipString);
 
-      BitSet ipBits = ipStringToBitSet(ipString);
-
-      if ((ipString.indexOf(':') == -1 && _isIPv6Filter) ||
-              (ipString.indexOf(':') != -1 && !_isIPv6Filter)) {
-         return false;
-      }
-
-      // Short-circuit if mask is 0 bits
-      if (_mask == 0) {
-         return true;
-      }
-
-      // Perform the match
-      ipBits.xor(_baseIP);
-      int maxLength = ipString.indexOf(':') == -1 ? 32 : 128;
-      ipBits.clear(0, maxLength - _mask);
-      boolean match = ipBits.isEmpty();
-
-      return match;
+      return match(IPAddress.parse(ipString));
    }
 
    /**
-    * Transforms the IP address in a series of bits.
+    * Determines if the specified parsed IP address is authorized.
+    *
+    * @param ip
+    *    the IP address, cannot be <code>null</code>.
     *
-    * @param ipString
-    *    the String representation of the IP address, cannot be <code>null</code>
     * @return
-    *    the series of bits representing the IP address, never <code>null</code>
+    *    <code>true</code> if the IP address is authorized to access the
+    *    protected resource, otherwise <code>false</code>.
     *
-    * @throws ParseException
-    *    if the IP address is not a valid IP address.
+    * @throws NullPointerException
+    *    if <code>ip == null</code>.
     */
-   private static BitSet ipStringToBitSet(String ipString) throws ParseException {
-      BitSet ipBits = new BitSet();
+   boolean match(IPAddress ip) throws NullPointerException {
+      return ip.isIPv6() == _isIPv6Filter
+          && ((ip.getHigh() ^ _baseIP.getHigh()) & _highMask) == 0L
+          && ((ip.getLow()  ^ _baseIP.getLow())  & _lowMask)  == 0L;
+   }
 
-      if (!ipString.matches(IP_4_PATTERN) && !ipString.matches(IP_6_PATTERN)) {
-         throw new ParseException("The string \"" + ipString + "\" is not a valid IP address as it does not match the patterns.");
-      }
-      byte[] ipBytes;
-      try {
-         ipBytes = InetAddress.getByName(ipString).getAddress();
-      } catch (UnknownHostException ex) {
-         throw new ParseException("The string \"" + ipString + "\" is not a valid IP address.");
-      }
-      if (ipBytes.length != 4 && ipBytes.length != 16) {
-         throw new ParseException("Incorrect transformation as " + ipBytes.length + " bytes array are created for ip " + ipString);
-      }
-      for (int i = 0; i < ipBytes.length * 8; i++) {
-         boolean isTrue = (ipBytes[ipBytes.length - i / 8 - 1] & (1 << (i % 8))) > 0;
-         ipBits.set(i, isTrue);
-      }
-      return ipBits;
+   /**
+    * Returns the parsed base IP address, with all bits outside the mask
+    * cleared.
+    *
+    * @return
+    *    the base IP address, never <code>null</code>.
+    */
+   IPAddress getBaseIPAddress() {
+      return _baseIP;
    }
 
    /**
@@ -12,15 +12,10 @@ import java.io.PrintWriter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.XML;
-
 import org.xins.common.collections.BasicPropertyReader;
 import org.xins.common.text.ParseException;
 import org.xins.common.text.TextUtils;
 import org.xins.common.xml.Element;
-import org.xins.common.xml.ElementParser;
 
 /**
  * The JSON calling convention.
@@ -80,13 +75,11 @@ public class JSONCallingConvention extends CallingConvention {
       String dataString = httpRequest.getParameter("_data");
       if (!TextUtils.isEmpty(dataString)) {
          try {
-            JSONObject dataSectionObject = new JSONObject(dataString);
-            String dataSectionString = XML.toString(dataSectionObject);
-            dataElement = new ElementParser().parse(dataSectionString);
-         } catch (JSONException jsonex) {
-            throw new InvalidRequestException("Invalid JSON input data section.", jsonex);
+            JSONReader reader = new JSONReader(dataString);
+            dataElement = reader.nextDataSection();
+            reader.endDocument();
          } catch (ParseException pex) {
-            throw new InvalidRequestException("Invalid XML created from JSON object.", pex);
+            throw new InvalidRequestException("Invalid JSON input data section.", pex);
          }
       }
 
@@ -100,27 +93,25 @@ public class JSONCallingConvention extends CallingConvention {
                                     FunctionResult      xinsResult)
    throws IOException {
 
-      // Send the XML output to the stream and flush
+      // Stream the JSON output
       httpResponse.setContentType(RESPONSE_CONTENT_TYPE);
       PrintWriter out = httpResponse.getWriter();
       httpResponse.setStatus(HttpServletResponse.SC_OK);
 
-      try {
-         JSONObject jsonResult = JSONRPCCallingConvention.createResultObject(xinsResult);
-         if (xinsResult.getErrorCode() != null) {
-            jsonResult.put("errorCode", xinsResult.getErrorCode());
-         }
-         String callback = httpRequest.getParameter("callback");
-         if (!TextUtils.isEmpty(callback)) {
-            out.print(callback + "(");
-         }
-         String jsonString = jsonResult.toString();
-         out.print(jsonString);
-         if (!TextUtils.isEmpty(callback)) {
-            out.print(")");
-         }
-      } catch (JSONException jsonex) {
-         throw new IOException(jsonex.getMessage());
+      String callback = httpRequest.getParameter("callback");
+      if (!TextUtils.isEmpty(callback)) {
+         out.print(callback + "(");
+      }
+      JSONWriter json = new JSONWriter(out);
+      json.beginObject();
+      json.resultMembers(xinsResult);
+      if (xinsResult.getErrorCode() != null) {
+         json.name("errorCode");
+         json.value(xinsResult.getErrorCode());
+      }
+      json.endObject();
+      if (!TextUtils.isEmpty(callback)) {
+         out.print(")");
       }
 
       out.close();
@@ -10,9 +10,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -20,13 +21,11 @@ import javax.servlet.http.HttpServletResponse;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.XML;
 
 import org.xins.common.MandatoryArgumentChecker;
 import org.xins.common.Utils;
 import org.xins.common.collections.BasicPropertyReader;
 import org.xins.common.collections.PropertyReader;
-import org.xins.common.collections.PropertyReaderConverter;
 import org.xins.common.spec.APISpec;
 import org.xins.common.spec.EntityNotFoundException;
 import org.xins.common.spec.ErrorCodeSpec;
@@ -162,45 +161,48 @@ public class JSONRPCCallingConvention extends CallingConvention {
          }
       }
 
-      // Transform the XINS result to a JSON object
-      JSONObject returnObject = new JSONObject();
-      try {
-         String version = (String) httpRequest.getSession().getAttribute("version");
-         if (version != null) {
-            returnObject.put("version", version);
-         }
-         if (xinsResult.getErrorCode() != null) {
-            if (version == null) {
-               returnObject.put("result", JSONObject.NULL);
-               returnObject.put("error", xinsResult.getErrorCode());
-            } else {
-               JSONObject errorObject = new JSONObject();
-               String errorCode = xinsResult.getErrorCode();
-               errorObject.put("name", errorCode);
-               errorObject.put("code", new Integer(123));
-               errorObject.put("message", getErrorDescription(functionName, errorCode));
-               JSONObject paramsObject = createResultObject(xinsResult);
-               errorObject.put("error", paramsObject);
-               returnObject.put("error", errorObject);
-            }
+      // Stream the XINS result as a JSON object
+      JSONWriter json = new JSONWriter(out);
+      json.beginObject();
+      String version = (String) httpRequest.getSession().getAttribute("version");
+      if (version != null) {
+         json.name("version");
+         json.value(version);
+      }
+      String errorCode = xinsResult.getErrorCode();
+      if (errorCode != null) {
+         if (version == null) {
+            json.name("result");
+            json.value(null);
+            json.name("error");
+            json.value(errorCode);
          } else {
-            JSONObject paramsObject = createResultObject(xinsResult);
-            returnObject.put("result", paramsObject);
-            if (version == null) {
-               returnObject.put("error", JSONObject.NULL);
-            }
+            json.name("error");
+            json.beginObject();
+            json.name("name");
+            json.value(errorCode);
+            json.name("code");
+            json.rawValue("123");
+            json.name("message");
+            json.value(getErrorDescription(functionName, errorCode));
+            json.name("error");
+            writeResultObject(json, xinsResult);
+            json.endObject();
          }
-         Object requestId = httpRequest.getSession().getAttribute("id");
-         if (requestId != null) {
-            returnObject.put("id", requestId);
+      } else {
+         json.name("result");
+         writeResultObject(json, xinsResult);
+         if (version == null) {
+            json.name("error");
+            json.value(null);
          }
-
-         // Write the result to the servlet response
-         String returnString = returnObject.toString();
-         out.print(returnString);
-      } catch (JSONException jsonex) {
-         throw new IOException(jsonex.getMessage());
       }
+      String requestId = (String) httpRequest.getSession().getAttribute("id");
+      if (requestId != null) {
+         json.name("id");
+         json.rawValue(requestId);
+      }
+      json.endObject();
 
       out.close();
    }
@@ -297,83 +299,102 @@ public class JSONRPCCallingConvention extends CallingConvention {
       String requestString = requestBuffer.toString();
 
       // Extract the request from the message
+      List<String> positionalParams = null;
+      boolean hasParams = false;
+      functionName = null;
       try {
-         JSONObject requestObject = new JSONObject(requestString);
-
-         Object version = requestObject.opt("version");
-         if (version != null) {
-            httpRequest.getSession(true).setAttribute("version", (String) version);
+         JSONReader reader = new JSONReader(requestString);
+         reader.beginObject();
+         while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("version".equals(name)) {
+               httpRequest.getSession(true).setAttribute("version", reader.nextString());
+            } else if ("method".equals(name)) {
+               functionName = reader.nextString();
+            } else if ("id".equals(name)) {
+               httpRequest.getSession(true).setAttribute("id", reader.skipValue());
+            } else if ("params".equals(name)) {
+               hasParams = true;
+               JSONReader.Token token = reader.peek();
+
+               // Positional parameters, named once the function is known
+               if (token == JSONReader.Token.ARRAY) {
+                  positionalParams = new ArrayList<String>();
+                  reader.beginArray();
+                  while (reader.hasNext()) {
+                     positionalParams.add(reader.nextString());
+                  }
+                  reader.endArray();
+
+               // Named parameters and the data section
+               } else if (token == JSONReader.Token.OBJECT) {
+                  reader.beginObject();
+                  while (reader.hasNext()) {
+                     String paramName = reader.nextName();
+                     if (paramName.equals("_data")) {
+                        dataElement = reader.nextDataSection();
+                     } else {
+                        functionParams.set(paramName, reader.nextString());
+                     }
+                  }
+                  reader.endObject();
+               } else {
+                  reader.skipValue();
+               }
+            } else {
+               reader.skipValue();
+            }
          }
+         reader.endObject();
+         reader.endDocument();
+      } catch (ParseException cause) {
+         throw new InvalidRequestException(cause.getMessage());
+      }
 
-         functionName = requestObject.getString("method");
-         httpRequest.getSession(true).setAttribute("functionName", functionName);
-         if (functionName.equals("system.describe")) {
-            return new FunctionRequest(functionName, null, null, true);
-         }
+      if (functionName == null) {
+         throw new InvalidRequestException("No method specified in the JSON-RPC request.");
+      }
+      httpRequest.getSession(true).setAttribute("functionName", functionName);
+      if (functionName.equals("system.describe")) {
+         return new FunctionRequest(functionName, null, null, true);
+      } else if (! hasParams) {
+         throw new InvalidRequestException("No params specified in the JSON-RPC request.");
+      }
 
-         Object paramsParam = requestObject.get("params");
-         if (paramsParam instanceof JSONArray) {
-            JSONArray paramsArray = (JSONArray) paramsParam;
+      if (positionalParams != null) {
+         try {
             Iterator itInputParams = _api.getAPISpecification().getFunction(functionName).getInputParameters().keySet().iterator();
             int paramPos = 0;
-            while (itInputParams.hasNext() && paramPos < paramsArray.length()) {
+            while (itInputParams.hasNext() && paramPos < positionalParams.size()) {
                String nextParamName = (String) itInputParams.next();
-               Object nextParamValue = paramsArray.get(paramPos);
-               functionParams.set(nextParamName, String.valueOf(nextParamValue));
+               functionParams.set(nextParamName, positionalParams.get(paramPos));
                paramPos++;
             }
-         } else if (paramsParam instanceof JSONObject) {
-            JSONObject paramsObject = (JSONObject) paramsParam;
-            JSONArray paramNames = paramsObject.names();
-            for (int i = 0; i < paramNames.length(); i++) {
-               String nextName = paramNames.getString(i);
-               if (nextName.equals("_data")) {
-                  JSONObject dataSectionObject = paramsObject.getJSONObject("_data");
-                  String dataSectionString = XML.toString(dataSectionObject);
-                  dataElement = new ElementParser().parse(dataSectionString);
-               } else {
-                  String value = paramsObject.get(nextName).toString();
-                  functionParams.set(nextName, value);
-               }
-            }
-         }
-         Object id = requestObject.opt("id");
-         if (id != null) {
-            httpRequest.getSession().setAttribute("id", id);
+         } catch (InvalidSpecificationException cause) {
+            throw new RuntimeException(cause);
+         } catch (EntityNotFoundException cause) {
+            throw new RuntimeException(cause);
          }
-      } catch (ParseException cause) {
-         throw new InvalidRequestException(cause.getMessage());
-      } catch (JSONException cause) {
-         throw new InvalidRequestException(cause.getMessage());
-      } catch (InvalidSpecificationException cause) {
-         throw new RuntimeException(cause);
-      } catch (EntityNotFoundException cause) {
-         throw new RuntimeException(cause);
       }
       return new FunctionRequest(functionName, functionParams, dataElement);
    }
 
    /**
-    * Creates the JSON object from the result returned by the function.
+    * Writes the JSON object for the result returned by the function.
+    *
+    * @param json
+    *    the JSON writer to write the object to, cannot be <code>null</code>.
     *
     * @param xinsResult
     *    the result returned by the function, cannot be <code>null</code>.
     *
-    * @return
-    *    the JSON object created from the result of the function, never <code>null</code>.
-    *
-    * @throws JSONException
-    *    if the object cannot be created for any reason.
+    * @throws IOException
+    *    in case of an I/O error.
     */
-   static JSONObject createResultObject(FunctionResult xinsResult) throws JSONException {
-      Properties params = PropertyReaderConverter.toProperties(xinsResult.getParameters());
-      JSONObject paramsObject = new JSONObject(params);
-      if (xinsResult.getDataElement() != null) {
-         String dataSection = xinsResult.getDataElement().toString();
-         JSONObject dataSectionObject = XML.toJSONObject(dataSection);
-         paramsObject.accumulate("data", dataSectionObject);
-      }
-      return paramsObject;
+   static void writeResultObject(JSONWriter json, FunctionResult xinsResult) throws IOException {
+      json.beginObject();
+      json.resultMembers(xinsResult);
+      json.endObject();
    }
 
    /**
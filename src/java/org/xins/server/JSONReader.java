@@ -0,0 +1,600 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.util.List;
+
+import org.xins.common.text.ParseException;
+import org.xins.common.xml.Element;
+
+/**
+ * Reader that parses JSON text token by token, without building
+ * intermediate objects. It also converts a JSON object directly to a data
+ * section {@link Element}, see {@link #nextDataSection()}.
+ *
+ * <p>Like the <code>org.json</code> library, this reader accepts strings in
+ * single quotes, names without quotes and <code>\xHH</code> escape
+ * sequences.
+ *
+ * <p>Example:
+ *
+ * <blockquote><pre>JSONReader reader = new JSONReader(json);
+ *reader.beginObject();
+ *while (reader.hasNext()) {
+ *   String name = reader.nextName();
+ *   String value = reader.nextString();
+ *}
+ *reader.endObject();
+ *reader.endDocument();</pre></blockquote>
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class JSONReader {
+
+   /**
+    * The JSON text to parse. Never <code>null</code>.
+    */
+   private final String _json;
+
+   /**
+    * The current position in the JSON text.
+    */
+   private int _pos;
+
+   /**
+    * Flag that indicates whether a comma is expected before the next name or
+    * value in the current object or array.
+    */
+   private boolean _needComma;
+
+   /**
+    * Constructs a new <code>JSONReader</code> for the specified JSON text.
+    *
+    * @param json
+    *    the JSON text, cannot be <code>null</code>.
+    */
+   JSONReader(String json) {
+      _json = json;
+   }
+
+   /**
+    * Determines the type of the next value, without consuming it.
+    *
+    * @return
+    *    the type of the next value, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if there is no valid value at the current position.
+    */
+   Token peek() throws ParseException {
+      char c = peekChar();
+      if (c == '{') {
+         return Token.OBJECT;
+      } else if (c == '[') {
+         return Token.ARRAY;
+      } else if (c == '"' || c == '\'') {
+         return Token.STRING;
+      } else if (c == '-' || c == '+' || c == '.' || (c >= '0' && c <= '9')) {
+         return Token.NUMBER;
+      } else if (_json.startsWith("true", _pos) || _json.startsWith("false", _pos)) {
+         return Token.BOOLEAN;
+      } else if (_json.startsWith("null", _pos)) {
+         return Token.NULL;
+      }
+      throw error("Unexpected character '" + c + "'");
+   }
+
+   /**
+    * Consumes the start of an object.
+    *
+    * @throws ParseException
+    *    if the next value is not an object.
+    */
+   void beginObject() throws ParseException {
+      expect('{');
+      _needComma = false;
+   }
+
+   /**
+    * Consumes the end of an object.
+    *
+    * @throws ParseException
+    *    if the object has more members.
+    */
+   void endObject() throws ParseException {
+      expect('}');
+      _needComma = true;
+   }
+
+   /**
+    * Consumes the start of an array.
+    *
+    * @throws ParseException
+    *    if the next value is not an array.
+    */
+   void beginArray() throws ParseException {
+      expect('[');
+      _needComma = false;
+   }
+
+   /**
+    * Consumes the end of an array.
+    *
+    * @throws ParseException
+    *    if the array has more values.
+    */
+   void endArray() throws ParseException {
+      expect(']');
+      _needComma = true;
+   }
+
+   /**
+    * Checks whether the current object or array has another member or
+    * value. If so, the separating comma is consumed.
+    *
+    * @return
+    *    <code>true</code> if there is another member or value,
+    *    <code>false</code> if the end of the object or array is reached.
+    *
+    * @throws ParseException
+    *    if the separating comma is missing.
+    */
+   boolean hasNext() throws ParseException {
+      char c = peekChar();
+      if (c == '}' || c == ']') {
+         return false;
+      } else if (_needComma) {
+         expect(',');
+         _needComma = false;
+      }
+      return true;
+   }
+
+   /**
+    * Consumes the name of the next member of an object, including the
+    * colon that follows it.
+    *
+    * @return
+    *    the name, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if there is no valid name at the current position.
+    */
+   String nextName() throws ParseException {
+      char c = peekChar();
+      String name;
+      if (c == '"' || c == '\'') {
+         name = readString();
+      } else {
+         int start = _pos;
+         while (_pos < _json.length()) {
+            c = _json.charAt(_pos);
+            if (c == ':' || c <= ' ' || c == ',' || c == '}' || c == '{' || c == '[' || c == ']' || c == '"') {
+               break;
+            }
+            _pos++;
+         }
+         if (_pos == start) {
+            throw error("Expected a name");
+         }
+         name = _json.substring(start, _pos);
+      }
+      expect(':');
+      _needComma = false;
+      return name;
+   }
+
+   /**
+    * Consumes the next value and returns it as text. Strings are unescaped;
+    * for numbers, booleans and <code>null</code> the literal is returned;
+    * for objects and arrays the JSON text is returned.
+    *
+    * @return
+    *    the value as text, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if there is no valid value at the current position.
+    */
+   String nextString() throws ParseException {
+      if (peek() == Token.STRING) {
+         String value = readString();
+         _needComma = true;
+         return value;
+      }
+      return skipValue();
+   }
+
+   /**
+    * Consumes the next value, of any type.
+    *
+    * @return
+    *    the JSON text of the value, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if there is no valid value at the current position.
+    */
+   String skipValue() throws ParseException {
+      Token token = peek();
+      int start = _pos;
+      if (token == Token.OBJECT) {
+         beginObject();
+         while (hasNext()) {
+            nextName();
+            skipValue();
+         }
+         endObject();
+      } else if (token == Token.ARRAY) {
+         beginArray();
+         while (hasNext()) {
+            skipValue();
+         }
+         endArray();
+      } else if (token == Token.STRING) {
+         readString();
+      } else if (token == Token.NUMBER) {
+         readNumber();
+      } else if (token == Token.BOOLEAN) {
+         _pos += _json.startsWith("true", _pos) ? 4 : 5;
+      } else {
+         _pos += 4;
+      }
+      _needComma = true;
+      return _json.substring(start, _pos);
+   }
+
+   /**
+    * Checks that the end of the JSON text is reached.
+    *
+    * @throws ParseException
+    *    if there are characters other than white space left.
+    */
+   void endDocument() throws ParseException {
+      skipWhitespace();
+      if (_pos < _json.length()) {
+         throw error("Unexpected text after the end of the JSON text");
+      }
+   }
+
+   /**
+    * Consumes the next value, which must be an object, and converts it to a
+    * data section element.
+    *
+    * <p>The object must have exactly one member, of which the name is the
+    * name of the element. The value of a member is converted as follows:
+    *
+    * <ul>
+    *    <li>an object becomes an element, with a child element for each
+    *        member, except for a member named <code>content</code>, which
+    *        becomes the text of the element;
+    *    <li>an array becomes an element for each value in the array, all
+    *        with the name of the member;
+    *    <li>any other value becomes an element with that value as text.
+    * </ul>
+    *
+    * <p>This is the same conversion as done by the <code>toString</code>
+    * method of class <code>org.json.XML</code>, without creating XML text.
+    *
+    * @return
+    *    the data section element, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if the JSON text is invalid or if it cannot be converted to a single
+    *    element.
+    */
+   Element nextDataSection() throws ParseException {
+      Element holder = new Element("json");
+      beginObject();
+      while (hasNext()) {
+         String name = nextName();
+         if ("content".equals(name)) {
+            throw error("Text is not allowed outside of the data section element");
+         }
+         addValue(holder, name);
+      }
+      endObject();
+
+      List<Element> elements = holder.getChildElements();
+      if (elements.size() != 1) {
+         throw error("Expected exactly one data section element instead of " + elements.size());
+      }
+      return elements.get(0);
+   }
+
+   /**
+    * Consumes the next value and adds it to the specified parent element.
+    *
+    * @param parent
+    *    the parent element, cannot be <code>null</code>.
+    *
+    * @param name
+    *    the name of the member with the value, cannot be <code>null</code>.
+    *
+    * @throws ParseException
+    *    if the JSON text is invalid or if the name is not a valid element
+    *    name.
+    */
+   private void addValue(Element parent, String name) throws ParseException {
+      Token token = peek();
+      if (token == Token.ARRAY) {
+         beginArray();
+         while (hasNext()) {
+            addValue(parent, name);
+         }
+         endArray();
+         return;
+      }
+
+      Element element = new Element(checkName(name));
+      if (token == Token.OBJECT) {
+         beginObject();
+         while (hasNext()) {
+            String childName = nextName();
+            if ("content".equals(childName)) {
+               addContent(element);
+            } else {
+               addValue(element, childName);
+            }
+         }
+         endObject();
+      } else {
+         element.add(nextString());
+      }
+      parent.add(element);
+   }
+
+   /**
+    * Consumes the next value and adds it as text to the specified element.
+    * The values in an array are separated by newlines.
+    *
+    * @param element
+    *    the element, cannot be <code>null</code>.
+    *
+    * @throws ParseException
+    *    if the JSON text is invalid.
+    */
+   private void addContent(Element element) throws ParseException {
+      if (peek() == Token.ARRAY) {
+         beginArray();
+         for (boolean first = true; hasNext(); first = false) {
+            if (! first) {
+               element.add("\n");
+            }
+            element.add(nextString());
+         }
+         endArray();
+      } else {
+         element.add(nextString());
+      }
+   }
+
+   /**
+    * Checks that the specified name is a valid element name.
+    *
+    * @param name
+    *    the name to check, cannot be <code>null</code>.
+    *
+    * @return
+    *    the name, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if the name is not a valid element name.
+    */
+   private String checkName(String name) throws ParseException {
+      int length = name.length();
+      if (length == 0) {
+         throw invalidName(name);
+      }
+      for (int i = 0; i < length; i++) {
+         char c = name.charAt(i);
+         boolean valid = Character.isLetter(c) || c == '_'
+                      || (i > 0 && (Character.isDigit(c) || c == '-' || c == '.'));
+         if (! valid) {
+            throw invalidName(name);
+         }
+      }
+      return name;
+   }
+
+   /**
+    * Creates a <code>ParseException</code> for an invalid element name.
+    *
+    * @param name
+    *    the invalid name, cannot be <code>null</code>.
+    *
+    * @return
+    *    the exception, never <code>null</code>.
+    */
+   private ParseException invalidName(String name) {
+      return error("Invalid element name \"" + name + '"');
+   }
+
+   /**
+    * Reads a string, starting at the opening quote.
+    *
+    * @return
+    *    the unescaped string, never <code>null</code>.
+    *
+    * @throws ParseException
+    *    if the string is not terminated or contains an invalid escape
+    *    sequence.
+    */
+   private String readString() throws ParseException {
+      char quote = _json.charAt(_pos++);
+      int start = _pos;
+
+      // Fast path: no escape sequences
+      int length = _json.length();
+      while (_pos < length) {
+         char c = _json.charAt(_pos);
+         if (c == quote) {
+            return _json.substring(start, _pos++);
+         } else if (c == '\\') {
+            break;
+         } else if (c == '\n' || c == '\r') {
+            throw error("Unterminated string");
+         }
+         _pos++;
+      }
+
+      StringBuffer buffer = new StringBuffer(_pos - start + 16);
+      buffer.append(_json, start, _pos);
+      while (_pos < length) {
+         char c = _json.charAt(_pos++);
+         if (c == quote) {
+            return buffer.toString();
+         } else if (c == '\n' || c == '\r') {
+            break;
+         } else if (c != '\\') {
+            buffer.append(c);
+         } else if (_pos >= length) {
+            break;
+         } else {
+            c = _json.charAt(_pos++);
+            switch (c) {
+               case 'b':
+                  buffer.append('\b');
+                  break;
+               case 't':
+                  buffer.append('\t');
+                  break;
+               case 'n':
+                  buffer.append('\n');
+                  break;
+               case 'f':
+                  buffer.append('\f');
+                  break;
+               case 'r':
+                  buffer.append('\r');
+                  break;
+               case 'u':
+                  if (_pos + 4 > length) {
+                     throw error("Invalid unicode escape sequence");
+                  }
+                  try {
+                     buffer.append((char) Integer.parseInt(_json.substring(_pos, _pos + 4), 16));
+                  } catch (NumberFormatException exception) {
+                     throw error("Invalid unicode escape sequence");
+                  }
+                  _pos += 4;
+                  break;
+               case 'x':
+                  if (_pos + 2 > length) {
+                     throw error("Invalid hexadecimal escape sequence");
+                  }
+                  try {
+                     buffer.append((char) Integer.parseInt(_json.substring(_pos, _pos + 2), 16));
+                  } catch (NumberFormatException exception) {
+                     throw error("Invalid hexadecimal escape sequence");
+                  }
+                  _pos += 2;
+                  break;
+               default:
+                  buffer.append(c);
+            }
+         }
+      }
+      throw error("Unterminated string");
+   }
+
+   /**
+    * Reads a number.
+    *
+    * @throws ParseException
+    *    if the number contains no digits.
+    */
+   private void readNumber() throws ParseException {
+      boolean digits = false;
+      while (_pos < _json.length()) {
+         char c = _json.charAt(_pos);
+         if (c >= '0' && c <= '9') {
+            digits = true;
+         } else if (c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+            break;
+         }
+         _pos++;
+      }
+      if (! digits) {
+         throw error("Invalid number");
+      }
+   }
+
+   /**
+    * Skips white space and returns the next character, without consuming
+    * it.
+    *
+    * @return
+    *    the next character.
+    *
+    * @throws ParseException
+    *    if the end of the JSON text is reached.
+    */
+   private char peekChar() throws ParseException {
+      skipWhitespace();
+      if (_pos >= _json.length()) {
+         throw error("Unexpected end of the JSON text");
+      }
+      return _json.charAt(_pos);
+   }
+
+   /**
+    * Skips white space and consumes the specified character.
+    *
+    * @param expected
+    *    the expected character.
+    *
+    * @throws ParseException
+    *    if the next character is not the expected character.
+    */
+   private void expect(char expected) throws ParseException {
+      char c = peekChar();
+      if (c != expected) {
+         throw error("Expected '" + expected + "' instead of '" + c + "'");
+      }
+      _pos++;
+   }
+
+   /**
+    * Skips white space.
+    */
+   private void skipWhitespace() {
+      while (_pos < _json.length() && _json.charAt(_pos) <= ' ') {
+         _pos++;
+      }
+   }
+
+   /**
+    * Creates a <code>ParseException</code> for the current position.
+    *
+    * @param detail
+    *    the description of the problem, cannot be <code>null</code>.
+    *
+    * @return
+    *    the exception, never <code>null</code>.
+    */
+   private ParseException error(String detail) {
+      detail += " at position " + _pos + '.';
+      return new ParseException("Invalid JSON text. " + detail, null, detail);
+   }
+
+   /**
+    * Types of JSON values.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   enum Token {
+      OBJECT,
+      ARRAY,
+      STRING,
+      NUMBER,
+      BOOLEAN,
+      NULL
+   }
+}
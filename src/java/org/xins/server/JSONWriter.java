@@ -0,0 +1,403 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xins.common.collections.PropertyReader;
+import org.xins.common.xml.Element;
+
+/**
+ * Writer that outputs JSON text directly to a character stream, without
+ * building intermediate objects. It also converts a function result
+ * directly to JSON, see {@link #resultMembers(FunctionResult)}.
+ *
+ * <p>Commas between members and values are written automatically.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class JSONWriter {
+
+   /**
+    * The character stream to write to. Never <code>null</code>.
+    */
+   private final Writer _out;
+
+   /**
+    * Flag that indicates whether a comma should be written before the next
+    * member or value in the current object or array.
+    */
+   private boolean _needComma;
+
+   /**
+    * Constructs a new <code>JSONWriter</code> that writes to the specified
+    * character stream.
+    *
+    * @param out
+    *    the character stream, cannot be <code>null</code>.
+    */
+   JSONWriter(Writer out) {
+      _out = out;
+   }
+
+   /**
+    * Writes the start of an object.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void beginObject() throws IOException {
+      separate();
+      _out.write('{');
+      _needComma = false;
+   }
+
+   /**
+    * Writes the end of an object.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void endObject() throws IOException {
+      _out.write('}');
+      _needComma = true;
+   }
+
+   /**
+    * Writes the start of an array.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void beginArray() throws IOException {
+      separate();
+      _out.write('[');
+      _needComma = false;
+   }
+
+   /**
+    * Writes the end of an array.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void endArray() throws IOException {
+      _out.write(']');
+      _needComma = true;
+   }
+
+   /**
+    * Writes the name of a member of an object. The value should be written
+    * next.
+    *
+    * @param name
+    *    the name, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void name(String name) throws IOException {
+      separate();
+      quote(name);
+      _out.write(':');
+      _needComma = false;
+   }
+
+   /**
+    * Writes a string value.
+    *
+    * @param value
+    *    the value, or <code>null</code> to write <code>null</code>.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void value(String value) throws IOException {
+      if (value == null) {
+         rawValue("null");
+      } else {
+         separate();
+         quote(value);
+         _needComma = true;
+      }
+   }
+
+   /**
+    * Writes a value that is JSON text already, such as a number.
+    *
+    * @param json
+    *    the JSON text of the value, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void rawValue(String json) throws IOException {
+      separate();
+      _out.write(json);
+      _needComma = true;
+   }
+
+   /**
+    * Writes the output parameters and the data section of a function result
+    * as members of the current object.
+    *
+    * <p>Each parameter becomes a member with a string value. The data
+    * section becomes a member named <code>data</code> with an object value
+    * that contains the data section element (see
+    * {@link #element(Element)}).
+    *
+    * @param result
+    *    the function result, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void resultMembers(FunctionResult result) throws IOException {
+      PropertyReader params = result.getParameters();
+      Element dataElement = result.getDataElement();
+      String dataParam = null;
+      if (params != null) {
+         for (String name : params.names()) {
+            String value = params.get(name);
+            if (value == null) {
+               // skip
+            } else if (dataElement != null && "data".equals(name)) {
+               dataParam = value;
+            } else {
+               name(name);
+               value(value);
+            }
+         }
+      }
+
+      // A parameter named data and the data section are combined in an
+      // array
+      if (dataElement != null) {
+         name("data");
+         if (dataParam != null) {
+            beginArray();
+            value(dataParam);
+         }
+         beginObject();
+         name(qualifiedName(dataElement.getNamespacePrefix(), dataElement.getLocalName()));
+         element(dataElement);
+         endObject();
+         if (dataParam != null) {
+            endArray();
+         }
+      }
+   }
+
+   /**
+    * Writes the value for an element. This is the same conversion as done
+    * by the <code>toJSONObject</code> method of class
+    * <code>org.json.XML</code>, without creating XML text:
+    *
+    * <ul>
+    *    <li>the attributes and the child elements become members, where
+    *        child elements with the same name are combined in an array;
+    *    <li>the text, trimmed, becomes a member named <code>content</code>;
+    *    <li>an element with only text becomes a string; an element with
+    *        only white space becomes an empty string.
+    * </ul>
+    *
+    * @param element
+    *    the element, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   void element(Element element) throws IOException {
+
+      // Collect the members, in order, combining the ones with the same name
+      Map<String,List<Object>> members = new LinkedHashMap<String,List<Object>>();
+      String prefix       = element.getNamespacePrefix();
+      String namespaceURI = element.getNamespaceURI();
+      if (namespaceURI != null) {
+         addMember(members, prefix == null ? "xmlns" : "xmlns:" + prefix, namespaceURI);
+      }
+      for (Map.Entry<Element.QualifiedName,String> entry : element.getAttributeMap().entrySet()) {
+         Element.QualifiedName qn = entry.getKey();
+         String attrPrefix = qn.getNamespacePrefix();
+         String attrLocal  = qn.getLocalName();
+         String value      = entry.getValue();
+         if (value != null && (! "xmlns".equals(attrPrefix) || ! attrLocal.equals(prefix))) {
+            addMember(members, qualifiedName(attrPrefix, attrLocal), value);
+            String attrURI = qn.getNamespaceURI();
+            if (attrURI != null) {
+               String declaration = (attrPrefix == null) ? "xmlns" : "xmlns:" + attrPrefix;
+               if (! members.containsKey(declaration)) {
+                  addMember(members, declaration, attrURI);
+               }
+            }
+         }
+      }
+      int childCount = element.getChildCount();
+      if (childCount > 0) {
+         for (Object child : element.getChildren()) {
+            if (child instanceof Element) {
+               Element childElement = (Element) child;
+               addMember(members, qualifiedName(childElement.getNamespacePrefix(), childElement.getLocalName()), childElement);
+            } else {
+               String text = ((String) child).trim();
+               if (text.length() > 0) {
+                  addMember(members, "content", text);
+               }
+            }
+         }
+      }
+
+      // An element with content but no members becomes an empty string, an
+      // element with only text becomes the text
+      if (childCount > 0 && members.isEmpty()) {
+         value("");
+      } else if (childCount > 0 && members.size() == 1 && members.containsKey("content")) {
+         memberValue(members.get("content"));
+      } else {
+         beginObject();
+         for (Map.Entry<String,List<Object>> member : members.entrySet()) {
+            name(member.getKey());
+            memberValue(member.getValue());
+         }
+         endObject();
+      }
+   }
+
+   /**
+    * Writes the value of a member. A value that occurs more than once is
+    * written as an array.
+    *
+    * @param values
+    *    the values, each either a <code>String</code> or an
+    *    <code>Element</code>, cannot be <code>null</code> and cannot be
+    *    empty.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   private void memberValue(List<Object> values) throws IOException {
+      int count = values.size();
+      if (count > 1) {
+         beginArray();
+      }
+      for (int i = 0; i < count; i++) {
+         Object value = values.get(i);
+         if (value instanceof Element) {
+            element((Element) value);
+         } else {
+            value((String) value);
+         }
+      }
+      if (count > 1) {
+         endArray();
+      }
+   }
+
+   /**
+    * Adds a value to a member.
+    *
+    * @param members
+    *    the members, cannot be <code>null</code>.
+    *
+    * @param name
+    *    the name of the member, cannot be <code>null</code>.
+    *
+    * @param value
+    *    the value, either a <code>String</code> or an <code>Element</code>,
+    *    cannot be <code>null</code>.
+    */
+   private static void addMember(Map<String,List<Object>> members, String name, Object value) {
+      List<Object> values = members.get(name);
+      if (values == null) {
+         values = new ArrayList<Object>(1);
+         members.put(name, values);
+      }
+      values.add(value);
+   }
+
+   /**
+    * Combines a prefix and a local name.
+    *
+    * @param prefix
+    *    the prefix, or <code>null</code>.
+    *
+    * @param localName
+    *    the local name, cannot be <code>null</code>.
+    *
+    * @return
+    *    the qualified name, never <code>null</code>.
+    */
+   private static String qualifiedName(String prefix, String localName) {
+      return (prefix == null) ? localName : prefix + ':' + localName;
+   }
+
+   /**
+    * Writes a comma, if needed.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   private void separate() throws IOException {
+      if (_needComma) {
+         _out.write(',');
+      }
+   }
+
+   /**
+    * Writes a string in quotes, escaped as done by the <code>quote</code>
+    * method of class <code>org.json.JSONObject</code>.
+    *
+    * @param s
+    *    the string, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    in case of an I/O error.
+    */
+   private void quote(String s) throws IOException {
+      _out.write('"');
+      int length = s.length();
+      int start = 0;
+      for (int i = 0; i < length; i++) {
+         char c = s.charAt(i);
+         String escaped;
+         if (c == '"') {
+            escaped = "\\\"";
+         } else if (c == '\\') {
+            escaped = "\\\\";
+         } else if (c == '/' && i > 0 && s.charAt(i - 1) == '<') {
+            escaped = "\\/";
+         } else if (c >= ' ') {
+            continue;
+         } else if (c == '\b') {
+            escaped = "\\b";
+         } else if (c == '\t') {
+            escaped = "\\t";
+         } else if (c == '\n') {
+            escaped = "\\n";
+         } else if (c == '\f') {
+            escaped = "\\f";
+         } else if (c == '\r') {
+            escaped = "\\r";
+         } else {
+            String hex = Integer.toHexString(c);
+            escaped = "\\u0000".substring(0, 6 - hex.length()) + hex;
+         }
+         _out.write(s, start, i - start);
+         _out.write(escaped);
+         start = i + 1;
+      }
+      _out.write(s, start, length - start);
+      _out.write('"');
+   }
+}
@@ -6,9 +6,8 @@
  */
 package org.xins.server;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -17,24 +16,28 @@ import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
-import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.fileupload.FileItem;
-import org.apache.commons.fileupload.FileItemFactory;
-import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadBase;
 import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 
 import org.xins.common.MandatoryArgumentChecker;
-import org.xins.common.text.TextUtils;
 import org.xins.common.types.standard.Hex;
 
 /**
  * Servlet request wrapper to support RFC 1867 multipart form submissions.
- * Note that all file uploads will be stored in memory, inside the request.
- * All metadata, such as the file names, are discarded, only the file contents
- * are available.
+ * Files larger than the threshold of the file item factory are spooled to
+ * disk while the request is parsed, and the total size of the request is
+ * limited by the specified {@link ServletFileUpload}.
+ *
+ * <p>In streaming mode, the uploaded files are available as
+ * {@link UploadedFile} objects and are not available as parameters. Otherwise
+ * the content of each file is converted to a hexadecimal string and stored
+ * as the value of the parameter; the file names are discarded.
+ *
+ * <p>The method {@link #cleanUp()} must be called once the request has been
+ * handled, to delete the temporary files.
  *
  * @author <a href="mailto:ernst@ernstdehaan.com">Ernst de Haan</a>
  * @author <a href="mailto:anthony.goubard@japplis.com">Anthony Goubard</a>
@@ -80,27 +83,35 @@ extends HttpServletRequestWrapper {
     *    the original {@link HttpServletRequest} to interpret and to wrap
     *    around, cannot be <code>null</code>.
     *
+    * @param upload
+    *    the file upload handler, that determines the size limits and where
+    *    large files are stored, cannot be <code>null</code>.
+    *
+    * @param streaming
+    *    <code>true</code> if the uploaded files should be made available as
+    *    {@link UploadedFile} objects, <code>false</code> if they should be
+    *    converted to hexadecimal parameter values.
+    *
     * @throws IllegalArgumentException
-    *    if <code>httpRequest == null</code>.
+    *    if <code>httpRequest == null || upload == null</code>.
     *
     * @throws IOException
-    *    in case the request could not be analyzed or in case of a different
-    *    kind of I/O error.
+    *    in case the request could not be analyzed, in case it exceeds the
+    *    size limits (see {@link #isSizeLimitExceeded(IOException)}) or in
+    *    case of a different kind of I/O error.
     */
-   MultipartServletRequestWrapper(HttpServletRequest httpRequest)
+   MultipartServletRequestWrapper(HttpServletRequest httpRequest,
+                                  ServletFileUpload  upload,
+                                  boolean            streaming)
    throws IllegalArgumentException, IOException {
-      
+
       // Explicitly invoke superclass constructor
       super(httpRequest);
 
       // Check preconditions
-      MandatoryArgumentChecker.check("httpRequest", httpRequest);
+      MandatoryArgumentChecker.check("httpRequest", httpRequest, "upload", upload);
 
-      // Prepare the Commons FileUpload library
-      FileItemFactory diskStore = new DiskFileItemFactory();
-      ServletFileUpload  upload = new ServletFileUpload(diskStore);
-
-      // Parse the request
+      // Parse the request, large files are spooled to disk
       List itemList;
       try {
          itemList = upload.parseRequest(httpRequest);
@@ -108,51 +119,79 @@ extends HttpServletRequestWrapper {
          throw newIOException("Failed to parse HTTP file upload (RFC 1867) request.", cause);
       }
 
-      // Convert the list to a Map
-      _parameters = new HashMap<String,String>();
-      for (int i = 0; i < itemList.size(); i++) {
-         FileItem item = (FileItem) itemList.get(i);
-         String   name = item.getFieldName();
-
-         if (item.isFormField()) {
-            String value = item.getString();
-            _parameters.put(name, value);
-         } else {
-
-            // The file name is not stored and FormState has one value per field
-            // String fileName = item.getName();
-            // _parameters.put(name + "Name", fileName);
-            try {
-
-               // Prepare for reading the input stream
-               InputStream   inputContent = item.getInputStream();
-               ByteArrayOutputStream baos = new ByteArrayOutputStream();
-               int         availableBytes = inputContent.available();
-
-               // Read all input
-               while (availableBytes > 0) {
-                  byte[] buffer = new byte[availableBytes];
-                  inputContent.read(buffer);
-                  baos.write(buffer);
-                  availableBytes = inputContent.available();
-               }
+      String encoding = httpRequest.getCharacterEncoding();
+      _parameters    = new HashMap<String,String>();
+      _uploadedFiles = new HashMap<String,UploadedFile>();
+      try {
+         for (int i = 0; i < itemList.size(); i++) {
+            FileItem item = (FileItem) itemList.get(i);
+            String   name = item.getFieldName();
 
-               // Convert the file content to a hex string
-               byte[] fileContent = baos.toByteArray();
-               _parameters.put(name, Hex.toString(fileContent));
+            if (item.isFormField()) {
+               _parameters.put(name, getString(item, encoding));
+               item.delete();
 
-               // Close the streams
-               inputContent.close();
-               baos.close();
+            // Keep the file on disk or in memory, to be read by the function
+            } else if (streaming) {
+               UploadedFile previous = _uploadedFiles.put(name, new UploadedFile(item));
+               if (previous != null) {
+                  previous.delete();
+               }
 
-            // I/O error
-            } catch (IOException ioe) {
-               throw newIOException("Failed to read the input file.", ioe);
+            // Convert the file content to a hex string
+            } else {
+               _parameters.put(name, Hex.toString(item.get()));
+               item.delete();
             }
          }
+      } catch (RuntimeException exception) {
+         for (int i = 0; i < itemList.size(); i++) {
+            ((FileItem) itemList.get(i)).delete();
+         }
+         throw exception;
       }
    }
 
+   /**
+    * Returns the value of a form field as a string.
+    *
+    * @param item
+    *    the form field, cannot be <code>null</code>.
+    *
+    * @param encoding
+    *    the character encoding of the request, or <code>null</code> to use
+    *    the default encoding.
+    *
+    * @return
+    *    the value, never <code>null</code>.
+    */
+   private static String getString(FileItem item, String encoding) {
+      if (encoding != null) {
+         try {
+            return item.getString(encoding);
+         } catch (UnsupportedEncodingException exception) {
+            // fall through
+         }
+      }
+      return item.getString();
+   }
+
+   /**
+    * Checks whether the specified exception, thrown by the constructor,
+    * indicates that the request exceeds the size limits.
+    *
+    * @param exception
+    *    the exception thrown by the constructor, cannot be <code>null</code>.
+    *
+    * @return
+    *    <code>true</code> if the request or one of the files is too large.
+    */
+   static boolean isSizeLimitExceeded(IOException exception) {
+      Throwable cause = exception.getCause();
+      return cause instanceof FileUploadBase.SizeLimitExceededException
+          || cause instanceof FileUploadBase.FileSizeLimitExceededException;
+   }
+
 
    //-------------------------------------------------------------------------
    // Fields
@@ -162,13 +201,40 @@ extends HttpServletRequestWrapper {
     * The parameter values, indexed by name. Never <code>null</code>,
     * completely and permanently initialized in the constructor.
     */
-   private Map<String,String> _parameters;
-      
+   private final Map<String,String> _parameters;
+
+   /**
+    * The uploaded files, indexed by field name. Never <code>null</code>,
+    * empty unless in streaming mode.
+    */
+   private final Map<String,UploadedFile> _uploadedFiles;
+
 
    //-------------------------------------------------------------------------
    // Methods
    //-------------------------------------------------------------------------
 
+   /**
+    * Returns the uploaded files. The map is empty unless the request was
+    * parsed in streaming mode.
+    *
+    * @return
+    *    the uploaded files, indexed by field name, never <code>null</code>.
+    */
+   Map<String,UploadedFile> getUploadedFiles() {
+      return Collections.unmodifiableMap(_uploadedFiles);
+   }
+
+   /**
+    * Deletes the content of the uploaded files, including the temporary
+    * files.
+    */
+   void cleanUp() {
+      for (UploadedFile file : _uploadedFiles.values()) {
+         file.delete();
+      }
+   }
+
    @Override
    public Map getParameterMap() {
       return Collections.unmodifiableMap(_parameters);
@@ -0,0 +1,180 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.xins.common.MandatoryArgumentChecker;
+import org.xins.common.text.ParseException;
+import org.xins.common.text.SimplePatternParser;
+
+/**
+ * Precompiled simple pattern for function and calling convention names, as
+ * used in access rules. See class {@link SimplePatternParser} for the pattern
+ * syntax.
+ *
+ * <p>A name matches if the regular expression produced by
+ * {@link SimplePatternParser} can be found in it. Patterns without a
+ * <code>'?'</code> wildcard are matched using plain string searches, without
+ * creating a {@link java.util.regex.Matcher}. The pattern <code>"*"</code>
+ * matches any name without even looking at it.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class NamePattern {
+
+   /**
+    * The simple pattern. Never <code>null</code>.
+    */
+   private final String _simplePattern;
+
+   /**
+    * Flag that indicates whether any name matches.
+    */
+   private final boolean _any;
+
+   /**
+    * The literal segments of each alternative, separated by the
+    * <code>'*'</code> wildcard, or <code>null</code> if the regular
+    * expression must be used.
+    */
+   private final String[][] _alternatives;
+
+   /**
+    * The regular expression, used when the pattern contains a
+    * <code>'?'</code> wildcard. Never <code>null</code>.
+    */
+   private final Pattern _regex;
+
+   /**
+    * Constructs a new <code>NamePattern</code>.
+    *
+    * @param simplePattern
+    *    the simple pattern, cannot be <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>simplePattern == null</code>.
+    *
+    * @throws ParseException
+    *    if <code>simplePattern</code> is not a valid simple pattern.
+    */
+   NamePattern(String simplePattern)
+   throws IllegalArgumentException, ParseException {
+
+      // Check preconditions
+      MandatoryArgumentChecker.check("simplePattern", simplePattern);
+
+      // Validate the pattern and keep the regular expression as a fall-back
+      _simplePattern = simplePattern;
+      _regex         = new SimplePatternParser().parse(simplePattern);
+
+      if (simplePattern.indexOf('?') >= 0) {
+         _any          = false;
+         _alternatives = null;
+         return;
+      }
+
+      // Split in alternatives, then in literal segments
+      boolean any = false;
+      List<String[]> alternatives = new ArrayList<String[]>();
+      int start = 0;
+      int length = simplePattern.length();
+      while (start <= length) {
+         int end = simplePattern.indexOf(',', start);
+         if (end < 0) {
+            end = length;
+         }
+         String alternative = simplePattern.substring(start, end);
+         String[] segments = split(alternative);
+         if (segments.length == 0) {
+            any = true;
+         }
+         alternatives.add(segments);
+         start = end + 1;
+      }
+
+      _any          = any;
+      _alternatives = alternatives.toArray(new String[alternatives.size()][]);
+   }
+
+   /**
+    * Splits an alternative in its non-empty literal segments.
+    *
+    * @param alternative
+    *    the alternative, cannot be <code>null</code>.
+    *
+    * @return
+    *    the non-empty segments, in order, never <code>null</code>.
+    */
+   private static String[] split(String alternative) {
+      List<String> segments = new ArrayList<String>();
+      int start = 0;
+      int length = alternative.length();
+      while (start < length) {
+         int end = alternative.indexOf('*', start);
+         if (end < 0) {
+            end = length;
+         }
+         if (end > start) {
+            segments.add(alternative.substring(start, end));
+         }
+         start = end + 1;
+      }
+      return segments.toArray(new String[segments.size()]);
+   }
+
+   /**
+    * Determines whether the specified name matches this pattern.
+    *
+    * @param name
+    *    the name to match, cannot be <code>null</code>.
+    *
+    * @return
+    *    <code>true</code> if the name matches, <code>false</code> otherwise.
+    *
+    * @throws NullPointerException
+    *    if <code>name == null</code>.
+    */
+   boolean matches(String name) throws NullPointerException {
+      if (_any) {
+         return true;
+      } else if (_alternatives == null) {
+         return _regex.matcher(name).find();
+      }
+
+      for (int i = 0; i < _alternatives.length; i++) {
+         String[] segments = _alternatives[i];
+         int position = 0;
+         int j = 0;
+         for (; j < segments.length; j++) {
+            int index = name.indexOf(segments[j], position);
+            if (index < 0) {
+               break;
+            }
+            position = index + segments[j].length();
+         }
+         if (j == segments.length) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Returns the simple pattern.
+    *
+    * @return
+    *    the simple pattern, never <code>null</code>.
+    */
+   public String toString() {
+      return _simplePattern;
+   }
+}
@@ -10,8 +10,6 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +25,7 @@ import org.xins.common.spec.EntityNotFoundException;
 import org.xins.common.spec.FunctionSpec;
 import org.xins.common.spec.InvalidSpecificationException;
 import org.xins.common.spec.ParameterSpec;
+import org.xins.common.text.DateCodec;
 import org.xins.common.text.ParseException;
 import org.xins.common.types.Type;
 import org.xins.common.xml.Element;
@@ -69,26 +68,6 @@ public class SOAPCallingConvention extends CallingConvention {
     */
    protected static final String REQUEST_NAMESPACE = "_namespace";
 
-   /**
-    * The formatter for XINS Date type.
-    */
-   private static final SimpleDateFormat XINS_DATE_FORMATTER = new SimpleDateFormat("yyyyMMdd");
-
-   /**
-    * The formatter for SOAP Date type.
-    */
-   private static final SimpleDateFormat SOAP_DATE_FORMATTER = new SimpleDateFormat("yyyy-MM-dd");
-
-   /**
-    * The formatter for XINS Timestamp type.
-    */
-   private static final SimpleDateFormat XINS_TIMESTAMP_FORMATTER = new SimpleDateFormat("yyyyMMddHHmmss");
-
-   /**
-    * The formatter for SOAP dateType type.
-    */
-   private static final SimpleDateFormat SOAP_TIMESTAMP_FORMATTER = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-
    /**
     * The API. Never <code>null</code>.
     */
@@ -117,6 +96,11 @@ public class SOAPCallingConvention extends CallingConvention {
       return new String[] { "POST" };
    }
 
+   @Override
+   String getRequiredContentType() {
+      return "text/xml";
+   }
+
    @Override
    protected boolean matches(HttpServletRequest httpRequest)
    throws Exception {
@@ -478,21 +462,15 @@ public class SOAPCallingConvention extends CallingConvention {
       }
       if (parameterType instanceof org.xins.common.types.standard.Date) {
          try {
-            synchronized (SOAP_DATE_FORMATTER) {
-               Date date = SOAP_DATE_FORMATTER.parse(value);
-               return XINS_DATE_FORMATTER.format(date);
-            }
-         } catch (java.text.ParseException pe) {
+            return DateCodec.convertPrefix(value, DateCodec.Format.ISO_DATE, DateCodec.Format.XINS_DATE);
+         } catch (ParseException pe) {
             Utils.logProgrammingError(pe);
          }
       }
       if (parameterType instanceof org.xins.common.types.standard.Timestamp) {
          try {
-            synchronized (SOAP_TIMESTAMP_FORMATTER) {
-               Date date = SOAP_TIMESTAMP_FORMATTER.parse(value);
-               return XINS_TIMESTAMP_FORMATTER.format(date);
-            }
-         } catch (java.text.ParseException pe) {
+            return DateCodec.convertPrefix(value, DateCodec.Format.ISO_TIMESTAMP, DateCodec.Format.XINS_TIMESTAMP);
+         } catch (ParseException pe) {
             Utils.logProgrammingError(pe);
          }
       }
@@ -517,21 +495,15 @@ public class SOAPCallingConvention extends CallingConvention {
    protected String soapOutputValueTransformation(Type parameterType, String value) throws InvalidSpecificationException {
       if (parameterType instanceof org.xins.common.types.standard.Date) {
          try {
-            synchronized (SOAP_DATE_FORMATTER) {
-               Date date = XINS_DATE_FORMATTER.parse(value);
-               return SOAP_DATE_FORMATTER.format(date);
-            }
-         } catch (java.text.ParseException pe) {
+            return DateCodec.convert(value, DateCodec.Format.XINS_DATE, DateCodec.Format.ISO_DATE);
+         } catch (ParseException pe) {
             Utils.logProgrammingError(pe);
          }
       }
       if (parameterType instanceof org.xins.common.types.standard.Timestamp) {
          try {
-            synchronized (SOAP_TIMESTAMP_FORMATTER) {
-               Date date = XINS_TIMESTAMP_FORMATTER.parse(value);
-               return SOAP_TIMESTAMP_FORMATTER.format(date);
-            }
-         } catch (java.text.ParseException pe) {
+            return DateCodec.convert(value, DateCodec.Format.XINS_TIMESTAMP, DateCodec.Format.ISO_TIMESTAMP);
+         } catch (ParseException pe) {
             Utils.logProgrammingError(pe);
          }
       }
@@ -7,9 +7,8 @@
 package org.xins.server;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
-import java.io.StringWriter;
-import java.io.Writer;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -189,15 +188,14 @@ public class StandardCallingConvention extends CallingConvention {
       //      because the XINS Client Framework needs to add support as well.
       functionSpec = null;
 
-      // Handle HEAD requests
+      // Handle HEAD requests, only determine the length in bytes
       if ("HEAD".equals(method)) {
-         StringWriter out = new StringWriter();
-         CallResultOutputter.output(out, xinsResult, functionSpec);
-         httpResponse.setContentLength(out.getBuffer().length());
+         long length = CallResultOutputter.getLength(xinsResult, functionSpec);
+         httpResponse.setContentLength((int) length);
 
-      // Handle non-HEAD requests
+      // Handle non-HEAD requests, write the UTF-8 bytes directly
       } else {
-         Writer out = httpResponse.getWriter();
+         OutputStream out = httpResponse.getOutputStream();
          CallResultOutputter.output(out, xinsResult, functionSpec);
          out.close();
       }
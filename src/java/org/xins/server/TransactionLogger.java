@@ -6,14 +6,51 @@
  */
 package org.xins.server;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.NDC;
+
 import org.xins.common.FormattedParameters;
+import org.xins.common.Utils;
+import org.xins.common.collections.InvalidPropertyValueException;
+import org.xins.common.collections.MissingRequiredPropertyException;
 import org.xins.common.collections.PropertyReader;
+import org.xins.common.manageable.InitializationException;
 import org.xins.common.text.DateConverter;
+import org.xins.common.text.TextUtils;
 import org.xins.common.xml.Element;
 
 /**
  * Transaction logger. Responsible for logging transactions.
  *
+ * <p>By default transactions are logged synchronously, on the thread that
+ * handled the call, and flushed every second if the logger buffers them,
+ * see {@link #needsFlush()}. If the runtime property
+ * <code>org.xins.server.transactionlogger.async</code> is set to
+ * <code>true</code>, then the request thread only adds the transaction to
+ * a bounded queue. A background thread takes the transactions from the
+ * queue in batches and calls
+ * {@link #logTransaction(String,PropertyReader,Element,String,PropertyReader,Element,String,long,long)}
+ * for each of them, with the diagnostic context identifier of the call.
+ * The following runtime properties apply in that case:
+ *
+ * <ul>
+ *    <li><code>org.xins.server.transactionlogger.async.capacity</code>:
+ *        the maximum number of transactions in the queue, defaults to
+ *        8192;
+ *    <li><code>org.xins.server.transactionlogger.async.overflow</code>:
+ *        what to do with a transaction if the queue is full, either
+ *        <code>block</code> to wait until there is room (the default) or
+ *        <code>drop</code> to drop the transaction; dropped transactions
+ *        are counted, see {@link #getDroppedCount()}.
+ * </ul>
+ *
  * @since XINS 3.0
  *
  * @version $Revision$ $Date$
@@ -22,9 +59,78 @@ import org.xins.common.xml.Element;
 public class TransactionLogger {
 
    /**
-    * Converter for transforming dates to text.
+    * The name of the runtime property that specifies whether transactions
+    * are logged asynchronously.
+    */
+   static final String ASYNC_PROPERTY = "org.xins.server.transactionlogger.async";
+
+   /**
+    * The name of the runtime property that specifies the maximum number of
+    * transactions waiting to be logged asynchronously.
+    */
+   static final String ASYNC_CAPACITY_PROPERTY = "org.xins.server.transactionlogger.async.capacity";
+
+   /**
+    * The name of the runtime property that specifies what happens to a
+    * transaction if the asynchronous queue is full.
+    */
+   static final String ASYNC_OVERFLOW_PROPERTY = "org.xins.server.transactionlogger.async.overflow";
+
+   /**
+    * The default maximum number of transactions waiting to be logged
+    * asynchronously.
+    */
+   static final int DEFAULT_ASYNC_CAPACITY = 8192;
+
+   /**
+    * The interval between two flushes of the transactions logged
+    * synchronously, in milliseconds.
+    */
+   private static final long FLUSH_INTERVAL = 1000L;
+
+   /**
+    * The maximum number of transactions the background thread logs in one
+    * batch.
+    */
+   private static final int BATCH_SIZE = 256;
+
+   /**
+    * The queue of transactions to log asynchronously, or <code>null</code>
+    * if transactions are logged synchronously.
+    */
+   private volatile BlockingQueue<Transaction> _queue;
+
+   /**
+    * Flag that indicates whether a transaction is dropped if the queue is
+    * full, instead of waiting until there is room.
+    */
+   private volatile boolean _dropOnOverflow;
+
+   /**
+    * The background thread that logs the queued transactions, or
+    * <code>null</code> if transactions are logged synchronously.
+    */
+   private Writer _writer;
+
+   /**
+    * The timer that flushes the transactions logged synchronously, or
+    * <code>null</code> if transactions are logged asynchronously or do not
+    * need to be flushed.
+    */
+   private Timer _flushTimer;
+
+   /**
+    * The number of transactions that were dropped because the queue was
+    * full. Never <code>null</code>.
+    */
+   private final AtomicLong _droppedCount = new AtomicLong();
+
+   /**
+    * Converter for transforming dates to text. Since a
+    * <code>DateConverter</code> is not thread-safe, it is only used while
+    * holding its lock. Never <code>null</code>.
     */
-   private static final DateConverter DATE_CONVERTER = new DateConverter(true);
+   private final DateConverter _dateConverter = new DateConverter(true);
 
    /**
     * Constructs a new <code>TransactionLogger</code> object.
@@ -33,6 +139,198 @@ public class TransactionLogger {
       // empty
    }
 
+   /**
+    * Configures this transaction logger from the runtime properties and
+    * starts the background thread if transactions should be logged
+    * asynchronously. This method is called by the API once it is
+    * initialized.
+    *
+    * @param settings
+    *    the runtime properties, cannot be <code>null</code>.
+    *
+    * @throws MissingRequiredPropertyException
+    *    if a required runtime property is missing.
+    *
+    * @throws InvalidPropertyValueException
+    *    if one of the runtime properties has an invalid value.
+    *
+    * @throws InitializationException
+    *    if the initialization failed for some other reason.
+    */
+   final void configure(PropertyReader settings)
+   throws MissingRequiredPropertyException,
+          InvalidPropertyValueException,
+          InitializationException {
+
+      // Determine whether transactions are logged asynchronously; the
+      // properties are checked before the subclass configures itself, so
+      // that it does not open resources that are not released
+      String async = settings.get(ASYNC_PROPERTY);
+      boolean asynchronous;
+      if (TextUtils.isEmpty(async) || TextUtils.fuzzyEquals("false", async)) {
+         asynchronous = false;
+      } else if (TextUtils.fuzzyEquals("true", async)) {
+         asynchronous = true;
+      } else {
+         throw new InvalidPropertyValueException(ASYNC_PROPERTY, async,
+            "Expected either \"true\" or \"false\".");
+      }
+
+      // Determine the capacity of the queue
+      int capacity = DEFAULT_ASYNC_CAPACITY;
+      String value = settings.get(ASYNC_CAPACITY_PROPERTY);
+      if (asynchronous && ! TextUtils.isEmpty(value)) {
+         try {
+            capacity = Integer.parseInt(value.trim());
+         } catch (NumberFormatException exception) {
+            capacity = -1;
+         }
+         if (capacity < 1) {
+            throw new InvalidPropertyValueException(ASYNC_CAPACITY_PROPERTY, value,
+               "Invalid capacity. Must be a positive integer number (32-bit signed).");
+         }
+      }
+
+      // Determine what to do if the queue is full
+      value = settings.get(ASYNC_OVERFLOW_PROPERTY);
+      boolean dropOnOverflow;
+      if (! asynchronous || TextUtils.isEmpty(value) || TextUtils.fuzzyEquals("block", value)) {
+         dropOnOverflow = false;
+      } else if (TextUtils.fuzzyEquals("drop", value)) {
+         dropOnOverflow = true;
+      } else {
+         throw new InvalidPropertyValueException(ASYNC_OVERFLOW_PROPERTY, value,
+            "Expected either \"block\" or \"drop\".");
+      }
+
+      // Let the subclass configure itself
+      configureImpl(settings);
+
+      // Flush the transactions logged synchronously periodically, instead of
+      // after each transaction
+      if (! asynchronous) {
+         if (needsFlush()) {
+            _flushTimer = new Timer("XINS transaction log flusher", true);
+            _flushTimer.schedule(new TimerTask() {
+               public void run() {
+                  flushQuietly();
+               }
+            }, FLUSH_INTERVAL, FLUSH_INTERVAL);
+         }
+         return;
+      }
+
+      // Start logging asynchronously
+      _dropOnOverflow = dropOnOverflow;
+      BlockingQueue<Transaction> queue = new ArrayBlockingQueue<Transaction>(capacity);
+      _writer = new Writer(queue);
+      _queue = queue;
+      _writer.start();
+   }
+
+   /**
+    * Stops logging asynchronously. The transactions that are still queued
+    * are logged first. Transactions passed to this logger afterwards are
+    * logged synchronously. This method is called by the API when this
+    * logger is no longer used.
+    */
+   final void dispose() {
+      if (_flushTimer != null) {
+         _flushTimer.cancel();
+         _flushTimer = null;
+      }
+      BlockingQueue<Transaction> queue = _queue;
+      if (queue != null) {
+         _queue = null;
+         _writer.interrupt();
+         try {
+            _writer.join();
+         } catch (InterruptedException exception) {
+            Utils.logIgnoredException(exception);
+            Thread.currentThread().interrupt();
+         }
+      }
+
+      // Let the subclass release its resources
+      try {
+         disposeImpl();
+      } catch (Throwable exception) {
+         Utils.logIgnoredException(exception);
+      }
+   }
+
+   /**
+    * Configures this transaction logger from the runtime properties
+    * (implementation method). This method is called before transactions
+    * are logged. The default implementation does nothing.
+    *
+    * @param settings
+    *    the runtime properties, never <code>null</code>.
+    *
+    * @throws MissingRequiredPropertyException
+    *    if a required runtime property is missing.
+    *
+    * @throws InvalidPropertyValueException
+    *    if one of the runtime properties has an invalid value.
+    *
+    * @throws InitializationException
+    *    if the initialization failed for some other reason.
+    */
+   protected void configureImpl(PropertyReader settings)
+   throws MissingRequiredPropertyException,
+          InvalidPropertyValueException,
+          InitializationException {
+      // empty
+   }
+
+   /**
+    * Indicates whether this transaction logger buffers the logged
+    * transactions, so that {@link #flush()} needs to be called periodically
+    * when transactions are logged synchronously. The default implementation
+    * returns <code>false</code>, so that no thread is started to flush.
+    *
+    * @return
+    *    <code>true</code> if {@link #flush()} needs to be called every
+    *    second, <code>false</code> otherwise.
+    */
+   protected boolean needsFlush() {
+      return false;
+   }
+
+   /**
+    * Flushes the logged transactions (implementation method). This method
+    * is called every second if transactions are logged synchronously and
+    * {@link #needsFlush()} returns <code>true</code>, and after each batch
+    * of transactions that is logged asynchronously. It is called on a
+    * background thread. The default implementation does nothing.
+    */
+   protected void flush() {
+      // empty
+   }
+
+   /**
+    * Releases the resources of this transaction logger (implementation
+    * method). This method is called when the logger is no longer used,
+    * after the queued transactions are logged; it may be called more than
+    * once. Transactions that are passed to this logger afterwards should
+    * still be logged, if possible. The default implementation does nothing.
+    */
+   protected void disposeImpl() {
+      // empty
+   }
+
+   /**
+    * Returns the number of transactions that were not logged because the
+    * asynchronous queue was full. This is always 0 if transactions are
+    * logged synchronously or if the overflow policy is <code>block</code>.
+    *
+    * @return
+    *    the number of dropped transactions, since this logger was created.
+    */
+   public final long getDroppedCount() {
+      return _droppedCount.get();
+   }
+
    /**
     * Logs the specified transaction. This is the main entry point for this
     * class.
@@ -72,6 +370,15 @@ public class TransactionLogger {
          resultCode = "0";
       }
 
+      // Queue the transaction if it is logged asynchronously
+      BlockingQueue<Transaction> queue = _queue;
+      if (queue != null) {
+         Transaction transaction = new Transaction(request, result, resultCode, ip, start, duration);
+         if (enqueue(queue, transaction)) {
+            return;
+         }
+      }
+
       // Delegate to lower-level method
       logTransaction(request.getFunctionName(),
                      request.getParameters(),
@@ -126,7 +433,10 @@ public class TransactionLogger {
                                  long           duration) {
 
       // Serialize the start date and the input and output data
-      String serStart  = DATE_CONVERTER.format(start);
+      String serStart;
+      synchronized (_dateConverter) {
+         serStart = _dateConverter.format(start);
+      }
       Object inParams  = new FormattedParameters(requestParams, requestDataElement);
       Object outParams = new FormattedParameters(resultParams,  resultDataElement );
 
@@ -134,4 +444,231 @@ public class TransactionLogger {
       Log.log_3540(serStart, ip, functionName, duration, resultCode, inParams, outParams);
       Log.log_3541(serStart, ip, functionName, duration, resultCode);
    }
+
+   /**
+    * Adds a transaction to the queue, applying the overflow policy.
+    *
+    * @param queue
+    *    the queue, cannot be <code>null</code>.
+    *
+    * @param transaction
+    *    the transaction to add, cannot be <code>null</code>.
+    *
+    * @return
+    *    <code>true</code> if the transaction was queued or dropped,
+    *    <code>false</code> if the caller should log it itself.
+    */
+   private boolean enqueue(BlockingQueue<Transaction> queue, Transaction transaction) {
+      if (_dropOnOverflow) {
+         if (! queue.offer(transaction)) {
+            _droppedCount.incrementAndGet();
+            return true;
+         }
+      } else {
+         try {
+            queue.put(transaction);
+         } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+         }
+      }
+
+      // If logging asynchronously stopped in the mean time, then the
+      // transaction may not be taken from the queue anymore
+      if (_queue != queue) {
+         List<Transaction> remaining = new ArrayList<Transaction>();
+         queue.drainTo(remaining);
+         for (Transaction t : remaining) {
+            t.log(this);
+         }
+         flushQuietly();
+      }
+      return true;
+   }
+
+   /**
+    * Calls {@link #flush()}, logging any exception it throws.
+    */
+   private void flushQuietly() {
+      try {
+         flush();
+      } catch (Throwable exception) {
+         Utils.logIgnoredException(exception);
+      }
+   }
+
+   /**
+    * Transaction waiting to be logged. Only the raw fields are stored, they
+    * are formatted when the transaction is logged.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class Transaction {
+
+      /**
+       * The function request. Never <code>null</code>.
+       */
+      private final FunctionRequest _request;
+
+      /**
+       * The function result. Never <code>null</code>.
+       */
+      private final FunctionResult _result;
+
+      /**
+       * The result code. Never <code>null</code>.
+       */
+      private final String _resultCode;
+
+      /**
+       * The IP address of the caller.
+       */
+      private final String _ip;
+
+      /**
+       * The start of the call, in milliseconds since the Epoch.
+       */
+      private final long _start;
+
+      /**
+       * The duration of the call, in milliseconds.
+       */
+      private final long _duration;
+
+      /**
+       * The diagnostic context identifier of the call, or <code>null</code>
+       * if there is none.
+       */
+      private final String _contextID;
+
+      /**
+       * Constructs a new <code>Transaction</code>, on the thread that
+       * handled the call.
+       *
+       * @param request
+       *    the function request, cannot be <code>null</code>.
+       *
+       * @param result
+       *    the function result, cannot be <code>null</code>.
+       *
+       * @param resultCode
+       *    the result code, cannot be <code>null</code>.
+       *
+       * @param ip
+       *    the IP address of the caller.
+       *
+       * @param start
+       *    the start of the call, in milliseconds since the Epoch.
+       *
+       * @param duration
+       *    the duration of the call, in milliseconds.
+       */
+      Transaction(FunctionRequest request, FunctionResult result, String resultCode,
+                  String ip, long start, long duration) {
+         _request    = request;
+         _result     = result;
+         _resultCode = resultCode;
+         _ip         = ip;
+         _start      = start;
+         _duration   = duration;
+         _contextID  = NDC.peek();
+      }
+
+      /**
+       * Logs this transaction, with the diagnostic context identifier of the
+       * call.
+       *
+       * @param logger
+       *    the transaction logger, cannot be <code>null</code>.
+       */
+      void log(TransactionLogger logger) {
+         boolean pushed = _contextID != null && _contextID.length() > 0;
+         if (pushed) {
+            NDC.push(_contextID);
+         }
+         try {
+            logger.logTransaction(_request.getFunctionName(),
+                                  _request.getParameters(),
+                                  _request.getDataElement(),
+                                  _resultCode,
+                                  _result.getParameters(),
+                                  _result.getDataElement(),
+                                  _ip,
+                                  _start,
+                                  _duration);
+         } catch (Throwable exception) {
+            Utils.logIgnoredException(exception);
+         } finally {
+            if (pushed) {
+               NDC.pop();
+            }
+         }
+      }
+   }
+
+   /**
+    * Background thread that logs the queued transactions in batches.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private final class Writer extends Thread {
+
+      /**
+       * The queue to take the transactions from. Never <code>null</code>.
+       */
+      private final BlockingQueue<Transaction> _writerQueue;
+
+      /**
+       * Constructs a new <code>Writer</code>.
+       *
+       * @param queue
+       *    the queue to take the transactions from, cannot be
+       *    <code>null</code>.
+       */
+      Writer(BlockingQueue<Transaction> queue) {
+         super("XINS transaction logger");
+         setDaemon(true);
+         _writerQueue = queue;
+      }
+
+      /**
+       * Logs the queued transactions until logging asynchronously is
+       * stopped, then logs the transactions that are still queued.
+       */
+      public void run() {
+         List<Transaction> batch = new ArrayList<Transaction>(BATCH_SIZE);
+         long reportedDropped = 0L;
+         while (_queue == _writerQueue) {
+            try {
+               batch.add(_writerQueue.take());
+            } catch (InterruptedException exception) {
+               break;
+            }
+            _writerQueue.drainTo(batch, BATCH_SIZE - 1);
+            for (Transaction transaction : batch) {
+               transaction.log(TransactionLogger.this);
+            }
+            batch.clear();
+            flushQuietly();
+
+            // Report the transactions that were dropped since the last batch
+            long dropped = _droppedCount.get();
+            if (dropped != reportedDropped) {
+               Log.log_3542(dropped - reportedDropped, dropped);
+               reportedDropped = dropped;
+            }
+         }
+
+         // Log the remaining transactions
+         _writerQueue.drainTo(batch);
+         for (Transaction transaction : batch) {
+            transaction.log(TransactionLogger.this);
+         }
+         flushQuietly();
+      }
+   }
 }
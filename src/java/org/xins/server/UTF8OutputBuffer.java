@@ -0,0 +1,319 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.znerd.xmlenc.InvalidXMLException;
+
+/**
+ * Buffer that encodes text to UTF-8 and writes the bytes to an output stream
+ * in blocks. Without an output stream, the bytes are only counted, so the
+ * length of the output can be determined without keeping it in memory.
+ *
+ * <p>Each thread has one buffer, which is reused for every output. If the
+ * buffer of the current thread is in use already, then a new one is
+ * created.
+ *
+ * <p>This class is not thread-safe, each instance should only be used by
+ * the thread that obtained it.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+final class UTF8OutputBuffer {
+
+   /**
+    * The size of the buffer, in bytes.
+    */
+   private static final int SIZE = 8192;
+
+   /**
+    * The buffer of each thread.
+    */
+   private static final ThreadLocal<UTF8OutputBuffer> BUFFERS = new ThreadLocal<UTF8OutputBuffer>() {
+      protected UTF8OutputBuffer initialValue() {
+         return new UTF8OutputBuffer();
+      }
+   };
+
+   /**
+    * The bytes not yet written. Never <code>null</code>.
+    */
+   private final byte[] _bytes;
+
+   /**
+    * The number of bytes in {@link #_bytes}.
+    */
+   private int _position;
+
+   /**
+    * The number of bytes written or counted so far, excluding the bytes in
+    * {@link #_bytes}.
+    */
+   private long _count;
+
+   /**
+    * The output stream, or <code>null</code> if the bytes are only counted.
+    */
+   private OutputStream _out;
+
+   /**
+    * Flag that indicates whether this buffer is in use.
+    */
+   private boolean _inUse;
+
+   /**
+    * Constructs a new <code>UTF8OutputBuffer</code>.
+    */
+   private UTF8OutputBuffer() {
+      _bytes = new byte[SIZE];
+   }
+
+   /**
+    * Returns an empty buffer for the current thread. The caller must call
+    * {@link #release()} when done, also if an exception is thrown.
+    *
+    * @param out
+    *    the output stream to write the bytes to, or <code>null</code> to
+    *    only count them.
+    *
+    * @return
+    *    the buffer, never <code>null</code>.
+    */
+   static UTF8OutputBuffer get(OutputStream out) {
+      UTF8OutputBuffer buffer = BUFFERS.get();
+      if (buffer._inUse) {
+         buffer = new UTF8OutputBuffer();
+      }
+      buffer._inUse    = true;
+      buffer._out      = out;
+      buffer._position = 0;
+      buffer._count    = 0L;
+      return buffer;
+   }
+
+   /**
+    * Converts an ASCII string to bytes, for output with
+    * {@link #write(byte[])}.
+    *
+    * @param s
+    *    the string, should only contain ASCII characters, cannot be
+    *    <code>null</code>.
+    *
+    * @return
+    *    the bytes, never <code>null</code>.
+    */
+   static byte[] ascii(String s) {
+      byte[] bytes = new byte[s.length()];
+      for (int i = 0; i < bytes.length; i++) {
+         bytes[i] = (byte) s.charAt(i);
+      }
+      return bytes;
+   }
+
+   /**
+    * Writes the buffered bytes to the output stream, or counts them.
+    *
+    * @throws IOException
+    *    if the bytes cannot be written.
+    */
+   private void drain() throws IOException {
+      if (_out != null && _position > 0) {
+         _out.write(_bytes, 0, _position);
+      }
+      _count   += _position;
+      _position = 0;
+   }
+
+   /**
+    * Writes a single byte.
+    *
+    * @param b
+    *    the byte.
+    *
+    * @throws IOException
+    *    if the buffer was full and could not be written.
+    */
+   void write(int b) throws IOException {
+      if (_position == SIZE) {
+         drain();
+      }
+      _bytes[_position++] = (byte) b;
+   }
+
+   /**
+    * Writes bytes, typically fixed markup.
+    *
+    * @param bytes
+    *    the bytes, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    if the buffer was full and could not be written.
+    */
+   void write(byte[] bytes) throws IOException {
+      int length = bytes.length;
+      if (_position + length > SIZE) {
+         drain();
+         if (length > SIZE) {
+            if (_out != null) {
+               _out.write(bytes);
+            }
+            _count += length;
+            return;
+         }
+      }
+      System.arraycopy(bytes, 0, _bytes, _position, length);
+      _position += length;
+   }
+
+   /**
+    * Writes text, encoded as UTF-8, without any escaping.
+    *
+    * @param s
+    *    the text, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    if the buffer was full and could not be written.
+    */
+   void writeRaw(String s) throws IOException {
+      int length = s.length();
+      for (int i = 0; i < length; i++) {
+         char c = s.charAt(i);
+         if (c < 0x80) {
+            write(c);
+         } else {
+            i = writeNonASCII(s, i, length);
+         }
+      }
+   }
+
+   /**
+    * Writes XML character data, encoded as UTF-8. The characters
+    * <code>&amp;</code>, <code>&lt;</code> and <code>&gt;</code> are
+    * escaped and, in attribute values, the quote as well.
+    *
+    * @param s
+    *    the text, cannot be <code>null</code>.
+    *
+    * @param attribute
+    *    <code>true</code> if the text is an attribute value,
+    *    <code>false</code> otherwise.
+    *
+    * @throws InvalidXMLException
+    *    if the text contains a character that is not allowed in XML.
+    *
+    * @throws IOException
+    *    if the buffer was full and could not be written.
+    */
+   void writeText(String s, boolean attribute)
+   throws InvalidXMLException, IOException {
+      int length = s.length();
+      for (int i = 0; i < length; i++) {
+         char c = s.charAt(i);
+         if (c >= 0x80) {
+            i = writeNonASCII(s, i, length);
+         } else if (c == '&') {
+            writeASCII("&amp;");
+         } else if (c == '<') {
+            writeASCII("&lt;");
+         } else if (c == '>') {
+            writeASCII("&gt;");
+         } else if (c == '"' && attribute) {
+            writeASCII("&quot;");
+         } else if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+            throw new InvalidXMLException("The character 0x" + Integer.toHexString(c) + " is not allowed in XML.");
+         } else {
+            write(c);
+         }
+      }
+   }
+
+   /**
+    * Writes an ASCII string.
+    *
+    * @param s
+    *    the string, cannot be <code>null</code>.
+    *
+    * @throws IOException
+    *    if the buffer was full and could not be written.
+    */
+   private void writeASCII(String s) throws IOException {
+      for (int i = 0; i < s.length(); i++) {
+         write(s.charAt(i));
+      }
+   }
+
+   /**
+    * Writes a non-ASCII character as UTF-8. A surrogate pair is written as
+    * one 4-byte sequence, a lone surrogate as a question mark, like
+    * {@link String#getBytes(String)} does.
+    *
+    * @param s
+    *    the string, cannot be <code>null</code>.
+    *
+    * @param i
+    *    the index of the character in the string.
+    *
+    * @param length
+    *    the length of the string.
+    *
+    * @return
+    *    the index of the last character written, either <code>i</code> or
+    *    <code>i + 1</code> for a surrogate pair.
+    *
+    * @throws IOException
+    *    if the buffer was full and could not be written.
+    */
+   private int writeNonASCII(String s, int i, int length) throws IOException {
+      char c = s.charAt(i);
+      if (c < 0x800) {
+         write(0xC0 | (c >> 6));
+         write(0x80 | (c & 0x3F));
+      } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+         write(0xE0 | (c >> 12));
+         write(0x80 | ((c >> 6) & 0x3F));
+         write(0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+         int codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+         write(0xF0 | (codePoint >> 18));
+         write(0x80 | ((codePoint >> 12) & 0x3F));
+         write(0x80 | ((codePoint >> 6) & 0x3F));
+         write(0x80 | (codePoint & 0x3F));
+         return i + 1;
+      } else {
+         write('?');
+      }
+      return i;
+   }
+
+   /**
+    * Writes the remaining bytes.
+    *
+    * @return
+    *    the total number of bytes written or counted.
+    *
+    * @throws IOException
+    *    if the remaining bytes could not be written.
+    */
+   long finish() throws IOException {
+      drain();
+      return _count;
+   }
+
+   /**
+    * Releases this buffer, so that it can be reused by the current thread.
+    * Bytes that were not written yet are discarded.
+    */
+   void release() {
+      _out      = null;
+      _position = 0;
+      _inUse    = false;
+   }
+}
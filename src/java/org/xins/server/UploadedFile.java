@@ -0,0 +1,142 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import org.apache.commons.fileupload.FileItem;
+
+import org.xins.common.MandatoryArgumentChecker;
+
+/**
+ * File uploaded with an RFC 1867 multipart form submission. Small files are
+ * kept in memory, larger files are spooled to a temporary file on disk. The
+ * content is never converted to a string, so that functions can handle large
+ * uploads without loading them in memory.
+ *
+ * <p>The temporary file is deleted once the call has been handled, the
+ * content should therefore not be read after the function returns.
+ *
+ * <p>Uploaded files are only available if the runtime property
+ * <code>org.xins.server.upload.streaming</code> is set to
+ * <code>true</code>, see {@link CallContext#getUploadedFile(String)}.
+ *
+ * @version $Revision$ $Date$
+ *
+ * @since XINS 3.0
+ */
+public final class UploadedFile {
+
+   /**
+    * The underlying file item. Never <code>null</code>.
+    */
+   private final FileItem _item;
+
+   /**
+    * Constructs a new <code>UploadedFile</code> object.
+    *
+    * @param item
+    *    the underlying file item, cannot be <code>null</code>.
+    *
+    * @throws IllegalArgumentException
+    *    if <code>item == null</code>.
+    */
+   UploadedFile(FileItem item) throws IllegalArgumentException {
+      MandatoryArgumentChecker.check("item", item);
+      _item = item;
+   }
+
+   /**
+    * Returns the name of the form field the file was uploaded with.
+    *
+    * @return
+    *    the name of the field, never <code>null</code>.
+    */
+   public String getFieldName() {
+      return _item.getFieldName();
+   }
+
+   /**
+    * Returns the name of the file, as specified by the client.
+    *
+    * @return
+    *    the name of the file, or <code>null</code> if not specified.
+    */
+   public String getFileName() {
+      return _item.getName();
+   }
+
+   /**
+    * Returns the content type of the file, as specified by the client.
+    *
+    * @return
+    *    the content type, or <code>null</code> if not specified.
+    */
+   public String getContentType() {
+      return _item.getContentType();
+   }
+
+   /**
+    * Returns the size of the file.
+    *
+    * @return
+    *    the size of the file in bytes, always &gt;= 0.
+    */
+   public long getSize() {
+      return _item.getSize();
+   }
+
+   /**
+    * Indicates whether the content of the file is kept in memory or spooled
+    * to disk.
+    *
+    * @return
+    *    <code>true</code> if the content is in memory, <code>false</code> if
+    *    it is stored in a temporary file.
+    */
+   public boolean isInMemory() {
+      return _item.isInMemory();
+   }
+
+   /**
+    * Opens a stream to read the content of the file. The caller should close
+    * the stream.
+    *
+    * @return
+    *    a new stream for the content, never <code>null</code>.
+    *
+    * @throws IOException
+    *    if the content cannot be read.
+    */
+   public InputStream getInputStream() throws IOException {
+      return _item.getInputStream();
+   }
+
+   /**
+    * Opens a channel to read the content of the file. The caller should
+    * close the channel.
+    *
+    * @return
+    *    a new channel for the content, never <code>null</code>.
+    *
+    * @throws IOException
+    *    if the content cannot be read.
+    */
+   public ReadableByteChannel getChannel() throws IOException {
+      return Channels.newChannel(_item.getInputStream());
+   }
+
+   /**
+    * Deletes the content of the file, including the temporary file if any.
+    */
+   void delete() {
+      _item.delete();
+   }
+}
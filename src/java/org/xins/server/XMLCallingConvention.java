@@ -42,6 +42,11 @@ public class XMLCallingConvention extends CallingConvention {
       return new String[] { "POST" };
    }
 
+   @Override
+   String getRequiredContentType() {
+      return "text/xml";
+   }
+
    /**
     * Checks if the specified request can be handled by this calling
     * convention.
@@ -10,9 +10,6 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +24,7 @@ import org.xins.common.spec.DataSectionElementSpec;
 import org.xins.common.spec.EntityNotFoundException;
 import org.xins.common.spec.FunctionSpec;
 import org.xins.common.spec.InvalidSpecificationException;
+import org.xins.common.text.DateCodec;
 import org.xins.common.text.ParseException;
 import org.xins.common.text.TextUtils;
 import org.xins.common.types.Type;
@@ -48,21 +46,6 @@ public class XMLRPCCallingConvention extends CallingConvention {
     */
    private static final Object SECRET_KEY = new Object();
 
-   /**
-    * The formatter for XINS Date type.
-    */
-   private static final DateFormat XINS_DATE_FORMATTER = new SimpleDateFormat("yyyyMMdd");
-
-   /**
-    * The formatter for XINS Timestamp type.
-    */
-   private static final DateFormat XINS_TIMESTAMP_FORMATTER = new SimpleDateFormat("yyyyMMddHHmmss");
-
-   /**
-    * The formatter for XML-RPC dateTime.iso8601 type.
-    */
-   private static final DateFormat XML_RPC_TIMESTAMP_FORMATTER = new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss");
-
    /**
     * The key used to store the parsing fault in the request attributes.
     */
@@ -167,6 +150,10 @@ public class XMLRPCCallingConvention extends CallingConvention {
       return new String[] { "POST" };
    }
 
+   String getRequiredContentType() {
+      return "text/xml";
+   }
+
    /**
     * Checks if the specified request can be handled by this calling
     * convention.
@@ -687,15 +674,14 @@ public class XMLRPCCallingConvention extends CallingConvention {
       }
       //System.err.println("type: " + xmlRpcType + " ; value: " + parameterValue);
       if (xmlRpcType.equals("dateTime.iso8601")) {
-         Date date = XML_RPC_TIMESTAMP_FORMATTER.parse(parameterValue);
-         if (parameterType instanceof org.xins.common.types.standard.Date) {
-            synchronized (XINS_DATE_FORMATTER) {
-               return XINS_DATE_FORMATTER.format(date);
-            }
-         } else if (parameterType instanceof org.xins.common.types.standard.Timestamp) {
-            synchronized (XINS_TIMESTAMP_FORMATTER) {
-               return XINS_TIMESTAMP_FORMATTER.format(date);
+         try {
+            if (parameterType instanceof org.xins.common.types.standard.Date) {
+               return DateCodec.convertPrefix(parameterValue, DateCodec.Format.XML_RPC_TIMESTAMP, DateCodec.Format.XINS_DATE);
+            } else if (parameterType instanceof org.xins.common.types.standard.Timestamp) {
+               return DateCodec.convertPrefix(parameterValue, DateCodec.Format.XML_RPC_TIMESTAMP, DateCodec.Format.XINS_TIMESTAMP);
             }
+         } catch (ParseException exception) {
+            throw new java.text.ParseException(exception.getMessage(), 0);
          }
       }
       return parameterValue;
@@ -726,20 +712,16 @@ public class XMLRPCCallingConvention extends CallingConvention {
             throw new java.text.ParseException("Incorrect value for boolean: " + parameterValue, 0);
          }
       } else if (parameterType instanceof org.xins.common.types.standard.Date) {
-         Date date = null;
-         synchronized (XINS_DATE_FORMATTER) {
-            date = XINS_DATE_FORMATTER.parse(parameterValue);
-         }
-         synchronized (XML_RPC_TIMESTAMP_FORMATTER) {
-            return XML_RPC_TIMESTAMP_FORMATTER.format(date);
+         try {
+            return DateCodec.convert(parameterValue, DateCodec.Format.XINS_DATE, DateCodec.Format.XML_RPC_TIMESTAMP);
+         } catch (ParseException exception) {
+            throw new java.text.ParseException(exception.getMessage(), 0);
          }
       } else if (parameterType instanceof org.xins.common.types.standard.Timestamp) {
-         Date date = null;
-         synchronized (XINS_TIMESTAMP_FORMATTER) {
-            date = XINS_TIMESTAMP_FORMATTER.parse(parameterValue);
-         }
-         synchronized (XML_RPC_TIMESTAMP_FORMATTER) {
-            return XML_RPC_TIMESTAMP_FORMATTER.format(date);
+         try {
+            return DateCodec.convert(parameterValue, DateCodec.Format.XINS_TIMESTAMP, DateCodec.Format.XML_RPC_TIMESTAMP);
+         } catch (ParseException exception) {
+            throw new java.text.ParseException(exception.getMessage(), 0);
          }
       }
       return parameterValue;
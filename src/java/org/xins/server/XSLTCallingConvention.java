@@ -8,19 +8,20 @@ package org.xins.server;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.io.Writer;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.URI;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -34,6 +35,8 @@ import org.xins.common.collections.PropertyReader;
 import org.xins.common.manageable.InitializationException;
 import org.xins.common.text.TextUtils;
 
+import org.xml.sax.InputSource;
+
 /**
  * XSLT calling convention.
  * The XSLT calling convention input is the same as for the standard calling
@@ -42,6 +45,8 @@ import org.xins.common.text.TextUtils;
  * XSLT.
  * The Mime type of the return data can be specified in the XSLT using the
  * media-type or method attribute of the XSL output element.
+ * The compiled style sheets are cached. A style sheet that is located in a
+ * file is compiled again when the file is modified.
  * More information about the XSLT calling convention can be found in the
  * <a href="http://www.xins.org/docs/index.html">user guide</a>.
  *
@@ -66,11 +71,26 @@ public class XSLTCallingConvention extends StandardCallingConvention {
 
    /**
     * The name of the input parameter used to clear the template cache.
+    * Templates located in files are compiled again automatically when the
+    * file is modified, clearing the cache is only needed for templates that
+    * are retrieved over HTTP.
     */
    protected static final String CLEAR_TEMPLATE_CACHE_PARAMETER = "_cleartemplatecache";
 
    /**
-    * The XSLT transformer. Never <code>null</code>.
+    * The minimum interval between two checks whether the file of a cached
+    * template was modified, in milliseconds.
+    */
+   private static final long MODIFICATION_CHECK_INTERVAL = 1000L;
+
+   /**
+    * The maximum number of idle transformers kept per template.
+    */
+   private static final int MAX_POOLED_TRANSFORMERS = 16;
+
+   /**
+    * The XSLT transformer factory. Never <code>null</code>. Since the factory
+    * is not thread-safe, access to it is synchronized on the factory itself.
     */
    private final TransformerFactory _factory;
 
@@ -94,9 +114,9 @@ public class XSLTCallingConvention extends StandardCallingConvention {
    private String _location;
 
    /**
-    * Cache for the XSLT templates. Never <code>null</code>.
+    * Cache for the XSLT templates, by location. Never <code>null</code>.
     */
-   private Map<String, Templates> _templateCache;
+   private final ConcurrentHashMap<String, CachedTemplates> _templateCache;
 
    /**
     * Constructs a new <code>XSLTCallingConvention</code> object.
@@ -107,7 +127,7 @@ public class XSLTCallingConvention extends StandardCallingConvention {
       _factory = TransformerFactory.newInstance();
 
       // Initialize the template cache
-      _templateCache = new HashMap<String, Templates>(89);
+      _templateCache = new ConcurrentHashMap<String, CachedTemplates>(89);
    }
 
    @Override
@@ -249,11 +269,6 @@ public class XSLTCallingConvention extends StandardCallingConvention {
          return;
       }
 
-      // Get the XML output similar to the standard calling convention.
-      StringWriter xmlOutput = new StringWriter(1024);
-      CallResultOutputter.output(xmlOutput, xinsResult);
-      xmlOutput.close();
-
       // Get the location of the XSLT file.
       String xsltLocation = null;
       String templatesSuffix = httpRequest.getParameter(TEMPLATE_PARAMETER);
@@ -276,33 +291,22 @@ public class XSLTCallingConvention extends StandardCallingConvention {
       try {
 
          // Load the template or get it from the cache.
-         Templates templates;
-         if (_cacheTemplates && _templateCache.containsKey(xsltLocation)) {
-            templates = _templateCache.get(xsltLocation);
-         } else {
-            Log.log_3443(xsltLocation);
-            templates = _factory.newTemplates(new StreamSource(xsltLocation));
-            if (_cacheTemplates) {
-               _templateCache.put(xsltLocation, templates);
-            }
-         }
-
-         // Proceed to the transformation.
-         Transformer xformer = templates.newTransformer();
-         Source source = new StreamSource(new StringReader(xmlOutput.toString()));
-         Writer buffer = new StringWriter(4096);
-         Result result = new StreamResult(buffer);
-         xformer.transform(source, result);
+         CachedTemplates templates = getTemplates(xsltLocation);
 
          // Determine the MIME type for the output.
-         String mimeType = getContentType(templates.getOutputProperties());
+         String mimeType = getContentType(templates._templates.getOutputProperties());
          if (mimeType != null) {
             httpResponse.setContentType(mimeType);
          }
-
          httpResponse.setStatus(HttpServletResponse.SC_OK);
-         PrintWriter out = httpResponse.getWriter();
-         out.print(buffer.toString());
+
+         // Proceed to the transformation, reading the result directly and
+         // writing the output directly to the response
+         Transformer xformer = templates.takeTransformer();
+         SAXSource source = new SAXSource(new FunctionResultXMLReader(xinsResult), new InputSource());
+         OutputStream out = httpResponse.getOutputStream();
+         xformer.transform(source, new StreamResult(out));
+         templates.returnTransformer(xformer);
          out.close();
       } catch (Exception exception) {
          if (exception instanceof IOException) {
@@ -317,6 +321,85 @@ public class XSLTCallingConvention extends StandardCallingConvention {
       }
    }
 
+   /**
+    * Gets the compiled template at the specified location. If caching is
+    * enabled, then the template is taken from the cache, unless it is not
+    * there yet or its file was modified.
+    *
+    * @param xsltLocation
+    *    the location of the XSLT style sheet, cannot be <code>null</code>.
+    *
+    * @return
+    *    the compiled template, never <code>null</code>.
+    *
+    * @throws TransformerConfigurationException
+    *    if the style sheet cannot be loaded or compiled.
+    */
+   private CachedTemplates getTemplates(String xsltLocation)
+   throws TransformerConfigurationException {
+
+      if (! _cacheTemplates) {
+         return compile(xsltLocation);
+      }
+
+      CachedTemplates cached = _templateCache.get(xsltLocation);
+      if (cached == null) {
+         cached = compile(xsltLocation);
+         CachedTemplates existing = _templateCache.putIfAbsent(xsltLocation, cached);
+         if (existing != null) {
+            cached = existing;
+         }
+      } else if (cached.isModified()) {
+         Log.log_3445(xsltLocation);
+         CachedTemplates recompiled = compile(xsltLocation);
+
+         // If the cache was cleared in the meantime, add the template again,
+         // if another thread stored a template, use that one
+         if (! _templateCache.replace(xsltLocation, cached, recompiled)) {
+            CachedTemplates existing = _templateCache.putIfAbsent(xsltLocation, recompiled);
+            if (existing != null) {
+               recompiled = existing;
+            }
+         }
+         cached = recompiled;
+      }
+      return cached;
+   }
+
+   /**
+    * Loads and compiles the XSLT style sheet at the specified location.
+    *
+    * @param xsltLocation
+    *    the location of the XSLT style sheet, cannot be <code>null</code>.
+    *
+    * @return
+    *    the compiled template, never <code>null</code>.
+    *
+    * @throws TransformerConfigurationException
+    *    if the style sheet cannot be loaded or compiled.
+    */
+   private CachedTemplates compile(String xsltLocation)
+   throws TransformerConfigurationException {
+
+      // Determine the file of the style sheet, if any, before compiling it
+      File file = null;
+      if (xsltLocation.startsWith("file:")) {
+         try {
+            file = new File(new URI(xsltLocation));
+         } catch (Exception exception) {
+            Utils.logIgnoredException(exception);
+         }
+      }
+      long lastModified = (file == null) ? 0L : file.lastModified();
+
+      Log.log_3443(xsltLocation);
+      Templates templates;
+      synchronized (_factory) {
+         templates = _factory.newTemplates(new StreamSource(xsltLocation));
+      }
+      return new CachedTemplates(templates, file, lastModified);
+   }
+
    /**
     * Gets the MIME type and the character encoding to return for the HTTP response.
     *
@@ -344,4 +427,124 @@ public class XSLTCallingConvention extends StandardCallingConvention {
       }
       return mimeType;
    }
+
+   /**
+    * Compiled XSLT template, with the idle transformers created from it.
+    *
+    * @version $Revision$ $Date$
+    *
+    * @since XINS 3.0
+    */
+   private static final class CachedTemplates {
+
+      /**
+       * The compiled template. Never <code>null</code>.
+       */
+      private final Templates _templates;
+
+      /**
+       * The file the template was read from, or <code>null</code> if it was
+       * not read from a file.
+       */
+      private final File _file;
+
+      /**
+       * The modification time of the file when the template was read.
+       */
+      private final long _lastModified;
+
+      /**
+       * The time of the next check whether the file was modified. Never
+       * <code>null</code>.
+       */
+      private final AtomicLong _nextCheck;
+
+      /**
+       * The idle transformers. Never <code>null</code>.
+       */
+      private final ConcurrentLinkedQueue<Transformer> _transformers;
+
+      /**
+       * The number of idle transformers.
+       */
+      private final AtomicInteger _transformerCount;
+
+      /**
+       * Constructs a new <code>CachedTemplates</code> object.
+       *
+       * @param templates
+       *    the compiled template, cannot be <code>null</code>.
+       *
+       * @param file
+       *    the file the template was read from, or <code>null</code>.
+       *
+       * @param lastModified
+       *    the modification time of the file before it was read.
+       */
+      private CachedTemplates(Templates templates, File file, long lastModified) {
+         _templates        = templates;
+         _file             = file;
+         _lastModified     = lastModified;
+         _nextCheck        = new AtomicLong(System.currentTimeMillis() + MODIFICATION_CHECK_INTERVAL);
+         _transformers     = new ConcurrentLinkedQueue<Transformer>();
+         _transformerCount = new AtomicInteger();
+      }
+
+      /**
+       * Checks whether the file of the template was modified since it was
+       * read. The file is checked at most once per
+       * {@link #MODIFICATION_CHECK_INTERVAL}, by a single thread; the other
+       * threads continue to use this template in the meantime.
+       *
+       * @return
+       *    <code>true</code> if the file was modified, <code>false</code>
+       *    otherwise.
+       */
+      private boolean isModified() {
+         if (_file == null) {
+            return false;
+         }
+         long now       = System.currentTimeMillis();
+         long nextCheck = _nextCheck.get();
+         if (now < nextCheck || ! _nextCheck.compareAndSet(nextCheck, now + MODIFICATION_CHECK_INTERVAL)) {
+            return false;
+         }
+         return _file.lastModified() != _lastModified;
+      }
+
+      /**
+       * Takes an idle transformer, or creates a new one if there is none.
+       *
+       * @return
+       *    the transformer, never <code>null</code>.
+       *
+       * @throws TransformerConfigurationException
+       *    if a new transformer cannot be created.
+       */
+      private Transformer takeTransformer()
+      throws TransformerConfigurationException {
+         Transformer transformer = _transformers.poll();
+         if (transformer == null) {
+            return _templates.newTransformer();
+         }
+         _transformerCount.decrementAndGet();
+         return transformer;
+      }
+
+      /**
+       * Returns a transformer after a successful transformation, so that it
+       * can be reused.
+       *
+       * @param transformer
+       *    the transformer, cannot be <code>null</code>.
+       */
+      private void returnTransformer(Transformer transformer) {
+         if (_transformerCount.incrementAndGet() <= MAX_POOLED_TRANSFORMERS) {
+            transformer.reset();
+            _transformers.add(transformer);
+         } else {
+            _transformerCount.decrementAndGet();
+         }
+      }
+   }
 }
@@ -0,0 +1,64 @@
+/*
+ * $Id$
+ */
+package com.mycompany.allinone.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.xins.server.UploadedFile;
+
+/**
+ * Implementation of the <code>Upload</code> function.
+ *
+ * @version $Revision$ $Date$
+ * @author John Doe (<a href="mailto:john.doe@mycompany.com">john.doe@mycompany.com</a>)
+ */
+public final class UploadImpl extends Upload {
+
+   /**
+    * Constructs a new <code>UploadImpl</code> instance.
+    *
+    * @param api
+    *    the API to which this function belongs, guaranteed to be not
+    *    <code>null</code>.
+    */
+   public UploadImpl(APIImpl api) {
+      super(api);
+   }
+
+   /**
+    * Calls this function. If the function fails, it may throw any kind of
+    * exception. All exceptions will be handled by the caller.
+    *
+    * @param request
+    *    the request, never <code>null</code>.
+    *
+    * @return
+    *    the result of the function call, should never be <code>null</code>.
+    *
+    * @throws Throwable
+    *    if anything went wrong.
+    */
+   public Result call(Request request) throws Throwable {
+      SuccessfulResult result = new SuccessfulResult();
+      UploadedFile file = request.uploadedFile("file");
+      if (file != null) {
+         ByteArrayOutputStream content = new ByteArrayOutputStream();
+         InputStream in = file.getInputStream();
+         try {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+               content.write(buffer, 0, count);
+            }
+         } finally {
+            in.close();
+         }
+         result.setFileName(file.getFileName());
+         result.setSize(file.getSize());
+         result.setContent(content.toString("ISO-8859-1"));
+      }
+      return result;
+   }
+}
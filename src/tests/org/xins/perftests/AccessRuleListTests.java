@@ -0,0 +1,131 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.perftests;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.server.AccessRule;
+import org.xins.server.AccessRuleList;
+
+/**
+ * Performance tests for class <code>AccessRuleList</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class AccessRuleListTests extends TestCase {
+
+   /**
+    * The number of rules in the access rule list.
+    */
+   private static final int RULES = 2000;
+
+   /**
+    * The number of access checks to perform.
+    */
+   private static final int ROUNDS = 200000;
+
+   /**
+    * Constructs a new <code>AccessRuleListTests</code> test suite with the
+    * specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public AccessRuleListTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(AccessRuleListTests.class);
+   }
+
+   /**
+    * Creates the rules: one rule per /24 network, alternating between
+    * allow and deny, and a last rule that allows everyone to call
+    * <code>_GetVersion</code>.
+    *
+    * @return
+    *    the rule descriptors, never <code>null</code>.
+    */
+   private static String[] createRules() {
+      String[] rules = new String[RULES + 1];
+      for (int i = 0; i < RULES; i++) {
+         String type = (i % 2 == 0) ? "allow" : "deny";
+         rules[i] = type + " 10." + (i / 256) + '.' + (i % 256) + ".0/24 Get*,Set*";
+      }
+      rules[RULES] = "allow 0.0.0.0/0 _GetVersion";
+      return rules;
+   }
+
+   /**
+    * Creates the IP addresses to check. Most of them only match the last
+    * rule, which is the worst case for a linear search.
+    *
+    * @return
+    *    the IP addresses, never <code>null</code>.
+    */
+   private static String[] createIPs() {
+      String[] ips = new String[256];
+      for (int i = 0; i < ips.length; i++) {
+         ips[i] = (i % 4 == 0 ? "10." : "192.") + (i % 8) + '.' + i + '.' + (255 - i);
+      }
+      return ips;
+   }
+
+   public void testAccessRuleList() throws Exception {
+      doTestAccessRuleList(0);
+   }
+
+   public void testCachedAccessRuleList() throws Exception {
+      doTestAccessRuleList(1000);
+   }
+
+   private void doTestAccessRuleList(int cacheSize) throws Exception {
+
+      String[] rules = createRules();
+      StringBuffer descriptor = new StringBuffer(rules.length * 40);
+      for (int i = 0; i < rules.length; i++) {
+         if (i > 0) {
+            descriptor.append(';');
+         }
+         descriptor.append(rules[i]);
+      }
+      AccessRuleList list = AccessRuleList.parseAccessRuleList(descriptor.toString(), 0, cacheSize);
+      String[] ips = createIPs();
+
+      for (int i = 0; i < ROUNDS; i++) {
+         list.isAllowed(ips[i % ips.length], "_GetVersion", "_xins-std");
+      }
+   }
+
+   public void testSequentialAccessRules() throws Exception {
+
+      String[] descriptors = createRules();
+      AccessRule[] rules = new AccessRule[descriptors.length];
+      for (int i = 0; i < rules.length; i++) {
+         rules[i] = AccessRule.parseAccessRule(descriptors[i]);
+      }
+      String[] ips = createIPs();
+
+      // Fewer rounds, evaluating every rule is a lot slower
+      int rounds = ROUNDS / 100;
+      for (int i = 0; i < rounds; i++) {
+         Boolean allowed = null;
+         for (int j = 0; j < rules.length && allowed == null; j++) {
+            allowed = rules[j].isAllowed(ips[i % ips.length], "_GetVersion", "_xins-std");
+         }
+      }
+   }
+}
@@ -33,9 +33,16 @@ public class AllTests extends TestSuite {
     */
    public static Test suite() {
       TestSuite suite = new TestSuite();
+      suite.addTestSuite(AccessRuleListTests.class);
       suite.addTestSuite(AllInOneTests.class);
+      suite.addTestSuite(ContextIDGeneratorTests.class);
+      suite.addTestSuite(DateCodecTests.class);
       suite.addTestSuite(DateConverterTests.class);
+      suite.addTestSuite(ElementParserTests.class);
+      suite.addTestSuite(ExpiryFolderTests.class);
       suite.addTestSuite(MandatoryArgumentCheckerTests.class);
+      suite.addTestSuite(TimeOutControllerTests.class);
+      suite.addTestSuite(XinsClientInterceptorTests.class);
       return suite;
    }
 }
@@ -0,0 +1,90 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.perftests;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.server.ContextIDGenerator;
+
+/**
+ * Performance tests for class <code>ContextIDGenerator</code>, generating
+ * context identifiers on several threads at the same time.
+ *
+ * @version $Revision$ $Date$
+ */
+public class ContextIDGeneratorTests extends TestCase {
+
+   private static final int ROUNDS = 2000000;
+
+   /**
+    * Constructs a new <code>ContextIDGeneratorTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public ContextIDGeneratorTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(ContextIDGeneratorTests.class);
+   }
+
+   public void testSingleThread() throws Exception {
+      generateConcurrently(1);
+   }
+
+   public void testFourThreads() throws Exception {
+      generateConcurrently(4);
+   }
+
+   public void testSixteenThreads() throws Exception {
+      generateConcurrently(16);
+   }
+
+   private void generateConcurrently(int threadCount) throws Exception {
+
+      final ContextIDGenerator generator = new ContextIDGenerator("perftest");
+      generator.bootstrap(new BasicPropertyReader());
+      generator.init(new BasicPropertyReader());
+
+      final Throwable[] failure = new Throwable[1];
+      Thread[] threads = new Thread[threadCount];
+      final int rounds = ROUNDS / threadCount;
+      for (int i = 0; i < threadCount; i++) {
+         threads[i] = new Thread() {
+            public void run() {
+               try {
+                  for (int j = 0; j < rounds; j++) {
+                     generator.generate();
+                  }
+               } catch (Throwable exception) {
+                  failure[0] = exception;
+               }
+            }
+         };
+         threads[i].start();
+      }
+      for (int i = 0; i < threadCount; i++) {
+         threads[i].join();
+      }
+
+      if (failure[0] != null) {
+         fail("Generating context identifiers failed: " + failure[0]);
+      }
+   }
+}
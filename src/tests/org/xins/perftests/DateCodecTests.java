@@ -0,0 +1,116 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.perftests;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.text.DateCodec;
+
+/**
+ * Performance tests for class <code>DateCodec</code>, compared with the
+ * shared <code>SimpleDateFormat</code> instances that the SOAP calling
+ * convention used before.
+ *
+ * @version $Revision$ $Date$
+ */
+public class DateCodecTests extends TestCase {
+
+   private static final int ROUNDS = 200000;
+
+   private static final String[] XINS_TIMESTAMPS = {
+      "20070524235907", "19991231000000", "20080229120000", "20070101093015"
+   };
+
+   private static final SimpleDateFormat XINS_TIMESTAMP_FORMATTER = new SimpleDateFormat("yyyyMMddHHmmss");
+
+   private static final SimpleDateFormat SOAP_TIMESTAMP_FORMATTER = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
+   /**
+    * Constructs a new <code>DateCodecTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public DateCodecTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(DateCodecTests.class);
+   }
+
+   public void testSimpleDateFormatConvert() throws Exception {
+      for (int i = 0; i < ROUNDS; i++) {
+         String value = XINS_TIMESTAMPS[i & 3];
+         synchronized (SOAP_TIMESTAMP_FORMATTER) {
+            Date date = XINS_TIMESTAMP_FORMATTER.parse(value);
+            SOAP_TIMESTAMP_FORMATTER.format(date);
+         }
+      }
+   }
+
+   public void testDateCodecConvert() throws Exception {
+      for (int i = 0; i < ROUNDS; i++) {
+         DateCodec.convert(XINS_TIMESTAMPS[i & 3], DateCodec.Format.XINS_TIMESTAMP, DateCodec.Format.ISO_TIMESTAMP);
+      }
+   }
+
+   public void testDateCodecCharBuffer() throws Exception {
+      char[] buffer = new char[DateCodec.Format.ISO_TIMESTAMP.getLength()];
+      for (int i = 0; i < ROUNDS; i++) {
+         long fields = DateCodec.parse(DateCodec.Format.XINS_TIMESTAMP, XINS_TIMESTAMPS[i & 3]);
+         DateCodec.format(DateCodec.Format.ISO_TIMESTAMP, fields, buffer, 0);
+      }
+   }
+
+   public void testSimpleDateFormatConvertConcurrent() throws Exception {
+      runConcurrently(new Runnable() {
+         public void run() {
+            try {
+               testSimpleDateFormatConvert();
+            } catch (Exception exception) {
+               throw new RuntimeException(exception);
+            }
+         }
+      });
+   }
+
+   public void testDateCodecConvertConcurrent() throws Exception {
+      runConcurrently(new Runnable() {
+         public void run() {
+            try {
+               testDateCodecConvert();
+            } catch (Exception exception) {
+               throw new RuntimeException(exception);
+            }
+         }
+      });
+   }
+
+   private static void runConcurrently(Runnable task) throws Exception {
+      Thread[] threads = new Thread[4];
+      for (int i = 0; i < threads.length; i++) {
+         threads[i] = new Thread(task);
+         threads[i].start();
+      }
+      for (int i = 0; i < threads.length; i++) {
+         threads[i].join();
+      }
+   }
+}
@@ -0,0 +1,82 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.perftests;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ElementParser;
+
+/**
+ * Performance tests for class <code>ElementParser</code>, with documents
+ * similar to the results of XINS function calls.
+ *
+ * @version $Revision$ $Date$
+ */
+public class ElementParserTests extends TestCase {
+
+   /**
+    * The number of documents parsed per test.
+    */
+   private static final int ROUNDS = 20000;
+
+   /**
+    * Constructs a new <code>ElementParserTests</code> test suite with the
+    * specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public ElementParserTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(ElementParserTests.class);
+   }
+
+   public void testSmallResult() throws Exception {
+      StringBuffer xml = new StringBuffer();
+      xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><result>");
+      xml.append("<param name=\"java.version\">1.5.0_12</param>");
+      xml.append("<param name=\"xins.version\">3.0</param>");
+      xml.append("<param name=\"xmlenc.version\">0.52</param>");
+      xml.append("</result>");
+      parse(xml.toString().getBytes("UTF-8"), ROUNDS * 5);
+   }
+
+   public void testDataSection() throws Exception {
+      StringBuffer xml = new StringBuffer();
+      xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><result>");
+      xml.append("<param name=\"count\">100</param><data>");
+      for (int i = 0; i < 100; i++) {
+         xml.append("<person id=\"" + i + "\" firstName=\"John\" lastName=\"Doe\" age=\"" + (i % 80) + "\">");
+         xml.append("<address street=\"Main street\" number=\"" + i + "\" city=\"Amsterdam\"/>");
+         xml.append("<note>Customer since 2003</note>");
+         xml.append("</person>");
+      }
+      xml.append("</data></result>");
+      parse(xml.toString().getBytes("UTF-8"), ROUNDS / 10);
+   }
+
+   private void parse(byte[] xml, int rounds) throws Exception {
+      ElementParser parser = new ElementParser();
+      Element element = null;
+      for (int i = 0; i < rounds; i++) {
+         element = parser.parse(xml, 0, xml.length);
+      }
+      assertEquals("result", element.getLocalName());
+   }
+}
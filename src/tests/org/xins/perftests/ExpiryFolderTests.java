@@ -0,0 +1,125 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.perftests;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.collections.expiry.ExpiryFolder;
+import org.xins.common.collections.expiry.ExpiryStrategy;
+
+/**
+ * Performance tests for class <code>ExpiryFolder</code>. A number of
+ * threads look up and store entries in the same folder, while the strategy
+ * expires entries in the background.
+ *
+ * @version $Revision$ $Date$
+ */
+public class ExpiryFolderTests extends TestCase {
+
+   /**
+    * The number of different keys.
+    */
+   private static final int KEYS = 10000;
+
+   /**
+    * The total number of operations, divided over the threads.
+    */
+   private static final int OPERATIONS = 4000000;
+
+   /**
+    * One in this many operations is a <code>put</code>, the others are
+    * <code>get</code>s.
+    */
+   private static final int PUT_RATIO = 10;
+
+   /**
+    * Constructs a new <code>ExpiryFolderTests</code> test suite with the
+    * specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public ExpiryFolderTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(ExpiryFolderTests.class);
+   }
+
+   public void testOneThread() throws Exception {
+      runConcurrently(1);
+   }
+
+   public void testFourThreads() throws Exception {
+      runConcurrently(4);
+   }
+
+   public void testSixteenThreads() throws Exception {
+      runConcurrently(16);
+   }
+
+   private void runConcurrently(int threadCount) throws Exception {
+
+      // Short precision, so that ticks happen during the test
+      ExpiryStrategy strategy = new ExpiryStrategy(2000L, 50L);
+      try {
+         final ExpiryFolder folder = new ExpiryFolder("perftest", strategy);
+         final String[] keys = new String[KEYS];
+         for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key" + i;
+            folder.put(keys[i], keys[i]);
+         }
+
+         final int perThread = OPERATIONS / threadCount;
+         final Throwable[] failure = new Throwable[1];
+         Thread[] threads = new Thread[threadCount];
+         for (int i = 0; i < threadCount; i++) {
+            final Random random = new Random(i);
+            threads[i] = new Thread() {
+               public void run() {
+                  try {
+                     for (int j = 0; j < perThread; j++) {
+                        String key = keys[random.nextInt(KEYS)];
+                        if (j % PUT_RATIO == 0) {
+                           folder.put(key, key);
+                        } else {
+                           folder.get(key);
+                        }
+                     }
+                  } catch (Throwable exception) {
+                     failure[0] = exception;
+                  }
+               }
+            };
+         }
+
+         for (int i = 0; i < threadCount; i++) {
+            threads[i].start();
+         }
+         for (int i = 0; i < threadCount; i++) {
+            threads[i].join();
+         }
+
+         if (failure[0] != null) {
+            throw new Exception("Operation failed.", failure[0]);
+         }
+      } finally {
+         strategy.stop();
+      }
+   }
+}
@@ -0,0 +1,98 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.perftests;
+
+import java.util.concurrent.ExecutorService;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.TimeOutController;
+
+/**
+ * Performance tests for class <code>TimeOutController</code>, comparing the
+ * execution of tasks on a new thread per task with the execution of tasks
+ * on a bounded executor.
+ *
+ * @version $Revision$ $Date$
+ */
+public class TimeOutControllerTests extends TestCase {
+
+   private static final int ROUNDS = 20000;
+
+   private static final int CALLER_THREADS = 16;
+
+   private static final int TIME_OUT = 5000;
+
+   /**
+    * Constructs a new <code>TimeOutControllerTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public TimeOutControllerTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(TimeOutControllerTests.class);
+   }
+
+   public void testThreadPerTask() throws Exception {
+      runConcurrently(null);
+   }
+
+   public void testBoundedExecutor() throws Exception {
+      ExecutorService executor = TimeOutController.createExecutor("perftest", CALLER_THREADS);
+      try {
+         runConcurrently(executor);
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   private void runConcurrently(final ExecutorService executor) throws Exception {
+
+      final Runnable task = new Runnable() {
+         public void run() {
+            // empty, only the execution overhead is measured
+         }
+      };
+
+      final Throwable[] failure = new Throwable[1];
+      Thread[] callers = new Thread[CALLER_THREADS];
+      for (int i = 0; i < CALLER_THREADS; i++) {
+         callers[i] = new Thread() {
+            public void run() {
+               try {
+                  for (int j = 0; j < ROUNDS / CALLER_THREADS; j++) {
+                     TimeOutController.execute(task, TIME_OUT, executor);
+                  }
+               } catch (Throwable exception) {
+                  failure[0] = exception;
+               }
+            }
+         };
+         callers[i].start();
+      }
+      for (int i = 0; i < CALLER_THREADS; i++) {
+         callers[i].join();
+      }
+
+      if (failure[0] != null) {
+         fail("Task execution failed: " + failure[0]);
+      }
+   }
+}
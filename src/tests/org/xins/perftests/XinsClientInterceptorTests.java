@@ -0,0 +1,132 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.perftests;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.xins.common.service.TargetDescriptor;
+import org.xins.common.spring.XinsClientInterceptor;
+
+import com.mycompany.allinone.capi.CAPI;
+
+/**
+ * Performance tests for the method dispatch of class
+ * <code>XinsClientInterceptor</code>, using the generated CAPI of the
+ * <em>allinone</em> API. A method that does not call the API is used, so
+ * that only the dispatch is measured.
+ *
+ * @version $Revision$ $Date$
+ */
+public class XinsClientInterceptorTests extends TestCase {
+
+   private static final int ROUNDS = 1000000;
+
+   private static final Object[] NO_ARGUMENTS = new Object[0];
+
+   private Method _method;
+
+   private Method _capiMethod;
+
+   private XinsClientInterceptor _interceptor;
+
+   /**
+    * Constructs a new <code>XinsClientInterceptorTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public XinsClientInterceptorTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(XinsClientInterceptorTests.class);
+   }
+
+   protected void setUp() throws Exception {
+      _method = Version.class.getMethod("getXINSVersion", new Class[0]);
+      _capiMethod = CAPI.class.getMethod("getXINSVersion", new Class[0]);
+      _interceptor = new XinsClientInterceptor();
+      _interceptor.setServiceInterface(Version.class);
+      _interceptor.setCapiClass(CAPI.class);
+      _interceptor.setServiceUrl("http://localhost:8080/allinone/");
+      _interceptor.afterPropertiesSet();
+   }
+
+   /**
+    * Invokes the CAPI method the way the interceptor did without the
+    * dispatch table: the method of the invocation, which then had to be a
+    * method of the CAPI class, with an access check for each call.
+    */
+   public void testDirectInvoke() throws Exception {
+      CAPI capi = new CAPI(new TargetDescriptor("http://localhost:8080/allinone/"));
+      MethodInvocation invocation = new Invocation(_capiMethod);
+      for (int i = 0; i < ROUNDS; i++) {
+         invocation.getMethod().invoke(capi, invocation.getArguments());
+      }
+   }
+
+   public void testInterceptor() throws Throwable {
+      MethodInvocation invocation = new Invocation(_method);
+      for (int i = 0; i < ROUNDS; i++) {
+         _interceptor.invoke(invocation);
+      }
+   }
+
+   /**
+    * Service interface implemented by the generated CAPI.
+    */
+   public interface Version {
+      String getXINSVersion();
+   }
+
+   /**
+    * Invocation of a method without arguments.
+    */
+   private static final class Invocation implements MethodInvocation {
+
+      private final Method _method;
+
+      Invocation(Method method) {
+         _method = method;
+      }
+
+      public Method getMethod() {
+         return _method;
+      }
+
+      public Object[] getArguments() {
+         return NO_ARGUMENTS;
+      }
+
+      public Object proceed() {
+         throw new UnsupportedOperationException();
+      }
+
+      public Object getThis() {
+         return null;
+      }
+
+      public AccessibleObject getStaticPart() {
+         return _method;
+      }
+   }
+}
@@ -119,7 +119,9 @@ public class AllTests extends TestSuite {
       // Sorted in alphabetic order
 
       suite.addTestSuite(org.xins.tests.common.BeanUtilsTests.class);
+      suite.addTestSuite(org.xins.tests.common.LatencyHistogramTests.class);
       suite.addTestSuite(org.xins.tests.common.MandatoryArgumentCheckerTests.class);
+      suite.addTestSuite(org.xins.tests.common.TimeOutControllerTests.class);
       suite.addTestSuite(org.xins.tests.common.UtilsTests.class);
       suite.addTestSuite(org.xins.tests.common.VarianceComputerTests.class);
 
@@ -140,8 +142,11 @@ public class AllTests extends TestSuite {
       suite.addTestSuite(org.xins.tests.common.collections.expiry.ExpiryStrategyTests.class);
 
       suite.addTestSuite(org.xins.tests.common.http.HTTPCallConfigTests.class);
+      suite.addTestSuite(org.xins.tests.common.http.HTTPConnectionPoolTests.class);
       suite.addTestSuite(org.xins.tests.common.http.HTTPServiceCallerTests.class);
 
+      suite.addTestSuite(org.xins.tests.common.io.FileWatcherTests.class);
+
       suite.addTestSuite(org.xins.tests.common.manageable.InitializationExceptionTests.class);
       suite.addTestSuite(org.xins.tests.common.manageable.ManageableTests.class);
 
@@ -158,12 +163,17 @@ public class AllTests extends TestSuite {
       suite.addTestSuite(org.xins.tests.common.service.DescriptorBuilderTests.class);
       suite.addTestSuite(org.xins.tests.common.service.TargetDescriptorTests.class);
       suite.addTestSuite(org.xins.tests.common.service.GroupDescriptorTests.class);
+      suite.addTestSuite(org.xins.tests.common.service.ServiceCallerTests.class);
       suite.addTestSuite(org.xins.tests.common.service.UnsupportedProtocolExceptionTests.class);
 
       suite.addTestSuite(org.xins.tests.common.servlet.ServletRequestPropertyReaderTests.class);
+      suite.addTestSuite(org.xins.tests.common.servlet.container.HTTPConnectorTests.class);
       suite.addTestSuite(org.xins.tests.common.servlet.container.HTTPServletHandlerTests.class);
       suite.addTestSuite(org.xins.tests.common.servlet.container.XINSServletRequestTests.class);
 
+      suite.addTestSuite(org.xins.tests.common.spring.XinsClientInterceptorTests.class);
+
+      suite.addTestSuite(org.xins.tests.common.text.DateCodecTests.class);
       suite.addTestSuite(org.xins.tests.common.text.DateConverterTests.class);
       suite.addTestSuite(org.xins.tests.common.text.FormatExceptionTests.class);
       suite.addTestSuite(org.xins.tests.common.text.HexConverterTests.class);
@@ -209,20 +219,28 @@ public class AllTests extends TestSuite {
 
       suite.addTestSuite(org.xins.tests.client.async.CallCAPIThreadTests.class);
       suite.addTestSuite(org.xins.tests.client.async.AsynchronousCallTests.class);
+      suite.addTestSuite(org.xins.tests.client.async.CallFutureTests.class);
 
       suite.addTestSuite(org.xins.tests.server.AccessRuleListTests.class);
       suite.addTestSuite(org.xins.tests.server.AccessRuleTests.class);
       suite.addTestSuite(org.xins.tests.server.APITests.class);
       suite.addTestSuite(org.xins.tests.server.APIServletTests.class);
+      suite.addTestSuite(org.xins.tests.server.BinaryTransactionLogTests.class);
       suite.addTestSuite(org.xins.tests.server.CallingConventionTests.class);
+      suite.addTestSuite(org.xins.tests.server.CallResultOutputterTests.class);
+      suite.addTestSuite(org.xins.tests.server.CheckLinksTests.class);
+      suite.addTestSuite(org.xins.tests.server.ContextIDGeneratorTests.class);
       suite.addTestSuite(org.xins.tests.server.FunctionResultTests.class);
       suite.addTestSuite(org.xins.tests.server.IPFilterTests.class);
       suite.addTestSuite(org.xins.tests.server.JSONCallingConventionTests.class);
+      suite.addTestSuite(org.xins.tests.server.JSONConversionTests.class);
       suite.addTestSuite(org.xins.tests.server.JSONRPCCallingConventionTests.class);
       suite.addTestSuite(org.xins.tests.server.MetaFunctionsTests.class);
+      suite.addTestSuite(org.xins.tests.server.MultipartTests.class);
       suite.addTestSuite(org.xins.tests.server.StandardCallingConventionTests.class);
       suite.addTestSuite(org.xins.tests.server.SOAPCallingConventionTests.class);
       suite.addTestSuite(org.xins.tests.server.SOAPMapCallingConventionTests.class);
+      suite.addTestSuite(org.xins.tests.server.TransactionLoggerTests.class);
       suite.addTestSuite(org.xins.tests.server.XMLCallingConventionTests.class);
       suite.addTestSuite(org.xins.tests.server.XMLRPCCallingConventionTests.class);
       suite.addTestSuite(org.xins.tests.server.XSLTCallingConventionTests.class);
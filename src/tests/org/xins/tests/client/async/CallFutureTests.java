@@ -0,0 +1,228 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.client.async;
+
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import com.mycompany.allinone.capi.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.client.AbstractCAPICallResult;
+import org.xins.client.UnacceptableRequestException;
+import org.xins.client.XINSCallRequest;
+import org.xins.client.XINSCallResult;
+import org.xins.client.XINSServiceCaller;
+import org.xins.client.async.CallFuture;
+import org.xins.client.async.CallFutures;
+import org.xins.common.service.TargetDescriptor;
+
+import org.xins.tests.AllTests;
+
+/**
+ * Tests the <code>CallFuture</code> and <code>CallFutures</code> classes.
+ *
+ * @version $Revision$ $Date$
+ */
+public class CallFutureTests extends TestCase {
+
+   /**
+    * Constructs a new <code>CallFutureTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public CallFutureTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(CallFutureTests.class);
+   }
+
+   public void testSuccessfulCallAsync() throws Throwable {
+      TargetDescriptor target = new TargetDescriptor(AllTests.url(), 5000, 1000, 4000);
+      CAPI capi = new CAPI(target);
+      RuntimePropsRequest request = new RuntimePropsRequest();
+      request.setPrice(100);
+      CallFuture<AbstractCAPICallResult> future = capi.callAsync(request);
+      RuntimePropsResult result = (RuntimePropsResult) future.get();
+      assertNotNull(result);
+      assertEquals(20.6f, result.getTaxes(), 0.01f);
+      assertEquals("Euros", result.getCurrency());
+      assertTrue(future.isDone());
+   }
+
+   public void testUnsuccessfulCallAsync() throws Throwable {
+      TargetDescriptor target = new TargetDescriptor(AllTests.url(), 5000, 1000, 4000);
+      CAPI capi = new CAPI(target);
+      CallFuture<AbstractCAPICallResult> future = capi.callAsync(new RuntimePropsRequest());
+      try {
+         future.get();
+         fail("Expected ExecutionException.");
+      } catch (ExecutionException exception) {
+         assertTrue(exception.getCause() instanceof UnacceptableRequestException);
+      }
+   }
+
+   public void testGetAll() throws Throwable {
+      TargetDescriptor target = new TargetDescriptor(AllTests.url(), 5000, 1000, 4000);
+      CAPI capi = new CAPI(target);
+      List<CallFuture<AbstractCAPICallResult>> futures = new ArrayList<CallFuture<AbstractCAPICallResult>>();
+      for (int i = 1; i <= 10; i++) {
+         RuntimePropsRequest request = new RuntimePropsRequest();
+         request.setPrice(i * 100);
+         futures.add(capi.callAsync(request));
+      }
+      List<AbstractCAPICallResult> results = CallFutures.getAll(futures);
+      assertEquals(10, results.size());
+      for (int i = 1; i <= 10; i++) {
+         RuntimePropsResult result = (RuntimePropsResult) results.get(i - 1);
+         assertEquals(20.6f * i, result.getTaxes(), 0.01f * i);
+      }
+
+      // A failing call makes the whole fan-out fail
+      futures.add(capi.callAsync(new RuntimePropsRequest()));
+      try {
+         CallFutures.getAll(futures);
+         fail("Expected UnacceptableRequestException.");
+      } catch (UnacceptableRequestException exception) {
+         // as expected
+      }
+   }
+
+   public void testGetFirstSuccess() throws Throwable {
+      TargetDescriptor target = new TargetDescriptor(AllTests.url(), 5000, 1000, 4000);
+      CAPI capi = new CAPI(target);
+      RuntimePropsRequest request = new RuntimePropsRequest();
+      request.setPrice(100);
+      List<CallFuture<AbstractCAPICallResult>> futures = new ArrayList<CallFuture<AbstractCAPICallResult>>();
+      futures.add(capi.callAsync(new RuntimePropsRequest()));
+      futures.add(capi.callAsync(request));
+      RuntimePropsResult result = (RuntimePropsResult) CallFutures.getFirstSuccess(futures);
+      assertEquals("Euros", result.getCurrency());
+
+      // All calls fail
+      futures.remove(1);
+      futures.add(capi.callAsync(new RuntimePropsRequest()));
+      try {
+         CallFutures.getFirstSuccess(futures);
+         fail("Expected UnacceptableRequestException.");
+      } catch (UnacceptableRequestException exception) {
+         // as expected
+      }
+   }
+
+   /**
+    * Tests that cancelling a call aborts the HTTP method of a call to a
+    * server that does not respond.
+    */
+   public void testCancel() throws Throwable {
+      ServerSocket server = new ServerSocket(0);
+      try {
+         String url = "http://127.0.0.1:" + server.getLocalPort() + "/";
+         TargetDescriptor target = new TargetDescriptor(url, 60000, 10000, 60000);
+         XINSServiceCaller caller = new XINSServiceCaller(target);
+         CallFuture<XINSCallResult> future = caller.callAsync(new XINSCallRequest("_GetVersion"));
+
+         // Wait until the request reaches the server; before that, the call
+         // is not using the connection yet, so cancelling it would leave the
+         // connection open in the pool
+         Socket socket = server.accept();
+         socket.setSoTimeout(10000);
+         try {
+            readRequestHeaders(socket);
+            assertTrue(future.cancel(true));
+            assertTrue(future.isCancelled());
+            try {
+               future.get();
+               fail("Expected CancellationException.");
+            } catch (CancellationException exception) {
+               // as expected
+            }
+
+            // The client closes the connection, well before the socket
+            // time-out of the call
+            readUntilClosed(socket);
+         } finally {
+            socket.close();
+         }
+      } finally {
+         server.close();
+      }
+   }
+
+   /**
+    * Tests that shutting down the default executor waits for the submitted
+    * calls and that calls can still be submitted afterwards.
+    */
+   public void testShutdown() throws Throwable {
+      Callable<String> call = new Callable<String>() {
+         public String call() throws Exception {
+            Thread.sleep(300L);
+            return "done";
+         }
+      };
+      CallFuture<String> future = CallFutures.submit(call);
+      CallFutures.shutdown();
+      assertTrue(future.isDone());
+      assertEquals("done", future.get());
+
+      // A new default executor is created
+      assertEquals("done", CallFutures.submit(call).get());
+      CallFutures.shutdown();
+   }
+
+   /**
+    * Reads from the socket until the end of the headers of the HTTP request.
+    *
+    * @param socket
+    *    the socket, cannot be <code>null</code>.
+    */
+   private static void readRequestHeaders(Socket socket) throws Exception {
+      InputStream in = socket.getInputStream();
+      int matched = 0;
+      while (matched < 4) {
+         int b = in.read();
+         assertTrue("Connection closed before the end of the request headers.", b >= 0);
+         if (b == "\r\n\r\n".charAt(matched)) {
+            matched++;
+         } else {
+            matched = (b == '\r') ? 1 : 0;
+         }
+      }
+   }
+
+   /**
+    * Reads from the socket until it is closed by the other side.
+    *
+    * @param socket
+    *    the socket, cannot be <code>null</code>.
+    */
+   private static void readUntilClosed(Socket socket) throws Exception {
+      byte[] buffer = new byte[8192];
+      while (socket.getInputStream().read(buffer) >= 0) {
+         // continue
+      }
+   }
+}
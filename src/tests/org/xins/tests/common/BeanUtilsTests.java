@@ -7,6 +7,9 @@
 package org.xins.tests.common;
 
 
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -93,6 +96,26 @@ public class BeanUtilsTests extends TestCase {
       assertTrue(pojo.getAlmostBoolean().booleanValue());
    }
 
+   /**
+    * Tests that a mapping that is changed after being used is taken into
+    * account.
+    */
+   public void testPopulateWithChangedMapping() throws Exception {
+      Properties mapping = new Properties();
+      mapping.setProperty("InputBoolean", "AlmostBoolean");
+      SimpleTypesRequest request = new SimpleTypesRequest();
+      request.setInputBoolean(Boolean.TRUE);
+      SimplePojo pojo = new SimplePojo();
+      BeanUtils.populate(request, pojo, mapping);
+      assertTrue(pojo.getAlmostBoolean().booleanValue());
+
+      mapping.setProperty("InputBoolean", "InputText");
+      pojo = new SimplePojo();
+      BeanUtils.populate(request, pojo, mapping);
+      assertFalse(pojo.getAlmostBoolean().booleanValue());
+      assertEquals("true", pojo.getInputText());
+   }
+
    public void testPopulateWithConvertion() throws Exception {
 
       // Boolean to String
@@ -344,6 +367,60 @@ public class BeanUtilsTests extends TestCase {
       }
    }
 
+   /**
+    * Tests that the cached information about a class does not keep its
+    * class loader from being garbage collected, as when a web application
+    * is redeployed.
+    */
+   public void testClassLoaderNotRetained() throws Exception {
+      URL location = BeanUtilsTests.class.getProtectionDomain().getCodeSource().getLocation();
+      ClassLoader loader = new URLClassLoader(new URL[] { location }, null);
+      Class type = loader.loadClass(LoaderPojo.class.getName());
+      assertNotSame(LoaderPojo.class, type);
+
+      Object source = BeanUtils.convert("hello", type);
+      Object destination = BeanUtils.populate(source, type.newInstance());
+      assertEquals("hello", BeanUtils.getParameters(destination).get("text"));
+
+      WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(loader);
+      loader = null;
+      type = null;
+      source = null;
+      destination = null;
+
+      // Fill the heap, the soft references are cleared before running out of memory
+      List<long[]> memory = new ArrayList<long[]>();
+      try {
+         while (reference.get() != null) {
+            memory.add(new long[1 << 20]);
+         }
+      } catch (OutOfMemoryError error) {
+         // expected
+      }
+      memory = null;
+      System.gc();
+      assertNull("Class loader not garbage collected.", reference.get());
+   }
+
+   public static class LoaderPojo {
+
+      private String _text;
+
+      public static LoaderPojo valueOf(String text) {
+         LoaderPojo pojo = new LoaderPojo();
+         pojo.setText(text);
+         return pojo;
+      }
+
+      public void setText(String text) {
+         _text = text;
+      }
+
+      public String getText() {
+         return _text;
+      }
+   }
+
    public class PojoContainer {
       
       private List pojoList = new ArrayList();
@@ -0,0 +1,128 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.common;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.LatencyHistogram;
+import org.xins.common.StripedCounter;
+
+/**
+ * Tests for classes <code>LatencyHistogram</code> and
+ * <code>StripedCounter</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class LatencyHistogramTests extends TestCase {
+
+   /**
+    * Constructs a new <code>LatencyHistogramTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public LatencyHistogramTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(LatencyHistogramTests.class);
+   }
+
+   public void testPercentiles() throws Exception {
+
+      LatencyHistogram histogram = new LatencyHistogram();
+
+      // Initial state
+      assertEquals(0L, histogram.getCount());
+      long[] values = histogram.getValuesAtPercentiles(50.0, 99.0);
+      assertEquals(2, values.length);
+      assertEquals(-1L, values[0]);
+      assertEquals(-1L, values[1]);
+
+      // Small values are exact
+      for (long i = 1L; i <= 10L; i++) {
+         histogram.record(i);
+      }
+      assertEquals(10L, histogram.getCount());
+      values = histogram.getValuesAtPercentiles(0.0, 10.0, 50.0, 90.0, 100.0);
+      assertEquals(1L,  values[0]);
+      assertEquals(1L,  values[1]);
+      assertEquals(5L,  values[2]);
+      assertEquals(9L,  values[3]);
+      assertEquals(10L, values[4]);
+
+      // Large values are within 6.25%
+      histogram.reset();
+      assertEquals(0L, histogram.getCount());
+      for (long i = 1L; i <= 100000L; i++) {
+         histogram.record(i);
+      }
+      values = histogram.getValuesAtPercentiles(50.0, 90.0, 99.0, 99.9);
+      long[] expected = { 50000L, 90000L, 99000L, 99900L };
+      for (int i = 0; i < expected.length; i++) {
+         assertTrue("Expected " + values[i] + " >= " + expected[i], values[i] >= expected[i]);
+         assertTrue("Expected " + values[i] + " to be within 6.25% of " + expected[i], values[i] <= expected[i] * 1.0625);
+      }
+
+      // Negative and huge values
+      histogram.reset();
+      histogram.record(-5L);
+      histogram.record(Long.MAX_VALUE);
+      values = histogram.getValuesAtPercentiles(50.0, 100.0);
+      assertEquals(0L, values[0]);
+      assertTrue(values[1] > 0L);
+
+      try {
+         histogram.getValuesAtPercentiles(100.1);
+         fail("Expected IllegalArgumentException.");
+      } catch (IllegalArgumentException exception) {
+         // as expected
+      }
+   }
+
+   public void testConcurrentRecording() throws Exception {
+
+      final LatencyHistogram histogram = new LatencyHistogram();
+      final StripedCounter   counter   = new StripedCounter();
+      final int threadCount = 8;
+      final int perThread   = 10000;
+
+      Thread[] threads = new Thread[threadCount];
+      for (int i = 0; i < threadCount; i++) {
+         threads[i] = new Thread() {
+            public void run() {
+               for (int j = 0; j < perThread; j++) {
+                  histogram.record(j % 100);
+                  counter.add(2L);
+               }
+            }
+         };
+         threads[i].start();
+      }
+      for (int i = 0; i < threadCount; i++) {
+         threads[i].join();
+      }
+
+      assertEquals((long) threadCount * perThread,      histogram.getCount());
+      assertEquals((long) threadCount * perThread * 2L, counter.get());
+
+      counter.reset();
+      assertEquals(0L, counter.get());
+      counter.increment();
+      assertEquals(1L, counter.get());
+   }
+}
@@ -0,0 +1,123 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.common;
+
+import java.util.concurrent.ExecutorService;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.TimeOutController;
+import org.xins.common.TimeOutException;
+
+/**
+ * Tests for class <code>TimeOutController</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class TimeOutControllerTests extends TestCase {
+
+   /**
+    * Constructs a new <code>TimeOutControllerTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public TimeOutControllerTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(TimeOutControllerTests.class);
+   }
+
+   public void testExecuteOnThread() throws Exception {
+      doTestExecute(null);
+   }
+
+   public void testExecuteOnExecutor() throws Exception {
+      ExecutorService executor = TimeOutController.createExecutor("test", 2);
+      try {
+         doTestExecute(executor);
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   public void testExecuteOnShutDownExecutor() throws Exception {
+      ExecutorService executor = TimeOutController.createExecutor("test", 2);
+      executor.shutdown();
+      doTestExecute(executor);
+   }
+
+   private void doTestExecute(ExecutorService executor) throws Exception {
+
+      // A task that finishes in time
+      SleepTask quickTask = new SleepTask(0L);
+      TimeOutController.execute(quickTask, 2000, executor);
+      assertTrue("Task did not run.", quickTask._finished);
+
+      // A task that does not finish in time should be interrupted
+      SleepTask slowTask = new SleepTask(10000L);
+      long start = System.currentTimeMillis();
+      try {
+         TimeOutController.execute(slowTask, 200, executor);
+         fail("Expected TimeOutException.");
+      } catch (TimeOutException exception) {
+         // as expected
+      }
+      assertTrue("Time-out took too long.", System.currentTimeMillis() - start < 5000L);
+      Thread.sleep(200L);
+      assertTrue("Task was not interrupted.", slowTask._interrupted);
+      assertFalse("Task should not have finished.", slowTask._finished);
+   }
+
+   public void testCreateExecutor() throws Exception {
+      try {
+         TimeOutController.createExecutor("test", 0);
+         fail("Expected IllegalArgumentException.");
+      } catch (IllegalArgumentException exception) {
+         // as expected
+      }
+      try {
+         TimeOutController.createExecutor(null, 1);
+         fail("Expected IllegalArgumentException.");
+      } catch (IllegalArgumentException exception) {
+         // as expected
+      }
+   }
+
+   private static final class SleepTask implements Runnable {
+
+      private final long _sleep;
+
+      private volatile boolean _finished;
+
+      private volatile boolean _interrupted;
+
+      private SleepTask(long sleep) {
+         _sleep = sleep;
+      }
+
+      public void run() {
+         try {
+            Thread.sleep(_sleep);
+            _finished = true;
+         } catch (InterruptedException exception) {
+            _interrupted = true;
+         }
+      }
+   }
+}
@@ -9,6 +9,7 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.xins.common.StripedVarianceComputer;
 import org.xins.common.VarianceComputer;
 
 /**
@@ -94,4 +95,61 @@ public class VarianceComputerTests extends TestCase {
       assertEquals(        30.0, vc.getVariance(), 0.0);
       assertEquals(         4  , vc.getCount()        );
    }
+
+   public void testStripedVarianceComputer() throws Exception {
+
+      StripedVarianceComputer vc = new StripedVarianceComputer();
+
+      // Initial state
+      assertTrue("Expected mean to be NaN initially.",   Double.isNaN(vc.getMean()));
+      assertTrue("Expected variance to be 0 initially.", vc.getVariance() == 0.0);
+      assertEquals(0L, vc.getCount());
+
+      // Add the values from several threads, so they end up in several
+      // stripes; the total is 4 times 1, 1, 4, 0 and 32
+      Thread[] threads = new Thread[4];
+      for (int i = 0; i < threads.length; i++) {
+         final StripedVarianceComputer computer = vc;
+         threads[i] = new Thread() {
+            public void run() {
+               computer.add(1L);
+               computer.add(1L);
+               computer.add(4L);
+               computer.add(0L);
+               computer.add(32L);
+            }
+         };
+         threads[i].start();
+      }
+      for (int i = 0; i < threads.length; i++) {
+         threads[i].join();
+      }
+      assertEquals(20L,   vc.getCount()            );
+      assertEquals(7.6,   vc.getMean(),     0.00001);
+      assertEquals(158.56842, vc.getVariance(), 0.00001);
+
+      // Reset
+      vc.reset();
+      assertEquals(0L, vc.getCount());
+      assertTrue(Double.isNaN(vc.getMean()));
+   }
+
+   public void testStripedVarianceComputer_edge() throws Exception {
+
+      StripedVarianceComputer vc = new StripedVarianceComputer();
+
+      // Large values with a small variance, the sum of the squares does not
+      // fit in a long
+      long offset = (long) Math.pow(10.0, 10.0);
+      for (int i = 0; i < 1000; i++) {
+         vc.add(offset +  4);
+         vc.add(offset +  7);
+         vc.add(offset + 13);
+         vc.add(offset + 16);
+      }
+
+      assertEquals(offset + 10.0, vc.getMean(), 0.001);
+      assertEquals(22.50563, vc.getVariance(), 0.00001);
+      assertEquals(4000L, vc.getCount());
+   }
 }
@@ -157,6 +157,71 @@ public class ExpiryFolderTests extends TestCase {
       }
    }
 
+   public void testConcurrentAccess() throws Exception {
+
+      ExpiryStrategy strategy = new ExpiryStrategy(DURATION, PRECISION / 4);
+      try {
+         final ExpiryFolder folder = new ExpiryFolder(NAME, strategy);
+         ExpiryFolderListener listener = new ExpiryFolderListener();
+         folder.addListener(listener);
+
+         // Each thread stores its own keys, then keeps the even ones alive
+         // by getting them, until well after the time-out
+         final int threadCount = 8;
+         final int keyCount    = 200;
+         final Throwable[] failure = new Throwable[1];
+         Thread[] threads = new Thread[threadCount];
+         for (int i = 0; i < threadCount; i++) {
+            final String prefix = "thread" + i + '.';
+            threads[i] = new Thread() {
+               public void run() {
+                  try {
+                     for (int j = 0; j < keyCount; j++) {
+                        folder.put(prefix + j, prefix + j);
+                     }
+                     long end = System.currentTimeMillis() + DURATION * 2L;
+                     while (System.currentTimeMillis() < end) {
+                        for (int j = 0; j < keyCount; j += 2) {
+                           if (folder.get(prefix + j) == null) {
+                              throw new Exception("Entry " + prefix + j + " expired while being accessed.");
+                           }
+                        }
+                        Thread.sleep(PRECISION / 4);
+                     }
+                  } catch (Throwable exception) {
+                     failure[0] = exception;
+                  }
+               }
+            };
+            threads[i].start();
+         }
+         for (int i = 0; i < threadCount; i++) {
+            threads[i].join();
+         }
+         if (failure[0] != null) {
+            throw new Exception("Concurrent access failed.", failure[0]);
+         }
+
+         // Only the odd keys should have expired, each of them once
+         assertEquals(threadCount * keyCount / 2, folder.size());
+         int expiredCount = 0;
+         synchronized (listener._callbacks) {
+            for (int i = 0; i < listener._callbacks.size(); i++) {
+               Map expired = ((Callback) listener._callbacks.get(i))._expired;
+               for (Iterator it = expired.keySet().iterator(); it.hasNext(); ) {
+                  String key = (String) it.next();
+                  int number = Integer.parseInt(key.substring(key.indexOf('.') + 1));
+                  assertTrue("Entry " + key + " should not have expired.", number % 2 == 1);
+                  expiredCount++;
+               }
+            }
+         }
+         assertEquals(threadCount * keyCount / 2, expiredCount);
+      } finally {
+         strategy.stop();
+      }
+   }
+
    public void doTestExpiryFolder(ExpiryStrategy strategy)
    throws Exception {
 
@@ -335,7 +400,9 @@ public class ExpiryFolderTests extends TestCase {
          cb._expired   = expired;
 
          // Store the Callback
-         _callbacks.add(cb);
+         synchronized (_callbacks) {
+            _callbacks.add(cb);
+         }
       }
    }
 
@@ -6,10 +6,14 @@
  */
 package org.xins.tests.common.collections.expiry;
 
+import java.util.Map;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.xins.common.collections.expiry.ExpiryFolder;
+import org.xins.common.collections.expiry.ExpiryListener;
 import org.xins.common.collections.expiry.ExpiryStrategy;
 
 /**
@@ -128,4 +132,45 @@ public class ExpiryStrategyTests extends TestCase {
          es2.stop();
       }
    }
+
+   public void testSharedScheduler() throws Throwable {
+
+      final int count = 20;
+      int threadsBefore = Thread.activeCount();
+      ExpiryStrategy[] strategies = new ExpiryStrategy[count];
+      final int[] expired = new int[count];
+      try {
+         for (int i = 0; i < count; i++) {
+            strategies[i] = new ExpiryStrategy(100L + i, 20L + i);
+            ExpiryFolder folder = new ExpiryFolder("Folder" + i, strategies[i]);
+            final int index = i;
+            folder.addListener(new ExpiryListener() {
+               public void expired(ExpiryFolder folder, Map map) {
+                  synchronized (expired) {
+                     expired[index] += map.size();
+                  }
+               }
+            });
+            folder.put("key", "value");
+         }
+
+         // All strategies share one thread
+         assertTrue("Expected at most one extra thread for " + count + " strategies.",
+                    Thread.activeCount() <= threadsBefore + 1);
+
+         // The entry in every folder should expire
+         Thread.sleep(500L);
+         synchronized (expired) {
+            for (int i = 0; i < count; i++) {
+               assertEquals("Entries expired in folder " + i, 1, expired[i]);
+            }
+         }
+      } finally {
+         for (int i = 0; i < count; i++) {
+            if (strategies[i] != null) {
+               strategies[i].stop();
+            }
+         }
+      }
+   }
 }
@@ -13,6 +13,7 @@ import junit.framework.TestSuite;
 import org.apache.log4j.NDC;
 
 import org.xins.common.http.HTTPCallConfig;
+import org.xins.common.http.HTTPConnectionPool;
 import org.xins.common.http.HTTPMethod;
 
 /**
@@ -56,4 +57,34 @@ public class HTTPCallConfigTests extends TestCase {
       assertEquals("Incorrect HTTP agent.", "Anthony", config.getUserAgent());
       config.describe();
    }
+
+   public void testHTTPCallConfigConnectionPooling() throws Exception {
+
+      HTTPCallConfig config = new HTTPCallConfig();
+      assertTrue("Connection pooling should be enabled by default.", config.isConnectionPooling());
+      assertEquals(HTTPConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_TARGET, config.getMaxConnectionsPerTarget());
+      assertEquals(HTTPConnectionPool.DEFAULT_IDLE_TIME_OUT, config.getIdleTimeOut());
+
+      config.setConnectionPooling(false);
+      assertFalse(config.isConnectionPooling());
+      config.setMaxConnectionsPerTarget(5);
+      assertEquals(5, config.getMaxConnectionsPerTarget());
+      config.setIdleTimeOut(1000);
+      assertEquals(1000, config.getIdleTimeOut());
+
+      try {
+         config.setMaxConnectionsPerTarget(0);
+         fail("Expected IllegalArgumentException.");
+      } catch (IllegalArgumentException exception) {
+         // as expected
+      }
+      try {
+         config.setIdleTimeOut(-1);
+         fail("Expected IllegalArgumentException.");
+      } catch (IllegalArgumentException exception) {
+         // as expected
+      }
+      assertEquals(5, config.getMaxConnectionsPerTarget());
+      assertEquals(1000, config.getIdleTimeOut());
+   }
 }
@@ -0,0 +1,271 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.common.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.common.http.HTTPCallConfig;
+import org.xins.common.http.HTTPCallRequest;
+import org.xins.common.http.HTTPCallResult;
+import org.xins.common.http.HTTPConnectionPool;
+import org.xins.common.http.HTTPMethod;
+import org.xins.common.http.HTTPServiceCaller;
+import org.xins.common.service.TargetDescriptor;
+
+/**
+ * Tests for class <code>HTTPConnectionPool</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class HTTPConnectionPoolTests extends TestCase {
+
+   /**
+    * The server socket of the keep-alive HTTP server.
+    */
+   private ServerSocket _serverSocket;
+
+   /**
+    * The number of connections accepted by the server.
+    */
+   private AtomicInteger _acceptCount;
+
+   /**
+    * Constructs a new <code>HTTPConnectionPoolTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public HTTPConnectionPoolTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(HTTPConnectionPoolTests.class);
+   }
+
+   /**
+    * Starts a minimal HTTP/1.1 server that keeps the connections alive.
+    */
+   protected void setUp() throws Exception {
+      HTTPConnectionPool.closeAll();
+      _serverSocket = new ServerSocket(0);
+      _acceptCount  = new AtomicInteger();
+      Thread acceptor = new Thread("HTTPConnectionPoolTests acceptor") {
+         public void run() {
+            try {
+               while (true) {
+                  final Socket socket = _serverSocket.accept();
+                  _acceptCount.incrementAndGet();
+                  Thread handler = new Thread("HTTPConnectionPoolTests handler") {
+                     public void run() {
+                        serve(socket);
+                     }
+                  };
+                  handler.setDaemon(true);
+                  handler.start();
+               }
+            } catch (IOException exception) {
+               // Server socket closed
+            }
+         }
+      };
+      acceptor.setDaemon(true);
+      acceptor.start();
+   }
+
+   protected void tearDown() throws Exception {
+      HTTPConnectionPool.closeAll();
+      _serverSocket.close();
+   }
+
+   /**
+    * Answers all requests received on a connection with a short response,
+    * until the client closes the connection.
+    *
+    * @param socket
+    *    the connection, cannot be <code>null</code>.
+    */
+   private static void serve(Socket socket) {
+      try {
+         BufferedReader in  = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+         OutputStream   out = socket.getOutputStream();
+         String line;
+         while ((line = in.readLine()) != null) {
+
+            // Skip the headers, the requests have no body
+            if (line.length() > 0) {
+               continue;
+            }
+            String response = "HTTP/1.1 200 OK\r\n"
+                            + "Content-Type: text/plain\r\n"
+                            + "Content-Length: 2\r\n"
+                            + "\r\n"
+                            + "OK";
+            out.write(response.getBytes("US-ASCII"));
+            out.flush();
+         }
+      } catch (IOException exception) {
+         // Connection closed
+      } finally {
+         try {
+            socket.close();
+         } catch (IOException exception) {
+            // ignore
+         }
+      }
+   }
+
+   /**
+    * Tests that subsequent calls to the same target reuse the connection.
+    */
+   public void testConnectionReuse() throws Exception {
+      String url = "http://127.0.0.1:" + _serverSocket.getLocalPort() + "/";
+      TargetDescriptor target = new TargetDescriptor(url, 5000, 2000, 5000);
+      HTTPCallConfig callConfig = new HTTPCallConfig();
+      callConfig.setMethod(HTTPMethod.GET);
+      callConfig.setConnectionPooling(true);
+      HTTPServiceCaller caller = new HTTPServiceCaller(target, callConfig);
+
+      for (int i = 0; i < 5; i++) {
+         HTTPCallResult result = caller.call(new HTTPCallRequest(new BasicPropertyReader()));
+         assertEquals(200, result.getStatusCode());
+         assertEquals("OK", result.getString());
+      }
+      assertEquals("Number of connections accepted.", 1, _acceptCount.get());
+
+      assertEquals(1, HTTPConnectionPool.getPools().size());
+      HTTPConnectionPool pool = HTTPConnectionPool.getPools().iterator().next();
+      assertEquals(target, pool.getTarget());
+      assertEquals(5L, pool.getCallCount());
+      assertEquals(0,  pool.getInUseCount());
+      assertEquals(1,  pool.getOpenCount());
+   }
+
+   /**
+    * Tests that calls with a different configuration use a different pool,
+    * without changing the configuration of the existing pool.
+    */
+   public void testPoolPerConfiguration() throws Exception {
+      String url = "http://127.0.0.1:" + _serverSocket.getLocalPort() + "/";
+      TargetDescriptor target = new TargetDescriptor(url, 5000, 2000, 5000);
+
+      HTTPCallConfig callConfig1 = new HTTPCallConfig();
+      callConfig1.setMethod(HTTPMethod.GET);
+      callConfig1.setConnectionPooling(true);
+      callConfig1.setMaxConnectionsPerTarget(4);
+      new HTTPServiceCaller(target, callConfig1).call(new HTTPCallRequest(new BasicPropertyReader()));
+
+      HTTPCallConfig callConfig2 = new HTTPCallConfig();
+      callConfig2.setMethod(HTTPMethod.GET);
+      callConfig2.setConnectionPooling(true);
+      callConfig2.setMaxConnectionsPerTarget(8);
+      new HTTPServiceCaller(target, callConfig2).call(new HTTPCallRequest(new BasicPropertyReader()));
+
+      assertEquals(2, HTTPConnectionPool.getPools().size());
+      int total = 0;
+      for (HTTPConnectionPool pool : HTTPConnectionPool.getPools()) {
+         assertEquals(1L, pool.getCallCount());
+         total += pool.getMaxConnections();
+      }
+      assertEquals(12, total);
+
+      // Closing the pools closes their connections
+      HTTPConnectionPool.closeAll();
+      assertEquals(0, HTTPConnectionPool.getPools().size());
+   }
+
+   /**
+    * Tests that the pools are only closed when the last user is
+    * unregistered, as when several APIs run in the same class loader.
+    */
+   public void testUsers() throws Exception {
+      String url = "http://127.0.0.1:" + _serverSocket.getLocalPort() + "/";
+      TargetDescriptor target = new TargetDescriptor(url, 5000, 2000, 5000);
+      HTTPCallConfig callConfig = new HTTPCallConfig();
+      callConfig.setMethod(HTTPMethod.GET);
+      callConfig.setConnectionPooling(true);
+      HTTPServiceCaller caller = new HTTPServiceCaller(target, callConfig);
+
+      // Other users, such as a running API, are unregistered during the test
+      int otherUsers = HTTPConnectionPool.getUserCount();
+      for (int i = 0; i < otherUsers; i++) {
+         HTTPConnectionPool.removeUser();
+      }
+      try {
+         HTTPConnectionPool.addUser();
+         HTTPConnectionPool.addUser();
+         assertEquals(2, HTTPConnectionPool.getUserCount());
+         caller.call(new HTTPCallRequest(new BasicPropertyReader()));
+         assertEquals(1, HTTPConnectionPool.getPools().size());
+
+         // The pool of the other user is kept open
+         HTTPConnectionPool.removeUser();
+         assertEquals(1, HTTPConnectionPool.getPools().size());
+         caller.call(new HTTPCallRequest(new BasicPropertyReader()));
+         assertEquals("Number of connections accepted.", 1, _acceptCount.get());
+
+         HTTPConnectionPool.removeUser();
+         assertEquals(0, HTTPConnectionPool.getUserCount());
+         assertEquals(0, HTTPConnectionPool.getPools().size());
+
+         // Unregistering more users than registered has no effect
+         HTTPConnectionPool.removeUser();
+         assertEquals(0, HTTPConnectionPool.getUserCount());
+      } finally {
+         while (HTTPConnectionPool.getUserCount() > otherUsers) {
+            HTTPConnectionPool.removeUser();
+         }
+         while (HTTPConnectionPool.getUserCount() < otherUsers) {
+            HTTPConnectionPool.addUser();
+         }
+      }
+   }
+
+   /**
+    * Tests that a call that follows the closing of the pools uses a new
+    * pool instead of the closed one.
+    */
+   public void testCallAfterClose() throws Exception {
+      String url = "http://127.0.0.1:" + _serverSocket.getLocalPort() + "/";
+      TargetDescriptor target = new TargetDescriptor(url, 5000, 2000, 5000);
+      HTTPCallConfig callConfig = new HTTPCallConfig();
+      callConfig.setMethod(HTTPMethod.GET);
+      callConfig.setConnectionPooling(true);
+      HTTPServiceCaller caller = new HTTPServiceCaller(target, callConfig);
+
+      caller.call(new HTTPCallRequest(new BasicPropertyReader()));
+      HTTPConnectionPool closedPool = HTTPConnectionPool.getPools().iterator().next();
+      HTTPConnectionPool.closeAll();
+
+      HTTPCallResult result = caller.call(new HTTPCallRequest(new BasicPropertyReader()));
+      assertEquals(200, result.getStatusCode());
+      assertEquals(1, HTTPConnectionPool.getPools().size());
+      HTTPConnectionPool pool = HTTPConnectionPool.getPools().iterator().next();
+      assertNotSame(closedPool, pool);
+      assertEquals(1L, closedPool.getCallCount());
+      assertEquals(1L, pool.getCallCount());
+      assertEquals("Number of connections accepted.", 2, _acceptCount.get());
+   }
+}
@@ -0,0 +1,182 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.common.io;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.io.FileWatcher;
+
+/**
+ * Tests for class <code>FileWatcher</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class FileWatcherTests extends TestCase {
+
+   private File _file;
+
+   /**
+    * Constructs a new <code>FileWatcherTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public FileWatcherTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(FileWatcherTests.class);
+   }
+
+   protected void setUp() throws Exception {
+      _file = File.createTempFile("xins", ".properties");
+      _file.setLastModified(System.currentTimeMillis() - 60000L);
+   }
+
+   protected void tearDown() {
+      _file.delete();
+   }
+
+   /**
+    * Tests that a requested check reports a modification without waiting
+    * for the end of the interval.
+    */
+   public void testRequestCheck() throws Exception {
+      CountingListener listener = new CountingListener();
+      FileWatcher watcher = new FileWatcher(_file.getPath(), 3600, listener);
+      watcher.start();
+      try {
+         FileWriter writer = new FileWriter(_file);
+         writer.write("a=b\n");
+         writer.close();
+         _file.setLastModified(System.currentTimeMillis() - 30000L);
+
+         // The modification is reported without waiting for the files to
+         // stop changing
+         watcher.requestCheck();
+         Thread.sleep(200L);
+         assertEquals(1, listener._modified);
+         assertEquals(0, listener._notFound);
+
+         // A second check does not report the same modification again
+         watcher.requestCheck();
+         Thread.sleep(200L);
+         assertEquals(1, listener._modified);
+         assertEquals(1, listener._notModified);
+      } finally {
+         watcher.end();
+      }
+   }
+
+   /**
+    * Tests that a modification found by a periodic check is reported once
+    * the files have stopped changing.
+    */
+   public void testPeriodicCheck() throws Exception {
+      CountingListener listener = new CountingListener();
+      FileWatcher watcher = new FileWatcher(_file.getPath(), 1, listener);
+      watcher.start();
+      try {
+         FileWriter writer = new FileWriter(_file);
+         writer.write("a=b\n");
+         writer.close();
+         _file.setLastModified(System.currentTimeMillis() - 30000L);
+
+         // The first periodic check finds the modification after one
+         // second, it is reported half a second later
+         Thread.sleep(1200L);
+         assertEquals(0, listener._modified);
+         Thread.sleep(800L);
+         assertEquals(1, listener._modified);
+      } finally {
+         watcher.end();
+      }
+   }
+
+   /**
+    * Tests that the file watchers share a single thread.
+    */
+   public void testSharedThread() throws Exception {
+      int threadsBefore = Thread.activeCount();
+      FileWatcher[] watchers = new FileWatcher[10];
+      for (int i = 0; i < watchers.length; i++) {
+         watchers[i] = new FileWatcher(_file.getPath(), 60, new CountingListener());
+         watchers[i].start();
+      }
+      try {
+         Thread.sleep(100L);
+         assertTrue(Thread.activeCount() <= threadsBefore + 1);
+         for (int i = 0; i < watchers.length; i++) {
+            assertFalse(watchers[i].isAlive());
+         }
+      } finally {
+         for (int i = 0; i < watchers.length; i++) {
+            watchers[i].end();
+         }
+      }
+   }
+
+   public void testStartTwice() throws Exception {
+      FileWatcher watcher = new FileWatcher(_file.getPath(), 60, new CountingListener());
+      watcher.start();
+      try {
+         watcher.start();
+         fail("Expected IllegalStateException.");
+      } catch (IllegalStateException exception) {
+         // as expected
+      } finally {
+         watcher.end();
+      }
+   }
+
+   /**
+    * Listener that counts the notifications.
+    */
+   private static final class CountingListener implements FileWatcher.Listener {
+
+      private volatile int _notFound;
+
+      private volatile int _found;
+
+      private volatile int _modified;
+
+      private volatile int _notModified;
+
+      public void fileNotFound() {
+         _notFound++;
+      }
+
+      public void fileFound() {
+         _found++;
+      }
+
+      public void securityException(SecurityException exception) {
+         fail(exception.getMessage());
+      }
+
+      public void fileModified() {
+         _modified++;
+      }
+
+      public void fileNotModified() {
+         _notModified++;
+      }
+   }
+}
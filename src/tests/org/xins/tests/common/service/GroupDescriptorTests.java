@@ -6,6 +6,11 @@
  */
 package org.xins.tests.common.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -125,4 +130,82 @@ public class GroupDescriptorTests extends TestCase {
       assertEquals(true,     gd.isGroup());
       assertEquals(TYP_ORDR, gd.getType());
    }
+
+   public void testGetType() throws Exception {
+      assertEquals(GroupDescriptor.RANDOM_TYPE,            GroupDescriptor.getType("random"));
+      assertEquals(GroupDescriptor.ORDERED_TYPE,           GroupDescriptor.getType("ordered"));
+      assertEquals(GroupDescriptor.LEAST_OUTSTANDING_TYPE, GroupDescriptor.getType("least-outstanding"));
+      assertEquals(GroupDescriptor.LATENCY_WEIGHTED_TYPE,  GroupDescriptor.getType("latency-weighted"));
+      assertEquals(GroupDescriptor.CONSISTENT_HASH_TYPE,   GroupDescriptor.getType("consistent-hash"));
+      assertNull(GroupDescriptor.getType("round-robin"));
+   }
+
+   /**
+    * Tests that all group types return each target exactly once.
+    */
+   public void testTargets() throws Exception {
+      Descriptor[] members = createTargets(5);
+      GroupDescriptor.Type[] types = {
+         GroupDescriptor.RANDOM_TYPE,
+         GroupDescriptor.ORDERED_TYPE,
+         GroupDescriptor.LEAST_OUTSTANDING_TYPE,
+         GroupDescriptor.LATENCY_WEIGHTED_TYPE,
+         GroupDescriptor.CONSISTENT_HASH_TYPE
+      };
+      for (GroupDescriptor.Type type : types) {
+         GroupDescriptor gd = new GroupDescriptor(type, members);
+         for (int i = 0; i < 20; i++) {
+            Collection<TargetDescriptor> targets = gd.targets("key" + i);
+            assertEquals(type.toString(), 5, targets.size());
+            assertEquals(type.toString(), 5, new HashSet<TargetDescriptor>(targets).size());
+            assertEquals(type.toString(), 5, gd.targets().size());
+         }
+      }
+   }
+
+   /**
+    * Tests that the <em>consistent-hash</em> group type sends the same key
+    * to the same target and that adding a target only moves some keys.
+    */
+   public void testConsistentHash() throws Exception {
+      Descriptor[] members = createTargets(4);
+      GroupDescriptor gd  = new GroupDescriptor(GroupDescriptor.CONSISTENT_HASH_TYPE, members);
+      GroupDescriptor gd2 = new GroupDescriptor(GroupDescriptor.CONSISTENT_HASH_TYPE, members);
+      GroupDescriptor gd5 = new GroupDescriptor(GroupDescriptor.CONSISTENT_HASH_TYPE, createTargets(5));
+
+      int moved = 0;
+      HashSet<TargetDescriptor> used = new HashSet<TargetDescriptor>();
+      for (int i = 0; i < 1000; i++) {
+         String key = "user" + i;
+         List<TargetDescriptor> targets = new ArrayList<TargetDescriptor>(gd.targets(key));
+         assertEquals(targets, new ArrayList<TargetDescriptor>(gd.targets(key)));
+         assertEquals(targets, new ArrayList<TargetDescriptor>(gd2.targets(key)));
+         used.add(targets.get(0));
+
+         TargetDescriptor target = gd5.targets(key).iterator().next();
+         if (! target.equals(targets.get(0))) {
+            assertEquals("http://host4.example.com/", target.getURL());
+            moved++;
+         }
+      }
+      assertEquals(4, used.size());
+      assertTrue("Moved " + moved + " of 1000 keys.", moved > 100 && moved < 350);
+   }
+
+   /**
+    * Creates target descriptors.
+    *
+    * @param count
+    *    the number of target descriptors to create.
+    *
+    * @return
+    *    the target descriptors, never <code>null</code>.
+    */
+   private static Descriptor[] createTargets(int count) throws Exception {
+      Descriptor[] targets = new Descriptor[count];
+      for (int i = 0; i < count; i++) {
+         targets[i] = new TargetDescriptor("http://host" + i + ".example.com/");
+      }
+      return targets;
+   }
 }
@@ -0,0 +1,257 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.common.service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.service.CallConfig;
+import org.xins.common.service.CallException;
+import org.xins.common.service.CallExceptionList;
+import org.xins.common.service.CallRequest;
+import org.xins.common.service.CallResult;
+import org.xins.common.service.ConnectionRefusedCallException;
+import org.xins.common.service.Descriptor;
+import org.xins.common.service.GroupDescriptor;
+import org.xins.common.service.ServiceCaller;
+import org.xins.common.service.TargetDescriptor;
+
+/**
+ * Tests for the selection of the target by class <code>ServiceCaller</code>
+ * with the adaptive group types.
+ *
+ * @version $Revision$ $Date$
+ */
+public class ServiceCallerTests extends TestCase {
+
+   /**
+    * The number of calls made through a group.
+    */
+   private static final int CALLS = 100;
+
+   /**
+    * The target that answers at once.
+    */
+   private TargetDescriptor _fast;
+
+   /**
+    * The target that refuses the connection or does not answer.
+    */
+   private TargetDescriptor _slow;
+
+   /**
+    * Constructs a new <code>ServiceCallerTests</code> test suite with the
+    * specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public ServiceCallerTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(ServiceCallerTests.class);
+   }
+
+   protected void setUp() throws Exception {
+
+      // New targets, so that the statistics of other tests do not count
+      _fast = new TargetDescriptor("test://fast" + System.nanoTime() + "/", 1000);
+      _slow = new TargetDescriptor("test://slow" + System.nanoTime() + "/", 1000);
+   }
+
+   /**
+    * Tests that the <em>latency-weighted</em> group type moves the calls away
+    * from a target that refuses the connection.
+    */
+   public void testLatencyWeightedFailingTarget() throws Exception {
+      TestServiceCaller caller = new TestServiceCaller(GroupDescriptor.LATENCY_WEIGHTED_TYPE);
+      caller._failing = true;
+      for (int i = 0; i < CALLS; i++) {
+         CallResult result = caller.call();
+         assertEquals(_fast, result.getSucceededTarget());
+      }
+
+      // The failing target is only tried until it is charged the time-out
+      assertEquals(CALLS, caller._fastCalls.get());
+      assertTrue("Failing target tried first " + caller._slowCalls + " times.", caller._slowCalls.get() <= 2);
+   }
+
+   /**
+    * Tests that the <em>latency-weighted</em> group type moves the calls away
+    * from a target that answers slowly.
+    */
+   public void testLatencyWeightedSlowTarget() throws Exception {
+      TestServiceCaller caller = new TestServiceCaller(GroupDescriptor.LATENCY_WEIGHTED_TYPE);
+      caller._delay = 50L;
+      for (int i = 0; i < CALLS; i++) {
+         caller.call();
+      }
+
+      // The slow target is only tried until its latency is known
+      assertEquals(CALLS, caller._fastCalls.get() + caller._slowCalls.get());
+      assertTrue("Slow target called " + caller._slowCalls + " times.", caller._slowCalls.get() <= 2);
+   }
+
+   /**
+    * Tests that the <em>least-outstanding</em> group type moves the calls
+    * away from a target that has a call in progress.
+    */
+   public void testLeastOutstandingSlowTarget() throws Exception {
+      final TestServiceCaller caller = new TestServiceCaller(GroupDescriptor.LEAST_OUTSTANDING_TYPE);
+
+      // Make calls in the background until one of them blocks in the slow
+      // target; the calls to the fast target end at once
+      Thread blocked = null;
+      for (int i = 0; i < 50 && blocked == null; i++) {
+         Thread thread = new Thread("ServiceCallerTests caller") {
+            public void run() {
+               try {
+                  caller.call();
+               } catch (CallException exception) {
+                  // ignore
+               }
+            }
+         };
+         thread.start();
+         while (thread.isAlive() && caller._slowCalls.get() == 0) {
+            Thread.sleep(1L);
+         }
+         if (caller._slowCalls.get() > 0) {
+            blocked = thread;
+         }
+      }
+      assertNotNull("No call to the slow target.", blocked);
+
+      try {
+         int fastCalls = caller._fastCalls.get();
+         for (int i = 0; i < CALLS; i++) {
+            CallResult result = caller.call();
+            assertEquals(_fast, result.getSucceededTarget());
+         }
+         assertEquals(1,                 caller._slowCalls.get());
+         assertEquals(fastCalls + CALLS, caller._fastCalls.get());
+      } finally {
+         caller._release.countDown();
+         blocked.join();
+      }
+   }
+
+   /**
+    * Service caller for a group of a fast and a slow target, that does not
+    * make any network connection.
+    */
+   private final class TestServiceCaller extends ServiceCaller {
+
+      /**
+       * Released when the calls to the slow target may end.
+       */
+      final CountDownLatch _release = new CountDownLatch(1);
+
+      /**
+       * The number of calls to the fast target.
+       */
+      final AtomicInteger _fastCalls = new AtomicInteger();
+
+      /**
+       * The number of calls to the slow target.
+       */
+      final AtomicInteger _slowCalls = new AtomicInteger();
+
+      /**
+       * Flag that indicates whether the slow target refuses the connection.
+       */
+      volatile boolean _failing;
+
+      /**
+       * The time the slow target takes to answer, in milliseconds, or 0 if
+       * it blocks until it is released.
+       */
+      volatile long _delay;
+
+      TestServiceCaller(GroupDescriptor.Type type) {
+         super(new GroupDescriptor(type, new Descriptor[] { _fast, _slow }), null);
+      }
+
+      CallResult call() throws CallException {
+         return doCall(new TestCallRequest(), null);
+      }
+
+      protected boolean isProtocolSupportedImpl(String protocol) {
+         return "test".equals(protocol);
+      }
+
+      protected CallConfig getDefaultCallConfig() {
+         return new TestCallConfig();
+      }
+
+      public Object doCallImpl(CallRequest      request,
+                               CallConfig       callConfig,
+                               TargetDescriptor target)
+      throws CallException {
+         if (target.equals(_fast)) {
+            _fastCalls.incrementAndGet();
+            return "fast";
+         }
+
+         _slowCalls.incrementAndGet();
+         if (_failing) {
+            throw new ConnectionRefusedCallException(request, target, 0L);
+         }
+         try {
+            if (_delay > 0L) {
+               Thread.sleep(_delay);
+            } else {
+               _release.await(10000L, TimeUnit.MILLISECONDS);
+            }
+         } catch (InterruptedException exception) {
+            // ignore
+         }
+         return "slow";
+      }
+
+      protected CallResult createCallResult(CallRequest       request,
+                                            TargetDescriptor  succeededTarget,
+                                            long              duration,
+                                            CallExceptionList exceptions,
+                                            Object            result) {
+         return new TestCallResult(request, succeededTarget, duration, exceptions);
+      }
+   }
+
+   private static final class TestCallRequest extends CallRequest {
+
+      public String describe() {
+         return "test request";
+      }
+   }
+
+   private static final class TestCallConfig extends CallConfig {
+   }
+
+   private static final class TestCallResult extends CallResult {
+
+      TestCallResult(CallRequest       request,
+                     TargetDescriptor  succeededTarget,
+                     long              duration,
+                     CallExceptionList exceptions) {
+         super(request, succeededTarget, duration, exceptions);
+      }
+   }
+}
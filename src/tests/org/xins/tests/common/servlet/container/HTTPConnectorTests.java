@@ -0,0 +1,359 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.common.servlet.container;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.servlet.container.HTTPServletHandler;
+
+/**
+ * Tests for the HTTP connector of the servlet container: the parsing and
+ * the framing of the requests, the limits and the error responses.
+ *
+ * <p>These tests start their own servlet container, on a free port, with
+ * servlets that echo the request body or block until they are released.
+ *
+ * @version $Revision$ $Date$
+ */
+public class HTTPConnectorTests extends TestCase {
+
+   /**
+    * The maximum size of the request line and the headers, in bytes, as
+    * accepted by the connector.
+    */
+   private static final int MAX_HEADER_SIZE = 65536;
+
+   /**
+    * The maximum size of a request body, in bytes, as accepted by the
+    * connector.
+    */
+   private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+   /**
+    * The number of requests the connector handles or queues before it
+    * answers <em>503 Service Unavailable</em>: 32 worker threads and 1000
+    * waiting requests.
+    */
+   private static final int CAPACITY = 32 + 1000;
+
+   /**
+    * The servlet container, started for each test.
+    */
+   private HTTPServletHandler _server;
+
+   /**
+    * The port the servlet container listens on.
+    */
+   private int _port;
+
+   /**
+    * Constructs a new <code>HTTPConnectorTests</code> test suite with the
+    * specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public HTTPConnectorTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(HTTPConnectorTests.class);
+   }
+
+   protected void setUp() throws Exception {
+      BlockingServlet.RELEASE = new CountDownLatch(1);
+      _server = new HTTPServletHandler(0, true);
+      _server.addServlet(EchoServlet.class.getName(), "/");
+      _server.addServlet(BlockingServlet.class.getName(), "/block");
+      _port = _server.getPort();
+   }
+
+   protected void tearDown() throws Exception {
+      BlockingServlet.RELEASE.countDown();
+      _server.close();
+   }
+
+   /**
+    * Tests that a body with a <code>Content-Length</code> header is passed
+    * to the servlet, also when it arrives in several parts.
+    */
+   public void testContentLengthBody() throws Exception {
+      String body = "Hello, content length.";
+      String head = "POST / HTTP/1.1\r\n"
+                  + "Host: 127.0.0.1\r\n"
+                  + "Content-Type: text/plain\r\n"
+                  + "Content-Length: " + body.length() + "\r\n"
+                  + "Connection: close\r\n\r\n";
+
+      String response = send(head + body.substring(0, 5), body.substring(5));
+      assertTrue("Unexpected response: " + response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+      assertTrue("Unexpected response: " + response, response.endsWith("\r\n\r\n" + body));
+   }
+
+   /**
+    * Tests that a body in the chunked transfer coding is decoded, including
+    * chunk extensions and trailer headers, also when it arrives in several
+    * parts.
+    */
+   public void testChunkedBody() throws Exception {
+      String head = "POST / HTTP/1.1\r\n"
+                  + "Host: 127.0.0.1\r\n"
+                  + "Content-Type: text/plain\r\n"
+                  + "Transfer-Encoding: chunked\r\n"
+                  + "Connection: close\r\n\r\n";
+      String chunks = "5\r\nHello\r\n"
+                    + "9;name=value\r\n, chunked\r\n"
+                    + "0\r\n"
+                    + "X-Trailer: ignored\r\n\r\n";
+
+      String response = send(head + chunks.substring(0, 12), chunks.substring(12));
+      assertTrue("Unexpected response: " + response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+      assertTrue("Unexpected response: " + response, response.endsWith("\r\n\r\nHello, chunked"));
+   }
+
+   /**
+    * Tests that the bodies of pipelined requests on one connection are kept
+    * apart.
+    */
+   public void testPipelinedBodies() throws Exception {
+      String request = "POST / HTTP/1.1\r\n"
+                     + "Host: 127.0.0.1\r\n"
+                     + "Content-Type: text/plain\r\n"
+                     + "Content-Length: 5\r\n\r\n"
+                     + "first";
+      String lastRequest = "POST / HTTP/1.1\r\n"
+                         + "Host: 127.0.0.1\r\n"
+                         + "Content-Type: text/plain\r\n"
+                         + "Transfer-Encoding: chunked\r\n"
+                         + "Connection: close\r\n\r\n"
+                         + "6\r\nsecond\r\n0\r\n\r\n";
+
+      String responses = send(request + lastRequest);
+      int first  = responses.indexOf("HTTP/1.1 200 OK");
+      int second = responses.indexOf("HTTP/1.1 200 OK", first + 1);
+      assertTrue("Expected 2 responses instead of: " + responses, first == 0 && second > 0);
+      assertTrue(responses.substring(0, second).endsWith("\r\n\r\nfirst"));
+      assertTrue(responses.endsWith("\r\n\r\nsecond"));
+   }
+
+   /**
+    * Tests that incorrect requests are answered with
+    * <em>400 Bad Request</em>.
+    */
+   public void testBadRequest() throws Exception {
+      assertStatus("400", send("HELLO\r\n\r\n"));
+      assertStatus("400", send("GET / HTTP/2.0\r\n\r\n"));
+      assertStatus("400", send("GET / HTTP/1.1\r\nNo colon\r\n\r\n"));
+      assertStatus("400", send("POST / HTTP/1.1\r\nContent-Length: ten\r\n\r\n"));
+      assertStatus("400", send("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n"));
+      assertStatus("400", send("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabcd\r\n"));
+   }
+
+   /**
+    * Tests that a request line and headers larger than the limit are
+    * rejected.
+    */
+   public void testHeaderSizeLimit() throws Exception {
+      String start = "GET / HTTP/1.1\r\nX-Large: ";
+      char[] padding = new char[MAX_HEADER_SIZE + 1 - start.length()];
+      Arrays.fill(padding, 'x');
+      assertStatus("400", send(start + new String(padding)));
+   }
+
+   /**
+    * Tests that bodies larger than the limit are rejected, both with a
+    * <code>Content-Length</code> header and in the chunked transfer coding.
+    */
+   public void testBodySizeLimit() throws Exception {
+      assertStatus("400", send("POST / HTTP/1.1\r\n"
+                             + "Content-Length: " + (MAX_BODY_SIZE + 1) + "\r\n\r\n"));
+      assertStatus("400", send("POST / HTTP/1.1\r\n"
+                             + "Transfer-Encoding: chunked\r\n\r\n"
+                             + Integer.toHexString(MAX_BODY_SIZE + 1) + "\r\n"));
+   }
+
+   /**
+    * Tests that requests are answered with <em>503 Service Unavailable</em>
+    * when all worker threads are busy and the queue is full.
+    */
+   public void testServiceUnavailable() throws Exception {
+      String request = "GET /block/ HTTP/1.1\r\n"
+                     + "Host: 127.0.0.1\r\n"
+                     + "Connection: close\r\n\r\n";
+
+      List<Socket> sockets = new ArrayList<Socket>();
+      try {
+
+         // Occupy all worker threads and fill the queue
+         for (int i = 0; i < CAPACITY; i++) {
+            Socket socket = new Socket("127.0.0.1", _port);
+            sockets.add(socket);
+            socket.getOutputStream().write(request.getBytes("ISO-8859-1"));
+         }
+
+         // The next requests are rejected as soon as the connector has read
+         // all the previous ones
+         String response = null;
+         for (int i = 0; i < 20 && response == null; i++) {
+            Socket socket = new Socket("127.0.0.1", _port);
+            sockets.add(socket);
+            socket.setSoTimeout(1000);
+            socket.getOutputStream().write(request.getBytes("ISO-8859-1"));
+            try {
+               response = read(socket.getInputStream());
+            } catch (SocketTimeoutException exception) {
+               // queued
+            }
+         }
+         assertStatus("503", response);
+
+         // Once released, the blocked requests are answered
+         BlockingServlet.RELEASE.countDown();
+         Socket first = sockets.get(0);
+         first.setSoTimeout(10000);
+         assertStatus("200", read(first.getInputStream()));
+      } finally {
+         for (Socket socket : sockets) {
+            socket.close();
+         }
+      }
+   }
+
+   /**
+    * Checks the status code of a response.
+    *
+    * @param expected
+    *    the expected status code, e.g. <code>"400"</code>.
+    *
+    * @param response
+    *    the response, can be <code>null</code>.
+    */
+   private static void assertStatus(String expected, String response) {
+      assertNotNull("No response received.", response);
+      assertTrue("Expected status " + expected + " instead of: " + response,
+            response.startsWith("HTTP/1.1 " + expected + ' '));
+   }
+
+   /**
+    * Sends a request in one or more parts on a new connection and reads the
+    * response until the server closes the connection.
+    *
+    * @param parts
+    *    the parts of the request, sent with a short pause in between.
+    *
+    * @return
+    *    the received bytes, decoded as ISO-8859-1, never <code>null</code>.
+    */
+   private String send(String... parts) throws Exception {
+      Socket socket = new Socket("127.0.0.1", _port);
+      try {
+         socket.setSoTimeout(10000);
+         OutputStream out = socket.getOutputStream();
+         for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+               Thread.sleep(100L);
+            }
+            out.write(parts[i].getBytes("ISO-8859-1"));
+            out.flush();
+         }
+         return read(socket.getInputStream());
+      } finally {
+         socket.close();
+      }
+   }
+
+   /**
+    * Reads until the end of the stream.
+    *
+    * @param in
+    *    the stream to read from, cannot be <code>null</code>.
+    *
+    * @return
+    *    the received bytes, decoded as ISO-8859-1, never <code>null</code>.
+    */
+   private static String read(InputStream in) throws IOException {
+      ByteArrayOutputStream received = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = in.read(buffer)) >= 0) {
+         received.write(buffer, 0, count);
+      }
+      return received.toString("ISO-8859-1");
+   }
+
+   /**
+    * Servlet that returns the body of the request.
+    */
+   public static class EchoServlet extends HttpServlet {
+
+      protected void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+         StringBuffer body = new StringBuffer();
+         BufferedReader reader = request.getReader();
+         char[] buffer = new char[1024];
+         int count;
+         while ((count = reader.read(buffer)) >= 0) {
+            body.append(buffer, 0, count);
+         }
+         response.setStatus(HttpServletResponse.SC_OK);
+         response.setContentType("text/plain; charset=ISO-8859-1");
+         PrintWriter out = response.getWriter();
+         out.print(body);
+         out.flush();
+      }
+   }
+
+   /**
+    * Servlet that waits until the test releases it.
+    */
+   public static class BlockingServlet extends HttpServlet {
+
+      /**
+       * The latch the servlet waits for.
+       */
+      static volatile CountDownLatch RELEASE = new CountDownLatch(1);
+
+      protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+         try {
+            RELEASE.await(30L, TimeUnit.SECONDS);
+         } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+         }
+         response.setStatus(HttpServletResponse.SC_OK);
+         response.setContentType("text/plain; charset=ISO-8859-1");
+         response.getWriter().print("released");
+      }
+   }
+}
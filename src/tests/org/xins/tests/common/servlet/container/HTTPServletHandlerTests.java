@@ -128,6 +128,40 @@ public class HTTPServletHandlerTests extends TestCase {
       assertEquals("Expected \"Content-Length\" header from GET request (" + lengthHeader + ") to match actual body length (" + bodyLength + ").", bodyLength, lengthHeader);
    }
 
+   /**
+    * Tests that static files are served with a content type, also when the
+    * type cannot be determined from the extension of the file name.
+    */
+   public void testFileContentType() throws Exception {
+      assertFileContentType("/org/xins/tests/common/servlet/container/test.css", "text/css");
+      assertFileContentType("/org/xins/tests/common/servlet/container/test.js",  null);
+      assertFileContentType("/specs/Age.typ", "application/octet-stream");
+   }
+
+   /**
+    * Gets a static file and checks the content type of the response.
+    *
+    * @param queryString
+    *    the path of the file, cannot be <code>null</code>.
+    *
+    * @param expectedType
+    *    the expected content type, or <code>null</code> if only the presence
+    *    of the header is checked.
+    */
+   private void assertFileContentType(String queryString, String expectedType) throws Exception {
+      HTTPCallerResult result = HTTPCaller.call("1.1", AllTests.host(), AllTests.port(), "GET", queryString, null);
+      assertEquals("Expected 200 OK for \"" + queryString + "\".", "200 OK", result.getStatus());
+      assertTrue("Expected a body for \"" + queryString + "\".", result.getBody().length() > 0);
+
+      List typeHeaders = result.getHeaderValues("content-type");
+      assertEquals("Expected 1 \"Content-Type\" header for \"" + queryString + "\".", 1, typeHeaders.size());
+      String contentType = (String) typeHeaders.get(0);
+      assertFalse("null".equals(contentType));
+      if (expectedType != null) {
+         assertEquals(expectedType, contentType);
+      }
+   }
+
    private long determineFileSize(String fileName) throws Exception {
       File file = new File(fileName);
       if (!file.exists()) {
@@ -150,4 +184,121 @@ public class HTTPServletHandlerTests extends TestCase {
       // Status should be 200 OK
       assertEquals("Expected 200 OK in response to HTTP/1.0 GET request.", "200 OK", result.getStatus());
    }
+
+   /**
+    * Tests that several requests can be sent on one connection, also
+    * before the previous response is received, and that the connection is
+    * closed when the client asks for it.
+    */
+   public void testKeepAliveAndPipelining() throws Exception {
+
+      String request = "GET /?_convention=_xins-std&_function=Echo HTTP/1.1\r\n"
+                     + "Host: " + AllTests.host() + "\r\n\r\n";
+      String lastRequest = "HEAD /?_convention=_xins-std&_function=Echo HTTP/1.1\r\n"
+                         + "Host: " + AllTests.host() + "\r\n"
+                         + "Connection: close\r\n\r\n";
+
+      Socket socket = new Socket(AllTests.host(), AllTests.port());
+      try {
+         socket.setSoTimeout(10000);
+         OutputStream out = socket.getOutputStream();
+         out.write((request + request).getBytes("ISO-8859-1"));
+         out.write(lastRequest.getBytes("ISO-8859-1"));
+
+         // The server closes the connection after the third response
+         InputStream in = socket.getInputStream();
+         ByteArrayOutputStream received = new ByteArrayOutputStream();
+         byte[] buffer = new byte[4096];
+         int count;
+         while ((count = in.read(buffer)) >= 0) {
+            received.write(buffer, 0, count);
+         }
+         String responses = received.toString("ISO-8859-1");
+
+         int first  = responses.indexOf("HTTP/1.1 200 OK");
+         int second = responses.indexOf("HTTP/1.1 200 OK", first + 1);
+         int third  = responses.indexOf("HTTP/1.1 200 OK", second + 1);
+         assertTrue("Expected 3 responses instead of: " + responses, first == 0 && second > 0 && third > 0);
+         assertEquals(-1, responses.indexOf("HTTP/1.1", third + 1));
+         assertTrue(responses.substring(third).indexOf("Connection: close") > 0);
+         assertTrue(responses.endsWith("\r\n\r\n"));
+      } finally {
+         socket.close();
+      }
+   }
+
+   /**
+    * Tests that a file uploaded with a multipart request is passed to the
+    * implementation of the function.
+    */
+   public void testMultipartUpload() throws Exception {
+
+      String responses = postMultipart("Hello there.");
+      assertTrue("Unexpected response: " + responses, responses.startsWith("HTTP/1.1 200 OK"));
+      assertTrue(responses.indexOf("<param name=\"fileName\">hello.txt</param>") > 0);
+      assertTrue(responses.indexOf("<param name=\"size\">12</param>") > 0);
+      assertTrue(responses.indexOf("<param name=\"content\">Hello there.</param>") > 0);
+   }
+
+   /**
+    * Tests that a multipart request that exceeds the maximum size set in the
+    * runtime properties is rejected.
+    */
+   public void testMultipartUploadTooLarge() throws Exception {
+
+      char[] content = new char[70000];
+      Arrays.fill(content, 'x');
+      String responses = postMultipart(new String(content));
+      assertTrue("Unexpected response: " + responses, responses.startsWith("HTTP/1.1 413 "));
+   }
+
+   /**
+    * Posts a multipart request that calls the <em>Upload</em> function with
+    * a file named <em>hello.txt</em>.
+    *
+    * @param content
+    *    the content of the file, cannot be <code>null</code>.
+    *
+    * @return
+    *    the received response, never <code>null</code>.
+    */
+   private String postMultipart(String content) throws Exception {
+
+      String boundary = "HTTPServletHandlerTests" + RANDOM.nextInt(Integer.MAX_VALUE);
+      String body = "--" + boundary + "\r\n"
+                  + "Content-Disposition: form-data; name=\"_convention\"\r\n\r\n"
+                  + "_xins-std\r\n"
+                  + "--" + boundary + "\r\n"
+                  + "Content-Disposition: form-data; name=\"_function\"\r\n\r\n"
+                  + "Upload\r\n"
+                  + "--" + boundary + "\r\n"
+                  + "Content-Disposition: form-data; name=\"file\"; filename=\"hello.txt\"\r\n"
+                  + "Content-Type: text/plain\r\n\r\n"
+                  + content + "\r\n"
+                  + "--" + boundary + "--\r\n";
+      String request = "POST / HTTP/1.1\r\n"
+                     + "Host: " + AllTests.host() + "\r\n"
+                     + "Content-Type: multipart/form-data; boundary=" + boundary + "\r\n"
+                     + "Content-Length: " + body.length() + "\r\n"
+                     + "Connection: close\r\n\r\n"
+                     + body;
+
+      Socket socket = new Socket(AllTests.host(), AllTests.port());
+      try {
+         socket.setSoTimeout(10000);
+         OutputStream out = socket.getOutputStream();
+         out.write(request.getBytes("ISO-8859-1"));
+
+         InputStream in = socket.getInputStream();
+         ByteArrayOutputStream received = new ByteArrayOutputStream();
+         byte[] buffer = new byte[4096];
+         int count;
+         while ((count = in.read(buffer)) >= 0) {
+            received.write(buffer, 0, count);
+         }
+         return received.toString("ISO-8859-1");
+      } finally {
+         socket.close();
+      }
+   }
 }
@@ -120,6 +120,7 @@ public class APITests extends TestCase {
       list.add("RuntimeProps");
       list.add("SimpleOutput");
       list.add("SimpleTypes");
+      list.add("Upload");
 
       Map functions = _allInOneAPI.getFunctions();
 
@@ -0,0 +1,260 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.common.spring;
+
+import java.io.IOException;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.RemoteConnectFailureException;
+import org.springframework.remoting.RemoteProxyFailureException;
+
+import org.xins.client.AbstractCAPI;
+import org.xins.client.UnacceptableErrorCodeXINSCallException;
+import org.xins.client.XINSCallRequest;
+import org.xins.client.XINSCallResultData;
+import org.xins.common.collections.PropertyReader;
+import org.xins.common.service.Descriptor;
+import org.xins.common.service.TargetDescriptor;
+import org.xins.common.spring.XinsClientInterceptor;
+import org.xins.common.xml.Element;
+
+/**
+ * Tests for class <code>XinsClientInterceptor</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class XinsClientInterceptorTests extends TestCase {
+
+   /**
+    * The URL of the API, that is never called.
+    */
+   private static final String SERVICE_URL = "http://127.0.0.1:8080/test/";
+
+   /**
+    * Constructs a new <code>XinsClientInterceptorTests</code> test suite
+    * with the specified name. The name will be passed to the
+    * superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public XinsClientInterceptorTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(XinsClientInterceptorTests.class);
+   }
+
+   /**
+    * Tests that the methods of the service interface are invoked on the
+    * CAPI class set with <code>setCapiClass</code>.
+    */
+   public void testCapiClass() throws Throwable {
+      XinsClientInterceptor interceptor = createInterceptor();
+      assertTrue(interceptor.createCapi() instanceof TestCAPI);
+
+      Method echo = EchoService.class.getMethod("echo", new Class[] { String.class });
+      assertEquals("hello", interceptor.invoke(new Invocation(echo, "hello")));
+   }
+
+   /**
+    * Tests that without a CAPI class, the service interface is used as the
+    * CAPI class, which fails for an interface.
+    */
+   public void testNoCapiClass() throws Exception {
+      XinsClientInterceptor interceptor = new XinsClientInterceptor();
+      interceptor.setServiceInterface(EchoService.class);
+      interceptor.setServiceUrl(SERVICE_URL);
+      try {
+         interceptor.afterPropertiesSet();
+         fail("Expected BeanCreationException.");
+      } catch (BeanCreationException exception) {
+         // as expected
+      }
+   }
+
+   /**
+    * Tests that a method that is not in the dispatch table is invoked as
+    * such on the CAPI.
+    */
+   public void testMethodNotInTable() throws Throwable {
+      XinsClientInterceptor interceptor = createInterceptor();
+      Method shout = TestCAPI.class.getMethod("shout", new Class[] { String.class });
+      assertEquals("HELLO", interceptor.invoke(new Invocation(shout, "hello")));
+   }
+
+   /**
+    * Tests that calling the interceptor before it is prepared fails.
+    */
+   public void testNotPrepared() throws Throwable {
+      Method echo = EchoService.class.getMethod("echo", new Class[] { String.class });
+      try {
+         new XinsClientInterceptor().invoke(new Invocation(echo, "hello"));
+         fail("Expected IllegalStateException.");
+      } catch (IllegalStateException exception) {
+         // as expected
+      }
+   }
+
+   /**
+    * Tests the conversion of the exceptions thrown by the CAPI.
+    */
+   public void testExceptions() throws Throwable {
+      XinsClientInterceptor interceptor = createInterceptor();
+      Method fail = EchoService.class.getMethod("fail", new Class[] { Exception.class });
+
+      // XINS call exceptions are converted to remote access exceptions
+      TargetDescriptor target = new TargetDescriptor(SERVICE_URL);
+      Exception callException = new UnacceptableErrorCodeXINSCallException(
+         new XINSCallRequest("Echo"), target, 0L, new ErrorResultData());
+      try {
+         interceptor.invoke(new Invocation(fail, callException));
+         fail("Expected RemoteAccessException.");
+      } catch (RemoteConnectFailureException exception) {
+         fail("Unexpected RemoteConnectFailureException.");
+      } catch (RemoteAccessException exception) {
+         assertSame(callException, exception.getCause());
+      }
+
+      // Other exceptions are thrown as such
+      Exception ioException = new IOException("Test");
+      try {
+         interceptor.invoke(new Invocation(fail, ioException));
+         fail("Expected IOException.");
+      } catch (IOException exception) {
+         assertSame(ioException, exception);
+      }
+
+      // A failing invocation is reported as a proxy failure
+      Method echo = EchoService.class.getMethod("echo", new Class[] { String.class });
+      try {
+         interceptor.invoke(new Invocation(echo, Integer.valueOf(12)));
+         fail("Expected RemoteProxyFailureException.");
+      } catch (RemoteProxyFailureException exception) {
+         assertTrue(exception.getCause() instanceof IllegalArgumentException);
+      }
+   }
+
+   /**
+    * Creates an interceptor for the <code>EchoService</code> that uses the
+    * <code>TestCAPI</code>.
+    *
+    * @return
+    *    the prepared interceptor, never <code>null</code>.
+    */
+   private static XinsClientInterceptor createInterceptor() {
+      XinsClientInterceptor interceptor = new XinsClientInterceptor();
+      interceptor.setServiceInterface(EchoService.class);
+      interceptor.setCapiClass(TestCAPI.class);
+      interceptor.setServiceUrl(SERVICE_URL);
+      interceptor.afterPropertiesSet();
+      return interceptor;
+   }
+
+   /**
+    * Service interface, not implemented by the CAPI.
+    */
+   public interface EchoService {
+      String echo(String text);
+      void fail(Exception exception) throws Exception;
+   }
+
+   /**
+    * CAPI with methods that do not call the API.
+    */
+   public static class TestCAPI extends AbstractCAPI {
+
+      public TestCAPI(Descriptor descriptor) {
+         super(descriptor);
+      }
+
+      public String getXINSVersion() {
+         return "3.0";
+      }
+
+      public String echo(String text) {
+         return text;
+      }
+
+      public void fail(Exception exception) throws Exception {
+         throw exception;
+      }
+
+      public String shout(String text) {
+         return text.toUpperCase();
+      }
+   }
+
+   /**
+    * Result data of an unsuccessful call.
+    */
+   private static final class ErrorResultData implements XINSCallResultData {
+
+      public String getErrorCode() {
+         return "TestError";
+      }
+
+      public PropertyReader getParameters() {
+         return null;
+      }
+
+      public Element getDataElement() {
+         return null;
+      }
+   }
+
+   /**
+    * Invocation of a method with the specified arguments.
+    */
+   private static final class Invocation implements MethodInvocation {
+
+      private final Method _method;
+
+      private final Object[] _arguments;
+
+      Invocation(Method method, Object... arguments) {
+         _method    = method;
+         _arguments = arguments;
+      }
+
+      public Method getMethod() {
+         return _method;
+      }
+
+      public Object[] getArguments() {
+         return _arguments;
+      }
+
+      public Object proceed() {
+         throw new UnsupportedOperationException();
+      }
+
+      public Object getThis() {
+         return null;
+      }
+
+      public AccessibleObject getStaticPart() {
+         return _method;
+      }
+   }
+}
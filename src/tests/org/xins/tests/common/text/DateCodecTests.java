@@ -0,0 +1,133 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.common.text;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.text.DateCodec;
+import org.xins.common.text.ParseException;
+
+/**
+ * Tests for class <code>DateCodec</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class DateCodecTests extends TestCase {
+
+   /**
+    * Constructs a new <code>DateCodecTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public DateCodecTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(DateCodecTests.class);
+   }
+
+   public void testParse() throws Exception {
+      long fields = DateCodec.parse(DateCodec.Format.XINS_TIMESTAMP, "20070524235907");
+      assertEquals(2007, DateCodec.getYear(fields));
+      assertEquals(5,    DateCodec.getMonth(fields));
+      assertEquals(24,   DateCodec.getDay(fields));
+      assertEquals(23,   DateCodec.getHour(fields));
+      assertEquals(59,   DateCodec.getMinute(fields));
+      assertEquals(7,    DateCodec.getSecond(fields));
+      assertEquals(DateCodec.pack(2007, 5, 24, 23, 59, 7), fields);
+
+      assertEquals(fields, DateCodec.parse(DateCodec.Format.ISO_TIMESTAMP,     "2007-05-24T23:59:07"));
+      assertEquals(fields, DateCodec.parse(DateCodec.Format.XML_RPC_TIMESTAMP, "20070524T23:59:07"));
+      assertEquals(fields, DateCodec.parse(DateCodec.Format.XML_RPC_TIMESTAMP, "x20070524T23:59:07".getBytes("US-ASCII"), 1));
+      assertEquals(DateCodec.pack(2007, 5, 24, 0, 0, 0), DateCodec.parse(DateCodec.Format.ISO_DATE, "2007-05-24"));
+   }
+
+   public void testParseInvalid() throws Exception {
+      doTestParseInvalid(DateCodec.Format.XINS_DATE,      "2007052");
+      doTestParseInvalid(DateCodec.Format.XINS_DATE,      "200705241");
+      doTestParseInvalid(DateCodec.Format.XINS_DATE,      "2007-524");
+      doTestParseInvalid(DateCodec.Format.XINS_DATE,      "20071324");
+      doTestParseInvalid(DateCodec.Format.XINS_DATE,      "20070500");
+      doTestParseInvalid(DateCodec.Format.XINS_DATE,      "20070532");
+      doTestParseInvalid(DateCodec.Format.XINS_TIMESTAMP, "20070524240000");
+      doTestParseInvalid(DateCodec.Format.XINS_TIMESTAMP, "20070524236000");
+      doTestParseInvalid(DateCodec.Format.XINS_TIMESTAMP, "20070524230060");
+      doTestParseInvalid(DateCodec.Format.ISO_DATE,       "2007/05/24");
+      doTestParseInvalid(DateCodec.Format.ISO_TIMESTAMP,  "2007-05-24 23:59:07");
+   }
+
+   private void doTestParseInvalid(DateCodec.Format format, String s) {
+      try {
+         DateCodec.parse(format, s);
+         fail("Expected ParseException for \"" + s + "\" in format " + format + '.');
+      } catch (ParseException exception) {
+         // as expected
+      }
+   }
+
+   public void testFormat() throws Exception {
+      long fields = DateCodec.pack(987, 1, 2, 3, 4, 5);
+      assertEquals("09870102",            DateCodec.format(DateCodec.Format.XINS_DATE,         fields));
+      assertEquals("09870102030405",      DateCodec.format(DateCodec.Format.XINS_TIMESTAMP,    fields));
+      assertEquals("0987-01-02",          DateCodec.format(DateCodec.Format.ISO_DATE,          fields));
+      assertEquals("0987-01-02T03:04:05", DateCodec.format(DateCodec.Format.ISO_TIMESTAMP,     fields));
+      assertEquals("09870102T03:04:05",   DateCodec.format(DateCodec.Format.XML_RPC_TIMESTAMP, fields));
+
+      char[] chars = new char[20];
+      assertEquals(20, DateCodec.format(DateCodec.Format.ISO_TIMESTAMP, fields, chars, 1));
+      assertEquals("0987-01-02T03:04:05", new String(chars, 1, 19));
+
+      byte[] bytes = new byte[19];
+      assertEquals(19, DateCodec.format(DateCodec.Format.ISO_TIMESTAMP, fields, bytes, 0));
+      assertEquals("0987-01-02T03:04:05", new String(bytes, "US-ASCII"));
+   }
+
+   public void testYearBoundaries() throws Exception {
+      assertEquals("00000101235959", DateCodec.format(DateCodec.Format.XINS_TIMESTAMP, DateCodec.pack(0, 1, 1, 23, 59, 59)));
+      assertEquals("99991231000000", DateCodec.format(DateCodec.Format.XINS_TIMESTAMP, DateCodec.pack(9999, 12, 31, 0, 0, 0)));
+
+      // Values that do not fit in the formats are rejected
+      int[][] invalid = {
+         { 10000, 1, 1, 0, 0, 0 }, { 16384, 1, 1, 0, 0, 0 }, { -1, 1, 1, 0, 0, 0 },
+         { 2007, 13, 1, 0, 0, 0 }, { 2007, 1, 0, 0, 0, 0 }, { 2007, 1, 1, 24, 0, 0 },
+         { 2007, 1, 1, 0, 60, 0 }, { 2007, 1, 1, 0, 0, -1 }
+      };
+      for (int i = 0; i < invalid.length; i++) {
+         int[] v = invalid[i];
+         try {
+            DateCodec.pack(v[0], v[1], v[2], v[3], v[4], v[5]);
+            fail("Expected IllegalArgumentException for values " + i + '.');
+         } catch (IllegalArgumentException exception) {
+            // as expected
+         }
+      }
+   }
+
+   public void testConvert() throws Exception {
+      assertEquals("2007-05-24",          DateCodec.convert("20070524", DateCodec.Format.XINS_DATE, DateCodec.Format.ISO_DATE));
+      assertEquals("20070524T00:00:00",   DateCodec.convert("20070524", DateCodec.Format.XINS_DATE, DateCodec.Format.XML_RPC_TIMESTAMP));
+      assertEquals("20070524",            DateCodec.convert("20070524T23:59:07", DateCodec.Format.XML_RPC_TIMESTAMP, DateCodec.Format.XINS_DATE));
+      assertEquals("20070524235907",      DateCodec.convertPrefix("2007-05-24T23:59:07.125+02:00", DateCodec.Format.ISO_TIMESTAMP, DateCodec.Format.XINS_TIMESTAMP));
+      try {
+         DateCodec.convert("2007-05-24T23:59:07Z", DateCodec.Format.ISO_TIMESTAMP, DateCodec.Format.XINS_TIMESTAMP);
+         fail("Expected ParseException.");
+      } catch (ParseException exception) {
+         // as expected
+      }
+   }
+}
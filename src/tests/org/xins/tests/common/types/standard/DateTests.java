@@ -135,6 +135,17 @@ public class DateTests extends TestCase {
       assertEquals(asString, v.toString());
    }
 
+   /**
+    * Tests the conversion to a string of dates with a year of more than 4
+    * digits, which are written in full like <code>SimpleDateFormat</code>
+    * did.
+    */
+   public void testDateValueLargeYear() throws Exception {
+      assertEquals("99991231",  new Date.Value(9999, 12, 31).toString());
+      assertEquals("123450101", new Date.Value(12345, 1, 1).toString());
+      assertEquals("123450101", Date.toString(new Date.Value(12345, 1, 1)));
+   }
+
    /**
     * Tests the <code>equals</code> method in the <code>Date$Value</code>
     * class.
@@ -1,5 +1,6 @@
 package org.xins.tests.common.types.standard;
 
+import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
@@ -148,6 +149,19 @@ public class TimestampTests extends TestCase {
       assertEquals(asString, v.toString());
    }
 
+   /**
+    * Tests the conversion to a string of timestamps with a year of more than
+    * 4 digits, which are written in full like <code>SimpleDateFormat</code>
+    * did.
+    */
+   public void testTimestampValueLargeYear() throws Exception {
+      assertEquals("123450101020304", new Timestamp.Value(12345, 1, 1, 2, 3, 4).toString());
+
+      Date date = new Date(Long.MAX_VALUE / 1000L);
+      SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+      assertEquals(format.format(date), new Timestamp.Value(date).toString());
+   }
+
    /**
     * Tests the <code>equals</code> method in the <code>Timestamp$Value</code>
     * class.
@@ -100,4 +100,75 @@ public class ElementParserTests extends TestCase {
          // as expected.
       }
    }
+
+   /**
+    * Tests parsing part of a byte array.
+    */
+   public void testParseBytes() throws Exception {
+
+      byte[] xml = "garbage<a:b xmlns:a=\"x\" a:c=\"d\">text<e/></a:b>garbage".getBytes("UTF-8");
+      Element element = new ElementParser().parse(xml, 7, xml.length - 14);
+      assertEquals("b",    element.getLocalName());
+      assertEquals("a",    element.getNamespacePrefix());
+      assertEquals("x",    element.getNamespaceURI());
+      assertEquals("d",    element.getAttribute("x", "c"));
+      assertEquals("text", element.getText());
+      assertEquals(1,      element.getChildElements("e").size());
+
+      try {
+         new ElementParser().parse(xml, 7, xml.length);
+         fail("Expected IllegalArgumentException.");
+      } catch (IllegalArgumentException exception) {
+         // as expected
+      }
+   }
+
+   /**
+    * Tests that the parser can be reused after a parse error.
+    */
+   public void testReuseAfterError() throws Exception {
+      ElementParser parser = new ElementParser();
+      try {
+         parser.parse("<a><b></a>");
+         fail("Expected ParseException.");
+      } catch (ParseException exception) {
+         // as expected
+      }
+
+      Element element = parser.parse("<c><d/></c>");
+      assertEquals("c", element.getLocalName());
+      assertEquals(1,   element.getChildElements("d").size());
+   }
+
+   /**
+    * Tests that the readers and handlers, which are shared between threads,
+    * can be used by several threads at the same time.
+    */
+   public void testParseConcurrently() throws Exception {
+      final ElementParser parser = new ElementParser();
+      final Throwable[] failure = new Throwable[1];
+      Thread[] threads = new Thread[8];
+      for (int i = 0; i < threads.length; i++) {
+         final String name = "e" + i;
+         threads[i] = new Thread() {
+            public void run() {
+               try {
+                  for (int j = 0; j < 1000; j++) {
+                     Element element = parser.parse("<" + name + " a=\"" + j + "\"><f/></" + name + ">");
+                     assertEquals(name,               element.getLocalName());
+                     assertEquals(String.valueOf(j),  element.getAttribute("a"));
+                     assertEquals(1,                  element.getChildElements("f").size());
+                  }
+               } catch (Throwable exception) {
+                  failure[0] = exception;
+               }
+            }
+         };
+         threads[i].start();
+      }
+      for (int i = 0; i < threads.length; i++) {
+         threads[i].join();
+      }
+      assertNull("Parsing failed: " + failure[0], failure[0]);
+   }
 }
@@ -6,9 +6,14 @@
  */
 package org.xins.tests.server;
 
+import java.io.File;
+import java.io.FileWriter;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import org.xins.common.text.ParseException;
+import org.xins.server.AccessRule;
 import org.xins.server.AccessRuleList;
 
 /**
@@ -94,4 +99,108 @@ public class AccessRuleListTests extends TestCase {
       assertEquals(2, arl.getRuleCount());
       // TODO: More tests
    }
+
+   public void testIsAllowed() throws Throwable {
+
+      String descriptor = "allow 10.0.0.1/32 _*;"
+                        + "deny  10.0.0.0/8 _*;"
+                        + "allow 10.1.0.0/16 Get*,Set* xml;"
+                        + "deny  10.1.2.0/24 *;"
+                        + "allow 10.1.0.0/16 *;"
+                        + "allow 2001:6b0:1:1a0::/59 Get?;"
+                        + "deny  ::/0 *;"
+                        + "allow 0.0.0.0/0 *Version";
+      AccessRuleList arl = AccessRuleList.parseAccessRuleList(descriptor, 0);
+      assertEquals(8, arl.getRuleCount());
+
+      assertEquals(Boolean.TRUE,  arl.isAllowed("10.0.0.1",     "_GetVersion", null));
+      assertEquals(Boolean.FALSE, arl.isAllowed("10.0.0.2",     "_GetVersion", null));
+      assertEquals(Boolean.TRUE,  arl.isAllowed("10.1.2.3",     "GetUser",     "xml"));
+      assertEquals(Boolean.FALSE, arl.isAllowed("10.1.2.3",     "GetUser",     "soap"));
+      assertEquals(Boolean.TRUE,  arl.isAllowed("10.1.3.3",     "GetUser",     "soap"));
+      assertEquals(Boolean.TRUE,  arl.isAllowed("2001:6b0:1:1bf::1", "GetA",   null));
+      assertEquals(Boolean.FALSE, arl.isAllowed("2001:6b0:1:1bf::1", "Get",    null));
+      assertEquals(Boolean.TRUE,  arl.isAllowed("192.168.0.1",  "_GetVersion", null));
+      assertNull(arl.isAllowed("192.168.0.1", "GetUser", null));
+
+      try {
+         arl.isAllowed("10.0.0.256", "GetUser", null);
+         fail("AccessRuleList.isAllowed(\"10.0.0.256\", ...) should throw a ParseException.");
+      } catch (ParseException exception) {
+         // as expected
+      }
+
+      // Compare with evaluating the rules one by one
+      String[] ruleStrings = descriptor.split(";");
+      String[] ips = { "10.0.0.1", "10.0.0.2", "10.1.2.3", "10.1.3.3", "10.200.0.1",
+                       "192.168.0.1", "::1", "2001:6b0:1:1a0::", "2001:6b0:1:1c0::" };
+      String[] functions = { "_GetVersion", "GetUser", "SetUser", "GetA", "Delete" };
+      String[] conventions = { null, "xml", "soap" };
+      for (int i = 0; i < ips.length; i++) {
+         for (int j = 0; j < functions.length; j++) {
+            for (int k = 0; k < conventions.length; k++) {
+               Boolean expected = null;
+               for (int r = 0; r < ruleStrings.length && expected == null; r++) {
+                  AccessRule rule = AccessRule.parseAccessRule(ruleStrings[r].trim());
+                  expected = rule.isAllowed(ips[i], functions[j], conventions[k]);
+               }
+               assertEquals(ips[i] + ", " + functions[j] + ", " + conventions[k],
+                            expected, arl.isAllowed(ips[i], functions[j], conventions[k]));
+            }
+         }
+      }
+   }
+
+   public void testCachedDecisionsAfterReload() throws Throwable {
+
+      File aclFile = File.createTempFile("xins-acl", ".acl");
+      aclFile.deleteOnExit();
+      writeFile(aclFile, "allow 10.0.0.0/8 *\n");
+
+      String descriptor = "deny 10.0.0.13/32 _*; file " + aclFile.getAbsolutePath() + "; deny 0.0.0.0/0 *";
+      AccessRuleList arl = AccessRuleList.parseAccessRuleList(descriptor, 1, 100);
+      try {
+         for (int i = 0; i < 3; i++) {
+            assertEquals(Boolean.TRUE,  arl.isAllowed("10.0.0.1",  "GetUser",     null));
+            assertEquals(Boolean.FALSE, arl.isAllowed("10.0.0.13", "_GetVersion", null));
+            assertEquals(Boolean.FALSE, arl.isAllowed("11.0.0.1",  "GetUser",     null));
+         }
+
+         // Change the file, the cached decisions must not be used anymore
+         writeFile(aclFile, "deny 10.0.0.0/8 Get*\nallow 11.0.0.0/8 *\n");
+         aclFile.setLastModified(System.currentTimeMillis() + 5000L);
+         long timeOut = System.currentTimeMillis() + 10000L;
+         while (Boolean.TRUE.equals(arl.isAllowed("10.0.0.1", "GetUser", null))
+               && System.currentTimeMillis() < timeOut) {
+            Thread.sleep(100L);
+         }
+         assertEquals(Boolean.FALSE, arl.isAllowed("10.0.0.1",  "GetUser",     null));
+         assertEquals(Boolean.TRUE,  arl.isAllowed("11.0.0.1",  "GetUser",     null));
+         assertEquals(Boolean.FALSE, arl.isAllowed("10.0.0.13", "_GetVersion", null));
+      } finally {
+         arl.dispose();
+         aclFile.delete();
+      }
+
+      // A list without cache gives the same decisions
+      arl = AccessRuleList.parseAccessRuleList("allow 10.0.0.0/8 *; deny 0.0.0.0/0 *", 0, 0);
+      assertEquals(Boolean.TRUE,  arl.isAllowed("10.0.0.1", "GetUser", null));
+      assertEquals(Boolean.FALSE, arl.isAllowed("11.0.0.1", "GetUser", null));
+
+      try {
+         AccessRuleList.parseAccessRuleList("allow 10.0.0.0/8 *", 0, -1);
+         fail("AccessRuleList.parseAccessRuleList(String,int,int) should throw an IllegalArgumentException for a negative cache size.");
+      } catch (IllegalArgumentException exception) {
+         // as expected
+      }
+   }
+
+   private void writeFile(File file, String content) throws Exception {
+      FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      } finally {
+         writer.close();
+      }
+   }
 }
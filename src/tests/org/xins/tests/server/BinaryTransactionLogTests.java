@@ -0,0 +1,156 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ElementParser;
+import org.xins.server.BinaryTransactionLogReader;
+import org.xins.server.BinaryTransactionLogWriter;
+
+/**
+ * Tests for classes <code>BinaryTransactionLogWriter</code> and
+ * <code>BinaryTransactionLogReader</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class BinaryTransactionLogTests extends TestCase {
+
+   /**
+    * Constructs a new <code>BinaryTransactionLogTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public BinaryTransactionLogTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(BinaryTransactionLogTests.class);
+   }
+
+   public void testWriteAndRead() throws Exception {
+      BasicPropertyReader requestParams = new BasicPropertyReader();
+      requestParams.set("name", "caf\u00e9");
+      requestParams.set("count", "3");
+      Element requestData = new ElementParser().parse("<data><person id=\"1\">Jos</person></data>");
+      BasicPropertyReader resultParams = new BasicPropertyReader();
+      resultParams.set("total", "12");
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BinaryTransactionLogWriter writer = new BinaryTransactionLogWriter(out, false);
+      writer.write("GetPerson", requestParams, requestData, "0", resultParams, null,
+                   "127.0.0.1", 1180000000000L, 25L, "api@host:070524-120000000:1a2b3");
+      writer.write("GetPerson", null, null, "NoSuchPerson", null, null,
+                   "127.0.0.1", 1180000000100L, 3L, null);
+      writer.close();
+
+      BinaryTransactionLogReader reader = new BinaryTransactionLogReader(new ByteArrayInputStream(out.toByteArray()));
+      BinaryTransactionLogReader.Transaction transaction = reader.next();
+      assertNotNull(transaction);
+      assertEquals("GetPerson", transaction.getFunctionName());
+      assertEquals("0", transaction.getResultCode());
+      assertEquals("127.0.0.1", transaction.getIP());
+      assertEquals(1180000000000L, transaction.getStart());
+      assertEquals(25L, transaction.getDuration());
+      assertEquals("api@host:070524-120000000:1a2b3", transaction.getContextID());
+      assertEquals("caf\u00e9", transaction.getRequestParameters().get("name"));
+      assertEquals("3", transaction.getRequestParameters().get("count"));
+      assertEquals(2, transaction.getRequestParameters().size());
+      Element data = transaction.getRequestDataElement();
+      assertEquals("data", data.getLocalName());
+      assertEquals("Jos", data.getUniqueChildElement("person").getText());
+      assertEquals("12", transaction.getResultParameters().get("total"));
+      assertNull(transaction.getResultData());
+
+      transaction = reader.next();
+      assertNotNull(transaction);
+      assertEquals("NoSuchPerson", transaction.getResultCode());
+      assertEquals(3L, transaction.getDuration());
+      assertNull(transaction.getContextID());
+      assertEquals(0, transaction.getRequestParameters().size());
+      assertNull(transaction.getRequestData());
+
+      assertNull(reader.next());
+   }
+
+   /**
+    * Tests that repeated strings are only stored once.
+    */
+   public void testDictionary() throws Exception {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BinaryTransactionLogWriter writer = new BinaryTransactionLogWriter(out, false);
+      writer.write("AVeryLongFunctionNameForTesting", null, null, "0", null, null, "10.0.0.1", 0L, 1L, null);
+      writer.flush();
+      int first = out.size();
+      writer.write("AVeryLongFunctionNameForTesting", null, null, "0", null, null, "10.0.0.1", 0L, 1L, null);
+      writer.flush();
+      assertTrue(out.size() - first < "AVeryLongFunctionNameForTesting".length());
+   }
+
+   /**
+    * Tests reading a log that was appended to by a second writer.
+    */
+   public void testAppend() throws Exception {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BinaryTransactionLogWriter writer = new BinaryTransactionLogWriter(out, false);
+      writer.write("First", null, null, "0", null, null, "10.0.0.1", 0L, 1L, null);
+      writer.flush();
+      writer = new BinaryTransactionLogWriter(out, true);
+      writer.write("Second", null, null, "0", null, null, "10.0.0.2", 0L, 1L, null);
+      writer.flush();
+
+      BinaryTransactionLogReader reader = new BinaryTransactionLogReader(new ByteArrayInputStream(out.toByteArray()));
+      assertEquals("First",    reader.next().getFunctionName());
+      BinaryTransactionLogReader.Transaction transaction = reader.next();
+      assertEquals("Second",   transaction.getFunctionName());
+      assertEquals("10.0.0.2", transaction.getIP());
+      assertNull(reader.next());
+   }
+
+   /**
+    * Tests that a log with an incomplete last entry is read up to the last
+    * complete entry.
+    */
+   public void testTruncated() throws Exception {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      BinaryTransactionLogWriter writer = new BinaryTransactionLogWriter(out, false);
+      writer.write("First", null, null, "0", null, null, "10.0.0.1", 0L, 1L, null);
+      writer.write("First", null, null, "0", null, null, "10.0.0.1", 0L, 2L, null);
+      writer.flush();
+      byte[] bytes = out.toByteArray();
+
+      BinaryTransactionLogReader reader = new BinaryTransactionLogReader(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+      assertEquals(1L, reader.next().getDuration());
+      assertNull(reader.next());
+   }
+
+   public void testNotALog() throws Exception {
+      try {
+         new BinaryTransactionLogReader(new ByteArrayInputStream("<xml/>".getBytes("US-ASCII")));
+         fail("Expected IOException.");
+      } catch (IOException exception) {
+         // as expected
+      }
+   }
+}
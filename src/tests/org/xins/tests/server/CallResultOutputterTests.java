@@ -0,0 +1,120 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.common.xml.Element;
+import org.xins.server.CallResultOutputter;
+import org.xins.server.FunctionResult;
+
+/**
+ * Tests for class <code>CallResultOutputter</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class CallResultOutputterTests extends TestCase {
+
+   /**
+    * Constructs a new <code>CallResultOutputterTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public CallResultOutputterTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(CallResultOutputterTests.class);
+   }
+
+   public void testEmptyResult() throws Exception {
+      assertSameOutput(new FunctionResult());
+      assertSameOutput(new FunctionResult("InvalidRequest"));
+   }
+
+   public void testParameters() throws Exception {
+      BasicPropertyReader params = new BasicPropertyReader();
+      params.set("simple", "value");
+      params.set("escaped", "<a href=\"x\">&amp;</a>");
+      params.set("latin", "caf\u00E9 na\u00EFve");
+      params.set("euro", "\u20AC 10");
+      params.set("surrogates", "\uD834\uDD1E clef");
+      params.set("empty", "");
+      assertSameOutput(new FunctionResult("SomeError", params));
+   }
+
+   public void testDataSection() throws Exception {
+      Element data = new Element("person");
+      data.setAttribute("name", "Jos\u00E9 \"Pepe\" <Garc\u00EDa>");
+      data.setAttribute("city", "K\u00F8benhavn & M\u00FCnchen");
+      Element child = new Element("note");
+      child.add("Text with \u00E9, \u4E2D\u6587 and <markup> & more.");
+      data.addChild(child);
+      data.addChild(new Element("empty"));
+      Element namespaced = new Element("ns", "http://example.org/ns", "item");
+      namespaced.setAttribute("ns", "http://example.org/ns", "id", "12");
+      data.addChild(namespaced);
+      data.add("trailing text");
+
+      TestResult result = new TestResult();
+      result.add(data);
+      for (int i = 0; i < 3000; i++) {
+         Element row = new Element("row");
+         row.setAttribute("index", String.valueOf(i));
+         row.add("\u00E9\u00E8\u00EA " + i);
+         result.add(row);
+      }
+      assertSameOutput(result);
+   }
+
+   /**
+    * Checks that the byte output and the length are equal to the character
+    * output, encoded as UTF-8.
+    *
+    * @param result
+    *    the result to output, cannot be <code>null</code>.
+    */
+   private static void assertSameOutput(FunctionResult result) throws Exception {
+      StringWriter writer = new StringWriter();
+      CallResultOutputter.output(writer, result, null);
+      byte[] expected = writer.toString().getBytes("UTF-8");
+
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      long written = CallResultOutputter.output(stream, result, null);
+      byte[] actual = stream.toByteArray();
+
+      assertEquals(new String(expected, "UTF-8"), new String(actual, "UTF-8"));
+      assertEquals(expected.length, actual.length);
+      assertEquals(expected.length, written);
+      assertEquals(expected.length, CallResultOutputter.getLength(result, null));
+   }
+
+   /**
+    * Function result that allows adding elements to the data section.
+    */
+   private static class TestResult extends FunctionResult {
+
+      protected void add(Element element) {
+         super.add(element);
+      }
+   }
+}
@@ -456,4 +456,117 @@ public class CallingConventionTests extends TestCase {
                       "501 Not Implemented", result.getStatus());
       }
    }
+
+   /**
+    * Tests that the calling convention detected for a request that does not
+    * specify one is the same as the one that would be used explicitly, and
+    * that the routes are cached.
+    */
+   public void testConventionDetection() throws Throwable {
+
+      // The same calling convention is chosen, also when the route is taken
+      // from the routing table
+      Element beforeDetection = getConventionDetection();
+      String explicit  = callEcho("_xins-std", "hello");
+      String detected1 = callEcho(null, "hello");
+      String detected2 = callEcho(null, "hello");
+      Element afterDetection = getConventionDetection();
+      assertEquals(explicit, detected1);
+      assertEquals(explicit, detected2);
+      assertEquals(getCount(beforeDetection, "detected") + 2, getCount(afterDetection, "detected"));
+
+      // An HTTP method that has not been used before creates a new route
+      String     method  = "ROUTE" + Math.abs(RANDOM.nextInt());
+      Properties headers = new Properties();
+      headers.put("Content-Length", "0");
+      Element before = getConventionDetection();
+      HTTPCallerResult result = HTTPCaller.call("1.1", AllTests.host(), AllTests.port(), method, "/allinone/", headers);
+      assertEquals("501 Not Implemented", result.getStatus());
+      Element afterMiss = getConventionDetection();
+      assertEquals(getCount(before, "routeMisses") + 1, getCount(afterMiss, "routeMisses"));
+      assertEquals(getCount(before, "routeHits"),       getCount(afterMiss, "routeHits"));
+
+      // The second request with the same HTTP method uses the cached route
+      result = HTTPCaller.call("1.1", AllTests.host(), AllTests.port(), method, "/allinone/", headers);
+      assertEquals("501 Not Implemented", result.getStatus());
+      Element afterHit = getConventionDetection();
+      assertEquals(getCount(afterMiss, "routeMisses"),  getCount(afterHit, "routeMisses"));
+      assertEquals(getCount(afterMiss, "routeHits") + 1, getCount(afterHit, "routeHits"));
+   }
+
+   /**
+    * Calls the stateless <em>Echo</em> function of the <em>allinone</em>
+    * API, with the parameters passed as URL parameters.
+    *
+    * @param convention
+    *    the name of the calling convention parameter, or <code>null</code>
+    *    if no calling convention parameter should be sent.
+    *
+    * @param in
+    *    the value of the <em>in</em> parameter.
+    *
+    * @return
+    *    the data returned by the API.
+    *
+    * @throw Throwable
+    *    if anything goes wrong.
+    */
+   private static String callEcho(String convention, String in) throws Throwable {
+      TargetDescriptor descriptor = new TargetDescriptor(AllTests.url() + "allinone/", 2000);
+      BasicPropertyReader params = new BasicPropertyReader();
+      params.set("_function", "Echo");
+      params.set("in", in);
+      if (convention != null) {
+         params.set("_convention", convention);
+      }
+      HTTPCallRequest request = new HTTPCallRequest(params);
+      HTTPServiceCaller caller = new HTTPServiceCaller(descriptor);
+
+      HTTPCallResult result = caller.call(request);
+      assertEquals(200, result.getStatusCode());
+      return result.getString();
+   }
+
+   /**
+    * Gets the statistics of the detection of the calling conventions of the
+    * <em>allinone</em> API.
+    *
+    * @return
+    *    the <code>conventionDetection</code> element, never
+    *    <code>null</code>.
+    *
+    * @throw Throwable
+    *    if anything goes wrong.
+    */
+   private static Element getConventionDetection() throws Throwable {
+      TargetDescriptor descriptor = new TargetDescriptor(AllTests.url() + "allinone/", 2000);
+      BasicPropertyReader params = new BasicPropertyReader();
+      params.set("_function",   "_GetStatistics");
+      params.set("_convention", "_xins-std");
+      HTTPCallRequest request = new HTTPCallRequest(params);
+      HTTPServiceCaller caller = new HTTPServiceCaller(descriptor);
+
+      HTTPCallResult result = caller.call(request);
+      assertEquals(200, result.getStatusCode());
+      Element statistics = new ElementParser().parse(result.getString());
+      return statistics.getUniqueChildElement("data").getUniqueChildElement("conventionDetection");
+   }
+
+   /**
+    * Gets a counter from the statistics of the detection of the calling
+    * conventions.
+    *
+    * @param statistics
+    *    the <code>conventionDetection</code> element, cannot be
+    *    <code>null</code>.
+    *
+    * @param name
+    *    the name of the counter, cannot be <code>null</code>.
+    *
+    * @return
+    *    the value of the counter.
+    */
+   private static long getCount(Element statistics, String name) {
+      return Long.parseLong(statistics.getAttribute(name));
+   }
 }
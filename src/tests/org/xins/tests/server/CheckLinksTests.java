@@ -0,0 +1,419 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.service.Descriptor;
+import org.xins.common.service.TargetDescriptor;
+import org.xins.common.servlet.container.XINSServletContext;
+import org.xins.common.servlet.container.XINSServletRequest;
+import org.xins.common.servlet.container.XINSServletResponse;
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ElementParser;
+import org.xins.server.API;
+import org.xins.server.APIServlet;
+import org.xins.server.RuntimeProperties;
+
+/**
+ * Tests for the <em>_CheckLinks</em> meta function.
+ *
+ * @version $Revision$ $Date$
+ */
+public class CheckLinksTests extends TestCase {
+
+   /**
+    * The number of links to check.
+    */
+   private static final int LINK_COUNT = 4;
+
+   /**
+    * The time the HTTP server takes to answer a request, in milliseconds.
+    */
+   private static final long DELAY = 500L;
+
+   /**
+    * The time the HTTP server takes to answer a request once it hangs, in
+    * milliseconds.
+    */
+   private static final long HANG_DELAY = 10000L;
+
+   /**
+    * The server socket of the slow HTTP server.
+    */
+   private ServerSocket _serverSocket;
+
+   /**
+    * The number of requests received by the server.
+    */
+   private AtomicInteger _requestCount;
+
+   /**
+    * Whether the server waits {@link #HANG_DELAY} instead of {@link #DELAY}
+    * milliseconds before answering.
+    */
+   private volatile boolean _hang;
+
+   /**
+    * The runtime properties file.
+    */
+   private File _configFile;
+
+   /**
+    * The servlet that handles the requests, or <code>null</code> if it is
+    * not started.
+    */
+   private APIServlet _servlet;
+
+   /**
+    * Constructs a new <code>CheckLinksTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public CheckLinksTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(CheckLinksTests.class);
+   }
+
+   /**
+    * Starts a minimal HTTP server that answers each request after
+    * {@link #DELAY} milliseconds.
+    */
+   protected void setUp() throws Exception {
+      _serverSocket = new ServerSocket(0);
+      _requestCount = new AtomicInteger();
+      Thread acceptor = new Thread("CheckLinksTests acceptor") {
+         public void run() {
+            try {
+               while (true) {
+                  final Socket socket = _serverSocket.accept();
+                  Thread handler = new Thread("CheckLinksTests handler") {
+                     public void run() {
+                        serve(socket);
+                     }
+                  };
+                  handler.setDaemon(true);
+                  handler.start();
+               }
+            } catch (IOException exception) {
+               // Server socket closed
+            }
+         }
+      };
+      acceptor.setDaemon(true);
+      acceptor.start();
+
+      List<Descriptor> descriptors = new ArrayList<Descriptor>();
+      for (int i = 0; i < LINK_COUNT; i++) {
+         String url = "http://127.0.0.1:" + _serverSocket.getLocalPort() + "/link" + i;
+         descriptors.add(new TargetDescriptor(url, 5000, 2000, 5000));
+      }
+      LinksAPI.SINGLETON._properties._descriptors = descriptors;
+   }
+
+   protected void tearDown() throws Exception {
+      if (_servlet != null) {
+         _servlet.destroy();
+      }
+      if (_configFile != null) {
+         _configFile.delete();
+      }
+      _serverSocket.close();
+   }
+
+   /**
+    * Answers the requests received on a connection after a delay, until the
+    * client closes the connection.
+    *
+    * @param socket
+    *    the connection, cannot be <code>null</code>.
+    */
+   private void serve(Socket socket) {
+      try {
+         BufferedReader in  = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+         OutputStream   out = socket.getOutputStream();
+         String line;
+         while ((line = in.readLine()) != null) {
+
+            // Skip the headers, the requests have no body
+            if (line.length() > 0) {
+               continue;
+            }
+            _requestCount.incrementAndGet();
+            Thread.sleep(_hang ? HANG_DELAY : DELAY);
+            String response = "HTTP/1.1 200 OK\r\n"
+                            + "Content-Length: 0\r\n"
+                            + "\r\n";
+            out.write(response.getBytes("US-ASCII"));
+            out.flush();
+         }
+      } catch (Exception exception) {
+         // Connection closed
+      } finally {
+         try {
+            socket.close();
+         } catch (IOException exception) {
+            // ignore
+         }
+      }
+   }
+
+   /**
+    * Tests that the links are checked at the same time.
+    */
+   public void testConcurrentChecks() throws Exception {
+      startAPI(new Properties());
+
+      long start = System.currentTimeMillis();
+      Element result = checkLinks();
+      long duration = System.currentTimeMillis() - start;
+
+      assertResult(result);
+      assertEquals(LINK_COUNT, _requestCount.get());
+      assertTrue("Checking the links took " + duration + " ms.", duration < DELAY * LINK_COUNT);
+   }
+
+   /**
+    * Tests that the number of links checked at the same time is limited by
+    * the runtime property <em>org.xins.server.checklinks.threads</em>.
+    */
+   public void testThreadLimit() throws Exception {
+      Properties properties = new Properties();
+      properties.setProperty("org.xins.server.checklinks.threads", "1");
+      startAPI(properties);
+
+      long start = System.currentTimeMillis();
+      Element result = checkLinks();
+      long duration = System.currentTimeMillis() - start;
+
+      assertResult(result);
+      assertEquals(LINK_COUNT, _requestCount.get());
+      assertTrue("Checking the links took " + duration + " ms.", duration >= DELAY * LINK_COUNT);
+   }
+
+   /**
+    * Tests that the results are reused if the runtime property
+    * <em>org.xins.server.checklinks.cache</em> is set.
+    */
+   public void testCachedResults() throws Exception {
+      Properties properties = new Properties();
+      properties.setProperty("org.xins.server.checklinks.cache", "60");
+      startAPI(properties);
+
+      assertResult(checkLinks());
+      assertResult(checkLinks());
+      assertEquals(LINK_COUNT, _requestCount.get());
+   }
+
+   /**
+    * Tests that the results are not reused by default.
+    */
+   public void testNoCachedResults() throws Exception {
+      startAPI(new Properties());
+
+      assertResult(checkLinks());
+      assertResult(checkLinks());
+      assertEquals(LINK_COUNT * 2, _requestCount.get());
+   }
+
+   /**
+    * Tests that with background checks, a target that stops answering is
+    * reported as a connection time-out instead of with its previous result.
+    */
+   public void testBackgroundTimeOut() throws Exception {
+      List<Descriptor> descriptors = new ArrayList<Descriptor>();
+      for (int i = 0; i < LINK_COUNT; i++) {
+         String url = "http://127.0.0.1:" + _serverSocket.getLocalPort() + "/link" + i;
+         descriptors.add(new TargetDescriptor(url, 1000, 1000, 5000));
+      }
+      LinksAPI.SINGLETON._properties._descriptors = descriptors;
+
+      Properties properties = new Properties();
+      properties.setProperty("org.xins.server.checklinks.interval", "1");
+      startAPI(properties);
+      assertResult(checkLinks());
+
+      // Wait for a background check that does not finish in time
+      _hang = true;
+      Element result = null;
+      for (int i = 0; i < 10; i++) {
+         Thread.sleep(500L);
+         result = checkLinks();
+         if (! "0".equals(getParameter(result, "errorCount"))) {
+            break;
+         }
+      }
+      assertEquals(String.valueOf(LINK_COUNT), getParameter(result, "errorCount"));
+      List<Element> checks = result.getUniqueChildElement("data").getChildElements("check");
+      for (Element check : checks) {
+         assertEquals("ConnectionTimeout", check.getAttribute("result"));
+      }
+   }
+
+   /**
+    * Starts the test API with the specified runtime properties.
+    *
+    * @param runtimeProperties
+    *    the runtime properties, cannot be <code>null</code>.
+    */
+   private void startAPI(Properties runtimeProperties) throws Exception {
+      _configFile = File.createTempFile("xins-checklinks", ".properties");
+      FileOutputStream out = new FileOutputStream(_configFile);
+      try {
+         runtimeProperties.store(out, null);
+      } finally {
+         out.close();
+      }
+
+      Properties initParameters = new Properties();
+      initParameters.setProperty("org.xins.api.name",      "links");
+      initParameters.setProperty("org.xins.api.class",     LinksAPI.class.getName());
+      initParameters.setProperty("org.xins.server.config", _configFile.getPath());
+      _servlet = new APIServlet();
+      _servlet.init(new TestServletConfig(initParameters));
+   }
+
+   /**
+    * Calls the <em>_CheckLinks</em> meta function.
+    *
+    * @return
+    *    the result element, never <code>null</code>.
+    */
+   private Element checkLinks() throws Exception {
+      String url = "http://127.0.0.1/links/?_convention=_xins-std&_function=_CheckLinks";
+      XINSServletRequest  request  = new XINSServletRequest(url);
+      XINSServletResponse response = new XINSServletResponse();
+      _servlet.service(request, response);
+      assertEquals(200, response.getStatus());
+
+      String xml = response.getResult();
+      return new ElementParser().parse(xml);
+   }
+
+   /**
+    * Checks that the result reports a successful check for all links.
+    *
+    * @param result
+    *    the result element, cannot be <code>null</code>.
+    */
+   private static void assertResult(Element result) throws Exception {
+      assertNull(result.getAttribute("errorcode"));
+      assertEquals(String.valueOf(LINK_COUNT), getParameter(result, "linkCount"));
+      assertEquals("0", getParameter(result, "errorCount"));
+
+      List<Element> checks = result.getUniqueChildElement("data").getChildElements("check");
+      assertEquals(LINK_COUNT, checks.size());
+      for (Element check : checks) {
+         assertEquals("Success", check.getAttribute("result"));
+      }
+   }
+
+   private static String getParameter(Element result, String name) {
+      for (Element param : result.getChildElements("param")) {
+         if (name.equals(param.getAttribute("name"))) {
+            return param.getText();
+         }
+      }
+      return null;
+   }
+
+   /**
+    * API without functions that declares the links to check.
+    */
+   public static final class LinksAPI extends API {
+
+      /**
+       * The singleton instance, used by the servlet.
+       */
+      public static final LinksAPI SINGLETON = new LinksAPI();
+
+      /**
+       * The runtime properties that define the links.
+       */
+      final LinksProperties _properties = new LinksProperties();
+
+      private LinksAPI() {
+         super("links");
+      }
+
+      public RuntimeProperties getProperties() {
+         return _properties;
+      }
+   }
+
+   /**
+    * Runtime properties with a fixed list of links.
+    */
+   private static final class LinksProperties extends RuntimeProperties {
+
+      /**
+       * The links to check.
+       */
+      volatile List<Descriptor> _descriptors = new ArrayList<Descriptor>();
+
+      protected List<Descriptor> descriptors() {
+         return _descriptors;
+      }
+   }
+
+   private static final class TestServletConfig implements ServletConfig {
+
+      private final Properties _initParameters;
+
+      private final ServletContext _context = new XINSServletContext();
+
+      TestServletConfig(Properties initParameters) {
+         _initParameters = initParameters;
+      }
+
+      public String getServletName() {
+         return "links";
+      }
+
+      public ServletContext getServletContext() {
+         return _context;
+      }
+
+      public String getInitParameter(String name) {
+         return _initParameters.getProperty(name);
+      }
+
+      public Enumeration getInitParameterNames() {
+         return _initParameters.keys();
+      }
+   }
+}
@@ -0,0 +1,130 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.server;
+
+import java.text.SimpleDateFormat;
+import java.util.regex.Pattern;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.server.ContextIDGenerator;
+
+/**
+ * Tests for class <code>ContextIDGenerator</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class ContextIDGeneratorTests extends TestCase {
+
+   /**
+    * The format of the context identifiers generated for the API
+    * <em>myapi</em> on the host <em>test.host</em>.
+    */
+   private static final Pattern FORMAT = Pattern.compile("myapi@test\\.host:\\d{6}-\\d{9}:[0-9a-f]{5}");
+
+   /**
+    * Constructs a new <code>ContextIDGeneratorTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public ContextIDGeneratorTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(ContextIDGeneratorTests.class);
+   }
+
+   /**
+    * Tests the format of the generated context identifiers and that they
+    * contain the current time.
+    */
+   public void testFormat() throws Exception {
+      ContextIDGenerator generator = createGenerator();
+      SimpleDateFormat timeFormat = new SimpleDateFormat("yyMMdd-HHmmssSSS");
+      for (int i = 0; i < 100; i++) {
+         long before = System.currentTimeMillis();
+         String contextID = generator.generate();
+         long after = System.currentTimeMillis();
+         assertTrue("Incorrect context ID: " + contextID, FORMAT.matcher(contextID).matches());
+
+         int start = contextID.indexOf(':') + 1;
+         String time = contextID.substring(start, start + 16);
+         long date = timeFormat.parse(time).getTime();
+         assertTrue("Time " + time + " is before " + before + '.', date >= before);
+         assertTrue("Time " + time + " is after " + after + '.', date <= after);
+      }
+   }
+
+   /**
+    * Tests the format of the context identifiers generated on several
+    * threads at the same time.
+    */
+   public void testFormatConcurrently() throws Exception {
+      final ContextIDGenerator generator = createGenerator();
+      final String[] failure = new String[1];
+      Thread[] threads = new Thread[8];
+      for (int i = 0; i < threads.length; i++) {
+         threads[i] = new Thread() {
+            public void run() {
+               for (int j = 0; j < 10000; j++) {
+                  String contextID = generator.generate();
+                  if (! FORMAT.matcher(contextID).matches()) {
+                     failure[0] = contextID;
+                  }
+               }
+            }
+         };
+         threads[i].start();
+      }
+      for (int i = 0; i < threads.length; i++) {
+         threads[i].join();
+      }
+      assertNull("Incorrect context ID: " + failure[0], failure[0]);
+   }
+
+   /**
+    * Tests that generating a context identifier fails if the generator is
+    * not initialized.
+    */
+   public void testNotInitialized() throws Exception {
+      ContextIDGenerator generator = new ContextIDGenerator("myapi");
+      try {
+         generator.generate();
+         fail("Expected IllegalStateException.");
+      } catch (IllegalStateException exception) {
+         // as expected
+      }
+   }
+
+   /**
+    * Creates an initialized generator for the API <em>myapi</em> on the host
+    * <em>test.host</em>.
+    *
+    * @return
+    *    the generator, never <code>null</code>.
+    */
+   private static ContextIDGenerator createGenerator() throws Exception {
+      ContextIDGenerator generator = new ContextIDGenerator("myapi");
+      generator.bootstrap(new BasicPropertyReader());
+      BasicPropertyReader properties = new BasicPropertyReader();
+      properties.set("org.xins.server.hostname", "test.host");
+      generator.init(properties);
+      return generator;
+   }
+}
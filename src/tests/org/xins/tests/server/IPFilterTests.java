@@ -111,9 +111,18 @@ public class IPFilterTests extends TestCase {
       doTestParseIPFilter_INVALID("1.2.3.4/00");
       doTestParseIPFilter_INVALID("1.2.3.4/01");
       doTestParseIPFilter_INVALID("1.2.3.4/032");
-      //doTestParseIPFilter_INVALID("1.2.3.4/33");
+      doTestParseIPFilter_INVALID("1.2.3.4/33");
       doTestParseIPFilter_INVALID("1.2.3.4/1234567890123456");
       doTestParseIPFilter_INVALID("1.2.3.4.5/0");
+      doTestParseIPFilter_INVALID("1:2:3:4:5:6:7/64");
+      doTestParseIPFilter_INVALID("1:2:3:4:5:6:7:8:9/64");
+      doTestParseIPFilter_INVALID("1::2::3/64");
+      doTestParseIPFilter_INVALID(":1:2:3:4:5:6:7/64");
+      doTestParseIPFilter_INVALID("1:2:3:4:5:6:7:/64");
+      doTestParseIPFilter_INVALID("12345::/64");
+      doTestParseIPFilter_INVALID("::g/64");
+      doTestParseIPFilter_INVALID("::1.2.3/64");
+      doTestParseIPFilter_INVALID("::/129");
 
       // Test valid patterns
       for (int i = 0; i <= 32; i++) {
@@ -255,6 +264,28 @@ public class IPFilterTests extends TestCase {
       doTestMatch(filter, "2001:6b0:1:1bf:ffff:ffff:ffff:ffff", true, true);
       doTestMatch(filter, "2001:6b0:1:1bf:ffff:aaaa:ffff:ffff", true, true);
       doTestMatch(filter, "2001:6b0:1:2bf:ffff:ffff:ffff:ffff", true, false);
+      doTestMatch(filter, "2001:6B0:1:1A0::%eth0", true, true);
+      doTestMatch(filter, "2001:6b0:1:1a0::%", false, false);
+      doTestMatch(filter, "194.134.168.213", true, false);
+
+      filter = IPFilter.parseIPFilter("::ffff:10.0.0.0/120");
+      assertNotNull(filter);
+      doTestMatch(filter, "::ffff:10.0.0.255", true, true);
+      doTestMatch(filter, "::ffff:a00:1", true, true);
+      doTestMatch(filter, "0:0:0:0:0:ffff:10.0.1.0", true, false);
+      doTestMatch(filter, "10.0.0.1", true, false);
+
+      filter = IPFilter.parseIPFilter("::1");
+      assertNotNull(filter);
+      assertEquals(128, filter.getMask());
+      doTestMatch(filter, "0:0:0:0:0:0:0:1", true, true);
+      doTestMatch(filter, "::2", true, false);
+      doTestMatch(filter, "1::", true, false);
+
+      filter = IPFilter.parseIPFilter("::/0");
+      assertNotNull(filter);
+      doTestMatch(filter, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff", true, true);
+      doTestMatch(filter, "1.2.3.4", true, false);
    }
 
    private void doTestMatch(IPFilter filter,
@@ -76,6 +76,25 @@ public class JSONCallingConventionTests extends TestCase {
       postJSONRequest(randomFive, false);
    }
 
+   /**
+    * Tests that the data section is returned as a JSON object.
+    */
+   public void testJSONDataSection() throws Throwable {
+      TargetDescriptor descriptor = new TargetDescriptor(AllTests.url() + "allinone/DataSection3", 2000);
+      BasicPropertyReader params = new BasicPropertyReader();
+      params.set("_convention", "_xins-json");
+      params.set("output", "json");
+      HTTPCallRequest request = new HTTPCallRequest(params);
+      HTTPServiceCaller caller = new HTTPServiceCaller(descriptor);
+      String jsonResult = caller.call(request).getString();
+
+      JSONObject jsonObject = new JSONObject(jsonResult);
+      assertNull(jsonObject.opt("errorCode"));
+      JSONObject dataObject = jsonObject.getJSONObject("data").getJSONObject("data");
+      assertEquals("20 West Street, New York", dataObject.getJSONObject("packet").getString("destination"));
+      assertEquals("55 Kennedy lane, Washinton DC", dataObject.getJSONObject("envelope").getString("destination"));
+   }
+
    /**
     * Posts JSON request.
     *
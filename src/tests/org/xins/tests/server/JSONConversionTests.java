@@ -0,0 +1,366 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.server;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.XML;
+
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.common.collections.PropertyReaderConverter;
+import org.xins.common.servlet.container.XINSServletRequest;
+import org.xins.common.servlet.container.XINSServletResponse;
+import org.xins.common.text.URLEncoding;
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ElementParser;
+import org.xins.server.FunctionResult;
+import org.xins.server.InvalidRequestException;
+import org.xins.server.JSONCallingConvention;
+
+/**
+ * Tests for the conversion between JSON and data sections in the JSON
+ * calling convention, as done by the classes <code>JSONReader</code> and
+ * <code>JSONWriter</code>.
+ *
+ * <p>The output is compared with the mapping of the <code>org.json</code>
+ * library that was used before: <code>XML.toJSONObject</code> on the
+ * serialized data section.
+ *
+ * @version $Revision$ $Date$
+ */
+public class JSONConversionTests extends TestCase {
+
+   /**
+    * The calling convention to test.
+    */
+   private TestConvention _convention;
+
+   /**
+    * Constructs a new <code>JSONConversionTests</code> test suite with the
+    * specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public JSONConversionTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(JSONConversionTests.class);
+   }
+
+   protected void setUp() {
+      _convention = new TestConvention();
+   }
+
+   /**
+    * Tests the escape sequences in strings, including unicode escape
+    * sequences that form a surrogate pair.
+    */
+   public void testStringEscapes() throws Exception {
+      Element data = parse("{\"data\":{\"a\":\"q\\\"b\\\\s\\/t\\tn\\nr\\rf\\fb\\b\"}}");
+      assertEquals("q\"b\\s/t\tn\nr\rf\fb\b", text(data, "a"));
+
+      data = parse("{\"data\":{\"u\":\"\\u00e9\\u20AC\\ud834\\udd1e.\"}}");
+      assertEquals("\u00E9\u20AC\uD834\uDD1E.", text(data, "u"));
+
+      data = parse("{'data':{a:'it\\'s', b:\"\\x41\"}}");
+      assertEquals("it's", text(data, "a"));
+      assertEquals("A",    text(data, "b"));
+   }
+
+   /**
+    * Tests that numbers, booleans and <code>null</code> become the text of
+    * an element, as written in the JSON text.
+    */
+   public void testLiterals() throws Exception {
+      Element data = parse("{\"data\":{\"i\":42,\"n\":-1.5e3,\"d\":1.0,\"t\":true,\"f\":false,\"z\":null}}");
+      assertEquals("42",     text(data, "i"));
+      assertEquals("-1.5e3", text(data, "n"));
+      assertEquals("1.0",    text(data, "d"));
+      assertEquals("true",   text(data, "t"));
+      assertEquals("false",  text(data, "f"));
+      assertEquals("null",   text(data, "z"));
+   }
+
+   /**
+    * Tests that arrays, also nested ones, become repeated elements and that
+    * empty objects become empty elements.
+    */
+   public void testArraysAndEmptyObjects() throws Exception {
+      Element data = parse("{\"data\":{\"item\":[1,[2,3],{\"x\":\"y\"}],\"empty\":{},\"none\":[]}}");
+      List<Element> items = data.getChildElements("item");
+      assertEquals(4, items.size());
+      assertEquals("1", items.get(0).getText());
+      assertEquals("2", items.get(1).getText());
+      assertEquals("3", items.get(2).getText());
+      assertEquals("y", items.get(3).getUniqueChildElement("x").getText());
+      Element empty = data.getUniqueChildElement("empty");
+      assertEquals(0, empty.getChildCount());
+      assertEquals(0, data.getChildElements("none").size());
+      assertSameAsOrgJSON(data);
+
+      data = parse("{\"data\":{}}");
+      assertEquals("data", data.getLocalName());
+      assertEquals(0, data.getChildCount());
+   }
+
+   /**
+    * Tests that a member named <code>content</code> becomes the text of the
+    * element, with the values of an array separated by newlines.
+    */
+   public void testContentMember() throws Exception {
+      Element data = parse("{\"data\":{\"person\":{\"name\":\"Lee\",\"content\":\"text\"},\"lines\":{\"content\":[\"a\",\"b\"]}}}");
+      Element person = data.getUniqueChildElement("person");
+      assertEquals("text", person.getText());
+      assertEquals("Lee", person.getUniqueChildElement("name").getText());
+      assertEquals("a\nb", data.getUniqueChildElement("lines").getText());
+
+      // Text is only allowed inside the data section element
+      assertInvalid("{\"content\":\"text\"}");
+   }
+
+   /**
+    * Tests that malformed JSON text is rejected.
+    */
+   public void testMalformedInput() throws Exception {
+      assertInvalid("{\"data\":{\"a\":\"b\"");
+      assertInvalid("{\"data\":{\"a\":\"b");
+      assertInvalid("{\"data\":{\"a\":");
+      assertInvalid("{\"data\":{\"a\":\"b\",}}");
+      assertInvalid("{\"data\":{\"a\":[1,2,]}}");
+      assertInvalid("{\"data\":{\"a\":\"b\" \"c\":\"d\"}}");
+      assertInvalid("{\"data\":{\"a\":\"\\u12G4\"}}");
+      assertInvalid("{\"data\":{\"a\":\"\\u12\"}}");
+      assertInvalid("{\"data\":{\"a\":\"\\xZZ\"}}");
+      assertInvalid("{\"data\":{\"a\":\"line\nbreak\"}}");
+      assertInvalid("{\"data\":{\"a\":-}}");
+      assertInvalid("{\"data\":{\"a\":nothing}}");
+      assertInvalid("{\"data\":{}} trailing");
+      assertInvalid("{\"data\":{},\"other\":{}}");
+      assertInvalid("{\"data\":{\"1a\":\"b\"}}");
+      assertInvalid("[\"data\"]");
+   }
+
+   /**
+    * Tests that the output of the calling convention is the same as the
+    * output of the <code>org.json</code> mapping, for parameters and a data
+    * section with attributes, repeated and nested elements, text and
+    * characters that are escaped.
+    */
+   public void testOutputSameAsOrgJSON() throws Exception {
+      BasicPropertyReader params = new BasicPropertyReader();
+      params.set("outputText", "Hello \"you\"\n\u00E9\u20AC\uD834\uDD1E");
+      params.set("count", "12");
+      params.set("data", "a parameter named data");
+
+      Element data = new ElementParser().parse(
+            "<data>"
+          + "<item id=\"1\">first</item>"
+          + "<item id=\"2\"><sub>y</sub><sub>z</sub></item>"
+          + "<item>only text</item>"
+          + "<item>  </item>"
+          + "<item a=\"b\"/>"
+          + "<script>&lt;/script&gt; \\ \t</script>"
+          + "<number>1.0</number>"
+          + "<x:ns xmlns:x=\"urn:x\" x:attr=\"v\">text</x:ns>"
+          + "</data>");
+      TestResult result = new TestResult(params);
+      for (Element child : data.getChildElements()) {
+         result.add(child);
+      }
+      assertSameJSON(orgJSON(result), new JSONObject(_convention.output(result)));
+
+      // Only parameters, an error code and a callback
+      result = new TestResult("SomeError", params);
+      JSONObject expected = orgJSON(result);
+      expected.put("errorCode", "SomeError");
+      assertSameJSON(expected, new JSONObject(_convention.output(result)));
+      String padded = _convention.output(result, "callMe");
+      assertTrue(padded, padded.startsWith("callMe({") && padded.endsWith("})"));
+   }
+
+   /**
+    * Parses the JSON text of a data section with the calling convention.
+    *
+    * @param json
+    *    the JSON text, cannot be <code>null</code>.
+    *
+    * @return
+    *    the data section element, never <code>null</code>.
+    */
+   private Element parse(String json) throws Exception {
+      Element data = _convention.input(json);
+      assertNotNull(data);
+      return data;
+   }
+
+   /**
+    * Checks that the calling convention rejects the JSON text.
+    *
+    * @param json
+    *    the JSON text, cannot be <code>null</code>.
+    */
+   private void assertInvalid(String json) throws Exception {
+      try {
+         _convention.input(json);
+         fail("Expected InvalidRequestException for " + json);
+      } catch (InvalidRequestException exception) {
+         // as expected
+      }
+   }
+
+   /**
+    * Returns the text of the only child element with the specified name.
+    */
+   private static String text(Element parent, String name) throws Exception {
+      return parent.getUniqueChildElement(name).getText();
+   }
+
+   /**
+    * Checks that the data section is converted back to the same JSON by the
+    * <code>org.json</code> mapping as by the calling convention.
+    *
+    * @param data
+    *    the data section element, cannot be <code>null</code>.
+    */
+   private void assertSameAsOrgJSON(Element data) throws Exception {
+      TestResult result = new TestResult(new BasicPropertyReader());
+      for (Element child : data.getChildElements()) {
+         result.add(child);
+      }
+      assertSameJSON(orgJSON(result), new JSONObject(_convention.output(result)));
+   }
+
+   /**
+    * Converts a function result to JSON with the <code>org.json</code>
+    * library, the way the JSON calling convention did before.
+    *
+    * @param result
+    *    the function result, cannot be <code>null</code>.
+    *
+    * @return
+    *    the JSON object, never <code>null</code>.
+    */
+   private static JSONObject orgJSON(FunctionResult result) throws Exception {
+      Properties params = PropertyReaderConverter.toProperties(result.getParameters());
+      JSONObject paramsObject = new JSONObject(params);
+      if (result.getDataElement() != null) {
+         String dataSection = result.getDataElement().toString();
+         paramsObject.accumulate("data", XML.toJSONObject(dataSection));
+      }
+      return paramsObject;
+   }
+
+   /**
+    * Checks that two JSON values are equal, ignoring the order of the
+    * members of objects.
+    *
+    * @param expected
+    *    the expected value.
+    *
+    * @param actual
+    *    the actual value.
+    */
+   private static void assertSameJSON(Object expected, Object actual) throws Exception {
+      if (expected instanceof JSONObject) {
+         assertTrue("Expected " + expected + " instead of " + actual, actual instanceof JSONObject);
+         JSONObject expectedObject = (JSONObject) expected;
+         JSONObject actualObject   = (JSONObject) actual;
+         assertEquals("Expected " + expected + " instead of " + actual, expectedObject.length(), actualObject.length());
+         for (Iterator keys = expectedObject.keys(); keys.hasNext(); ) {
+            String key = (String) keys.next();
+            assertTrue("Missing \"" + key + "\" in " + actual, actualObject.has(key));
+            assertSameJSON(expectedObject.get(key), actualObject.get(key));
+         }
+      } else if (expected instanceof JSONArray) {
+         assertTrue("Expected " + expected + " instead of " + actual, actual instanceof JSONArray);
+         JSONArray expectedArray = (JSONArray) expected;
+         JSONArray actualArray   = (JSONArray) actual;
+         assertEquals("Expected " + expected + " instead of " + actual, expectedArray.length(), actualArray.length());
+         for (int i = 0; i < expectedArray.length(); i++) {
+            assertSameJSON(expectedArray.get(i), actualArray.get(i));
+         }
+      } else {
+         assertEquals(String.valueOf(expected), String.valueOf(actual));
+      }
+   }
+
+   /**
+    * JSON calling convention that gives access to the conversion of the
+    * request and the result.
+    */
+   private static class TestConvention extends JSONCallingConvention {
+
+      /**
+       * Converts a request with the specified <code>_data</code> parameter.
+       *
+       * @return
+       *    the data section element, or <code>null</code> if there is none.
+       */
+      Element input(String json) throws Exception {
+         String url = "http://127.0.0.1/allinone/Echo?output=json&_data=" + URLEncoding.encode(json);
+         return convertRequestImpl(new XINSServletRequest(url)).getDataElement();
+      }
+
+      /**
+       * Converts a result to JSON text.
+       */
+      String output(FunctionResult result) throws Exception {
+         return output(result, null);
+      }
+
+      /**
+       * Converts a result to JSON text, with an optional callback.
+       */
+      String output(FunctionResult result, String callback) throws Exception {
+         String url = "http://127.0.0.1/allinone/Echo?output=json";
+         if (callback != null) {
+            url += "&callback=" + callback;
+         }
+         HttpServletRequest  request  = new XINSServletRequest(url);
+         XINSServletResponse response = new XINSServletResponse();
+         convertResultImpl(request, null, response, result);
+         return response.getResult();
+      }
+   }
+
+   /**
+    * Function result to which data elements can be added.
+    */
+   private static class TestResult extends FunctionResult {
+
+      TestResult(BasicPropertyReader params) {
+         super(null, params);
+      }
+
+      TestResult(String code, BasicPropertyReader params) {
+         super(code, params);
+      }
+
+      protected void add(Element element) {
+         super.add(element);
+      }
+   }
+}
@@ -161,6 +161,26 @@ public class MetaFunctionsTests extends TestCase {
       int size = children.size();
       for (int i = 1; i < size; i++) {
          Element nextFunction = (Element) children.get(i);
+
+         // The statistics of the access decision cache, of the detection of
+         // the calling conventions and of the HTTP connection pools come
+         // last, if any
+         if ("accessRuleCache".equals(nextFunction.getLocalName())) {
+            assertNotNull(nextFunction.getAttribute("hits"));
+            assertNotNull(nextFunction.getAttribute("misses"));
+            continue;
+         }
+         if ("conventionDetection".equals(nextFunction.getLocalName())) {
+            assertNotNull(nextFunction.getAttribute("detected"));
+            assertNotNull(nextFunction.getAttribute("routeHits"));
+            assertNotNull(nextFunction.getAttribute("routeMisses"));
+            continue;
+         }
+         if (i == size - 1 && "connectionPools".equals(nextFunction.getLocalName())) {
+            List pools = nextFunction.getChildElements("connectionPool");
+            assertEquals(nextFunction.getChildCount(), pools.size());
+            continue;
+         }
          assertEquals("Object other than a function has been found.", "function", nextFunction.getLocalName());
          assertNotNull("The function does not have a name", nextFunction.getAttribute("name"));
          // XXX: Also test the children.
@@ -193,7 +213,7 @@ public class MetaFunctionsTests extends TestCase {
       assertNotNull("No average attribute defined", functionElement.getAttribute("average"));
       assertNotNull("No count attribute defined", functionElement.getAttribute("count"));
       List minMaxLast = functionElement.getChildElements();
-      assertTrue(minMaxLast.size() >= 3);
+      assertTrue(minMaxLast.size() >= 4);
       Element min = (Element) minMaxLast.get(0);
       assertEquals("The function does not have any successful sub-section.", "min", min.getLocalName());
       assertNotNull("No average attribute defined", min.getAttribute("start"));
@@ -206,6 +226,10 @@ public class MetaFunctionsTests extends TestCase {
       assertEquals("The function does not have any successful sub-section.", "last", last.getLocalName());
       assertNotNull("No average attribute defined", last.getAttribute("start"));
       assertNotNull("No count attribute defined", last.getAttribute("duration"));
+      Element percentiles = (Element) minMaxLast.get(3);
+      assertEquals("percentiles", percentiles.getLocalName());
+      assertNotNull("No p50 attribute defined", percentiles.getAttribute("p50"));
+      assertNotNull("No p999 attribute defined", percentiles.getAttribute("p999"));
    }
 
    /**
@@ -419,7 +443,7 @@ public class MetaFunctionsTests extends TestCase {
       assertEquals("JSON-RPC", smdObject.getString("serviceType"));
       assertTrue(smdObject.getString("serviceURL").endsWith("/allinone/?_convention=_xins-jsonrpc"));
       JSONArray methods = smdObject.getJSONArray("methods");
-      assertEquals(16, methods.length());
+      assertEquals(17, methods.length());
    }
 
    /**
@@ -0,0 +1,358 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.collections.BasicPropertyReader;
+import org.xins.common.servlet.container.XINSServletContext;
+import org.xins.common.servlet.container.XINSServletRequest;
+import org.xins.common.servlet.container.XINSServletResponse;
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ElementParser;
+import org.xins.server.API;
+import org.xins.server.APIServlet;
+import org.xins.server.CallContext;
+import org.xins.server.Function;
+import org.xins.server.FunctionResult;
+import org.xins.server.UploadedFile;
+
+/**
+ * Tests for the handling of RFC 1867 multipart requests by the XINS/Java
+ * Server Framework.
+ *
+ * @version $Revision$ $Date$
+ */
+public class MultipartTests extends TestCase {
+
+   /**
+    * The boundary of the multipart requests.
+    */
+   private static final String BOUNDARY = "XINSMultipartTestsBoundary";
+
+   /**
+    * The maximum size of a request, in bytes.
+    */
+   private static final int MAX_SIZE = 4096;
+
+   /**
+    * The directory where the uploaded files are stored.
+    */
+   private File _uploadDirectory;
+
+   /**
+    * The runtime properties file.
+    */
+   private File _configFile;
+
+   /**
+    * The servlet that handles the requests.
+    */
+   private APIServlet _servlet;
+
+   /**
+    * Constructs a new <code>MultipartTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public MultipartTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(MultipartTests.class);
+   }
+
+   /**
+    * Starts the test API with streaming uploads enabled.
+    */
+   protected void setUp() throws Exception {
+      _uploadDirectory = File.createTempFile("xins-upload", "");
+      _uploadDirectory.delete();
+      _uploadDirectory.mkdir();
+
+      Properties runtimeProperties = new Properties();
+      runtimeProperties.setProperty("org.xins.server.upload.streaming", "true");
+      runtimeProperties.setProperty("org.xins.server.upload.threshold", "16");
+      runtimeProperties.setProperty("org.xins.server.upload.maxsize",   String.valueOf(MAX_SIZE));
+      runtimeProperties.setProperty("org.xins.server.upload.directory", _uploadDirectory.getPath());
+      _configFile = File.createTempFile("xins-upload", ".properties");
+      FileOutputStream out = new FileOutputStream(_configFile);
+      try {
+         runtimeProperties.store(out, null);
+      } finally {
+         out.close();
+      }
+
+      Properties initParameters = new Properties();
+      initParameters.setProperty("org.xins.api.name",      "upload");
+      initParameters.setProperty("org.xins.api.class",     UploadAPI.class.getName());
+      initParameters.setProperty("org.xins.server.config", _configFile.getPath());
+      _servlet = new APIServlet();
+      _servlet.init(new TestServletConfig(initParameters));
+      UploadAPI.SINGLETON._filesDuringCall = -1;
+      UploadAPI.SINGLETON._uploadDirectory = _uploadDirectory;
+   }
+
+   protected void tearDown() throws Exception {
+      _servlet.destroy();
+      File[] files = _uploadDirectory.listFiles();
+      for (int i = 0; i < files.length; i++) {
+         files[i].delete();
+      }
+      _uploadDirectory.delete();
+      _configFile.delete();
+   }
+
+   /**
+    * Tests that a small file is passed to the function in memory.
+    */
+   public void testSmallFile() throws Exception {
+      XINSServletResponse response = post(createBody("hello.txt", "Hello"));
+      assertEquals(200, response.getStatus());
+
+      Element result = parseResult(response);
+      assertNull(result.getAttribute("errorcode"));
+      assertEquals("hello.txt",  getParameter(result, "fileName"));
+      assertEquals("text/plain", getParameter(result, "contentType"));
+      assertEquals("5",          getParameter(result, "size"));
+      assertEquals("true",       getParameter(result, "inMemory"));
+      assertEquals("Hello",      getParameter(result, "content"));
+      assertEquals(0, UploadAPI.SINGLETON._filesDuringCall);
+      assertEquals(0, _uploadDirectory.listFiles().length);
+   }
+
+   /**
+    * Tests that a file larger than the threshold is spooled to disk while
+    * the call is handled and that the temporary file is deleted afterwards.
+    */
+   public void testLargeFile() throws Exception {
+      String content = repeat('x', 1000);
+      XINSServletResponse response = post(createBody("large.txt", content));
+      assertEquals(200, response.getStatus());
+
+      Element result = parseResult(response);
+      assertNull(result.getAttribute("errorcode"));
+      assertEquals("1000",  getParameter(result, "size"));
+      assertEquals("false", getParameter(result, "inMemory"));
+      assertEquals(content, getParameter(result, "content"));
+      assertEquals(1, UploadAPI.SINGLETON._filesDuringCall);
+      assertEquals("Temporary files left in " + _uploadDirectory + '.', 0, _uploadDirectory.listFiles().length);
+   }
+
+   /**
+    * Tests that a request larger than the maximum size is rejected with
+    * HTTP status code 413 without calling the function.
+    */
+   public void testSizeLimitExceeded() throws Exception {
+      XINSServletResponse response = post(createBody("huge.txt", repeat('x', MAX_SIZE * 2)));
+      assertEquals(413, response.getStatus());
+      assertEquals(-1, UploadAPI.SINGLETON._filesDuringCall);
+      assertEquals(0, _uploadDirectory.listFiles().length);
+   }
+
+   /**
+    * Tests that a request that cannot be parsed is rejected with HTTP status
+    * code 400 without calling the function.
+    */
+   public void testMalformedRequest() throws Exception {
+      String body = "--" + BOUNDARY + "\r\n"
+                  + "Content-Disposition: form-data; name=\"_function\"\r\n";
+      XINSServletResponse response = post(body);
+      assertEquals(400, response.getStatus());
+      assertEquals(-1, UploadAPI.SINGLETON._filesDuringCall);
+   }
+
+   /**
+    * Posts a multipart request to the servlet.
+    *
+    * @param body
+    *    the body of the request, cannot be <code>null</code>.
+    *
+    * @return
+    *    the response, never <code>null</code>.
+    */
+   private XINSServletResponse post(String body) throws Exception {
+      Map<String,String> headers = new HashMap<String,String>();
+      headers.put("CONTENT-TYPE",   "multipart/form-data; boundary=" + BOUNDARY);
+      headers.put("CONTENT-LENGTH", String.valueOf(body.length()));
+      XINSServletRequest  request  = new XINSServletRequest("POST", "http://127.0.0.1/upload/", body, headers);
+      XINSServletResponse response = new XINSServletResponse();
+      _servlet.service(request, response);
+      return response;
+   }
+
+   /**
+    * Creates the body of a multipart request that calls the function
+    * <em>Upload</em> with a file.
+    *
+    * @param fileName
+    *    the name of the file, cannot be <code>null</code>.
+    *
+    * @param content
+    *    the content of the file, cannot be <code>null</code>.
+    *
+    * @return
+    *    the body, never <code>null</code>.
+    */
+   private static String createBody(String fileName, String content) {
+      return "--" + BOUNDARY + "\r\n"
+           + "Content-Disposition: form-data; name=\"_convention\"\r\n"
+           + "\r\n"
+           + "_xins-std\r\n"
+           + "--" + BOUNDARY + "\r\n"
+           + "Content-Disposition: form-data; name=\"_function\"\r\n"
+           + "\r\n"
+           + "Upload\r\n"
+           + "--" + BOUNDARY + "\r\n"
+           + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+           + "Content-Type: text/plain\r\n"
+           + "\r\n"
+           + content + "\r\n"
+           + "--" + BOUNDARY + "--\r\n";
+   }
+
+   private static String repeat(char c, int count) {
+      StringBuffer buffer = new StringBuffer(count);
+      for (int i = 0; i < count; i++) {
+         buffer.append(c);
+      }
+      return buffer.toString();
+   }
+
+   private static Element parseResult(XINSServletResponse response) throws Exception {
+      String xml = response.getResult();
+      return new ElementParser().parse(xml);
+   }
+
+   private static String getParameter(Element result, String name) {
+      for (Element param : result.getChildElements("param")) {
+         if (name.equals(param.getAttribute("name"))) {
+            return param.getText();
+         }
+      }
+      return null;
+   }
+
+   /**
+    * API with a single function that returns the properties of the uploaded
+    * file.
+    */
+   public static final class UploadAPI extends API {
+
+      /**
+       * The singleton instance, used by the servlet.
+       */
+      public static final UploadAPI SINGLETON = new UploadAPI();
+
+      /**
+       * The number of files in the upload directory while the last call was
+       * handled, or -1 if the function was not called.
+       */
+      volatile int _filesDuringCall;
+
+      /**
+       * The directory where the uploaded files are stored.
+       */
+      volatile File _uploadDirectory;
+
+      private UploadAPI() {
+         super("upload");
+         new UploadFunction(this);
+      }
+   }
+
+   /**
+    * Function that returns the properties and the content of the uploaded
+    * file.
+    */
+   private static final class UploadFunction extends Function {
+
+      private UploadFunction(UploadAPI api) {
+         super(api, "Upload", "1.1");
+      }
+
+      protected FunctionResult handleCall(CallContext context) throws Throwable {
+         UploadedFile file = context.getUploadedFile("file");
+         if (file == null) {
+            return new FunctionResult("_InvalidRequest");
+         }
+
+         UploadAPI api = (UploadAPI) getAPI();
+         api._filesDuringCall = api._uploadDirectory.listFiles().length;
+
+         ByteArrayOutputStream content = new ByteArrayOutputStream();
+         InputStream in = file.getInputStream();
+         try {
+            byte[] buffer = new byte[256];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+               content.write(buffer, 0, count);
+            }
+         } finally {
+            in.close();
+         }
+
+         BasicPropertyReader parameters = new BasicPropertyReader();
+         parameters.set("fileName",    file.getFileName());
+         parameters.set("contentType", file.getContentType());
+         parameters.set("size",        String.valueOf(file.getSize()));
+         parameters.set("inMemory",    String.valueOf(file.isInMemory()));
+         parameters.set("content",     content.toString("US-ASCII"));
+         return new FunctionResult(null, parameters);
+      }
+   }
+
+   private static final class TestServletConfig implements ServletConfig {
+
+      private final Properties _initParameters;
+
+      private final ServletContext _context = new XINSServletContext();
+
+      TestServletConfig(Properties initParameters) {
+         _initParameters = initParameters;
+      }
+
+      public String getServletName() {
+         return "upload";
+      }
+
+      public ServletContext getServletContext() {
+         return _context;
+      }
+
+      public String getInitParameter(String name) {
+         return _initParameters.getProperty(name);
+      }
+
+      public Enumeration getInitParameterNames() {
+         return _initParameters.keys();
+      }
+   }
+}
@@ -0,0 +1,319 @@
+/*
+ * $Id$
+ *
+ * Copyright 2003-2007 Orange Nederland Breedband B.V.
+ * See the COPYRIGHT file for redistribution and use restrictions.
+ */
+package org.xins.tests.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.xins.common.collections.PropertyReader;
+import org.xins.common.servlet.container.XINSServletContext;
+import org.xins.common.servlet.container.XINSServletRequest;
+import org.xins.common.servlet.container.XINSServletResponse;
+import org.xins.common.xml.Element;
+import org.xins.server.API;
+import org.xins.server.APIServlet;
+import org.xins.server.TransactionLogger;
+
+/**
+ * Tests for the asynchronous logging of transactions by class
+ * <code>TransactionLogger</code>.
+ *
+ * @version $Revision$ $Date$
+ */
+public class TransactionLoggerTests extends TestCase {
+
+   /**
+    * The runtime properties file.
+    */
+   private File _configFile;
+
+   /**
+    * The servlet that handles the requests, or <code>null</code> if it is
+    * not started or already destroyed.
+    */
+   private APIServlet _servlet;
+
+   /**
+    * Constructs a new <code>TransactionLoggerTests</code> test suite with
+    * the specified name. The name will be passed to the superconstructor.
+    *
+    * @param name
+    *    the name for this test suite.
+    */
+   public TransactionLoggerTests(String name) {
+      super(name);
+   }
+
+   /**
+    * Returns a test suite with all test cases defined by this class.
+    *
+    * @return
+    *    the test suite, never <code>null</code>.
+    */
+   public static Test suite() {
+      return new TestSuite(TransactionLoggerTests.class);
+   }
+
+   protected void tearDown() throws Exception {
+      BlockingTransactionLogger logger = BlockingTransactionLogger.INSTANCE;
+      if (logger != null) {
+         logger._release.countDown();
+      }
+      if (_servlet != null) {
+         _servlet.destroy();
+      }
+      if (_configFile != null) {
+         _configFile.delete();
+      }
+   }
+
+   /**
+    * Tests that transactions are dropped and counted when the queue is full
+    * and the overflow policy is <code>drop</code>.
+    */
+   public void testDropOnOverflow() throws Exception {
+      Properties properties = new Properties();
+      properties.setProperty("org.xins.server.transactionlogger.async",          "true");
+      properties.setProperty("org.xins.server.transactionlogger.async.capacity", "2");
+      properties.setProperty("org.xins.server.transactionlogger.async.overflow", "drop");
+      BlockingTransactionLogger logger = startAPI(properties);
+
+      // The first transaction blocks the background thread
+      callNoOp();
+      assertTrue(logger._entered.await(5000L, TimeUnit.MILLISECONDS));
+
+      // Two transactions fill the queue, the others are dropped
+      for (int i = 0; i < 5; i++) {
+         callNoOp();
+      }
+      assertEquals(3L, logger.getDroppedCount());
+      assertEquals(0, logger._logged.size());
+
+      logger._release.countDown();
+      destroyAPI();
+      assertEquals(3, logger._logged.size());
+      assertEquals(3L, logger.getDroppedCount());
+      for (String thread : logger._logged) {
+         assertEquals("XINS transaction logger", thread);
+      }
+   }
+
+   /**
+    * Tests that the transactions that are still queued when the API is
+    * destroyed are logged before the destruction completes.
+    */
+   public void testDrainOnDispose() throws Exception {
+      Properties properties = new Properties();
+      properties.setProperty("org.xins.server.transactionlogger.async", "true");
+      final BlockingTransactionLogger logger = startAPI(properties);
+
+      // The first transaction blocks the background thread
+      callNoOp();
+      assertTrue(logger._entered.await(5000L, TimeUnit.MILLISECONDS));
+      for (int i = 0; i < 5; i++) {
+         callNoOp();
+      }
+      assertEquals(0, logger._logged.size());
+
+      // Release the background thread while the API is being destroyed
+      Thread releaser = new Thread("TransactionLoggerTests releaser") {
+         public void run() {
+            try {
+               Thread.sleep(200L);
+            } catch (InterruptedException exception) {
+               // ignore
+            }
+            logger._release.countDown();
+         }
+      };
+      releaser.start();
+      destroyAPI();
+      assertEquals(6, logger._logged.size());
+      assertEquals(0L, logger.getDroppedCount());
+      releaser.join();
+   }
+
+   /**
+    * Tests that no thread is started to flush the transactions logged
+    * synchronously if the logger does not buffer them.
+    */
+   public void testNoFlushThread() throws Exception {
+      BlockingTransactionLogger logger = startAPI(new Properties());
+      logger._release.countDown();
+      callNoOp();
+      assertEquals(1, logger._logged.size());
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+         assertFalse(thread.getName(), thread.getName().equals("XINS transaction log flusher"));
+      }
+   }
+
+   /**
+    * Starts the test API with the specified runtime properties and the
+    * {@link BlockingTransactionLogger}.
+    *
+    * @param runtimeProperties
+    *    the runtime properties, cannot be <code>null</code>.
+    *
+    * @return
+    *    the transaction logger of the API, never <code>null</code>.
+    */
+   private BlockingTransactionLogger startAPI(Properties runtimeProperties) throws Exception {
+      runtimeProperties.setProperty("org.xins.api.transactionlogger", BlockingTransactionLogger.class.getName());
+      _configFile = File.createTempFile("xins-txlog", ".properties");
+      FileOutputStream out = new FileOutputStream(_configFile);
+      try {
+         runtimeProperties.store(out, null);
+      } finally {
+         out.close();
+      }
+
+      Properties initParameters = new Properties();
+      initParameters.setProperty("org.xins.api.name",      "txlog");
+      initParameters.setProperty("org.xins.api.class",     TransactionLogAPI.class.getName());
+      initParameters.setProperty("org.xins.server.config", _configFile.getPath());
+      BlockingTransactionLogger.INSTANCE = null;
+      _servlet = new APIServlet();
+      _servlet.init(new TestServletConfig(initParameters));
+
+      BlockingTransactionLogger logger = BlockingTransactionLogger.INSTANCE;
+      assertNotNull("Transaction logger not created.", logger);
+      return logger;
+   }
+
+   /**
+    * Destroys the servlet, which disposes the transaction logger.
+    */
+   private void destroyAPI() {
+      _servlet.destroy();
+      _servlet = null;
+   }
+
+   /**
+    * Calls the <em>_NoOp</em> meta function.
+    */
+   private void callNoOp() throws Exception {
+      String url = "http://127.0.0.1/txlog/?_convention=_xins-std&_function=_NoOp";
+      XINSServletResponse response = new XINSServletResponse();
+      _servlet.service(new XINSServletRequest(url), response);
+      assertEquals(200, response.getStatus());
+   }
+
+   /**
+    * API without functions.
+    */
+   public static final class TransactionLogAPI extends API {
+
+      /**
+       * The singleton instance, used by the servlet.
+       */
+      public static final TransactionLogAPI SINGLETON = new TransactionLogAPI();
+
+      private TransactionLogAPI() {
+         super("txlog");
+      }
+   }
+
+   /**
+    * Transaction logger that records the thread that logged each
+    * transaction. Logging the first transaction blocks until it is released.
+    */
+   public static final class BlockingTransactionLogger extends TransactionLogger {
+
+      /**
+       * The last created instance.
+       */
+      static volatile BlockingTransactionLogger INSTANCE;
+
+      /**
+       * Released when the first transaction is being logged.
+       */
+      final CountDownLatch _entered = new CountDownLatch(1);
+
+      /**
+       * Released when the first transaction may be logged.
+       */
+      final CountDownLatch _release = new CountDownLatch(1);
+
+      /**
+       * The names of the threads that logged the transactions.
+       */
+      final List<String> _logged = Collections.synchronizedList(new ArrayList<String>());
+
+      public BlockingTransactionLogger() {
+         INSTANCE = this;
+      }
+
+      protected void logTransaction(String         functionName,
+                                    PropertyReader requestParams,
+                                    Element        requestDataElement,
+                                    String         resultCode,
+                                    PropertyReader resultParams,
+                                    Element        resultDataElement,
+                                    String         ip,
+                                    long           start,
+                                    long           duration) {
+         _entered.countDown();
+
+         // Keep waiting if the thread is interrupted when the logger is
+         // disposed
+         boolean interrupted = false;
+         while (true) {
+            try {
+               _release.await();
+               break;
+            } catch (InterruptedException exception) {
+               interrupted = true;
+            }
+         }
+         _logged.add(Thread.currentThread().getName());
+         if (interrupted) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private static final class TestServletConfig implements ServletConfig {
+
+      private final Properties _initParameters;
+
+      private final ServletContext _context = new XINSServletContext();
+
+      TestServletConfig(Properties initParameters) {
+         _initParameters = initParameters;
+      }
+
+      public String getServletName() {
+         return "txlog";
+      }
+
+      public ServletContext getServletContext() {
+         return _context;
+      }
+
+      public String getInitParameter(String name) {
+         return _initParameters.getProperty(name);
+      }
+
+      public Enumeration getInitParameterNames() {
+         return _initParameters.keys();
+      }
+   }
+}
@@ -6,9 +6,22 @@
  */
 package org.xins.tests.server;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -19,7 +32,18 @@ import org.xins.common.http.HTTPCallResult;
 import org.xins.common.http.HTTPServiceCaller;
 import org.xins.common.http.StatusCodeHTTPCallException;
 import org.xins.common.service.TargetDescriptor;
+import org.xins.common.servlet.container.XINSServletContext;
+import org.xins.common.servlet.container.XINSServletRequest;
+import org.xins.common.servlet.container.XINSServletResponse;
 import org.xins.common.text.HexConverter;
+import org.xins.common.xml.Element;
+import org.xins.common.xml.ElementParser;
+import org.xins.server.API;
+import org.xins.server.APIServlet;
+import org.xins.server.CallContext;
+import org.xins.server.CallResultOutputter;
+import org.xins.server.Function;
+import org.xins.server.FunctionResult;
 
 import org.xins.tests.AllTests;
 
@@ -93,6 +117,221 @@ public class XSLTCallingConventionTests extends TestCase {
       }
    }
 
+   /**
+    * Tests that a result with parameters and a data section with attributes,
+    * namespaces and nested elements is transformed the same way as when it
+    * is serialized and parsed again, as was done before.
+    */
+   public void testTransformedLikeSerializedResult() throws Throwable {
+      File directory = createTemplateDirectory();
+      File template = writeTemplate(directory, "Data",
+            "<xsl:output method=\"xml\" encoding=\"UTF-8\" />"
+          + "<xsl:template match=\"/\"><xsl:copy-of select=\".\" /></xsl:template>");
+      APIServlet servlet = createServlet(directory);
+      try {
+         XINSServletResponse response = call(servlet, "");
+         assertEquals(200, response.getStatus());
+         assertEquals("text/xml; charset=UTF-8", response.getContentType());
+
+         String expected = transformSerialized(template, DataFunction.createResult());
+         assertEquals(expected, response.getResult());
+
+         // The data section is also visible to XPath expressions
+         writeTemplate(directory, "Count",
+               "<xsl:output method=\"text\" />"
+             + "<xsl:template match=\"/\">"
+             + "<xsl:value-of select=\"count(result/data/item)\" />,"
+             + "<xsl:value-of select=\"result/data/item[2]/@id\" />,"
+             + "<xsl:value-of select=\"result/param[@name='count']\" />,"
+             + "<xsl:value-of select=\"namespace-uri(result/data/*[local-name()='ns'])\" />"
+             + "</xsl:template>");
+         response = call(servlet, "&_template=Count.xslt");
+         assertEquals("3,2,12,urn:test", response.getResult());
+      } finally {
+         servlet.destroy();
+         deleteDirectory(directory);
+      }
+   }
+
+   /**
+    * Tests that compiled templates are cached until the cache is cleared
+    * with the <code>_cleartemplatecache</code> parameter.
+    */
+   public void testClearTemplateCache() throws Throwable {
+      File directory = createTemplateDirectory();
+      File template = writeTemplate(directory, "Data", textTemplate("first"));
+      long lastModified = template.lastModified();
+      APIServlet servlet = createServlet(directory);
+      try {
+         assertEquals("first", call(servlet, "").getResult());
+
+         // Change the template without changing its modification time, so
+         // only the cached template is used
+         writeTemplate(directory, "Data", textTemplate("second"));
+         template.setLastModified(lastModified);
+         Thread.sleep(1100L);
+         assertEquals("first", call(servlet, "").getResult());
+
+         // Clearing the cache makes the template compiled again
+         assertEquals("Done.", call(servlet, "&_cleartemplatecache=true").getResult());
+         assertEquals("second", call(servlet, "").getResult());
+      } finally {
+         servlet.destroy();
+         deleteDirectory(directory);
+      }
+   }
+
+   /**
+    * Creates a temporary directory for the templates.
+    *
+    * @return
+    *    the directory, never <code>null</code>.
+    */
+   private static File createTemplateDirectory() throws IOException {
+      File directory = File.createTempFile("xins-xslt", "");
+      directory.delete();
+      directory.mkdir();
+      return directory;
+   }
+
+   /**
+    * Deletes a directory with templates.
+    *
+    * @param directory
+    *    the directory, cannot be <code>null</code>.
+    */
+   private static void deleteDirectory(File directory) {
+      File[] files = directory.listFiles();
+      for (int i = 0; i < files.length; i++) {
+         files[i].delete();
+      }
+      directory.delete();
+   }
+
+   /**
+    * Creates the content of a template that outputs the specified text.
+    */
+   private static String textTemplate(String text) {
+      return "<xsl:output method=\"text\" />"
+           + "<xsl:template match=\"/\">" + text + "</xsl:template>";
+   }
+
+   /**
+    * Writes an XSLT style sheet.
+    *
+    * @param directory
+    *    the directory to write to, cannot be <code>null</code>.
+    *
+    * @param name
+    *    the name of the style sheet, without extension.
+    *
+    * @param content
+    *    the content of the <code>xsl:stylesheet</code> element.
+    *
+    * @return
+    *    the file, never <code>null</code>.
+    */
+   private static File writeTemplate(File directory, String name, String content) throws IOException {
+      File file = new File(directory, name + ".xslt");
+      Writer out = new FileWriter(file);
+      try {
+         out.write("<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">");
+         out.write(content);
+         out.write("</xsl:stylesheet>");
+      } finally {
+         out.close();
+      }
+      return file;
+   }
+
+   /**
+    * Transforms the result the way it was done before: by serializing it
+    * with <code>CallResultOutputter</code> and parsing the XML text.
+    *
+    * @param template
+    *    the file of the style sheet, cannot be <code>null</code>.
+    *
+    * @param result
+    *    the result to transform, cannot be <code>null</code>.
+    *
+    * @return
+    *    the output of the transformation, decoded as UTF-8, never
+    *    <code>null</code>.
+    */
+   private static String transformSerialized(File template, FunctionResult result) throws Exception {
+      StringWriter xml = new StringWriter();
+      CallResultOutputter.output(xml, result);
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      TransformerFactory.newInstance().newTemplates(new StreamSource(template)).newTransformer().transform(
+            new StreamSource(new StringReader(xml.toString())), new StreamResult(output));
+      return output.toString("UTF-8");
+   }
+
+   /**
+    * Creates a servlet for the {@link TransformAPI}, with the templates in
+    * the specified directory.
+    *
+    * @param directory
+    *    the directory with the templates, cannot be <code>null</code>.
+    *
+    * @return
+    *    the initialized servlet, never <code>null</code>.
+    */
+   private static APIServlet createServlet(File directory) throws Exception {
+      String location = "file://" + directory.toURI().getPath();
+      Properties runtimeProperties = new Properties();
+      runtimeProperties.setProperty("templates.transform.xins-xslt.source",           location);
+      runtimeProperties.setProperty("templates.transform.xins-xslt.parameter.prefix", location);
+      File configFile = new File(directory, "xins.properties");
+      FileOutputStream out = new FileOutputStream(configFile);
+      try {
+         runtimeProperties.store(out, null);
+      } finally {
+         out.close();
+      }
+
+      final Properties initParameters = new Properties();
+      initParameters.setProperty("org.xins.api.name",      "transform");
+      initParameters.setProperty("org.xins.api.class",     TransformAPI.class.getName());
+      initParameters.setProperty("org.xins.server.config", configFile.getPath());
+      APIServlet servlet = new APIServlet();
+      servlet.init(new ServletConfig() {
+         private final ServletContext _context = new XINSServletContext();
+         public String getServletName() {
+            return "transform";
+         }
+         public ServletContext getServletContext() {
+            return _context;
+         }
+         public String getInitParameter(String name) {
+            return initParameters.getProperty(name);
+         }
+         public Enumeration getInitParameterNames() {
+            return initParameters.keys();
+         }
+      });
+      return servlet;
+   }
+
+   /**
+    * Calls the <em>Data</em> function with the XSLT calling convention.
+    *
+    * @param servlet
+    *    the servlet, cannot be <code>null</code>.
+    *
+    * @param extraParameters
+    *    the additional parameters, each starting with an ampersand.
+    *
+    * @return
+    *    the response, never <code>null</code>.
+    */
+   private static XINSServletResponse call(APIServlet servlet, String extraParameters) throws Exception {
+      String url = "http://127.0.0.1/transform/?_convention=_xins-xslt&_function=Data" + extraParameters;
+      XINSServletResponse response = new XINSServletResponse();
+      servlet.service(new XINSServletRequest(url), response);
+      return response;
+   }
+
    private String getHTMLVersion(boolean useTemplateParam) throws Exception {
       TargetDescriptor descriptor = new TargetDescriptor(AllTests.url(), 2000);
       BasicPropertyReader params = new BasicPropertyReader();
@@ -107,4 +346,74 @@ public class XSLTCallingConventionTests extends TestCase {
       HTTPCallResult result = caller.call(request);
       return result.getString();
    }
+
+   /**
+    * API with a single function that returns a result with a data section.
+    */
+   public static final class TransformAPI extends API {
+
+      /**
+       * The singleton instance, used by the servlet.
+       */
+      public static final TransformAPI SINGLETON = new TransformAPI();
+
+      private TransformAPI() {
+         super("transform");
+         new DataFunction(this);
+      }
+   }
+
+   /**
+    * Function that returns parameters and a data section with attributes,
+    * namespaces, nested elements and text.
+    */
+   private static final class DataFunction extends Function {
+
+      private DataFunction(TransformAPI api) {
+         super(api, "Data", "1.1");
+      }
+
+      protected FunctionResult handleCall(CallContext context) throws Throwable {
+         return createResult();
+      }
+
+      /**
+       * Creates the result returned by this function.
+       *
+       * @return
+       *    the result, never <code>null</code>.
+       */
+      static FunctionResult createResult() throws Exception {
+         BasicPropertyReader parameters = new BasicPropertyReader();
+         parameters.set("count", "12");
+         parameters.set("text",  "Caf\u00E9 & <bar> \"quoted\" \uD834\uDD1E");
+         Element data = new ElementParser().parse(
+               "<data xmlns:t=\"urn:test\">"
+             + "<item id=\"1\" name=\"first &amp; best\">one</item>"
+             + "<item id=\"2\"><sub>nested <b>bold</b> text</sub><sub /></item>"
+             + "<item id=\"3\" t:kind=\"special\" />"
+             + "<t:ns t:attr=\"value\">qualified</t:ns>"
+             + "<default xmlns=\"urn:default\"><child>in default</child></default>"
+             + "</data>");
+         DataResult result = new DataResult(parameters);
+         for (Element child : data.getChildElements()) {
+            result.add(child);
+         }
+         return result;
+      }
+   }
+
+   /**
+    * Function result to which data elements can be added.
+    */
+   private static final class DataResult extends FunctionResult {
+
+      DataResult(BasicPropertyReader parameters) {
+         super(null, parameters);
+      }
+
+      protected void add(Element element) {
+         super.add(element);
+      }
+   }
 }